@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.util.scans.similarity;
+
+import io.github.mzmine.datamodel.DataPoint;
+import io.github.mzmine.datamodel.impl.SimpleDataPoint;
+import io.github.mzmine.parameters.parametertypes.tolerances.MZTolerance;
+import io.github.mzmine.util.maths.similarity.Similarity;
+import io.github.mzmine.util.scans.ScanAlignment;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Weighted cosine of two spectra: list based {@link ScanAlignment} vs {@link
+ * SpectralAlignmentKernel}
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SpectralAlignmentBenchmark {
+
+  private final MZTolerance mzTol = new MZTolerance(0.005, 10);
+  private final Weights weights = Weights.SQRT;
+
+  @Param({"20", "100", "500"})
+  private int signals;
+
+  private DataPoint[] library;
+  private DataPoint[] query;
+
+  @Setup
+  public void setup() {
+    final Random random = new Random(42);
+    library = createSpectrum(random, signals);
+    // share half of the signals
+    query = createSpectrum(random, signals);
+    for (int i = 0; i < signals; i += 2) {
+      query[i] = new SimpleDataPoint(library[i].getMZ() + 0.001, random.nextDouble() * 1E5);
+    }
+    Arrays.sort(query, (a, b) -> Double.compare(a.getMZ(), b.getMZ()));
+  }
+
+  private static DataPoint[] createSpectrum(Random random, int signals) {
+    final DataPoint[] dps = new DataPoint[signals];
+    for (int i = 0; i < signals; i++) {
+      dps[i] = new SimpleDataPoint(50 + random.nextDouble() * 950, random.nextDouble() * 1E5);
+    }
+    Arrays.sort(dps, (a, b) -> Double.compare(a.getMZ(), b.getMZ()));
+    return dps;
+  }
+
+  @Benchmark
+  public double scanAlignment() {
+    List<DataPoint[]> aligned = ScanAlignment.align(mzTol, library, query);
+    aligned = HandleUnmatchedSignalOptions.KEEP_ALL_AND_MATCH_TO_ZERO.handleUnmatched(aligned);
+    double[][] diffArray = ScanAlignment.toIntensityMatrixWeighted(aligned,
+        weights.getIntensity(), weights.getMz());
+    return Similarity.COSINE.calc(diffArray);
+  }
+
+  @Benchmark
+  public double kernel() {
+    final SpectralAlignmentKernel kernel = SpectralAlignmentKernel.get();
+    kernel.align(mzTol, library, query);
+    return kernel.weightedCosine(weights, HandleUnmatchedSignalOptions.KEEP_ALL_AND_MATCH_TO_ZERO);
+  }
+}
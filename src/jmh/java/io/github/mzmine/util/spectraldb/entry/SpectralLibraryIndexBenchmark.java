@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.util.spectraldb.entry;
+
+import io.github.mzmine.datamodel.DataPoint;
+import io.github.mzmine.parameters.parametertypes.tolerances.MZTolerance;
+import io.github.mzmine.parameters.parametertypes.tolerances.PercentTolerance;
+import io.github.mzmine.parameters.parametertypes.tolerances.RTTolerance;
+import io.github.mzmine.parameters.parametertypes.tolerances.RTTolerance.Unit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Precursor search in a spectral library: full scan over all entries vs {@link
+ * SpectralLibraryIndex}
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SpectralLibraryIndexBenchmark {
+
+  private static final int QUERIES = 500;
+
+  private final MZTolerance mzTol = new MZTolerance(0.005, 10);
+  private final RTTolerance rtTol = new RTTolerance(0.5f, Unit.MINUTES);
+  private final PercentTolerance ccsTol = new PercentTolerance(0.02);
+
+  @Param({"10000", "100000"})
+  private int librarySize;
+
+  private List<SpectralDBEntry> entries;
+  private SpectralLibraryIndex index;
+  private double[] mzs;
+  private Float[] rts;
+  private Float[] ccss;
+
+  @Setup
+  public void setup() {
+    final Random rand = new Random(42);
+    entries = new ArrayList<>(librarySize);
+    for (int i = 0; i < librarySize; i++) {
+      final Map<DBEntryField, Object> fields = new HashMap<>();
+      if (i % 50 != 0) {
+        fields.put(DBEntryField.PRECURSOR_MZ, 100 + rand.nextDouble() * 1400);
+      }
+      if (i % 3 != 0) {
+        fields.put(DBEntryField.RT, (float) (rand.nextDouble() * 20));
+      }
+      if (i % 4 != 0) {
+        fields.put(DBEntryField.CCS, (float) (150 + rand.nextDouble() * 200));
+      }
+      entries.add(new SpectralDBEntry(fields, new DataPoint[0]));
+    }
+    index = new SpectralLibraryIndex(entries);
+
+    mzs = new double[QUERIES];
+    rts = new Float[QUERIES];
+    ccss = new Float[QUERIES];
+    for (int q = 0; q < QUERIES; q++) {
+      mzs[q] = 100 + rand.nextDouble() * 1400;
+      rts[q] = q % 2 == 0 ? (float) (rand.nextDouble() * 20) : null;
+      ccss[q] = (float) (150 + rand.nextDouble() * 200);
+    }
+  }
+
+  /**
+   * Same checks as the full scan of the spectral library search
+   */
+  private boolean matches(SpectralDBEntry entry, double mz, Float rt, Float ccs) {
+    final Double libMz = entry.getPrecursorMZ();
+    if (libMz == null || !mzTol.checkWithinTolerance(libMz, mz)) {
+      return false;
+    }
+    final Float libRt = (Float) entry.getField(DBEntryField.RT).orElse(null);
+    if (rt != null && libRt != null && !rtTol.checkWithinTolerance(libRt, rt)) {
+      return false;
+    }
+    return ccsTol.matches(ccs, entry.getOrElse(DBEntryField.CCS, null));
+  }
+
+  @Benchmark
+  public void fullScan(Blackhole bh) {
+    for (int q = 0; q < QUERIES; q++) {
+      for (SpectralDBEntry entry : entries) {
+        if (matches(entry, mzs[q], rts[q], ccss[q])) {
+          bh.consume(entry);
+        }
+      }
+    }
+  }
+
+  @Benchmark
+  public void index(Blackhole bh) {
+    for (int q = 0; q < QUERIES; q++) {
+      bh.consume(index.findCandidates(mzs[q], mzTol, rts[q], rtTol, ccss[q], ccsTol));
+    }
+  }
+}
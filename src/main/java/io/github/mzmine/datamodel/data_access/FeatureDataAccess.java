@@ -90,12 +90,25 @@ public abstract class FeatureDataAccess implements IonTimeSeries<Scan> {
    * @param dataFile define the data file in an aligned feature list
    */
   protected FeatureDataAccess(FeatureList flist, @Nullable RawDataFile dataFile) {
+    this(flist, dataFile, null);
+  }
+
+  /**
+   * Access the chromatographic data of features in a subset of rows of a feature list. Multiple
+   * accesses on disjoint subsets can be used to process a feature list in parallel.
+   *
+   * @param flist    target feature list
+   * @param dataFile define the data file in an aligned feature list
+   * @param rows     the rows to loop over or null for all rows of the feature list
+   */
+  protected FeatureDataAccess(FeatureList flist, @Nullable RawDataFile dataFile,
+      @Nullable List<FeatureListRow> rows) {
     this.flist = flist;
     this.dataFile = dataFile;
 
     // set rows and number of features
     int totalFeatures = 0;
-    List<FeatureListRow> allRows = flist.getRows();
+    List<FeatureListRow> allRows = rows != null ? rows : flist.getRows();
     // handle aligned flist
     if (flist.getNumberOfRawDataFiles() > 1) {
       if (dataFile != null) {
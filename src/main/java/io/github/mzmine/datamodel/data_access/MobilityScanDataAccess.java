@@ -199,6 +199,9 @@ public class MobilityScanDataAccess implements MobilityScan {
     currentMobilityScan = currentMobilityScans.get(currentMobilityScanIndex);
     currentSpectrum =
         type == MobilityScanDataType.RAW ? currentMobilityScan : currentMobilityScan.getMassList();
+    if (currentSpectrum == null) {
+      throw new MissingMassListException(currentMobilityScan);
+    }
 
     currentNumberOfDataPoints = currentSpectrum.getNumberOfDataPoints();
     if (currentSpectrumDatapointIndexOffset + currentNumberOfDataPoints > mzs.length) {
@@ -26,7 +26,7 @@
 package io.github.mzmine.datamodel.featuredata;
 
 import io.github.mzmine.modules.io.projectload.version_3_0.CONST;
-import io.github.mzmine.util.ParsingUtils;
+import io.github.mzmine.modules.io.projectsave.BinaryBlockXMLStreamWriter;
 import java.nio.DoubleBuffer;
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamWriter;
@@ -42,7 +42,7 @@ public interface IntensitySeries extends SeriesValueCount {
       throws XMLStreamException {
     writer.writeStartElement(CONST.XML_INTENSITY_VALUES_ELEMENT);
     writer.writeAttribute(CONST.XML_NUM_VALUES_ATTR, String.valueOf(series.getNumberOfValues()));
-    writer.writeCharacters(ParsingUtils.doubleBufferToString(series.getIntensityValueBuffer()));
+    BinaryBlockXMLStreamWriter.writeValues(writer, series.getIntensityValueBuffer());
     writer.writeEndElement();
   }
 
@@ -28,6 +28,7 @@ package io.github.mzmine.datamodel.featuredata;
 import io.github.mzmine.datamodel.MassSpectrum;
 import io.github.mzmine.datamodel.RawDataFile;
 import io.github.mzmine.modules.io.projectload.version_3_0.CONST;
+import io.github.mzmine.modules.io.projectsave.BinaryBlockXMLStreamWriter;
 import io.github.mzmine.util.MemoryMapStorage;
 import io.github.mzmine.util.ParsingUtils;
 import java.util.List;
@@ -59,7 +60,7 @@ public interface IonSpectrumSeries<T extends MassSpectrum> extends IonSeries {
     writer.writeStartElement(CONST.XML_SCAN_LIST_ELEMENT);
     writer.writeAttribute(CONST.XML_NUM_VALUES_ATTR, String.valueOf(series.getNumberOfValues()));
     final int[] indices = ParsingUtils.getIndicesOfSubListElements(series.getSpectra(), allScans);
-    writer.writeCharacters(ParsingUtils.intArrayToString(indices, indices.length));
+    BinaryBlockXMLStreamWriter.writeValues(writer, indices);
     writer.writeEndElement();
   }
 
@@ -30,6 +30,7 @@ import io.github.mzmine.datamodel.IMSRawDataFile;
 import io.github.mzmine.datamodel.data_access.BinningMobilogramDataAccess;
 import io.github.mzmine.datamodel.featuredata.IonMobilitySeries;
 import io.github.mzmine.datamodel.featuredata.IonMobilogramTimeSeries;
+import io.github.mzmine.modules.io.projectload.BinaryBlockXMLStreamReader;
 import io.github.mzmine.modules.io.projectload.CachedIMSFrame;
 import io.github.mzmine.modules.io.projectload.version_3_0.CONST;
 import io.github.mzmine.util.MemoryMapStorage;
@@ -194,13 +195,12 @@ public class IonMobilogramTimeSeriesFactory {
           mobilograms.add(SimpleIonMobilitySeries.loadFromXML(reader, null, file));
         }
         case CONST.XML_SCAN_LIST_ELEMENT -> {
-          int[] indices = ParsingUtils.stringToIntArray(reader.getElementText());
+          int[] indices = BinaryBlockXMLStreamReader.readInts(reader);
           scans = ParsingUtils.getSublistFromIndices((List<Frame>) file.getFrames(), indices);
         }
-        case CONST.XML_MZ_VALUES_ELEMENT -> mzs = ParsingUtils.stringToDoubleArray(
-            reader.getElementText());
-        case CONST.XML_INTENSITY_VALUES_ELEMENT -> intensities = ParsingUtils.stringToDoubleArray(
-            reader.getElementText());
+        case CONST.XML_MZ_VALUES_ELEMENT -> mzs = BinaryBlockXMLStreamReader.readDoubles(reader);
+        case CONST.XML_INTENSITY_VALUES_ELEMENT ->
+            intensities = BinaryBlockXMLStreamReader.readDoubles(reader);
         case SummedIntensityMobilitySeries.XML_ELEMENT -> summedMobilogram = SummedIntensityMobilitySeries.loadFromXML(
             reader, storage);
       }
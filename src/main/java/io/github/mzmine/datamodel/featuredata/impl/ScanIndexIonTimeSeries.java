@@ -0,0 +1,217 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.datamodel.featuredata.impl;
+
+import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.datamodel.Scan;
+import io.github.mzmine.util.MemoryMapStorage;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.logging.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Used to store LC-MS data. In contrast to {@link SimpleIonTimeSeries}, the scans are not kept as a
+ * list of references but as int indices into {@link RawDataFile#getScans()}, which are stored in
+ * the {@link MemoryMapStorage} next to the m/z and intensity values. The scans are resolved when
+ * they are accessed.
+ * <p>
+ * Use {@link #of(MemoryMapStorage, double[], double[], List)} to create a series. It falls back to
+ * a {@link SimpleIonTimeSeries} if the scans are not part of the scan list of their raw data file.
+ */
+public class ScanIndexIonTimeSeries extends SimpleIonTimeSeries {
+
+  private static final Logger logger = Logger.getLogger(ScanIndexIonTimeSeries.class.getName());
+
+  private final ScanIndexList scanIndices;
+
+  private ScanIndexIonTimeSeries(@NotNull DoubleBuffer mzValues,
+      @NotNull DoubleBuffer intensityValues, @NotNull ScanIndexList scans) {
+    super(mzValues, intensityValues, scans);
+    this.scanIndices = scans;
+  }
+
+  /**
+   * @param storage     may be null if forceStoreInRam is true
+   * @param mzValues    the m/z values
+   * @param intensities the intensity values
+   * @param scans       the scans sorted by retention time
+   * @return a series storing scan indices or a {@link SimpleIonTimeSeries}, if the scans could not
+   * be found in the scan list of their raw data file.
+   */
+  @NotNull
+  public static SimpleIonTimeSeries of(@Nullable MemoryMapStorage storage,
+      @NotNull double[] mzValues, @NotNull double[] intensities,
+      @NotNull List<? extends Scan> scans) {
+    checkValues(mzValues, intensities, scans);
+    final RawDataFile file = scans.isEmpty() ? null : scans.get(0).getDataFile();
+    final int[] indices = file == null ? null : findScanIndices(file, scans);
+    if (indices == null) {
+      if (file != null) {
+        logger.fine(() -> "Scans of a series were not found in the scan list of " + file
+            + ". Falling back to a series that references the scans.");
+      }
+      return new SimpleIonTimeSeries(storage, mzValues, intensities, (List<Scan>) scans);
+    }
+    return of(storage, mzValues, intensities, file, indices);
+  }
+
+  /**
+   * @param storage     may be null if forceStoreInRam is true
+   * @param mzValues    the m/z values
+   * @param intensities the intensity values
+   * @param file        the raw data file
+   * @param scanIndices indices of the scans in {@link RawDataFile#getScans()}, sorted by retention
+   *                    time
+   */
+  @NotNull
+  public static ScanIndexIonTimeSeries of(@Nullable MemoryMapStorage storage,
+      @NotNull double[] mzValues, @NotNull double[] intensities, @NotNull RawDataFile file,
+      @NotNull int[] scanIndices) {
+    if (mzValues.length != intensities.length || mzValues.length != scanIndices.length) {
+      throw new IllegalArgumentException("Length of mz, intensity and/or scans does not match.");
+    }
+    return new ScanIndexIonTimeSeries(StorageUtils.storeValuesToDoubleBuffer(storage, mzValues),
+        StorageUtils.storeValuesToDoubleBuffer(storage, intensities),
+        new ScanIndexList(file, StorageUtils.storeValuesToIntBuffer(storage, scanIndices)));
+  }
+
+  /**
+   * The scans of a series are sorted by retention time, so they are searched with a single pass
+   * over the scans of the raw data file, starting at the retention time of the first scan.
+   *
+   * @return the index of every scan in {@link RawDataFile#getScans()} or null, if a scan belongs to
+   * another file or is not part of the scan list.
+   */
+  @Nullable
+  private static int[] findScanIndices(@NotNull RawDataFile file,
+      @NotNull List<? extends Scan> scans) {
+    final List<Scan> fileScans = file.getScans();
+    final int numFileScans = fileScans.size();
+    final int[] indices = new int[scans.size()];
+
+    // first file scan with a retention time >= the first scan
+    final float firstRt = scans.get(0).getRetentionTime();
+    int lo = 0;
+    int hi = numFileScans;
+    while (lo < hi) {
+      final int mid = (lo + hi) >>> 1;
+      if (fileScans.get(mid).getRetentionTime() < firstRt) {
+        lo = mid + 1;
+      } else {
+        hi = mid;
+      }
+    }
+
+    int fileIndex = lo;
+    for (int i = 0; i < indices.length; i++) {
+      final Scan scan = scans.get(i);
+      if (scan.getDataFile() != file) {
+        return null;
+      }
+      while (fileIndex < numFileScans && fileScans.get(fileIndex) != scan) {
+        fileIndex++;
+      }
+      if (fileIndex == numFileScans) {
+        return null;
+      }
+      indices[i] = fileIndex++;
+    }
+    return indices;
+  }
+
+  @Override
+  public SimpleIonTimeSeries subSeries(@Nullable MemoryMapStorage storage,
+      @NotNull List<Scan> subset) {
+    final double[] mzs = new double[subset.size()];
+    final double[] intensities = new double[subset.size()];
+    final int[] indices = new int[subset.size()];
+
+    final List<Scan> fileScans = scanIndices.file.getScans();
+    final int numValues = getNumberOfValues();
+    int sindex = 0;
+    for (int i = 0; i < subset.size(); i++) {
+      final Scan sub = subset.get(i);
+      // find next spectrum
+      while (sindex < numValues && fileScans.get(scanIndices.getIndex(sindex)) != sub) {
+        sindex++;
+      }
+      if (sindex >= numValues) {
+        // not sorted or not contained in this series, let the list based series handle the error
+        return super.subSeries(storage, subset);
+      }
+      mzs[i] = getMZ(sindex);
+      intensities[i] = getIntensity(sindex);
+      indices[i] = scanIndices.getIndex(sindex);
+    }
+
+    return of(storage, mzs, intensities, scanIndices.file, indices);
+  }
+
+  @Override
+  public SimpleIonTimeSeries copyAndReplace(@Nullable MemoryMapStorage storage,
+      @NotNull double[] newMzValues, @NotNull double[] newIntensityValues) {
+    if (newMzValues.length != newIntensityValues.length
+        || newMzValues.length != getNumberOfValues()) {
+      throw new IllegalArgumentException("Length of mz, intensity and/or scans does not match.");
+    }
+    // the scan indices are immutable and can be shared
+    return new ScanIndexIonTimeSeries(StorageUtils.storeValuesToDoubleBuffer(storage, newMzValues),
+        StorageUtils.storeValuesToDoubleBuffer(storage, newIntensityValues), scanIndices);
+  }
+
+  /**
+   * Read only list view that resolves the scan indices against the scans of the raw data file.
+   */
+  private static final class ScanIndexList extends AbstractList<Scan> implements RandomAccess {
+
+    private final RawDataFile file;
+    private final IntBuffer indices;
+
+    private ScanIndexList(@NotNull RawDataFile file, @NotNull IntBuffer indices) {
+      this.file = file;
+      this.indices = indices;
+    }
+
+    private int getIndex(int i) {
+      return indices.get(i);
+    }
+
+    @Override
+    public Scan get(int index) {
+      return file.getScans().get(indices.get(index));
+    }
+
+    @Override
+    public int size() {
+      return indices.capacity();
+    }
+  }
+}
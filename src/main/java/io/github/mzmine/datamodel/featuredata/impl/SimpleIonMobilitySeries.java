@@ -31,6 +31,7 @@ import io.github.mzmine.datamodel.MobilityScan;
 import io.github.mzmine.datamodel.featuredata.IntensitySeries;
 import io.github.mzmine.datamodel.featuredata.IonMobilitySeries;
 import io.github.mzmine.datamodel.featuredata.IonSpectrumSeries;
+import io.github.mzmine.modules.io.projectload.BinaryBlockXMLStreamReader;
 import io.github.mzmine.modules.io.projectload.version_3_0.CONST;
 import io.github.mzmine.util.DataPointUtils;
 import io.github.mzmine.util.MemoryMapStorage;
@@ -111,14 +112,13 @@ public class SimpleIonMobilitySeries implements IonMobilitySeries, ModifiableSpe
             throw new IllegalStateException(
                 "Cannot load mobility scans without frame index being set.");
           }
-          int[] indices = ParsingUtils.stringToIntArray(reader.getElementText());
+          int[] indices = BinaryBlockXMLStreamReader.readInts(reader);
           scans = ParsingUtils.getSublistFromIndices(file.getFrame(frameindex).getMobilityScans(),
               indices);
         }
-        case CONST.XML_MZ_VALUES_ELEMENT -> mzs = ParsingUtils.stringToDoubleArray(
-            reader.getElementText());
-        case CONST.XML_INTENSITY_VALUES_ELEMENT -> intensities = ParsingUtils.stringToDoubleArray(
-            reader.getElementText());
+        case CONST.XML_MZ_VALUES_ELEMENT -> mzs = BinaryBlockXMLStreamReader.readDoubles(reader);
+        case CONST.XML_INTENSITY_VALUES_ELEMENT ->
+            intensities = BinaryBlockXMLStreamReader.readDoubles(reader);
       }
     }
 
@@ -32,6 +32,7 @@ import io.github.mzmine.datamodel.featuredata.IntensitySeries;
 import io.github.mzmine.datamodel.featuredata.IonSpectrumSeries;
 import io.github.mzmine.datamodel.featuredata.IonTimeSeries;
 import io.github.mzmine.datamodel.featuredata.MzSeries;
+import io.github.mzmine.modules.io.projectload.BinaryBlockXMLStreamReader;
 import io.github.mzmine.modules.io.projectload.CachedIMSFrame;
 import io.github.mzmine.modules.io.projectload.version_3_0.CONST;
 import io.github.mzmine.util.DataPointUtils;
@@ -70,6 +71,28 @@ public class SimpleIonTimeSeries implements IonTimeSeries<Scan> {
    */
   public SimpleIonTimeSeries(@Nullable MemoryMapStorage storage, @NotNull double[] mzValues,
       @NotNull double[] intensityValues, @NotNull List<Scan> scans) {
+    checkValues(mzValues, intensityValues, scans);
+
+    this.scans = scans;
+
+    this.mzValues = StorageUtils.storeValuesToDoubleBuffer(storage, mzValues);
+    this.intensityValues = StorageUtils.storeValuesToDoubleBuffer(storage, intensityValues);
+  }
+
+  /**
+   * @param mzValues        the stored m/z values
+   * @param intensityValues the stored intensity values
+   * @param scans           the scans, must match the values and be sorted by retention time
+   */
+  protected SimpleIonTimeSeries(@NotNull DoubleBuffer mzValues,
+      @NotNull DoubleBuffer intensityValues, @NotNull List<Scan> scans) {
+    this.scans = scans;
+    this.mzValues = mzValues;
+    this.intensityValues = intensityValues;
+  }
+
+  protected static void checkValues(@NotNull double[] mzValues, @NotNull double[] intensityValues,
+      @NotNull List<? extends Scan> scans) {
     if (mzValues.length != intensityValues.length || mzValues.length != scans.size()) {
       throw new IllegalArgumentException("Length of mz, intensity and/or scans does not match.");
     }
@@ -79,17 +102,13 @@ public class SimpleIonTimeSeries implements IonTimeSeries<Scan> {
             "Scans not sorted in retention time dimension! Cannot create chromatogram.");
       }
     }
-
-    this.scans = scans;
-
-    this.mzValues = StorageUtils.storeValuesToDoubleBuffer(storage, mzValues);
-    this.intensityValues = StorageUtils.storeValuesToDoubleBuffer(storage, intensityValues);
   }
 
   public static SimpleIonTimeSeries loadFromXML(XMLStreamReader reader, MemoryMapStorage storage,
       RawDataFile file) throws XMLStreamException {
 
     List<Scan> scans = null;
+    int[] indices = null;
     double[] mzs = null;
     double[] intensities = null;
 
@@ -104,7 +123,7 @@ public class SimpleIonTimeSeries implements IonTimeSeries<Scan> {
       }
       switch (reader.getLocalName()) {
         case CONST.XML_SCAN_LIST_ELEMENT -> {
-          int[] indices = ParsingUtils.stringToIntArray(reader.getElementText());
+          indices = BinaryBlockXMLStreamReader.readInts(reader);
           scans = ParsingUtils.getSublistFromIndices(file.getScans(), indices); // use all scans
 
           // if the scans were CachedFrames, we have to replace them when storing them to the series,
@@ -112,16 +131,20 @@ public class SimpleIonTimeSeries implements IonTimeSeries<Scan> {
           if (scans.get(0) instanceof CachedIMSFrame) {
             scans = scans.stream().map(scan -> ((CachedIMSFrame) scan).getOriginalFrame())
                 .map(f -> (Scan) f).toList();
+            indices = null;
           }
         }
         case CONST.XML_MZ_VALUES_ELEMENT ->
-            mzs = ParsingUtils.stringToDoubleArray(reader.getElementText());
+            mzs = BinaryBlockXMLStreamReader.readDoubles(reader);
         case CONST.XML_INTENSITY_VALUES_ELEMENT ->
-            intensities = ParsingUtils.stringToDoubleArray(reader.getElementText());
+            intensities = BinaryBlockXMLStreamReader.readDoubles(reader);
       }
     }
 
-    return new SimpleIonTimeSeries(storage, mzs, intensities, scans);
+    if (indices != null) {
+      return ScanIndexIonTimeSeries.of(storage, mzs, intensities, file, indices);
+    }
+    return ScanIndexIonTimeSeries.of(storage, mzs, intensities, scans);
   }
 
   @Override
@@ -156,7 +179,7 @@ public class SimpleIonTimeSeries implements IonTimeSeries<Scan> {
       intensities[i] = getIntensity(sindex);
     }
 
-    return new SimpleIonTimeSeries(storage, mzs, intensities, subset);
+    return ScanIndexIonTimeSeries.of(storage, mzs, intensities, subset);
   }
 
   @Override
@@ -191,7 +214,7 @@ public class SimpleIonTimeSeries implements IonTimeSeries<Scan> {
   public IonTimeSeries<Scan> copyAndReplace(@Nullable MemoryMapStorage storage,
       @NotNull double[] newMzValues, @NotNull double[] newIntensityValues) {
 
-    return new SimpleIonTimeSeries(storage, newMzValues, newIntensityValues, this.scans);
+    return ScanIndexIonTimeSeries.of(storage, newMzValues, newIntensityValues, this.scans);
   }
 
   @Override
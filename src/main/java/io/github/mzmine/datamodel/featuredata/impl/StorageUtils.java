@@ -184,6 +184,28 @@ public class StorageUtils {
     return buffer;
   }
 
+  /**
+   * Stores the values with one write to the storage and returns a slice for each range defined by
+   * the offsets. The returned buffers do not share their position or limit.
+   *
+   * @param storage The storage to be used. If null, a double buffer will be wrapped around the
+   *                values.
+   * @param values  The values of all slices.
+   * @param offsets The start of each slice in values and the end of the last slice as last
+   *                element. The number of slices is offsets.length - 1.
+   * @return A slice of the stored buffer for each range.
+   */
+  @NotNull
+  public static DoubleBuffer[] storeValuesToSlices(@Nullable final MemoryMapStorage storage,
+      @NotNull final double[] values, @NotNull final int[] offsets) {
+    final DoubleBuffer stored = storeValuesToDoubleBuffer(storage, values);
+    final DoubleBuffer[] slices = new DoubleBuffer[offsets.length - 1];
+    for (int i = 0; i < slices.length; i++) {
+      slices[i] = stored.slice(offsets[i], offsets[i + 1] - offsets[i]);
+    }
+    return slices;
+  }
+
   /**
    * Stores the given array into an int buffer.
    *
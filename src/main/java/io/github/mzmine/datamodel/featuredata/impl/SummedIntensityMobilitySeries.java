@@ -32,11 +32,12 @@ import io.github.mzmine.datamodel.Frame;
 import io.github.mzmine.datamodel.featuredata.IntensitySeries;
 import io.github.mzmine.datamodel.featuredata.IonMobilitySeries;
 import io.github.mzmine.datamodel.featuredata.MobilitySeries;
+import io.github.mzmine.modules.io.projectload.BinaryBlockXMLStreamReader;
 import io.github.mzmine.modules.io.projectload.version_3_0.CONST;
+import io.github.mzmine.modules.io.projectsave.BinaryBlockXMLStreamWriter;
 import io.github.mzmine.util.DataPointUtils;
 import io.github.mzmine.util.IonMobilityUtils;
 import io.github.mzmine.util.MemoryMapStorage;
-import io.github.mzmine.util.ParsingUtils;
 import java.nio.DoubleBuffer;
 import java.util.List;
 import java.util.Map;
@@ -188,7 +189,7 @@ public class SummedIntensityMobilitySeries implements IntensitySeries, MobilityS
     writer.writeStartElement(CONST.XML_MOBILITY_VALUES_ELEMENT);
     writer
         .writeAttribute(CONST.XML_NUM_VALUES_ATTR, String.valueOf(getNumberOfValues()));
-    writer.writeCharacters(ParsingUtils.doubleBufferToString(getMobilityValues()));
+    BinaryBlockXMLStreamWriter.writeValues(writer, getMobilityValues());
     writer.writeEndElement();
 
     IntensitySeries.saveIntensityValuesToXML(writer, this);
@@ -212,10 +213,10 @@ public class SummedIntensityMobilitySeries implements IntensitySeries, MobilityS
         continue;
       }
       switch (reader.getLocalName()) {
-        case CONST.XML_INTENSITY_VALUES_ELEMENT -> intensities = ParsingUtils
-            .stringToDoubleArray(reader.getElementText());
-        case CONST.XML_MOBILITY_VALUES_ELEMENT -> mobilities = ParsingUtils
-            .stringToDoubleArray(reader.getElementText());
+        case CONST.XML_INTENSITY_VALUES_ELEMENT ->
+            intensities = BinaryBlockXMLStreamReader.readDoubles(reader);
+        case CONST.XML_MOBILITY_VALUES_ELEMENT ->
+            mobilities = BinaryBlockXMLStreamReader.readDoubles(reader);
       }
     }
     return new SummedIntensityMobilitySeries(storage, mobilities, intensities);
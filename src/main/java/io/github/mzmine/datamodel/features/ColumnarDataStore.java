@@ -0,0 +1,505 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.datamodel.features;
+
+import io.github.mzmine.datamodel.features.types.DataType;
+import io.github.mzmine.datamodel.features.types.numbers.abstr.DoubleType;
+import io.github.mzmine.datamodel.features.types.numbers.abstr.FloatType;
+import io.github.mzmine.datamodel.features.types.numbers.abstr.IntegerType;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.AbstractMap;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Column oriented storage of the {@link DataType} values of all rows or all features of a {@link
+ * ModularFeatureList}. Every {@link ModularDataModel} owns a slot (index) in all columns. Values of
+ * {@link DoubleType}, {@link FloatType} and {@link IntegerType} are stored in primitive arrays, all
+ * other values in object arrays. This avoids a map with boxed values for every row and feature.
+ * <p>
+ * Writes to a column are synchronized, reads are lock free. Array elements are written with
+ * release and read with acquire semantics, because a volatile array reference does not publish the
+ * writes to its elements. A reader that sees the presence bit of a value also sees the value.
+ * Columns grow on demand.
+ * <p>
+ * Slots of removed data models are released, their values are cleared and the slot is reused by
+ * the next data model.
+ */
+final class ColumnarDataStore {
+
+  private static final int INITIAL_CAPACITY = 64;
+
+  private static final VarHandle LONGS = MethodHandles.arrayElementVarHandle(long[].class);
+  private static final VarHandle DOUBLES = MethodHandles.arrayElementVarHandle(double[].class);
+  private static final VarHandle FLOATS = MethodHandles.arrayElementVarHandle(float[].class);
+  private static final VarHandle INTS = MethodHandles.arrayElementVarHandle(int[].class);
+  private static final VarHandle OBJECTS = MethodHandles.arrayElementVarHandle(Object[].class);
+
+  private final Map<DataType, Column> columns = new ConcurrentHashMap<>();
+  private final int initialCapacity;
+  // guarded by this
+  private final IntArrayList freeSlots = new IntArrayList();
+  private int numSlots = 0;
+
+  ColumnarDataStore() {
+    this(INITIAL_CAPACITY);
+  }
+
+  /**
+   * @param initialCapacity the initial capacity of each column, e.g., 1 for the values of a single
+   *                        data model that was removed from its feature list
+   */
+  ColumnarDataStore(int initialCapacity) {
+    this.initialCapacity = initialCapacity;
+  }
+
+  /**
+   * @return a new slot for a data model. Released slots are reused.
+   */
+  @NotNull
+  Slot newSlot() {
+    synchronized (this) {
+      final int index = freeSlots.isEmpty() ? numSlots++ : freeSlots.popInt();
+      return new Slot(this, index);
+    }
+  }
+
+  /**
+   * Clears all values of a slot and frees it for the next data model. The slot must not be used
+   * afterwards.
+   */
+  void releaseSlot(int slot) {
+    for (Column column : columns.values()) {
+      column.set(slot, null);
+    }
+    synchronized (this) {
+      freeSlots.add(slot);
+    }
+  }
+
+  /**
+   * @return the number of slots that are currently used by data models
+   */
+  int getNumberOfUsedSlots() {
+    synchronized (this) {
+      return numSlots - freeSlots.size();
+    }
+  }
+
+  @Nullable
+  Object get(@Nullable DataType type, int slot) {
+    if (type == null) {
+      return null;
+    }
+    final Column column = columns.get(type);
+    return column == null ? null : column.get(slot);
+  }
+
+  /**
+   * @param value the new value or null to remove the value
+   * @return the old value
+   */
+  @Nullable
+  Object set(@NotNull DataType type, int slot, @Nullable Object value) {
+    if (value == null) {
+      final Column column = columns.get(type);
+      return column == null ? null : column.set(slot, null);
+    }
+    return columns.computeIfAbsent(type, ColumnarDataStore::createColumn).set(slot, value);
+  }
+
+  /**
+   * Removes the column of a type that was removed from the feature list
+   */
+  void removeColumn(@NotNull DataType type) {
+    columns.remove(type);
+  }
+
+  /**
+   * Moves all values of a slot to a new slot in another store, e.g., if a data model is moved to
+   * another feature list or removed from its feature list. The old slot is released.
+   *
+   * @return the slot in the target store
+   */
+  @NotNull
+  Slot moveTo(int slot, @NotNull ColumnarDataStore target) {
+    final Slot newSlot = target.newSlot();
+    for (Entry<DataType, Column> entry : columns.entrySet()) {
+      final Object value = entry.getValue().set(slot, null);
+      if (value != null) {
+        target.set(entry.getKey(), newSlot.index(), value);
+      }
+    }
+    synchronized (this) {
+      freeSlots.add(slot);
+    }
+    return newSlot;
+  }
+
+  /**
+   * @return a map view of all values of a slot. Writes to the map are reflected in this store.
+   */
+  @NotNull
+  Map<DataType, Object> mapView(int slot) {
+    return new SlotMap(slot);
+  }
+
+  private Column createColumn(DataType type) {
+    if (type instanceof DoubleType) {
+      return new DoubleColumn(initialCapacity);
+    } else if (type instanceof FloatType) {
+      return new FloatColumn(initialCapacity);
+    } else if (type instanceof IntegerType) {
+      return new IntColumn(initialCapacity);
+    }
+    return new ObjectColumn(initialCapacity);
+  }
+
+  /**
+   * The slot of one data model in a store. Immutable, so a data model that is moved to another
+   * store never sees the store of one slot with the index of another.
+   */
+  record Slot(@NotNull ColumnarDataStore store, int index) {
+
+    @Nullable
+    Object get(@Nullable DataType type) {
+      return store.get(type, index);
+    }
+
+    @NotNull
+    Map<DataType, Object> mapView() {
+      return store.mapView(index);
+    }
+
+    void release() {
+      store.releaseSlot(index);
+    }
+  }
+
+  private abstract static class Column {
+
+    protected final int initialCapacity;
+
+    protected Column(int initialCapacity) {
+      this.initialCapacity = initialCapacity;
+    }
+
+    protected int grow(int capacity, int slot) {
+      return Math.max(slot + 1, Math.max(initialCapacity, capacity + (capacity >> 1)));
+    }
+
+    /**
+     * Set if a value did not fit into this primitive column. All accesses are delegated.
+     */
+    protected volatile ObjectColumn replacement;
+
+    abstract Object get(int slot);
+
+    abstract Object set(int slot, Object value);
+  }
+
+  /**
+   * Primitive column. The presence of a value is stored in a bit set, so null values can be told
+   * apart from zero.
+   */
+  private abstract static class PrimitiveColumn extends Column {
+
+    private volatile long[] present = new long[0];
+
+    protected PrimitiveColumn(int initialCapacity) {
+      super(initialCapacity);
+    }
+
+    protected abstract boolean accepts(Object value);
+
+    protected abstract int capacity();
+
+    /**
+     * Grows the value array. Must be called before {@link #growPresent(int)}, so readers never see
+     * a presence bit without a value.
+     */
+    protected abstract void growValues(int capacity);
+
+    protected abstract Object getValue(int slot);
+
+    protected abstract void setValue(int slot, Object value);
+
+    protected boolean isPresent(int slot) {
+      final long[] present = this.present;
+      final int word = slot >>> 6;
+      return word < present.length
+          && ((long) LONGS.getAcquire(present, word) & (1L << slot)) != 0;
+    }
+
+    @Override
+    Object get(int slot) {
+      final ObjectColumn replacement = this.replacement;
+      if (replacement != null) {
+        return replacement.get(slot);
+      }
+      return isPresent(slot) ? getValue(slot) : null;
+    }
+
+    @Override
+    synchronized Object set(int slot, Object value) {
+      if (replacement != null) {
+        return replacement.set(slot, value);
+      }
+      if (value != null && !accepts(value)) {
+        // value class does not fit into this column, e.g., raw type usage
+        final ObjectColumn objects = new ObjectColumn(initialCapacity);
+        final int length = present.length << 6;
+        for (int i = 0; i < length; i++) {
+          if (isPresent(i)) {
+            objects.set(i, getValue(i));
+          }
+        }
+        replacement = objects;
+        return objects.set(slot, value);
+      }
+
+      final Object old = isPresent(slot) ? getValue(slot) : null;
+      final int word = slot >>> 6;
+      if (value == null) {
+        if (old != null) {
+          LONGS.setRelease(present, word, present[word] & ~(1L << slot));
+        }
+        return old;
+      }
+
+      if (slot >= capacity()) {
+        growValues(grow(capacity(), slot));
+      }
+      if (word >= present.length) {
+        present = Arrays.copyOf(present, (capacity() + 63) >>> 6);
+      }
+      // the value is released before its presence bit
+      setValue(slot, value);
+      LONGS.setRelease(present, word, present[word] | (1L << slot));
+      return old;
+    }
+  }
+
+  private static final class DoubleColumn extends PrimitiveColumn {
+
+    private volatile double[] values = new double[0];
+
+    private DoubleColumn(int initialCapacity) {
+      super(initialCapacity);
+    }
+
+    @Override
+    protected boolean accepts(Object value) {
+      return value instanceof Double;
+    }
+
+    @Override
+    protected int capacity() {
+      return values.length;
+    }
+
+    @Override
+    protected void growValues(int capacity) {
+      values = Arrays.copyOf(values, capacity);
+    }
+
+    @Override
+    protected Object getValue(int slot) {
+      return (double) DOUBLES.getAcquire(values, slot);
+    }
+
+    @Override
+    protected void setValue(int slot, Object value) {
+      DOUBLES.setRelease(values, slot, (double) (Double) value);
+    }
+  }
+
+  private static final class FloatColumn extends PrimitiveColumn {
+
+    private volatile float[] values = new float[0];
+
+    private FloatColumn(int initialCapacity) {
+      super(initialCapacity);
+    }
+
+    @Override
+    protected boolean accepts(Object value) {
+      return value instanceof Float;
+    }
+
+    @Override
+    protected int capacity() {
+      return values.length;
+    }
+
+    @Override
+    protected void growValues(int capacity) {
+      values = Arrays.copyOf(values, capacity);
+    }
+
+    @Override
+    protected Object getValue(int slot) {
+      return (float) FLOATS.getAcquire(values, slot);
+    }
+
+    @Override
+    protected void setValue(int slot, Object value) {
+      FLOATS.setRelease(values, slot, (float) (Float) value);
+    }
+  }
+
+  private static final class IntColumn extends PrimitiveColumn {
+
+    private volatile int[] values = new int[0];
+
+    private IntColumn(int initialCapacity) {
+      super(initialCapacity);
+    }
+
+    @Override
+    protected boolean accepts(Object value) {
+      return value instanceof Integer;
+    }
+
+    @Override
+    protected int capacity() {
+      return values.length;
+    }
+
+    @Override
+    protected void growValues(int capacity) {
+      values = Arrays.copyOf(values, capacity);
+    }
+
+    @Override
+    protected Object getValue(int slot) {
+      return (int) INTS.getAcquire(values, slot);
+    }
+
+    @Override
+    protected void setValue(int slot, Object value) {
+      INTS.setRelease(values, slot, (int) (Integer) value);
+    }
+  }
+
+  private static final class ObjectColumn extends Column {
+
+    private volatile Object[] values = new Object[0];
+
+    private ObjectColumn(int initialCapacity) {
+      super(initialCapacity);
+    }
+
+    @Override
+    Object get(int slot) {
+      final Object[] values = this.values;
+      return slot < values.length ? OBJECTS.getAcquire(values, slot) : null;
+    }
+
+    @Override
+    synchronized Object set(int slot, Object value) {
+      if (slot >= values.length) {
+        if (value == null) {
+          return null;
+        }
+        values = Arrays.copyOf(values, grow(values.length, slot));
+      }
+      final Object old = values[slot];
+      OBJECTS.setRelease(values, slot, value);
+      return old;
+    }
+  }
+
+  /**
+   * Map view of one slot
+   */
+  private final class SlotMap extends AbstractMap<DataType, Object> {
+
+    private final int slot;
+
+    private SlotMap(int slot) {
+      this.slot = slot;
+    }
+
+    @Override
+    public Object get(Object key) {
+      return key instanceof DataType type ? ColumnarDataStore.this.get(type, slot) : null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+      return get(key) != null;
+    }
+
+    @Override
+    public Object put(DataType key, Object value) {
+      return set(key, slot, value);
+    }
+
+    @Override
+    public Object remove(Object key) {
+      return key instanceof DataType type ? set(type, slot, null) : null;
+    }
+
+    @Override
+    public @NotNull Set<Entry<DataType, Object>> entrySet() {
+      return new AbstractSet<>() {
+        @Override
+        public @NotNull Iterator<Entry<DataType, Object>> iterator() {
+          return entries().iterator();
+        }
+
+        @Override
+        public int size() {
+          return entries().size();
+        }
+      };
+    }
+
+    private List<Entry<DataType, Object>> entries() {
+      final List<Entry<DataType, Object>> entries = new ArrayList<>();
+      for (Entry<DataType, Column> column : columns.entrySet()) {
+        final Object value = column.getValue().get(slot);
+        if (value != null) {
+          entries.add(new SimpleImmutableEntry<>(column.getKey(), value));
+        }
+      }
+      return entries;
+    }
+  }
+}
@@ -48,12 +48,18 @@ public interface ModularDataModel {
   public ObservableMap<Class<? extends DataType>, DataType> getTypes();
 
   /**
-   * The map containing all mappings to the types defined in getTypes
+   * The map containing all mappings to the types defined in getTypes. Modular feature lists store
+   * the values in columns, this map is only a view of the values of this model.
+   * <p>
+   * The map is no longer observable. Listen to value changes via
+   * {@link ModularFeatureList#addRowTypeListener(DataType, DataTypeValueChangeListener)} and
+   * {@link ModularFeatureList#addFeatureTypeListener(DataType, DataTypeValueChangeListener)}
+   * instead.
    *
    * @param
    * @return
    */
-  public ObservableMap<DataType, Object> getMap();
+  public Map<DataType, Object> getMap();
 
   /**
    * Get DataType column of this DataModel
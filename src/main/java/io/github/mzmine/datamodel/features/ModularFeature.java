@@ -36,6 +36,7 @@ import io.github.mzmine.datamodel.RawDataFile;
 import io.github.mzmine.datamodel.Scan;
 import io.github.mzmine.datamodel.featuredata.FeatureDataUtils;
 import io.github.mzmine.datamodel.featuredata.IonTimeSeries;
+import io.github.mzmine.datamodel.featuredata.impl.ScanIndexIonTimeSeries;
 import io.github.mzmine.datamodel.featuredata.impl.SimpleIonTimeSeries;
 import io.github.mzmine.datamodel.features.types.DataType;
 import io.github.mzmine.datamodel.features.types.DetectionType;
@@ -72,7 +73,6 @@ import java.util.Objects;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 import javafx.collections.FXCollections;
-import javafx.collections.MapChangeListener;
 import javafx.collections.ObservableMap;
 import javafx.scene.Node;
 import javafx.scene.layout.Pane;
@@ -87,28 +87,46 @@ import org.jetbrains.annotations.Nullable;
 public class ModularFeature implements Feature, ModularDataModel {
 
   private static final Logger logger = Logger.getLogger(ModularFeature.class.getName());
-  private final ObservableMap<DataType, Object> map = FXCollections.observableMap(new HashMap<>());
-  // buffert col charts and nodes
-  private final Map<String, Node> buffertColCharts = new HashMap<>();
+  // buffert col charts and nodes, only created once a chart is shown
+  private Map<String, Node> buffertColCharts;
   @NotNull
   private ModularFeatureList flist;
 
+  /**
+   * the values of this feature are stored in the columns of the feature list at this slot. Once
+   * the feature is removed, the values are moved to a detached store.
+   */
+  private volatile ColumnarDataStore.Slot slot;
+
   private FeatureListRow parentRow;
 
   public ModularFeature(@NotNull ModularFeatureList flist) {
     this.flist = flist;
+    this.slot = flist.getFeatureDataStore().newSlot();
+  }
 
-    // register listener to types map to automatically generate default properties for new DataTypes
-    flist.getFeatureTypes().addListener(
-        (MapChangeListener<? super Class<? extends DataType>, ? super DataType>) change -> {
-          if (change.wasAdded()) {
-            // do nothing for now
-          } else if (change.wasRemoved()) {
-            // remove type columns to maps
-            DataType type = change.getValueRemoved();
-            this.remove((Class) type.getClass());
-          }
-        });
+  /**
+   * Moves the values of this feature out of the columns of the feature list, so the slot is freed
+   * once the feature was removed from its row. The values are moved back if the feature is added
+   * to a row again, see {@link #setFeatureList(FeatureList)}.
+   */
+  void detachValues() {
+    final ColumnarDataStore.Slot slot = this.slot;
+    if (slot.store() == flist.getFeatureDataStore()) {
+      this.slot = slot.store().moveTo(slot.index(), new ColumnarDataStore(1));
+    }
+  }
+
+  /**
+   * Moves the values of this feature into the columns of its feature list, if they are not stored
+   * there already.
+   */
+  void attachValues() {
+    final ColumnarDataStore.Slot slot = this.slot;
+    final ColumnarDataStore listStore = flist.getFeatureDataStore();
+    if (slot.store() != listStore) {
+      this.slot = slot.store().moveTo(slot.index(), listStore);
+    }
   }
 
   // NOT TESTED
@@ -166,7 +184,7 @@ public class ModularFeature implements Feature, ModularDataModel {
 
     // datapoints of feature
     //    set(DataPointsType.class, Arrays.asList(dataPointsPerScan));
-    SimpleIonTimeSeries featureData = new SimpleIonTimeSeries(flist.getMemoryMapStorage(), mzs,
+    SimpleIonTimeSeries featureData = ScanIndexIonTimeSeries.of(flist.getMemoryMapStorage(), mzs,
         intensities, scans);
     set(FeatureDataType.class, featureData);
 
@@ -236,8 +254,8 @@ public class ModularFeature implements Feature, ModularDataModel {
       //        set(FeatureDataType.class, ((ModularFeature)f).getFeatureData());
       //      } else {
       double[][] dp = DataPointUtils.getDataPointsAsDoubleArray(f.getDataPoints());
-      SimpleIonTimeSeries featureData = new SimpleIonTimeSeries(flist.getMemoryMapStorage(), dp[0],
-          dp[1], f.getScanNumbers());
+      SimpleIonTimeSeries featureData = ScanIndexIonTimeSeries.of(flist.getMemoryMapStorage(),
+          dp[0], dp[1], f.getScanNumbers());
       set(FeatureDataType.class, featureData);
       //      }
 
@@ -263,14 +281,20 @@ public class ModularFeature implements Feature, ModularDataModel {
   }
 
   public Node getBufferedColChart(String colname) {
-    return buffertColCharts.get(colname);
+    return buffertColCharts == null ? null : buffertColCharts.get(colname);
   }
 
   public void addBufferedColChart(String colname, Node node) {
+    if (buffertColCharts == null) {
+      buffertColCharts = new HashMap<>();
+    }
     buffertColCharts.put(colname, node);
   }
 
   public void clearBufferedColCharts() {
+    if (buffertColCharts == null) {
+      return;
+    }
     buffertColCharts.forEach((k, v) -> {
       if (v instanceof Pane p && p.getParent() instanceof Pane pane) {
         // remove the node from the parent so there is no more reference and it can be GC'ed
@@ -312,8 +336,13 @@ public class ModularFeature implements Feature, ModularDataModel {
 
   // todo make this private?
   @Override
-  public ObservableMap<DataType, Object> getMap() {
-    return map;
+  public Map<DataType, Object> getMap() {
+    return slot.mapView();
+  }
+
+  @Override
+  public <T> T get(DataType<T> type) {
+    return (T) slot.get(type);
   }
 
   /**
@@ -456,6 +485,8 @@ public class ModularFeature implements Feature, ModularDataModel {
   @Override
   public void setFeatureList(@NotNull FeatureList flist) {
     this.flist = (ModularFeatureList) flist;
+    // move the values to the columns of the new feature list
+    attachValues();
   }
 
   @Override
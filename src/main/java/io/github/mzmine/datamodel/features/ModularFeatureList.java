@@ -52,10 +52,12 @@ import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.DoubleSummaryStatistics;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -66,6 +68,7 @@ import java.util.logging.Logger;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import javafx.collections.FXCollections;
+import javafx.collections.MapChangeListener;
 import javafx.collections.ObservableList;
 import javafx.collections.ObservableMap;
 import org.jetbrains.annotations.NotNull;
@@ -98,6 +101,9 @@ public class ModularFeatureList implements FeatureList {
   // TODO do we need two maps? We could have ObservableMap of LinkedHashMap
   private final ObservableMap<Class<? extends DataType>, DataType> featureTypes = FXCollections.observableMap(
       new LinkedHashMap<>());
+  // values of all rows and features, one slot per data model
+  private final ColumnarDataStore rowDataStore = new ColumnarDataStore();
+  private final ColumnarDataStore featureDataStore = new ColumnarDataStore();
   private final ObservableList<FeatureListRow> featureListRows;
   private final ObservableList<FeatureListAppliedMethod> descriptionOfAppliedTasks;
   // a map that stores row-2-row relationship maps for MS1, MS2, and other relationships
@@ -128,6 +134,20 @@ public class ModularFeatureList implements FeatureList {
     addRowType(new IDType());
     addRowType(new ManualAnnotationType());
     addDefaultListeners();
+
+    // drop the values of removed type columns
+    rowTypes.addListener(
+        (MapChangeListener<? super Class<? extends DataType>, ? super DataType>) change -> {
+          if (change.wasRemoved()) {
+            rowDataStore.removeColumn(change.getValueRemoved());
+          }
+        });
+    featureTypes.addListener(
+        (MapChangeListener<? super Class<? extends DataType>, ? super DataType>) change -> {
+          if (change.wasRemoved()) {
+            featureDataStore.removeColumn(change.getValueRemoved());
+          }
+        });
   }
 
   private void addDefaultListeners() {
@@ -478,6 +498,18 @@ public class ModularFeatureList implements FeatureList {
       }
     }
 //    logger.log(Level.FINEST, "SET ALL ROWS");
+    // free the slots of rows that are discarded
+    final Set<FeatureListRow> newRows = Collections.newSetFromMap(new IdentityHashMap<>());
+    newRows.addAll(Arrays.asList(rows));
+    for (FeatureListRow oldRow : featureListRows) {
+      if (!newRows.contains(oldRow)) {
+        ((ModularFeatureListRow) oldRow).detachValues();
+      }
+    }
+    for (FeatureListRow row : rows) {
+      ((ModularFeatureListRow) row).attachValues();
+    }
+
     featureListRows.clear();
     featureListRows.addAll(rows);
     applyRowBindings();
@@ -525,6 +557,8 @@ public class ModularFeatureList implements FeatureList {
       }
     }
     //    logger.finest("ADD ROW");
+    // values of a removed row are moved back into the columns
+    modularRow.attachValues();
     featureListRows.add(modularRow);
     applyRowBindings(modularRow);
 
@@ -575,7 +609,10 @@ public class ModularFeatureList implements FeatureList {
     // remove buffered charts, otherwise the reference is kept alive. What references the row, though?
     ((ModularFeatureListRow) row).clearBufferedColCharts();
     //    logger.finest("REMOVE ROW");
-    featureListRows.remove(row);
+    if (featureListRows.remove(row)) {
+      // free the slots of the row and its features
+      ((ModularFeatureListRow) row).detachValues();
+    }
   }
 
   /**
@@ -591,10 +628,11 @@ public class ModularFeatureList implements FeatureList {
    */
   @Override
   public void removeRow(int rowNum, FeatureListRow row) {
-    removeRow(featureListRows.get(rowNum));
     // remove buffered charts, otherwise the reference is kept alive. What references the row, though?
     ((ModularFeatureListRow) row).clearBufferedColCharts();
-    featureListRows.remove(rowNum);
+    final ModularFeatureListRow removed = (ModularFeatureListRow) featureListRows.remove(rowNum);
+    // free the slots of the row and its features
+    removed.detachValues();
   }
 
   @Override
@@ -738,6 +776,22 @@ public class ModularFeatureList implements FeatureList {
     return r2rMaps;
   }
 
+  /**
+   * @return the values of all rows of this feature list
+   */
+  @NotNull
+  ColumnarDataStore getRowDataStore() {
+    return rowDataStore;
+  }
+
+  /**
+   * @return the values of all features of this feature list
+   */
+  @NotNull
+  ColumnarDataStore getFeatureDataStore() {
+    return featureDataStore;
+  }
+
   @Override
   public @NotNull Map<DataType<?>, List<DataTypeValueChangeListener<?>>> getFeatureTypeChangeListeners() {
     return featureTypeListeners;
@@ -79,7 +79,6 @@ import java.util.Objects;
 import java.util.logging.Logger;
 import java.util.stream.Stream;
 import javafx.collections.FXCollections;
-import javafx.collections.MapChangeListener;
 import javafx.collections.ObservableList;
 import javafx.collections.ObservableMap;
 import javafx.scene.Node;
@@ -104,12 +103,16 @@ public class ModularFeatureListRow implements FeatureListRow {
    * this final map is used in the FeaturesType - only ModularFeatureListRow is supposed to change
    * this map see {@link #addFeature}
    */
-  private final ObservableMap<DataType, Object> map = FXCollections.observableMap(new HashMap<>());
   private final Map<RawDataFile, ModularFeature> features;
-  // buffert col charts and nodes
-  private final Map<String, Node> buffertColCharts = new HashMap<>();
+  // buffert col charts and nodes, only created once a chart is shown
+  private Map<String, Node> buffertColCharts;
   @NotNull
   private ModularFeatureList flist;
+  /**
+   * the values of this row are stored in the columns of the feature list at this slot. Once the
+   * row is removed, the values are moved to a detached store.
+   */
+  private volatile ColumnarDataStore.Slot slot;
 
   /**
    * Creates an empty row
@@ -119,25 +122,13 @@ public class ModularFeatureListRow implements FeatureListRow {
    */
   public ModularFeatureListRow(@NotNull ModularFeatureList flist, int id) {
     this.flist = flist;
-
-    // register listener to types map to automatically generate default properties for new DataTypes
-    flist.getRowTypes().addListener(
-        (MapChangeListener<? super Class<? extends DataType>, ? super DataType>) change -> {
-          if (change.wasAdded()) {
-            // do nothing for now
-          } else if (change.wasRemoved()) {
-            // remove type columns to maps
-            DataType type = change.getValueRemoved();
-            this.remove((Class) type.getClass());
-          }
-        });
+    this.slot = flist.getRowDataStore().newSlot();
 
     // features
     List<RawDataFile> raws = flist.getRawDataFiles();
     if (!raws.isEmpty()) {
       // init FeaturesType map (is final)
-      HashMap<RawDataFile, ModularFeature> fmap = new HashMap<>(raws.size());
-      features = (FXCollections.observableMap(fmap));
+      features = FXCollections.observableMap(new HashMap<>(raws.size()));
       // set
       set(FeaturesType.class, features);
     } else {
@@ -206,8 +197,43 @@ public class ModularFeatureListRow implements FeatureListRow {
 
   // todo make private?
   @Override
-  public ObservableMap<DataType, Object> getMap() {
-    return map;
+  public Map<DataType, Object> getMap() {
+    return slot.mapView();
+  }
+
+  @Override
+  public <T> T get(DataType<T> type) {
+    return (T) slot.get(type);
+  }
+
+  /**
+   * Moves the values of this row and its features out of the columns of the feature list, so the
+   * slots are freed once the row was removed. The values are moved back by
+   * {@link #attachValues()} if the row is added again.
+   */
+  void detachValues() {
+    final ColumnarDataStore.Slot slot = this.slot;
+    if (slot.store() == flist.getRowDataStore()) {
+      this.slot = slot.store().moveTo(slot.index(), new ColumnarDataStore(1));
+    }
+    for (ModularFeature feature : features.values()) {
+      feature.detachValues();
+    }
+  }
+
+  /**
+   * Moves the values of this row and its features into the columns of the feature list, if they
+   * are not stored there already.
+   */
+  void attachValues() {
+    final ColumnarDataStore.Slot slot = this.slot;
+    final ColumnarDataStore listStore = flist.getRowDataStore();
+    if (slot.store() != listStore) {
+      this.slot = slot.store().moveTo(slot.index(), listStore);
+    }
+    for (ModularFeature feature : features.values()) {
+      feature.attachValues();
+    }
   }
 
   @Override
@@ -282,6 +308,10 @@ public class ModularFeatureListRow implements FeatureListRow {
     ModularFeature oldFeature = features.put(raw, modularFeature);
     modularFeature.setFeatureList(flist);
     modularFeature.setRow(this);
+    if (oldFeature != null && oldFeature != modularFeature) {
+      // the replaced feature frees its slot in the feature list
+      oldFeature.detachValues();
+    }
 
     if (!Objects.equals(oldFeature, modularFeature)) {
       // reflect changes by updating all row bindings
@@ -308,7 +338,10 @@ public class ModularFeatureListRow implements FeatureListRow {
 
   @Override
   public void removeFeature(RawDataFile file) {
-    this.features.remove(file);
+    final ModularFeature removed = this.features.remove(file);
+    if (removed != null) {
+      removed.detachValues();
+    }
   }
 
   @Override
@@ -381,14 +414,20 @@ public class ModularFeatureListRow implements FeatureListRow {
   }
 
   public Node getBufferedColChart(String colname) {
-    return buffertColCharts.get(colname);
+    return buffertColCharts == null ? null : buffertColCharts.get(colname);
   }
 
   public void addBufferedColChart(String colname, Node node) {
+    if (buffertColCharts == null) {
+      buffertColCharts = new HashMap<>();
+    }
     buffertColCharts.put(colname, node);
   }
 
   public void clearBufferedColCharts() {
+    if (buffertColCharts == null) {
+      return;
+    }
     buffertColCharts.forEach((k, v) -> {
       if (v instanceof Pane p && p.getParent() instanceof Pane pane) {
         // remove the node from the parent so there is no more reference and it can be GC'ed
@@ -425,6 +464,11 @@ public class ModularFeatureListRow implements FeatureListRow {
           "Cannot set non-modular feature list to modular feature list row.");
     }
     this.flist = (ModularFeatureList) flist;
+    // move the values to the columns of the new feature list
+    final ColumnarDataStore.Slot slot = this.slot;
+    if (slot.store() != this.flist.getRowDataStore()) {
+      this.slot = slot.store().moveTo(slot.index(), this.flist.getRowDataStore());
+    }
   }
 
   @Override
@@ -543,7 +587,7 @@ public class ModularFeatureListRow implements FeatureListRow {
 
   @Override
   public void addCompoundAnnotation(CompoundDBAnnotation id) {
-    synchronized (getMap()) {
+    synchronized (this) {
       List<CompoundDBAnnotation> matches = get(CompoundDatabaseMatchesType.class);
       if (matches == null) {
         matches = new ArrayList<>();
@@ -583,14 +627,14 @@ public class ModularFeatureListRow implements FeatureListRow {
 
   @Override
   public void setCompoundAnnotations(List<CompoundDBAnnotation> annotations) {
-    synchronized (getMap()) {
+    synchronized (this) {
       set(CompoundDatabaseMatchesType.class, annotations);
     }
   }
 
   @Override
   public void addSpectralLibraryMatch(SpectralDBAnnotation id) {
-    synchronized (getMap()) {
+    synchronized (this) {
       List<SpectralDBAnnotation> matches = get(SpectralLibraryMatchesType.class);
       if (matches == null) {
         matches = new ArrayList<>();
@@ -602,7 +646,7 @@ public class ModularFeatureListRow implements FeatureListRow {
 
   @Override
   public void addSpectralLibraryMatches(List<SpectralDBAnnotation> matches) {
-    synchronized (getMap()) {
+    synchronized (this) {
       List<SpectralDBAnnotation> old = get(SpectralLibraryMatchesType.class);
       if (old == null) {
         old = new ArrayList<>();
@@ -620,7 +664,7 @@ public class ModularFeatureListRow implements FeatureListRow {
 
   @Override
   public void setSpectralLibraryMatch(List<SpectralDBAnnotation> matches) {
-    synchronized (getMap()) {
+    synchronized (this) {
       set(SpectralLibraryMatchesType.class, matches);
     }
   }
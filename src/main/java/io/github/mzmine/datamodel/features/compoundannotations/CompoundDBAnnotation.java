@@ -80,11 +80,7 @@ public interface CompoundDBAnnotation extends Cloneable, FeatureAnnotation {
   static List<CompoundDBAnnotation> buildCompoundsWithAdducts(
       CompoundDBAnnotation neutralAnnotation, IonNetworkLibrary library) {
     final List<CompoundDBAnnotation> annotations = new ArrayList<>();
-    for (IonType adduct : library.getAllAdducts()) {
-      if (adduct.isUndefinedAdduct() || adduct.isUndefinedAdductParent() || adduct.getName()
-          .contains("?")) {
-        continue;
-      }
+    for (IonType adduct : getDefinedAdducts(library)) {
       try {
         annotations.add(neutralAnnotation.ionize(adduct));
       } catch (IllegalStateException e) {
@@ -95,6 +91,23 @@ public interface CompoundDBAnnotation extends Cloneable, FeatureAnnotation {
     return annotations;
   }
 
+  /**
+   * @return all adducts of the library that can be used to ionize a compound, in library order.
+   * Undefined adducts are skipped.
+   */
+  @NotNull
+  static List<IonType> getDefinedAdducts(IonNetworkLibrary library) {
+    final List<IonType> adducts = new ArrayList<>();
+    for (IonType adduct : library.getAllAdducts()) {
+      if (adduct.isUndefinedAdduct() || adduct.isUndefinedAdductParent() || adduct.getName()
+          .contains("?")) {
+        continue;
+      }
+      adducts.add(adduct);
+    }
+    return adducts;
+  }
+
   /**
    * Calculates the m/z for a given adduct.
    *
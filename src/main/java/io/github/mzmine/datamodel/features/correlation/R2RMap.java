@@ -27,16 +27,43 @@ package io.github.mzmine.datamodel.features.correlation;
 
 import io.github.mzmine.datamodel.features.FeatureListRow;
 import io.github.mzmine.util.MathUtils;
-import java.util.concurrent.ConcurrentHashMap;
+import it.unimi.dsi.fastutil.HashCommon;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 /**
- * Map an object to two rows
+ * Map an object to two rows. The pairs of row IDs are packed into primitive long keys, which do not
+ * overflow for large feature lists. The map is split into segments with separate locks, so it can
+ * be filled by multiple threads. Each row keeps a list of its relationships for fast neighbour
+ * queries.
  *
  * @author Robin Schmid
  */
-public class R2RMap<T> extends ConcurrentHashMap<Integer, T> {
+public class R2RMap<T extends RowsRelationship> {
 
+  // power of two
+  private static final int SEGMENTS = 64;
+
+  private final Long2ObjectOpenHashMap<T>[] pairSegments;
+  private final Int2ObjectOpenHashMap<List<T>>[] rowSegments;
+  private final AtomicInteger size = new AtomicInteger(0);
+
+  @SuppressWarnings("unchecked")
   public R2RMap() {
+    pairSegments = new Long2ObjectOpenHashMap[SEGMENTS];
+    rowSegments = new Int2ObjectOpenHashMap[SEGMENTS];
+    for (int i = 0; i < SEGMENTS; i++) {
+      pairSegments[i] = new Long2ObjectOpenHashMap<>();
+      rowSegments[i] = new Int2ObjectOpenHashMap<>();
+    }
   }
 
   /**
@@ -46,8 +73,16 @@ public class R2RMap<T> extends ConcurrentHashMap<Integer, T> {
    * @param b Feature list row with getID >=0
    * @return unique undirected ID
    */
-  public static int toKey(FeatureListRow a, FeatureListRow b) {
-    return MathUtils.undirectedPairing(a.getID(), b.getID());
+  public static long toKey(FeatureListRow a, FeatureListRow b) {
+    return MathUtils.undirectedPairingLong(a.getID(), b.getID());
+  }
+
+  private Long2ObjectOpenHashMap<T> pairSegment(long key) {
+    return pairSegments[(int) HashCommon.mix(key) & (SEGMENTS - 1)];
+  }
+
+  private Int2ObjectOpenHashMap<List<T>> rowSegment(int id) {
+    return rowSegments[HashCommon.mix(id) & (SEGMENTS - 1)];
   }
 
   /**
@@ -57,7 +92,7 @@ public class R2RMap<T> extends ConcurrentHashMap<Integer, T> {
    * @param value values is mapped to the pair of FeatureListRows a and b
    */
   public void add(FeatureListRow a, FeatureListRow b, T value) {
-    this.put(toKey(a, b), value);
+    put(a, b, value);
   }
 
   /**
@@ -65,9 +100,62 @@ public class R2RMap<T> extends ConcurrentHashMap<Integer, T> {
    * and yield the same mapping.
    *
    * @param value values is mapped to the pair of FeatureListRows a and b
+   * @return the previous value or null
+   */
+  @Nullable
+  public T put(FeatureListRow a, FeatureListRow b, @NotNull T value) {
+    return put(a.getID(), b.getID(), value);
+  }
+
+  private T put(int idA, int idB, @NotNull T value) {
+    final long key = MathUtils.undirectedPairingLong(idA, idB);
+    final Long2ObjectOpenHashMap<T> segment = pairSegment(key);
+    // the row lists are only locked while holding the pair lock, so there is no deadlock
+    synchronized (segment) {
+      final T old = segment.put(key, value);
+      if (old == null) {
+        size.incrementAndGet();
+      }
+      updateRelationships(idA, old, value);
+      if (idA != idB) {
+        updateRelationships(idB, old, value);
+      }
+      return old;
+    }
+  }
+
+  private void updateRelationships(int id, @Nullable T old, @NotNull T value) {
+    final Int2ObjectOpenHashMap<List<T>> segment = rowSegment(id);
+    synchronized (segment) {
+      final List<T> relationships = segment.computeIfAbsent(id, k -> new ArrayList<>(4));
+      if (old != null) {
+        for (int i = 0; i < relationships.size(); i++) {
+          if (relationships.get(i) == old) {
+            relationships.set(i, value);
+            return;
+          }
+        }
+      }
+      relationships.add(value);
+    }
+  }
+
+  /**
+   * Adds all mappings of another map.
+   *
+   * @param map the source map
    */
-  public void put(FeatureListRow a, FeatureListRow b, T value) {
-    super.put(toKey(a, b), value);
+  public void putAll(@NotNull R2RMap<? extends T> map) {
+    for (var segment : map.pairSegments) {
+      final List<Long2ObjectMap.Entry<? extends T>> entries;
+      synchronized (segment) {
+        entries = new ArrayList<>(segment.long2ObjectEntrySet());
+      }
+      for (var entry : entries) {
+        final long key = entry.getLongKey();
+        put((int) (key >>> 32), (int) key, entry.getValue());
+      }
+    }
   }
 
   /**
@@ -75,8 +163,75 @@ public class R2RMap<T> extends ConcurrentHashMap<Integer, T> {
    *
    * @return the value mapped to the pair of a-b (== b-a) or null if no mapping exists
    */
+  @Nullable
   public T get(FeatureListRow a, FeatureListRow b) {
-    return get(toKey(a, b));
+    final long key = toKey(a, b);
+    final Long2ObjectOpenHashMap<T> segment = pairSegment(key);
+    synchronized (segment) {
+      return segment.get(key);
+    }
+  }
+
+  /**
+   * All relationships of a row, which describe the edges to its neighbours.
+   *
+   * @param row the row
+   * @return a copy of the relationships of this row, empty if there are none
+   */
+  @NotNull
+  public List<T> getRelationships(FeatureListRow row) {
+    final int id = row.getID();
+    final Int2ObjectOpenHashMap<List<T>> segment = rowSegment(id);
+    synchronized (segment) {
+      final List<T> relationships = segment.get(id);
+      return relationships == null ? List.of() : List.copyOf(relationships);
+    }
+  }
+
+  /**
+   * @param row the row
+   * @return the rows that have a relationship with this row
+   */
+  @NotNull
+  public List<FeatureListRow> getNeighbors(FeatureListRow row) {
+    final List<T> relationships = getRelationships(row);
+    final List<FeatureListRow> neighbors = new ArrayList<>(relationships.size());
+    for (T relationship : relationships) {
+      neighbors.add(relationship.getRowA().getID() == row.getID() ? relationship.getRowB()
+          : relationship.getRowA());
+    }
+    return neighbors;
+  }
+
+  /**
+   * @return a snapshot of all values
+   */
+  @NotNull
+  public Collection<T> values() {
+    final List<T> values = new ArrayList<>(size());
+    forEach(values::add);
+    return values;
+  }
+
+  /**
+   * Performs the action for all values. Values added concurrently might not be visited.
+   */
+  public void forEach(Consumer<? super T> action) {
+    for (var segment : pairSegments) {
+      final List<T> values;
+      synchronized (segment) {
+        values = new ArrayList<>(segment.values());
+      }
+      values.forEach(action);
+    }
+  }
+
+  public int size() {
+    return size.get();
+  }
+
+  public boolean isEmpty() {
+    return size() == 0;
   }
 
 }
@@ -62,6 +62,20 @@ public abstract class AbstractStorableSpectrum extends AbstractMassSpectrum {
     setDataPoints(storage, mzValues, intensityValues);
   }
 
+  /**
+   * Uses values that were already stored, e.g., slices of a buffer shared by multiple spectra.
+   *
+   * @param mzValues        The stored m/z values, sorted in ascending order.
+   * @param intensityValues The stored intensity values.
+   */
+  protected AbstractStorableSpectrum(@NotNull DoubleBuffer mzValues,
+      @NotNull DoubleBuffer intensityValues) {
+    assert mzValues.capacity() == intensityValues.capacity();
+    this.mzValues = mzValues;
+    this.intensityValues = intensityValues;
+    updateMzRangeAndTICValues();
+  }
+
   protected synchronized void setDataPoints(@Nullable MemoryMapStorage storage,
       @Nullable double[] mzValues,
       @Nullable double[] intensityValues) {
@@ -116,6 +116,84 @@ public class MobilityScanStorage {
     }
   }
 
+  /**
+   * Creates the storage from the values of all mobility scans that are already stored in
+   * consecutive buffers, e.g., memory mapped from a project. The buffers are not copied.
+   *
+   * @param mzs            The m/z values of all mobility scans.
+   * @param intensities    The intensity values of all mobility scans.
+   * @param storageOffsets The index of the first value of each mobility scan.
+   */
+  public MobilityScanStorage(@NotNull final Frame frame, @NotNull final DoubleBuffer mzs,
+      @NotNull final DoubleBuffer intensities, @NotNull final int[] storageOffsets) {
+    if (storageOffsets.length == 0 || mzs.capacity() != intensities.capacity()) {
+      throw new IllegalArgumentException(String.format(
+          "Invalid mobility scan values: %d mobility scans, %d m/z and %d intensity values.",
+          storageOffsets.length, mzs.capacity(), intensities.capacity()));
+    }
+    this.frame = frame;
+    rawMzValues = mzs;
+    rawIntensityValues = intensities;
+    rawStorageOffsets = IntBuffer.wrap(storageOffsets);
+    rawBasePeakIndices = IntBuffer.wrap(findBasePeakIndices(intensities, storageOffsets));
+    rawMaxNumPoints = findMaxNumPoints(intensities.capacity(), storageOffsets);
+  }
+
+  /**
+   * Sets the mass lists of all mobility scans from values that are already stored in consecutive
+   * buffers, e.g., memory mapped from a project. The buffers are not copied.
+   *
+   * @param mzs            The m/z values of all mass lists.
+   * @param intensities    The intensity values of all mass lists.
+   * @param storageOffsets The index of the first value of the mass list of each mobility scan.
+   */
+  public void setMassLists(@NotNull final DoubleBuffer mzs, @NotNull final DoubleBuffer intensities,
+      @NotNull final int[] storageOffsets) {
+    if (storageOffsets.length != getNumberOfMobilityScans()
+        || mzs.capacity() != intensities.capacity()) {
+      throw new IllegalArgumentException(String.format(
+          "Invalid mass lists: %d mass lists for %d mobility scans, %d m/z and %d intensities.",
+          storageOffsets.length, getNumberOfMobilityScans(), mzs.capacity(),
+          intensities.capacity()));
+    }
+    massListMzValues = mzs;
+    massListIntensityValues = intensities;
+    massListStorageOffsets = IntBuffer.wrap(storageOffsets);
+    massListBasePeakIndices = IntBuffer.wrap(findBasePeakIndices(intensities, storageOffsets));
+    massListMaxNumPoints = findMaxNumPoints(intensities.capacity(), storageOffsets);
+  }
+
+  /**
+   * @return The index of the highest intensity of each scan relative to the scan start or -1 if the
+   * scan is empty.
+   */
+  private static int[] findBasePeakIndices(DoubleBuffer intensities, int[] storageOffsets) {
+    final int[] basePeakIndices = new int[storageOffsets.length];
+    for (int scan = 0; scan < storageOffsets.length; scan++) {
+      final int start = storageOffsets[scan];
+      final int end =
+          scan < storageOffsets.length - 1 ? storageOffsets[scan + 1] : intensities.capacity();
+      double maxIntensity = -1d;
+      basePeakIndices[scan] = -1;
+      for (int i = start; i < end; i++) {
+        if (intensities.get(i) > maxIntensity) {
+          maxIntensity = intensities.get(i);
+          basePeakIndices[scan] = i - start;
+        }
+      }
+    }
+    return basePeakIndices;
+  }
+
+  private static int findMaxNumPoints(int numValues, int[] storageOffsets) {
+    int max = 0;
+    for (int scan = 0; scan < storageOffsets.length; scan++) {
+      final int end = scan < storageOffsets.length - 1 ? storageOffsets[scan + 1] : numValues;
+      max = Math.max(max, end - storageOffsets[scan]);
+    }
+    return max;
+  }
+
   /**
    * @param storage                The storage for mobility scans-
    * @param massDetector           The mass detector
@@ -164,6 +242,13 @@ public class MobilityScanStorage {
     massListIntensityValues = StorageUtils.storeValuesToDoubleBuffer(storage, intensities);
   }
 
+  /**
+   * @return true if the mass lists of the mobility scans were set.
+   */
+  public boolean hasMassLists() {
+    return massListIntensityValues != null;
+  }
+
   public MassList getMassList(int mobilityScanIndex) {
     if (massListIntensityValues == null) {
       return null;
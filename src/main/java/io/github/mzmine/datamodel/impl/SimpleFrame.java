@@ -37,6 +37,7 @@ import io.github.mzmine.datamodel.RawDataFile;
 import io.github.mzmine.datamodel.msms.PasefMsMsInfo;
 import io.github.mzmine.project.impl.IMSRawDataFileImpl;
 import it.unimi.dsi.fastutil.doubles.DoubleImmutableList;
+import java.nio.DoubleBuffer;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.HashSet;
@@ -148,6 +149,27 @@ public class SimpleFrame extends SimpleScan implements Frame {
         originalMobilityScans, useAsMassList);
   }
 
+  /**
+   * Sets the mobility scans from values that are already stored in consecutive buffers, e.g.,
+   * memory mapped from a project. Can only be called during raw data file reading.
+   *
+   * @param mzs            The m/z values of all mobility scans.
+   * @param intensities    The intensity values of all mobility scans.
+   * @param storageOffsets The index of the first value of each mobility scan.
+   * @return The mobility scan storage, e.g., to set the mass lists.
+   * @see MobilityScanStorage#setMassLists(DoubleBuffer, DoubleBuffer, int[])
+   */
+  public MobilityScanStorage setMobilityScans(@NotNull DoubleBuffer mzs,
+      @NotNull DoubleBuffer intensities, @NotNull int[] storageOffsets) {
+    if (getMobilities() != null && (storageOffsets.length != getMobilities().size())) {
+      throw new IllegalArgumentException(String.format(
+          "Number of mobility values (%d) does not match number of mobility scans (%d).",
+          getMobilities().size(), storageOffsets.length));
+    }
+    mobilityScanStorage = new MobilityScanStorage(this, mzs, intensities, storageOffsets);
+    return mobilityScanStorage;
+  }
+
   @Override
   public double getMobilityForMobilityScanNumber(int mobilityScanIndex) {
     return ((IMSRawDataFile) (getDataFile())).getSegmentMobilities(
@@ -34,6 +34,7 @@ import io.github.mzmine.datamodel.Scan;
 import io.github.mzmine.datamodel.msms.MsMsInfo;
 import io.github.mzmine.taskcontrol.TaskStatus;
 import io.github.mzmine.util.scans.ScanUtils;
+import java.nio.DoubleBuffer;
 import javax.validation.constraints.Null;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -99,6 +100,29 @@ public class SimpleScan extends AbstractStorableSpectrum implements Scan {
     this.injectionTime = injectionTime;
   }
 
+  /**
+   * Constructor for scans with already stored values, e.g. views of a memory mapped raw data
+   * snapshot.
+   */
+  public SimpleScan(@NotNull RawDataFile dataFile, int scanNumber, int msLevel, float retentionTime,
+      @Nullable MsMsInfo msMsInfo, @NotNull DoubleBuffer mzValues,
+      @NotNull DoubleBuffer intensityValues, MassSpectrumType spectrumType, PolarityType polarity,
+      String scanDefinition, Range<Double> scanMZRange, @Nullable Float injectionTime) {
+
+    super(mzValues, intensityValues);
+
+    this.dataFile = dataFile;
+    this.scanNumber = scanNumber;
+    this.msLevel = msLevel;
+    this.retentionTime = retentionTime;
+    this.polarity = polarity;
+    this.scanDefinition = scanDefinition;
+    this.scanMZRange = scanMZRange;
+    setSpectrumType(spectrumType);
+    setMsMsInfo(msMsInfo);
+    this.injectionTime = injectionTime;
+  }
+
 
   /**
    * @see io.github.mzmine.datamodel.Scan#getScanNumber()
@@ -27,10 +27,12 @@ package io.github.mzmine.datamodel.impl.masslist;
 
 import io.github.mzmine.datamodel.DataPoint;
 import io.github.mzmine.datamodel.MassList;
+import io.github.mzmine.datamodel.featuredata.impl.StorageUtils;
 import io.github.mzmine.datamodel.impl.AbstractStorableSpectrum;
 import io.github.mzmine.datamodel.impl.SimpleDataPoint;
 import io.github.mzmine.util.DataPointUtils;
 import io.github.mzmine.util.MemoryMapStorage;
+import java.nio.DoubleBuffer;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -44,6 +46,16 @@ public class SimpleMassList extends AbstractStorableSpectrum implements MassList
     super(storage, mzValues, intensityValues);
   }
 
+  /**
+   * @param mzValues        already stored m/z values, e.g. a slice of a buffer shared by multiple
+   *                        mass lists. See {@link StorageUtils#storeValuesToSlices(MemoryMapStorage,
+   *                        double[], int[])}
+   * @param intensityValues already stored intensity values
+   */
+  public SimpleMassList(@NotNull DoubleBuffer mzValues, @NotNull DoubleBuffer intensityValues) {
+    super(mzValues, intensityValues);
+  }
+
   /**
    * Use mzValues and intensityValues constructor
    *
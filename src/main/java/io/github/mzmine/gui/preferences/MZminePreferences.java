@@ -153,6 +153,12 @@ public class MZminePreferences extends SimpleParameterSet {
       KeepInMemory.ALL, KeepInMemory.MASSES_AND_FEATURES), KeepInMemory.values(),
       KeepInMemory.NONE);
 
+  public static final BooleanParameter cacheSpectralLibraries = new BooleanParameter(
+      "Cache spectral libraries", "Writes a binary copy of imported spectral libraries and the "
+      + "index of local compound databases to the .mzmine3_library_cache folder in the user "
+      + "directory, which speeds up later imports and searches of the same library. Old copies are "
+      + "removed when the folder grows too large.", true);
+
   public static final BooleanParameter showPrecursorWindow = new BooleanParameter(
       "Show precursor windows", "Show the isolation window instead of just the precursor m/z.",
       false);
@@ -169,7 +175,8 @@ public class MZminePreferences extends SimpleParameterSet {
   public MZminePreferences() {
     super(new Parameter[]{
         // start with performance
-        numOfThreads, memoryOption, tempDirectory, proxySettings, rExecPath, sendStatistics,
+        numOfThreads, memoryOption, tempDirectory, cacheSpectralLibraries, proxySettings,
+        rExecPath, sendStatistics,
         // visuals
         // number formats
         mzFormat, rtFormat, mobilityFormat, ccsFormat, intensityFormat, ppmFormat, scoreFormat,
@@ -194,8 +201,8 @@ public class MZminePreferences extends SimpleParameterSet {
 
     // add groups
     dialog.addParameterGroup("General",
-        new Parameter[]{numOfThreads, memoryOption, tempDirectory, proxySettings, rExecPath,
-            sendStatistics});
+        new Parameter[]{numOfThreads, memoryOption, tempDirectory, cacheSpectralLibraries,
+            proxySettings, rExecPath, sendStatistics});
     dialog.addParameterGroup("Formats",
         new Parameter[]{mzFormat, rtFormat, mobilityFormat, ccsFormat, intensityFormat, ppmFormat,
             scoreFormat, unitFormat});
@@ -47,7 +47,7 @@ import io.github.mzmine.project.impl.ProjectManagerImpl;
 import io.github.mzmine.project.impl.RawDataFileImpl;
 import io.github.mzmine.taskcontrol.Task;
 import io.github.mzmine.taskcontrol.TaskController;
-import io.github.mzmine.taskcontrol.impl.TaskControllerImpl;
+import io.github.mzmine.taskcontrol.impl.WorkStealingTaskControllerImpl;
 import io.github.mzmine.util.ExitCode;
 import io.github.mzmine.util.MemoryMapStorage;
 import io.github.mzmine.util.files.FileAndPathUtil;
@@ -67,6 +67,8 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Properties;
+import java.util.Set;
+import java.util.WeakHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javafx.application.Application;
@@ -86,10 +88,11 @@ public final class MZmineCore {
   // the default headless desktop is returned if no other desktop is set (e.g., during start up)
   // it is also used in headless mode
   private final Desktop defaultHeadlessDesktop = new HeadLessDesktop();
-  private final List<MemoryMapStorage> storageList = Collections.synchronizedList(
-      new ArrayList<>());
+  // weak references, so storages of removed raw data files and feature lists can be reclaimed
+  private final Set<MemoryMapStorage> storageList = Collections.synchronizedSet(
+      Collections.newSetFromMap(new WeakHashMap<>()));
   private final Map<Class<?>, MZmineModule> initializedModules = new Hashtable<>();
-  private TaskControllerImpl taskController;
+  private WorkStealingTaskControllerImpl taskController;
   private MZmineConfiguration configuration;
   private Desktop desktop;
   private ProjectManagerImpl projectManager;
@@ -447,7 +450,10 @@ public final class MZmineCore {
   }
 
   public static List<MemoryMapStorage> getStorageList() {
-    return getInstance().storageList;
+    final Set<MemoryMapStorage> storages = getInstance().storageList;
+    synchronized (storages) {
+      return List.copyOf(storages);
+    }
   }
 
   private void init() {
@@ -464,7 +470,7 @@ public final class MZmineCore {
 
     // Create instances of core modules
     projectManager = new ProjectManagerImpl();
-    taskController = new TaskControllerImpl();
+    taskController = new WorkStealingTaskControllerImpl();
 
     logger.fine("Initializing core classes..");
 
@@ -28,6 +28,7 @@ package io.github.mzmine.modules.batchmode;
 import io.github.mzmine.parameters.Parameter;
 import io.github.mzmine.parameters.impl.SimpleParameterSet;
 import io.github.mzmine.parameters.parametertypes.AdvancedParametersParameter;
+import io.github.mzmine.parameters.parametertypes.BooleanParameter;
 import io.github.mzmine.parameters.parametertypes.filenames.FileNameListSilentParameter;
 import io.github.mzmine.util.ExitCode;
 
@@ -40,8 +41,16 @@ public class BatchModeParameters extends SimpleParameterSet {
   public static final AdvancedParametersParameter<AdvancedBatchModeParameters> advanced = new AdvancedParametersParameter<>(
       new AdvancedBatchModeParameters());
 
+  public static final BooleanParameter pipelinePerFileSteps = new BooleanParameter(
+      "Pipeline per-file steps",
+      "Consecutive steps that process each data file on its own (import, mass detection, chromatogram "
+          + "building, smoothing, resolving) run as one pipeline per file, so a slow file does not "
+          + "stall the others. Steps like alignment or gap filling wait for all files. Requires "
+          + "\"Those created by previous batch step\" as the data file and feature list selection.",
+      false);
+
   public BatchModeParameters() {
-    super(new Parameter[]{batchQueue, advanced, lastFiles});
+    super(new Parameter[]{batchQueue, pipelinePerFileSteps, advanced, lastFiles});
   }
 
   @Override
@@ -30,11 +30,18 @@ import io.github.mzmine.datamodel.RawDataFile;
 import io.github.mzmine.datamodel.features.FeatureList;
 import io.github.mzmine.main.GoogleAnalyticsTracker;
 import io.github.mzmine.main.MZmineCore;
+import io.github.mzmine.modules.MZmineModule;
 import io.github.mzmine.modules.MZmineModuleCategory;
 import io.github.mzmine.modules.MZmineProcessingModule;
 import io.github.mzmine.modules.MZmineProcessingStep;
 import io.github.mzmine.modules.MZmineRunnableModule;
+import io.github.mzmine.modules.dataprocessing.featdet_adapchromatogrambuilder.ModularADAPChromatogramBuilderModule;
+import io.github.mzmine.modules.dataprocessing.featdet_chromatogramdeconvolution.FeatureResolverModule;
+import io.github.mzmine.modules.dataprocessing.featdet_massdetection.MassDetectionModule;
+import io.github.mzmine.modules.dataprocessing.featdet_smoothing.SmoothingModule;
+import io.github.mzmine.modules.io.import_rawdata_all.AllSpectralDataImportModule;
 import io.github.mzmine.modules.io.import_rawdata_all.AllSpectralDataImportParameters;
+import io.github.mzmine.modules.io.import_rawdata_all.RawDataImportTask;
 import io.github.mzmine.parameters.Parameter;
 import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.parameters.parametertypes.EmbeddedParameterSet;
@@ -42,13 +49,14 @@ import io.github.mzmine.parameters.parametertypes.filenames.FileNameParameter;
 import io.github.mzmine.parameters.parametertypes.filenames.FileNamesParameter;
 import io.github.mzmine.parameters.parametertypes.selectors.FeatureListsParameter;
 import io.github.mzmine.parameters.parametertypes.selectors.FeatureListsSelection;
+import io.github.mzmine.parameters.parametertypes.selectors.FeatureListsSelectionType;
 import io.github.mzmine.parameters.parametertypes.selectors.RawDataFilesParameter;
 import io.github.mzmine.parameters.parametertypes.selectors.RawDataFilesSelection;
+import io.github.mzmine.parameters.parametertypes.selectors.RawDataFilesSelectionType;
 import io.github.mzmine.taskcontrol.AbstractTask;
 import io.github.mzmine.taskcontrol.Task;
 import io.github.mzmine.taskcontrol.TaskPriority;
 import io.github.mzmine.taskcontrol.TaskStatus;
-import io.github.mzmine.taskcontrol.impl.WrappedTask;
 import io.github.mzmine.util.ExitCode;
 import io.github.mzmine.util.files.FileAndPathUtil;
 import java.io.File;
@@ -56,9 +64,16 @@ import java.nio.file.Paths;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.logging.Logger;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 /**
  * Batch mode task
@@ -84,6 +99,10 @@ public class BatchTask extends AbstractTask {
   private Boolean createResultsDir;
   private File parentDir;
   private int currentDataset;
+  // run consecutive per-file steps as one pipeline per data file
+  private final boolean pipelinePerFileSteps;
+  // wakes up the batch when a task of the current step is done
+  private final TaskCompletionSignal completionSignal = new TaskCompletionSignal();
 
   BatchTask(MZmineProject project, ParameterSet parameters, @NotNull Instant moduleCallDate) {
     this(project, parameters, moduleCallDate,
@@ -117,6 +136,14 @@ public class BatchTask extends AbstractTask {
     createdFeatureLists = new ArrayList<>();
     previousCreatedDataFiles = new ArrayList<>();
     previousCreatedFeatureLists = new ArrayList<>();
+    pipelinePerFileSteps = parameters.getValue(BatchModeParameters.pipelinePerFileSteps);
+
+    // wake up the waiting batch to cancel the tasks of the current step
+    addTaskStatusListener((task, newStatus, oldStatus) -> {
+      if (newStatus == TaskStatus.CANCELED) {
+        completionSignal.signal();
+      }
+    });
   }
 
   @Override
@@ -167,9 +194,17 @@ public class BatchTask extends AbstractTask {
         }
       }
 
-      // run step
-      processQueueStep(i % stepsPerDataset);
-      processedSteps++;
+      // run step or a pipeline of consecutive per-file steps
+      final int step = i % stepsPerDataset;
+      final int segmentEnd = pipelinePerFileSteps ? findPerFileSegmentEnd(step) : step + 1;
+      if (segmentEnd - step > 1) {
+        processPerFileSegment(step, segmentEnd);
+        processedSteps += segmentEnd - step;
+        i += segmentEnd - step - 1;
+      } else {
+        processQueueStep(step);
+        processedSteps++;
+      }
 
       // If we are canceled or ran into error, stop here
       if (isCanceled()) {
@@ -265,24 +300,299 @@ public class BatchTask extends AbstractTask {
       createdFeatureLists = previousCreatedFeatureLists;
     }
 
+    completionSignal.reset();
+    final List<Task> currentStepTasks = startStep(method, batchStepParameters, createdDataFiles,
+        createdFeatureLists);
+    if (currentStepTasks == null) {
+      return;
+    }
+    // track step by module
+    GoogleAnalyticsTracker.trackModule(method);
+
+    // If current step didn't produce any tasks, continue with next step
+    if (currentStepTasks.isEmpty()) {
+      return;
+    }
+
+    // wait for status events of the tasks instead of polling
+    while (true) {
+      // If we canceled the batch, cancel all running tasks
+      if (isCanceled()) {
+        cancelTasks(currentStepTasks);
+        return;
+      }
+
+      final TaskStatus stepStatus = checkTasks(currentStepTasks);
+      if (stepStatus == TaskStatus.FINISHED) {
+        break;
+      } else if (stepStatus != TaskStatus.PROCESSING) {
+        return;
+      }
+      awaitCompletionSignal();
+    }
+
+    createdDataFiles = new ArrayList<>(project.getCurrentRawDataFiles());
+    createdFeatureLists = new ArrayList<>(project.getCurrentFeatureLists());
+    createdDataFiles.removeAll(beforeDataFiles);
+    createdFeatureLists.removeAll(beforeFeatureLists);
+    // Clear the saved data files and feature lists. Save them to the
+    // "previous" lists, in case the next step does not produce any new data
+    if (!createdDataFiles.isEmpty()) {
+      previousCreatedDataFiles = createdDataFiles;
+    }
+    if (!createdFeatureLists.isEmpty()) {
+      previousCreatedFeatureLists = createdFeatureLists;
+    }
+  }
+
+  /**
+   * Runs the steps from firstStep (inclusive) to endStep (exclusive) as one pipeline per data file.
+   * Each file continues with the next step as soon as its own tasks are finished. The steps are run
+   * with a copy of their parameters that only selects the data file and the feature lists of this
+   * pipeline. If the first step is the data import, a pipeline is started for every imported file as
+   * soon as its import task is finished.
+   */
+  private void processPerFileSegment(final int firstStep, final int endStep) {
+
+    logger.info(String.format("Starting steps # %d to %d as one pipeline per data file",
+        firstStep + 1, endStep));
+
+    if (createdDataFiles.isEmpty()) {
+      createdDataFiles = previousCreatedDataFiles;
+    }
+    if (createdFeatureLists.isEmpty()) {
+      createdFeatureLists = previousCreatedFeatureLists;
+    }
+
+    completionSignal.reset();
+    final List<FileChain> chains = new ArrayList<>();
+    final MZmineProcessingStep<?> first = queue.get(firstStep);
+    final List<Task> importTasks;
+    final int chainStep;
+    if (first.getModule() instanceof AllSpectralDataImportModule importModule) {
+      importTasks = startStep(importModule, first.getParameterSet(), createdDataFiles,
+          createdFeatureLists);
+      if (importTasks == null) {
+        return;
+      }
+      chainStep = firstStep + 1;
+    } else {
+      importTasks = List.of();
+      chainStep = firstStep;
+      if (!createFileChains(chains, chainStep)) {
+        logger.info("Feature lists of multiple data files cannot be processed per file. "
+            + "Running the steps one after another.");
+        for (int i = firstStep; i < endStep && !isCanceled(); i++) {
+          processQueueStep(i);
+        }
+        return;
+      }
+    }
+
+    for (int i = firstStep; i < endStep; i++) {
+      GoogleAnalyticsTracker.trackModule((MZmineProcessingModule) queue.get(i).getModule());
+    }
+
+    // only files imported by this batch are processed, the user might add files meanwhile
+    final Set<Task> claimedImports = new HashSet<>();
+    boolean importFinished = importTasks.isEmpty();
+
+    while (true) {
+      if (isCanceled()) {
+        cancelTasks(importTasks);
+        chains.forEach(chain -> cancelTasks(chain.tasks));
+        return;
+      }
+
+      if (chainStep > firstStep) {
+        if (!importFinished) {
+          final TaskStatus importStatus = checkTasks(importTasks);
+          if (importStatus != TaskStatus.FINISHED && importStatus != TaskStatus.PROCESSING) {
+            chains.forEach(chain -> cancelTasks(chain.tasks));
+            return;
+          }
+          importFinished = importStatus == TaskStatus.FINISHED;
+        }
+        // start a pipeline for each file as soon as its import task is finished
+        for (Task task : importTasks) {
+          if (task.getStatus() != TaskStatus.FINISHED || !claimedImports.add(task)) {
+            continue;
+          }
+          final RawDataFile file = task instanceof RawDataImportTask importTask
+              ? importTask.getImportedRawDataFile() : null;
+          // the project rejects files with a name that already exists
+          if (file != null && project.getCurrentRawDataFiles().contains(file)) {
+            final FileChain chain = new FileChain(file, chainStep);
+            chain.createdDataFiles = List.of(file);
+            chain.previousCreatedDataFiles = chain.createdDataFiles;
+            chains.add(chain);
+          }
+        }
+      }
+
+      boolean allFinished = importFinished;
+      for (FileChain chain : chains) {
+        if (chain.step >= endStep) {
+          continue;
+        }
+        if (chain.isStarted()) {
+          final TaskStatus chainStatus = checkTasks(chain.tasks);
+          if (chainStatus == TaskStatus.FINISHED) {
+            completeFileChainStep(chain);
+          } else if (chainStatus != TaskStatus.PROCESSING) {
+            cancelTasks(importTasks);
+            chains.forEach(c -> cancelTasks(c.tasks));
+            return;
+          }
+        }
+        if (!chain.isStarted() && !startNextFileChainStep(chain, endStep)) {
+          cancelTasks(importTasks);
+          chains.forEach(c -> cancelTasks(c.tasks));
+          return;
+        }
+        if (chain.step < endStep) {
+          allFinished = false;
+        }
+      }
+
+      if (allFinished) {
+        break;
+      }
+      awaitCompletionSignal();
+    }
+
+    // keep the order of the data files in the project
+    final List<RawDataFile> projectFiles = project.getCurrentRawDataFiles();
+    chains.sort(Comparator.comparingInt(chain -> projectFiles.indexOf(chain.file)));
+
+    createdDataFiles = new ArrayList<>();
+    createdFeatureLists = new ArrayList<>();
+    final List<RawDataFile> previousFiles = new ArrayList<>();
+    final List<FeatureList> previousFlists = new ArrayList<>();
+    for (FileChain chain : chains) {
+      createdDataFiles.addAll(chain.createdDataFiles);
+      createdFeatureLists.addAll(chain.createdFeatureLists);
+      previousFiles.addAll(chain.previousCreatedDataFiles);
+      previousFlists.addAll(chain.previousCreatedFeatureLists);
+    }
+    if (!previousFiles.isEmpty()) {
+      previousCreatedDataFiles = previousFiles;
+    }
+    if (!previousFlists.isEmpty()) {
+      previousCreatedFeatureLists = previousFlists;
+    }
+  }
+
+  /**
+   * Creates one pipeline for each data file of the last batch step.
+   *
+   * @return false if a feature list of the last step contains multiple data files
+   */
+  private boolean createFileChains(List<FileChain> chains, int chainStep) {
+    final Map<RawDataFile, FileChain> chainsByFile = new LinkedHashMap<>();
+    for (RawDataFile file : createdDataFiles) {
+      chainsByFile.computeIfAbsent(file, f -> new FileChain(f, chainStep));
+    }
+    for (FeatureList flist : createdFeatureLists) {
+      if (flist.getNumberOfRawDataFiles() != 1) {
+        return false;
+      }
+      chainsByFile.computeIfAbsent(flist.getRawDataFile(0), f -> new FileChain(f, chainStep));
+    }
+
+    for (FileChain chain : chainsByFile.values()) {
+      chain.createdDataFiles = createdDataFiles.stream().filter(chain.file::equals).toList();
+      chain.previousCreatedDataFiles = previousCreatedDataFiles.stream()
+          .filter(chain.file::equals).toList();
+      chain.createdFeatureLists = createdFeatureLists.stream()
+          .filter(flist -> flist.hasRawDataFile(chain.file)).toList();
+      // aligned feature lists would be processed once per file
+      chain.previousCreatedFeatureLists = previousCreatedFeatureLists.stream()
+          .filter(flist -> flist.getNumberOfRawDataFiles() == 1 && flist.hasRawDataFile(chain.file))
+          .toList();
+      chains.add(chain);
+    }
+    return true;
+  }
+
+  /**
+   * Starts the next step of the pipeline that creates tasks. Steps that do not create any tasks are
+   * skipped.
+   *
+   * @return false on error
+   */
+  private boolean startNextFileChainStep(FileChain chain, int endStep) {
+    while (chain.step < endStep) {
+      if (chain.createdDataFiles.isEmpty()) {
+        chain.createdDataFiles = chain.previousCreatedDataFiles;
+      }
+      if (chain.createdFeatureLists.isEmpty()) {
+        chain.createdFeatureLists = chain.previousCreatedFeatureLists;
+      }
+
+      final MZmineProcessingStep<?> step = queue.get(chain.step);
+      // the selection of the batch step is shared by all pipelines
+      final ParameterSet parameters = step.getParameterSet().cloneParameterSet();
+      chain.beforeFeatureLists = project.getCurrentFeatureLists();
+      final List<Task> tasks = startStep((MZmineProcessingModule) step.getModule(), parameters,
+          chain.createdDataFiles, chain.createdFeatureLists);
+      if (tasks == null) {
+        return false;
+      }
+      if (!tasks.isEmpty()) {
+        chain.tasks = tasks;
+        return true;
+      }
+      chain.step++;
+    }
+    return true;
+  }
+
+  /**
+   * Collects the feature lists created for the data file of this pipeline. Per-file steps do not
+   * create data files.
+   */
+  private void completeFileChainStep(FileChain chain) {
+    final Set<FeatureList> before = new HashSet<>(chain.beforeFeatureLists);
+    chain.createdDataFiles = List.of();
+    chain.createdFeatureLists = project.getCurrentFeatureLists().stream()
+        .filter(flist -> !before.contains(flist) && flist.hasRawDataFile(chain.file)).toList();
+    if (!chain.createdFeatureLists.isEmpty()) {
+      chain.previousCreatedFeatureLists = chain.createdFeatureLists;
+    }
+    chain.tasks = List.of();
+    chain.beforeFeatureLists = List.of();
+    chain.step++;
+  }
+
+  /**
+   * Sets the data files and feature lists to the parameters, checks the parameters, runs the module
+   * and submits its tasks to the task controller.
+   *
+   * @return the submitted tasks or null on error
+   */
+  @Nullable
+  private List<Task> startStep(MZmineProcessingModule method, ParameterSet batchStepParameters,
+      List<RawDataFile> lastDataFiles, List<FeatureList> lastFeatureLists) {
     // Update the RawDataFilesParameter parameters to reflect the current
     // state of the batch
     for (Parameter<?> p : batchStepParameters.getParameters()) {
       if (p instanceof RawDataFilesParameter rdp) {
-        RawDataFile[] createdFiles = createdDataFiles.toArray(new RawDataFile[0]);
+        RawDataFile[] createdFiles = lastDataFiles.toArray(new RawDataFile[0]);
         final RawDataFilesSelection selectedFiles = rdp.getValue();
         if (selectedFiles == null) {
           setStatus(TaskStatus.ERROR);
           setErrorMessage("Invalid parameter settings for module " + method.getName() + ": "
               + "Missing parameter value for " + p.getName());
-          return;
+          return null;
         }
         selectedFiles.setBatchLastFiles(createdFiles);
       }
     }
 
-    if (!setBatchlastFeatureListsToParamSet(method, batchStepParameters)) {
-      return;
+    if (!setBatchlastFeatureListsToParamSet(method, batchStepParameters,
+        lastFeatureLists.toArray(new FeatureList[0]))) {
+      return null;
     }
 
     // Check if the parameter settings are valid
@@ -293,102 +603,124 @@ public class BatchTask extends AbstractTask {
       setErrorMessage(
           "Invalid parameter settings for module " + method.getName() + ": " + Arrays.toString(
               messages.toArray()));
+      return null;
     }
 
-    List<Task> currentStepTasks = new ArrayList<>();
+    List<Task> stepTasks = new ArrayList<>();
     Instant moduleCallDate = Instant.now();
     logger.finest(() -> "Module " + method.getName() + " called at " + moduleCallDate.toString());
-    ExitCode exitCode = method.runModule(project, batchStepParameters, currentStepTasks,
-        moduleCallDate);
+    ExitCode exitCode = method.runModule(project, batchStepParameters, stepTasks, moduleCallDate);
 
     if (exitCode != ExitCode.OK) {
       setStatus(TaskStatus.ERROR);
       setErrorMessage("Could not start batch step " + method.getName());
-      return;
-    } else {
-      // track step by module
-      GoogleAnalyticsTracker.trackModule(method);
+      return null;
     }
 
-    // If current step didn't produce any tasks, continue with next step
-    if (currentStepTasks.isEmpty()) {
-      return;
+    if (!stepTasks.isEmpty()) {
+      // observe before submitting, so that no status change is missed
+      stepTasks.forEach(completionSignal::observe);
+      // Submit the tasks to the task controller for processing
+      MZmineCore.getTaskController().addTasks(stepTasks.toArray(new Task[0]));
     }
+    return stepTasks;
+  }
 
-    boolean allTasksFinished = false;
-
-    // Submit the tasks to the task controller for processing
-    WrappedTask[] currentStepWrappedTasks = MZmineCore.getTaskController()
-        .addTasks(currentStepTasks.toArray(new Task[0]));
-    currentStepTasks = null;
-
-    while (!allTasksFinished) {
-
-      // If we canceled the batch, cancel all running tasks
-      if (isCanceled()) {
-        for (WrappedTask stepTask : currentStepWrappedTasks) {
-          stepTask.getActualTask().cancel();
-        }
-        return;
+  /**
+   * Checks the status of all tasks. Sets the status of the batch on error or if one of the tasks
+   * was canceled.
+   *
+   * @return {@link TaskStatus#FINISHED} if all tasks are finished, {@link TaskStatus#ERROR} or
+   * {@link TaskStatus#CANCELED} if the batch needs to stop, otherwise {@link
+   * TaskStatus#PROCESSING}
+   */
+  private TaskStatus checkTasks(Collection<Task> tasks) {
+    boolean allTasksFinished = true;
+    for (Task stepTask : tasks) {
+      TaskStatus stepStatus = stepTask.getStatus();
+
+      // If there was an error, we have to stop the whole batch
+      if (stepStatus == TaskStatus.ERROR) {
+        setStatus(TaskStatus.ERROR);
+        setErrorMessage(stepTask.getTaskDescription() + ": " + stepTask.getErrorMessage());
+        return TaskStatus.ERROR;
       }
 
-      // First set to true, then check all tasks
-      allTasksFinished = true;
-
-      for (WrappedTask stepTask : currentStepWrappedTasks) {
-
-        TaskStatus stepStatus = stepTask.getActualTask().getStatus();
-
-        // If any of them is not finished, keep checking
-        if (stepStatus != TaskStatus.FINISHED) {
-          allTasksFinished = false;
-        }
+      // If user canceled any of the tasks, we have to cancel the
+      // whole batch
+      if (stepStatus == TaskStatus.CANCELED) {
+        setStatus(TaskStatus.CANCELED);
+        cancelTasks(tasks);
+        return TaskStatus.CANCELED;
+      }
 
-        // If there was an error, we have to stop the whole batch
-        if (stepStatus == TaskStatus.ERROR) {
-          setStatus(TaskStatus.ERROR);
-          setErrorMessage(
-              stepTask.getActualTask().getTaskDescription() + ": " + stepTask.getActualTask()
-                  .getErrorMessage());
-          return;
-        }
+      // If any of them is not finished, keep checking
+      if (stepStatus != TaskStatus.FINISHED) {
+        allTasksFinished = false;
+      }
+    }
+    return allTasksFinished ? TaskStatus.FINISHED : TaskStatus.PROCESSING;
+  }
 
-        // If user canceled any of the tasks, we have to cancel the
-        // whole batch
-        if (stepStatus == TaskStatus.CANCELED) {
-          setStatus(TaskStatus.CANCELED);
-          for (WrappedTask t : currentStepWrappedTasks) {
-            t.getActualTask().cancel();
-          }
-          return;
-        }
+  private void cancelTasks(Collection<Task> tasks) {
+    for (Task task : tasks) {
+      task.cancel();
+    }
+  }
 
-      }
+  private void awaitCompletionSignal() {
+    try {
+      completionSignal.await();
+    } catch (InterruptedException e) {
+      // ignore
+    }
+  }
 
-      // Wait 1s before checking the tasks again
-      if (!allTasksFinished) {
-        synchronized (this) {
-          try {
-            this.wait(1000);
-          } catch (InterruptedException e) {
-            // ignore
-          }
-        }
-      }
+  /**
+   * @return the end (exclusive) of consecutive per-file steps starting at step
+   */
+  private int findPerFileSegmentEnd(int step) {
+    int end = step;
+    while (end < stepsPerDataset && isPerFileStep(queue.get(end), end == step)) {
+      end++;
     }
+    return end;
+  }
 
-    createdDataFiles = new ArrayList<>(project.getCurrentRawDataFiles());
-    createdFeatureLists = new ArrayList<>(project.getCurrentFeatureLists());
-    createdDataFiles.removeAll(beforeDataFiles);
-    createdFeatureLists.removeAll(beforeFeatureLists);
-    // Clear the saved data files and feature lists. Save them to the
-    // "previous" lists, in case the next step does not produce any new data
-    if (!createdDataFiles.isEmpty()) {
-      previousCreatedDataFiles = createdDataFiles;
+  /**
+   * Per-file steps process each data file or feature list on its own. They can only be pipelined
+   * if they use the data files and feature lists of the previous batch step.
+   *
+   * @param first the data import is only the first step of a pipeline
+   */
+  private static boolean isPerFileStep(MZmineProcessingStep<?> step, boolean first) {
+    final MZmineModule module = step.getModule();
+    if (module instanceof AllSpectralDataImportModule) {
+      return first;
     }
-    if (!createdFeatureLists.isEmpty()) {
-      previousCreatedFeatureLists = createdFeatureLists;
+    if (!(module instanceof MassDetectionModule
+        || module instanceof ModularADAPChromatogramBuilderModule
+        || module instanceof SmoothingModule || module instanceof FeatureResolverModule)) {
+      return false;
     }
+    return selectsBatchLast(step.getParameterSet());
+  }
+
+  private static boolean selectsBatchLast(ParameterSet parameters) {
+    for (Parameter<?> p : parameters.getParameters()) {
+      if (p instanceof RawDataFilesParameter rdp && (rdp.getValue() == null
+          || rdp.getValue().getSelectionType() != RawDataFilesSelectionType.BATCH_LAST_FILES)) {
+        return false;
+      } else if (p instanceof FeatureListsParameter flp && (flp.getValue() == null
+          || flp.getValue().getSelectionType()
+          != FeatureListsSelectionType.BATCH_LAST_FEATURELISTS)) {
+        return false;
+      } else if (p instanceof EmbeddedParameterSet embedded && !selectsBatchLast(
+          embedded.getEmbeddedParameters())) {
+        return false;
+      }
+    }
+    return true;
   }
 
   /**
@@ -398,12 +730,11 @@ public class BatchTask extends AbstractTask {
    * @return false on error
    */
   private boolean setBatchlastFeatureListsToParamSet(MZmineProcessingModule method,
-      ParameterSet batchStepParameters) {
+      ParameterSet batchStepParameters, FeatureList[] createdFlists) {
     // Update the FeatureListsParameter parameters to reflect the current
     // state of the batch
     for (Parameter<?> p : batchStepParameters.getParameters()) {
       if (p instanceof FeatureListsParameter featureListsParameter) {
-        FeatureList[] createdFlists = createdFeatureLists.toArray(new FeatureList[0]);
         final FeatureListsSelection selectedFeatureLists = featureListsParameter.getValue();
         if (selectedFeatureLists == null) {
           setStatus(TaskStatus.ERROR);
@@ -413,7 +744,8 @@ public class BatchTask extends AbstractTask {
         }
         selectedFeatureLists.setBatchLastFeatureLists(createdFlists);
       } else if (p instanceof EmbeddedParameterSet embedded) {
-        if (!setBatchlastFeatureListsToParamSet(method, embedded.getEmbeddedParameters())) {
+        if (!setBatchlastFeatureListsToParamSet(method, embedded.getEmbeddedParameters(),
+            createdFlists)) {
           return false;
         }
       }
@@ -421,6 +753,32 @@ public class BatchTask extends AbstractTask {
     return true;
   }
 
+  /**
+   * State of one data file in a pipeline of per-file steps. Mirrors the created and previous lists
+   * of the batch.
+   */
+  private static final class FileChain {
+
+    private final RawDataFile file;
+    // the next step or the step of the current tasks
+    private int step;
+    private List<Task> tasks = List.of();
+    private List<FeatureList> beforeFeatureLists = List.of();
+    private List<RawDataFile> createdDataFiles = List.of();
+    private List<RawDataFile> previousCreatedDataFiles = List.of();
+    private List<FeatureList> createdFeatureLists = List.of();
+    private List<FeatureList> previousCreatedFeatureLists = List.of();
+
+    private FileChain(RawDataFile file, int step) {
+      this.file = file;
+      this.step = step;
+    }
+
+    private boolean isStarted() {
+      return !tasks.isEmpty();
+    }
+  }
+
   @Override
   public TaskPriority getTaskPriority() {
     // to not block mzmine when run with single thread
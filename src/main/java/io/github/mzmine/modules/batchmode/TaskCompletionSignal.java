@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.batchmode;
+
+import io.github.mzmine.taskcontrol.AbstractTask;
+import io.github.mzmine.taskcontrol.Task;
+import io.github.mzmine.taskcontrol.TaskStatus;
+import io.github.mzmine.taskcontrol.TaskStatusListener;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Wakes up the batch task whenever one of the observed tasks reached a final state (finished,
+ * canceled or error). Replaces polling the task states in fixed intervals. The batch task checks
+ * its tasks after each {@link #await()}, so multiple signals may be merged into one.
+ */
+final class TaskCompletionSignal implements TaskStatusListener {
+
+  private final Semaphore signals = new Semaphore(0);
+  // tasks that do not extend AbstractTask cannot be observed and are checked once per second
+  private volatile boolean observesAllTasks = true;
+
+  /**
+   * Observe the task. Needs to be called before the task is submitted to the task controller.
+   */
+  void observe(Task task) {
+    if (task instanceof AbstractTask abstractTask) {
+      abstractTask.addTaskStatusListener(this);
+    } else {
+      observesAllTasks = false;
+    }
+  }
+
+  /**
+   * Resets this signal before the next batch step. Listeners of old tasks are kept, signals by them
+   * only trigger an additional check.
+   */
+  void reset() {
+    observesAllTasks = true;
+    signals.drainPermits();
+  }
+
+  /**
+   * Wake up the waiting batch task, e.g., if the batch was canceled
+   */
+  void signal() {
+    signals.release();
+  }
+
+  /**
+   * Blocks until at least one signal was received.
+   */
+  void await() throws InterruptedException {
+    if (observesAllTasks) {
+      signals.acquire();
+    } else {
+      signals.tryAcquire(1, TimeUnit.SECONDS);
+    }
+    // merge all signals received in the meantime
+    signals.drainPermits();
+  }
+
+  @Override
+  public void taskStatusChanged(Task task, TaskStatus newStatus, TaskStatus oldStatus) {
+    if (newStatus == TaskStatus.FINISHED || newStatus == TaskStatus.CANCELED
+        || newStatus == TaskStatus.ERROR) {
+      signal();
+    }
+  }
+}
@@ -35,7 +35,7 @@ import io.github.mzmine.datamodel.MZmineProject;
 import io.github.mzmine.datamodel.RawDataFile;
 import io.github.mzmine.datamodel.Scan;
 import io.github.mzmine.datamodel.featuredata.IonTimeSeries;
-import io.github.mzmine.datamodel.featuredata.impl.SimpleIonTimeSeries;
+import io.github.mzmine.datamodel.featuredata.impl.ScanIndexIonTimeSeries;
 import io.github.mzmine.datamodel.features.Feature;
 import io.github.mzmine.datamodel.features.FeatureList;
 import io.github.mzmine.datamodel.features.FeatureListRow;
@@ -289,8 +289,8 @@ public class ADAP3DecompositionV2Task extends AbstractTask {
     double[] mzs = new double[chromatogram.length];
     Arrays.fill(mzs, peak.getMZ()); // todo: use mzs from the actual scans (get from original feature?)
 
-    IonTimeSeries<Scan> series = new SimpleIonTimeSeries(resolvedFeatureList.getMemoryMapStorage(),
-        mzs, chromatogram.ys, scans);
+    IonTimeSeries<Scan> series = ScanIndexIonTimeSeries.of(
+        resolvedFeatureList.getMemoryMapStorage(), mzs, chromatogram.ys, scans);
 
     // calculations done in the constructor by FeatureDataUtils
     return new ModularFeature(resolvedFeatureList, dataFile, series, FeatureStatus.MANUAL);
@@ -27,8 +27,6 @@ package io.github.mzmine.modules.dataprocessing.featdet_adapchromatogrambuilder;
 
 
 import com.google.common.collect.Range;
-import com.google.common.collect.RangeMap;
-import com.google.common.collect.TreeRangeMap;
 import io.github.mzmine.datamodel.IMSRawDataFile;
 import io.github.mzmine.datamodel.MZmineProject;
 import io.github.mzmine.datamodel.RawDataFile;
@@ -41,26 +39,23 @@ import io.github.mzmine.datamodel.features.ModularFeatureList;
 import io.github.mzmine.datamodel.features.ModularFeatureListRow;
 import io.github.mzmine.datamodel.features.SimpleFeatureListAppliedMethod;
 import io.github.mzmine.datamodel.features.types.FeatureShapeType;
+import io.github.mzmine.datamodel.impl.SimpleDataPoint;
 import io.github.mzmine.main.MZmineCore;
 import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.parameters.parametertypes.selectors.ScanSelection;
 import io.github.mzmine.parameters.parametertypes.tolerances.MZTolerance;
 import io.github.mzmine.taskcontrol.AbstractTask;
 import io.github.mzmine.taskcontrol.TaskStatus;
-import io.github.mzmine.util.DataPointSorter;
 import io.github.mzmine.util.DataTypeUtils;
 import io.github.mzmine.util.FeatureConvertors;
 import io.github.mzmine.util.FeatureListUtils;
 import io.github.mzmine.util.MemoryMapStorage;
-import io.github.mzmine.util.SortingDirection;
-import io.github.mzmine.util.SortingProperty;
 import io.github.mzmine.util.exceptions.MissingMassListException;
+import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrays;
 import java.time.Instant;
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.List;
-import java.util.Map;
-import java.util.Map.Entry;
 import java.util.logging.Logger;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -126,7 +121,6 @@ public class ModularADAPChromatogramBuilderTask extends AbstractTask {
     return dataFile;
   }
 
-  @SuppressWarnings("UnstableApiUsage")
   @Override
   public void run() {
     setStatus(TaskStatus.PROCESSING);
@@ -188,24 +182,27 @@ public class ModularADAPChromatogramBuilderTask extends AbstractTask {
     // add data point to chromatogrm or make new one
     // update mz avg and other stuff
     //
-
-    // map the mz tolerance to chromatograms
-    RangeMap<Double, ADAPChromatogram> rangeToChromMap = TreeRangeMap.create();
+    // all data points are kept in parallel primitive arrays, sorted by a primitive index array and
+    // the chromatogram m/z ranges are kept in a primitive interval index. Only chromatograms that
+    // pass the filters are created as objects.
 
     // make a list of all the data points
-    List<ExpandedDataPoint> allMzValues = new ArrayList<>();
+    final DoubleArrayList allMzs = new DoubleArrayList();
+    final DoubleArrayList allIntensities = new DoubleArrayList();
+    final IntArrayList allScanIndices = new IntArrayList();
 
     ScanDataAccess scanData = EfficientDataAccess.of(dataFile, ScanDataType.CENTROID,
         scanSelection);
 
+    // scan data access iterates the same scans as the scan selection
+    int scanIndex = 0;
     while (scanData.hasNextScan()) {
       if (isCanceled()) {
         return;
       }
 
-      Scan scan;
       try {
-        scan = scanData.nextScan();
+        scanData.nextScan();
       } catch (MissingMassListException e) {
         setStatus(TaskStatus.ERROR);
         StringBuilder b = new StringBuilder("Scan #");
@@ -224,52 +221,96 @@ public class ModularADAPChromatogramBuilderTask extends AbstractTask {
 
       int dps = scanData.getNumberOfDataPoints();
       for (int i = 0; i < dps; i++) {
-        ExpandedDataPoint curDatP = new ExpandedDataPoint(scanData.getMzValue(i),
-            scanData.getIntensityValue(i), scan);
-        allMzValues.add(curDatP);
+        allMzs.add(scanData.getMzValue(i));
+        allIntensities.add(scanData.getIntensityValue(i));
+        allScanIndices.add(scanIndex);
       }
+      scanIndex++;
     }
 
-    // sort data points by intensity
-    allMzValues.sort(new DataPointSorter(SortingProperty.Intensity, SortingDirection.Descending));
+    final int numDataPoints = allMzs.size();
+    final double[] mzs = allMzs.elements();
+    final double[] intensities = allIntensities.elements();
+    final int[] scanIndices = allScanIndices.elements();
+
+    // sort data points by intensity (descending), then m/z (descending), then input order. Same
+    // order as a stable sort with DataPointSorter
+    final int[] sortedIndices = new int[numDataPoints];
+    for (int i = 0; i < numDataPoints; i++) {
+      sortedIndices[i] = i;
+    }
+    IntArrays.parallelQuickSort(sortedIndices, (a, b) -> {
+      int result = Double.compare(intensities[b], intensities[a]);
+      if (result == 0) {
+        result = Double.compare(mzs[b], mzs[a]);
+      }
+      return result != 0 ? result : Integer.compare(a, b);
+    });
+
+    // map the mz tolerance to chromatograms
+    final MzRangeIndex rangeIndex = new MzRangeIndex();
+    // the chromatogram of each data point in intensity order, -1 if not assigned
+    final int[] chromatogramOfPoint = new int[numDataPoints];
+    int numChromatogramIds = 0;
 
     // count starts at 1 since we already have added one with a single point.
     progress = 0.0;
-    double progressStep = (allMzValues.size() > 0) ? 0.5 / allMzValues.size() : 0.0;
-
-    for (ExpandedDataPoint mzFeature : allMzValues) {
+    double progressStep = (numDataPoints > 0) ? 0.5 / numDataPoints : 0.0;
 
+    for (int n = 0; n < numDataPoints; n++) {
       progress += progressStep;
+      chromatogramOfPoint[n] = -1;
 
       if (isCanceled()) {
         return;
       }
 
-      if (mzFeature == null || Double.isNaN(mzFeature.getMZ()) || Double.isNaN(
-          mzFeature.getIntensity())) {
+      final int dp = sortedIndices[n];
+      final double mz = mzs[dp];
+      if (Double.isNaN(mz) || Double.isNaN(intensities[dp])) {
         continue;
       }
 
-      final Entry<Range<Double>, ADAPChromatogram> existing = rangeToChromMap.getEntry(
-          mzFeature.getMZ());
-      if (existing != null) {
+      final int existing = rangeIndex.find(mz);
+      if (existing != -1) {
         // add data point to chromatogram
-        existing.getValue().addMzFeature(mzFeature.getScan(), mzFeature);
+        chromatogramOfPoint[n] = existing;
       } else {
         // skip it entierly if the intensity is not high enough
-        if (mzFeature.getIntensity() < minHighestPoint) {
+        if (intensities[dp] < minHighestPoint) {
           continue;
         }
         // add a new chromatogram to the range map - limit ranges to avoid overlap
-        startNewChromatogramLimitMzRanges(rangeToChromMap, mzFeature);
+        final int chrom = startNewChromatogramLimitMzRanges(rangeIndex, mz, numChromatogramIds);
+        if (chrom == numChromatogramIds) {
+          numChromatogramIds++;
+        }
+        chromatogramOfPoint[n] = chrom;
       }
     }
 
-    // finish chromatograms sorted by m/z
-    final Map<Range<Double>, ADAPChromatogram> finalRangeMap = rangeToChromMap.asMapOfRanges();
+    // group the data points by chromatogram, each group remains in intensity order
+    final int[] chromatogramStart = new int[numChromatogramIds + 1];
+    for (int n = 0; n < numDataPoints; n++) {
+      if (chromatogramOfPoint[n] != -1) {
+        chromatogramStart[chromatogramOfPoint[n] + 1]++;
+      }
+    }
+    for (int c = 0; c < numChromatogramIds; c++) {
+      chromatogramStart[c + 1] += chromatogramStart[c];
+    }
+    final int[] groupedPoints = new int[chromatogramStart[numChromatogramIds]];
+    final int[] insertPosition = Arrays.copyOf(chromatogramStart, numChromatogramIds);
+    for (int n = 0; n < numDataPoints; n++) {
+      final int chrom = chromatogramOfPoint[n];
+      if (chrom != -1) {
+        groupedPoints[insertPosition[chrom]++] = sortedIndices[n];
+      }
+    }
 
-    int numChromatograms = finalRangeMap.size();
-    progressStep = numChromatograms > 0 ? 0.5 / numChromatograms : 0.0;
+    // finish chromatograms sorted by m/z
+    final int[] chromatograms = rangeIndex.getSortedIds();
+    progressStep = chromatograms.length > 0 ? 0.5 / chromatograms.length : 0.0;
 
     // Create new feature list
     newFeatureList = new ModularFeatureList(dataFile + " " + suffix, getMemoryMapStorage(),
@@ -277,19 +318,53 @@ public class ModularADAPChromatogramBuilderTask extends AbstractTask {
     // ensure that the default columns are available
     DataTypeUtils.addDefaultChromatographicTypeColumns(newFeatureList);
 
+    // reused per chromatogram. Marks the scans that already have a data point in the
+    // chromatogram and holds its intensity
+    final int[] scanOwner = new int[scans.length];
+    Arrays.fill(scanOwner, -1);
+    final double[] scanIntensity = new double[scans.length];
+
     int newFeatureID = 1;
     // add chromatograms that match criteria
-    for (ADAPChromatogram chromatogram : finalRangeMap.values()) {
+    for (final int chrom : chromatograms) {
       if (isCanceled()) {
         return;
       }
 
       progress += progressStep;
 
+      // only the first (most intense) data point of each scan is added to the chromatogram
+      final int from = chromatogramStart[chrom];
+      final int to = chromatogramStart[chrom + 1];
+      int minScan = Integer.MAX_VALUE;
+      int maxScan = -1;
+      for (int i = from; i < to; i++) {
+        final int dp = groupedPoints[i];
+        final int scan = scanIndices[dp];
+        if (scanOwner[scan] == chrom) {
+          // mark duplicate
+          groupedPoints[i] = -1;
+          continue;
+        }
+        scanOwner[scan] = chrom;
+        scanIntensity[scan] = intensities[dp];
+        minScan = Math.min(minScan, scan);
+        maxScan = Math.max(maxScan, scan);
+      }
+
       // And remove chromatograms who dont have a certian number of continous points above the
       // IntensityThresh2 level.
-      if (chromatogram.matchesMinContinuousDataPoints(scans, minGroupIntensity, minimumScanSpan,
-          minHighestPoint)) {
+      if (matchesMinContinuousDataPoints(chrom, scanOwner, scanIntensity, minScan, maxScan)) {
+        // create the chromatogram in the same order as the data points were assigned
+        final ADAPChromatogram chromatogram = new ADAPChromatogram();
+        for (int i = from; i < to; i++) {
+          final int dp = groupedPoints[i];
+          if (dp != -1) {
+            chromatogram.addMzFeature(scans[scanIndices[dp]],
+                new SimpleDataPoint(mzs[dp], intensities[dp]));
+          }
+        }
+
         // add zeros to edges
         chromatogram.addNZeros(scans, 1, 1);
 
@@ -324,49 +399,80 @@ public class ModularADAPChromatogramBuilderTask extends AbstractTask {
     logger.info(() -> "Finished chromatogram builder on " + dataFile);
   }
 
+  /**
+   * Check for a minimum number of continuous scans. Same as {@link
+   * ADAPChromatogram#matchesMinContinuousDataPoints(Scan[], double, int, double)} for primitive
+   * data. Scans outside of [minScan, maxScan] do not contain any data point.
+   *
+   * @param chrom         the chromatogram id
+   * @param scanOwner     the id of the chromatogram that has a data point in the scan
+   * @param scanIntensity the intensity of the data point in the scan
+   * @return true if a minimum number of scans are connected (without holes)
+   */
+  private boolean matchesMinContinuousDataPoints(int chrom, int[] scanOwner,
+      double[] scanIntensity, int minScan, int maxScan) {
+    int connectedScans = 0;
+    double maxCurrentHeight = 0d;
+    for (int scan = minScan; scan <= maxScan; scan++) {
+      if (scanOwner[scan] == chrom && scanIntensity[scan] >= minGroupIntensity) {
+        connectedScans++;
+        // track height of current segment
+        if (maxCurrentHeight < scanIntensity[scan]) {
+          maxCurrentHeight = scanIntensity[scan];
+        }
+        // check conditions
+        if (connectedScans >= minimumScanSpan && maxCurrentHeight >= minHighestPoint) {
+          return true;
+        }
+      } else {
+        connectedScans = 0;
+      }
+    }
+    return false;
+  }
+
   /**
    * Starts a new chromatogram and limits its range so that it does not overlap with existing m/z
    * ranges
    *
-   * @param rangeToChromMap started chromatograms with their non overlapping m/z range
-   * @param mzFeature       current tested data point
+   * @param rangeIndex started chromatograms with their non overlapping m/z range
+   * @param mz         m/z of the current tested data point
+   * @param newChrom   the id of the new chromatogram
+   * @return the id of the chromatogram the data point was added to. Either newChrom or an
+   * existing chromatogram.
    */
-  @SuppressWarnings("UnstableApiUsage")
-  private void startNewChromatogramLimitMzRanges(RangeMap<Double, ADAPChromatogram> rangeToChromMap,
-      ExpandedDataPoint mzFeature) {
+  private int startNewChromatogramLimitMzRanges(MzRangeIndex rangeIndex, double mz,
+      int newChrom) {
     // start new chromatogram and create new range (subract overlapping existing ranges)
-    Range<Double> toleranceRange = mzTolerance.getToleranceRange(mzFeature.getMZ());
+    Range<Double> toleranceRange = mzTolerance.getToleranceRange(mz);
+    final double toleranceLower = toleranceRange.lowerEndpoint();
+    final double toleranceUpper = toleranceRange.upperEndpoint();
 
     // look +- mz tolerance to see if ther is a range near by.
     // If there is use the proper boundry of that range for the
     // new range to insure than NON OF THE RANGES OVERLAP.
-    final Entry<Range<Double>, ADAPChromatogram> minusRange = rangeToChromMap.getEntry(
-        toleranceRange.lowerEndpoint());
-    final Entry<Range<Double>, ADAPChromatogram> plusRange = rangeToChromMap.getEntry(
-        toleranceRange.upperEndpoint());
+    final int minusRange = rangeIndex.find(toleranceLower);
+    final int plusRange = rangeIndex.find(toleranceUpper);
 
     // If both of the above ranges are null then we make the new range spaning the full
     // mz tolerance range.
     // If one or both are not null we need to properly modify the range of the new
     // chromatogram so that none of the points are overlapping.
-    Double toBeLowerBound =
-        minusRange == null ? toleranceRange.lowerEndpoint() : minusRange.getKey().upperEndpoint();
-    Double toBeUpperBound =
-        plusRange == null ? toleranceRange.upperEndpoint() : plusRange.getKey().lowerEndpoint();
+    final double toBeLowerBound =
+        minusRange == -1 ? toleranceLower : rangeIndex.getUpper(minusRange);
+    final double toBeUpperBound =
+        plusRange == -1 ? toleranceUpper : rangeIndex.getLower(plusRange);
 
     if (toBeLowerBound < toBeUpperBound) {
-      // use closed open so that every value may be captured by rangeMap
-      Range<Double> newRange = Range.closedOpen(toBeLowerBound, toBeUpperBound);
-      ADAPChromatogram newChrom = new ADAPChromatogram();
-      newChrom.addMzFeature(mzFeature.getScan(), mzFeature);
-
-      rangeToChromMap.put(newRange, newChrom);
-    } else if (toBeLowerBound.equals(toBeUpperBound) && plusRange != null) {
-      plusRange.getValue().addMzFeature(mzFeature.getScan(), mzFeature);
+      // closed open so that every value may be captured by the index
+      rangeIndex.put(toBeLowerBound, toBeUpperBound, newChrom);
+      return newChrom;
+    } else if (toBeLowerBound == toBeUpperBound && plusRange != -1) {
+      return plusRange;
     } else {
       throw new IllegalStateException(
           String.format("Incorrect range [%f, %f] for m/z %f", toBeLowerBound, toBeUpperBound,
-              mzFeature.getMZ()));
+              mz));
     }
   }
 
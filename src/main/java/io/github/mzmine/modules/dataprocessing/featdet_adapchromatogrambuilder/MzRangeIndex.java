@@ -0,0 +1,319 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.dataprocessing.featdet_adapchromatogrambuilder;
+
+import java.util.Arrays;
+
+/**
+ * Primitive replacement of a {@link com.google.common.collect.TreeRangeMap}&lt;Double, Integer&gt;
+ * for non-overlapping closed-open m/z ranges [lower, upper). Ranges are identified by an int id.
+ * The lower bounds are kept sorted in blocks of double arrays, so inserting does not shift the
+ * whole index. The upper bounds are stored per id.
+ * <p>
+ * {@link #put(double, double, int)} follows the semantics of {@link
+ * com.google.common.collect.RangeMap#put(com.google.common.collect.Range, Object)}: existing ranges
+ * overlapping the new range are trimmed or removed.
+ */
+final class MzRangeIndex {
+
+  private static final int MAX_BLOCK_SIZE = 512;
+
+  // sorted blocks of lower bounds and the corresponding ids
+  private double[][] blockKeys = new double[4][];
+  private int[][] blockIds = new int[4][];
+  private int[] blockSizes = new int[4];
+  private int numBlocks = 0;
+  private int size = 0;
+
+  // lower and upper bound by id
+  private double[] lowerById = new double[1024];
+  private double[] upperById = new double[1024];
+
+  /**
+   * @param mz the value
+   * @return the id of the range containing mz or -1
+   */
+  int find(final double mz) {
+    final int b = lastBlockWithFirstKeyLE(mz);
+    if (b < 0) {
+      return -1;
+    }
+    final int i = lastIndexLE(blockKeys[b], blockSizes[b], mz);
+    final int id = blockIds[b][i];
+    return mz < upperById[id] ? id : -1;
+  }
+
+  double getLower(int id) {
+    return lowerById[id];
+  }
+
+  double getUpper(int id) {
+    return upperById[id];
+  }
+
+  int size() {
+    return size;
+  }
+
+  /**
+   * Maps the range [lower, upper) to the id. Existing ranges overlapping this range are trimmed or
+   * removed.
+   *
+   * @param lower inclusive lower bound
+   * @param upper exclusive upper bound, must be greater than lower
+   * @param id    the id, must not be in this index
+   */
+  void put(final double lower, final double upper, final int id) {
+    if (!(lower < upper)) {
+      throw new IllegalArgumentException("Empty range [" + lower + ", " + upper + ")");
+    }
+    ensureIdCapacity(id);
+
+    // trim the predecessor overlapping the lower bound
+    int b = lastBlockWithFirstKeyLT(lower);
+    if (b >= 0) {
+      final int i = lastIndexLT(blockKeys[b], blockSizes[b], lower);
+      final int prev = blockIds[b][i];
+      if (upperById[prev] > upper) {
+        // would split the range into two. Cannot happen for the chromatogram builder, because
+        // the new range is always created around a value that is not contained in any range
+        throw new IllegalStateException(
+            String.format("Range [%f, %f) would split range [%f, %f)", lower, upper,
+                lowerById[prev], upperById[prev]));
+      }
+      if (upperById[prev] > lower) {
+        upperById[prev] = lower;
+      }
+    }
+
+    // remove or trim successors starting within the new range
+    while (true) {
+      final int nb = firstBlockWithLastKeyGE(lower);
+      if (nb < 0) {
+        break;
+      }
+      final int ni = firstIndexGE(blockKeys[nb], blockSizes[nb], lower);
+      if (blockKeys[nb][ni] >= upper) {
+        break;
+      }
+      final int next = blockIds[nb][ni];
+      if (upperById[next] > upper) {
+        // keys stay sorted, the next range starts after the old upper bound
+        blockKeys[nb][ni] = upper;
+        lowerById[next] = upper;
+        break;
+      }
+      removeAt(nb, ni);
+    }
+
+    insert(lower, id);
+    lowerById[id] = lower;
+    upperById[id] = upper;
+  }
+
+  /**
+   * @return all ids sorted by their range
+   */
+  int[] getSortedIds() {
+    final int[] sorted = new int[size];
+    int n = 0;
+    for (int b = 0; b < numBlocks; b++) {
+      System.arraycopy(blockIds[b], 0, sorted, n, blockSizes[b]);
+      n += blockSizes[b];
+    }
+    return sorted;
+  }
+
+  private void insert(final double key, final int id) {
+    if (numBlocks == 0) {
+      blockKeys[0] = new double[MAX_BLOCK_SIZE];
+      blockIds[0] = new int[MAX_BLOCK_SIZE];
+      blockSizes[0] = 0;
+      numBlocks = 1;
+    }
+
+    int b = Math.max(0, lastBlockWithFirstKeyLE(key));
+    if (blockSizes[b] == MAX_BLOCK_SIZE) {
+      splitBlock(b);
+      if (key >= blockKeys[b + 1][0]) {
+        b++;
+      }
+    }
+
+    final double[] keys = blockKeys[b];
+    final int[] ids = blockIds[b];
+    final int n = blockSizes[b];
+    final int pos = firstIndexGE(keys, n, key);
+    System.arraycopy(keys, pos, keys, pos + 1, n - pos);
+    System.arraycopy(ids, pos, ids, pos + 1, n - pos);
+    keys[pos] = key;
+    ids[pos] = id;
+    blockSizes[b]++;
+    size++;
+  }
+
+  private void removeAt(final int b, final int i) {
+    final int n = blockSizes[b];
+    System.arraycopy(blockKeys[b], i + 1, blockKeys[b], i, n - i - 1);
+    System.arraycopy(blockIds[b], i + 1, blockIds[b], i, n - i - 1);
+    blockSizes[b]--;
+    size--;
+
+    if (blockSizes[b] == 0) {
+      System.arraycopy(blockKeys, b + 1, blockKeys, b, numBlocks - b - 1);
+      System.arraycopy(blockIds, b + 1, blockIds, b, numBlocks - b - 1);
+      System.arraycopy(blockSizes, b + 1, blockSizes, b, numBlocks - b - 1);
+      numBlocks--;
+      blockKeys[numBlocks] = null;
+      blockIds[numBlocks] = null;
+    }
+  }
+
+  private void splitBlock(final int b) {
+    if (numBlocks == blockKeys.length) {
+      final int newLength = blockKeys.length * 2;
+      blockKeys = Arrays.copyOf(blockKeys, newLength);
+      blockIds = Arrays.copyOf(blockIds, newLength);
+      blockSizes = Arrays.copyOf(blockSizes, newLength);
+    }
+    System.arraycopy(blockKeys, b + 1, blockKeys, b + 2, numBlocks - b - 1);
+    System.arraycopy(blockIds, b + 1, blockIds, b + 2, numBlocks - b - 1);
+    System.arraycopy(blockSizes, b + 1, blockSizes, b + 2, numBlocks - b - 1);
+
+    final int half = blockSizes[b] / 2;
+    final int moved = blockSizes[b] - half;
+    final double[] keys = new double[MAX_BLOCK_SIZE];
+    final int[] ids = new int[MAX_BLOCK_SIZE];
+    System.arraycopy(blockKeys[b], half, keys, 0, moved);
+    System.arraycopy(blockIds[b], half, ids, 0, moved);
+    blockKeys[b + 1] = keys;
+    blockIds[b + 1] = ids;
+    blockSizes[b + 1] = moved;
+    blockSizes[b] = half;
+    numBlocks++;
+  }
+
+  private void ensureIdCapacity(final int id) {
+    if (id >= lowerById.length) {
+      final int newLength = Math.max(id + 1, lowerById.length * 2);
+      lowerById = Arrays.copyOf(lowerById, newLength);
+      upperById = Arrays.copyOf(upperById, newLength);
+    }
+  }
+
+  /**
+   * @return the last block with first key <= value or -1
+   */
+  private int lastBlockWithFirstKeyLE(final double value) {
+    int lo = 0;
+    int hi = numBlocks - 1;
+    int result = -1;
+    while (lo <= hi) {
+      final int mid = (lo + hi) >>> 1;
+      if (blockKeys[mid][0] <= value) {
+        result = mid;
+        lo = mid + 1;
+      } else {
+        hi = mid - 1;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @return the last block with first key < value or -1
+   */
+  private int lastBlockWithFirstKeyLT(final double value) {
+    int lo = 0;
+    int hi = numBlocks - 1;
+    int result = -1;
+    while (lo <= hi) {
+      final int mid = (lo + hi) >>> 1;
+      if (blockKeys[mid][0] < value) {
+        result = mid;
+        lo = mid + 1;
+      } else {
+        hi = mid - 1;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @return the first block with last key >= value or -1
+   */
+  private int firstBlockWithLastKeyGE(final double value) {
+    int lo = 0;
+    int hi = numBlocks - 1;
+    int result = -1;
+    while (lo <= hi) {
+      final int mid = (lo + hi) >>> 1;
+      if (blockKeys[mid][blockSizes[mid] - 1] >= value) {
+        result = mid;
+        hi = mid - 1;
+      } else {
+        lo = mid + 1;
+      }
+    }
+    return result;
+  }
+
+  private static int lastIndexLE(final double[] keys, final int n, final double value) {
+    return firstIndexGT(keys, n, value) - 1;
+  }
+
+  private static int lastIndexLT(final double[] keys, final int n, final double value) {
+    return firstIndexGE(keys, n, value) - 1;
+  }
+
+  private static int firstIndexGE(final double[] keys, final int n, final double value) {
+    int lo = 0;
+    int hi = n;
+    while (lo < hi) {
+      final int mid = (lo + hi) >>> 1;
+      if (keys[mid] < value) {
+        lo = mid + 1;
+      } else {
+        hi = mid;
+      }
+    }
+    return lo;
+  }
+
+  private static int firstIndexGT(final double[] keys, final int n, final double value) {
+    int lo = 0;
+    int hi = n;
+    while (lo < hi) {
+      final int mid = (lo + hi) >>> 1;
+      if (keys[mid] <= value) {
+        lo = mid + 1;
+      } else {
+        hi = mid;
+      }
+    }
+    return lo;
+  }
+}
@@ -43,6 +43,7 @@ import io.github.mzmine.datamodel.features.SimpleFeatureListAppliedMethod;
 import io.github.mzmine.datamodel.features.types.ImageType;
 import io.github.mzmine.datamodel.features.types.MobilityUnitType;
 import io.github.mzmine.datamodel.features.types.numbers.RTType;
+import io.github.mzmine.main.MZmineCore;
 import io.github.mzmine.modules.dataprocessing.filter_groupms2.GroupMS2SubParameters;
 import io.github.mzmine.modules.dataprocessing.filter_groupms2.GroupMS2Task;
 import io.github.mzmine.parameters.ParameterSet;
@@ -57,7 +58,15 @@ import io.github.mzmine.util.R.RSessionWrapper;
 import io.github.mzmine.util.R.RSessionWrapperException;
 import io.github.mzmine.util.maths.CenterFunction;
 import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.jetbrains.annotations.NotNull;
@@ -66,6 +75,11 @@ public class FeatureResolverTask extends AbstractTask {
 
   // Logger.
   private static final Logger logger = Logger.getLogger(FeatureResolverTask.class.getName());
+  /**
+   * Number of chromatograms resolved by one thread at once. Each chunk uses its own resolver and
+   * feature data access.
+   */
+  private static final int CHUNK_SIZE = 256;
 
   // Feature lists.
   private final MZmineProject project;
@@ -76,7 +90,7 @@ public class FeatureResolverTask extends AbstractTask {
   private final CenterFunction mzCenterFunction;
   private FeatureList newPeakList;
   // Counters.
-  private int processedRows;
+  private final AtomicInteger processedRows = new AtomicInteger(0);
   private int totalRows;
   private RSessionWrapper rSession;
   private String errorMsg;
@@ -101,7 +115,6 @@ public class FeatureResolverTask extends AbstractTask {
     parameters = parameterSet;
     originalPeakList = list;
     newPeakList = null;
-    processedRows = 0;
     totalRows = 0;
     this.mzCenterFunction = mzCenterFunction;
   }
@@ -113,7 +126,7 @@ public class FeatureResolverTask extends AbstractTask {
 
   @Override
   public double getFinishedPercentage() {
-    return totalRows == 0 ? 0.0 : (double) processedRows / (double) totalRows;
+    return totalRows == 0 ? 0.0 : (double) processedRows.get() / (double) totalRows;
   }
 
   @Override
@@ -150,12 +163,12 @@ public class FeatureResolverTask extends AbstractTask {
                 GeneralResolverParameters.groupMS2Parameters).getEmbeddedParameters();
             GroupMS2Task task = new GroupMS2Task(project, newPeakList, ms2params, moduleCallDate);
             // restart progress
-            processedRows = 0;
+            processedRows.set(0);
             totalRows = newPeakList.getNumberOfRows();
             // group all features with MS/MS
             for (FeatureListRow row : newPeakList.getRows()) {
               task.processRow(row);
-              processedRows++;
+              processedRows.incrementAndGet();
             }
           }
 
@@ -357,23 +370,18 @@ public class FeatureResolverTask extends AbstractTask {
     final RawDataFile dataFile = originalFeatureList.getRawDataFile(0);
     final ModularFeatureList resolvedFeatureList = createNewFeatureList(originalFeatureList);
 
-    final FeatureDataAccess access = EfficientDataAccess.of(originalFeatureList,
-        EfficientDataAccess.FeatureDataType.INCLUDE_ZEROS, dataFile);
-
-    processedRows = 0;
+    processedRows.set(0);
     totalRows = originalFeatureList.getNumberOfRows();
-    int peakId = 1;
+    final AtomicInteger peakId = new AtomicInteger(1);
+    final AtomicInteger lowScanFeatures = new AtomicInteger(0);
 
-    int c = 0;
+    // create the rows in the order of the original rows, so the IDs do not depend on threading
+    final Consumer<ResolvedChromatogram> rowCreator = chromatogram -> {
+      final ModularFeature originalFeature = chromatogram.originalFeature();
 
-    while (access.hasNextFeature()) {
-      final ModularFeature originalFeature = (ModularFeature) access.nextFeature();
-      final List<IonTimeSeries<? extends Scan>> resolvedSeries = resolver.resolve(access,
-          getMemoryMapStorage());
-
-      for (IonTimeSeries<? extends Scan> resolved : resolvedSeries) {
+      for (IonTimeSeries<? extends Scan> resolved : chromatogram.resolvedSeries()) {
         final ModularFeatureListRow newRow = new ModularFeatureListRow(resolvedFeatureList,
-            peakId++);
+            peakId.getAndIncrement());
         final ModularFeature f = new ModularFeature(resolvedFeatureList,
             originalFeature.getRawDataFile(), resolved, originalFeature.getFeatureStatus());
 
@@ -386,12 +394,30 @@ public class FeatureResolverTask extends AbstractTask {
         newRow.addFeature(originalFeature.getRawDataFile(), f);
         resolvedFeatureList.addRow(newRow);
         if (resolved.getSpectra().size() <= 3) {
-          c++;
+          lowScanFeatures.incrementAndGet();
         }
       }
-      processedRows++;
-    }
-    logger.info(c + "/" + resolvedFeatureList.getNumberOfRows()
+    };
+
+    // resolve chunks of chromatograms in parallel. Resolvers and data accesses keep buffers, so
+    // every chunk gets its own instances
+    resolveInChunks(originalFeatureList.getRows(), rows -> {
+      final Resolver chunkResolver = ((GeneralResolverParameters) parameters).getResolver(
+          parameters, originalFeatureList);
+      final FeatureDataAccess access = EfficientDataAccess.of(originalFeatureList,
+          EfficientDataAccess.FeatureDataType.INCLUDE_ZEROS, dataFile, rows);
+
+      final List<ResolvedChromatogram> resolved = new ArrayList<>();
+      while (access.hasNextFeature() && !isCanceled()) {
+        final ModularFeature originalFeature = (ModularFeature) access.nextFeature();
+        resolved.add(new ResolvedChromatogram(originalFeature,
+            chunkResolver.resolve(access, getMemoryMapStorage())));
+        processedRows.incrementAndGet();
+      }
+      return resolved;
+    }, rowCreator);
+
+    logger.info(lowScanFeatures.get() + "/" + resolvedFeatureList.getNumberOfRows()
         + " have less than 4 scans (frames for IMS data)");
     //    QualityParameters.calculateAndSetModularQualityParameters(resolvedFeatureList);
 
@@ -429,26 +455,23 @@ public class FeatureResolverTask extends AbstractTask {
 
     final FeatureResolver resolver = ((GeneralResolverParameters) parameters).getResolver();
 
-    processedRows = 0;
+    processedRows.set(0);
     totalRows = originalFeatureList.getNumberOfRows();
-    int peakId = 1;
+    final AtomicInteger peakId = new AtomicInteger(1);
     final Integer minNumDp = parameters.getValue(GeneralResolverParameters.MIN_NUMBER_OF_DATAPOINTS);
 
-    for (int i = 0; i < totalRows; i++) {
-      final ModularFeatureListRow originalRow = (ModularFeatureListRow) originalFeatureList.getRow(
-          i);
+    // create the rows in the order of the original rows, so the IDs do not depend on threading
+    final Consumer<ResolvedPeaks> rowCreator = resolved -> {
+      final ModularFeatureListRow originalRow = resolved.originalRow();
       final ModularFeature originalFeature = originalRow.getFeature(dataFile);
 
-      final ResolvedPeak[] peaks = resolver.resolvePeaks(originalFeature, parameters, rSession,
-          mzCenterFunction, msmsRange, RTRangeMSMS);
-
-      for (final ResolvedPeak peak : peaks) {
+      for (final ResolvedPeak peak : resolved.peaks()) {
         if(peak.getScanNumbers().length < minNumDp) {
           continue;
         }
         peak.setParentChromatogramRowID(originalRow.getID());
         final ModularFeatureListRow newRow = new ModularFeatureListRow(resolvedFeatureList,
-            peakId++);
+            peakId.getAndIncrement());
         final ModularFeature newFeature = FeatureConvertors.ResolvedPeakToMoularFeature(
             resolvedFeatureList, peak, originalFeature.getFeatureData());
         if (originalFeature.getMobilityUnit() != null) {
@@ -459,7 +482,22 @@ public class FeatureResolverTask extends AbstractTask {
         newRow.setFeatureInformation(peak.getPeakInformation());
         resolvedFeatureList.addRow(newRow);
       }
-      processedRows++;
+    };
+
+    if (resolver.getRequiresR()) {
+      // one R session cannot be used by multiple threads
+      resolveLegacyChunk(resolver, dataFile, originalFeatureList.getRows(), rSession).forEach(
+          rowCreator);
+    } else {
+      resolveInChunks(originalFeatureList.getRows(), rows -> {
+        try {
+          return resolveLegacyChunk(((GeneralResolverParameters) parameters).getResolver(),
+              dataFile, rows, null);
+        } catch (RSessionWrapperException e) {
+          // only thrown by resolvers that require R
+          throw new IllegalStateException(e);
+        }
+      }, rowCreator);
     }
 
     resolvedFeatureList.addDescriptionOfAppliedTask(
@@ -469,6 +507,64 @@ public class FeatureResolverTask extends AbstractTask {
     return resolvedFeatureList;
   }
 
+  private List<ResolvedPeaks> resolveLegacyChunk(FeatureResolver resolver, RawDataFile dataFile,
+      List<FeatureListRow> rows, RSessionWrapper rSession) throws RSessionWrapperException {
+    final List<ResolvedPeaks> resolved = new ArrayList<>(rows.size());
+    for (FeatureListRow row : rows) {
+      if (isCanceled()) {
+        break;
+      }
+      final ModularFeatureListRow originalRow = (ModularFeatureListRow) row;
+      final ResolvedPeak[] peaks = resolver.resolvePeaks(originalRow.getFeature(dataFile),
+          parameters, rSession, mzCenterFunction, msmsRange, RTRangeMSMS);
+      resolved.add(new ResolvedPeaks(originalRow, peaks));
+      processedRows.incrementAndGet();
+    }
+    return resolved;
+  }
+
+  /**
+   * Splits the rows into chunks of {@link #CHUNK_SIZE} and resolves them on the executor of the
+   * task controller, so the configured number of threads is respected. The results are passed to
+   * the consumer on the thread of this task in the order of the rows, independent of the order in
+   * which the chunks were processed. Only a few chunks per thread are resolved ahead of the
+   * consumer, so the results of the whole feature list are not kept in memory.
+   *
+   * @param rows           the chromatograms
+   * @param chunkResolver  resolves a chunk of rows
+   * @param resultConsumer receives the results of the chunks, e.g., to create the new rows
+   */
+  private <T> void resolveInChunks(List<FeatureListRow> rows,
+      Function<List<FeatureListRow>, List<T>> chunkResolver, Consumer<T> resultConsumer) {
+    final List<FeatureListRow> allRows = List.copyOf(rows);
+    final int numChunks = (allRows.size() + CHUNK_SIZE - 1) / CHUNK_SIZE;
+    // joining executes pending chunks on this thread, if it is a thread of the same executor
+    final ForkJoinPool executor = MZmineCore.getTaskController().getExecutor();
+    final int maxPendingChunks = 2 * executor.getParallelism();
+
+    final Deque<ForkJoinTask<List<T>>> pending = new ArrayDeque<>(maxPendingChunks);
+    int nextChunk = 0;
+    try {
+      while (nextChunk < numChunks || !pending.isEmpty()) {
+        while (nextChunk < numChunks && pending.size() < maxPendingChunks) {
+          final List<FeatureListRow> chunk = allRows.subList(nextChunk * CHUNK_SIZE,
+              Math.min(allRows.size(), (nextChunk + 1) * CHUNK_SIZE));
+          pending.add(executor.submit(() -> chunkResolver.apply(chunk)));
+          nextChunk++;
+        }
+
+        final List<T> results = pending.poll().join();
+        if (isCanceled()) {
+          return;
+        }
+        results.forEach(resultConsumer);
+      }
+    } finally {
+      // remaining chunks are skipped after an error or cancel
+      pending.forEach(chunk -> chunk.cancel(false));
+    }
+  }
+
   private ModularFeatureList createNewFeatureList(ModularFeatureList originalFeatureList) {
     if (originalFeatureList.getRawDataFiles().size() > 1) {
       throw new IllegalArgumentException("Resolving cannot be applied to aligned feature lists.");
@@ -508,4 +604,13 @@ public class FeatureResolverTask extends AbstractTask {
 
     return resolvedFeatureList;
   }
+
+  private record ResolvedChromatogram(ModularFeature originalFeature,
+                                      List<IonTimeSeries<? extends Scan>> resolvedSeries) {
+
+  }
+
+  private record ResolvedPeaks(ModularFeatureListRow originalRow, ResolvedPeak[] peaks) {
+
+  }
 }
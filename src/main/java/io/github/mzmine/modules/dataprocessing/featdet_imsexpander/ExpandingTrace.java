@@ -53,7 +53,7 @@ public class ExpandingTrace {
   private final Range<Float> rtRange;
   private final Range<Double> mzRange;
 
-  private final Map<MobilityScan, DataPoint> dataPoints = new HashMap<>();
+  private Map<MobilityScan, DataPoint> dataPoints = new HashMap<>();
 
   ExpandingTrace(@NotNull final ModularFeatureListRow f, Range<Double> mzRange) {
     this.f = f;
@@ -73,14 +73,27 @@ public class ExpandingTrace {
    * @return true if the data points is added to this trace.
    */
   public boolean offerDataPoint(@NotNull MobilityScanDataAccess access, int index) {
-    if (!rtRange.contains(access.getRetentionTime()) || !mzRange.contains(
-        access.getMzValue(index))) {
+    return offerDataPoint(access.getCurrentMobilityScan(), access.getRetentionTime(),
+        access.getMzValue(index), access.getIntensityValue(index));
+  }
+
+  /**
+   * Offers a data point to this trace.
+   *
+   * @param scan      the mobility scan of the data point.
+   * @param rt        the retention time of the mobility scan.
+   * @param mz        the m/z of the data point.
+   * @param intensity the intensity of the data point.
+   * @return true if the data points is added to this trace.
+   */
+  public boolean offerDataPoint(@NotNull MobilityScan scan, float rt, double mz,
+      double intensity) {
+    if (!rtRange.contains(rt) || !mzRange.contains(mz)) {
       return false;
     }
 
-    synchronized (dataPoints) {
-      return dataPoints.putIfAbsent(access.getCurrentMobilityScan(),
-          new SimpleDataPoint(access.getMzValue(index), access.getIntensityValue(index))) == null;
+    synchronized (this) {
+      return dataPoints.putIfAbsent(scan, new SimpleDataPoint(mz, intensity)) == null;
     }
   }
 
@@ -137,4 +150,14 @@ public class ExpandingTrace {
   public int getNumberOfMobilityScans() {
     return dataPoints.size();
   }
+
+  /**
+   * Releases the data points, e.g., after the trace was converted to an
+   * {@link IonMobilogramTimeSeries}.
+   */
+  public void clearDataPoints() {
+    synchronized (this) {
+      dataPoints = new HashMap<>();
+    }
+  }
 }
@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.dataprocessing.featdet_imsexpander;
+
+import io.github.mzmine.datamodel.MobilityScan;
+import io.github.mzmine.datamodel.data_access.MobilityScanDataAccess;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Holds a copy of the mobility scans of a single frame, so the frame is decoded once and can be
+ * read by all {@link ImsExpanderStreamingSubTask}s. The arrays are reused when the buffer is
+ * recycled by the {@link FrameRingBuffer}.
+ */
+final class FrameDataBuffer {
+
+  private final AtomicInteger pendingConsumers = new AtomicInteger(0);
+
+  private float rt;
+  private int numScans;
+  private MobilityScan[] scans = new MobilityScan[0];
+  // exclusive end index of the data points of each mobility scan
+  private int[] scanEnds = new int[0];
+  private double[] mzs = new double[0];
+  private double[] intensities = new double[0];
+
+  /**
+   * Copies the mobility scans of the current frame of the data access. The data access must have
+   * been moved to the frame via {@link MobilityScanDataAccess#nextFrame()}.
+   *
+   * @param access     the data access.
+   * @param noiseLevel data points below this intensity are skipped. Null to copy all data points.
+   */
+  void load(@NotNull final MobilityScanDataAccess access, @Nullable final Double noiseLevel) {
+    rt = access.getRetentionTime();
+    numScans = 0;
+    int numDataPoints = 0;
+
+    while (access.hasNextMobilityScan()) {
+      final MobilityScan scan = access.nextMobilityScan();
+      final int scanDataPoints = access.getNumberOfDataPoints();
+      ensureCapacity(numScans + 1, numDataPoints + scanDataPoints);
+
+      for (int i = 0; i < scanDataPoints; i++) {
+        final double intensity = access.getIntensityValue(i);
+        if (noiseLevel != null && intensity < noiseLevel) {
+          continue;
+        }
+        mzs[numDataPoints] = access.getMzValue(i);
+        intensities[numDataPoints] = intensity;
+        numDataPoints++;
+      }
+
+      scans[numScans] = scan;
+      scanEnds[numScans] = numDataPoints;
+      numScans++;
+    }
+    // release scans of the previous frame
+    Arrays.fill(scans, numScans, scans.length, null);
+  }
+
+  private void ensureCapacity(final int scanCapacity, final int dataPointCapacity) {
+    if (scanCapacity > scans.length) {
+      final int newLength = Math.max(scanCapacity, scans.length * 2);
+      scans = Arrays.copyOf(scans, newLength);
+      scanEnds = Arrays.copyOf(scanEnds, newLength);
+    }
+    if (dataPointCapacity > mzs.length) {
+      final int newLength = Math.max(dataPointCapacity, mzs.length * 2);
+      mzs = Arrays.copyOf(mzs, newLength);
+      intensities = Arrays.copyOf(intensities, newLength);
+    }
+  }
+
+  float getRetentionTime() {
+    return rt;
+  }
+
+  int getNumberOfScans() {
+    return numScans;
+  }
+
+  MobilityScan getScan(final int scanIndex) {
+    return scans[scanIndex];
+  }
+
+  /**
+   * @return the index of the first data point of the mobility scan.
+   */
+  int getScanStart(final int scanIndex) {
+    return scanIndex == 0 ? 0 : scanEnds[scanIndex - 1];
+  }
+
+  /**
+   * @return the exclusive end index of the data points of the mobility scan.
+   */
+  int getScanEnd(final int scanIndex) {
+    return scanEnds[scanIndex];
+  }
+
+  /**
+   * @param scanIndex the index of the mobility scan.
+   * @param mz        the lower m/z bound.
+   * @return the index of the first data point of the mobility scan with an m/z equal to or greater
+   * than the given m/z. The scan end if there is no such data point.
+   */
+  int findFirstDataPoint(final int scanIndex, final double mz) {
+    int low = getScanStart(scanIndex);
+    int high = getScanEnd(scanIndex);
+    while (low < high) {
+      final int mid = (low + high) >>> 1;
+      if (mzs[mid] < mz) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  double getMzValue(final int index) {
+    return mzs[index];
+  }
+
+  double getIntensityValue(final int index) {
+    return intensities[index];
+  }
+
+  void setPendingConsumers(final int consumers) {
+    pendingConsumers.set(consumers);
+  }
+
+  /**
+   * @return true if this was the last consumer reading this buffer.
+   */
+  boolean consumed() {
+    return pendingConsumers.decrementAndGet() == 0;
+  }
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package io.github.mzmine.modules.dataprocessing.featdet_imsexpander;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A fixed number of {@link FrameDataBuffer}s passed from a single reader to multiple consumers.
+ * Every published buffer is read by all consumers and is recycled after the last consumer released
+ * it. The reader is blocked if all buffers are in use, which limits the memory consumption to a
+ * few frames.
+ * <p>
+ * The buffers of a consumer may be taken by any thread, e.g., by the reader expanding the frames of
+ * a consumer that did not get a thread yet. Callers have to make sure that the buffers of a
+ * consumer are processed by one thread at a time.
+ */
+final class FrameRingBuffer {
+
+  /**
+   * Signals the consumers that all frames were published.
+   */
+  static final FrameDataBuffer END = new FrameDataBuffer();
+
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition bufferFreed = lock.newCondition();
+  private final Condition bufferPublished = lock.newCondition();
+
+  private final Deque<FrameDataBuffer> free;
+  private final List<Deque<FrameDataBuffer>> consumerQueues;
+  private boolean aborted = false;
+
+  /**
+   * @param numConsumers the number of consumers reading every buffer.
+   * @param numBuffers   the number of buffers in the ring.
+   */
+  FrameRingBuffer(final int numConsumers, final int numBuffers) {
+    free = new ArrayDeque<>(numBuffers);
+    for (int i = 0; i < numBuffers; i++) {
+      free.add(new FrameDataBuffer());
+    }
+    consumerQueues = new ArrayList<>(numConsumers);
+    for (int i = 0; i < numConsumers; i++) {
+      consumerQueues.add(new ArrayDeque<>(numBuffers + 1));
+    }
+  }
+
+  int getNumberOfConsumers() {
+    return consumerQueues.size();
+  }
+
+  /**
+   * @return a free buffer or null if all buffers are in use.
+   */
+  @Nullable
+  FrameDataBuffer tryAcquire() {
+    lock.lock();
+    try {
+      return free.poll();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Waits until a buffer was recycled.
+   *
+   * @return false if the ring buffer was aborted.
+   */
+  boolean awaitFreeBuffer() throws InterruptedException {
+    lock.lock();
+    try {
+      while (free.isEmpty() && !aborted) {
+        bufferFreed.await();
+      }
+      return !aborted;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Passes a loaded buffer to all consumers.
+   */
+  void publish(final FrameDataBuffer buffer) {
+    buffer.setPendingConsumers(consumerQueues.size());
+    addToAllQueues(buffer);
+  }
+
+  /**
+   * Signals all consumers that no more buffers will be published.
+   */
+  void finish() {
+    addToAllQueues(END);
+  }
+
+  private void addToAllQueues(final FrameDataBuffer buffer) {
+    lock.lock();
+    try {
+      for (Deque<FrameDataBuffer> queue : consumerQueues) {
+        queue.add(buffer);
+      }
+      bufferPublished.signalAll();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * @param consumer the index of the consumer.
+   * @return the next buffer of the consumer or null if no buffer is available, all buffers were
+   * read or the ring buffer was aborted. Never returns {@link #END}.
+   */
+  @Nullable
+  FrameDataBuffer poll(final int consumer) {
+    lock.lock();
+    try {
+      final Deque<FrameDataBuffer> queue = consumerQueues.get(consumer);
+      if (aborted || queue.peek() == END) {
+        return null;
+      }
+      return queue.poll();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Waits until the next buffer of a consumer was published.
+   *
+   * @param consumer the index of the consumer.
+   * @return true if a buffer is available, false if all buffers were read or the ring buffer was
+   * aborted.
+   */
+  boolean awaitBuffer(final int consumer) throws InterruptedException {
+    lock.lock();
+    try {
+      final Deque<FrameDataBuffer> queue = consumerQueues.get(consumer);
+      while (queue.isEmpty() && !aborted) {
+        bufferPublished.await();
+      }
+      return !aborted && queue.peek() != END;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Releases a buffer after it was read by a consumer. The buffer is recycled once all consumers
+   * released it.
+   */
+  void release(final FrameDataBuffer buffer) {
+    if (buffer.consumed()) {
+      lock.lock();
+      try {
+        free.add(buffer);
+        bufferFreed.signal();
+      } finally {
+        lock.unlock();
+      }
+    }
+  }
+
+  /**
+   * Wakes up the reader and all consumers. No more buffers are passed on.
+   */
+  void abort() {
+    lock.lock();
+    try {
+      aborted = true;
+      bufferFreed.signalAll();
+      bufferPublished.signalAll();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  boolean isAborted() {
+    lock.lock();
+    try {
+      return aborted;
+    } finally {
+      lock.unlock();
+    }
+  }
+}
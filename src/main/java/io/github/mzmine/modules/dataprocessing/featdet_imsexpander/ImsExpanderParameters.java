@@ -32,6 +32,7 @@ import io.github.mzmine.main.MZmineCore;
 import io.github.mzmine.parameters.Parameter;
 import io.github.mzmine.parameters.impl.IonMobilitySupport;
 import io.github.mzmine.parameters.impl.SimpleParameterSet;
+import io.github.mzmine.parameters.parametertypes.BooleanParameter;
 import io.github.mzmine.parameters.parametertypes.DoubleParameter;
 import io.github.mzmine.parameters.parametertypes.IntegerParameter;
 import io.github.mzmine.parameters.parametertypes.OptionalParameter;
@@ -77,9 +78,17 @@ public class ImsExpanderParameters extends SimpleParameterSet {
           However, it can be beneficial for imaging experiments to reduce the memory consumption during this step.""",
           2_000), false);
 
+  public static final BooleanParameter singlePassStreaming = new BooleanParameter(
+      "Read frames once", """
+      If checked, every frame is read once and passed to all threads, which process disjoint
+      m/z ranges of the features. Recommended for long LC-IMS-MS runs. The maximum features per
+      thread are not applied in this mode. Uncheck to reduce the memory consumption in imaging
+      experiments.""",
+      true);
+
   public ImsExpanderParameters() {
     super(new Parameter[]{featureLists, mzTolerance, useRawData, mobilogramBinWidth, maxNumTraces,
-            handleOriginal},
+            singlePassStreaming, handleOriginal},
         "https://mzmine.github.io/mzmine_documentation/module_docs/lc-ims-ms_featdet/featdet_ims_expander/ims-expander.html");
   }
 
@@ -0,0 +1,283 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package io.github.mzmine.modules.dataprocessing.featdet_imsexpander;
+
+import com.google.common.collect.Range;
+import io.github.mzmine.datamodel.IMSRawDataFile;
+import io.github.mzmine.datamodel.MobilityScan;
+import io.github.mzmine.datamodel.data_access.BinningMobilogramDataAccess;
+import io.github.mzmine.datamodel.featuredata.IonMobilogramTimeSeries;
+import io.github.mzmine.main.MZmineCore;
+import io.github.mzmine.taskcontrol.AbstractTask;
+import io.github.mzmine.taskcontrol.TaskStatus;
+import io.github.mzmine.util.MemoryMapStorage;
+import io.github.mzmine.util.RangeUtils;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Consumes the frames read once by the {@link ImsExpanderTask} from a {@link FrameRingBuffer}.
+ * Every sub task owns a disjoint m/z slice of the {@link ExpandingTrace}s. The frames of a sub task
+ * are expanded by one thread at a time: the sub task itself or the frame reader, if the sub task
+ * did not get a thread yet.
+ * <p>
+ * Traces are converted to {@link IonMobilogramTimeSeries} as soon as the frames passed their
+ * retention time range, so only the traces of the current frames keep their data points.
+ */
+public class ImsExpanderStreamingSubTask extends AbstractTask {
+
+  private static final Logger logger = Logger.getLogger(
+      ImsExpanderStreamingSubTask.class.getName());
+
+  private final IMSRawDataFile imsFile;
+  private final FrameRingBuffer ringBuffer;
+  private final int consumerIndex;
+  private final BinningMobilogramDataAccess mobilogramDataAccess;
+  private final List<ExpandedTrace> expandedTraces;
+  private final String mzRangeString;
+  private final int totalFrames;
+  private final int totalTraces;
+  // guards the traces, frames are expanded by one thread at a time
+  private final ReentrantLock expandLock = new ReentrantLock();
+  private final double sliceLowerMz;
+  private final double sliceUpperMz;
+  // traces sorted by m/z
+  private List<ExpandingTrace> expandingTraces;
+  // traces sorted by the end of their rt range, converted up to nextFinishedTrace
+  private List<ExpandingTrace> tracesByRtEnd;
+  private int nextFinishedTrace = 0;
+
+  private int processedFrames = 0;
+  private int createdRows = 0;
+
+  /**
+   * @param expandingTraces the traces of this sub task sorted by m/z.
+   */
+  public ImsExpanderStreamingSubTask(@Nullable final MemoryMapStorage storage,
+      @NotNull final IMSRawDataFile imsFile, @NotNull final FrameRingBuffer ringBuffer,
+      final int consumerIndex, final int totalFrames,
+      @NotNull final List<ExpandingTrace> expandingTraces,
+      @NotNull final BinningMobilogramDataAccess mobilogramDataAccess) {
+    super(storage, Instant.now()); // just a subtask, date irrelevant
+    this.imsFile = imsFile;
+    this.ringBuffer = ringBuffer;
+    this.consumerIndex = consumerIndex;
+    this.totalFrames = Math.max(totalFrames, 1);
+    this.expandingTraces = expandingTraces;
+    this.mobilogramDataAccess = mobilogramDataAccess;
+    totalTraces = expandingTraces.size();
+    expandedTraces = new ArrayList<>(totalTraces);
+
+    tracesByRtEnd = new ArrayList<>(expandingTraces);
+    tracesByRtEnd.sort(Comparator.comparing(t -> t.getRtRange().upperEndpoint()));
+
+    // the traces are sorted by the row m/z, the tolerance ranges may overlap
+    sliceLowerMz = expandingTraces.stream().mapToDouble(t -> t.getMzRange().lowerEndpoint()).min()
+        .orElse(0d);
+    sliceUpperMz = expandingTraces.stream().mapToDouble(t -> t.getMzRange().upperEndpoint())
+        .max().orElse(0d);
+    mzRangeString = RangeUtils.formatRange(Range.closed(sliceLowerMz, sliceUpperMz),
+        MZmineCore.getConfiguration().getMZFormat());
+  }
+
+  @Override
+  public String getTaskDescription() {
+    return "Expanding traces for frame " + processedFrames + "/" + totalFrames + " m/z range: "
+        + mzRangeString;
+  }
+
+  @Override
+  public double getFinishedPercentage() {
+    return 0.5 * processedFrames / totalFrames + 0.5 * createdRows / Math.max(totalTraces, 1);
+  }
+
+  @Override
+  public void run() {
+    setStatus(TaskStatus.PROCESSING);
+
+    try {
+      do {
+        expandLock.lock();
+        try {
+          expandAvailableFrames();
+        } finally {
+          expandLock.unlock();
+        }
+      } while (ringBuffer.awaitBuffer(consumerIndex));
+    } catch (InterruptedException e) {
+      logger.log(Level.WARNING, e.getMessage(), e);
+      setErrorMessage(e.getMessage());
+      setStatus(TaskStatus.ERROR);
+      releaseTraces();
+      return;
+    }
+
+    expandLock.lock();
+    try {
+      if (isCanceled() || ringBuffer.isAborted()) {
+        releaseTraces();
+        return;
+      }
+      // all frames were read
+      finishTraces(Float.POSITIVE_INFINITY);
+      releaseTraces();
+    } finally {
+      expandLock.unlock();
+    }
+
+    if (!isCanceled()) {
+      setStatus(TaskStatus.FINISHED);
+    }
+  }
+
+  /**
+   * Expands the available frames of this sub task, unless they are currently expanded by another
+   * thread. Called by the frame reader while it waits for a free buffer, because this sub task
+   * might not have a thread yet.
+   *
+   * @return true if at least one frame was expanded.
+   */
+  boolean tryExpandAvailableFrames() {
+    if (!expandLock.tryLock()) {
+      return false;
+    }
+    try {
+      return expandAvailableFrames();
+    } finally {
+      expandLock.unlock();
+    }
+  }
+
+  /**
+   * The expand lock must be held by the calling thread.
+   *
+   * @return true if at least one frame was expanded.
+   */
+  private boolean expandAvailableFrames() {
+    boolean expanded = false;
+    FrameDataBuffer buffer;
+    while (!isCanceled() && expandingTraces != null
+        && (buffer = ringBuffer.poll(consumerIndex)) != null) {
+      try {
+        // frames are sorted by rt, traces ending before this frame are complete
+        finishTraces(buffer.getRetentionTime());
+        expandFrame(buffer);
+      } finally {
+        ringBuffer.release(buffer);
+      }
+      processedFrames++;
+      expanded = true;
+    }
+    return expanded;
+  }
+
+  /**
+   * Offers the data points of all mobility scans in the frame to the traces. The start of the
+   * slice's m/z range is found by binary search, the data points of a mobility scan and the traces
+   * are both sorted by m/z, so both are traversed once up to the end of the slice.
+   */
+  private void expandFrame(final FrameDataBuffer buffer) {
+    final int numTraces = expandingTraces.size();
+    if (numTraces == 0) {
+      return;
+    }
+    final float rt = buffer.getRetentionTime();
+
+    for (int scanIndex = 0; scanIndex < buffer.getNumberOfScans(); scanIndex++) {
+      final MobilityScan mobilityScan = buffer.getScan(scanIndex);
+      final int end = buffer.getScanEnd(scanIndex);
+
+      int traceIndex = 0;
+      for (int dpIndex = buffer.findFirstDataPoint(scanIndex, sliceLowerMz); dpIndex < end;
+          dpIndex++) {
+        final double mz = buffer.getMzValue(dpIndex);
+        if (mz > sliceUpperMz) {
+          break;
+        }
+
+        // while the trace upper mz smaller than the current mz, we increment the trace index
+        while (expandingTraces.get(traceIndex).getMzRange().upperEndpoint() < mz
+            && traceIndex < numTraces - 1) {
+          traceIndex++;
+        }
+        // if the current lower mz passed the current data point, we go to the next data point
+        if (expandingTraces.get(traceIndex).getMzRange().lowerEndpoint() > mz) {
+          continue;
+        }
+
+        // try to offer the current data point to the trace
+        final double intensity = buffer.getIntensityValue(dpIndex);
+        while (expandingTraces.get(traceIndex).getMzRange().contains(mz)
+            && !expandingTraces.get(traceIndex)
+            .offerDataPoint(mobilityScan, rt, mz, intensity) && traceIndex < numTraces - 1) {
+          traceIndex++;
+        }
+      }
+    }
+  }
+
+  /**
+   * Converts all traces that end before the given retention time and releases their data points.
+   */
+  private void finishTraces(final float rt) {
+    while (nextFinishedTrace < tracesByRtEnd.size()
+        && tracesByRtEnd.get(nextFinishedTrace).getRtRange().upperEndpoint() < rt) {
+      final ExpandingTrace expandingTrace = tracesByRtEnd.get(nextFinishedTrace);
+      if (expandingTrace.getNumberOfMobilityScans() > 1) {
+        final IonMobilogramTimeSeries series = expandingTrace.toIonMobilogramTimeSeries(
+            getMemoryMapStorage(), mobilogramDataAccess);
+        expandedTraces.add(new ExpandedTrace(series, expandingTrace.getRow(),
+            expandingTrace.getRow().getFeature(imsFile)));
+      }
+      expandingTrace.clearDataPoints();
+      nextFinishedTrace++;
+      createdRows++;
+    }
+  }
+
+  private void releaseTraces() {
+    expandingTraces = null;
+    tracesByRtEnd = null;
+  }
+
+  @Override
+  public void cancel() {
+    super.cancel();
+    // wake up the reader and the other sub tasks
+    ringBuffer.abort();
+  }
+
+  @NotNull
+  public List<ExpandedTrace> getExpandedTraces() {
+    return expandedTraces;
+  }
+}
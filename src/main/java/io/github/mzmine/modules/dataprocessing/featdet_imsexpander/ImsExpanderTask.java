@@ -32,6 +32,8 @@ import io.github.mzmine.datamodel.MZmineProject;
 import io.github.mzmine.datamodel.Scan;
 import io.github.mzmine.datamodel.data_access.BinningMobilogramDataAccess;
 import io.github.mzmine.datamodel.data_access.EfficientDataAccess;
+import io.github.mzmine.datamodel.data_access.EfficientDataAccess.MobilityScanDataType;
+import io.github.mzmine.datamodel.data_access.MobilityScanDataAccess;
 import io.github.mzmine.datamodel.featuredata.FeatureDataUtils;
 import io.github.mzmine.datamodel.featuredata.IonTimeSeries;
 import io.github.mzmine.datamodel.features.FeatureListRow;
@@ -52,12 +54,16 @@ import io.github.mzmine.taskcontrol.TaskStatus;
 import io.github.mzmine.util.DataTypeUtils;
 import io.github.mzmine.util.FeatureListUtils;
 import io.github.mzmine.util.MemoryMapStorage;
+import io.github.mzmine.util.exceptions.MissingMassListException;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.jetbrains.annotations.NotNull;
@@ -69,21 +75,27 @@ public class ImsExpanderTask extends AbstractTask {
   private static final int NUM_THREADS = MZmineCore.getConfiguration().getPreferences()
       .getParameter(MZminePreferences.numOfThreads).getValue();
   private static final String SUFFIX = " expanded ";
+  // number of frames buffered between the frame reader and the streaming sub tasks
+  private static final int RING_BUFFER_FRAMES = 8;
   protected final ParameterSet parameters;
   protected final ModularFeatureList flist;
-  final List<AbstractTask> tasks = new ArrayList<>();
+  final List<AbstractTask> tasks = new CopyOnWriteArrayList<>();
   private final MZmineProject project;
   private final MZTolerance mzTolerance;
   private final boolean useMzToleranceRange;
   private final AtomicInteger processedFrames = new AtomicInteger(0);
   private final AtomicInteger processedRows = new AtomicInteger(0);
   private final int binWidth;
+  private final boolean singlePassStreaming;
+  private final boolean useRawData;
+  private final Double customNoiseLevel;
   private String desc = "Mobility expanding.";
   private long totalFrames = 1;
   private long totalRows = 1;
   private long createdRows = 0;
 
   private final int maxNumTraces;
+  private volatile FrameRingBuffer ringBuffer;
 
   public ImsExpanderTask(@Nullable final MemoryMapStorage storage,
       @NotNull final ParameterSet parameters, @NotNull final ModularFeatureList flist,
@@ -103,6 +115,10 @@ public class ImsExpanderTask extends AbstractTask {
         ? parameters.getParameter(ImsExpanderParameters.mobilogramBinWidth).getEmbeddedParameter()
         .getValue() : BinningMobilogramDataAccess.getRecommendedBinWidth(
         (IMSRawDataFile) flist.getRawDataFile(0));
+    singlePassStreaming = parameters.getValue(ImsExpanderParameters.singlePassStreaming);
+    useRawData = parameters.getValue(ImsExpanderParameters.useRawData);
+    customNoiseLevel = parameters.getParameter(ImsExpanderParameters.useRawData)
+        .getEmbeddedParameter().getValue();
   }
 
   @Override
@@ -151,72 +167,58 @@ public class ImsExpanderTask extends AbstractTask {
     final List<Frame> frames = (List<Frame>) flist.getSeletedScans(flist.getRawDataFile(0));
     assert frames != null;
 
-    // we partition the traces (sorted by rt) so we can start and end at specific frames. By splitting
-    // the traces and not frames, we can also directly store the raw data on the SSD/HDD as soon as
-    // a thread finishes. Thereby we can reduce the memory consumption, especially in images.
-    final int tracesPerList = Math.min(expandingTraces.size() / NUM_THREADS, maxNumTraces);
-    expandingTraces.sort(
-        (a, b) -> Float.compare(a.getRtRange().lowerEndpoint(), b.getRtRange().lowerEndpoint()));
-    final List<List<ExpandingTrace>> subLists = Lists.partition(expandingTraces, tracesPerList);
-
-    for (final List<ExpandingTrace> subList : subLists) {
-      final Frame firstFrame = (Frame) subList.get(0).getRow().getBestFeature().getFeatureData()
-          .getSpectrum(0);
-      final ExpandingTrace lastFrameTrace = subList.stream().max(
-              (a, b) -> Float.compare(a.getRtRange().upperEndpoint(), b.getRtRange().upperEndpoint()))
-          .orElseThrow(() -> new IllegalStateException("Cannot determine last frame."));
-      final IonTimeSeries<? extends Scan> lastTraceData = lastFrameTrace.getRow().getBestFeature()
-          .getFeatureData();
-      final Frame lastFrame = (Frame) lastTraceData.getSpectrum(
-          lastTraceData.getNumberOfValues() - 1);
-      final List<Frame> framesSubList = frames.subList(frames.indexOf(firstFrame),
-          frames.indexOf(lastFrame) + 1);
-
-      final ArrayList<ExpandingTrace> traces = new ArrayList<>(subList);
-      traces.sort(Comparator.comparingDouble(a -> a.getRow().getAverageMZ()));
-
-      final BinningMobilogramDataAccess mobilogramDataAccess = EfficientDataAccess.of(imsFile,
-          binWidth);
-      tasks.add(
-          new ImsExpanderSubTask(getMemoryMapStorage(), parameters, framesSubList, flist, traces,
-              mobilogramDataAccess, newFlist));
+    if (singlePassStreaming) {
+      ringBuffer = createStreamingSubTasks(imsFile, expandingTraces, frames.size());
+    } else {
+      createSubTasks(imsFile, expandingTraces, frames, newFlist);
     }
 
-    final AtomicBoolean allThreadsFinished = new AtomicBoolean(false);
+    final CountDownLatch allThreadsFinished = new CountDownLatch(1);
     final AtomicBoolean mayContinue = new AtomicBoolean(true);
 
     final AllTasksFinishedListener listener = new AllTasksFinishedListener(tasks, true,
-        c -> allThreadsFinished.set(true), c -> {
+        c -> allThreadsFinished.countDown(), c -> {
       mayContinue.set(false);
-      allThreadsFinished.set(true);
+      // streaming sub tasks would wait for frames that are never read
+      cancelSubTasks();
+      allThreadsFinished.countDown();
     }, c -> {
       mayContinue.set(false);
-      allThreadsFinished.set(true);
+      allThreadsFinished.countDown();
     });
 
+    if (tasks.isEmpty()) {
+      allThreadsFinished.countDown();
+    }
     MZmineCore.getTaskController().addTasks(tasks.toArray(AbstractTask[]::new));
 
-    while (!allThreadsFinished.get()) {
-      try {
-        Thread.sleep(100L);
-      } catch (InterruptedException e) {
-        e.printStackTrace();
-        logger.log(Level.WARNING, e.getMessage(), e);
-        setErrorMessage(e.getMessage());
-        setStatus(TaskStatus.ERROR);
-        return;
+    try {
+      if (ringBuffer != null) {
+        desc = "Reading frames of " + imsFile.getName() + " for feature list " + flist.getName();
+        streamFrames(imsFile, frames, () -> isCanceled() || !mayContinue.get());
+      }
+      if (isCanceled()) {
+        cancelSubTasks();
       }
+      allThreadsFinished.await();
+    } catch (InterruptedException | MissingMassListException e) {
+      cancelSubTasks();
+      logger.log(Level.WARNING, e.getMessage(), e);
+      setErrorMessage(e.getMessage());
+      setStatus(TaskStatus.ERROR);
+      return;
     }
 
-    if (!mayContinue.get() || getStatus() == TaskStatus.CANCELED) {
+    if (!mayContinue.get() || isCanceled()) {
       setStatus(TaskStatus.CANCELED);
       return;
     }
 
     desc = "Creating new features for feature list " + flist.getName();
     for (AbstractTask task : tasks) {
-      final ImsExpanderSubTask t = (ImsExpanderSubTask) task;
-      final List<ExpandedTrace> expandedTraces = t.getExpandedTraces();
+      final List<ExpandedTrace> expandedTraces =
+          task instanceof ImsExpanderStreamingSubTask t ? t.getExpandedTraces()
+              : ((ImsExpanderSubTask) task).getExpandedTraces();
 
       for (ExpandedTrace expandedTrace : expandedTraces) {
         final ModularFeatureListRow row = new ModularFeatureListRow(newFlist,
@@ -243,6 +245,138 @@ public class ImsExpanderTask extends AbstractTask {
     setStatus(TaskStatus.FINISHED);
   }
 
+  /**
+   * Partitions the traces (sorted by rt) into sub tasks, which start and end at specific frames.
+   */
+  private void createSubTasks(final IMSRawDataFile imsFile,
+      final List<ExpandingTrace> expandingTraces, final List<Frame> frames,
+      final ModularFeatureList newFlist) {
+    // we partition the traces (sorted by rt) so we can start and end at specific frames. By splitting
+    // the traces and not frames, we can also directly store the raw data on the SSD/HDD as soon as
+    // a thread finishes. Thereby we can reduce the memory consumption, especially in images.
+    final int tracesPerList = Math.min(expandingTraces.size() / NUM_THREADS, maxNumTraces);
+    expandingTraces.sort(
+        (a, b) -> Float.compare(a.getRtRange().lowerEndpoint(), b.getRtRange().lowerEndpoint()));
+    final List<List<ExpandingTrace>> subLists = Lists.partition(expandingTraces, tracesPerList);
+
+    for (final List<ExpandingTrace> subList : subLists) {
+      final Frame firstFrame = (Frame) subList.get(0).getRow().getBestFeature().getFeatureData()
+          .getSpectrum(0);
+      final ExpandingTrace lastFrameTrace = subList.stream().max(
+              (a, b) -> Float.compare(a.getRtRange().upperEndpoint(), b.getRtRange().upperEndpoint()))
+          .orElseThrow(() -> new IllegalStateException("Cannot determine last frame."));
+      final IonTimeSeries<? extends Scan> lastTraceData = lastFrameTrace.getRow().getBestFeature()
+          .getFeatureData();
+      final Frame lastFrame = (Frame) lastTraceData.getSpectrum(
+          lastTraceData.getNumberOfValues() - 1);
+      final List<Frame> framesSubList = frames.subList(frames.indexOf(firstFrame),
+          frames.indexOf(lastFrame) + 1);
+
+      final ArrayList<ExpandingTrace> traces = new ArrayList<>(subList);
+      traces.sort(Comparator.comparingDouble(a -> a.getRow().getAverageMZ()));
+
+      final BinningMobilogramDataAccess mobilogramDataAccess = EfficientDataAccess.of(imsFile,
+          binWidth);
+      tasks.add(
+          new ImsExpanderSubTask(getMemoryMapStorage(), parameters, framesSubList, flist, traces,
+              mobilogramDataAccess, newFlist));
+    }
+  }
+
+  /**
+   * Partitions the traces (sorted by m/z) into disjoint m/z slices. Every slice is processed by a
+   * {@link ImsExpanderStreamingSubTask} that consumes the frames read once by this task.
+   *
+   * @return the ring buffer to pass the frames to the sub tasks.
+   */
+  private FrameRingBuffer createStreamingSubTasks(final IMSRawDataFile imsFile,
+      final List<ExpandingTrace> expandingTraces, final int numFrames) {
+    final int numSlices = Math.max(1, Math.min(NUM_THREADS, expandingTraces.size()));
+    final int tracesPerSlice = Math.max(1,
+        (int) Math.ceil(expandingTraces.size() / (double) numSlices));
+    final List<List<ExpandingTrace>> slices = Lists.partition(expandingTraces, tracesPerSlice);
+
+    final FrameRingBuffer frameRingBuffer = new FrameRingBuffer(slices.size(),
+        RING_BUFFER_FRAMES);
+    for (int i = 0; i < slices.size(); i++) {
+      final BinningMobilogramDataAccess mobilogramDataAccess = EfficientDataAccess.of(imsFile,
+          binWidth);
+      tasks.add(new ImsExpanderStreamingSubTask(getMemoryMapStorage(), imsFile, frameRingBuffer,
+          i, numFrames, new ArrayList<>(slices.get(i)), mobilogramDataAccess));
+    }
+    return frameRingBuffer;
+  }
+
+  /**
+   * Reads every frame once and passes the mobility scans to the streaming sub tasks. The sub tasks
+   * run with normal priority and may wait for a thread. While all buffers are in use, this thread
+   * expands the frames of sub tasks that are not running, so the reader never waits on a sub task
+   * that did not start.
+   *
+   * @param abort checked for every frame. The ring buffer is aborted on cancel or error.
+   */
+  private void streamFrames(final IMSRawDataFile imsFile, final List<Frame> frames,
+      final BooleanSupplier abort) throws InterruptedException {
+    if (ringBuffer.getNumberOfConsumers() == 0) {
+      return;
+    }
+    final MobilityScanDataAccess access = new MobilityScanDataAccess(imsFile,
+        useRawData ? MobilityScanDataType.RAW : MobilityScanDataType.CENTROID, frames);
+    totalFrames = access.getNumberOfScans();
+    final Double noiseLevel = useRawData ? customNoiseLevel : null;
+
+    while (access.hasNextFrame()) {
+      if (abort.getAsBoolean()) {
+        return;
+      }
+      FrameDataBuffer buffer;
+      while ((buffer = ringBuffer.tryAcquire()) == null) {
+        if (!expandFramesOfWaitingSubTasks() && !ringBuffer.awaitFreeBuffer()) {
+          return;
+        }
+      }
+      access.nextFrame();
+      buffer.load(access, noiseLevel);
+      ringBuffer.publish(buffer);
+      processedFrames.incrementAndGet();
+    }
+    ringBuffer.finish();
+  }
+
+  /**
+   * @return true if frames of at least one sub task were expanded on this thread.
+   */
+  private boolean expandFramesOfWaitingSubTasks() {
+    boolean expanded = false;
+    for (AbstractTask task : tasks) {
+      if (task instanceof ImsExpanderStreamingSubTask subTask) {
+        expanded |= subTask.tryExpandAvailableFrames();
+      }
+    }
+    return expanded;
+  }
+
+  /**
+   * Cancels all sub tasks that did not finish yet.
+   */
+  private void cancelSubTasks() {
+    final FrameRingBuffer ringBuffer = this.ringBuffer;
+    if (ringBuffer != null) {
+      ringBuffer.abort();
+    }
+    for (AbstractTask task : tasks) {
+      if (!task.isCanceled() && !task.isFinished()) {
+        task.cancel();
+      }
+    }
+  }
+
+  @Override
+  public void cancel() {
+    super.cancel();
+    cancelSubTasks();
+  }
+
   @Override
   public TaskPriority getTaskPriority() {
     return TaskPriority.HIGH; // master task needs high priority, so it does not brick the task controller
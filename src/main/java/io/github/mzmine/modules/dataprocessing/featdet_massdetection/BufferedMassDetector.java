@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.dataprocessing.featdet_massdetection;
+
+import io.github.mzmine.datamodel.MassSpectrum;
+import io.github.mzmine.parameters.ParameterSet;
+import java.util.Arrays;
+
+/**
+ * A {@link MassDetector} that writes the detected masses into arrays owned by the caller. The
+ * arrays can be reused for all spectra of a file, so that the detection does not allocate memory
+ * per spectrum. The same instance may be used by multiple threads at the same time.
+ */
+public interface BufferedMassDetector extends MassDetector {
+
+  /**
+   * Detects the masses in a spectrum.
+   *
+   * @param spectrum    the spectrum
+   * @param parameters  the parameters of this mass detector
+   * @param mzs         (out) the detected m/z values in ascending order. The length must be at
+   *                    least the number of data points of the spectrum.
+   * @param intensities (out) the detected intensities. The length must be at least the number of
+   *                    data points of the spectrum.
+   * @return the number of detected masses written to mzs and intensities
+   */
+  int getMassValues(MassSpectrum spectrum, ParameterSet parameters, double[] mzs,
+      double[] intensities);
+
+  @Override
+  default double[][] getMassValues(MassSpectrum spectrum, ParameterSet parameters) {
+    final int numDp = spectrum.getNumberOfDataPoints();
+    if (numDp == 0) {
+      return EMPTY_DATA;
+    }
+    final double[] mzs = new double[numDp];
+    final double[] intensities = new double[numDp];
+    final int detected = getMassValues(spectrum, parameters, mzs, intensities);
+    return new double[][]{Arrays.copyOf(mzs, detected), Arrays.copyOf(intensities, detected)};
+  }
+
+  /**
+   * Adds a detected mass. Masses must be added in ascending m/z order. Masses with the same m/z are
+   * kept in ascending order of intensity and only masses with the same m/z and intensity are
+   * skipped, like in a sorted set by m/z and intensity.
+   *
+   * @param n the number of masses detected so far
+   * @return the new number of detected masses
+   */
+  static int addMass(double[] mzs, double[] intensities, int n, double mz, double intensity) {
+    // insertion point within the masses of the same m/z
+    int i = n;
+    while (i > 0 && Double.compare(mzs[i - 1], mz) == 0) {
+      final int c = Double.compare(intensities[i - 1], intensity);
+      if (c == 0) {
+        return n;
+      } else if (c < 0) {
+        break;
+      }
+      i--;
+    }
+    System.arraycopy(mzs, i, mzs, i + 1, n - i);
+    System.arraycopy(intensities, i, intensities, i + 1, n - i);
+    mzs[i] = mz;
+    intensities[i] = intensity;
+    return n + 1;
+  }
+}
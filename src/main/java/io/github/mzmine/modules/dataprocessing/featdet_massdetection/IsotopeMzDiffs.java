@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.dataprocessing.featdet_massdetection;
+
+import com.google.common.primitives.Doubles;
+import io.github.mzmine.parameters.ParameterSet;
+import io.github.mzmine.parameters.parametertypes.tolerances.MZTolerance;
+import io.github.mzmine.util.IsotopesUtils;
+import java.util.List;
+import java.util.Objects;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.openscience.cdk.Element;
+
+/**
+ * Possible m/z differences of isotopes, used by mass detectors to keep signals below the noise
+ * level that may be isotopes of already detected signals. Immutable, so that a detector can cache
+ * the last instance while it is used by multiple threads.
+ *
+ * @param elements  the elements the differences were calculated for
+ * @param maxCharge the maximum charge the differences were calculated for
+ * @param mzDiffs   the possible isotope m/z differences
+ * @param maxMzDiff the maximum of the m/z differences
+ * @param tolerance the tolerance to match isotope m/z values
+ */
+public record IsotopeMzDiffs(@NotNull List<Element> elements, int maxCharge,
+                             @NotNull double[] mzDiffs, double maxMzDiff,
+                             @NotNull MZTolerance tolerance) {
+
+  /**
+   * @param isotopeParameters the {@link DetectIsotopesParameter}s
+   * @param last              the last used instance. Returned if it matches the parameters.
+   * @return the isotope m/z differences for the parameters
+   */
+  @NotNull
+  public static IsotopeMzDiffs of(@NotNull ParameterSet isotopeParameters,
+      @Nullable IsotopeMzDiffs last) {
+    final List<Element> elements = isotopeParameters.getValue(DetectIsotopesParameter.elements);
+    final int maxCharge = isotopeParameters.getValue(DetectIsotopesParameter.maxCharge);
+    final MZTolerance tolerance = isotopeParameters.getValue(
+        DetectIsotopesParameter.isotopeMzTolerance);
+
+    // Update the m/z differences only if the elements or the charge changed
+    if (last != null && last.maxCharge == maxCharge && Objects.equals(last.elements, elements)) {
+      return Objects.equals(last.tolerance, tolerance) ? last
+          : new IsotopeMzDiffs(last.elements, maxCharge, last.mzDiffs, last.maxMzDiff, tolerance);
+    }
+
+    final double[] mzDiffs = Doubles.toArray(
+        IsotopesUtils.getIsotopesMzDiffs(elements, maxCharge));
+    return new IsotopeMzDiffs(List.copyOf(elements), maxCharge, mzDiffs, Doubles.max(mzDiffs),
+        tolerance);
+  }
+
+  /**
+   * Same as {@link IsotopesUtils#isPossibleIsotopeMz(double, it.unimi.dsi.fastutil.doubles.DoubleArrayList,
+   * List, MZTolerance)} on an array without creating ranges.
+   *
+   * @param mz          the m/z value of the possible isotope
+   * @param detectedMzs the already detected m/z values in ascending order
+   * @param numDetected the number of detected m/z values
+   * @return True if mz may be an isotope of a detected m/z value.
+   */
+  public boolean isPossibleIsotopeMz(double mz, @NotNull double[] detectedMzs, int numDetected) {
+    // If the difference between current m/z and last detected m/z is greater than maximum
+    // possible isotope m/z difference, it cannot be an isotope
+    if (numDetected == 0 || Double.compare(mz - detectedMzs[numDetected - 1], maxMzDiff) > 0) {
+      return false;
+    }
+
+    for (double mzDiff : mzDiffs) {
+      final double theoreticalMz = mz - mzDiff;
+      final double absTolerance = tolerance.getMzToleranceForMass(theoreticalMz);
+      final double lower = theoreticalMz - absTolerance;
+      final double upper = theoreticalMz + absTolerance;
+
+      // Go left over the detected m/z values
+      for (int i = numDetected - 1; i >= 0; i--) {
+        final double realMz = detectedMzs[i];
+        if (lower > realMz) {
+          break;
+        }
+        if (realMz <= upper) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+}
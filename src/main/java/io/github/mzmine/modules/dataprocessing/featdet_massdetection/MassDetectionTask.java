@@ -29,6 +29,7 @@ import io.github.mzmine.datamodel.RawDataFile;
 import io.github.mzmine.datamodel.Scan;
 import io.github.mzmine.datamodel.data_access.EfficientDataAccess;
 import io.github.mzmine.datamodel.data_access.ScanDataAccess;
+import io.github.mzmine.datamodel.featuredata.impl.StorageUtils;
 import io.github.mzmine.datamodel.features.SimpleFeatureListAppliedMethod;
 import io.github.mzmine.datamodel.impl.SimpleFrame;
 import io.github.mzmine.datamodel.impl.masslist.SimpleMassList;
@@ -38,29 +39,46 @@ import io.github.mzmine.parameters.parametertypes.selectors.ScanSelection;
 import io.github.mzmine.taskcontrol.AbstractTask;
 import io.github.mzmine.taskcontrol.TaskStatus;
 import io.github.mzmine.util.MemoryMapStorage;
+import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
 import java.io.File;
+import java.io.IOException;
+import java.nio.DoubleBuffer;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
+import java.util.stream.IntStream;
 import org.jetbrains.annotations.NotNull;
-import ucar.ma2.ArrayDouble;
+import org.jetbrains.annotations.Nullable;
+import ucar.ma2.Array;
 import ucar.ma2.DataType;
+import ucar.ma2.InvalidRangeException;
 import ucar.nc2.Attribute;
 import ucar.nc2.Dimension;
 import ucar.nc2.NetcdfFileWriter;
 import ucar.nc2.Variable;
 
-// import ucar.ma2.*;
-
+/**
+ * Detects the masses of all selected scans. The scans are split into batches that are processed in
+ * parallel, each with its own {@link ScanDataAccess}. The mass lists of a batch are written to the
+ * storage in one go.
+ */
 public class MassDetectionTask extends AbstractTask {
 
+  /**
+   * Number of scans per batch. The mass lists of a batch share a single buffer in the storage.
+   */
+  private static final int SCANS_PER_BATCH = 256;
+
   private final Logger logger = Logger.getLogger(this.getClass().getName());
   private final RawDataFile dataFile;
   private final ScanSelection scanSelection;
   private final SelectedScanTypes scanTypes;
   // scan counter
-  private int processedScans = 0, totalScans = 0;
+  private final AtomicInteger processedScans = new AtomicInteger(0);
+  private int totalScans = 0;
   // Mass detector
   private MZmineProcessingStep<MassDetector> massDetector;
   // for outputting file
@@ -109,7 +127,7 @@ public class MassDetectionTask extends AbstractTask {
     if (totalScans == 0) {
       return 0;
     } else {
-      return (double) processedScans / totalScans;
+      return (double) processedScans.get() / totalScans;
     }
   }
 
@@ -122,193 +140,27 @@ public class MassDetectionTask extends AbstractTask {
    */
   @Override
   public void run() {
-
-    // make arrays to contain everything you need
-    ArrayList<Integer> pointsInScans = new ArrayList<>();
-    ArrayList<Double> allMZ = new ArrayList<>();
-    ArrayList<Double> allIntensities = new ArrayList<>();
-    // indices of full mass list where scan starts?
-    ArrayList<Integer> startIndex = new ArrayList<>();
-    ArrayList<Float> scanAcquisitionTime = new ArrayList<>();
-    // XCMS needs this one
-    ArrayList<Double> totalIntensity = new ArrayList<>();
-
-    double curTotalIntensity;
-    int lastPointCount = 0;
-
-    startIndex.add(0);
-
     try {
 
       setStatus(TaskStatus.PROCESSING);
 
       logger.info("Started mass detector on " + dataFile);
 
-      // uses only a single array for each (mz and intensity) to loop over all scans
-      ScanDataAccess data = EfficientDataAccess.of(dataFile, EfficientDataAccess.ScanDataType.RAW,
-          scanSelection);
-      totalScans = data.getNumberOfScans();
-
-      // all scans
-      while (data.hasNextScan()) {
-        if (isCanceled()) {
-          return;
-        }
-
-        Scan scan = data.nextScan();
+      final List<Scan> scans = scanSelection.getMatchingScans(dataFile.getScans());
+      totalScans = scans.size();
 
-        MassDetector detector = massDetector.getModule();
-
-        double[][] mzPeaks = null;
-        if (scanTypes.applyTo(scan)) {
-          // run mass detection on data object
-          // [mzs, intensities]
-          mzPeaks = detector.getMassValues(data, massDetector.getParameterSet());
-
-          // add mass list to scans and frames
-          scan.addMassList(new SimpleMassList(getMemoryMapStorage(), mzPeaks[0], mzPeaks[1]));
-        }
+      final int numBatches = (scans.size() + SCANS_PER_BATCH - 1) / SCANS_PER_BATCH;
+      // keep the order of batches for the netCDF output
+      final List<DetectedBatch> batches = IntStream.range(0, numBatches).parallel()
+          .mapToObj(i -> detectMasses(scans.subList(i * SCANS_PER_BATCH,
+              Math.min(scans.size(), (i + 1) * SCANS_PER_BATCH)))).toList();
 
-        if (scan instanceof SimpleFrame frame && (scanTypes == SelectedScanTypes.MOBLITY_SCANS
-            || scanTypes == SelectedScanTypes.SCANS)) {
-          // for ion mobility, detect subscans, too
-          frame.getMobilityScanStorage()
-              .generateAndAddMobilityScanMassLists(getMemoryMapStorage(), detector,
-                  massDetector.getParameterSet());
-        }
-
-        if (this.saveToCDF && mzPeaks != null) {
-          curTotalIntensity = 0;
-          double[] mzs = mzPeaks[0];
-          double[] intensities = mzPeaks[1];
-          int size = mzs.length;
-          for (int a = 0; a < size; a++) {
-            allMZ.add(mzs[a]);
-            allIntensities.add(intensities[a]);
-            curTotalIntensity += intensities[a];
-          }
-
-          scanAcquisitionTime.add(scan.getRetentionTime());
-          pointsInScans.add(0);
-          startIndex.add(mzPeaks.length + lastPointCount);
-          totalIntensity.add(curTotalIntensity);
-
-          lastPointCount = mzPeaks.length + lastPointCount;
-        }
-
-        processedScans++;
+      if (isCanceled()) {
+        return;
       }
 
       if (this.saveToCDF) {
-        // ************** write mass list
-        // *******************************
-        final String outFileNamePath = outFilename.getPath();
-        if (!outFilename.getParentFile().exists()) {
-          final boolean created = outFilename.getParentFile().mkdirs();
-          if (!created) {
-            logger.warning(() -> "Cannot create file " + outFilename.getAbsolutePath()
-                + " to save mass detection results.");
-          }
-        }
-
-        if (outFilename.getParentFile().exists()) {
-          logger.info("Saving mass detector results to netCDF file " + outFileNamePath);
-          NetcdfFileWriter writer = NetcdfFileWriter.createNew(NetcdfFileWriter.Version.netcdf3,
-              outFileNamePath, null);
-
-          Dimension dim_massValues = writer.addDimension(null, "mass_values", allMZ.size());
-          Dimension dim_intensityValues = writer.addDimension(null, "intensity_values",
-              allIntensities.size());
-          Dimension dim_scanIndex = writer.addDimension(null, "scan_index", startIndex.size() - 1);
-          Dimension dim_scanAcquisitionTime = writer.addDimension(null, "scan_acquisition_time",
-              scanAcquisitionTime.size());
-          Dimension dim_totalIntensity = writer.addDimension(null, "total_intensity",
-              totalIntensity.size());
-          Dimension dim_pointsInScans = writer.addDimension(null, "point_count",
-              pointsInScans.size());
-
-          // add dimensions to list
-          List<Dimension> dims = new ArrayList<>();
-          dims.add(dim_massValues);
-          dims.add(dim_intensityValues);
-          dims.add(dim_scanIndex);
-          dims.add(dim_scanAcquisitionTime);
-          dims.add(dim_totalIntensity);
-          dims.add(dim_pointsInScans);
-
-          // make the variables that contain the actual data I think.
-          Variable var_massValues = writer.addVariable(null, "mass_values", DataType.DOUBLE,
-              "mass_values");
-          Variable var_intensityValues = writer.addVariable(null, "intensity_values",
-              DataType.DOUBLE, "intensity_values");
-          Variable var_scanIndex = writer.addVariable(null, "scan_index", DataType.INT,
-              "scan_index");
-          Variable var_scanAcquisitionTime = writer.addVariable(null, "scan_acquisition_time",
-              DataType.DOUBLE, "scan_acquisition_time");
-          Variable var_totalIntensity = writer.addVariable(null, "total_intensity", DataType.DOUBLE,
-              "total_intensity");
-          Variable var_pointsInScans = writer.addVariable(null, "point_count", DataType.INT,
-              "point_count");
-
-          var_massValues.addAttribute(new Attribute("units", "M/Z"));
-          var_intensityValues.addAttribute(new Attribute("units", "Arbitrary Intensity Units"));
-          var_scanIndex.addAttribute(new Attribute("units", "index"));
-          var_scanAcquisitionTime.addAttribute(new Attribute("units", "seconds"));
-          var_totalIntensity.addAttribute(new Attribute("units", "Arbitrary Intensity Units"));
-          var_pointsInScans.addAttribute(new Attribute("units", "count"));
-
-          var_massValues.addAttribute(new Attribute("scale_factor", 1.0));
-          var_intensityValues.addAttribute(new Attribute("scale_factor", 1.0));
-          var_scanIndex.addAttribute(new Attribute("scale_factor", 1.0));
-          var_scanAcquisitionTime.addAttribute(new Attribute("scale_factor", 1.0));
-          var_totalIntensity.addAttribute(new Attribute("scale_factor", 1.0));
-          var_pointsInScans.addAttribute(new Attribute("scale_factor", 1.0));
-
-          // create file
-          writer.create();
-
-          ArrayDouble.D1 arr_massValues = new ArrayDouble.D1(dim_massValues.getLength());
-          ArrayDouble.D1 arr_intensityValues = new ArrayDouble.D1(dim_intensityValues.getLength());
-          ArrayDouble.D1 arr_scanIndex = new ArrayDouble.D1(dim_scanIndex.getLength());
-          ArrayDouble.D1 arr_scanAcquisitionTime = new ArrayDouble.D1(
-              dim_scanAcquisitionTime.getLength());
-          ArrayDouble.D1 arr_totalIntensity = new ArrayDouble.D1(dim_totalIntensity.getLength());
-          ArrayDouble.D1 arr_pointsInScans = new ArrayDouble.D1(dim_pointsInScans.getLength());
-
-          for (int i = 0; i < allMZ.size(); i++) {
-            arr_massValues.set(i, allMZ.get(i));
-            arr_intensityValues.set(i, allIntensities.get(i));
-          }
-          int i = 0;
-          for (; i < scanAcquisitionTime.size(); i++) {
-            arr_scanAcquisitionTime.set(i, scanAcquisitionTime.get(i) * 60);
-            arr_pointsInScans.set(i, pointsInScans.get(i));
-            arr_scanIndex.set(i, startIndex.get(i));
-            arr_totalIntensity.set(i, totalIntensity.get(i));
-          }
-          // arr_scanIndex.set(i,startIndex.get(i));
-
-          // For tiny test file
-          // arr_intensityValues .set(0,200);
-          // arr_scanIndex .set(0,0);
-          // arr_scanAcquisitionTime .set(0,10);
-          // arr_totalIntensity .set(0,200);
-          // arr_pointsInScans .set(0,0);
-
-          // arr_intensityValues .set(1,300);
-          // arr_scanIndex .set(1,1);
-          // arr_scanAcquisitionTime .set(1,20);
-          // arr_totalIntensity .set(1,300);
-          // arr_pointsInScans .set(1,0);
-
-          writer.write(var_massValues, arr_massValues);
-          writer.write(var_intensityValues, arr_intensityValues);
-          writer.write(var_scanIndex, arr_scanIndex);
-          writer.write(var_scanAcquisitionTime, arr_scanAcquisitionTime);
-          writer.write(var_totalIntensity, arr_totalIntensity);
-          writer.write(var_pointsInScans, arr_pointsInScans);
-          writer.close();
-        }
+        writeCDF(batches);
       }
 
       dataFile.getAppliedMethods().add(
@@ -318,6 +170,7 @@ public class MassDetectionTask extends AbstractTask {
       e.printStackTrace();
       setErrorMessage(e.getMessage());
       setStatus(TaskStatus.ERROR);
+      return;
     }
 
     setStatus(TaskStatus.FINISHED);
@@ -325,4 +178,213 @@ public class MassDetectionTask extends AbstractTask {
     logger.info("Finished mass detector on " + dataFile);
 
   }
+
+  /**
+   * Detects the masses of a batch of scans and stores all mass lists of the batch at once.
+   *
+   * @return the detected masses for the netCDF output or null if the task was canceled.
+   */
+  @Nullable
+  private DetectedBatch detectMasses(List<Scan> batch) {
+    if (isCanceled()) {
+      return null;
+    }
+
+    // uses only a single array for each (mz and intensity) to loop over all scans of this batch
+    final ScanDataAccess data = EfficientDataAccess.of(dataFile,
+        EfficientDataAccess.ScanDataType.RAW, batch);
+    final MassDetector detector = massDetector.getModule();
+    final ParameterSet detectorParameters = massDetector.getParameterSet();
+
+    // buffered detectors write into these arrays, which are reused for all scans
+    final BufferedMassDetector bufferedDetector =
+        detector instanceof BufferedMassDetector bd ? bd : null;
+    final int maxDataPoints = bufferedDetector != null ? dataFile.getMaxRawDataPoints() : 0;
+    final double[] mzBuffer = new double[maxDataPoints];
+    final double[] intensityBuffer = new double[maxDataPoints];
+
+    // the masses of all scans in this batch
+    final List<Scan> detectedScans = new ArrayList<>(batch.size());
+    final IntArrayList offsets = new IntArrayList(batch.size() + 1);
+    final DoubleArrayList mzs = new DoubleArrayList();
+    final DoubleArrayList intensities = new DoubleArrayList();
+    offsets.add(0);
+
+    while (data.hasNextScan()) {
+      if (isCanceled()) {
+        return null;
+      }
+
+      Scan scan = data.nextScan();
+
+      if (scanTypes.applyTo(scan)) {
+        // run mass detection on data object
+        if (bufferedDetector != null) {
+          final int detected = bufferedDetector.getMassValues(data, detectorParameters, mzBuffer,
+              intensityBuffer);
+          mzs.addElements(mzs.size(), mzBuffer, 0, detected);
+          intensities.addElements(intensities.size(), intensityBuffer, 0, detected);
+        } else {
+          // [mzs, intensities]
+          final double[][] mzPeaks = detector.getMassValues(data, detectorParameters);
+          mzs.addElements(mzs.size(), mzPeaks[0]);
+          intensities.addElements(intensities.size(), mzPeaks[1]);
+        }
+        detectedScans.add(scan);
+        offsets.add(mzs.size());
+      }
+
+      if (scan instanceof SimpleFrame frame && (scanTypes == SelectedScanTypes.MOBLITY_SCANS
+          || scanTypes == SelectedScanTypes.SCANS)) {
+        // for ion mobility, detect subscans, too
+        frame.getMobilityScanStorage()
+            .generateAndAddMobilityScanMassLists(getMemoryMapStorage(), detector,
+                detectorParameters);
+      }
+
+      processedScans.incrementAndGet();
+    }
+
+    // add mass lists to scans and frames
+    final double[] allMzs = mzs.toDoubleArray();
+    final double[] allIntensities = intensities.toDoubleArray();
+    final int[] scanOffsets = offsets.toIntArray();
+    final DoubleBuffer[] mzBuffers = StorageUtils.storeValuesToSlices(getMemoryMapStorage(),
+        allMzs, scanOffsets);
+    final DoubleBuffer[] intensityBuffers = StorageUtils.storeValuesToSlices(getMemoryMapStorage(),
+        allIntensities, scanOffsets);
+    for (int i = 0; i < detectedScans.size(); i++) {
+      detectedScans.get(i).addMassList(new SimpleMassList(mzBuffers[i], intensityBuffers[i]));
+    }
+
+    return saveToCDF ? new DetectedBatch(detectedScans, allMzs, allIntensities, scanOffsets)
+        : null;
+  }
+
+  /**
+   * Writes the mass lists to a netCDF file.
+   */
+  private void writeCDF(List<DetectedBatch> batches) throws IOException, InvalidRangeException {
+    // ************** write mass list
+    // *******************************
+    final String outFileNamePath = outFilename.getPath();
+    if (!outFilename.getParentFile().exists()) {
+      final boolean created = outFilename.getParentFile().mkdirs();
+      if (!created) {
+        logger.warning(() -> "Cannot create file " + outFilename.getAbsolutePath()
+            + " to save mass detection results.");
+      }
+    }
+
+    if (!outFilename.getParentFile().exists()) {
+      return;
+    }
+
+    int numScans = 0;
+    int numPoints = 0;
+    for (DetectedBatch batch : batches) {
+      numScans += batch.scans().size();
+      numPoints += batch.mzs().length;
+    }
+
+    // collect everything in primitive arrays
+    final double[] allMZ = new double[numPoints];
+    final double[] allIntensities = new double[numPoints];
+    // indices of full mass list where scan starts
+    final int[] startIndex = new int[numScans];
+    final int[] pointsInScans = new int[numScans];
+    final double[] scanAcquisitionTime = new double[numScans];
+    // XCMS needs this one
+    final double[] totalIntensity = new double[numScans];
+
+    int scan = 0;
+    int point = 0;
+    for (DetectedBatch batch : batches) {
+      System.arraycopy(batch.mzs(), 0, allMZ, point, batch.mzs().length);
+      System.arraycopy(batch.intensities(), 0, allIntensities, point, batch.intensities().length);
+
+      final int[] offsets = batch.offsets();
+      for (int i = 0; i < batch.scans().size(); i++) {
+        double curTotalIntensity = 0;
+        for (int dp = offsets[i]; dp < offsets[i + 1]; dp++) {
+          curTotalIntensity += batch.intensities()[dp];
+        }
+
+        startIndex[scan] = point + offsets[i];
+        pointsInScans[scan] = offsets[i + 1] - offsets[i];
+        scanAcquisitionTime[scan] = batch.scans().get(i).getRetentionTime() * 60;
+        totalIntensity[scan] = curTotalIntensity;
+        scan++;
+      }
+      point += batch.mzs().length;
+    }
+
+    logger.info("Saving mass detector results to netCDF file " + outFileNamePath);
+    NetcdfFileWriter writer = NetcdfFileWriter.createNew(NetcdfFileWriter.Version.netcdf3,
+        outFileNamePath, null);
+
+    Dimension dim_massValues = writer.addDimension(null, "mass_values", numPoints);
+    Dimension dim_intensityValues = writer.addDimension(null, "intensity_values", numPoints);
+    Dimension dim_scanIndex = writer.addDimension(null, "scan_index", numScans);
+    Dimension dim_scanAcquisitionTime = writer.addDimension(null, "scan_acquisition_time",
+        numScans);
+    Dimension dim_totalIntensity = writer.addDimension(null, "total_intensity", numScans);
+    Dimension dim_pointsInScans = writer.addDimension(null, "point_count", numScans);
+
+    // make the variables that contain the actual data I think.
+    Variable var_massValues = writer.addVariable(null, "mass_values", DataType.DOUBLE,
+        "mass_values");
+    Variable var_intensityValues = writer.addVariable(null, "intensity_values", DataType.DOUBLE,
+        "intensity_values");
+    Variable var_scanIndex = writer.addVariable(null, "scan_index", DataType.INT, "scan_index");
+    Variable var_scanAcquisitionTime = writer.addVariable(null, "scan_acquisition_time",
+        DataType.DOUBLE, "scan_acquisition_time");
+    Variable var_totalIntensity = writer.addVariable(null, "total_intensity", DataType.DOUBLE,
+        "total_intensity");
+    Variable var_pointsInScans = writer.addVariable(null, "point_count", DataType.INT,
+        "point_count");
+
+    var_massValues.addAttribute(new Attribute("units", "M/Z"));
+    var_intensityValues.addAttribute(new Attribute("units", "Arbitrary Intensity Units"));
+    var_scanIndex.addAttribute(new Attribute("units", "index"));
+    var_scanAcquisitionTime.addAttribute(new Attribute("units", "seconds"));
+    var_totalIntensity.addAttribute(new Attribute("units", "Arbitrary Intensity Units"));
+    var_pointsInScans.addAttribute(new Attribute("units", "count"));
+
+    var_massValues.addAttribute(new Attribute("scale_factor", 1.0));
+    var_intensityValues.addAttribute(new Attribute("scale_factor", 1.0));
+    var_scanIndex.addAttribute(new Attribute("scale_factor", 1.0));
+    var_scanAcquisitionTime.addAttribute(new Attribute("scale_factor", 1.0));
+    var_totalIntensity.addAttribute(new Attribute("scale_factor", 1.0));
+    var_pointsInScans.addAttribute(new Attribute("scale_factor", 1.0));
+
+    // create file
+    writer.create();
+
+    // wrap the primitive arrays without copying
+    writer.write(var_massValues,
+        Array.factory(DataType.DOUBLE, new int[]{dim_massValues.getLength()}, allMZ));
+    writer.write(var_intensityValues,
+        Array.factory(DataType.DOUBLE, new int[]{dim_intensityValues.getLength()}, allIntensities));
+    writer.write(var_scanIndex,
+        Array.factory(DataType.INT, new int[]{dim_scanIndex.getLength()}, startIndex));
+    writer.write(var_scanAcquisitionTime,
+        Array.factory(DataType.DOUBLE, new int[]{dim_scanAcquisitionTime.getLength()},
+            scanAcquisitionTime));
+    writer.write(var_totalIntensity,
+        Array.factory(DataType.DOUBLE, new int[]{dim_totalIntensity.getLength()}, totalIntensity));
+    writer.write(var_pointsInScans,
+        Array.factory(DataType.INT, new int[]{dim_pointsInScans.getLength()}, pointsInScans));
+    writer.close();
+  }
+
+  /**
+   * The detected masses of a batch of scans for the netCDF output.
+   *
+   * @param offsets the start of the masses of each scan and the total number of masses
+   */
+  private record DetectedBatch(List<Scan> scans, double[] mzs, double[] intensities,
+                               int[] offsets) {
+
+  }
 }
@@ -27,23 +27,18 @@ package io.github.mzmine.modules.dataprocessing.featdet_massdetection.auto;
 
 import io.github.mzmine.datamodel.MassSpectrum;
 import io.github.mzmine.datamodel.MassSpectrumType;
-import io.github.mzmine.modules.dataprocessing.featdet_massdetection.DetectIsotopesParameter;
-import io.github.mzmine.modules.dataprocessing.featdet_massdetection.MassDetector;
+import io.github.mzmine.modules.dataprocessing.featdet_massdetection.BufferedMassDetector;
+import io.github.mzmine.modules.dataprocessing.featdet_massdetection.IsotopeMzDiffs;
 import io.github.mzmine.modules.dataprocessing.featdet_massdetection.centroid.CentroidMassDetector;
-import io.github.mzmine.modules.dataprocessing.featdet_massdetection.centroid.CentroidMassDetectorParameters;
 import io.github.mzmine.modules.dataprocessing.featdet_massdetection.exactmass.ExactMassDetector;
-import io.github.mzmine.modules.dataprocessing.featdet_massdetection.exactmass.ExactMassDetectorParameters;
 import io.github.mzmine.parameters.ParameterSet;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-public class AutoMassDetector implements MassDetector {
+public class AutoMassDetector implements BufferedMassDetector {
 
-  private final CentroidMassDetector centroidDetector = new CentroidMassDetector();
-  private final ExactMassDetector exactMassDetector = new ExactMassDetector();
-
-  private ExactMassDetectorParameters exactMassDetectorParameters;
-  private CentroidMassDetectorParameters centroidMassDetectorParameters;
+  // isotope m/z differences of the last call. Immutable to be used by multiple threads
+  private volatile IsotopeMzDiffs isotopeMzDiffs;
 
   @Override
   public @NotNull String getName() {
@@ -55,66 +50,29 @@ public class AutoMassDetector implements MassDetector {
     return AutoMassDetectorParameters.class;
   }
 
+  /**
+   * Uses the {@link ExactMassDetector} for profile spectra and the {@link CentroidMassDetector}
+   * otherwise. The parameters are passed on directly instead of creating the parameter sets of the
+   * detectors for every spectrum.
+   */
   @Override
-  public double[][] getMassValues(MassSpectrum spectrum, ParameterSet parameters) {
+  public int getMassValues(MassSpectrum spectrum, ParameterSet parameters, double[] mzs,
+      double[] intensities) {
+    final double noiseLevel = parameters.getParameter(AutoMassDetectorParameters.noiseLevel)
+        .getValue();
+
+    IsotopeMzDiffs isotopes = null;
+    if (parameters.getParameter(AutoMassDetectorParameters.detectIsotopes).getValue()) {
+      isotopes = IsotopeMzDiffs.of(
+          parameters.getParameter(AutoMassDetectorParameters.detectIsotopes)
+              .getEmbeddedParameters(), isotopeMzDiffs);
+      isotopeMzDiffs = isotopes;
+    }
+
     if (spectrum.getSpectrumType() == MassSpectrumType.PROFILE) {
-      return exactMassDetector.getMassValues(spectrum, getExactParam(parameters));
+      return ExactMassDetector.getMassValues(spectrum, noiseLevel, isotopes, mzs, intensities);
     } else {
-      return centroidDetector.getMassValues(spectrum, getCentroidParam(parameters));
+      return CentroidMassDetector.getMassValues(spectrum, noiseLevel, isotopes, mzs, intensities);
     }
   }
-
-  @Override
-  public double[][] getMassValues(double[] mzs, double[] intensities, ParameterSet parameters) {
-    return MassDetector.super.getMassValues(mzs, intensities, parameters);
-  }
-
-  private ParameterSet getExactParam(ParameterSet autoParam) {
-    exactMassDetectorParameters = (ExactMassDetectorParameters) (new ExactMassDetectorParameters())
-        .cloneParameterSet();
-    exactMassDetectorParameters.getParameter(ExactMassDetectorParameters.noiseLevel)
-        .setValue(autoParam.getParameter(AutoMassDetectorParameters.noiseLevel).getValue());
-    exactMassDetectorParameters.setParameter(ExactMassDetectorParameters.detectIsotopes,
-        autoParam.getParameter(AutoMassDetectorParameters.detectIsotopes).getValue());
-
-    DetectIsotopesParameter detectIsotopesParameter = exactMassDetectorParameters
-        .getParameter(ExactMassDetectorParameters.detectIsotopes)
-        .getEmbeddedParameters();
-
-    detectIsotopesParameter.getParameter(DetectIsotopesParameter.elements).setValue(
-        autoParam.getParameter(AutoMassDetectorParameters.detectIsotopes).getEmbeddedParameters()
-            .getParameter(DetectIsotopesParameter.elements).getValue());
-    detectIsotopesParameter.getParameter(DetectIsotopesParameter.isotopeMzTolerance).setValue(
-        autoParam.getParameter(AutoMassDetectorParameters.detectIsotopes).getEmbeddedParameters()
-            .getParameter(DetectIsotopesParameter.isotopeMzTolerance).getValue());
-    detectIsotopesParameter.getParameter(DetectIsotopesParameter.maxCharge).setValue(
-        autoParam.getParameter(AutoMassDetectorParameters.detectIsotopes).getEmbeddedParameters()
-            .getParameter(DetectIsotopesParameter.maxCharge).getValue());
-
-    return exactMassDetectorParameters;
-  }
-
-  private ParameterSet getCentroidParam(ParameterSet autoParam) {
-    centroidMassDetectorParameters = new CentroidMassDetectorParameters();
-    centroidMassDetectorParameters.getParameter(CentroidMassDetectorParameters.noiseLevel)
-        .setValue(autoParam.getParameter(AutoMassDetectorParameters.noiseLevel).getValue());
-    centroidMassDetectorParameters
-        .setParameter(CentroidMassDetectorParameters.detectIsotopes,
-            autoParam.getParameter(AutoMassDetectorParameters.detectIsotopes).getValue());
-
-    DetectIsotopesParameter detectIsotopesParameter = centroidMassDetectorParameters
-        .getParameter(CentroidMassDetectorParameters.detectIsotopes)
-        .getEmbeddedParameters();
-    detectIsotopesParameter.getParameter(DetectIsotopesParameter.elements).setValue(
-        autoParam.getParameter(AutoMassDetectorParameters.detectIsotopes).getEmbeddedParameters()
-            .getParameter(DetectIsotopesParameter.elements).getValue());
-    detectIsotopesParameter.getParameter(DetectIsotopesParameter.isotopeMzTolerance).setValue(
-        autoParam.getParameter(AutoMassDetectorParameters.detectIsotopes).getEmbeddedParameters()
-            .getParameter(DetectIsotopesParameter.isotopeMzTolerance).getValue());
-    detectIsotopesParameter.getParameter(DetectIsotopesParameter.maxCharge).setValue(
-        autoParam.getParameter(AutoMassDetectorParameters.detectIsotopes).getEmbeddedParameters()
-            .getParameter(DetectIsotopesParameter.maxCharge).getValue());
-
-    return centroidMassDetectorParameters;
-  }
 }
@@ -25,90 +25,65 @@
 
 package io.github.mzmine.modules.dataprocessing.featdet_massdetection.centroid;
 
-import com.google.common.primitives.Doubles;
 import io.github.mzmine.datamodel.MassSpectrum;
-import io.github.mzmine.modules.dataprocessing.featdet_massdetection.DetectIsotopesParameter;
-import io.github.mzmine.modules.dataprocessing.featdet_massdetection.MassDetector;
+import io.github.mzmine.modules.dataprocessing.featdet_massdetection.BufferedMassDetector;
+import io.github.mzmine.modules.dataprocessing.featdet_massdetection.IsotopeMzDiffs;
 import io.github.mzmine.parameters.ParameterSet;
-import io.github.mzmine.parameters.parametertypes.tolerances.MZTolerance;
-import io.github.mzmine.util.IsotopesUtils;
 import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
-import java.util.Collections;
-import java.util.List;
-import java.util.Objects;
 import org.jetbrains.annotations.NotNull;
-import org.openscience.cdk.Element;
+import org.jetbrains.annotations.Nullable;
 
 /**
  * Remove peaks below the given noise level.
  */
-public class CentroidMassDetector implements MassDetector {
-
-  // Variables for the detection of isotopes below the noise level
-  private List<Element> isotopeElements;
-  private int isotopeMaxCharge;
-  // Possible m/z differences between isotopes
-  private List<Double> isotopesMzDiffs;
-  // Used to optimize getMassValues
-  private double maxIsotopeMzDiff;
-
-  @Override
-  public double[][] getMassValues(MassSpectrum spectrum, ParameterSet parameters) {
-
-    final double noiseLevel = parameters.getParameter(CentroidMassDetectorParameters.noiseLevel)
-        .getValue();
-
-    boolean detectIsotopes = parameters.getParameter(CentroidMassDetectorParameters.detectIsotopes)
-        .getValue();
-
-    // If isotopes are going to be detected get all the required parameters
-    MZTolerance isotopesMzTolerance = null;
-    if (detectIsotopes) {
-      ParameterSet isotopesParameters = parameters.getParameter(
-          CentroidMassDetectorParameters.detectIsotopes).getEmbeddedParameters();
-      List<Element> isotopeElements = isotopesParameters.getParameter(
-          DetectIsotopesParameter.elements).getValue();
-      int isotopeMaxCharge = isotopesParameters.getParameter(DetectIsotopesParameter.maxCharge)
-          .getValue();
-      isotopesMzTolerance = isotopesParameters.getParameter(
-          DetectIsotopesParameter.isotopeMzTolerance).getValue();
-
-      // Update isotopesMzDiffs only if isotopeElements and isotopeMaxCharge differ from the last call
-      if (!Objects.equals(this.isotopeElements, isotopeElements) || !Objects.equals(
-          this.isotopeMaxCharge, isotopeMaxCharge)) {
-
-        // Update isotopesMzDiffs
-        this.isotopesMzDiffs = IsotopesUtils.getIsotopesMzDiffs(isotopeElements, isotopeMaxCharge);
-        this.maxIsotopeMzDiff = Collections.max(isotopesMzDiffs);
-
-        // Store last called parameters
-        this.isotopeElements = isotopeElements;
-        this.isotopeMaxCharge = isotopeMaxCharge;
-      }
-    }
-    // use number of centroid signals as base array list capacity
+public class CentroidMassDetector implements BufferedMassDetector {
+
+  // isotope m/z differences of the last call. Immutable to be used by multiple threads
+  private volatile IsotopeMzDiffs isotopeMzDiffs;
+
+  /**
+   * @param isotopes    detect isotopes below the noise level or null
+   * @param mzs         (out) the detected m/z values
+   * @param intensities (out) the detected intensities
+   * @return the number of detected masses
+   */
+  public static int getMassValues(MassSpectrum spectrum, double noiseLevel,
+      @Nullable IsotopeMzDiffs isotopes, double[] mzs, double[] intensities) {
     final int points = spectrum.getNumberOfDataPoints();
-    // lists of primitive doubles
-    DoubleArrayList mzs = new DoubleArrayList(points);
-    DoubleArrayList intensities = new DoubleArrayList(points);
+    int detected = 0;
 
     // Find possible mzPeaks
     for (int i = 0; i < points; i++) {
       // Is intensity above the noise level or m/z value corresponds to isotope mass?
       double intensity = spectrum.getIntensityValue(i);
       double mz = spectrum.getMzValue(i);
-      if (intensity >= noiseLevel || (detectIsotopes
-          // If the difference between current m/z and last detected m/z is greater than maximum
-          // possible isotope m/z difference do not call isPossibleIsotopeMz
-          && (mzs.isEmpty()
-          || Doubles.compare(mz - mzs.getDouble(mzs.size() - 1), maxIsotopeMzDiff) <= 0)
-          && IsotopesUtils.isPossibleIsotopeMz(mz, mzs, isotopesMzDiffs, isotopesMzTolerance))) {
+      if (intensity >= noiseLevel || (isotopes != null && isotopes.isPossibleIsotopeMz(mz, mzs,
+          detected))) {
         // Yes, then mark this index as mzPeak
-        mzs.add(mz);
-        intensities.add(intensity);
+        mzs[detected] = mz;
+        intensities[detected] = intensity;
+        detected++;
       }
     }
-    return new double[][]{mzs.toDoubleArray(), intensities.toDoubleArray()};
+    return detected;
+  }
+
+  @Override
+  public int getMassValues(MassSpectrum spectrum, ParameterSet parameters, double[] mzs,
+      double[] intensities) {
+    final double noiseLevel = parameters.getParameter(CentroidMassDetectorParameters.noiseLevel)
+        .getValue();
+
+    // If isotopes are going to be detected get all the required parameters
+    IsotopeMzDiffs isotopes = null;
+    if (parameters.getParameter(CentroidMassDetectorParameters.detectIsotopes).getValue()) {
+      isotopes = IsotopeMzDiffs.of(
+          parameters.getParameter(CentroidMassDetectorParameters.detectIsotopes)
+              .getEmbeddedParameters(), isotopeMzDiffs);
+      isotopeMzDiffs = isotopes;
+    }
+
+    return getMassValues(spectrum, noiseLevel, isotopes, mzs, intensities);
   }
 
   @Override
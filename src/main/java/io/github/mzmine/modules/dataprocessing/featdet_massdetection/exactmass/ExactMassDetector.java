@@ -25,47 +25,42 @@
 
 package io.github.mzmine.modules.dataprocessing.featdet_massdetection.exactmass;
 
-import com.google.common.primitives.Doubles;
 import io.github.mzmine.datamodel.MassSpectrum;
-import io.github.mzmine.modules.dataprocessing.featdet_massdetection.DetectIsotopesParameter;
-import io.github.mzmine.modules.dataprocessing.featdet_massdetection.MassDetector;
+import io.github.mzmine.modules.dataprocessing.featdet_massdetection.BufferedMassDetector;
+import io.github.mzmine.modules.dataprocessing.featdet_massdetection.IsotopeMzDiffs;
 import io.github.mzmine.parameters.ParameterSet;
-import io.github.mzmine.parameters.parametertypes.tolerances.MZTolerance;
-import io.github.mzmine.util.IsotopesUtils;
-import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
-import java.util.Objects;
+import java.util.Arrays;
 import org.jetbrains.annotations.NotNull;
-import org.openscience.cdk.Element;
+import org.jetbrains.annotations.Nullable;
 
-public class ExactMassDetector implements MassDetector {
+public class ExactMassDetector implements BufferedMassDetector {
 
-  // Variables for the detection of isotopes below the noise level
-  private List<Element> isotopeElements;
-  private int isotopeMaxCharge;
-  // Possible m/z differences between isotopes
-  private List<Double> isotopesMzDiffs;
-  // Used to optimize getMassValues
-  private double maxIsotopeMzDiff;
+  // isotope m/z differences of the last call. Immutable to be used by multiple threads
+  private volatile IsotopeMzDiffs isotopeMzDiffs;
 
   @NotNull
   public static double[][] getMassValues(MassSpectrum spectrum, double noiseLevel) {
-    return getMassValues(spectrum, noiseLevel, false, null, null, 0d);
+    final int numDp = spectrum.getNumberOfDataPoints();
+    final double[] mzs = new double[numDp];
+    final double[] intensities = new double[numDp];
+    final int detected = getMassValues(spectrum, noiseLevel, null, mzs, intensities);
+    return new double[][]{Arrays.copyOf(mzs, detected), Arrays.copyOf(intensities, detected)};
   }
 
-  @NotNull
-  public static double[][] getMassValues(MassSpectrum spectrum, double noiseLevel,
-      boolean detectIsotopes, MZTolerance isotopesMzTolerance, List<Double> isotopesMzDiffs,
-      double maxIsotopeMzDiff) {
-    // lists of primitive doubles
-    DoubleArrayList mzs = new DoubleArrayList(128);
-    DoubleArrayList intensities = new DoubleArrayList(128);
+  /**
+   * @param isotopes    detect isotopes below the noise level or null
+   * @param mzs         (out) the detected m/z values
+   * @param intensities (out) the detected intensities
+   * @return the number of detected masses
+   */
+  public static int getMassValues(MassSpectrum spectrum, double noiseLevel,
+      @Nullable IsotopeMzDiffs isotopes, double[] mzs, double[] intensities) {
+    int detected = 0;
 
     // First get all candidate peaks (local maximum)
     int localMaximumIndex = 0;
-    ArrayList<Integer> rangeDataPoints = new ArrayList<>();
+    // the current m/z peak contains all non-zero data points from this index on
+    int rangeStart = 0;
 
     boolean ascending = true;
 
@@ -83,9 +78,6 @@ public class ExactMassDetector implements MassDetector {
         continue;
       }
 
-      // Add current (non-zero) data point to the current m/z peak
-      rangeDataPoints.add(i);
-
       // Check for local maximum
       if (ascending && (!nextIsBigger)) {
         localMaximumIndex = i;
@@ -97,31 +89,25 @@ public class ExactMassDetector implements MassDetector {
       if ((!ascending) && (nextIsBigger || nextIsZero)) {
 
         // Calculate the exact mass
-        double exactMz = calculateExactMass(spectrum, localMaximumIndex, rangeDataPoints);
+        double exactMz = calculateExactMass(spectrum, localMaximumIndex, rangeStart, i);
 
         // Add the m/z peak if it is above the noise level or m/z value corresponds to isotope mass
-        if (spectrum.getIntensityValue(localMaximumIndex) > noiseLevel || //
-            (detectIsotopes
-                // If the difference between current m/z and last detected m/z is greater than maximum
-                // possible isotope m/z difference do not call isPossibleIsotopeMz
-                && (mzs.isEmpty()
-                || Doubles.compare(exactMz - mzs.getDouble(mzs.size() - 1), maxIsotopeMzDiff) <= 0)
-                && IsotopesUtils.isPossibleIsotopeMz(exactMz, mzs, isotopesMzDiffs,
-                isotopesMzTolerance))) {
+        if (spectrum.getIntensityValue(localMaximumIndex) > noiseLevel || (isotopes != null
+            && isotopes.isPossibleIsotopeMz(exactMz, mzs, detected))) {
 
           // Add data point to lists
-          mzs.add(exactMz);
-          intensities.add(spectrum.getIntensityValue(localMaximumIndex));
+          mzs[detected] = exactMz;
+          intensities[detected] = spectrum.getIntensityValue(localMaximumIndex);
+          detected++;
         }
 
         // Reset and start with new peak
         ascending = true;
-        rangeDataPoints.clear();
+        rangeStart = i + 1;
       }
     }
 
-    // Return an array of detected MzPeaks sorted by MZ
-    return new double[][]{mzs.toDoubleArray(), intensities.toDoubleArray()};
+    return detected;
   }
 
   /**
@@ -130,8 +116,8 @@ public class ExactMassDetector implements MassDetector {
    *
    * @return double
    */
-  private static double calculateExactMass(MassSpectrum spectrum, int topIndex,
-      List<Integer> rangeDataPoints) {
+  private static double calculateExactMass(MassSpectrum spectrum, int topIndex, int rangeStart,
+      int rangeEnd) {
 
     /*
      * According with the FWHM concept, the exact mass of this peak is the half point of FWHM. In
@@ -148,22 +134,32 @@ public class ExactMassDetector implements MassDetector {
     double xRight = -1, xLeft = -1;
     double halfIntensity = spectrum.getIntensityValue(topIndex) / 2;
 
-    for (int i = 0; i < rangeDataPoints.size() - 1; i++) {
+    // iterate over pairs of consecutive non-zero data points in the range
+    int previous = -1;
+    for (int next = rangeStart; next <= rangeEnd; next++) {
+      if (Double.compare(spectrum.getIntensityValue(next), 0d) == 0) {
+        continue;
+      }
+      final int current = previous;
+      previous = next;
+      if (current == -1) {
+        continue;
+      }
 
       // Left side of the curve
-      if ((spectrum.getIntensityValue(rangeDataPoints.get(i)) <= halfIntensity) && (
-          spectrum.getMzValue(rangeDataPoints.get(i)) < spectrum.getMzValue(topIndex)) && (
-          spectrum.getIntensityValue(rangeDataPoints.get(i + 1)) >= halfIntensity)) {
+      if ((spectrum.getIntensityValue(current) <= halfIntensity) && (
+          spectrum.getMzValue(current) < spectrum.getMzValue(topIndex)) && (
+          spectrum.getIntensityValue(next) >= halfIntensity)) {
 
         // First point with intensity just less than half of total
         // intensity
-        double leftY1 = spectrum.getIntensityValue(rangeDataPoints.get(i));
-        double leftX1 = spectrum.getMzValue(rangeDataPoints.get(i));
+        double leftY1 = spectrum.getIntensityValue(current);
+        double leftX1 = spectrum.getMzValue(current);
 
         // Second point with intensity just bigger than half of total
         // intensity
-        double leftY2 = spectrum.getIntensityValue(rangeDataPoints.get(i + 1));
-        double leftX2 = spectrum.getMzValue(rangeDataPoints.get(i + 1));
+        double leftY2 = spectrum.getIntensityValue(next);
+        double leftX2 = spectrum.getMzValue(next);
 
         // We calculate the slope with formula m = Y1 - Y2 / X1 - X2
         double mLeft = (leftY1 - leftY2) / (leftX1 - leftX2);
@@ -183,19 +179,19 @@ public class ExactMassDetector implements MassDetector {
       }
 
       // Right side of the curve
-      if ((spectrum.getIntensityValue(rangeDataPoints.get(i)) >= halfIntensity) && (
-          spectrum.getMzValue(rangeDataPoints.get(i)) > spectrum.getMzValue(topIndex)) && (
-          spectrum.getIntensityValue(rangeDataPoints.get(i + 1)) <= halfIntensity)) {
+      if ((spectrum.getIntensityValue(current) >= halfIntensity) && (
+          spectrum.getMzValue(current) > spectrum.getMzValue(topIndex)) && (
+          spectrum.getIntensityValue(next) <= halfIntensity)) {
 
         // First point with intensity just bigger than half of total
         // intensity
-        double rightY1 = spectrum.getIntensityValue(rangeDataPoints.get(i));
-        double rightX1 = spectrum.getMzValue(rangeDataPoints.get(i));
+        double rightY1 = spectrum.getIntensityValue(current);
+        double rightX1 = spectrum.getMzValue(current);
 
         // Second point with intensity just less than half of total
         // intensity
-        double rightY2 = spectrum.getIntensityValue(rangeDataPoints.get(i + 1));
-        double rightX2 = spectrum.getMzValue(rangeDataPoints.get(i + 1));
+        double rightY2 = spectrum.getIntensityValue(next);
+        double rightX2 = spectrum.getMzValue(next);
 
         // We calculate the slope with formula m = Y1 - Y2 / X1 - X2
         double mRight = (rightY1 - rightY2) / (rightX1 - rightX2);
@@ -229,43 +225,24 @@ public class ExactMassDetector implements MassDetector {
   }
 
   @Override
-  public double[][] getMassValues(MassSpectrum spectrum, ParameterSet parameters) {
+  public int getMassValues(MassSpectrum spectrum, ParameterSet parameters, double[] mzs,
+      double[] intensities) {
     if (spectrum.getNumberOfDataPoints() == 0) {
-      return EMPTY_DATA;
+      return 0;
     }
 
     double noiseLevel = parameters.getParameter(ExactMassDetectorParameters.noiseLevel).getValue();
-    boolean detectIsotopes = parameters.getParameter(ExactMassDetectorParameters.detectIsotopes)
-        .getValue();
 
     // If isotopes are going to be detected get all the required parameters
-    MZTolerance isotopesMzTolerance = null;
-    if (detectIsotopes) {
-      ParameterSet isotopesParameters = parameters.getParameter(
-          ExactMassDetectorParameters.detectIsotopes).getEmbeddedParameters();
-      List<Element> isotopeElements = isotopesParameters.getParameter(
-          DetectIsotopesParameter.elements).getValue();
-      int isotopeMaxCharge = isotopesParameters.getParameter(DetectIsotopesParameter.maxCharge)
-          .getValue();
-      isotopesMzTolerance = isotopesParameters.getParameter(
-          DetectIsotopesParameter.isotopeMzTolerance).getValue();
-
-      // Update isotopesMzDiffs only if isotopeElements and isotopeMaxCharge differ from the last call
-      if (!Objects.equals(this.isotopeElements, isotopeElements) || !Objects.equals(
-          this.isotopeMaxCharge, isotopeMaxCharge)) {
-
-        // Update isotopesMzDiffs
-        this.isotopesMzDiffs = IsotopesUtils.getIsotopesMzDiffs(isotopeElements, isotopeMaxCharge);
-        this.maxIsotopeMzDiff = Collections.max(isotopesMzDiffs);
-
-        // Store last called parameters
-        this.isotopeElements = isotopeElements;
-        this.isotopeMaxCharge = isotopeMaxCharge;
-      }
+    IsotopeMzDiffs isotopes = null;
+    if (parameters.getParameter(ExactMassDetectorParameters.detectIsotopes).getValue()) {
+      isotopes = IsotopeMzDiffs.of(
+          parameters.getParameter(ExactMassDetectorParameters.detectIsotopes)
+              .getEmbeddedParameters(), isotopeMzDiffs);
+      isotopeMzDiffs = isotopes;
     }
 
-    return getMassValues(spectrum, noiseLevel, detectIsotopes, isotopesMzTolerance, isotopesMzDiffs,
-        maxIsotopeMzDiff);
+    return getMassValues(spectrum, noiseLevel, isotopes, mzs, intensities);
   }
 
   @Override
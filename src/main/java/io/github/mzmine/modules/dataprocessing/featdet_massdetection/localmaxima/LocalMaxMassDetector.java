@@ -25,26 +25,24 @@
 
 package io.github.mzmine.modules.dataprocessing.featdet_massdetection.localmaxima;
 
-import gnu.trove.list.array.TDoubleArrayList;
 import org.jetbrains.annotations.NotNull;
 import io.github.mzmine.datamodel.MassSpectrum;
-import io.github.mzmine.modules.dataprocessing.featdet_massdetection.MassDetector;
+import io.github.mzmine.modules.dataprocessing.featdet_massdetection.BufferedMassDetector;
 import io.github.mzmine.parameters.ParameterSet;
 
 /**
  * This class detects all local maxima in a given scan.
  */
-public class LocalMaxMassDetector implements MassDetector {
+public class LocalMaxMassDetector implements BufferedMassDetector {
 
   @Override
-  public double[][] getMassValues(MassSpectrum scan, ParameterSet parameters) {
+  public int getMassValues(MassSpectrum scan, ParameterSet parameters, double[] mzs,
+      double[] intensities) {
 
     double noiseLevel =
         parameters.getParameter(LocalMaxMassDetectorParameters.noiseLevel).getValue();
 
-    // lists of primitive doubles
-    TDoubleArrayList mzs = new TDoubleArrayList(100);
-    TDoubleArrayList intensities = new TDoubleArrayList(100);
+    int detected = 0;
 
     // All data points of current m/z peak
 
@@ -79,16 +77,17 @@ public class LocalMaxMassDetector implements MassDetector {
 
         // Add the m/z peak if it is above the noise level
         if (scan.getIntensityValue(currentMzPeakTop) > noiseLevel) {
-          mzs.add(scan.getMzValue(currentMzPeakTop));
-          intensities.add(scan.getIntensityValue(currentMzPeakTop));
+          mzs[detected] = scan.getMzValue(currentMzPeakTop);
+          intensities[detected] = scan.getIntensityValue(currentMzPeakTop);
+          detected++;
         }
 
         // Reset and start with new peak
         ascending = true;
       }
     }
-    // Return an array of detected MzPeaks sorted by MZ
-    return new double[][]{mzs.toArray(), intensities.toArray()};
+    // Return the number of detected MzPeaks sorted by MZ
+    return detected;
   }
 
   @Override
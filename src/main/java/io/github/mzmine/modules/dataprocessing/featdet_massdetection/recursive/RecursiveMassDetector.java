@@ -25,23 +25,16 @@
 
 package io.github.mzmine.modules.dataprocessing.featdet_massdetection.recursive;
 
-import io.github.mzmine.datamodel.DataPoint;
 import io.github.mzmine.datamodel.MassSpectrum;
-import io.github.mzmine.datamodel.impl.SimpleDataPoint;
-import io.github.mzmine.modules.dataprocessing.featdet_massdetection.MassDetector;
+import io.github.mzmine.modules.dataprocessing.featdet_massdetection.BufferedMassDetector;
 import io.github.mzmine.parameters.ParameterSet;
-import io.github.mzmine.util.DataPointSorter;
-import io.github.mzmine.util.SortingDirection;
-import io.github.mzmine.util.SortingProperty;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.TreeSet;
 import org.jetbrains.annotations.NotNull;
 
-public class RecursiveMassDetector implements MassDetector {
+public class RecursiveMassDetector implements BufferedMassDetector {
 
   @Override
-  public double[][] getMassValues(MassSpectrum scan, ParameterSet parameters) {
+  public int getMassValues(MassSpectrum scan, ParameterSet parameters, double[] mzs,
+      double[] intensities) {
     double noiseLevel =
         parameters.getParameter(RecursiveMassDetectorParameters.noiseLevel).getValue();
     double minimumMZPeakWidth =
@@ -49,36 +42,25 @@ public class RecursiveMassDetector implements MassDetector {
     double maximumMZPeakWidth =
         parameters.getParameter(RecursiveMassDetectorParameters.maximumMZPeakWidth).getValue();
 
-    TreeSet<DataPoint> mzPeaks =
-        new TreeSet<DataPoint>(new DataPointSorter(SortingProperty.MZ, SortingDirection.Ascending));
+    // number of detected masses. The peaks are found in ascending order of their index
+    final int[] detected = new int[1];
 
     // Find MzPeaks
-    recursiveThreshold(mzPeaks, scan, 1, scan.getNumberOfDataPoints() - 1, noiseLevel,
-        minimumMZPeakWidth, maximumMZPeakWidth, 0);
-
-    // convert to double[][] TODO remove use of DataPoint
-    int size = mzPeaks.size();
-    double[] mzs = new double[size];
-    double[] intensities = new double[size];
-    int i = 0;
-    for (DataPoint mzPeak : mzPeaks) {
-      mzs[i] = mzPeak.getMZ();
-      intensities[i] = mzPeak.getIntensity();
-      i++;
-    }
-    return new double[][]{mzs, intensities};
+    recursiveThreshold(mzs, intensities, detected, scan, 1, scan.getNumberOfDataPoints() - 1,
+        noiseLevel, minimumMZPeakWidth, maximumMZPeakWidth, 0);
+
+    return detected[0];
   }
 
   /**
    * This function searches for maxima from given part of a spectrum
    */
-  private int recursiveThreshold(TreeSet<DataPoint> mzPeaks, MassSpectrum scan, int startInd,
-      int stopInd, double curentNoiseLevel, double minimumMZPeakWidth, double maximumMZPeakWidth,
-      int recuLevel) {
+  private int recursiveThreshold(double[] mzs, double[] intensities, int[] detected,
+      MassSpectrum scan, int startInd, int stopInd, double curentNoiseLevel,
+      double minimumMZPeakWidth, double maximumMZPeakWidth, int recuLevel) {
 
     // logger.finest(" Level of recursion " + recuLevel);
 
-    List<DataPoint> RawDataPointsInds = new ArrayList<DataPoint>();
     int peakStartInd, peakStopInd, peakMaxInd;
     double peakWidthMZ;
 
@@ -111,8 +93,6 @@ public class RecursiveMassDetector implements MassDetector {
         if (scan.getIntensityValue(ind) > scan.getIntensityValue(peakMaxInd))
           peakMaxInd = ind;
 
-        // Forming the DataPoint array that defines this peak
-        RawDataPointsInds.add(new SimpleDataPoint(scan.getMzValue(ind), scan.getIntensityValue(ind)));
         ind++;
       }
 
@@ -126,21 +106,21 @@ public class RecursiveMassDetector implements MassDetector {
 
         // Declare a new MzPeak with intensity equal to max intensity
         // data point
-        mzPeaks.add(new SimpleDataPoint(scan.getMzValue(peakMaxInd), scan.getIntensityValue(peakMaxInd)));
+        detected[0] = BufferedMassDetector.addMass(mzs, intensities, detected[0],
+            scan.getMzValue(peakMaxInd), scan.getIntensityValue(peakMaxInd));
 
         if (recuLevel > 0) {
           // return stop index and beginning of the next peak
           return ind;
         }
       }
-      RawDataPointsInds.clear();
 
       // If the peak is still too big applies the same method until find a
       // peak of the right size
       if (peakWidthMZ > maximumMZPeakWidth) {
         if (localMinimum < Double.MAX_VALUE) {
-          ind = recursiveThreshold(mzPeaks, scan, peakStartInd, peakStopInd, localMinimum,
-              minimumMZPeakWidth, maximumMZPeakWidth, recuLevel + 1);
+          ind = recursiveThreshold(mzs, intensities, detected, scan, peakStartInd, peakStopInd,
+              localMinimum, minimumMZPeakWidth, maximumMZPeakWidth, recuLevel + 1);
         }
 
       }
@@ -25,17 +25,9 @@
 
 package io.github.mzmine.modules.dataprocessing.featdet_massdetection.wavelet;
 
-import io.github.mzmine.datamodel.DataPoint;
 import io.github.mzmine.datamodel.MassSpectrum;
-import io.github.mzmine.datamodel.impl.SimpleDataPoint;
-import io.github.mzmine.modules.dataprocessing.featdet_massdetection.MassDetector;
+import io.github.mzmine.modules.dataprocessing.featdet_massdetection.BufferedMassDetector;
 import io.github.mzmine.parameters.ParameterSet;
-import io.github.mzmine.util.DataPointSorter;
-import io.github.mzmine.util.SortingDirection;
-import io.github.mzmine.util.SortingProperty;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.TreeSet;
 import org.jetbrains.annotations.NotNull;
 
 /**
@@ -43,7 +35,7 @@ import org.jetbrains.annotations.NotNull;
  * a certain spectrum. After get the spectrum in the wavelet's time domain, we use the local maxima
  * to detect possible peaks in the original raw datapoints.
  */
-public class WaveletMassDetector implements MassDetector {
+public class WaveletMassDetector implements BufferedMassDetector {
 
   /**
    * Parameters of the wavelet, NPOINTS is the number of wavelet values to use The WAVELET_ESL &
@@ -53,8 +45,12 @@ public class WaveletMassDetector implements MassDetector {
   private static final int WAVELET_ESL = -5;
   private static final int WAVELET_ESR = 5;
 
+  // wavelet values and wavelet intensities of the last call of each thread
+  private final ThreadLocal<CwtBuffers> buffers = ThreadLocal.withInitial(CwtBuffers::new);
+
   @Override
-  public double[][] getMassValues(MassSpectrum scan, ParameterSet parameters) {
+  public int getMassValues(MassSpectrum scan, ParameterSet parameters, double[] mzs,
+      double[] intensities) {
 
     double noiseLevel = parameters.getParameter(WaveletMassDetectorParameters.noiseLevel)
         .getValue();
@@ -62,29 +58,17 @@ public class WaveletMassDetector implements MassDetector {
     double waveletWindow = parameters.getParameter(WaveletMassDetectorParameters.waveletWindow)
         .getValue();
 
-    DataPoint waveletDataPoints[] = performCWT(scan, waveletWindow, scaleLevel);
-
-    DataPoint detected[] = getMzPeaks(noiseLevel, scan, waveletDataPoints);
+    final CwtBuffers buffer = buffers.get();
+    final double[] cwtIntensities = buffer.getCwtIntensities(scan.getNumberOfDataPoints());
+    performCWT(scan, buffer.getWavelet(waveletWindow), scaleLevel, cwtIntensities);
 
-    // convert to double[][] TODO remove use of DataPoint
-    int size = detected.length;
-    double[] mzs = new double[size];
-    double[] intensities = new double[size];
-    for (int i = 0; i < size; i++) {
-      mzs[i] = detected[i].getMZ();
-      intensities[i] = detected[i].getIntensity();
-    }
-    return new double[][]{mzs, intensities};
+    return getMzPeaks(noiseLevel, scan, cwtIntensities, mzs, intensities);
   }
 
   /**
-   * Perform the CWT over raw data points in the selected scale level
-   *
-   * @param scan
+   * @return the pre calculated values of the wavelet for this window
    */
-  private SimpleDataPoint[] performCWT(MassSpectrum scan, double waveletWindow, int scaleLevel) {
-    int length = scan.getNumberOfDataPoints();
-    SimpleDataPoint[] cwtDataPoints = new SimpleDataPoint[length];
+  private static double[] calculateWavelet(double waveletWindow) {
     double wstep = ((WAVELET_ESR - WAVELET_ESL) / NPOINTS);
     double[] W = new double[(int) NPOINTS];
 
@@ -94,6 +78,18 @@ public class WaveletMassDetector implements MassDetector {
       W[j] = cwtMEXHATreal(waveletIndex, waveletWindow, 0.0);
       waveletIndex += wstep;
     }
+    return W;
+  }
+
+  /**
+   * Perform the CWT over raw data points in the selected scale level
+   *
+   * @param scan
+   * @param cwtIntensities (out) the wavelet intensity for each data point of the scan
+   */
+  private void performCWT(MassSpectrum scan, double[] W, int scaleLevel,
+      double[] cwtIntensities) {
+    int length = scan.getNumberOfDataPoints();
 
     /*
      * We only perform Translation of the wavelet in the selected scale
@@ -131,10 +127,8 @@ public class WaveletMassDetector implements MassDetector {
       if (intensity < 0) {
         intensity = 0;
       }
-      cwtDataPoints[dx] = new SimpleDataPoint(scan.getMzValue(dx), intensity);
+      cwtIntensities[dx] = intensity;
     }
-
-    return cwtDataPoints;
   }
 
   /**
@@ -144,7 +138,7 @@ public class WaveletMassDetector implements MassDetector {
    * @param a Window Width of the wavelet
    * @param b Offset from the center of the peak
    */
-  private double cwtMEXHATreal(double x, double a, double b) {
+  private static double cwtMEXHATreal(double x, double a, double b) {
     /* c = 2 / ( sqrt(3) * pi^(1/4) ) */
     double c = 0.8673250705840776;
     double TINY = 1E-200;
@@ -160,20 +154,19 @@ public class WaveletMassDetector implements MassDetector {
 
   /**
    * This function searches for maximums from wavelet data points
+   *
+   * @return the number of detected masses
    */
-  private DataPoint[] getMzPeaks(double noiseLevel, MassSpectrum scan,
-      DataPoint[] waveletDataPoints) {
+  private int getMzPeaks(double noiseLevel, MassSpectrum scan, double[] cwtIntensities,
+      double[] mzs, double[] intensities) {
 
-    TreeSet<DataPoint> mzPeaks = new TreeSet<>(
-        new DataPointSorter(SortingProperty.MZ, SortingDirection.Ascending));
-
-    List<DataPoint> rawDataPoints = new ArrayList<>();
+    int detected = 0;
     int peakMaxInd = 0;
-    int stopInd = waveletDataPoints.length - 1;
+    int stopInd = scan.getNumberOfDataPoints() - 1;
 
     for (int ind = 0; ind <= stopInd; ind++) {
 
-      while ((ind <= stopInd) && (waveletDataPoints[ind].getIntensity() == 0)) {
+      while ((ind <= stopInd) && (cwtIntensities[ind] == 0)) {
         ind++;
       }
       peakMaxInd = ind;
@@ -181,13 +174,16 @@ public class WaveletMassDetector implements MassDetector {
         break;
       }
 
+      // maximum raw intensity of the peak
+      double aproxIntensity = 0;
+
       // While peak is on
-      while ((ind <= stopInd) && (waveletDataPoints[ind].getIntensity() > 0)) {
+      while ((ind <= stopInd) && (cwtIntensities[ind] > 0)) {
         // Check if this is the maximum point of the peak
-        if (waveletDataPoints[ind].getIntensity() > waveletDataPoints[peakMaxInd].getIntensity()) {
+        if (cwtIntensities[ind] > cwtIntensities[peakMaxInd]) {
           peakMaxInd = ind;
         }
-        rawDataPoints.add(new SimpleDataPoint(scan.getMzValue(ind), scan.getIntensityValue(ind)));
+        aproxIntensity = Math.max(aproxIntensity, scan.getIntensityValue(ind));
         ind++;
       }
 
@@ -195,32 +191,15 @@ public class WaveletMassDetector implements MassDetector {
         break;
       }
 
-      rawDataPoints.add(new SimpleDataPoint(scan.getMzValue(ind), scan.getIntensityValue(ind)));
+      aproxIntensity = Math.max(aproxIntensity, scan.getIntensityValue(ind));
 
       if (scan.getIntensityValue(peakMaxInd) > noiseLevel) {
-        SimpleDataPoint peakDataPoint = new SimpleDataPoint(scan.getMzValue(peakMaxInd),
-            calcAproxIntensity(rawDataPoints));
-
-        mzPeaks.add(peakDataPoint);
-
+        detected = BufferedMassDetector.addMass(mzs, intensities, detected,
+            scan.getMzValue(peakMaxInd), aproxIntensity);
       }
-      rawDataPoints.clear();
     }
 
-    return mzPeaks.toArray(new DataPoint[0]);
-
-  }
-
-  private double calcAproxIntensity(List<DataPoint> rawDataPoints) {
-
-    double aproxIntensity = 0;
-
-    for (DataPoint d : rawDataPoints) {
-      if (d.getIntensity() > aproxIntensity) {
-        aproxIntensity = d.getIntensity();
-      }
-    }
-    return aproxIntensity;
+    return detected;
   }
 
   @Override
@@ -233,4 +212,29 @@ public class WaveletMassDetector implements MassDetector {
     return WaveletMassDetectorParameters.class;
   }
 
+  /**
+   * The buffers of one thread. The wavelet values are only calculated again when the window width
+   * changes and the array of the wavelet intensities only grows.
+   */
+  private static class CwtBuffers {
+
+    private double window = Double.NaN;
+    private double[] wavelet;
+    private double[] cwtIntensities = new double[0];
+
+    private double[] getWavelet(double waveletWindow) {
+      if (wavelet == null || Double.compare(window, waveletWindow) != 0) {
+        wavelet = calculateWavelet(waveletWindow);
+        window = waveletWindow;
+      }
+      return wavelet;
+    }
+
+    private double[] getCwtIntensities(int length) {
+      if (cwtIntensities.length < length) {
+        cwtIntensities = new double[length];
+      }
+      return cwtIntensities;
+    }
+  }
 }
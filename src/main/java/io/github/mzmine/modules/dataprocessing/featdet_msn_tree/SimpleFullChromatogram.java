@@ -20,7 +20,7 @@ package io.github.mzmine.modules.dataprocessing.featdet_msn_tree;
 
 import io.github.mzmine.datamodel.Scan;
 import io.github.mzmine.datamodel.featuredata.IonTimeSeries;
-import io.github.mzmine.datamodel.featuredata.impl.SimpleIonTimeSeries;
+import io.github.mzmine.datamodel.featuredata.impl.ScanIndexIonTimeSeries;
 import io.github.mzmine.util.MemoryMapStorage;
 import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
 import java.util.ArrayList;
@@ -99,7 +99,7 @@ public class SimpleFullChromatogram {
       }
     }
 
-    return new SimpleIonTimeSeries(storage, fmzs.toDoubleArray(), fintensities.toDoubleArray(),
+    return ScanIndexIonTimeSeries.of(storage, fmzs.toDoubleArray(), fintensities.toDoubleArray(),
         fscans);
   }
 
@@ -116,7 +116,7 @@ public class SimpleFullChromatogram {
    */
   public IonTimeSeries<? extends Scan> toFullIonTimeSeries(@Nullable MemoryMapStorage storage,
       final List<Scan> scans) {
-    return new SimpleIonTimeSeries(storage, mzs, intensities, scans);
+    return ScanIndexIonTimeSeries.of(storage, mzs, intensities, scans);
   }
 
   /**
@@ -31,7 +31,7 @@ import io.github.mzmine.datamodel.FeatureStatus;
 import io.github.mzmine.datamodel.RawDataFile;
 import io.github.mzmine.datamodel.Scan;
 import io.github.mzmine.datamodel.featuredata.IonTimeSeries;
-import io.github.mzmine.datamodel.featuredata.impl.SimpleIonTimeSeries;
+import io.github.mzmine.datamodel.featuredata.impl.ScanIndexIonTimeSeries;
 import io.github.mzmine.datamodel.features.Feature;
 import io.github.mzmine.datamodel.features.FeatureListRow;
 import io.github.mzmine.datamodel.features.ModularFeature;
@@ -41,6 +41,7 @@ import io.github.mzmine.util.RangeUtils;
 import io.github.mzmine.util.scans.ScanUtils;
 import java.util.ArrayList;
 import java.util.List;
+import org.jetbrains.annotations.Nullable;
 
 public class Gap {
 
@@ -117,6 +118,25 @@ public class Gap {
 
   }
 
+  /**
+   * Scans are offered in ascending retention time. Scans before this retention time are ignored.
+   *
+   * @return the lower end of the RT range
+   */
+  public float getRtSearchStart() {
+    return rtRange.lowerEndpoint();
+  }
+
+  /**
+   * Scans are offered in ascending retention time. Used to stop offering scans to this gap.
+   *
+   * @param rt the retention time of the next scan
+   * @return true if this gap ignores all scans with a retention time >= rt
+   */
+  public boolean ignoresScansFrom(float rt) {
+    return rt > rtRange.upperEndpoint();
+  }
+
   /**
    * Finalizes the gap, adds a peak
    */
@@ -128,6 +148,24 @@ public class Gap {
    * Finalizes the gap, adds a peak
    */
   public boolean noMoreOffers(int minDataPoints) {
+    final Feature newPeak = finish(minDataPoints);
+    if (newPeak == null) {
+      return false;
+    }
+
+    // Fill the gap
+    peakListRow.addFeature(rawDataFile, newPeak, false);
+    return true;
+  }
+
+  /**
+   * Finalizes the gap and creates the feature without adding it to the row. Used to create the
+   * features on multiple threads and add them to the rows on a single thread.
+   *
+   * @return the new feature or null if no peak was found or the peak does not meet the filters
+   */
+  @Nullable
+  public Feature finish(int minDataPoints) {
 
     // Check peak that was last constructed
     if (currentPeakDataPoints != null) {
@@ -137,24 +175,20 @@ public class Gap {
 
     // does not meet filters
     if (bestPeakDataPoints == null || bestPeakDataPoints.size() < minDataPoints) {
-      return false;
+      return null;
     }
 
-    return addFeatureToRow();
+    return createFeature();
   }
 
-  protected boolean addFeatureToRow() {
+  protected Feature createFeature() {
     final double[][] mzIntensities = DataPointUtils.getDataPointsAsDoubleArray(bestPeakDataPoints);
-    final IonTimeSeries<?> series = new SimpleIonTimeSeries(
+    final IonTimeSeries<?> series = ScanIndexIonTimeSeries.of(
         ((ModularFeatureList) peakListRow.getFeatureList()).getMemoryMapStorage(), mzIntensities[0],
         mzIntensities[1], bestPeakDataPoints.stream().map(GapDataPoint::getScan).toList());
 
-    final Feature newPeak = new ModularFeature((ModularFeatureList) peakListRow.getFeatureList(),
-        rawDataFile, series, FeatureStatus.ESTIMATED);
-
-    // Fill the gap
-    peakListRow.addFeature(rawDataFile, newPeak, false);
-    return true;
+    return new ModularFeature((ModularFeatureList) peakListRow.getFeatureList(), rawDataFile,
+        series, FeatureStatus.ESTIMATED);
   }
 
   /**
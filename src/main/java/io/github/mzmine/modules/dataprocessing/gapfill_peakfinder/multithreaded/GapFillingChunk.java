@@ -0,0 +1,286 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.dataprocessing.gapfill_peakfinder.multithreaded;
+
+import static io.github.mzmine.datamodel.MobilityType.TIMS;
+
+import com.google.common.collect.Range;
+import io.github.mzmine.datamodel.Frame;
+import io.github.mzmine.datamodel.IMSRawDataFile;
+import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.datamodel.Scan;
+import io.github.mzmine.datamodel.data_access.BinningMobilogramDataAccess;
+import io.github.mzmine.datamodel.data_access.EfficientDataAccess;
+import io.github.mzmine.datamodel.data_access.EfficientDataAccess.MobilityScanDataType;
+import io.github.mzmine.datamodel.data_access.EfficientDataAccess.ScanDataType;
+import io.github.mzmine.datamodel.data_access.MobilityScanDataAccess;
+import io.github.mzmine.datamodel.data_access.ScanDataAccess;
+import io.github.mzmine.datamodel.features.Feature;
+import io.github.mzmine.datamodel.features.FeatureListRow;
+import io.github.mzmine.datamodel.features.ModularFeatureList;
+import io.github.mzmine.datamodel.features.types.numbers.MobilityType;
+import io.github.mzmine.modules.dataprocessing.gapfill_peakfinder.Gap;
+import io.github.mzmine.parameters.ParameterSet;
+import io.github.mzmine.parameters.parametertypes.tolerances.MZTolerance;
+import io.github.mzmine.parameters.parametertypes.tolerances.RTTolerance;
+import io.github.mzmine.util.exceptions.MissingMassListException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.function.BooleanSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Fills a subset of the gaps of one raw data file. The gaps of a file are split into chunks by
+ * their retention time, so that multiple threads can work on the same file. Each chunk only reads
+ * the scans from the start of its first gap until all of its gaps are finished.
+ * <p>
+ * The features are created but not added to the rows. This is done by the {@link
+ * MultiThreadPeakFinderMainTask} on a single thread.
+ */
+class GapFillingChunk implements Callable<List<GapFillingChunk.FilledGap>> {
+
+  private static final Logger logger = Logger.getLogger(GapFillingChunk.class.getName());
+
+  private final ModularFeatureList peakList;
+  private final ModularFeatureList processedPeakList;
+  private final RawDataFile dataFile;
+  // indices of the rows with a gap in this file
+  private final int[] rows;
+  private final double intTolerance;
+  private final MZTolerance mzTolerance;
+  private final RTTolerance rtTolerance;
+  private final int minDataPoints;
+  private final BooleanSupplier canceled;
+
+  /**
+   * @param rows     the indices of the rows with a gap in this file
+   * @param canceled stops processing if true
+   */
+  GapFillingChunk(ModularFeatureList peakList, ModularFeatureList processedPeakList,
+      RawDataFile dataFile, int[] rows, ParameterSet parameters, BooleanSupplier canceled) {
+    this.peakList = peakList;
+    this.processedPeakList = processedPeakList;
+    this.dataFile = dataFile;
+    this.rows = rows;
+    this.canceled = canceled;
+
+    intTolerance = parameters.getValue(MultiThreadPeakFinderParameters.intTolerance);
+    mzTolerance = parameters.getValue(MultiThreadPeakFinderParameters.MZTolerance);
+    rtTolerance = parameters.getValue(MultiThreadPeakFinderParameters.RTTolerance);
+    minDataPoints = parameters.getValue(MultiThreadPeakFinderParameters.minDataPoints);
+  }
+
+  @Override
+  public List<FilledGap> call() {
+    // the binning access keeps buffers and is not shared with other chunks. The bin width of the
+    // detected features is not stored with them, and the features of an aligned list may come from
+    // different modules. All gaps of a raw data file therefore use its recommended bin width.
+    final BinningMobilogramDataAccess mobilogramAccess =
+        dataFile instanceof IMSRawDataFile imsFile ? EfficientDataAccess.of(imsFile,
+            BinningMobilogramDataAccess.getRecommendedBinWidth(imsFile)) : null;
+
+    final List<Gap> gaps = new ArrayList<>(rows.length);
+    for (int row : rows) {
+      FeatureListRow sourceRow = peakList.getRow(row);
+      FeatureListRow newRow = processedPeakList.getRow(row);
+
+      // Create a new gap
+      Range<Double> mzRange = mzTolerance.getToleranceRange(sourceRow.getAverageMZ());
+      Range<Float> rtRange = rtTolerance.getToleranceRange(sourceRow.getAverageRT());
+
+      if (peakList.hasFeatureType(MobilityType.class) && dataFile instanceof IMSRawDataFile) {
+        Range<Float> mobilityRange = sourceRow.getMobilityRange();
+        gaps.add(new ImsGap(newRow, dataFile, mzRange, rtRange, mobilityRange, intTolerance,
+            mobilogramAccess));
+      } else {
+        gaps.add(new Gap(newRow, dataFile, mzRange, rtRange, intTolerance));
+      }
+    }
+
+    processFile(dataFile, gaps);
+
+    if (canceled.getAsBoolean()) {
+      return List.of();
+    }
+
+    // Finalize gaps
+    final List<FilledGap> filled = new ArrayList<>();
+    for (int i = 0; i < gaps.size(); i++) {
+      final Feature feature = gaps.get(i).finish(minDataPoints);
+      if (feature != null) {
+        filled.add(new FilledGap(processedPeakList.getRow(rows[i]), dataFile, feature));
+      }
+    }
+    return filled;
+  }
+
+  private void processFile(RawDataFile file, List<Gap> gaps) {
+    List<? extends Scan> scans = peakList.getSeletedScans(file);
+    // only offer scans to gaps with a matching rt window. Needs scans sorted by retention time
+    GapSweep<Gap> rtSweep = null;
+    if (isSortedByRetentionTime(scans)) {
+      rtSweep = new GapSweep<>(gaps, Gap::getRtSearchStart);
+      // skip the scans before the first gap of this chunk
+      float firstRt = Float.POSITIVE_INFINITY;
+      for (Gap gap : gaps) {
+        firstRt = Math.min(firstRt, gap.getRtSearchStart());
+      }
+      scans = scans.subList(firstScanIndex(scans, firstRt), scans.size());
+    }
+
+    if (file instanceof IMSRawDataFile imsFile && peakList.hasFeatureType(MobilityType.class)) {
+      final MobilityScanDataAccess access = new MobilityScanDataAccess(imsFile,
+          MobilityScanDataType.CENTROID, (List<Frame>) scans);
+
+      while (access.hasNextFrame() && (rtSweep == null || !rtSweep.isDone())) {
+        if (canceled.getAsBoolean()) {
+          return;
+        }
+
+        final Frame frame = access.nextFrame();
+        final float rt = frame.getRetentionTime();
+        final List<? extends Gap> activeGaps =
+            rtSweep != null ? rtSweep.advance(rt, gap -> gap.ignoresScansFrom(rt)) : gaps;
+        offerFrame(access, frame, (List<ImsGap>) activeGaps);
+      }
+
+    } else {
+      // no IMS dimension
+
+      final ScanDataAccess scanAccess = EfficientDataAccess.of(file, ScanDataType.CENTROID, scans);
+      while (scanAccess.hasNextScan() && (rtSweep == null || !rtSweep.isDone())) {
+        if (canceled.getAsBoolean()) {
+          return;
+        }
+        final Scan scan = scanAccess.nextScan();
+        final float rt = scan.getRetentionTime();
+        final List<? extends Gap> activeGaps =
+            rtSweep != null ? rtSweep.advance(rt, gap -> gap.ignoresScansFrom(rt)) : gaps;
+        // Feed this scan to all gaps that are within their rt window
+        for (Gap gap : activeGaps) {
+          gap.offerNextScan(scanAccess);
+        }
+      }
+    }
+  }
+
+  /**
+   * Offers a frame to the gaps. The mobility scans are read once and only offered to the gaps with
+   * a matching mobility range.
+   */
+  private void offerFrame(MobilityScanDataAccess access, Frame frame, List<ImsGap> gaps) {
+    final List<ImsGap> started = new ArrayList<>();
+    for (ImsGap gap : gaps) {
+      if (gap.startFrame(frame.getRetentionTime())) {
+        started.add(gap);
+      }
+    }
+    if (started.isEmpty()) {
+      return;
+    }
+
+    final boolean tims = frame.getMobilityType() == TIMS;
+    final GapSweep<ImsGap> mobilitySweep = createMobilitySweep(started, tims);
+
+    access.resetMobilityScan();
+    while (access.hasNextMobilityScan() && !mobilitySweep.isDone()) {
+      try {
+        access.nextMobilityScan();
+      } catch (MissingMassListException e) {
+        // fails the chunk, the main task is set to an error state
+        logger.log(Level.SEVERE,
+            "Cannot fill gaps in " + dataFile.getName() + ". " + e.getMessage(), e);
+        throw e;
+      }
+
+      final List<ImsGap> activeGaps = advanceMobility(mobilitySweep, access.getMobility(), tims);
+      for (ImsGap gap : activeGaps) {
+        gap.offerMobilityScan(access);
+      }
+    }
+
+    for (ImsGap gap : started) {
+      gap.finishFrame();
+    }
+  }
+
+  /**
+   * Mobility scans are sorted by mobility, descending for TIMS. The sweep runs in the same
+   * direction.
+   *
+   * @param tims true for descending mobility
+   */
+  static GapSweep<ImsGap> createMobilitySweep(Collection<ImsGap> gaps, boolean tims) {
+    return new GapSweep<>(gaps, tims ? gap -> -gap.getMobilityRange().upperEndpoint()
+        : gap -> gap.getMobilityRange().lowerEndpoint());
+  }
+
+  /**
+   * @param mobility the mobility of the next mobility scan
+   * @return the gaps with a mobility range that contains the mobility
+   */
+  static List<ImsGap> advanceMobility(GapSweep<ImsGap> sweep, double mobility, boolean tims) {
+    return sweep.advance(tims ? -mobility : mobility,
+        gap -> tims ? mobility < gap.getMobilityRange().lowerEndpoint()
+            : mobility > gap.getMobilityRange().upperEndpoint());
+  }
+
+  /**
+   * @return the index of the first scan with a retention time >= rt
+   */
+  private static int firstScanIndex(List<? extends Scan> scans, float rt) {
+    int low = 0;
+    int high = scans.size();
+    while (low < high) {
+      final int mid = (low + high) >>> 1;
+      if (scans.get(mid).getRetentionTime() < rt) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  static boolean isSortedByRetentionTime(List<? extends Scan> scans) {
+    for (int i = 1; i < scans.size(); i++) {
+      if (scans.get(i).getRetentionTime() < scans.get(i - 1).getRetentionTime()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * A feature that fills the gap of a row
+   */
+  record FilledGap(FeatureListRow row, RawDataFile dataFile, Feature feature) {
+
+  }
+}
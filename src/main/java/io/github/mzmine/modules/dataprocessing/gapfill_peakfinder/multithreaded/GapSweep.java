@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.dataprocessing.gapfill_peakfinder.multithreaded;
+
+import io.github.mzmine.modules.dataprocessing.gapfill_peakfinder.Gap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Sweeps over gaps in the order of the start of their search window, e.g., the retention time or
+ * mobility range. Instead of offering all data to all gaps, only the gaps whose window contains the
+ * current position are active. The position must not decrease between calls of {@link
+ * #advance(double, Predicate)}.
+ *
+ * @param <T> the gap type
+ */
+final class GapSweep<T extends Gap> {
+
+  private final List<T> sorted;
+  private final double[] starts;
+  private final List<T> active = new ArrayList<>();
+  private int next = 0;
+
+  /**
+   * @param gaps  the gaps
+   * @param start the start of the search window of a gap
+   */
+  GapSweep(Collection<T> gaps, ToDoubleFunction<? super T> start) {
+    sorted = new ArrayList<>(gaps);
+    sorted.sort(Comparator.comparingDouble(start));
+    starts = new double[sorted.size()];
+    for (int i = 0; i < starts.length; i++) {
+      starts[i] = start.applyAsDouble(sorted.get(i));
+    }
+  }
+
+  /**
+   * Activates all gaps that start at or before the position and removes the finished gaps.
+   *
+   * @param position the current position
+   * @param finished true for gaps that do not use data at or after the position
+   * @return the active gaps. Changes with the next call.
+   */
+  List<T> advance(double position, Predicate<? super T> finished) {
+    active.removeIf(finished);
+    while (next < starts.length && starts[next] <= position) {
+      final T gap = sorted.get(next++);
+      if (!finished.test(gap)) {
+        active.add(gap);
+      }
+    }
+    return active;
+  }
+
+  /**
+   * @return true if all gaps were activated and finished
+   */
+  boolean isDone() {
+    return next >= starts.length && active.isEmpty();
+  }
+}
@@ -28,7 +28,6 @@ package io.github.mzmine.modules.dataprocessing.gapfill_peakfinder.multithreaded
 import com.google.common.collect.Range;
 import gnu.trove.list.array.TDoubleArrayList;
 import io.github.mzmine.datamodel.FeatureStatus;
-import io.github.mzmine.datamodel.Frame;
 import io.github.mzmine.datamodel.MobilityScan;
 import io.github.mzmine.datamodel.MobilityType;
 import io.github.mzmine.datamodel.RawDataFile;
@@ -38,14 +37,18 @@ import io.github.mzmine.datamodel.data_access.MobilityScanDataAccess;
 import io.github.mzmine.datamodel.featuredata.IonMobilitySeries;
 import io.github.mzmine.datamodel.featuredata.IonMobilogramTimeSeries;
 import io.github.mzmine.datamodel.featuredata.impl.IonMobilogramTimeSeriesFactory;
+import io.github.mzmine.datamodel.features.Feature;
 import io.github.mzmine.datamodel.features.FeatureListRow;
 import io.github.mzmine.datamodel.features.ModularFeature;
 import io.github.mzmine.datamodel.features.ModularFeatureList;
 import io.github.mzmine.modules.dataprocessing.gapfill_peakfinder.Gap;
 import io.github.mzmine.modules.dataprocessing.gapfill_peakfinder.GapDataPoint;
 import io.github.mzmine.util.exceptions.MissingMassListException;
+import io.github.mzmine.util.scans.ScanUtils;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import org.jetbrains.annotations.NotNull;
 
 /**
@@ -55,9 +58,17 @@ import org.jetbrains.annotations.NotNull;
  */
 public class ImsGap extends Gap {
 
+  private static final Logger logger = Logger.getLogger(ImsGap.class.getName());
+
   private final Range<Float> mobilityRange;
   private final BinningMobilogramDataAccess mobilogramBinning;
 
+  // data points of the frame that is currently offered
+  private final List<MobilityScan> frameMobilityScans = new ArrayList<>();
+  private final TDoubleArrayList frameMzValues = new TDoubleArrayList();
+  private final TDoubleArrayList frameIntensityValues = new TDoubleArrayList();
+  private double frameFeatureMz;
+
   /**
    * Constructor: Initializes an empty gap
    *
@@ -81,21 +92,116 @@ public class ImsGap extends Gap {
     if (!(scan instanceof MobilityScanDataAccess access)) {
       throw new IllegalArgumentException("Scan is not a MobilityScanDataAccess");
     }
-    double scanRT = scan.getRetentionTime();
+    if (!startFrame(scan.getRetentionTime())) {
+      return;
+    }
+
+    final MobilityType mobilityType = access.getFrame().getMobilityType();
+    while (access.hasNextMobilityScan()) {
+      final MobilityScan mobilityScan;
+      try {
+        mobilityScan = access.nextMobilityScan();
+      } catch (MissingMassListException e) {
+        // fails the chunk, the main task is set to an error state
+        logger.log(Level.SEVERE, "Cannot fill gap of row " + peakListRow.getID() + " in "
+            + rawDataFile.getName() + ". " + e.getMessage(), e);
+        throw e;
+      }
 
+      if ((mobilityType != MobilityType.TIMS
+          && mobilityScan.getMobility() < mobilityRange.lowerEndpoint()) || (
+          mobilityType == MobilityType.TIMS
+              && mobilityScan.getMobility() > mobilityRange.upperEndpoint())) {
+        continue;
+      } else if ((mobilityType != MobilityType.TIMS
+          && mobilityScan.getMobility() > mobilityRange.upperEndpoint()) || (
+          mobilityType == MobilityType.TIMS
+              && mobilityScan.getMobility() < mobilityRange.lowerEndpoint())) {
+        break;
+      }
+
+      offerMobilityScan(access);
+    }
+    finishFrame();
+  }
+
+  @Override
+  public boolean ignoresScansFrom(float rt) {
+    // a peak that started within the rt range may be continued after the range
+    return super.ignoresScansFrom(rt) && currentPeakDataPoints == null;
+  }
+
+  public Range<Float> getMobilityRange() {
+    return mobilityRange;
+  }
+
+  /**
+   * Starts collecting the data points of a frame. If true is returned, all mobility scans within
+   * the mobility range are offered by {@link #offerMobilityScan(MobilityScanDataAccess)}, followed
+   * by {@link #finishFrame()}.
+   *
+   * @param frameRT retention time of the frame. Frames are offered in ascending retention time.
+   * @return false if the frame is not needed by this gap
+   */
+  public boolean startFrame(double frameRT) {
     // If not yet inside the RT range
     // If we have passed the RT range and finished processing last peak
-    if (scanRT < rtRange.lowerEndpoint() || (scanRT > rtRange.upperEndpoint()) && (
+    if (frameRT < rtRange.lowerEndpoint() || (frameRT > rtRange.upperEndpoint()) && (
         currentPeakDataPoints == null)) {
-      return;
+      return false;
     }
 
-    DataPointIonMobilitySeries mobilogram = findDataPoint(access);
+    frameFeatureMz = peakListRow.getAverageMZ();
+    frameMobilityScans.clear();
+    frameMzValues.resetQuick();
+    frameIntensityValues.resetQuick();
+    return true;
+  }
+
+  /**
+   * Adds the data point closest to the feature m/z of the current mobility scan of the access. The
+   * mobility scan must be within the mobility range of this gap.
+   */
+  public void offerMobilityScan(@NotNull final MobilityScanDataAccess access) {
+    final double upper = mzRange.upperEndpoint();
+    final int numDataPoints = access.getNumberOfDataPoints();
+
+    int bestIndex = -1;
+    double bestDelta = Double.POSITIVE_INFINITY;
+    for (int i = ScanUtils.findFirstMzIndex(access, mzRange.lowerEndpoint()); i < numDataPoints;
+        i++) {
+      final double mz = access.getMzValue(i);
+      if (mz > upper) {
+        break;
+      }
 
-    if (mobilogram == null) {
+      final double delta = Math.abs(mz - frameFeatureMz);
+      if (delta < bestDelta) {
+        bestDelta = delta;
+        bestIndex = i;
+      }
+    }
+
+    if (bestIndex != -1) {
+      frameMzValues.add(access.getMzValue(bestIndex));
+      frameIntensityValues.add(access.getIntensityValue(bestIndex));
+      frameMobilityScans.add(access.getCurrentMobilityScan());
+    }
+  }
+
+  /**
+   * Creates the mobilogram of the current frame and continues or finishes the current peak.
+   */
+  public void finishFrame() {
+    if (frameMobilityScans.isEmpty()) {
       return;
     }
 
+    final DataPointIonMobilitySeries mobilogram = new DataPointIonMobilitySeries(null,
+        frameMzValues.toArray(), frameIntensityValues.toArray(),
+        new ArrayList<>(frameMobilityScans));
+    frameMobilityScans.clear();
+
     if (currentPeakDataPoints == null) {
       currentPeakDataPoints = new ArrayList<>();
       currentPeakDataPoints.add(mobilogram);
@@ -110,87 +216,16 @@ public class ImsGap extends Gap {
       checkCurrentPeak();
       currentPeakDataPoints = null;
     }
-
-  }
-
-  private DataPointIonMobilitySeries findDataPoint(@NotNull final MobilityScanDataAccess access) {
-
-    final Frame frame = access.getFrame();
-    final MobilityType mobilityType = frame.getMobilityType();
-    final double featureMz = peakListRow.getAverageMZ();
-
-    /*if (frame.getRetentionTime() < rtRange.lowerEndpoint()) {
-      return null;
-    } else if (frame.getRetentionTime() > rtRange.upperEndpoint()) {
-      return null;
-    }*/
-
-    final List<MobilityScan> mobilogramScans = new ArrayList<>();
-    final TDoubleArrayList mzValues = new TDoubleArrayList();
-    final TDoubleArrayList intensityValues = new TDoubleArrayList();
-
-    while (access.hasNextMobilityScan()) {
-      final MobilityScan scan;
-      try {
-        scan = access.nextMobilityScan();
-      } catch (MissingMassListException e) {
-        e.printStackTrace();
-        return null;
-      }
-
-      if ((mobilityType != MobilityType.TIMS && scan.getMobility() < mobilityRange.lowerEndpoint())
-          || (mobilityType == MobilityType.TIMS && scan.getMobility() > mobilityRange
-          .upperEndpoint())) {
-        continue;
-      } else if (
-          (mobilityType != MobilityType.TIMS && scan.getMobility() > mobilityRange.upperEndpoint())
-              || (mobilityType == MobilityType.TIMS && scan.getMobility() < mobilityRange
-              .lowerEndpoint())) {
-        break;
-      }
-
-      int bestIndex = -1;
-      double bestDelta = Double.POSITIVE_INFINITY;
-      for (int i = 0; i < access.getNumberOfDataPoints(); i++) {
-        final double mz = access.getMzValue(i);
-        if (mz < mzRange.lowerEndpoint()) {
-          continue;
-        } else if (mz > mzRange.upperEndpoint()) {
-          break;
-        }
-
-        final double delta = Math.abs(mz - featureMz);
-        if (delta < bestDelta) {
-          bestDelta = delta;
-          bestIndex = i;
-        }
-      }
-
-      if (bestIndex != -1) {
-        mzValues.add(access.getMzValue(bestIndex));
-        intensityValues.add(access.getIntensityValue(bestIndex));
-        mobilogramScans.add(scan);
-      }
-    }
-
-    if (!mobilogramScans.isEmpty()) {
-      return new DataPointIonMobilitySeries(null, mzValues.toArray(), intensityValues.toArray(),
-          mobilogramScans);
-    }
-    return null;
   }
 
   @Override
-  protected boolean addFeatureToRow() {
+  protected Feature createFeature() {
     final IonMobilogramTimeSeries trace = IonMobilogramTimeSeriesFactory.of(
         ((ModularFeatureList) peakListRow.getFeatureList()).getMemoryMapStorage(),
         (List<IonMobilitySeries>) (List<? extends IonMobilitySeries>) (List<? extends GapDataPoint>) bestPeakDataPoints,
         mobilogramBinning);
 
-    ModularFeature f = new ModularFeature((ModularFeatureList) peakListRow.getFeatureList(),
-        rawDataFile, trace, FeatureStatus.ESTIMATED);
-
-    peakListRow.addFeature(rawDataFile, f, false);
-    return true;
+    return new ModularFeature((ModularFeatureList) peakListRow.getFeatureList(), rawDataFile,
+        trace, FeatureStatus.ESTIMATED);
   }
 }
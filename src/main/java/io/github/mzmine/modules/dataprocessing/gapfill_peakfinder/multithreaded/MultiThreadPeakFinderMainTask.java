@@ -26,32 +26,40 @@
 package io.github.mzmine.modules.dataprocessing.gapfill_peakfinder.multithreaded;
 
 import com.google.common.util.concurrent.AtomicDouble;
+import io.github.mzmine.datamodel.FeatureStatus;
 import io.github.mzmine.datamodel.MZmineProject;
+import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.datamodel.features.Feature;
 import io.github.mzmine.datamodel.features.FeatureList;
+import io.github.mzmine.datamodel.features.FeatureListRow;
 import io.github.mzmine.datamodel.features.ModularFeatureList;
 import io.github.mzmine.datamodel.features.SimpleFeatureListAppliedMethod;
-import io.github.mzmine.gui.preferences.MZminePreferences;
-import io.github.mzmine.gui.preferences.NumOfThreadsParameter;
 import io.github.mzmine.main.MZmineCore;
+import io.github.mzmine.modules.dataprocessing.gapfill_peakfinder.multithreaded.GapFillingChunk.FilledGap;
 import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.parameters.parametertypes.OriginalFeatureListHandlingParameter.OriginalFeatureListOption;
+import io.github.mzmine.parameters.parametertypes.tolerances.RTTolerance;
 import io.github.mzmine.taskcontrol.AbstractTask;
-import io.github.mzmine.taskcontrol.AllTasksFinishedListener;
-import io.github.mzmine.taskcontrol.Task;
 import io.github.mzmine.taskcontrol.TaskStatus;
 import io.github.mzmine.util.MemoryMapStorage;
 import java.time.Instant;
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 /**
- * The main task creates sub tasks to perform the PeakFinder algorithm on multiple threads. Each sub
- * task performs gap filling on a number of RawDataFiles.
+ * The main task splits the gaps of each raw data file into chunks of neighbouring retention time
+ * and fills them on the executor of the task controller, which is limited by the number of threads
+ * in the preferences. The number of threads is independent of the number of raw data files. The
+ * filled features are added to the rows by this task only.
  *
  * @author Robin Schmid (robinschmid@wwu.de)
  */
@@ -59,6 +67,10 @@ class MultiThreadPeakFinderMainTask extends AbstractTask {
 
   private static final Logger logger = Logger.getLogger(
       MultiThreadPeakFinderMainTask.class.getName());
+  // number of chunks per thread to balance files and rt regions with different numbers of gaps
+  private static final int CHUNKS_PER_THREAD = 4;
+  // each chunk reads all scans of its rt region. Avoid chunks with only few gaps
+  private static final int MIN_GAPS_PER_CHUNK = 64;
   private final MZmineProject project;
   private final OriginalFeatureListOption originalFeatureListOption;
   private final ParameterSet parameters;
@@ -67,11 +79,8 @@ class MultiThreadPeakFinderMainTask extends AbstractTask {
   private final AtomicDouble progress = new AtomicDouble(0);
   private ModularFeatureList processedPeakList;
 
-  /**
-   * @param batchTasks all sub tasks are registered to the batchtasks list
-   */
   public MultiThreadPeakFinderMainTask(MZmineProject project, FeatureList peakList,
-      ParameterSet parameters, Collection<Task> batchTasks, @Nullable MemoryMapStorage storage,
+      ParameterSet parameters, @Nullable MemoryMapStorage storage,
       @NotNull Instant moduleCallDate) {
     super(storage, moduleCallDate);
     this.project = project;
@@ -98,119 +107,111 @@ class MultiThreadPeakFinderMainTask extends AbstractTask {
 
     progress.getAndSet(0.1);
 
-    // split raw data files into groups for each thread (task)
-    // Obtain the settings of max concurrent threads
-    // as this task uses one thread
-    int maxRunningThreads = getMaxThreads();
-    // raw files
-    int raw = processedPeakList.getNumberOfRawDataFiles();
-
-    // Submit the tasks to the task controller for processing
-    List<AbstractTask> tasks = createSubTasks(raw, maxRunningThreads);
-
-    final AbstractTask thistask = this;
-    new AllTasksFinishedListener(tasks, true,
-        // succeed
-        l -> {
-          logger.info(
-              "All sub tasks of multithreaded gap-filling have finished. Finalising results.");
-
-          // Add task description to peakList
-          processedPeakList.addDescriptionOfAppliedTask(
-              new SimpleFeatureListAppliedMethod("Gap filling ", MultiThreadPeakFinderModule.class,
-                  parameters, getModuleCallDate()));
-
-          // update all rows by row bindings (average values)
-          // this needs to be done after all tasks finish because values were not updated when
-          // adding features
-          processedPeakList.applyRowBindings();
-
-          // add / remove or rename the new feature list in project
-          originalFeatureListOption.reflectNewFeatureListToProject(suffix, project,
-              processedPeakList, peakList);
-
-          logger.info("Completed: Multithreaded gap-filling successfull");
-
-          if (thistask.getStatus() == TaskStatus.PROCESSING) {
-            thistask.setStatus(TaskStatus.FINISHED);
-          }
-        }, lerror -> {
-      setErrorMessage("Error in gap filling");
-      thistask.setStatus(TaskStatus.ERROR);
-      for (AbstractTask task : tasks) {
-        task.setStatus(TaskStatus.ERROR);
-      }
-    },
-        // cancel if one was cancelled
-        listCancelled -> cancel()) {
-      @Override
-      public void taskStatusChanged(Task task, TaskStatus newStatus, TaskStatus oldStatus) {
-        super.taskStatusChanged(task, newStatus, oldStatus);
-        // show progress
-        if (oldStatus != newStatus && newStatus == TaskStatus.FINISHED) {
-          progress.getAndAdd(0.9 / tasks.size());
+    // the chunks share the thread limit of the task controller. Joining executes pending chunks on
+    // this thread, if it is a thread of the same executor
+    final ForkJoinPool executor = MZmineCore.getTaskController().getExecutor();
+    final int maxRunningThreads = executor.getParallelism();
+    final List<GapFillingChunk> chunks = createChunks(maxRunningThreads);
+    logger.finest(() -> String.format("Gap filling %d chunks on %d threads", chunks.size(),
+        maxRunningThreads));
+
+    final List<ForkJoinTask<List<FilledGap>>> jobs = new ArrayList<>(chunks.size());
+    for (GapFillingChunk chunk : chunks) {
+      jobs.add(executor.submit(chunk));
+    }
+
+    try {
+      // only this thread adds features to the rows
+      for (int done = 0; done < jobs.size(); done++) {
+        final List<FilledGap> filled = jobs.get(done).join();
+        if (isCanceled()) {
+          return;
         }
+        for (FilledGap gap : filled) {
+          gap.row().addFeature(gap.dataFile(), gap.feature(), false);
+        }
+        progress.set(0.1 + 0.9 * (done + 1) / jobs.size());
       }
-    };
+    } catch (CancellationException e) {
+      setStatus(TaskStatus.CANCELED);
+      return;
+    } catch (RuntimeException e) {
+      final Throwable cause = e.getCause() != null ? e.getCause() : e;
+      logger.log(Level.SEVERE, "Error in gap filling", cause);
+      setErrorMessage("Error in gap filling: " + cause.getMessage());
+      setStatus(TaskStatus.ERROR);
+      return;
+    } finally {
+      // remaining chunks are skipped after an error or cancel
+      jobs.forEach(job -> job.cancel(false));
+    }
 
-    // start
-    MZmineCore.getTaskController().addTasks(tasks.toArray(AbstractTask[]::new));
+    logger.info("All chunks of multithreaded gap-filling have finished. Finalising results.");
 
-    // wait till finish
-    while (!(isCanceled() || isFinished())) {
-      try {
-        Thread.sleep(100);
-      } catch (InterruptedException e) {
-        logger.log(Level.SEVERE, "Error in GNPS export/submit task", e);
-      }
-    }
-  }
+    // Add task description to peakList
+    processedPeakList.addDescriptionOfAppliedTask(
+        new SimpleFeatureListAppliedMethod("Gap filling ", MultiThreadPeakFinderModule.class,
+            parameters, getModuleCallDate()));
 
-  private int getMaxThreads() {
-    int maxRunningThreads = 1;
-    NumOfThreadsParameter parameter = MZmineCore.getConfiguration().getPreferences()
-        .getParameter(MZminePreferences.numOfThreads);
-    if (parameter.isAutomatic() || (parameter.getValue() == null)) {
-      maxRunningThreads = Runtime.getRuntime().availableProcessors();
-    } else {
-      maxRunningThreads = parameter.getValue();
-    }
+    // update all rows by row bindings (average values)
+    // this needs to be done after all chunks finish because values were not updated when
+    // adding features
+    processedPeakList.applyRowBindings();
 
-    // raw files
-    int raw = peakList.getNumberOfRawDataFiles();
-    // raw files<?
-    if (raw < maxRunningThreads) {
-      maxRunningThreads = raw;
-    }
-    return maxRunningThreads;
+    // add / remove or rename the new feature list in project
+    originalFeatureListOption.reflectNewFeatureListToProject(suffix, project, processedPeakList,
+        peakList);
+
+    logger.info("Completed: Multithreaded gap-filling successfull");
+    setStatus(TaskStatus.FINISHED);
   }
 
   /**
-   * Distributes the RawDataFiles on different tasks
+   * Splits the gaps of each raw data file into chunks of neighbouring retention time windows.
    */
-  private List<AbstractTask> createSubTasks(int raw, int maxRunningThreads) {
-    int numPerTask = raw / maxRunningThreads;
-    int rest = raw % maxRunningThreads;
-    List<AbstractTask> tasks = new ArrayList<>();
-    for (int i = 0; i < maxRunningThreads; i++) {
-      int start = numPerTask * i;
-      int endexcl = numPerTask * (i + 1);
-      // add one from the rest
-      if (rest > 0) {
-        start += Math.min(i, rest);
-        endexcl += Math.min(i + 1, rest);
+  private List<GapFillingChunk> createChunks(int maxRunningThreads) {
+    final int numFiles = peakList.getNumberOfRawDataFiles();
+    final int segmentsPerFile = Math.max(1,
+        (CHUNKS_PER_THREAD * maxRunningThreads + numFiles - 1) / Math.max(1, numFiles));
+    final RTTolerance rtTolerance = parameters.getValue(MultiThreadPeakFinderParameters.RTTolerance);
+    final int numRows = peakList.getNumberOfRows();
+
+    final List<GapFillingChunk> chunks = new ArrayList<>();
+    for (RawDataFile dataFile : peakList.getRawDataFiles()) {
+      final List<Integer> gapRows = new ArrayList<>();
+      for (int row = 0; row < numRows; row++) {
+        final Feature sourcePeak = peakList.getRow(row).getFeature(dataFile);
+        if (sourcePeak == null || sourcePeak.getFeatureStatus().equals(FeatureStatus.UNKNOWN)) {
+          gapRows.add(row);
+        }
+      }
+      if (gapRows.isEmpty()) {
+        continue;
       }
 
-      if (i == maxRunningThreads - 1) {
-        endexcl = raw;
+      // chunks are only restricted to an rt region if the scans are sorted by rt
+      int segments = 1;
+      if (GapFillingChunk.isSortedByRetentionTime(peakList.getSeletedScans(dataFile))) {
+        segments = Math.max(1,
+            Math.min(segmentsPerFile, gapRows.size() / MIN_GAPS_PER_CHUNK));
+        final float[] searchStart = new float[numRows];
+        for (int row : gapRows) {
+          final FeatureListRow sourceRow = peakList.getRow(row);
+          searchStart[row] = rtTolerance.getToleranceRange(sourceRow.getAverageRT())
+              .lowerEndpoint();
+        }
+        gapRows.sort(Comparator.comparingDouble(row -> searchStart[row]));
       }
 
-      // create task
-      tasks.add(
-          new MultiThreadPeakFinderTask(peakList, processedPeakList, parameters, start, endexcl, i,
-              getModuleCallDate()));
+      final int[] rows = gapRows.stream().mapToInt(Integer::intValue).toArray();
+      for (int i = 0; i < segments; i++) {
+        final int from = (int) ((long) rows.length * i / segments);
+        final int to = (int) ((long) rows.length * (i + 1) / segments);
+        chunks.add(new GapFillingChunk(peakList, processedPeakList, dataFile,
+            Arrays.copyOfRange(rows, from, to), parameters, this::isCanceled));
+      }
     }
-    return tasks;
+    return chunks;
   }
 
   @Override
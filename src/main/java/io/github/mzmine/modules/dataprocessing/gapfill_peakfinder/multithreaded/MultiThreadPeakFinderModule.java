@@ -65,7 +65,8 @@ public class MultiThreadPeakFinderModule implements MZmineProcessingModule {
 
     for (FeatureList peakList : peakLists) {
       // start tasks
-      Task newTask = new MultiThreadPeakFinderMainTask(project, peakList, parameters, tasks, storage, moduleCallDate);
+      Task newTask = new MultiThreadPeakFinderMainTask(project, peakList, parameters, storage,
+          moduleCallDate);
       tasks.add(newTask);
     }
     return ExitCode.OK;
@@ -28,7 +28,7 @@ package io.github.mzmine.modules.dataprocessing.gapfill_samerange;
 import io.github.mzmine.datamodel.DataPoint;
 import io.github.mzmine.datamodel.Scan;
 import io.github.mzmine.datamodel.featuredata.IonTimeSeries;
-import io.github.mzmine.datamodel.featuredata.impl.SimpleIonTimeSeries;
+import io.github.mzmine.datamodel.featuredata.impl.ScanIndexIonTimeSeries;
 import io.github.mzmine.util.MemoryMapStorage;
 import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
 import it.unimi.dsi.fastutil.doubles.DoubleList;
@@ -58,7 +58,7 @@ public class SimpleGapFeature {
    * @return an ion time series
    */
   public IonTimeSeries<Scan> toIonTimeSeries(@Nullable MemoryMapStorage storage) {
-    return new SimpleIonTimeSeries(storage, mzs.toDoubleArray(), intensities.toDoubleArray(),
+    return ScanIndexIonTimeSeries.of(storage, mzs.toDoubleArray(), intensities.toDoubleArray(),
         scans);
   }
 
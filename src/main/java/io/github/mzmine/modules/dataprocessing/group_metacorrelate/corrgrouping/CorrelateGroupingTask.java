@@ -40,6 +40,7 @@ import io.github.mzmine.datamodel.features.correlation.R2RCorrelationData;
 import io.github.mzmine.datamodel.features.correlation.R2RFullCorrelationData;
 import io.github.mzmine.datamodel.features.correlation.R2RMap;
 import io.github.mzmine.datamodel.features.correlation.RowsRelationship.Type;
+import io.github.mzmine.main.MZmineCore;
 import io.github.mzmine.modules.dataprocessing.group_metacorrelate.correlation.FeatureCorrelationUtil;
 import io.github.mzmine.modules.dataprocessing.group_metacorrelate.correlation.FeatureShapeCorrelationParameters;
 import io.github.mzmine.modules.dataprocessing.group_metacorrelate.correlation.InterSampleHeightCorrParameters;
@@ -55,17 +56,22 @@ import io.github.mzmine.util.FeatureListRowSorter;
 import io.github.mzmine.util.SortingDirection;
 import io.github.mzmine.util.SortingProperty;
 import io.github.mzmine.util.maths.similarity.SimilarityMeasure;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
 import java.text.MessageFormat;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.stream.IntStream;
 import org.jetbrains.annotations.NotNull;
 
 public class CorrelateGroupingTask extends AbstractTask {
 
   private static final Logger logger = Logger.getLogger(CorrelateGroupingTask.class.getName());
+  // more chunks than threads to balance chunks that take longer
+  private static final int CHUNKS_PER_THREAD = 8;
 
   private final AtomicDouble stageProgress = new AtomicDouble(0);
   protected ParameterSet parameters;
@@ -284,51 +290,55 @@ public class CorrelateGroupingTask extends AbstractTask {
     // preload all intensity values
     CachedFeatureDataAccess data = new CachedFeatureDataAccess(rows, false, true);
 
-    // for all rows - do in parallel
-    IntStream.range(0, totalRows - 1).parallel().forEach(i -> {
-      if (!isCanceled()) {
-        try {
-          FeatureListRow row = rows[i];
-          // compare to the rest of rows
-          for (int x = i + 1; x < totalRows; x++) {
-            if (isCanceled()) {
-              break;
-            }
-
-            FeatureListRow row2 = rows[x];
-
-            // has a minimum number/% of overlapping features in all samples / in at least one
-            // groups
-            OverlapResult overlap =
-                minFFilter.filterMinFeaturesOverlap(data, raws, row, row2, rtTolerance);
-            if (overlap.equals(OverlapResult.TRUE)) {
-              // correlate if in rt range
-              R2RFullCorrelationData corr =
-                  FeatureCorrelationUtil.corrR2R(data, raws, row, row2, groupByFShapeCorr,
-                      minCorrelatedDataPoints, minCorrDPOnFeatureEdge, minDPHeightCorr, minHeight,
-                      noiseLevelCorr, useHeightCorrFilter, heightSimMeasure, minHeightCorr);
-
-              // corr is even present if only grouping by retention time
-              // corr is only null if heightCorrelation was not met
-              if (corr != null && //
-                  (!groupByFShapeCorr || FeatureCorrelationUtil.checkFShapeCorr(groupedPKL,
-                      minFFilter, corr, useTotalShapeCorrFilter, minTotalShapeCorrR,
-                      minShapeCorrR,
-                      shapeSimMeasure))) {
-                // add to map
-                // can be because of any combination of
-                // retention time, shape correlation, non-negative height correlation
-                map.add(row, row2, corr);
+    // only compare rows with overlapping retention time ranges, sorted by the lower bound
+    final RowRTOverlapSweep sweep = new RowRTOverlapSweep(raws, rows, rtTolerance, minFFilter);
+    final long[] pairsBefore = sweep.getPairsBefore();
+    final long totalPairs = sweep.getTotalPairs();
+    // the chunks share the thread limit of the task controller
+    final ForkJoinPool executor = MZmineCore.getTaskController().getExecutor();
+    final int[] chunkStarts = splitByPairs(pairsBefore, executor.getParallelism());
+    logger.fine(() -> MessageFormat.format(
+        "Corr: {0} candidate row pairs within the RT tolerance in {1} chunks", totalPairs,
+        chunkStarts.length - 1));
+
+    // chunks contain a similar number of pairs - do in parallel
+    final List<ForkJoinTask<?>> jobs = new ArrayList<>(chunkStarts.length - 1);
+    for (int chunk = 0; chunk < chunkStarts.length - 1; chunk++) {
+      final int c = chunk;
+      jobs.add(executor.submit(() -> {
+        if (!isCanceled()) {
+          try {
+            for (int j = chunkStarts[c]; j < chunkStarts[c + 1]; j++) {
+              // compare to the rest of rows in the rt range
+              for (int k = j + 1; k <= sweep.getLastCandidate(j); k++) {
+                if (isCanceled()) {
+                  return;
+                }
+                // keep the order of the rows sorted by average RT
+                final int a = Math.min(sweep.getRow(j), sweep.getRow(k));
+                final int b = Math.max(sweep.getRow(j), sweep.getRow(k));
+                compareRows(data, raws, rows[a], rows[b], map);
               }
             }
+            if (totalPairs > 0) {
+              stageProgress.addAndGet(
+                  (pairsBefore[chunkStarts[c + 1]] - pairsBefore[chunkStarts[c]])
+                      / (double) totalPairs);
+            }
+          } catch (Exception e) {
+            logger.log(Level.SEVERE, "Error in parallel R2Rcomparison: " + e.getMessage(), e);
+            throw new MSDKRuntimeException(e);
           }
-          stageProgress.addAndGet(1d / totalRows);
-        } catch (Exception e) {
-          logger.log(Level.SEVERE, "Error in parallel R2Rcomparison: " + e.getMessage(), e);
-          throw new MSDKRuntimeException(e);
         }
-      }
-    });
+      }));
+    }
+    try {
+      // joining executes pending chunks on this thread, if it is a thread of the same executor
+      jobs.forEach(ForkJoinTask::join);
+    } finally {
+      // remaining chunks are skipped after an error
+      jobs.forEach(job -> job.cancel(false));
+    }
 
     // number of f2f correlations
     int nR2Rcorr = 0;
@@ -347,4 +357,58 @@ public class CorrelateGroupingTask extends AbstractTask {
         nR2Rcorr, nF2F, map.size()));
   }
 
+  /**
+   * Correlates two rows and adds them to the map if all filters are met.
+   */
+  private void compareRows(CachedFeatureDataAccess data, List<RawDataFile> raws,
+      FeatureListRow row, FeatureListRow row2, R2RMap<R2RCorrelationData> map) {
+    // has a minimum number/% of overlapping features in all samples / in at least one
+    // groups
+    OverlapResult overlap = minFFilter.filterMinFeaturesOverlap(data, raws, row, row2,
+        rtTolerance);
+    if (overlap.equals(OverlapResult.TRUE)) {
+      // correlate if in rt range
+      R2RFullCorrelationData corr = FeatureCorrelationUtil.corrR2R(data, raws, row, row2,
+          groupByFShapeCorr, minCorrelatedDataPoints, minCorrDPOnFeatureEdge, minDPHeightCorr,
+          minHeight, noiseLevelCorr, useHeightCorrFilter, heightSimMeasure, minHeightCorr);
+
+      // corr is even present if only grouping by retention time
+      // corr is only null if heightCorrelation was not met
+      if (corr != null && //
+          (!groupByFShapeCorr || FeatureCorrelationUtil.checkFShapeCorr(groupedPKL, minFFilter,
+              corr, useTotalShapeCorrFilter, minTotalShapeCorrR, minShapeCorrR,
+              shapeSimMeasure))) {
+        // add to map
+        // can be because of any combination of
+        // retention time, shape correlation, non-negative height correlation
+        map.add(row, row2, corr);
+      }
+    }
+  }
+
+  /**
+   * Splits the rows into chunks with a similar number of candidate pairs, so the work is balanced
+   * across threads.
+   *
+   * @param pairsBefore cumulative number of pairs before each index
+   * @param numThreads  the number of threads the chunks are processed on
+   * @return the start indices of all chunks and the total number of rows as the last element
+   */
+  private int[] splitByPairs(long[] pairsBefore, int numThreads) {
+    final int n = pairsBefore.length - 1;
+    final long totalPairs = pairsBefore[n];
+    final int maxChunks = Math.max(1, Math.min(n, numThreads * CHUNKS_PER_THREAD));
+    final long pairsPerChunk = Math.max(1, totalPairs / maxChunks);
+
+    final IntArrayList starts = new IntArrayList(maxChunks + 1);
+    starts.add(0);
+    for (int j = 1; j < n; j++) {
+      if (pairsBefore[j] - pairsBefore[starts.getInt(starts.size() - 1)] >= pairsPerChunk) {
+        starts.add(j);
+      }
+    }
+    starts.add(n);
+    return starts.toIntArray();
+  }
+
 }
@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.dataprocessing.group_metacorrelate.corrgrouping;
+
+import com.google.common.collect.Range;
+import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.datamodel.features.Feature;
+import io.github.mzmine.datamodel.features.FeatureListRow;
+import io.github.mzmine.parameters.parametertypes.MinimumFeatureFilter;
+import io.github.mzmine.parameters.parametertypes.tolerances.RTTolerance;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.IntStream;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Candidate row pairs for the row to row comparison of the {@link CorrelateGroupingTask}. Every row
+ * gets the retention time range that contains all its features, extended by the rt tolerance. Two
+ * rows can only pass the minimum feature overlap filter if their ranges overlap. The rows are
+ * sorted by the lower bound of their range, so the candidates of the row at position j are all rows
+ * at the positions j+1 to {@link #getLastCandidate(int)}. If the filter does not require overlapping
+ * features, all rows are candidates.
+ */
+final class RowRTOverlapSweep {
+
+  private final float[] lowerRT;
+  private final float[] upperRT;
+  private final int[] order;
+  private final int[] lastCandidate;
+  private final long[] pairsBefore;
+
+  /**
+   * @param raws        all raw data files of the feature list
+   * @param rows        the rows to compare
+   * @param rtTolerance the rt tolerance of the minimum feature filter
+   * @param minFFilter  the minimum feature filter
+   */
+  RowRTOverlapSweep(@NotNull List<RawDataFile> raws, @NotNull FeatureListRow[] rows,
+      @Nullable RTTolerance rtTolerance, @NotNull MinimumFeatureFilter minFFilter) {
+    lowerRT = new float[rows.length];
+    upperRT = new float[rows.length];
+    final boolean limitByRT =
+        rtTolerance != null && minFFilter.requiresOverlappingFeatures(raws.size());
+    for (int i = 0; i < rows.length; i++) {
+      if (!limitByRT) {
+        lowerRT[i] = Float.NEGATIVE_INFINITY;
+        upperRT[i] = Float.POSITIVE_INFINITY;
+        continue;
+      }
+      // rows without features are never compared
+      float lower = Float.POSITIVE_INFINITY;
+      float upper = Float.NEGATIVE_INFINITY;
+      for (RawDataFile raw : raws) {
+        final Feature feature = rows[i].getFeature(raw);
+        final Float rt = feature == null ? null : feature.getRT();
+        if (rt == null) {
+          continue;
+        }
+        // same range as used by the rt check of the minimum feature filter
+        final Range<Float> range = rtTolerance.getToleranceRange(rt);
+        lower = Math.min(lower, Math.min(rt, range.lowerEndpoint()));
+        upper = Math.max(upper, Math.max(rt, range.upperEndpoint()));
+      }
+      lowerRT[i] = lower;
+      upperRT[i] = upper;
+    }
+    order = IntStream.range(0, rows.length).boxed()
+        .sorted(Comparator.comparingDouble(i -> lowerRT[i])).mapToInt(Integer::intValue)
+        .toArray();
+
+    lastCandidate = new int[rows.length];
+    pairsBefore = new long[rows.length + 1];
+    for (int j = 0; j < rows.length; j++) {
+      lastCandidate[j] = lastOverlappingIndex(j);
+      pairsBefore[j + 1] = pairsBefore[j] + lastCandidate[j] - j;
+    }
+  }
+
+  /**
+   * @param j the position in the sorted order
+   * @return the last position in order with a lower rt bound within the range of the row at j
+   */
+  private int lastOverlappingIndex(int j) {
+    final float upper = upperRT[order[j]];
+    int lo = j + 1;
+    int hi = order.length;
+    while (lo < hi) {
+      final int mid = (lo + hi) >>> 1;
+      if (lowerRT[order[mid]] <= upper) {
+        lo = mid + 1;
+      } else {
+        hi = mid;
+      }
+    }
+    return lo - 1;
+  }
+
+  /**
+   * @return the number of rows
+   */
+  int size() {
+    return order.length;
+  }
+
+  /**
+   * @param j the position in the sorted order
+   * @return the index of the row in the rows array
+   */
+  int getRow(int j) {
+    return order[j];
+  }
+
+  /**
+   * @param j the position in the sorted order
+   * @return the last position of the candidates of the row at j. j if there are no candidates.
+   */
+  int getLastCandidate(int j) {
+    return lastCandidate[j];
+  }
+
+  /**
+   * @return the cumulative number of candidate pairs before each position, the total number of
+   * pairs as the last element
+   */
+  long[] getPairsBefore() {
+    return pairsBefore;
+  }
+
+  long getTotalPairs() {
+    return pairsBefore[order.length];
+  }
+}
@@ -0,0 +1,289 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.dataprocessing.group_metacorrelate.msms.similarity;
+
+import io.github.mzmine.datamodel.DataPoint;
+import io.github.mzmine.parameters.parametertypes.tolerances.MZTolerance;
+import it.unimi.dsi.fastutil.longs.LongArrays;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.stream.IntStream;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Inverted index of binned signal m/z values (and optionally of the losses to the precursor m/z)
+ * to generate the candidate pairs for the MS2 similarity check. The bin width is at least the
+ * maximum m/z tolerance, so every pair of signals that is matched by {@link
+ * io.github.mzmine.util.scans.ScanAlignment} falls into the same or into adjacent bins. Counting
+ * the query signals with at least one signal in these bins is therefore an upper bound of the
+ * overlap and spectra below the minimum overlap can be skipped without changing the results.
+ * <p>
+ * A modification aware match (signal a shifted by the precursor difference matches signal b) is
+ * equivalent to matching the losses precursorA - a and precursorB - b. These are indexed as
+ * well, when precursor m/z values are provided.
+ */
+final class MS2SimilarityCandidateIndex {
+
+  private static final int[] EMPTY = new int[0];
+
+  private final int numSpectra;
+  private final double binWidth;
+  private final Postings signals;
+  @Nullable
+  private final Postings losses;
+  // reused by the query threads
+  private final Queue<Scratch> scratches = new ConcurrentLinkedQueue<>();
+
+  /**
+   * @param mzTol         the tolerance used to match signals
+   * @param spectra       the indexed spectra, the index in this list is the spectrum id
+   * @param precursorMzs  the precursor m/z of each spectrum to index losses for modification aware
+   *                      matching or null. Precursors <= 0 are not indexed.
+   * @param maxMz         the maximum absolute m/z of all indexed and queried signals, see {@link
+   *                      #getMaxAbsMz(List)}
+   */
+  MS2SimilarityCandidateIndex(@NotNull MZTolerance mzTol, @NotNull List<DataPoint[]> spectra,
+      @Nullable double[] precursorMzs, double maxMz) {
+    numSpectra = spectra.size();
+    // tolerances are evaluated on the signal m/z or on the shifted signal m/z, which is within
+    // the tolerance of another signal. Slack for the rounding of the loss calculation
+    binWidth = mzTol.getMzToleranceForMass(2d * maxMz) * (1d + 1E-6) + 1E-9;
+
+    int numSignals = 0;
+    for (DataPoint[] dps : spectra) {
+      numSignals += dps.length;
+    }
+
+    long[] bins = new long[numSignals];
+    long[] ids = new long[numSignals];
+    int n = 0;
+    for (int id = 0; id < numSpectra; id++) {
+      for (DataPoint dp : spectra.get(id)) {
+        bins[n] = toBin(dp.getMZ());
+        ids[n] = id;
+        n++;
+      }
+    }
+    signals = new Postings(bins, ids, n);
+
+    if (precursorMzs != null) {
+      n = 0;
+      for (int id = 0; id < numSpectra; id++) {
+        final double precursorMz = precursorMzs[id];
+        if (precursorMz > 0) {
+          for (DataPoint dp : spectra.get(id)) {
+            bins[n] = toBin(precursorMz - dp.getMZ());
+            ids[n] = id;
+            n++;
+          }
+        }
+      }
+      losses = new Postings(bins, ids, n);
+    } else {
+      losses = null;
+    }
+  }
+
+  /**
+   * @return the maximum absolute m/z of all signals
+   */
+  static double getMaxAbsMz(@NotNull List<DataPoint[]> spectra) {
+    double max = 0;
+    for (DataPoint[] dps : spectra) {
+      for (DataPoint dp : dps) {
+        max = Math.max(max, Math.abs(dp.getMZ()));
+      }
+    }
+    return max;
+  }
+
+  /**
+   * Finds all indexed spectra that may reach the minimum overlap with the query.
+   *
+   * @param query             the query signals
+   * @param precursorMz       the precursor m/z of the query. Losses are only matched if > 0 and if
+   *                          losses were indexed.
+   * @param firstTarget       only spectra with an id >= firstTarget are considered
+   * @param minOverlap        the minimum overlap
+   * @param weightByIntensity false to count matched signals, true to sum up the intensities of the
+   *                          matched query signals (upper bound of the summed minimum intensity of
+   *                          each aligned pair)
+   * @return the ascending ids of all candidate spectra
+   */
+  int[] findCandidates(@NotNull DataPoint[] query, double precursorMz, int firstTarget,
+      double minOverlap, boolean weightByIntensity) {
+    if (firstTarget >= numSpectra) {
+      return EMPTY;
+    }
+    if (!(minOverlap > 0)) {
+      return IntStream.range(firstTarget, numSpectra).toArray();
+    }
+
+    Scratch scratch = scratches.poll();
+    if (scratch == null) {
+      scratch = new Scratch(numSpectra);
+    }
+    try {
+      for (DataPoint dp : query) {
+        final double weight = weightByIntensity ? dp.getIntensity() : 1d;
+        if (!(weight > 0)) {
+          // cannot contribute to the overlap
+          continue;
+        }
+        final int stamp = scratch.nextStamp();
+        collect(scratch, signals, dp.getMZ(), firstTarget, stamp, weight);
+        if (losses != null && precursorMz > 0) {
+          collect(scratch, losses, precursorMz - dp.getMZ(), firstTarget, stamp, weight);
+        }
+      }
+
+      final int[] candidates = new int[scratch.numTouched];
+      int n = 0;
+      for (int i = 0; i < scratch.numTouched; i++) {
+        final int id = scratch.touched[i];
+        if (scratch.overlap[id] >= minOverlap) {
+          candidates[n++] = id;
+        }
+        scratch.overlap[id] = 0;
+      }
+      scratch.numTouched = 0;
+      Arrays.sort(candidates, 0, n);
+      return n == candidates.length ? candidates : Arrays.copyOf(candidates, n);
+    } finally {
+      scratches.add(scratch);
+    }
+  }
+
+  private void collect(Scratch scratch, Postings postings, double mz, int firstTarget, int stamp,
+      double weight) {
+    final long bin = toBin(mz);
+    for (long b = bin - 1; b <= bin + 1; b++) {
+      final int index = Arrays.binarySearch(postings.bins, b);
+      if (index < 0) {
+        continue;
+      }
+      final int end = postings.offsets[index + 1];
+      // ids are sorted within each bin
+      int start = Arrays.binarySearch(postings.ids, postings.offsets[index], end, firstTarget);
+      if (start < 0) {
+        start = -start - 1;
+      }
+      for (int i = start; i < end; i++) {
+        final int id = postings.ids[i];
+        // count every query signal only once per spectrum
+        if (scratch.stamps[id] != stamp) {
+          scratch.stamps[id] = stamp;
+          if (scratch.overlap[id] == 0) {
+            scratch.touched[scratch.numTouched++] = id;
+          }
+          scratch.overlap[id] += weight;
+        }
+      }
+    }
+  }
+
+  private long toBin(double mz) {
+    return (long) Math.floor(mz / binWidth);
+  }
+
+  /**
+   * Sorted bins with the ascending spectrum ids of each bin in ids[offsets[i], offsets[i+1])
+   */
+  private static final class Postings {
+
+    private final long[] bins;
+    private final int[] offsets;
+    private final int[] ids;
+
+    /**
+     * @param bins the bin of each signal, sorted in place
+     * @param ids  the spectrum id of each signal, sorted in place
+     * @param n    the number of signals
+     */
+    private Postings(long[] bins, long[] ids, int n) {
+      LongArrays.radixSort(bins, ids, 0, n);
+
+      int numBins = 0;
+      int numIds = 0;
+      for (int i = 0; i < n; i++) {
+        final boolean newBin = i == 0 || bins[i] != bins[i - 1];
+        if (newBin) {
+          numBins++;
+        }
+        if (newBin || ids[i] != ids[i - 1]) {
+          numIds++;
+        }
+      }
+
+      this.bins = new long[numBins];
+      this.offsets = new int[numBins + 1];
+      this.ids = new int[numIds];
+      int b = -1;
+      int k = 0;
+      for (int i = 0; i < n; i++) {
+        final boolean newBin = i == 0 || bins[i] != bins[i - 1];
+        if (newBin) {
+          b++;
+          this.bins[b] = bins[i];
+          offsets[b] = k;
+        }
+        if (newBin || ids[i] != ids[i - 1]) {
+          this.ids[k++] = (int) ids[i];
+        }
+      }
+      offsets[numBins] = k;
+    }
+  }
+
+  /**
+   * Per thread counters for all spectra
+   */
+  private static final class Scratch {
+
+    private final double[] overlap;
+    private final int[] stamps;
+    private final int[] touched;
+    private int numTouched = 0;
+    private int stamp = 0;
+
+    private Scratch(int numSpectra) {
+      overlap = new double[numSpectra];
+      stamps = new int[numSpectra];
+      touched = new int[numSpectra];
+    }
+
+    private int nextStamp() {
+      if (stamp == Integer.MAX_VALUE) {
+        Arrays.fill(stamps, 0);
+        stamp = 0;
+      }
+      return ++stamp;
+    }
+  }
+}
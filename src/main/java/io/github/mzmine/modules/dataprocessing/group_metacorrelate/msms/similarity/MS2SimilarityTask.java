@@ -373,7 +373,8 @@ public class MS2SimilarityTask extends AbstractTask {
   }
 
   /**
-   * Parallel check of all r2r similarities
+   * Parallel check of all r2r similarities. Only pairs that can reach the minimum number of matched
+   * signals are aligned, see {@link MS2SimilarityCandidateIndex}.
    *
    * @param mapSimilarity  map for all MS2 cosine similarity edges
    * @param mapNeutralLoss map for all neutral loss MS2 edges
@@ -393,27 +394,50 @@ public class MS2SimilarityTask extends AbstractTask {
     }
     int numRows = filteredRows.size();
     LOG.log(Level.INFO, () -> MessageFormat.format("Checking MS2 similarity on {0} rows", numRows));
+
+    // index signals and losses to the precursor for the modification aware cosine
+    final List<DataPoint[]> data = filteredRows.stream().map(FilteredRowData::data).toList();
+    final double[] precursorMzs = filteredRows.stream().mapToDouble(r -> r.row().getAverageMZ())
+        .toArray();
+    final MS2SimilarityCandidateIndex index = new MS2SimilarityCandidateIndex(mzTolerance, data,
+        precursorMzs, MS2SimilarityCandidateIndex.getMaxAbsMz(data));
+
+    // create mass diff arrays once per row
+    final List<DataPoint[]> massDiffs;
+    final MS2SimilarityCandidateIndex massDiffIndex;
+    if (checkNeutralLoss) {
+      massDiffs = data.parallelStream()
+          .map(dps -> ScanMZDiffConverter.getAllMZDiff(dps, mzTolerance, minHeight, maxDPForDiff))
+          .toList();
+      massDiffIndex = new MS2SimilarityCandidateIndex(mzTolerance, massDiffs, null,
+          MS2SimilarityCandidateIndex.getMaxAbsMz(massDiffs));
+    } else {
+      massDiffs = null;
+      massDiffIndex = null;
+    }
+
     // run in parallel
     IntStream.range(0, numRows - 1).parallel().forEach(i -> {
       if (!isCanceled()) {
-        for (int j = i + 1; j < numRows; j++) {
-          if (!isCanceled()) {
-            FilteredRowData a = filteredRows.get(i);
-            FilteredRowData b = filteredRows.get(j);
-            checkR2RMs2Similarity(mapSimilarity, a.row(), b.row(), a.data(), b.data(),
-                Type.MS2_COSINE_SIM);
-
-            // check neutral loss similarity
-            if (checkNeutralLoss) {
-              // create mass diff array
-              DataPoint[] massDiffA = ScanMZDiffConverter.getAllMZDiff(a.data(), mzTolerance,
-                  minHeight, maxDPForDiff);
-              DataPoint[] massDiffB = ScanMZDiffConverter.getAllMZDiff(b.data(), mzTolerance,
-                  minHeight, maxDPForDiff);
-
-              checkR2RMs2Similarity(mapNeutralLoss, a.row(), b.row(), massDiffA, massDiffB,
-                  Type.MS2_NEUTRAL_LOSS_SIM);
+        FilteredRowData a = filteredRows.get(i);
+        for (int j : index.findCandidates(a.data(), precursorMzs[i], i + 1, minMatch, false)) {
+          if (isCanceled()) {
+            break;
+          }
+          FilteredRowData b = filteredRows.get(j);
+          checkR2RMs2Similarity(mapSimilarity, a.row(), b.row(), a.data(), b.data(),
+              Type.MS2_COSINE_SIM);
+        }
+
+        // check neutral loss similarity
+        if (checkNeutralLoss) {
+          DataPoint[] massDiffA = massDiffs.get(i);
+          for (int j : massDiffIndex.findCandidates(massDiffA, -1d, i + 1, minMatch, false)) {
+            if (isCanceled()) {
+              break;
             }
+            checkR2RMs2Similarity(mapNeutralLoss, a.row(), filteredRows.get(j).row(), massDiffA,
+                massDiffs.get(j), Type.MS2_NEUTRAL_LOSS_SIM);
           }
         }
       }
@@ -424,7 +448,9 @@ public class MS2SimilarityTask extends AbstractTask {
   }
 
   /**
-   * Parallel check of all r2r similarities
+   * Parallel check of all r2r similarities. Only pairs of rows with at least one pair of features
+   * that can reach the minimum number of matched signals are aligned, see {@link
+   * MS2SimilarityCandidateIndex}.
    *
    * @param mapSimilarity  map for all MS2 cosine similarity edges
    * @param mapNeutralLoss map for all neutral loss MS2 edges
@@ -444,16 +470,90 @@ public class MS2SimilarityTask extends AbstractTask {
     }
     int numRows = filteredRows.size();
     LOG.log(Level.INFO, () -> MessageFormat.format("Checking MS2 similarity on {0} rows", numRows));
+
+    // all spectra in the order of the rows. the features of row i are spectra
+    // firstSpectrum[i] until firstSpectrum[i+1]
+    final List<Feature> features = new ArrayList<>();
+    final int[] firstSpectrum = new int[numRows + 1];
+    for (int i = 0; i < numRows; i++) {
+      firstSpectrum[i] = features.size();
+      for (Feature feature : filteredRows.get(i).getFeatures()) {
+        if (mapFeatureData.get(feature) != null) {
+          features.add(feature);
+        }
+      }
+    }
+    firstSpectrum[numRows] = features.size();
+    final int[] spectrumRow = new int[features.size()];
+    for (int i = 0; i < numRows; i++) {
+      Arrays.fill(spectrumRow, firstSpectrum[i], firstSpectrum[i + 1], i);
+    }
+
+    final List<DataPoint[]> data = features.stream().map(mapFeatureData::get).toList();
+    final double[] precursorMzs = features.stream().mapToDouble(Feature::getMZ).toArray();
+    final MS2SimilarityCandidateIndex index = new MS2SimilarityCandidateIndex(mzTolerance, data,
+        precursorMzs, MS2SimilarityCandidateIndex.getMaxAbsMz(data));
+
+    // create mass diff arrays once per feature. Different for both sides of a pair
+    final Map<Feature, DataPoint[]> mapMassDiffA;
+    final Map<Feature, DataPoint[]> mapMassDiffB;
+    final List<DataPoint[]> massDiffsA;
+    final MS2SimilarityCandidateIndex massDiffIndex;
+    if (checkNeutralLoss) {
+      massDiffsA = data.parallelStream().map(dps -> {
+        DataPoint[] massDiff = ScanMZDiffConverter.getAllMZDiff(dps, mzTolerance, minHeight,
+            maxDPForDiff);
+        Arrays.sort(massDiff, dpSorter);
+        return massDiff;
+      }).toList();
+      final List<DataPoint[]> massDiffsB = data.parallelStream().map(dps -> {
+        DataPoint[] massDiff = ScanMZDiffConverter.getAllMZDiff(dps, mzTolerance, maxDPForDiff);
+        Arrays.sort(massDiff, dpSorter);
+        return massDiff;
+      }).toList();
+      mapMassDiffA = new HashMap<>();
+      mapMassDiffB = new HashMap<>();
+      for (int s = 0; s < features.size(); s++) {
+        mapMassDiffA.put(features.get(s), massDiffsA.get(s));
+        mapMassDiffB.put(features.get(s), massDiffsB.get(s));
+      }
+      // the overlap of mass differences is the summed minimum count of both aligned differences
+      massDiffIndex = new MS2SimilarityCandidateIndex(mzTolerance, massDiffsB, null,
+          Math.max(MS2SimilarityCandidateIndex.getMaxAbsMz(massDiffsA),
+              MS2SimilarityCandidateIndex.getMaxAbsMz(massDiffsB)));
+    } else {
+      mapMassDiffA = null;
+      mapMassDiffB = null;
+      massDiffsA = null;
+      massDiffIndex = null;
+    }
+
     // run in parallel
     IntStream.range(0, numRows - 1).parallel().forEach(i -> {
       if (!isCanceled()) {
-        for (int j = i + 1; j < numRows; j++) {
-          if (!isCanceled()) {
-            FeatureListRow a = filteredRows.get(i);
-            FeatureListRow b = filteredRows.get(j);
+        // collect all candidate rows of any feature of row a
+        final IntStream.Builder candidates = IntStream.builder();
+        final int firstTarget = firstSpectrum[i + 1];
+        for (int s = firstSpectrum[i]; s < firstTarget; s++) {
+          for (int t : index.findCandidates(data.get(s), precursorMzs[s], firstTarget, minMatch,
+              false)) {
+            candidates.add(spectrumRow[t]);
+          }
+          if (checkNeutralLoss) {
+            for (int t : massDiffIndex.findCandidates(massDiffsA.get(s), -1d, firstTarget,
+                minMatch, true)) {
+              candidates.add(spectrumRow[t]);
+            }
+          }
+        }
 
-            checkR2RAllFeaturesMs2Similarity(mapFeatureData, a, b);
+        FeatureListRow a = filteredRows.get(i);
+        for (int j : candidates.build().distinct().sorted().toArray()) {
+          if (isCanceled()) {
+            break;
           }
+          FeatureListRow b = filteredRows.get(j);
+          checkR2RAllFeaturesMs2Similarity(mapFeatureData, mapMassDiffA, mapMassDiffB, a, b);
         }
       }
       if (stageProgress != null) {
@@ -462,8 +562,16 @@ public class MS2SimilarityTask extends AbstractTask {
     });
   }
 
+  /**
+   * @param mapFeatureData the filtered data points of each feature sorted by intensity
+   * @param mapMassDiffA   the sorted mass differences of each feature of row a or null if neutral
+   *                       losses are not checked
+   * @param mapMassDiffB   the sorted mass differences of each feature of row b or null if neutral
+   *                       losses are not checked
+   */
   private void checkR2RAllFeaturesMs2Similarity(Map<Feature, DataPoint[]> mapFeatureData,
-      FeatureListRow a, FeatureListRow b) {
+      @Nullable Map<Feature, DataPoint[]> mapMassDiffA,
+      @Nullable Map<Feature, DataPoint[]> mapMassDiffB, FeatureListRow a, FeatureListRow b) {
 
     R2RSpectralSimilarityList cosineSim = new R2RSpectralSimilarityList(a, b, Type.MS2_COSINE_SIM);
     R2RSpectralSimilarityList neutralLossSim =
@@ -475,10 +583,8 @@ public class MS2SimilarityTask extends AbstractTask {
     for (Feature fa : a.getFeatures()) {
       DataPoint[] dpa = mapFeatureData.get(fa);
       if (dpa != null) {
-        // create mass diff array
         if (checkNeutralLoss) {
-          massDiffA = ScanMZDiffConverter.getAllMZDiff(dpa, mzTolerance, minHeight, maxDPForDiff);
-          Arrays.sort(massDiffA, dpSorter);
+          massDiffA = mapMassDiffA.get(fa);
         }
         for (Feature fb : b.getFeatures()) {
           DataPoint[] dpb = mapFeatureData.get(fb);
@@ -492,8 +598,7 @@ public class MS2SimilarityTask extends AbstractTask {
 
             // alignment and sim of neutral losses
             if (checkNeutralLoss) {
-              massDiffB = ScanMZDiffConverter.getAllMZDiff(dpb, mzTolerance, maxDPForDiff);
-              Arrays.sort(massDiffB, dpSorter);
+              massDiffB = mapMassDiffB.get(fb);
               SpectralSimilarity massDiffSim = createMS2Sim(mzTolerance, massDiffA, massDiffB,
                   minMatch, DIFF_OVERLAP);
 
@@ -27,11 +27,13 @@ package io.github.mzmine.modules.dataprocessing.id_lipididentification;
 
 import java.time.Instant;
 import java.util.Collection;
+import java.util.concurrent.atomic.AtomicReference;
 import org.jetbrains.annotations.NotNull;
 import io.github.mzmine.datamodel.MZmineProject;
 import io.github.mzmine.datamodel.features.FeatureList;
 import io.github.mzmine.modules.MZmineModuleCategory;
 import io.github.mzmine.modules.MZmineProcessingModule;
+import io.github.mzmine.modules.dataprocessing.id_lipididentification.lipidutils.LipidIonTable;
 import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.taskcontrol.Task;
 import io.github.mzmine.util.ExitCode;
@@ -65,8 +67,10 @@ public class LipidSearchModule implements MZmineProcessingModule {
     FeatureList[] featureLists = parameters.getParameter(LipidSearchParameters.featureLists)
         .getValue().getMatchingFeatureLists();
 
+    // the lipid ion table is built once for all feature lists
+    final AtomicReference<LipidIonTable> ionTable = new AtomicReference<>();
     for (FeatureList featureList : featureLists) {
-      Task newTask = new LipidSearchTask(parameters, featureList, moduleCallDate);
+      Task newTask = new LipidSearchTask(parameters, featureList, moduleCallDate, ionTable);
       tasks.add(newTask);
     }
 
@@ -28,6 +28,7 @@ package io.github.mzmine.modules.dataprocessing.id_lipididentification;
 import com.google.common.collect.Range;
 import io.github.mzmine.datamodel.DataPoint;
 import io.github.mzmine.datamodel.IonizationType;
+import io.github.mzmine.datamodel.PolarityType;
 import io.github.mzmine.datamodel.Scan;
 import io.github.mzmine.datamodel.features.FeatureList;
 import io.github.mzmine.datamodel.features.FeatureListRow;
@@ -40,6 +41,7 @@ import io.github.mzmine.modules.dataprocessing.id_lipididentification.lipidident
 import io.github.mzmine.modules.dataprocessing.id_lipididentification.lipids.*;
 import io.github.mzmine.modules.dataprocessing.id_lipididentification.lipids.customlipidclass.CustomLipidClass;
 import io.github.mzmine.modules.dataprocessing.id_lipididentification.lipidutils.LipidFactory;
+import io.github.mzmine.modules.dataprocessing.id_lipididentification.lipidutils.LipidIonTable;
 import io.github.mzmine.modules.dataprocessing.id_lipididentification.lipidutils.MatchedLipid;
 import io.github.mzmine.modules.visualization.spectra.simplespectra.datapointprocessing.isotopes.MassListDeisotoper;
 import io.github.mzmine.modules.visualization.spectra.simplespectra.datapointprocessing.isotopes.MassListDeisotoperParameters;
@@ -54,10 +56,9 @@ import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Logger;
 import org.jetbrains.annotations.NotNull;
-import org.openscience.cdk.tools.manipulator.AtomContainerManipulator;
-import org.openscience.cdk.tools.manipulator.MolecularFormulaManipulator;
 
 /**
  * Task to search and annotate lipids in feature list
@@ -85,12 +86,24 @@ public class LipidSearchTask extends AbstractTask {
   private double minMsMsScore;
 
   private final ParameterSet parameters;
+  // shared by all tasks with the same parameters
+  private final AtomicReference<LipidIonTable> sharedIonTable;
 
   public LipidSearchTask(ParameterSet parameters, FeatureList featureList,
       @NotNull Instant moduleCallDate) {
+    this(parameters, featureList, moduleCallDate, new AtomicReference<>());
+  }
+
+  /**
+   * @param sharedIonTable the ion table is built by the first task and shared by all tasks of a
+   *                       module call with the same parameters
+   */
+  public LipidSearchTask(ParameterSet parameters, FeatureList featureList,
+      @NotNull Instant moduleCallDate, @NotNull AtomicReference<LipidIonTable> sharedIonTable) {
     super(null, moduleCallDate);
     this.featureList = featureList;
     this.parameters = parameters;
+    this.sharedIonTable = sharedIonTable;
 
     this.minChainLength =
         parameters.getParameter(LipidSearchParameters.chainLength).getValue().lowerEndpoint();
@@ -163,14 +176,12 @@ public class LipidSearchTask extends AbstractTask {
     }
     totalSteps = rows.size();
 
-    // build lipid species database
-    Set<ILipidAnnotation> lipidDatabase = buildLipidDatabase();
+    // build lipid species database and the m/z sorted table of all lipid ions
+    final LipidIonTable ionTable = getIonTable();
 
     // start lipid annotation
     rows.parallelStream().forEach(row -> {
-      for (ILipidAnnotation lipidAnnotation : lipidDatabase) {
-        findPossibleLipid(lipidAnnotation, row);
-      }
+      findPossibleLipids(ionTable, row);
       finishedSteps++;
     });
 
@@ -183,6 +194,22 @@ public class LipidSearchTask extends AbstractTask {
     logger.info("Finished lipid annotation task in " + featureList);
   }
 
+  /**
+   * The ion table only depends on the parameters, so it is built once and shared by all tasks of
+   * the same module call.
+   */
+  private LipidIonTable getIonTable() {
+    synchronized (sharedIonTable) {
+      LipidIonTable ionTable = sharedIonTable.get();
+      if (ionTable == null) {
+        ionTable = new LipidIonTable(buildLipidDatabase());
+        sharedIonTable.set(ionTable);
+        logger.finest(() -> "Built lipid ion table with " + sharedIonTable.get().size() + " ions");
+      }
+      return ionTable;
+    }
+  }
+
   private Set<ILipidAnnotation> buildLipidDatabase() {
 
     Set<ILipidAnnotation> lipidDatabase = new LinkedHashSet<>();
@@ -222,30 +249,37 @@ public class LipidSearchTask extends AbstractTask {
   }
 
   /**
-   * Check if candidate peak may be a possible adduct of a given main peak
+   * Check if candidate peak may be a possible adduct of the lipids in the tolerance range
    */
-  private void findPossibleLipid(ILipidAnnotation lipid, FeatureListRow row) {
+  private void findPossibleLipids(LipidIonTable ionTable, FeatureListRow row) {
     if (isCanceled()) {
       return;
     }
-    Set<MatchedLipid> possibleRowAnnotations = new HashSet<>();
-    Set<IonizationType> ionizationTypeList = new HashSet<>();
-    LipidFragmentationRule[] fragmentationRules = lipid.getLipidClass().getFragmentationRules();
-    for (LipidFragmentationRule fragmentationRule : fragmentationRules) {
-      ionizationTypeList.add(fragmentationRule.getIonizationType());
+    Range<Double> mzTolRange12C = mzTolerance.getToleranceRange(row.getAverageMZ());
+    // MS1 check, sorted by lipid
+    final int[] entries = ionTable.findEntries(mzTolRange12C);
+    if (entries.length == 0) {
+      return;
     }
-    for (IonizationType ionization : ionizationTypeList) {
-      if (!Objects.requireNonNull(row.getBestFeature().getRepresentativeScan()).getPolarity()
-          .equals(ionization.getPolarity())) {
-        continue;
+    final PolarityType polarity = Objects.requireNonNull(
+        row.getBestFeature().getRepresentativeScan()).getPolarity();
+
+    int start = 0;
+    while (start < entries.length) {
+      // all ions of the same lipid
+      final int lipidIndex = ionTable.getLipidIndex(entries[start]);
+      int end = start + 1;
+      while (end < entries.length && ionTable.getLipidIndex(entries[end]) == lipidIndex) {
+        end++;
       }
-      double lipidIonMass = MolecularFormulaManipulator.getMass(lipid.getMolecularFormula(),
-          AtomContainerManipulator.MonoIsotopic) + ionization.getAddedMass();
-      Range<Double> mzTolRange12C = mzTolerance.getToleranceRange(row.getAverageMZ());
-
-      // MS1 check
-      if (mzTolRange12C.contains(lipidIonMass)) {
 
+      final ILipidAnnotation lipid = ionTable.getLipid(entries[start]);
+      Set<MatchedLipid> possibleRowAnnotations = new HashSet<>();
+      for (int i = start; i < end; i++) {
+        final IonizationType ionization = ionTable.getIonization(entries[i]);
+        if (!polarity.equals(ionization.getPolarity())) {
+          continue;
+        }
         // If search for MSMS fragments is selected search for fragments
         if (searchForMSMSFragments.booleanValue()) {
           possibleRowAnnotations.addAll(searchMsmsFragments(row, ionization, lipid));
@@ -256,9 +290,9 @@ public class LipidSearchTask extends AbstractTask {
               .add(new MatchedLipid(lipid, row.getAverageMZ(), ionization, null, 0.0));
         }
       }
-
+      addAnnotationsToFeatureList(row, possibleRowAnnotations);
+      start = end;
     }
-    addAnnotationsToFeatureList(row, possibleRowAnnotations);
   }
 
   private void addAnnotationsToFeatureList(FeatureListRow row,
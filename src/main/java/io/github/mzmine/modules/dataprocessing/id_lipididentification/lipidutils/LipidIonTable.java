@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.dataprocessing.id_lipididentification.lipidutils;
+
+import com.google.common.collect.Range;
+import io.github.mzmine.datamodel.IonizationType;
+import io.github.mzmine.modules.dataprocessing.id_lipididentification.lipididentificationtools.LipidFragmentationRule;
+import io.github.mzmine.modules.dataprocessing.id_lipididentification.lipids.ILipidAnnotation;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.Set;
+import org.jetbrains.annotations.NotNull;
+import org.openscience.cdk.tools.manipulator.AtomContainerManipulator;
+import org.openscience.cdk.tools.manipulator.MolecularFormulaManipulator;
+
+/**
+ * Precomputed ion m/z values of all combinations of lipids and the ionization types of their
+ * fragmentation rules. The entries are sorted by m/z, so all lipid ions within a tolerance range
+ * are found by a binary search.
+ */
+public class LipidIonTable {
+
+  private static final IonizationType[] IONIZATION_TYPES = IonizationType.values();
+
+  private final ILipidAnnotation[] lipids;
+  // sorted by m/z
+  private final double[] mzs;
+  private final int[] lipidIndices;
+  private final int[] ionizationOrdinals;
+
+  /**
+   * @param lipidDatabase the lipids. The index of a lipid is its position in the collection.
+   */
+  public LipidIonTable(@NotNull Collection<ILipidAnnotation> lipidDatabase) {
+    lipids = lipidDatabase.toArray(ILipidAnnotation[]::new);
+
+    final IntArrayList lipidList = new IntArrayList(lipids.length * 2);
+    final IntArrayList ionizationList = new IntArrayList(lipids.length * 2);
+    final IntArrayList massIndices = new IntArrayList(lipids.length * 2);
+    final double[] neutralMasses = new double[lipids.length];
+    for (int i = 0; i < lipids.length; i++) {
+      neutralMasses[i] = MolecularFormulaManipulator.getMass(lipids[i].getMolecularFormula(),
+          AtomContainerManipulator.MonoIsotopic);
+      final Set<IonizationType> ionizations = EnumSet.noneOf(IonizationType.class);
+      final LipidFragmentationRule[] rules = lipids[i].getLipidClass().getFragmentationRules();
+      if (rules != null) {
+        for (LipidFragmentationRule rule : rules) {
+          ionizations.add(rule.getIonizationType());
+        }
+      }
+      for (IonizationType ionization : ionizations) {
+        lipidList.add(i);
+        ionizationList.add(ionization.ordinal());
+        massIndices.add(massIndices.size());
+      }
+    }
+
+    final int size = lipidList.size();
+    final double[] unsortedMzs = new double[size];
+    for (int e = 0; e < size; e++) {
+      unsortedMzs[e] = neutralMasses[lipidList.getInt(e)]
+          + IONIZATION_TYPES[ionizationList.getInt(e)].getAddedMass();
+    }
+
+    final int[] order = massIndices.toIntArray();
+    IntArrays.quickSort(order, (a, b) -> Double.compare(unsortedMzs[a], unsortedMzs[b]));
+    mzs = new double[size];
+    lipidIndices = new int[size];
+    ionizationOrdinals = new int[size];
+    for (int e = 0; e < size; e++) {
+      mzs[e] = unsortedMzs[order[e]];
+      lipidIndices[e] = lipidList.getInt(order[e]);
+      ionizationOrdinals[e] = ionizationList.getInt(order[e]);
+    }
+  }
+
+  /**
+   * Finds all lipid ions within the m/z range.
+   *
+   * @param mzRange the tolerance range
+   * @return the indices of all matching entries, sorted by the index of the lipid
+   */
+  public int[] findEntries(@NotNull Range<Double> mzRange) {
+    final double lower = mzRange.lowerEndpoint();
+    final double upper = mzRange.upperEndpoint();
+
+    // first entry >= lower
+    int lo = 0;
+    int hi = mzs.length;
+    while (lo < hi) {
+      final int mid = (lo + hi) >>> 1;
+      if (mzs[mid] < lower) {
+        lo = mid + 1;
+      } else {
+        hi = mid;
+      }
+    }
+
+    final IntArrayList entries = new IntArrayList();
+    for (int e = lo; e < mzs.length && mzs[e] <= upper; e++) {
+      if (mzRange.contains(mzs[e])) {
+        entries.add(e);
+      }
+    }
+    final int[] result = entries.toIntArray();
+    IntArrays.quickSort(result, (a, b) -> Integer.compare(lipidIndices[a], lipidIndices[b]));
+    return result;
+  }
+
+  /**
+   * @return the number of lipid ions
+   */
+  public int size() {
+    return mzs.length;
+  }
+
+  public double getMz(int entry) {
+    return mzs[entry];
+  }
+
+  public int getLipidIndex(int entry) {
+    return lipidIndices[entry];
+  }
+
+  public ILipidAnnotation getLipid(int entry) {
+    return lipids[lipidIndices[entry]];
+  }
+
+  public IonizationType getIonization(int entry) {
+    return IONIZATION_TYPES[ionizationOrdinals[entry]];
+  }
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.dataprocessing.id_localcsvsearch;
+
+import io.github.mzmine.datamodel.features.FeatureListRow;
+import io.github.mzmine.datamodel.identities.iontype.IonType;
+import io.github.mzmine.parameters.parametertypes.ImportType;
+import io.github.mzmine.parameters.parametertypes.tolerances.MZTolerance;
+import io.github.mzmine.parameters.parametertypes.tolerances.RTTolerance;
+import io.github.mzmine.parameters.parametertypes.tolerances.mobilitytolerance.MobilityTolerance;
+import io.github.mzmine.util.files.LibraryCacheFolder;
+import io.github.mzmine.util.spectraldb.entry.SpectralLibraryIndex;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * The parsed csv database and an m/z sorted index of all its annotations, including the adduct
+ * variants. Each index entry points to its csv line and adduct, so the annotations are only
+ * created for entries that match a row.
+ * <p>
+ * The index is cached in a {@link LibraryCacheFolder}, shared with the spectral library caches. The
+ * cache key is the SHA-256 hash of the database file and of all parameters that change the index,
+ * so a cached index is reused until the file or the columns and adducts change.
+ */
+final class LocalCSVDatabaseIndex {
+
+  private static final Logger logger = Logger.getLogger(LocalCSVDatabaseIndex.class.getName());
+
+  private static final String CACHE_FILE_SUFFIX = ".idx";
+
+  private final String[][] databaseValues;
+  private final SpectralLibraryIndex index;
+  // csv line and adduct index of each entry. -1 marks the annotation without an adduct
+  private final int[] lines;
+  private final int[] adducts;
+
+  LocalCSVDatabaseIndex(String[][] databaseValues, SpectralLibraryIndex index, int[] lines,
+      int[] adducts) {
+    this.databaseValues = databaseValues;
+    this.index = index;
+    this.lines = lines;
+    this.adducts = adducts;
+  }
+
+  String[][] getDatabaseValues() {
+    return databaseValues;
+  }
+
+  /**
+   * @return the matching entries in csv line and adduct order
+   */
+  int[] find(@NotNull FeatureListRow row, @Nullable MZTolerance mzTolerance,
+      @Nullable RTTolerance rtTolerance, @Nullable MobilityTolerance mobilityTolerance,
+      @Nullable Double percentCCSTolerance) {
+    return index.find(row, mzTolerance, rtTolerance, mobilityTolerance, percentCCSTolerance);
+  }
+
+  int getLine(int entry) {
+    return lines[entry];
+  }
+
+  /**
+   * @return the adduct index of the entry or -1 if the annotation of the line is used as is
+   */
+  int getAdduct(int entry) {
+    return adducts[entry];
+  }
+
+  int size() {
+    return index.size();
+  }
+
+  /**
+   * @param dataBaseFile   the csv file
+   * @param fieldSeparator the field separator
+   * @param lineIds        the imported columns with their column indices
+   * @param adducts        the adducts or null if the annotations are not ionized
+   * @return the key of the index cache
+   */
+  static String createCacheKey(@NotNull File dataBaseFile, @NotNull String fieldSeparator,
+      @NotNull List<ImportType> lineIds, @Nullable List<IonType> adducts) throws IOException {
+    final MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IOException(e);
+    }
+
+    try (InputStream in = new BufferedInputStream(Files.newInputStream(dataBaseFile.toPath()))) {
+      final byte[] buffer = new byte[8192];
+      int read;
+      while ((read = in.read(buffer)) != -1) {
+        digest.update(buffer, 0, read);
+      }
+    }
+
+    final StringBuilder params = new StringBuilder();
+    params.append(fieldSeparator).append('\n');
+    for (ImportType type : lineIds) {
+      params.append(type.getColumnIndex()).append(':').append(type.getDataType().getUniqueID())
+          .append('\n');
+    }
+    if (adducts != null) {
+      for (IonType adduct : adducts) {
+        params.append(adduct).append('\n');
+      }
+    }
+    digest.update(params.toString().getBytes(StandardCharsets.UTF_8));
+    return HexFormat.of().formatHex(digest.digest());
+  }
+
+  /**
+   * @param cache      the cache folder
+   * @param numAdducts the number of adducts the index was built with, 0 if the annotations are not
+   *                   ionized
+   * @return the cached index or null if there is no valid cache for this key
+   */
+  @Nullable
+  static LocalCSVDatabaseIndex loadFromCache(@NotNull LibraryCacheFolder cache,
+      @NotNull String key, @NotNull String[][] databaseValues, int numAdducts) {
+    final File file = getCacheFile(cache, key);
+    if (!file.exists()) {
+      return null;
+    }
+
+    try (DataInputStream in = new DataInputStream(
+        new BufferedInputStream(Files.newInputStream(file.toPath())))) {
+      final SpectralLibraryIndex index = SpectralLibraryIndex.read(in);
+      final int size = in.readInt();
+      if (size != index.size()) {
+        throw new IOException("Corrupt index cache " + file.getAbsolutePath());
+      }
+      final int[] lines = new int[size];
+      final int[] adducts = new int[size];
+      for (int i = 0; i < size; i++) {
+        lines[i] = in.readInt();
+        adducts[i] = in.readInt();
+        if (lines[i] < 0 || lines[i] >= databaseValues.length || adducts[i] < -1
+            || adducts[i] >= numAdducts) {
+          throw new IOException("Corrupt index cache " + file.getAbsolutePath());
+        }
+      }
+      logger.fine(() -> "Loaded database index with " + size + " entries from " + file);
+      cache.markUsed(file);
+      return new LocalCSVDatabaseIndex(databaseValues, index, lines, adducts);
+    } catch (IOException e) {
+      logger.log(Level.WARNING, "Cannot read database index cache " + file.getAbsolutePath(), e);
+      return null;
+    }
+  }
+
+  /**
+   * Writes this index to the cache. Errors are only logged, the index is rebuilt next time.
+   */
+  void saveToCache(@NotNull LibraryCacheFolder cache, @NotNull String key) {
+    final File file = getCacheFile(cache, key);
+    try {
+      // write to a partial file first, so other instances never read an unfinished cache
+      final File tmp = cache.createPartialFile(key);
+      try (DataOutputStream out = new DataOutputStream(
+          new BufferedOutputStream(Files.newOutputStream(tmp.toPath())))) {
+        index.write(out);
+        out.writeInt(lines.length);
+        for (int i = 0; i < lines.length; i++) {
+          out.writeInt(lines[i]);
+          out.writeInt(adducts[i]);
+        }
+      } catch (IOException e) {
+        Files.deleteIfExists(tmp.toPath());
+        throw e;
+      }
+      cache.commit(tmp, file);
+    } catch (IOException e) {
+      logger.log(Level.WARNING, "Cannot write database index cache " + file.getAbsolutePath(), e);
+    }
+  }
+
+  static File getCacheFile(@NotNull LibraryCacheFolder cache, @NotNull String key) {
+    return cache.getFile(key + CACHE_FILE_SUFFIX);
+  }
+}
@@ -28,6 +28,7 @@ package io.github.mzmine.modules.dataprocessing.id_localcsvsearch;
 import io.github.mzmine.datamodel.features.FeatureList;
 import java.time.Instant;
 import java.util.Collection;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.jetbrains.annotations.NotNull;
 
@@ -62,8 +63,10 @@ public class LocalCSVDatabaseSearchModule implements MZmineProcessingModule {
     FeatureList peakLists[] = parameters.getParameter(LocalCSVDatabaseSearchParameters.peakLists)
         .getValue().getMatchingFeatureLists();
 
+    // the database index is built once for all feature lists
+    final AtomicReference<LocalCSVDatabaseIndex> index = new AtomicReference<>();
     for (FeatureList peakList : peakLists) {
-      Task newTask = new LocalCSVDatabaseSearchTask(peakList, parameters, moduleCallDate);
+      Task newTask = new LocalCSVDatabaseSearchTask(peakList, parameters, moduleCallDate, index);
       tasks.add(newTask);
     }
 
@@ -53,6 +53,8 @@ import io.github.mzmine.datamodel.features.types.numbers.RTType;
 import io.github.mzmine.datamodel.features.types.numbers.RtRelativeErrorType;
 import io.github.mzmine.datamodel.features.types.numbers.scores.CompoundAnnotationScoreType;
 import io.github.mzmine.datamodel.identities.iontype.IonType;
+import io.github.mzmine.gui.preferences.MZminePreferences;
+import io.github.mzmine.main.MZmineCore;
 import io.github.mzmine.modules.dataprocessing.id_ion_identity_networking.ionidnetworking.IonNetworkLibrary;
 import io.github.mzmine.modules.dataprocessing.id_onlinecompounddb.OnlineDatabases;
 import io.github.mzmine.parameters.ParameterSet;
@@ -65,8 +67,12 @@ import io.github.mzmine.parameters.parametertypes.tolerances.mobilitytolerance.M
 import io.github.mzmine.taskcontrol.AbstractTask;
 import io.github.mzmine.taskcontrol.TaskStatus;
 import io.github.mzmine.util.MathUtils;
+import io.github.mzmine.util.files.LibraryCacheFolder;
+import io.github.mzmine.util.spectraldb.entry.SpectralLibraryIndex;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
 import java.io.File;
 import java.io.FileReader;
+import java.io.IOException;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -75,10 +81,13 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 public class LocalCSVDatabaseSearchTask extends AbstractTask {
 
@@ -97,15 +106,28 @@ public class LocalCSVDatabaseSearchTask extends AbstractTask {
   private final String sampleHeader;
   private final List<RawDataFile> raws;
   private IonNetworkLibrary ionNetworkLibrary;
+  // adducts of the ion library, null if the annotations are not ionized
+  private List<IonType> adducts;
 
   private String[][] databaseValues;
-  private int finishedLines = 0;
+  private volatile int finishedLines = 0;
+  private final AtomicInteger finishedRows = new AtomicInteger(0);
+  private int totalRows = 0;
   private final FeatureList flist;
   private int sampleColIndex = -1;
+  // shared by all tasks of one module call, so the database is only parsed and indexed once
+  private final AtomicReference<LocalCSVDatabaseIndex> sharedIndex;
 
   LocalCSVDatabaseSearchTask(FeatureList peakList, ParameterSet parameters,
       @NotNull Instant moduleCallDate) {
+    this(peakList, parameters, moduleCallDate, new AtomicReference<>());
+  }
+
+  LocalCSVDatabaseSearchTask(FeatureList peakList, ParameterSet parameters,
+      @NotNull Instant moduleCallDate,
+      @NotNull AtomicReference<LocalCSVDatabaseIndex> sharedIndex) {
     super(null, moduleCallDate); // no new data stored -> null
+    this.sharedIndex = sharedIndex;
 
     this.flist = peakList;
     raws = flist.getRawDataFiles();
@@ -133,6 +155,9 @@ public class LocalCSVDatabaseSearchTask extends AbstractTask {
 
   @Override
   public double getFinishedPercentage() {
+    if (totalRows > 0) {
+      return finishedRows.get() / (double) totalRows;
+    }
     if (databaseValues == null) {
       return 0;
     }
@@ -152,15 +177,19 @@ public class LocalCSVDatabaseSearchTask extends AbstractTask {
       ionNetworkLibrary =
           ionLibraryParameterSet != null ? new IonNetworkLibrary(ionLibraryParameterSet,
               mzTolerance) : null;
-      // read database contents in memory
-      FileReader dbFileReader = new FileReader(dataBaseFile);
-      databaseValues = CSVParser.parse(dbFileReader,
-          "\\t".equals(fieldSeparator) ? '\t' : fieldSeparator.charAt(0));
+      adducts = ionNetworkLibrary != null ? CompoundDBAnnotation.getDefinedAdducts(
+          ionNetworkLibrary) : null;
+
+      final LocalCSVDatabaseIndex index = getIndex();
+      if (index == null) {
+        // canceled while building the index
+        return;
+      }
+      databaseValues = index.getDatabaseValues();
 
       List<ImportType> lineIds = findLineIds(importTypes, databaseValues[0]);
 
       // option to read more fields and append to comment as json
-      final DataType<String> type = DataTypes.get(CommentType.class);
       List<ImportType> commentFields = extractCommentFields();
 
       // sample header index
@@ -173,25 +202,19 @@ public class LocalCSVDatabaseSearchTask extends AbstractTask {
         }
       }
 
-      finishedLines++;
-      for (; finishedLines < databaseValues.length; finishedLines++) {
+      // each row only queries the annotations in its m/z tolerance window
+      final List<FeatureListRow> rows = flist.getRows();
+      totalRows = rows.size();
+      rows.parallelStream().forEach(row -> {
         if (isCanceled()) {
-          dbFileReader.close();
           return;
         }
-        try {
-          String[] currentLine = databaseValues[finishedLines];
-          if (filterSamples && !matchSample(currentLine[sampleColIndex])) {
-            // sample mismatch for this line
-            continue;
-          }
-
-          processOneLine(currentLine, lineIds, commentFields);
-        } catch (Exception e) {
-          logger.log(Level.FINE, "Exception while processing csv line " + finishedLines, e);
-        }
+        annotateRow(index, row, lineIds, commentFields);
+        finishedRows.incrementAndGet();
+      });
+      if (isCanceled()) {
+        return;
       }
-      dbFileReader.close();
 
     } catch (Exception e) {
       logger.log(Level.WARNING, "Could not read file " + dataBaseFile, e);
@@ -209,6 +232,104 @@ public class LocalCSVDatabaseSearchTask extends AbstractTask {
 
   }
 
+  /**
+   * The index is created by the first task of a module call. If libraries are cached, it is loaded
+   * from the cache when the database file and the index parameters did not change.
+   *
+   * @return the index or null if the task was canceled while building it
+   */
+  @Nullable
+  private LocalCSVDatabaseIndex getIndex() throws IOException {
+    synchronized (sharedIndex) {
+      final LocalCSVDatabaseIndex shared = sharedIndex.get();
+      if (shared != null) {
+        return shared;
+      }
+
+      // read database contents in memory
+      try (FileReader dbFileReader = new FileReader(dataBaseFile)) {
+        databaseValues = CSVParser.parse(dbFileReader,
+            "\\t".equals(fieldSeparator) ? '\t' : fieldSeparator.charAt(0));
+      }
+
+      final List<ImportType> lineIds = findLineIds(importTypes, databaseValues[0]);
+      final boolean useCache = MZmineCore.getConfiguration().getPreferences()
+          .getParameter(MZminePreferences.cacheSpectralLibraries).getValue();
+      final LibraryCacheFolder cache = LibraryCacheFolder.getUserCache();
+      final String key = useCache ? LocalCSVDatabaseIndex.createCacheKey(dataBaseFile,
+          fieldSeparator, lineIds, adducts) : null;
+      LocalCSVDatabaseIndex index = !useCache ? null
+          : LocalCSVDatabaseIndex.loadFromCache(cache, key, databaseValues,
+              adducts == null ? 0 : adducts.size());
+      if (index == null) {
+        index = buildIndex(lineIds);
+        if (index == null) {
+          return null;
+        }
+        if (useCache) {
+          index.saveToCache(cache, key);
+        }
+      }
+      logger.info(
+          "Indexed " + index.size() + " annotations of " + (databaseValues.length - 1)
+              + " database entries in " + dataBaseFile);
+      sharedIndex.set(index);
+      return index;
+    }
+  }
+
+  /**
+   * Creates the annotation of each line and of each adduct and adds it to the index. The
+   * annotations are not kept, they are created again for the matching entries.
+   *
+   * @return the index or null if the task was canceled
+   */
+  @Nullable
+  private LocalCSVDatabaseIndex buildIndex(@NotNull List<ImportType> lineIds) {
+    final SpectralLibraryIndex.Builder builder = new SpectralLibraryIndex.Builder();
+    final IntArrayList lines = new IntArrayList();
+    final IntArrayList adductIndices = new IntArrayList();
+
+    finishedLines = 1;
+    for (int line = 1; line < databaseValues.length; line++, finishedLines++) {
+      if (isCanceled()) {
+        return null;
+      }
+      try {
+        // comment fields are not needed for the index
+        final CompoundDBAnnotation baseAnnotation = getCompoundFromLine(databaseValues[line],
+            lineIds, List.of());
+        if (adducts == null) {
+          addToIndex(builder, baseAnnotation, lines.size());
+          lines.add(line);
+          adductIndices.add(-1);
+          continue;
+        }
+
+        for (int a = 0; a < adducts.size(); a++) {
+          try {
+            addToIndex(builder, baseAnnotation.ionize(adducts.get(a)), lines.size());
+            lines.add(line);
+            adductIndices.add(a);
+          } catch (IllegalStateException e) {
+            logger.log(Level.WARNING, e.getMessage(), e);
+          }
+        }
+      } catch (Exception e) {
+        logger.log(Level.FINE, "Exception while processing csv line " + line, e);
+      }
+    }
+
+    return new LocalCSVDatabaseIndex(databaseValues, builder.build(), lines.toIntArray(),
+        adductIndices.toIntArray());
+  }
+
+  private static void addToIndex(@NotNull SpectralLibraryIndex.Builder builder,
+      @NotNull CompoundDBAnnotation annotation, int entry) {
+    builder.add(entry, annotation.getPrecursorMZ(), annotation.getRT(), annotation.getMobility(),
+        annotation.getCCS());
+  }
+
   private List<ImportType> extractCommentFields() {
     List<ImportType> commentFields = new ArrayList<>();
     final String appendComments = parameters.getValue(
@@ -228,46 +349,58 @@ public class LocalCSVDatabaseSearchTask extends AbstractTask {
     return raws.stream().anyMatch(raw -> raw.getName().contains(sample));
   }
 
-  private void processOneLine(@NotNull String[] values, @NotNull List<ImportType> linesWithIndices,
-      @NotNull final List<ImportType> commentFields) {
-
-    final CompoundDBAnnotation baseAnnotation = getCompoundFromLine(values, linesWithIndices,
-        commentFields);
-    final List<CompoundDBAnnotation> annotations = new ArrayList<>();
-    if (ionNetworkLibrary != null) {
-      annotations.addAll(
-          CompoundDBAnnotation.buildCompoundsWithAdducts(baseAnnotation, ionNetworkLibrary));
-    } else {
-      annotations.add(baseAnnotation);
-    }
+  /**
+   * Adds all matching annotations to the row. The annotations are added in csv line and adduct
+   * order and sorted by score once.
+   */
+  private void annotateRow(@NotNull LocalCSVDatabaseIndex index, @NotNull FeatureListRow peakRow,
+      @NotNull List<ImportType> linesWithIndices, @NotNull final List<ImportType> commentFields) {
+    boolean added = false;
+    for (int entry : index.find(peakRow, mzTolerance, rtTolerance, mobTolerance, ccsTolerance)) {
+      final int line = index.getLine(entry);
+      try {
+        final String[] values = databaseValues[line];
+        if (filterSamples && !matchSample(values[sampleColIndex])) {
+          // sample mismatch for this line
+          continue;
+        }
 
-    for (CompoundDBAnnotation annotation : annotations) {
-      for (FeatureListRow peakRow : flist.getRows()) {
-        if (annotation.matches(peakRow, mzTolerance, rtTolerance, mobTolerance, ccsTolerance)) {
-          final CompoundDBAnnotation clone = annotation.clone();
-          final Float score = clone.getScore(peakRow, mzTolerance, rtTolerance, mobTolerance,
-              ccsTolerance);
-          clone.put(CompoundAnnotationScoreType.class, score);
-          clone.put(MzPpmDifferenceType.class,
-              (float) MathUtils.getPpmDiff(Objects.requireNonNullElse(clone.getPrecursorMZ(), 0d),
-                  peakRow.getAverageMZ()));
-          if (annotation.get(CCSType.class) != null && peakRow.getAverageCCS() != null) {
-            clone.put(CCSRelativeErrorType.class,
-                PercentTolerance.getPercentError(annotation.get(CCSType.class),
-                    peakRow.getAverageCCS()));
-          }
-          if (annotation.get(RTType.class) != null && peakRow.getAverageRT() != null) {
-            clone.put(RtRelativeErrorType.class,
-                PercentTolerance.getPercentError(annotation.get(RTType.class),
-                    peakRow.getAverageRT()));
-          }
+        final CompoundDBAnnotation baseAnnotation = getCompoundFromLine(values, linesWithIndices,
+            commentFields);
+        final int adduct = index.getAdduct(entry);
+        final CompoundDBAnnotation annotation =
+            adduct == -1 ? baseAnnotation : baseAnnotation.ionize(adducts.get(adduct));
+        if (!annotation.matches(peakRow, mzTolerance, rtTolerance, mobTolerance, ccsTolerance)) {
+          continue;
+        }
 
-          peakRow.addCompoundAnnotation(clone);
-          peakRow.getCompoundAnnotations()
-              .sort(Comparator.comparingDouble(a -> Objects.requireNonNullElse(a.getScore(), 0f)));
+        final Float score = annotation.getScore(peakRow, mzTolerance, rtTolerance, mobTolerance,
+            ccsTolerance);
+        annotation.put(CompoundAnnotationScoreType.class, score);
+        annotation.put(MzPpmDifferenceType.class, (float) MathUtils.getPpmDiff(
+            Objects.requireNonNullElse(annotation.getPrecursorMZ(), 0d), peakRow.getAverageMZ()));
+        if (annotation.get(CCSType.class) != null && peakRow.getAverageCCS() != null) {
+          annotation.put(CCSRelativeErrorType.class,
+              PercentTolerance.getPercentError(annotation.get(CCSType.class),
+                  peakRow.getAverageCCS()));
+        }
+        if (annotation.get(RTType.class) != null && peakRow.getAverageRT() != null) {
+          annotation.put(RtRelativeErrorType.class,
+              PercentTolerance.getPercentError(annotation.get(RTType.class),
+                  peakRow.getAverageRT()));
         }
+
+        peakRow.addCompoundAnnotation(annotation);
+        added = true;
+      } catch (Exception e) {
+        logger.log(Level.FINE, "Exception while processing csv line " + line, e);
       }
     }
+
+    if (added) {
+      peakRow.getCompoundAnnotations()
+          .sort(Comparator.comparingDouble(a -> Objects.requireNonNullElse(a.getScore(), 0f)));
+    }
   }
 
   @NotNull
@@ -28,17 +28,16 @@ package io.github.mzmine.modules.dataprocessing.id_precursordbsearch;
 import io.github.mzmine.datamodel.features.FeatureList;
 import io.github.mzmine.datamodel.features.FeatureListRow;
 import io.github.mzmine.datamodel.features.SimpleFeatureListAppliedMethod;
-import io.github.mzmine.main.MZmineCore;
 import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.parameters.parametertypes.tolerances.MZTolerance;
 import io.github.mzmine.parameters.parametertypes.tolerances.RTTolerance;
 import io.github.mzmine.taskcontrol.AbstractTask;
 import io.github.mzmine.taskcontrol.TaskStatus;
-import io.github.mzmine.util.spectraldb.entry.DBEntryField;
 import io.github.mzmine.util.spectraldb.entry.PrecursorDBFeatureIdentity;
 import io.github.mzmine.util.spectraldb.entry.SpectralDBEntry;
+import io.github.mzmine.util.spectraldb.entry.SpectralLibrary;
+import io.github.mzmine.util.spectraldb.entry.SpectralLibraryIndex;
 import io.github.mzmine.util.spectraldb.parser.AutoLibraryParser;
-import io.github.mzmine.util.spectraldb.parser.LibraryEntryProcessor;
 import io.github.mzmine.util.spectraldb.parser.UnsupportedFormatException;
 import java.io.File;
 import java.io.IOException;
@@ -67,8 +66,8 @@ class PrecursorDBSearchTask extends AbstractTask {
   private boolean useRT;
   private RTTolerance rtTol;
 
-  private List<AbstractTask> tasks;
-  private int totalTasks;
+  private final AtomicInteger finishedRows = new AtomicInteger(0);
+  private int totalRows;
   private AtomicInteger matches = new AtomicInteger(0);
 
   public PrecursorDBSearchTask(FeatureList peakList, ParameterSet parameters, @NotNull Instant moduleCallDate) {
@@ -88,9 +87,9 @@ class PrecursorDBSearchTask extends AbstractTask {
    */
   @Override
   public double getFinishedPercentage() {
-    if (totalTasks == 0 || tasks == null)
+    if (totalRows == 0)
       return 0;
-    return ((double) totalTasks - tasks.size()) / totalTasks;
+    return finishedRows.get() / (double) totalRows;
   }
 
   /**
@@ -108,38 +107,44 @@ class PrecursorDBSearchTask extends AbstractTask {
   @Override
   public void run() {
     setStatus(TaskStatus.PROCESSING);
-    int count = 0;
     try {
-      tasks = parseFile(dataBaseFile);
-      totalTasks = tasks.size();
-      if (!tasks.isEmpty()) {
-        // wait for the tasks to finish
-        while (!isCanceled() && !tasks.isEmpty()) {
-          for (int i = 0; i < tasks.size(); i++) {
-            if (tasks.get(i).isFinished() || tasks.get(i).isCanceled()) {
-              tasks.remove(i);
-              i--;
-            }
-          }
-          // wait for all sub tasks to finish
-          try {
-            Thread.sleep(100);
-          } catch (Exception e) {
-            cancel();
-          }
-        }
-        // cancelled
-        if (isCanceled()) {
-          tasks.stream().forEach(AbstractTask::cancel);
-        }
-      } else {
+      final List<SpectralDBEntry> entries = parseFile(dataBaseFile);
+      if (isCanceled()) {
+        return;
+      }
+      if (entries.isEmpty()) {
         setStatus(TaskStatus.ERROR);
         setErrorMessage("DB file was empty - or error while parsing " + dataBaseFile);
+        return;
+      }
+
+      // entries without precursor m/z are not indexed and never match. Entries without retention
+      // time match all rows if the rt tolerance is active
+      final SpectralLibraryIndex index = new SpectralLibrary(dataBaseFile, entries).getIndex();
+      final List<FeatureListRow> rows = peakList.getRows();
+      totalRows = rows.size();
+      // each row only queries the entries in its precursor m/z tolerance window
+      rows.parallelStream().forEach(row -> {
+        if (isCanceled()) {
+          return;
+        }
+        for (int entry : index.find(row, mzTol, rtTol, null, null)) {
+          // add identity
+          final SpectralDBEntry db = entries.get(entry);
+          row.addFeatureIdentity(
+              new PrecursorDBFeatureIdentity(db, PrecursorDBSearchModule.MODULE_NAME), false);
+          matches.getAndIncrement();
+        }
+        finishedRows.incrementAndGet();
+      });
+      if (isCanceled()) {
+        return;
       }
     } catch (Exception e) {
       logger.log(Level.SEVERE, "Could not read file " + dataBaseFile, e);
       setStatus(TaskStatus.ERROR);
       setErrorMessage(e.toString());
+      return;
     }
     logger.info("Added " + matches.get() + " matches to possible precursors in library: "
         + dataBaseFile.getAbsolutePath());
@@ -154,78 +159,17 @@ class PrecursorDBSearchTask extends AbstractTask {
 
   /**
    * Load all library entries from data base file
-   * 
+   *
    * @param dataBaseFile
-   * @return
+   * @return all entries in library order
    */
-  private List<AbstractTask> parseFile(File dataBaseFile)
+  private List<SpectralDBEntry> parseFile(File dataBaseFile)
       throws UnsupportedFormatException, IOException {
-    //
-    List<AbstractTask> tasks = new ArrayList<>();
-    AutoLibraryParser parser = new AutoLibraryParser(100, new LibraryEntryProcessor() {
-      @Override
-      public void processNextEntries(List<SpectralDBEntry> list, int alreadyProcessed) {
-
-        AbstractTask task = new AbstractTask(null, Instant.now()) {
-          private int total = peakList.getNumberOfRows();
-          private int done = 0;
-
-          @Override
-          public void run() {
-            for (FeatureListRow row : peakList.getRows()) {
-              if (this.isCanceled())
-                break;
-              for (SpectralDBEntry db : list) {
-                if (this.isCanceled())
-                  break;
-
-                if (checkRT(row, (Float) db.getField(DBEntryField.RT).orElse(null))
-                    && checkMZ(row, db.getPrecursorMZ())) {
-                  // add identity
-                  row.addFeatureIdentity(
-                      new PrecursorDBFeatureIdentity(db, PrecursorDBSearchModule.MODULE_NAME), false);
-                  matches.getAndIncrement();
-                }
-              }
-              done++;
-            }
-
-            if (!this.isCanceled())
-              setStatus(TaskStatus.FINISHED);
-          }
-
-          @Override
-          public String getTaskDescription() {
-            return "Checking for precursors: " + alreadyProcessed + 1 + " - " + alreadyProcessed
-                + list.size();
-          }
-
-          @Override
-          public double getFinishedPercentage() {
-            if (total == 0)
-              return 0;
-            return done / (double) total;
-          }
-        };
-
-        // start last task
-        MZmineCore.getTaskController().addTask(task);
-        tasks.add(task);
-      }
-    });
-
-    // return tasks
+    final List<SpectralDBEntry> entries = new ArrayList<>();
+    // entries are pushed in order from the parser thread
+    AutoLibraryParser parser = new AutoLibraryParser(100,
+        (list, alreadyProcessed) -> entries.addAll(list));
     parser.parse(this, dataBaseFile);
-    return tasks;
+    return entries;
   }
-
-  protected boolean checkMZ(FeatureListRow row, Double mz) {
-    return mz != null && mzTol.checkWithinTolerance(row.getAverageMZ(), mz);
-  }
-
-  protected boolean checkRT(FeatureListRow row, Float rt) {
-    // if no rt is in the library still use
-    return !useRT || rtTol == null || rtTol.checkWithinTolerance(row.getAverageRT(), rt);
-  }
-
 }
@@ -286,9 +286,15 @@ public class RowsSpectralMatchTask extends AbstractTask {
     if (rows != null) {
       logger.info(() -> String.format("Comparing %d library spectra to %d feature list rows",
           entries.size(), totalRows));
+      // MS2 searches only need to score the entries within the precursor tolerance
+      final boolean usePrecursorIndex = msLevel > 1;
       rows.stream().parallel().forEach(row -> {
         if (!isCanceled()) {
-          matchRowToLibraries(entries, row);
+          if (usePrecursorIndex) {
+            matchRowToLibraryIndex(libraries, row);
+          } else {
+            matchRowToLibraries(entries, row);
+          }
           finishedRows.incrementAndGet();
         }
       });
@@ -314,8 +320,10 @@ public class RowsSpectralMatchTask extends AbstractTask {
       final Float precursorCCS = getPrecursorCCSFromMsMs(scan);
 
       for (var entry : entries) {
-        final SpectralSimilarity sim = matchSpectrum(scan.getRetentionTime(), scanPrecursorMZ,
-            precursorCCS, masses, entry);
+        if (!checkEntry(scan.getRetentionTime(), scanPrecursorMZ, precursorCCS, entry)) {
+          continue;
+        }
+        final SpectralSimilarity sim = matchSpectrum(getLibraryDataPoints(entry), masses, entry);
         if (sim != null) {
           Float ccsError = PercentTolerance.getPercentError(entry.getOrElse(DBEntryField.CCS, null),
               precursorCCS);
@@ -373,45 +381,55 @@ public class RowsSpectralMatchTask extends AbstractTask {
       // best MS1 scan
       // check for MS1 or MSMS scan
       List<Scan> scans = getScans(row);
-      List<DataPoint[]> rowMassLists = new ArrayList<>();
-      for (Scan scan : scans) {
-        // get mass list and perform deisotoping if active
-        DataPoint[] rowMassList = getDataPoints(scan, true);
-        rowMassLists.add(rowMassList);
-      }
+      List<DataPoint[]> rowMassLists = getMassLists(scans);
 
       final Float rowCCS = row.getAverageCCS();
-      List<SpectralDBAnnotation> ids = null;
+      List<SpectralDBAnnotation> ids = new ArrayList<>();
       // match against all library entries
       for (SpectralDBEntry ident : entries) {
-        final Float libCCS = ident.getOrElse(DBEntryField.CCS, null);
-        SpectralDBAnnotation best = null;
-        // match all scans against this ident to find best match
-        for (int i = 0; i < scans.size(); i++) {
-          SpectralSimilarity sim = matchSpectrum(row.getAverageRT(), row.getAverageMZ(), rowCCS,
-              rowMassLists.get(i), ident);
-          if (sim != null && (!needsIsotopePattern || checkForIsotopePattern(sim,
-              mzToleranceSpectra, minMatchedIsoSignals)) && (best == null
-                                                             || best.getSimilarity().getScore()
-                                                                < sim.getScore())) {
-
-            Float ccsRelativeError = PercentTolerance.getPercentError(rowCCS, libCCS);
-
-            best = new SpectralDBAnnotation(ident, sim, scans.get(i), ccsRelativeError);
-          }
-        }
-        // has match?
-        if (best != null) {
-          if (ids == null) {
-            ids = new ArrayList<>();
-          }
-          ids.add(best);
-          matches.getAndIncrement();
+        addBestMatch(row, rowCCS, scans, rowMassLists, ident, ids);
+      }
+
+      // add and sort identities based on similarity score
+      if (!ids.isEmpty()) {
+        addIdentities(row, ids);
+        SortSpectralMatchesTask.sortIdentities(row);
+      }
+    } catch (MissingMassListException e) {
+      logger.log(Level.WARNING, "No mass list in spectrum for rowID=" + row.getID(), e);
+      errorCounter.getAndIncrement();
+    }
+  }
+
+  /**
+   * Match row against the library entries within the precursor m/z tolerance (and retention time
+   * and CCS tolerance if active), add matches, sort them by score. Uses the precursor index of each
+   * library and yields the same matches as {@link #matchRowToLibraries(List, FeatureListRow)} for
+   * MS level &gt; 1.
+   *
+   * @param libraries the libraries to search
+   * @param row       target row
+   */
+  public void matchRowToLibraryIndex(List<SpectralLibrary> libraries, FeatureListRow row) {
+    try {
+      List<Scan> scans = getScans(row);
+      List<DataPoint[]> rowMassLists = getMassLists(scans);
+
+      final Float rowCCS = row.getAverageCCS();
+      final Float rowRT = useRT ? row.getAverageRT() : null;
+      List<SpectralDBAnnotation> ids = new ArrayList<>();
+      for (SpectralLibrary library : libraries) {
+        final List<SpectralDBEntry> entries = library.getEntries();
+        final int[] candidates = library.getIndex()
+            .findCandidates(row.getAverageMZ(), mzTolerancePrecursor, rowRT, rtTolerance, rowCCS,
+                ccsTolerance);
+        for (int candidate : candidates) {
+          addBestMatch(row, rowCCS, scans, rowMassLists, entries.get(candidate), ids);
         }
       }
 
       // add and sort identities based on similarity score
-      if (ids != null) {
+      if (!ids.isEmpty()) {
         addIdentities(row, ids);
         SortSpectralMatchesTask.sortIdentities(row);
       }
@@ -421,6 +439,48 @@ public class RowsSpectralMatchTask extends AbstractTask {
     }
   }
 
+  private List<DataPoint[]> getMassLists(List<Scan> scans) throws MissingMassListException {
+    List<DataPoint[]> rowMassLists = new ArrayList<>();
+    for (Scan scan : scans) {
+      // get mass list and perform deisotoping if active
+      DataPoint[] rowMassList = getDataPoints(scan, true);
+      rowMassLists.add(rowMassList);
+    }
+    return rowMassLists;
+  }
+
+  /**
+   * Matches all scans of the row against the library entry and adds the best match to ids
+   */
+  private void addBestMatch(FeatureListRow row, Float rowCCS, List<Scan> scans,
+      List<DataPoint[]> rowMassLists, SpectralDBEntry ident, List<SpectralDBAnnotation> ids) {
+    if (!checkEntry(row.getAverageRT(), row.getAverageMZ(), rowCCS, ident)) {
+      return;
+    }
+    final Float libCCS = ident.getOrElse(DBEntryField.CCS, null);
+    // create the library data points once for all scans of the row
+    final DataPoint[] library = getLibraryDataPoints(ident);
+    SpectralDBAnnotation best = null;
+    // match all scans against this ident to find best match
+    for (int i = 0; i < scans.size(); i++) {
+      SpectralSimilarity sim = matchSpectrum(library, rowMassLists.get(i), ident);
+      if (sim != null && (!needsIsotopePattern || checkForIsotopePattern(sim,
+          mzToleranceSpectra, minMatchedIsoSignals)) && (best == null
+                                                         || best.getSimilarity().getScore()
+                                                            < sim.getScore())) {
+
+        Float ccsRelativeError = PercentTolerance.getPercentError(rowCCS, libCCS);
+
+        best = new SpectralDBAnnotation(ident, sim, scans.get(i), ccsRelativeError);
+      }
+    }
+    // has match?
+    if (best != null) {
+      ids.add(best);
+      matches.getAndIncrement();
+    }
+  }
+
   /**
    * Remove 13C isotopes from masslist
    */
@@ -429,48 +489,66 @@ public class RowsSpectralMatchTask extends AbstractTask {
   }
 
   /**
-   * match row against library entry
+   * Checks the retention time, precursor m/z (MS level &gt; 1) and CCS of the library entry. Only
+   * entries that pass are matched by their spectrum.
    *
-   * @param rowRT       retention time of query row
-   * @param rowMZ       m/z of query row
-   * @param rowMassList mass list (data points) for row
-   * @param ident       library entry
-   * @return spectral similarity or null if no match
+   * @param rowRT  retention time of query row
+   * @param rowMZ  m/z of query row
+   * @param rowCCS ccs of query row
+   * @param ident  library entry
+   * @return true if the spectrum of the entry should be matched
    */
-  private SpectralSimilarity matchSpectrum(Float rowRT, double rowMZ, Float rowCCS,
-      DataPoint[] rowMassList, SpectralDBEntry ident) {
+  private boolean checkEntry(Float rowRT, double rowMZ, Float rowCCS, SpectralDBEntry ident) {
     // retention time
     // MS level 1 or check precursorMZ
-    if (checkRT(rowRT, ident) && (msLevel == 1 || checkPrecursorMZ(rowMZ, ident)) && checkCCS(
-        rowCCS, ident)) {
-      DataPoint[] library = ident.getDataPoints();
-      if (removeIsotopes) {
-        library = removeIsotopes(library);
-      }
+    return checkRT(rowRT, ident) && (msLevel == 1 || checkPrecursorMZ(rowMZ, ident)) && checkCCS(
+        rowCCS, ident);
+  }
 
-      // crop the spectra to their overlapping mz range
-      // helpful when comparing spectra, acquired with different
-      // fragmentation energy
-      DataPoint[] query = rowMassList;
-      if (cropSpectraToOverlap) {
-        DataPoint[][] cropped = ScanAlignment.cropToOverlap(mzToleranceSpectra, library, query);
-        library = cropped[0];
-        query = cropped[1];
-      }
+  /**
+   * Creates the data points of the library entry (entries of binary libraries only hold m/z and
+   * intensity buffers) and removes isotopes if active.
+   */
+  private DataPoint[] getLibraryDataPoints(SpectralDBEntry ident) {
+    DataPoint[] library = ident.getDataPoints();
+    if (removeIsotopes) {
+      library = removeIsotopes(library);
+    }
+    return library;
+  }
 
-      // remove precursor signals
-      if (msLevel > 1 && removePrecursor && ident.getPrecursorMZ() != null) {
-        // precursor mz from library entry for signal filtering
-        double precursorMZ = ident.getPrecursorMZ();
-        // remove from both spectra
-        library = removePrecursor(library, precursorMZ);
-        query = removePrecursor(query, precursorMZ);
-      }
+  /**
+   * match row against library entry
+   *
+   * @param library     data points of the library entry, see
+   *                    {@link #getLibraryDataPoints(SpectralDBEntry)}
+   * @param rowMassList mass list (data points) for row
+   * @param ident       library entry
+   * @return spectral similarity or null if no match
+   */
+  private SpectralSimilarity matchSpectrum(DataPoint[] library, DataPoint[] rowMassList,
+      SpectralDBEntry ident) {
+    // crop the spectra to their overlapping mz range
+    // helpful when comparing spectra, acquired with different
+    // fragmentation energy
+    DataPoint[] query = rowMassList;
+    if (cropSpectraToOverlap) {
+      DataPoint[][] cropped = ScanAlignment.cropToOverlap(mzToleranceSpectra, library, query);
+      library = cropped[0];
+      query = cropped[1];
+    }
 
-      // check spectra similarity
-      return createSimilarity(library, query);
+    // remove precursor signals
+    if (msLevel > 1 && removePrecursor && ident.getPrecursorMZ() != null) {
+      // precursor mz from library entry for signal filtering
+      double precursorMZ = ident.getPrecursorMZ();
+      // remove from both spectra
+      library = removePrecursor(library, precursorMZ);
+      query = removePrecursor(query, precursorMZ);
     }
-    return null;
+
+    // check spectra similarity
+    return createSimilarity(library, query);
   }
 
   private boolean checkCCS(Float rowCCS, SpectralDBEntry ident) {
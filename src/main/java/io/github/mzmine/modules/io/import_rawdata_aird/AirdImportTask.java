@@ -36,6 +36,7 @@ import io.github.mzmine.datamodel.impl.DDAMsMsInfoImpl;
 import io.github.mzmine.datamodel.impl.SimpleScan;
 import io.github.mzmine.datamodel.msms.ActivationMethod;
 import io.github.mzmine.modules.MZmineModule;
+import io.github.mzmine.modules.io.import_rawdata_all.RawDataImportTask;
 import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.taskcontrol.AbstractTask;
 import io.github.mzmine.taskcontrol.TaskStatus;
@@ -63,8 +64,9 @@ import net.csibio.aird.parser.v2.DIAParser;
 import net.csibio.aird.util.AirdScanUtil;
 import net.csibio.aird.util.ArrayUtil;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
-public class AirdImportTask extends AbstractTask {
+public class AirdImportTask extends AbstractTask implements RawDataImportTask {
 
   private static final Logger logger = Logger.getLogger(AirdImportTask.class.getName());
   private final ParameterSet parameters;
@@ -288,4 +290,10 @@ public class AirdImportTask extends AbstractTask {
         MsLevel.MS2.getCode(), method, Range.closed(range.getStart(), range.getEnd()));
     return msMsInfo;
   }
+
+  @Override
+  public @Nullable RawDataFile getImportedRawDataFile() {
+    return isFinished() ? newMZmineFile : null;
+  }
+
 }
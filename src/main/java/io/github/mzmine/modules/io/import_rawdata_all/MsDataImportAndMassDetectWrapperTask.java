@@ -38,12 +38,13 @@ import io.github.mzmine.taskcontrol.TaskStatus;
 import io.github.mzmine.util.MemoryMapStorage;
 import java.time.Instant;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 /**
  * This import task wraps other data import tasks that do not support application of mass detection
  * during data import. This task calls the data import and applies mass detection afterwards.
  */
-public class MsDataImportAndMassDetectWrapperTask extends AbstractTask {
+public class MsDataImportAndMassDetectWrapperTask extends AbstractTask implements RawDataImportTask {
 
   private final RawDataFile newMZmineFile;
   private final AbstractTask importTask;
@@ -163,5 +164,9 @@ public class MsDataImportAndMassDetectWrapperTask extends AbstractTask {
     return true;
   }
 
+  @Override
+  public @Nullable RawDataFile getImportedRawDataFile() {
+    return isFinished() && importTask.isFinished() ? newMZmineFile : null;
+  }
 
 }
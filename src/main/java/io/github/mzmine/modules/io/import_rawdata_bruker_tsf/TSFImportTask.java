@@ -34,6 +34,7 @@ import io.github.mzmine.datamodel.features.SimpleFeatureListAppliedMethod;
 import io.github.mzmine.datamodel.impl.SimpleScan;
 import io.github.mzmine.main.MZmineCore;
 import io.github.mzmine.modules.MZmineModule;
+import io.github.mzmine.modules.io.import_rawdata_all.RawDataImportTask;
 import io.github.mzmine.modules.io.import_rawdata_bruker_tdf.datamodel.BrukerScanMode;
 import io.github.mzmine.modules.io.import_rawdata_bruker_tdf.datamodel.sql.TDFFrameMsMsInfoTable;
 import io.github.mzmine.modules.io.import_rawdata_bruker_tdf.datamodel.sql.TDFMaldiFrameInfoTable;
@@ -56,7 +57,7 @@ import java.util.logging.Logger;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-public class TSFImportTask extends AbstractTask {
+public class TSFImportTask extends AbstractTask implements RawDataImportTask {
 
   private static Logger logger = Logger.getLogger(TSFImportTask.class.getName());
 
@@ -76,6 +77,7 @@ public class TSFImportTask extends AbstractTask {
   private File tsf_bin;
   private int totalScans = 1;
   private int processedScans = 0;
+  private RawDataFile importedRawDataFile;
 
   public TSFImportTask(MZmineProject project, File fileName, @Nullable MemoryMapStorage storage,
       @NotNull final Class<? extends MZmineModule> module, @NotNull final ParameterSet parameters,
@@ -174,6 +176,7 @@ public class TSFImportTask extends AbstractTask {
         .add(new SimpleFeatureListAppliedMethod(module, parameters, getModuleCallDate()));
 
     project.addFile(newMZmineFile);
+    importedRawDataFile = newMZmineFile;
     setStatus(TaskStatus.FINISHED);
   }
 
@@ -332,4 +335,10 @@ public class TSFImportTask extends AbstractTask {
         "Construced " + constructed + " DDAMsMsInfos for " + file.getScans().size() + " in " + (
             end.getTime() - start.getTime()) + " ms");
   }
+
+  @Override
+  public @Nullable RawDataFile getImportedRawDataFile() {
+    return isFinished() ? importedRawDataFile : null;
+  }
+
 }
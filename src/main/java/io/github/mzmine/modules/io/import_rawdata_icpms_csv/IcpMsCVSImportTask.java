@@ -34,6 +34,7 @@ import io.github.mzmine.datamodel.Scan;
 import io.github.mzmine.datamodel.features.SimpleFeatureListAppliedMethod;
 import io.github.mzmine.datamodel.impl.SimpleScan;
 import io.github.mzmine.modules.MZmineModule;
+import io.github.mzmine.modules.io.import_rawdata_all.RawDataImportTask;
 import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.taskcontrol.AbstractTask;
 import io.github.mzmine.taskcontrol.TaskStatus;
@@ -49,7 +50,7 @@ import java.util.logging.Logger;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-public class IcpMsCVSImportTask extends AbstractTask {
+public class IcpMsCVSImportTask extends AbstractTask implements RawDataImportTask {
 
   private Logger logger = Logger.getLogger(IcpMsCVSImportTask.class.getName());
 
@@ -215,4 +216,9 @@ public class IcpMsCVSImportTask extends AbstractTask {
     return acquisitionDate;
   }
 
+  @Override
+  public @Nullable RawDataFile getImportedRawDataFile() {
+    return isFinished() ? newMZmineFile : null;
+  }
+
 }
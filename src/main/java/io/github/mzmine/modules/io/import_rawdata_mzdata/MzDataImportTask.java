@@ -35,6 +35,7 @@ import io.github.mzmine.datamodel.impl.SimpleScan;
 import io.github.mzmine.datamodel.msms.ActivationMethod;
 import io.github.mzmine.datamodel.msms.DDAMsMsInfo;
 import io.github.mzmine.modules.MZmineModule;
+import io.github.mzmine.modules.io.import_rawdata_all.RawDataImportTask;
 import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.taskcontrol.AbstractTask;
 import io.github.mzmine.taskcontrol.TaskStatus;
@@ -52,6 +53,7 @@ import java.util.logging.Logger;
 import javax.xml.parsers.SAXParser;
 import javax.xml.parsers.SAXParserFactory;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.xml.sax.Attributes;
 import org.xml.sax.SAXException;
 import org.xml.sax.helpers.DefaultHandler;
@@ -59,7 +61,7 @@ import org.xml.sax.helpers.DefaultHandler;
 /**
  * This class read 1.04 and 1.05 MZDATA files.
  */
-public class MzDataImportTask extends AbstractTask {
+public class MzDataImportTask extends AbstractTask implements RawDataImportTask {
 
   private final ParameterSet parameters;
   private final Class<? extends MZmineModule> module;
@@ -433,4 +435,9 @@ public class MzDataImportTask extends AbstractTask {
 
   }
 
+  @Override
+  public @Nullable RawDataFile getImportedRawDataFile() {
+    return isFinished() ? newMZmineFile : null;
+  }
+
 }
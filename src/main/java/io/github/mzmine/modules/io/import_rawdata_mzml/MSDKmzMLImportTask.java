@@ -29,6 +29,7 @@ import com.google.common.collect.Range;
 import com.google.common.collect.RangeMap;
 import com.google.common.collect.TreeRangeMap;
 import com.google.common.math.Quantiles;
+import io.github.msdk.MSDKException;
 import io.github.msdk.datamodel.MsScan;
 import io.github.mzmine.datamodel.IMSRawDataFile;
 import io.github.mzmine.datamodel.MZmineProject;
@@ -42,14 +43,19 @@ import io.github.mzmine.datamodel.impl.MsdkScanWrapper;
 import io.github.mzmine.datamodel.impl.SimpleFrame;
 import io.github.mzmine.datamodel.impl.masslist.ScanPointerMassList;
 import io.github.mzmine.datamodel.msms.PasefMsMsInfo;
+import io.github.mzmine.gui.preferences.MZminePreferences;
+import io.github.mzmine.main.MZmineCore;
 import io.github.mzmine.modules.MZmineModule;
 import io.github.mzmine.modules.MZmineProcessingStep;
 import io.github.mzmine.modules.dataprocessing.featdet_massdetection.MassDetector;
 import io.github.mzmine.modules.io.import_rawdata_all.AdvancedSpectraImportParameters;
 import io.github.mzmine.modules.io.import_rawdata_all.MsDataImportAndMassDetectWrapperTask;
+import io.github.mzmine.modules.io.import_rawdata_all.RawDataImportTask;
 import io.github.mzmine.modules.io.import_rawdata_mzml.msdk.MzMLFileImportMethod;
+import io.github.mzmine.modules.io.import_rawdata_mzml.msdk.MzMLFileImportMethod.ScanConsumer;
 import io.github.mzmine.modules.io.import_rawdata_mzml.msdk.data.MzMLMsScan;
 import io.github.mzmine.modules.io.import_rawdata_mzml.msdk.data.MzMLRawDataFile;
+import io.github.mzmine.modules.io.import_rawdata_mzml.msdk.util.ByteBufferInputStream;
 import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.project.impl.IMSRawDataFileImpl;
 import io.github.mzmine.project.impl.RawDataFileImpl;
@@ -66,13 +72,24 @@ import io.github.mzmine.util.scans.SpectraMerging;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.time.Instant;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -86,7 +103,7 @@ import org.jetbrains.annotations.Nullable;
  * href="http://code.google.com/p/jmzml/">http://code.google.com/p/jmzml/</a>).
  */
 @SuppressWarnings("UnstableApiUsage")
-public class MSDKmzMLImportTask extends AbstractTask {
+public class MSDKmzMLImportTask extends AbstractTask implements RawDataImportTask {
 
   public static final Pattern watersPattern = Pattern.compile(
       "function=([1-9]+) process=[\\d]+ scan=[\\d]+");
@@ -99,9 +116,23 @@ public class MSDKmzMLImportTask extends AbstractTask {
   private final ParameterSet advancedParam;
   private final ParameterSet parameters;
   private final Class<? extends MZmineModule> module;
-  private MzMLFileImportMethod msdkTask = null;
+  /**
+   * Decodes and converts the spectra of all streaming imports. Shared by all tasks, so that
+   * importing multiple files in parallel does not oversubscribe the CPU. Use
+   * {@link #getDecodePool()}.
+   */
+  private static ThreadPoolExecutor decodePool;
+  /**
+   * Maximum number of parsed spectra waiting for conversion per file
+   */
+  private static final int MAX_PENDING_SCANS = 256;
+
+  private volatile MzMLFileImportMethod msdkTask = null;
+  private volatile boolean streaming = false;
+  private boolean streamingEnabled = true;
   private int totalScans = 0, parsedScans;
   private String description;
+  private RawDataFile importedRawDataFile;
   private MZmineProcessingStep<MassDetector> ms1Detector = null;
   private MZmineProcessingStep<MassDetector> ms2Detector = null;
 
@@ -146,55 +177,26 @@ public class MSDKmzMLImportTask extends AbstractTask {
   public void run() {
 
     setStatus(TaskStatus.PROCESSING);
-
-    RawDataFileImpl newMZmineFile;
-    try {
-
-      if (fis != null) {
-        msdkTask = new MzMLFileImportMethod(fis);
-      } else {
-        msdkTask = new MzMLFileImportMethod(file);
-      }
-      addTaskStatusListener((task, newStatus, oldStatus) -> {
-        if (newStatus == TaskStatus.CANCELED) {
-          msdkTask.cancel();
-        }
-      });
-      MzMLRawDataFile msdkTaskRes = msdkTask.execute();
-      io.github.msdk.datamodel.RawDataFile msdkFile = msdkTask.getResult();
-
-      if (isCanceled()) {
-        return;
+    addTaskStatusListener((task, newStatus, oldStatus) -> {
+      if (newStatus == TaskStatus.CANCELED && msdkTask != null) {
+        msdkTask.cancel();
       }
+    });
 
-      if (msdkFile == null) {
-        setStatus(TaskStatus.ERROR);
-        setErrorMessage("MSDK returned null");
-        return;
+    RawDataFileImpl newMZmineFile = null;
+    try {
+      if (fis == null && streamingEnabled) {
+        newMZmineFile = importStreaming();
       }
-      totalScans = msdkFile.getScans().size();
-
-      final boolean isIms = msdkFile.getScans().stream()
-          .anyMatch(s -> s instanceof MzMLMsScan scan && scan.getMobility() != null);
 
-      if (isIms) {
-        newMZmineFile = new IMSRawDataFileImpl(this.file.getName(), file.getAbsolutePath(),
-            storage);
-      } else {
-        newMZmineFile = new RawDataFileImpl(this.file.getName(), file.getAbsolutePath(), storage);
-      }
-      try {
-        // set time
-        if (msdkTaskRes.getStartTimeStamp() != null) {
-          newMZmineFile.setStartTimeStamp(DateTimeUtils.parse(msdkTaskRes.getStartTimeStamp()));
+      if (newMZmineFile == null) {
+        if (isCanceled()) {
+          return;
+        }
+        newMZmineFile = importCompleteFile();
+        if (newMZmineFile == null) {
+          return;
         }
-      } catch (Exception ingored) {
-      }
-
-      if (newMZmineFile instanceof IMSRawDataFileImpl) {
-        buildIonMobilityFile(msdkFile, newMZmineFile);
-      } else {
-        buildLCMSFile(msdkFile, newMZmineFile);
       }
 
     } catch (Throwable e) {
@@ -219,10 +221,148 @@ public class MSDKmzMLImportTask extends AbstractTask {
     newMZmineFile.getAppliedMethods()
         .add(new SimpleFeatureListAppliedMethod(module, parameters, getModuleCallDate()));
     project.addFile(newMZmineFile);
+    importedRawDataFile = newMZmineFile;
 
     setStatus(TaskStatus.FINISHED);
   }
 
+  /**
+   * @param streamingEnabled false to always parse the complete file before converting the scans
+   */
+  void setStreamingEnabled(boolean streamingEnabled) {
+    this.streamingEnabled = streamingEnabled;
+  }
+
+  /**
+   * @return the shared decoder pool, sized to the number of threads set in the preferences
+   */
+  private static synchronized ExecutorService getDecodePool() {
+    final int threads = Math.max(1, MZmineCore.getConfiguration().getPreferences()
+        .getParameter(MZminePreferences.numOfThreads).getValue());
+    if (decodePool == null) {
+      decodePool = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+          new LinkedBlockingQueue<>(), r -> {
+        Thread t = new Thread(r, "mzML decoder");
+        t.setDaemon(true);
+        return t;
+      });
+      decodePool.allowCoreThreadTimeOut(true);
+    } else if (decodePool.getMaximumPoolSize() != threads) {
+      // the preferences changed, core size must never exceed the maximum size
+      if (threads > decodePool.getMaximumPoolSize()) {
+        decodePool.setMaximumPoolSize(threads);
+        decodePool.setCorePoolSize(threads);
+      } else {
+        decodePool.setCorePoolSize(threads);
+        decodePool.setMaximumPoolSize(threads);
+      }
+    }
+    return decodePool;
+  }
+
+  /**
+   * Parses the file in a single pass. Each spectrum is handed to the decoder pool as soon as
+   * it was read, which decodes the binary arrays, applies the optional mass detection and writes
+   * the data to the storage. Only the converted scans are kept, the parsed mzML spectra are
+   * released directly.
+   *
+   * @return the new raw data file or null if the task was canceled or if the file contains ion
+   * mobility data or scans that cannot be decoded in parallel. Those files need to be imported by
+   * {@link #importCompleteFile()}.
+   */
+  @Nullable
+  private RawDataFileImpl importStreaming() throws MSDKException, IOException {
+    streaming = true;
+    final StreamingScanConverter converter = new StreamingScanConverter();
+    msdkTask = new MzMLFileImportMethod(file);
+    msdkTask.setScanConsumer(converter);
+
+    final MzMLRawDataFile msdkFile;
+    try {
+      msdkFile = msdkTask.execute();
+      if (msdkFile == null || isCanceled() || converter.isCompleteImportRequired()) {
+        return null;
+      }
+      if (!msdkFile.getScans().isEmpty()) {
+        // scans that were not handed to the converter would be lost
+        logger.warning(() -> "Streaming import of " + file.getName() + " skipped "
+            + msdkFile.getScans().size() + " scans. Importing the complete file.");
+        return null;
+      }
+      converter.finish();
+    } finally {
+      converter.cancelPending();
+      streaming = false;
+    }
+
+    RawDataFileImpl newMZmineFile = converter.getRawDataFile();
+    if (newMZmineFile == null) {
+      newMZmineFile = new RawDataFileImpl(this.file.getName(), file.getAbsolutePath(), storage);
+    }
+    setStartTimeStamp(msdkFile, newMZmineFile);
+    return newMZmineFile;
+  }
+
+  /**
+   * Parses the whole file first and converts the scans afterwards. Used for input streams, ion
+   * mobility files, because the mobility values of all scans need to be indexed first, and files
+   * with scans that cannot be decoded in parallel.
+   *
+   * @return the new raw data file or null if the task was canceled or an error occurred.
+   */
+  @Nullable
+  private RawDataFileImpl importCompleteFile() throws MSDKException, IOException {
+    // may have streamed a few scans before the first mobility scan was found
+    parsedScans = 0;
+
+    if (fis != null) {
+      msdkTask = new MzMLFileImportMethod(fis);
+    } else {
+      msdkTask = new MzMLFileImportMethod(file);
+    }
+    MzMLRawDataFile msdkTaskRes = msdkTask.execute();
+    io.github.msdk.datamodel.RawDataFile msdkFile = msdkTask.getResult();
+
+    if (isCanceled()) {
+      return null;
+    }
+
+    if (msdkFile == null) {
+      setStatus(TaskStatus.ERROR);
+      setErrorMessage("MSDK returned null");
+      return null;
+    }
+    totalScans = msdkFile.getScans().size();
+
+    final boolean isIms = msdkFile.getScans().stream()
+        .anyMatch(s -> s instanceof MzMLMsScan scan && scan.getMobility() != null);
+
+    final RawDataFileImpl newMZmineFile;
+    if (isIms) {
+      newMZmineFile = new IMSRawDataFileImpl(this.file.getName(), file.getAbsolutePath(), storage);
+    } else {
+      newMZmineFile = new RawDataFileImpl(this.file.getName(), file.getAbsolutePath(), storage);
+    }
+    setStartTimeStamp(msdkTaskRes, newMZmineFile);
+
+    if (newMZmineFile instanceof IMSRawDataFileImpl) {
+      buildIonMobilityFile(msdkFile, newMZmineFile);
+    } else {
+      buildLCMSFile(msdkFile, newMZmineFile);
+    }
+    return newMZmineFile;
+  }
+
+  private void setStartTimeStamp(MzMLRawDataFile msdkFile, RawDataFile newMZmineFile) {
+    try {
+      // set time
+      if (msdkFile.getStartTimeStamp() != null) {
+        newMZmineFile.setStartTimeStamp(DateTimeUtils.parse(msdkFile.getStartTimeStamp()));
+      }
+    } catch (Exception ingored) {
+    }
+  }
+
   private double[][] applyMassDetection(MZmineProcessingStep<MassDetector> msDetector,
       MsdkScanWrapper scan) {
     // run mass detection on data object
@@ -244,45 +384,54 @@ public class MSDKmzMLImportTask extends AbstractTask {
       if (isCanceled()) {
         return;
       }
-      MzMLMsScan mzMLScan = (MzMLMsScan) scan;
-
-      Scan newScan = null;
-      if (applyMassDetection) {
-        // wrap scan
-        MsdkScanWrapper wrapper = new MsdkScanWrapper(scan);
-        double[][] mzIntensities = null;
-
-        // apply mass detection
-        if (ms1Detector != null && wrapper.getMSLevel() == 1) {
-          mzIntensities = applyMassDetection(ms1Detector, wrapper);
-        } else if (ms2Detector != null && wrapper.getMSLevel() >= 2) {
-          mzIntensities = applyMassDetection(ms2Detector, wrapper);
-        }
 
-        if (mzIntensities != null) {
-          // sort arrays because some files are unsorted. Latest versions of msconvert should fix that
-          mzIntensities = DataPointUtils.sort(mzIntensities[0], mzIntensities[1],
-              DataPointSorter.DEFAULT_MZ_ASCENDING);
+      newMZmineFile.addScan(convertScan(newMZmineFile, (MzMLMsScan) scan));
+      parsedScans++;
+      description =
+          "Importing " + this.file.getName() + ", parsed " + parsedScans + "/" + totalScans
+              + " scans";
+    }
+  }
 
-          // create mass list and scan. Override data points and spectrum type
-          newScan = ConversionUtils.msdkScanToSimpleScan(newMZmineFile, mzMLScan, mzIntensities[0],
-              mzIntensities[1], MassSpectrumType.CENTROIDED);
-          ScanPointerMassList newMassList = new ScanPointerMassList(newScan);
-          newScan.addMassList(newMassList);
-        }
+  /**
+   * Decodes the data of the mzML scan, applies the mass detection (if selected) and stores the
+   * data in the storage of the new file. Thread safe as long as the scans do not share the same
+   * input stream.
+   *
+   * @return the new scan. Not yet added to the raw data file.
+   */
+  private Scan convertScan(RawDataFile newMZmineFile, MzMLMsScan mzMLScan) {
+    Scan newScan = null;
+    if (applyMassDetection) {
+      // wrap scan
+      MsdkScanWrapper wrapper = new MsdkScanWrapper(mzMLScan);
+      double[][] mzIntensities = null;
+
+      // apply mass detection
+      if (ms1Detector != null && wrapper.getMSLevel() == 1) {
+        mzIntensities = applyMassDetection(ms1Detector, wrapper);
+      } else if (ms2Detector != null && wrapper.getMSLevel() >= 2) {
+        mzIntensities = applyMassDetection(ms2Detector, wrapper);
       }
 
-      if (newScan == null) {
-        // mz arrays are sorted within this method to ensure order in scans
-        newScan = ConversionUtils.msdkScanToSimpleScan(newMZmineFile, mzMLScan);
+      if (mzIntensities != null) {
+        // sort arrays because some files are unsorted. Latest versions of msconvert should fix that
+        mzIntensities = DataPointUtils.sort(mzIntensities[0], mzIntensities[1],
+            DataPointSorter.DEFAULT_MZ_ASCENDING);
+
+        // create mass list and scan. Override data points and spectrum type
+        newScan = ConversionUtils.msdkScanToSimpleScan(newMZmineFile, mzMLScan, mzIntensities[0],
+            mzIntensities[1], MassSpectrumType.CENTROIDED);
+        ScanPointerMassList newMassList = new ScanPointerMassList(newScan);
+        newScan.addMassList(newMassList);
       }
+    }
 
-      newMZmineFile.addScan(newScan);
-      parsedScans++;
-      description =
-          "Importing " + this.file.getName() + ", parsed " + parsedScans + "/" + totalScans
-              + " scans";
+    if (newScan == null) {
+      // mz arrays are sorted within this method to ensure order in scans
+      newScan = ConversionUtils.msdkScanToSimpleScan(newMZmineFile, mzMLScan);
     }
+    return newScan;
   }
 
   public void buildIonMobilityFile(io.github.msdk.datamodel.RawDataFile file,
@@ -459,7 +608,130 @@ public class MSDKmzMLImportTask extends AbstractTask {
       return 0.0;
     }
     final double msdkProgress = msdkTask.getFinishedPercentage().doubleValue();
+    if (streaming) {
+      // scans are converted while parsing
+      return msdkProgress;
+    }
     final double parsingProgress = totalScans == 0 ? 0.0 : (double) parsedScans / totalScans;
     return (msdkProgress * 0.25) + (parsingProgress * 0.75);
   }
+
+  /**
+   * Receives the spectra from the parser and converts them on the decoder pool. Each
+   * conversion task decodes the binary data from its own copy of the memory mapped file. The
+   * converted scans are added to the raw data file in the order of the mzML file on the parsing
+   * thread. The number of pending scans is bounded, so the parser waits for the decoders instead of
+   * piling up parsed spectra.
+   */
+  private class StreamingScanConverter implements ScanConsumer {
+
+    private final ExecutorService decodePool = getDecodePool();
+    private final Deque<Future<Scan>> pending = new ArrayDeque<>();
+    private final Queue<ByteBufferInputStream> decodeStreams = new ConcurrentLinkedQueue<>();
+    private RawDataFileImpl newMZmineFile = null;
+    private boolean completeImportRequired = false;
+
+    @Override
+    public boolean consume(MzMLMsScan scan) {
+      if (completeImportRequired || isCanceled()) {
+        return false;
+      }
+      if (scan.getMobility() != null) {
+        // the mobility values of all scans are indexed before building the frames. Stop parsing,
+        // the complete file is imported in a second pass. Otherwise, ion mobility files would be
+        // parsed twice
+        stopStreaming("ion mobility data");
+        return false;
+      }
+      if (!(scan.getInputStream() instanceof ByteBufferInputStream source)) {
+        // cannot decode in parallel. Import the complete file so that no scan is lost
+        stopStreaming("scan data that cannot be decoded in parallel");
+        return false;
+      }
+
+      if (newMZmineFile == null) {
+        newMZmineFile = new RawDataFileImpl(file.getName(), file.getAbsolutePath(), storage);
+      }
+      final RawDataFile rawDataFile = newMZmineFile;
+      pending.add(decodePool.submit(() -> {
+        ByteBufferInputStream stream = decodeStreams.poll();
+        if (stream == null) {
+          stream = source.copy();
+        }
+        try {
+          scan.setInputStream(stream);
+          return convertScan(rawDataFile, scan);
+        } finally {
+          decodeStreams.add(stream);
+        }
+      }));
+
+      while (pending.size() > MAX_PENDING_SCANS) {
+        addNextScan();
+      }
+      return true;
+    }
+
+    private void addNextScan() {
+      final Scan scan;
+      try {
+        scan = pending.removeFirst().get();
+        newMZmineFile.addScan(scan);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("Interrupted while importing " + file.getName(), e);
+      } catch (ExecutionException e) {
+        throw new IllegalStateException("Error while decoding a scan of " + file.getName(),
+            e.getCause());
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+
+      parsedScans++;
+      description = "Importing " + file.getName() + ", parsed " + parsedScans + " scans";
+    }
+
+    /**
+     * Waits for all pending scans and adds them to the raw data file.
+     */
+    void finish() {
+      while (!pending.isEmpty() && !isCanceled()) {
+        addNextScan();
+      }
+    }
+
+    void cancelPending() {
+      for (Future<Scan> future : pending) {
+        future.cancel(false);
+      }
+      pending.clear();
+    }
+
+    private void stopStreaming(String reason) {
+      logger.fine(() -> "Stopped streaming import of " + file.getName() + " because of " + reason
+          + ". Importing the complete file.");
+      completeImportRequired = true;
+      cancelPending();
+      msdkTask.cancel();
+    }
+
+    /**
+     * @return true if the file contains scans that cannot be streamed. The scans that were
+     * converted so far are discarded and the complete file needs to be imported.
+     */
+    boolean isCompleteImportRequired() {
+      return completeImportRequired;
+    }
+
+    @Nullable
+    RawDataFileImpl getRawDataFile() {
+      return newMZmineFile;
+    }
+  }
+
+  @Override
+  public @Nullable RawDataFile getImportedRawDataFile() {
+    return isFinished() ? importedRawDataFile : null;
+  }
+
 }
@@ -30,6 +30,7 @@ import io.github.msdk.MSDKMethod;
 import io.github.msdk.datamodel.Chromatogram;
 import io.github.msdk.datamodel.MsScan;
 import io.github.msdk.datamodel.RawDataFile;
+import io.github.mzmine.modules.io.import_rawdata_mzml.msdk.data.MzMLMsScan;
 import io.github.mzmine.modules.io.import_rawdata_mzml.msdk.data.MzMLParser;
 import io.github.mzmine.modules.io.import_rawdata_mzml.msdk.data.MzMLRawDataFile;
 import io.github.mzmine.modules.io.import_rawdata_mzml.msdk.util.FileMemoryMapper;
@@ -66,6 +67,7 @@ public class MzMLFileImportMethod implements MSDKMethod<RawDataFile> {
   private final Logger logger = Logger.getLogger(this.getClass().getName());
   private Predicate<MsScan> msScanPredicate = s -> true;
   private Predicate<Chromatogram> chromatogramPredicate = c -> true;
+  private ScanConsumer scanConsumer = null;
 
   /**
    * <p>
@@ -326,6 +328,24 @@ public class MzMLFileImportMethod implements MSDKMethod<RawDataFile> {
     return msScanPredicate;
   }
 
+  /**
+   * @return the consumer that receives the spectra while parsing or null
+   */
+  public ScanConsumer getScanConsumer() {
+    return scanConsumer;
+  }
+
+  /**
+   * Streams all parsed spectra to the consumer as soon as their closing tag was read. Spectra taken
+   * by the consumer are not added to the {@link MzMLRawDataFile} returned by {@link #execute()}, so
+   * they can be released as soon as the consumer is done.
+   *
+   * @param scanConsumer the consumer or null to collect all spectra in the raw data file
+   */
+  public void setScanConsumer(ScanConsumer scanConsumer) {
+    this.scanConsumer = scanConsumer;
+  }
+
   /**
    * <p>
    * Getter for the field <code>chromatogramPredicate</code>.
@@ -350,4 +370,17 @@ public class MzMLFileImportMethod implements MSDKMethod<RawDataFile> {
     return mzMLFile;
   }
 
+  /**
+   * Receives the spectra during {@link #execute()} on the parsing thread.
+   */
+  @FunctionalInterface
+  public interface ScanConsumer {
+
+    /**
+     * @param scan the completely parsed spectrum. The binary data is not decoded yet.
+     * @return true if the scan was consumed, false to add it to the {@link MzMLRawDataFile}
+     */
+    boolean consume(MzMLMsScan scan);
+  }
+
 }
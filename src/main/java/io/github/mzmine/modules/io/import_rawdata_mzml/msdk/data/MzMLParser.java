@@ -29,6 +29,7 @@ import io.github.msdk.datamodel.Chromatogram;
 import io.github.msdk.datamodel.MsScan;
 import io.github.mzmine.main.MZmineCore;
 import io.github.mzmine.modules.io.import_rawdata_mzml.msdk.MzMLFileImportMethod;
+import io.github.mzmine.modules.io.import_rawdata_mzml.msdk.MzMLFileImportMethod.ScanConsumer;
 import io.github.mzmine.modules.io.import_rawdata_mzml.msdk.util.TagTracker;
 import java.io.InputStream;
 import java.util.ArrayList;
@@ -492,7 +493,10 @@ public class MzMLParser {
         if (vars.spectrum.getMzBinaryDataInfo() != null
             && vars.spectrum.getIntensityBinaryDataInfo() != null && (importer.getMzMLFile() != null
             || importer.getMsScanPredicate().test(vars.spectrum))) {
-          vars.spectrumList.add(vars.spectrum);
+          final ScanConsumer consumer = importer.getScanConsumer();
+          if (consumer == null || !consumer.consume(vars.spectrum)) {
+            vars.spectrumList.add(vars.spectrum);
+          }
         }
       }
 
@@ -36,6 +36,7 @@ import io.github.mzmine.datamodel.impl.SimpleScan;
 import io.github.mzmine.datamodel.msms.ActivationMethod;
 import io.github.mzmine.datamodel.msms.DDAMsMsInfo;
 import io.github.mzmine.modules.MZmineModule;
+import io.github.mzmine.modules.io.import_rawdata_all.RawDataImportTask;
 import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.taskcontrol.AbstractTask;
 import io.github.mzmine.taskcontrol.TaskStatus;
@@ -58,12 +59,13 @@ import java.util.regex.Pattern;
 import java.util.zip.ZipInputStream;
 import org.apache.commons.io.FileUtils;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 /**
  * This module binds spawns a separate process that dumps the native format's data in a text+binary
  * form into its standard output. This class then reads the output of that process.
  */
-public class WatersRawImportTask extends AbstractTask {
+public class WatersRawImportTask extends AbstractTask implements RawDataImportTask {
 
   public static final Logger logger = Logger.getLogger(WatersRawImportTask.class.getName());
   private final ParameterSet parameters;
@@ -413,4 +415,10 @@ public class WatersRawImportTask extends AbstractTask {
       dumper.destroy();
     }
   }
+
+  @Override
+  public @Nullable RawDataFile getImportedRawDataFile() {
+    return isFinished() ? newMZmineFile : null;
+  }
+
 }
@@ -26,7 +26,9 @@
 package io.github.mzmine.modules.io.import_rawdata_zip;
 
 import io.github.mzmine.datamodel.MZmineProject;
+import io.github.mzmine.datamodel.RawDataFile;
 import io.github.mzmine.modules.MZmineModule;
+import io.github.mzmine.modules.io.import_rawdata_all.RawDataImportTask;
 import io.github.mzmine.modules.io.import_rawdata_mzml.MSDKmzMLImportTask;
 import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.taskcontrol.AbstractTask;
@@ -48,7 +50,7 @@ import java.util.zip.ZipInputStream;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-public class ZipImportTask extends AbstractTask {
+public class ZipImportTask extends AbstractTask implements RawDataImportTask {
 
   private Logger logger = Logger.getLogger(this.getClass().getName());
 
@@ -163,4 +165,10 @@ public class ZipImportTask extends AbstractTask {
     }
   }
 
+  @Override
+  public @Nullable RawDataFile getImportedRawDataFile() {
+    return isFinished() && decompressedOpeningTask instanceof RawDataImportTask importTask
+        ? importTask.getImportedRawDataFile() : null;
+  }
+
 }
@@ -26,12 +26,15 @@
 package io.github.mzmine.modules.io.import_spectral_library;
 
 import io.github.mzmine.datamodel.MZmineProject;
+import io.github.mzmine.gui.preferences.MZminePreferences;
+import io.github.mzmine.main.MZmineCore;
 import io.github.mzmine.taskcontrol.AbstractTask;
 import io.github.mzmine.taskcontrol.TaskStatus;
 import io.github.mzmine.util.MemoryMapStorage;
 import io.github.mzmine.util.spectraldb.entry.SpectralDBEntry;
 import io.github.mzmine.util.spectraldb.entry.SpectralLibrary;
 import io.github.mzmine.util.spectraldb.parser.AutoLibraryParser;
+import io.github.mzmine.util.spectraldb.parser.SpectralLibraryBinaryCache;
 import io.github.mzmine.util.spectraldb.parser.UnsupportedFormatException;
 import java.io.File;
 import java.io.IOException;
@@ -73,8 +76,21 @@ public class SpectralLibraryImportTask extends AbstractTask {
     setStatus(TaskStatus.PROCESSING);
 
     try {
-      // will block until all library spectra are added to entries list
-      parseFile(dataBaseFile);
+      // load the binary copy of the library if it was imported before
+      final boolean useCache = MZmineCore.getConfiguration().getPreferences()
+          .getParameter(MZminePreferences.cacheSpectralLibraries).getValue();
+      final List<SpectralDBEntry> cached =
+          useCache ? SpectralLibraryBinaryCache.read(dataBaseFile) : null;
+      if (cached != null) {
+        entries.addAll(cached);
+        logger.info(() -> "Loaded spectral library " + dataBaseFile + " from cache");
+      } else {
+        // will block until all library spectra are added to entries list
+        parseFile(dataBaseFile);
+        if (useCache && !entries.isEmpty() && !isCanceled()) {
+          SpectralLibraryBinaryCache.write(dataBaseFile, entries);
+        }
+      }
       if (entries.size() > 0) {
         project.addSpectralLibrary(new SpectralLibrary(dataBaseFile, entries));
         logger.log(Level.INFO, () -> String
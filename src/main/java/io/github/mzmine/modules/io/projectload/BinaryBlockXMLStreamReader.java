@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.io.projectload;
+
+import io.github.mzmine.datamodel.featuredata.impl.StorageUtils;
+import io.github.mzmine.modules.io.projectload.version_3_0.CONST;
+import io.github.mzmine.modules.io.projectsave.BinaryBlockXMLStreamWriter;
+import io.github.mzmine.util.MemoryMapStorage;
+import io.github.mzmine.util.ParsingUtils;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.StandardOpenOption;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+import javax.xml.stream.util.StreamReaderDelegate;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Reads xml files written by the {@link BinaryBlockXMLStreamWriter}. The binary
+ * block is memory mapped, so series values are copied directly from the mapped file instead of
+ * being parsed from text. Elements without the {@link CONST#XML_BINARY_OFFSET_ATTR} attribute (all
+ * projects saved before the binary block was introduced) are parsed from text.
+ */
+public class BinaryBlockXMLStreamReader extends StreamReaderDelegate {
+
+  private final long segmentSize;
+  private final ByteBuffer[] segments;
+
+  public BinaryBlockXMLStreamReader(@NotNull XMLStreamReader reader, @NotNull File blockFile)
+      throws IOException {
+    this(reader, blockFile, BinaryBlockXMLStreamWriter.SEGMENT_SIZE);
+  }
+
+  /**
+   * @param segmentSize The segment size the block was written with, see {@link
+   *                    BinaryBlockXMLStreamWriter#BinaryBlockXMLStreamWriter(XMLStreamWriter,
+   *                    long)}.
+   */
+  public BinaryBlockXMLStreamReader(@NotNull XMLStreamReader reader, @NotNull File blockFile,
+      long segmentSize) throws IOException {
+    super(reader);
+    this.segmentSize = segmentSize;
+    try (FileChannel channel = FileChannel.open(blockFile.toPath(), StandardOpenOption.READ)) {
+      final long size = channel.size();
+      segments = new ByteBuffer[(int) ((size + segmentSize - 1) / segmentSize)];
+      for (int i = 0; i < segments.length; i++) {
+        final long start = i * segmentSize;
+        segments[i] = channel.map(MapMode.READ_ONLY, start, Math.min(segmentSize, size - start));
+      }
+    }
+  }
+
+  /**
+   * Reads the values of the current element from the binary block or parses them from the element
+   * text. The reader is positioned on the end element afterwards.
+   */
+  public static double[] readDoubles(@NotNull XMLStreamReader reader) throws XMLStreamException {
+    final long offset = getBinaryOffset(reader);
+    if (offset < 0) {
+      return ParsingUtils.stringToDoubleArray(reader.getElementText());
+    }
+
+    final double[] values = new double[getNumValues(reader)];
+    ((BinaryBlockXMLStreamReader) reader).getSlice(offset, values.length * Double.BYTES)
+        .asDoubleBuffer().get(values);
+    reader.getElementText(); // move to the end element
+    return values;
+  }
+
+  /**
+   * Reads the values of the current element without copying them. Values in the binary block are
+   * returned as a read-only view of the mapped block, values stored as text are parsed and stored
+   * in the storage. The reader is positioned on the end element afterwards.
+   */
+  public static DoubleBuffer readDoubleBuffer(@NotNull XMLStreamReader reader,
+      @Nullable MemoryMapStorage storage) throws XMLStreamException {
+    final long offset = getBinaryOffset(reader);
+    if (offset < 0) {
+      return StorageUtils.storeValuesToDoubleBuffer(storage,
+          ParsingUtils.stringToDoubleArray(reader.getElementText()));
+    }
+
+    final int numValues = getNumValues(reader);
+    final DoubleBuffer values = ((BinaryBlockXMLStreamReader) reader).getSlice(offset,
+        numValues * Double.BYTES).asDoubleBuffer();
+    reader.getElementText(); // move to the end element
+    return values;
+  }
+
+  /**
+   * Reads the values of the current element from the binary block or parses them from the element
+   * text. The reader is positioned on the end element afterwards.
+   */
+  public static int[] readInts(@NotNull XMLStreamReader reader) throws XMLStreamException {
+    final long offset = getBinaryOffset(reader);
+    if (offset < 0) {
+      return ParsingUtils.stringToIntArray(reader.getElementText());
+    }
+
+    final int[] values = new int[getNumValues(reader)];
+    ((BinaryBlockXMLStreamReader) reader).getSlice(offset, values.length * Integer.BYTES)
+        .asIntBuffer().get(values);
+    reader.getElementText(); // move to the end element
+    return values;
+  }
+
+  /**
+   * @return the offset of the values in the binary block or -1 if the values are stored as text.
+   */
+  private static long getBinaryOffset(XMLStreamReader reader) throws XMLStreamException {
+    final String offset = reader.getAttributeValue(null, CONST.XML_BINARY_OFFSET_ATTR);
+    if (offset == null) {
+      return -1;
+    }
+    if (!(reader instanceof BinaryBlockXMLStreamReader)) {
+      throw new XMLStreamException(
+          "Element " + reader.getLocalName() + " references a binary block, but no block was found.",
+          reader.getLocation());
+    }
+    return Long.parseLong(offset);
+  }
+
+  private static int getNumValues(XMLStreamReader reader) {
+    return Integer.parseInt(reader.getAttributeValue(null, CONST.XML_NUM_VALUES_ATTR));
+  }
+
+  private ByteBuffer getSlice(long offset, int length) {
+    if (length == 0) {
+      return ByteBuffer.allocate(0);
+    }
+    final ByteBuffer segment = segments[(int) (offset / segmentSize)];
+    // absolute slice, so the mapped segments are never modified
+    return segment.slice((int) (offset % segmentSize), length).order(ByteOrder.LITTLE_ENDIAN);
+  }
+}
@@ -56,10 +56,22 @@ public class CONST {
   public static final String XML_INTENSITY_MERGE_TYPE_ATTR = "mergetype";
   public static final String XML_SCAN_LIST_ELEMENT = "scans";
   public static final String XML_POLARITY_ATTR = "polarity";
+  public static final String XML_SCAN_NUMBER_ATTR = "scannumber";
+  public static final String XML_SCAN_MZ_RANGE_ATTR = "mzrange";
+  public static final String XML_SPECTRUM_TYPE_ATTR = "spectrumtype";
+  public static final String XML_INJECTION_TIME_ATTR = "injectiontime";
+  public static final String XML_MASS_LIST_ELEMENT = "masslist";
+  public static final String XML_NUM_SCANS_ATTR = "numberofscans";
+  public static final String XML_RAW_FILE_COLOR_ELEMENT = "color";
+  public static final String XML_MOBILITY_TYPE_ELEMENT = "mobilitytype";
+  public static final String XML_MOBILITY_SCANS_ELEMENT = "mobilityscans";
+  public static final String XML_STORAGE_OFFSETS_ELEMENT = "storageoffsets";
+  public static final String XML_IMS_MSMS_INFOS_ELEMENT = "imsmsmsinfos";
   /**
    * General
    */
   public static final String XML_NUM_VALUES_ATTR = "numvalues";
+  public static final String XML_BINARY_OFFSET_ATTR = "binoffset";
 
   /**
    * Feature list stoff
@@ -37,6 +37,7 @@ import io.github.mzmine.datamodel.features.types.DataType;
 import io.github.mzmine.datamodel.features.types.DataTypes;
 import io.github.mzmine.datamodel.features.types.numbers.IDType;
 import io.github.mzmine.main.MZmineCore;
+import io.github.mzmine.modules.io.projectload.BinaryBlockXMLStreamReader;
 import io.github.mzmine.modules.io.projectload.CachedIMSRawDataFile;
 import io.github.mzmine.modules.io.projectsave.FeatureListSaveTask;
 import io.github.mzmine.taskcontrol.AbstractTask;
@@ -212,9 +213,14 @@ public class FeatureListLoadTask extends AbstractTask {
     processedRows = 0;
     totalRows = flist.getNumberOfRows();
 
+    // projects saved before the binary block was introduced contain series values as text
+    final File blockFile = new File(flistFile.toString()
+        .replace(FeatureListSaveTask.DATA_FILE_SUFFIX, FeatureListSaveTask.BINARY_FILE_SUFFIX));
+
     try (InputStream fis = new FileInputStream(flistFile)) {
       final XMLInputFactory xif = XMLInputFactory.newInstance();
-      final XMLStreamReader reader = xif.createXMLStreamReader(fis);
+      final XMLStreamReader reader = blockFile.exists() ? new BinaryBlockXMLStreamReader(
+          xif.createXMLStreamReader(fis), blockFile) : xif.createXMLStreamReader(fis);
 
       while (reader.hasNext()) {
         if (isCanceled()) {
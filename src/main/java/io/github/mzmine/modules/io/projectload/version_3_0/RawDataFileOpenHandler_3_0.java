@@ -26,6 +26,7 @@
 package io.github.mzmine.modules.io.projectload.version_3_0;
 
 import io.github.mzmine.datamodel.MZmineProject;
+import io.github.mzmine.datamodel.RawDataFile;
 import io.github.mzmine.main.MZmineCore;
 import io.github.mzmine.modules.MZmineProcessingModule;
 import io.github.mzmine.modules.MZmineProcessingStep;
@@ -87,6 +88,7 @@ public class RawDataFileOpenHandler_3_0 extends AbstractTask implements RawDataF
   private MZmineProject project;
   private AbstractTask currentTask;
   private ZipFile zipFile;
+  private volatile boolean loadingSnapshots = false;
 
   public RawDataFileOpenHandler_3_0(@NotNull Instant moduleCallDate) {
     super(null, moduleCallDate);
@@ -185,6 +187,9 @@ public class RawDataFileOpenHandler_3_0 extends AbstractTask implements RawDataF
 
   @Override
   public String getTaskDescription() {
+    if (loadingSnapshots) {
+      return "Loading raw data snapshots from project.";
+    }
     return "Importing raw data files from project. Processing import batch step " + (processedSteps
         + 1) + "/" + numSteps + ".";
   }
@@ -199,6 +204,16 @@ public class RawDataFileOpenHandler_3_0 extends AbstractTask implements RawDataF
       return false;
     }
 
+    if (zipFile != null && RawDataFileSnapshotLoader.hasSnapshots(zipFile)) {
+      if (loadSnapshots()) {
+        return true;
+      }
+      if (isCanceled()) {
+        return false;
+      }
+      logger.warning("Cannot load raw data snapshots, importing raw data files from the batch.");
+    }
+
     try {
       List<BatchQueue> batchQueues = loadBatchQueues();
       numSteps = batchQueues.size();
@@ -250,6 +265,31 @@ public class RawDataFileOpenHandler_3_0 extends AbstractTask implements RawDataF
     return true;
   }
 
+  /**
+   * Loads the raw data files from the snapshots saved in the project. The files are only added to
+   * the project if all snapshots were loaded.
+   *
+   * @return true if all files were loaded. false if the import batch has to be replayed instead.
+   */
+  private boolean loadSnapshots() {
+    loadingSnapshots = true;
+    try {
+      final Path tempDir = Files.createTempDirectory(TEMP_RAW_DATA_FOLDER);
+      final List<RawDataFile> files = RawDataFileSnapshotLoader.loadSnapshots(zipFile, tempDir,
+          List.of(project.getDataFiles()), this::isCanceled);
+      if (files == null) {
+        return false;
+      }
+      files.forEach(project::addFile);
+      return true;
+    } catch (Exception e) {
+      logger.log(Level.WARNING, "Error while loading raw data snapshots.", e);
+      return false;
+    } finally {
+      loadingSnapshots = false;
+    }
+  }
+
   @Override
   public TaskPriority getTaskPriority() {
     return TaskPriority.HIGH;
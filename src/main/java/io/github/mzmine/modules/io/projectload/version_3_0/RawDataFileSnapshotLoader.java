@@ -0,0 +1,411 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.io.projectload.version_3_0;
+
+import com.google.common.collect.Range;
+import io.github.mzmine.datamodel.IMSRawDataFile;
+import io.github.mzmine.datamodel.MassSpectrumType;
+import io.github.mzmine.datamodel.MobilityType;
+import io.github.mzmine.datamodel.PolarityType;
+import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.datamodel.Scan;
+import io.github.mzmine.datamodel.features.SimpleFeatureListAppliedMethod;
+import io.github.mzmine.datamodel.impl.MobilityScanStorage;
+import io.github.mzmine.datamodel.impl.SimpleFrame;
+import io.github.mzmine.datamodel.impl.SimpleScan;
+import io.github.mzmine.datamodel.impl.masslist.SimpleMassList;
+import io.github.mzmine.datamodel.msms.MsMsInfo;
+import io.github.mzmine.datamodel.msms.PasefMsMsInfo;
+import io.github.mzmine.modules.dataprocessing.id_ccscalibration.CCSCalibration;
+import io.github.mzmine.modules.io.projectload.BinaryBlockXMLStreamReader;
+import io.github.mzmine.modules.io.projectsave.FeatureListSaveTask;
+import io.github.mzmine.modules.io.projectsave.RawDataFileSnapshotWriter;
+import io.github.mzmine.project.impl.IMSRawDataFileImpl;
+import io.github.mzmine.project.impl.RawDataFileImpl;
+import io.github.mzmine.util.MemoryMapStorage;
+import io.github.mzmine.util.ParsingUtils;
+import io.github.mzmine.util.ZipUtils;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.DoubleBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.BooleanSupplier;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.ZipFile;
+import javafx.scene.paint.Color;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.events.XMLEvent;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+/**
+ * Loads the raw data file snapshots saved by the {@link RawDataFileSnapshotWriter}. The data points
+ * and mass lists of the scans and mobility scans are views of the memory mapped value blocks, so
+ * they are neither copied nor parsed. Only the summed data points of ion mobility frames are
+ * copied to the storage of the file.
+ */
+public class RawDataFileSnapshotLoader {
+
+  private static final Logger logger = Logger.getLogger(
+      RawDataFileSnapshotLoader.class.getName());
+  private static final Pattern metadataFilePattern = Pattern.compile(
+      CONST.XML_RAW_FILE_ELEMENT + "_(\\d+)" + RawDataFileSnapshotWriter.METADATA_FILE_SUFFIX);
+
+  private RawDataFileSnapshotLoader() {
+  }
+
+  /**
+   * @return true if the project contains raw data file snapshots.
+   */
+  public static boolean hasSnapshots(@NotNull ZipFile zipFile) {
+    return zipFile.stream()
+        .anyMatch(e -> e.getName().startsWith(RawDataFileSnapshotWriter.SNAPSHOT_FOLDER));
+  }
+
+  /**
+   * Unzips the snapshots to the temp directory and loads the raw data files. The files are not
+   * added to the project.
+   *
+   * @param zipFile          The project file.
+   * @param tempDir          The directory to unzip the snapshots to. Must exist as long as the
+   *                         files are used, because the values are mapped from the unzipped files.
+   * @param allProjectFiles  Files of the project that may be referenced by ms/ms information.
+   * @param canceled         Checked after each file.
+   * @return The files in the order they were saved or null if loading was canceled.
+   */
+  @Nullable
+  public static List<RawDataFile> loadSnapshots(@NotNull ZipFile zipFile, @NotNull Path tempDir,
+      @NotNull List<RawDataFile> allProjectFiles, @NotNull BooleanSupplier canceled)
+      throws IOException, XMLStreamException, ParserConfigurationException, SAXException {
+    ZipUtils.unzipDirectory(RawDataFileSnapshotWriter.SNAPSHOT_FOLDER, zipFile, tempDir.toFile());
+
+    final File folder = new File(tempDir.toFile(), RawDataFileSnapshotWriter.SNAPSHOT_FOLDER);
+    final File[] metadataFiles = folder.listFiles(
+        (dir, name) -> metadataFilePattern.matcher(name).matches());
+    if (metadataFiles == null || metadataFiles.length == 0) {
+      throw new IOException("Project does not contain raw data snapshots.");
+    }
+
+    // restore the order of the files in the project
+    final File[] ordered = new File[metadataFiles.length];
+    for (File metadataFile : metadataFiles) {
+      final Matcher matcher = metadataFilePattern.matcher(metadataFile.getName());
+      if (!matcher.matches() || Integer.parseInt(matcher.group(1)) >= ordered.length) {
+        throw new IOException("Unexpected raw data snapshot " + metadataFile.getName());
+      }
+      ordered[Integer.parseInt(matcher.group(1))] = metadataFile;
+    }
+
+    final List<RawDataFile> files = new ArrayList<>(ordered.length);
+    final List<RawDataFile> referencedFiles = new ArrayList<>(allProjectFiles);
+    for (int i = 0; i < ordered.length; i++) {
+      if (canceled.getAsBoolean()) {
+        return null;
+      }
+      final String prefix = CONST.XML_RAW_FILE_ELEMENT + "_" + i;
+      final SnapshotMetadata metadata = readMetadata(ordered[i]);
+      final RawDataFile file = metadata.file();
+      final File scansFile = new File(folder, prefix + RawDataFileSnapshotWriter.SCANS_FILE_SUFFIX);
+      final File blockFile = new File(folder, prefix + FeatureListSaveTask.BINARY_FILE_SUFFIX);
+
+      readScans(file, metadata.mobilityType(), scansFile, blockFile);
+      referencedFiles.add(file);
+      readMsMsInfos(file, scansFile, referencedFiles);
+
+      files.add(file);
+      logger.finest(() -> "Loaded snapshot of raw data file " + file.getName() + " with "
+                          + file.getNumOfScans() + " scans.");
+    }
+    return files;
+  }
+
+  /**
+   * @param mobilityType The mobility type of ion mobility files, null for other files.
+   */
+  private record SnapshotMetadata(@NotNull RawDataFile file,
+                                  @Nullable MobilityType mobilityType) {
+
+  }
+
+  private static SnapshotMetadata readMetadata(File metadataFile)
+      throws IOException, ParserConfigurationException, SAXException {
+    final Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder()
+        .parse(metadataFile);
+    final Element fileElement = (Element) document.getElementsByTagName(
+        CONST.XML_RAW_FILE_ELEMENT).item(0);
+
+    final String name = fileElement.getElementsByTagName(CONST.XML_RAW_FILE_NAME_ELEMENT).item(0)
+        .getTextContent();
+    final String path = ParsingUtils.readNullableString(
+        fileElement.getElementsByTagName(CONST.XML_RAW_FILE_PATH_ELEMENT).item(0)
+            .getTextContent());
+    final Color color = Color.web(
+        fileElement.getElementsByTagName(CONST.XML_RAW_FILE_COLOR_ELEMENT).item(0)
+            .getTextContent());
+
+    final NodeList mobilityTypeElements = fileElement.getElementsByTagName(
+        CONST.XML_MOBILITY_TYPE_ELEMENT);
+    final MobilityType mobilityType = mobilityTypeElements.getLength() == 0 ? null
+        : MobilityType.valueOf(mobilityTypeElements.item(0).getTextContent());
+
+    final RawDataFile file;
+    if (mobilityType != null) {
+      final IMSRawDataFile imsFile = new IMSRawDataFileImpl(name, path,
+          MemoryMapStorage.forRawDataFile(), color);
+      final NodeList calibrationElements = fileElement.getElementsByTagName(
+          CCSCalibration.XML_ELEMENT);
+      if (calibrationElements.getLength() > 0) {
+        imsFile.setCCSCalibration(
+            CCSCalibration.loadFromXML((Element) calibrationElements.item(0)));
+      }
+      file = imsFile;
+    } else {
+      file = new RawDataFileImpl(name, path, MemoryMapStorage.forRawDataFile(), color);
+    }
+
+    final NodeList methodElements = fileElement.getElementsByTagName(
+        CONST.XML_FLIST_APPLIED_METHOD_ELEMENT);
+    for (int i = 0; i < methodElements.getLength(); i++) {
+      file.getAppliedMethods()
+          .add(SimpleFeatureListAppliedMethod.loadValueFromXML((Element) methodElements.item(i)));
+    }
+    return new SnapshotMetadata(file, mobilityType);
+  }
+
+  /**
+   * Creates the scans and mass lists. Ms/ms information may reference scans that are not loaded
+   * yet, so it is read in a second pass, see {@link #readMsMsInfos(RawDataFile, File, List)}.
+   *
+   * @param mobilityType The mobility type of the frames, null if the file is not an ion mobility
+   *                     file.
+   */
+  private static void readScans(RawDataFile file, @Nullable MobilityType mobilityType,
+      File scansFile, File blockFile) throws IOException, XMLStreamException {
+    try (InputStream is = new FileInputStream(scansFile)) {
+      final XMLInputFactory xif = XMLInputFactory.newInstance();
+      final XMLStreamReader reader = new BinaryBlockXMLStreamReader(
+          xif.createXMLStreamReader(is), blockFile);
+
+      while (reader.hasNext()) {
+        if (reader.next() == XMLEvent.START_ELEMENT && reader.getLocalName()
+            .equals(CONST.XML_RAW_FILE_SCAN_ELEMENT)) {
+          file.addScan(readScan(reader, file, mobilityType));
+        }
+      }
+    }
+  }
+
+  private static Scan readScan(XMLStreamReader reader, RawDataFile file,
+      @Nullable MobilityType mobilityType) throws XMLStreamException {
+    final int scanNumber = Integer.parseInt(
+        reader.getAttributeValue(null, CONST.XML_SCAN_NUMBER_ATTR));
+    final int msLevel = Integer.parseInt(reader.getAttributeValue(null, CONST.XML_MSLEVEL_ATTR));
+    final float rt = Float.parseFloat(reader.getAttributeValue(null, CONST.XML_RT_ATTR));
+    final PolarityType polarity = PolarityType.valueOf(
+        reader.getAttributeValue(null, CONST.XML_POLARITY_ATTR));
+    final MassSpectrumType spectrumType = MassSpectrumType.valueOf(
+        reader.getAttributeValue(null, CONST.XML_SPECTRUM_TYPE_ATTR));
+    final String scanDefinition = ParsingUtils.readNullableString(
+        reader.getAttributeValue(null, CONST.XML_SCAN_DEF_ATTR));
+    final Range<Double> mzRange = ParsingUtils.readAttributeValueOrDefault(reader,
+        CONST.XML_SCAN_MZ_RANGE_ATTR, null, ParsingUtils::stringToDoubleRange);
+    final Float injectionTime = ParsingUtils.readAttributeValueOrDefault(reader,
+        CONST.XML_INJECTION_TIME_ATTR, null, Float::parseFloat);
+
+    DoubleBuffer mzs = null;
+    DoubleBuffer intensities = null;
+    DoubleBuffer massListMzs = null;
+    DoubleBuffer massListIntensities = null;
+    // mobility scans of frames
+    double[] mobilities = null;
+    int[] mobilityScanOffsets = null;
+    DoubleBuffer mobilityScanMzs = null;
+    DoubleBuffer mobilityScanIntensities = null;
+    int[] mobilityMassListOffsets = null;
+    DoubleBuffer mobilityMassListMzs = null;
+    DoubleBuffer mobilityMassListIntensities = null;
+    boolean inMassList = false;
+    boolean inMobilityScans = false;
+    int msMsInfoDepth = 0;
+
+    while (reader.hasNext()) {
+      final int next = reader.next();
+      if (next == XMLEvent.END_ELEMENT) {
+        switch (reader.getLocalName()) {
+          case CONST.XML_RAW_FILE_SCAN_ELEMENT -> {
+            final SimpleScan scan;
+            if (mobilityType != null) {
+              final SimpleFrame frame = new SimpleFrame(file, scanNumber, msLevel, rt,
+                  toArray(mzs), toArray(intensities), spectrumType, polarity, scanDefinition,
+                  mzRange, mobilityType, null, injectionTime);
+              if (mobilities != null) {
+                frame.setMobilities(mobilities);
+              }
+              if (mobilityScanOffsets != null) {
+                final MobilityScanStorage storage = frame.setMobilityScans(mobilityScanMzs,
+                    mobilityScanIntensities, mobilityScanOffsets);
+                if (mobilityMassListOffsets != null) {
+                  storage.setMassLists(mobilityMassListMzs, mobilityMassListIntensities,
+                      mobilityMassListOffsets);
+                }
+              }
+              scan = frame;
+            } else {
+              scan = new SimpleScan(file, scanNumber, msLevel, rt, null, mzs, intensities,
+                  spectrumType, polarity, scanDefinition, mzRange, injectionTime);
+            }
+            if (massListMzs != null) {
+              scan.addMassList(new SimpleMassList(massListMzs, massListIntensities));
+            }
+            return scan;
+          }
+          case CONST.XML_MASS_LIST_ELEMENT -> inMassList = false;
+          case CONST.XML_MOBILITY_SCANS_ELEMENT -> inMobilityScans = false;
+          case MsMsInfo.XML_ELEMENT -> msMsInfoDepth--;
+        }
+      } else if (next == XMLEvent.START_ELEMENT && msMsInfoDepth == 0) {
+        // the values are views of the mapped block, so the storage is only used for text values
+        switch (reader.getLocalName()) {
+          case CONST.XML_MASS_LIST_ELEMENT -> inMassList = true;
+          case CONST.XML_MOBILITY_SCANS_ELEMENT -> inMobilityScans = true;
+          case CONST.XML_MOBILITY_VALUES_ELEMENT ->
+              mobilities = BinaryBlockXMLStreamReader.readDoubles(reader);
+          case CONST.XML_STORAGE_OFFSETS_ELEMENT -> {
+            if (inMassList) {
+              mobilityMassListOffsets = BinaryBlockXMLStreamReader.readInts(reader);
+            } else {
+              mobilityScanOffsets = BinaryBlockXMLStreamReader.readInts(reader);
+            }
+          }
+          case CONST.XML_MZ_VALUES_ELEMENT -> {
+            if (inMobilityScans && inMassList) {
+              mobilityMassListMzs = BinaryBlockXMLStreamReader.readDoubleBuffer(reader, null);
+            } else if (inMobilityScans) {
+              mobilityScanMzs = BinaryBlockXMLStreamReader.readDoubleBuffer(reader, null);
+            } else if (inMassList) {
+              massListMzs = BinaryBlockXMLStreamReader.readDoubleBuffer(reader, null);
+            } else {
+              mzs = BinaryBlockXMLStreamReader.readDoubleBuffer(reader,
+                  file.getMemoryMapStorage());
+            }
+          }
+          case CONST.XML_INTENSITY_VALUES_ELEMENT -> {
+            if (inMobilityScans && inMassList) {
+              mobilityMassListIntensities = BinaryBlockXMLStreamReader.readDoubleBuffer(reader,
+                  null);
+            } else if (inMobilityScans) {
+              mobilityScanIntensities = BinaryBlockXMLStreamReader.readDoubleBuffer(reader, null);
+            } else if (inMassList) {
+              massListIntensities = BinaryBlockXMLStreamReader.readDoubleBuffer(reader, null);
+            } else {
+              intensities = BinaryBlockXMLStreamReader.readDoubleBuffer(reader,
+                  file.getMemoryMapStorage());
+            }
+          }
+          case MsMsInfo.XML_ELEMENT -> msMsInfoDepth++;
+        }
+      } else if (next == XMLEvent.START_ELEMENT && reader.getLocalName()
+          .equals(MsMsInfo.XML_ELEMENT)) {
+        msMsInfoDepth++;
+      }
+    }
+    throw new XMLStreamException("Scan element was not closed.", reader.getLocation());
+  }
+
+  private static double[] toArray(DoubleBuffer values) {
+    final double[] array = new double[values.capacity()];
+    values.get(0, array);
+    return array;
+  }
+
+  /**
+   * Sets the ms/ms information of the scans and the precursor information of ion mobility frames.
+   * All scans of the file must be loaded.
+   */
+  private static void readMsMsInfos(RawDataFile file, File scansFile,
+      List<RawDataFile> referencedFiles) throws IOException, XMLStreamException {
+    try (InputStream is = new FileInputStream(scansFile)) {
+      final XMLInputFactory xif = XMLInputFactory.newInstance();
+      final XMLStreamReader reader = xif.createXMLStreamReader(is);
+
+      int scanIndex = -1;
+      int msMsInfoDepth = 0;
+      // precursor information of the current frame
+      Set<PasefMsMsInfo> imsMsMsInfos = null;
+      while (reader.hasNext()) {
+        final int next = reader.next();
+        if (next == XMLEvent.END_ELEMENT && reader.getLocalName().equals(MsMsInfo.XML_ELEMENT)) {
+          msMsInfoDepth--;
+        } else if (next == XMLEvent.END_ELEMENT && reader.getLocalName()
+            .equals(CONST.XML_IMS_MSMS_INFOS_ELEMENT)) {
+          ((SimpleFrame) file.getScan(scanIndex)).setPrecursorInfos(imsMsMsInfos);
+          imsMsMsInfos = null;
+        }
+        if (next != XMLEvent.START_ELEMENT) {
+          continue;
+        }
+
+        final String localName = reader.getLocalName();
+        if (localName.equals(CONST.XML_RAW_FILE_SCAN_ELEMENT)) {
+          scanIndex++;
+        } else if (localName.equals(CONST.XML_IMS_MSMS_INFOS_ELEMENT)) {
+          imsMsMsInfos = new HashSet<>();
+        } else if (localName.equals(MsMsInfo.XML_ELEMENT)) {
+          if (msMsInfoDepth > 0) {
+            msMsInfoDepth++;
+            continue;
+          }
+          final MsMsInfo info = MsMsInfo.loadFromXML(reader, file, referencedFiles);
+          if (imsMsMsInfos != null) {
+            imsMsMsInfos.add((PasefMsMsInfo) info);
+          } else {
+            ((SimpleScan) file.getScan(scanIndex)).setMsMsInfo(info);
+          }
+          // some infos are read from the attributes only, others consume their end element
+          if (reader.isStartElement()) {
+            msMsInfoDepth++;
+          }
+        }
+      }
+    }
+  }
+}
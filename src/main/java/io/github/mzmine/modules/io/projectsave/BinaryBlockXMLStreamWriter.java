@@ -0,0 +1,243 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.io.projectsave;
+
+import com.sun.xml.txw2.output.IndentingXMLStreamWriter;
+import io.github.mzmine.modules.io.projectload.version_3_0.CONST;
+import io.github.mzmine.util.ParsingUtils;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Writes the feature list data xml and moves numeric series (m/z, intensity, mobility values and
+ * scan indices) to a separate binary block instead of formatting them as text. The values are
+ * appended to the block in little endian byte order and the xml element only references the
+ * position by the {@link CONST#XML_BINARY_OFFSET_ATTR} attribute. The number of values is given by
+ * the {@link CONST#XML_NUM_VALUES_ATTR} attribute, as before.
+ * <p></p>
+ * The block is buffered in a temporary file and stored as a separate zip entry after the xml, see
+ * {@link #writeBlockEntry(ZipOutputStream, String)}. A single series never crosses a multiple
+ * of the segment size ({@link #SEGMENT_SIZE} by default), so the block can be memory mapped in segments on load.
+ *
+ * @see io.github.mzmine.modules.io.projectload.BinaryBlockXMLStreamReader
+ */
+public class BinaryBlockXMLStreamWriter extends IndentingXMLStreamWriter {
+
+  /**
+   * Maximum size of a single memory mapped segment of the binary block.
+   */
+  public static final long SEGMENT_SIZE = 1L << 30;
+
+  private final long segmentSize;
+  private final File blockFile;
+  private final FileChannel channel;
+  private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20)
+      .order(ByteOrder.LITTLE_ENDIAN);
+  private final CRC32 crc = new CRC32();
+  private long position = 0;
+  private boolean handedOver = false;
+
+  public BinaryBlockXMLStreamWriter(@NotNull XMLStreamWriter writer) throws IOException {
+    this(writer, SEGMENT_SIZE);
+  }
+
+  /**
+   * @param segmentSize The maximum size of a memory mapped segment. The block must be read with
+   *                    the same segment size.
+   */
+  public BinaryBlockXMLStreamWriter(@NotNull XMLStreamWriter writer, long segmentSize)
+      throws IOException {
+    super(writer);
+    this.segmentSize = segmentSize;
+    blockFile = File.createTempFile("mzmine_featurelist_values", ".tmp");
+    blockFile.deleteOnExit();
+    channel = FileChannel.open(blockFile.toPath(), StandardOpenOption.READ,
+        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+  }
+
+  /**
+   * Writes the values to the binary block, if the writer is a {@link BinaryBlockXMLStreamWriter}.
+   * Otherwise, the values are written as characters. Must be called after the start element and
+   * its other attributes were written.
+   */
+  public static void writeValues(@NotNull XMLStreamWriter writer, @NotNull DoubleBuffer values)
+      throws XMLStreamException {
+    final long length = (long) values.capacity() * Double.BYTES;
+    if (writer instanceof BinaryBlockXMLStreamWriter binary && length <= binary.segmentSize) {
+      writer.writeAttribute(CONST.XML_BINARY_OFFSET_ATTR,
+          String.valueOf(binary.appendDoubles(values)));
+    } else {
+      writer.writeCharacters(ParsingUtils.doubleBufferToString(values));
+    }
+  }
+
+  /**
+   * Writes the values to the binary block, if the writer is a {@link BinaryBlockXMLStreamWriter}.
+   * Otherwise, the values are written as characters. Must be called after the start element and
+   * its other attributes were written.
+   */
+  public static void writeValues(@NotNull XMLStreamWriter writer, @NotNull int[] values)
+      throws XMLStreamException {
+    final long length = (long) values.length * Integer.BYTES;
+    if (writer instanceof BinaryBlockXMLStreamWriter binary && length <= binary.segmentSize) {
+      writer.writeAttribute(CONST.XML_BINARY_OFFSET_ATTR,
+          String.valueOf(binary.appendInts(values)));
+    } else {
+      writer.writeCharacters(ParsingUtils.intArrayToString(values, values.length));
+    }
+  }
+
+  private long appendDoubles(DoubleBuffer values) throws XMLStreamException {
+    try {
+      final long offset = startBlock((long) values.capacity() * Double.BYTES);
+      for (int i = 0, length = values.capacity(); i < length; i++) {
+        if (buffer.remaining() < Double.BYTES) {
+          flushBuffer();
+        }
+        buffer.putDouble(values.get(i));
+      }
+      return offset;
+    } catch (IOException e) {
+      throw new XMLStreamException("Cannot write values to binary block.", e);
+    }
+  }
+
+  private long appendInts(int[] values) throws XMLStreamException {
+    try {
+      final long offset = startBlock((long) values.length * Integer.BYTES);
+      for (final int value : values) {
+        if (buffer.remaining() < Integer.BYTES) {
+          flushBuffer();
+        }
+        buffer.putInt(value);
+      }
+      return offset;
+    } catch (IOException e) {
+      throw new XMLStreamException("Cannot write values to binary block.", e);
+    }
+  }
+
+  /**
+   * Pads the block to the next segment, if the values would not fit into the current segment.
+   *
+   * @return the offset of the values
+   */
+  private long startBlock(long length) throws IOException {
+    if (length > 0 && position / segmentSize != (position + length - 1) / segmentSize) {
+      long padding = segmentSize - position % segmentSize;
+      while (padding-- > 0) {
+        if (!buffer.hasRemaining()) {
+          flushBuffer();
+        }
+        buffer.put((byte) 0);
+      }
+      position += segmentSize - position % segmentSize;
+    }
+    final long offset = position;
+    position += length;
+    return offset;
+  }
+
+  private void flushBuffer() throws IOException {
+    buffer.flip();
+    // the crc is needed to store the block uncompressed
+    crc.update(buffer.duplicate());
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+    buffer.clear();
+  }
+
+  /**
+   * Finishes the binary block and stores it as an uncompressed zip entry. Stored entries need the
+   * size and crc in advance, but the values hardly compress anyway and the entry can be mapped
+   * directly after unzipping. The stream is not closed.
+   *
+   * @param zos       The zip stream. The previous entry is closed by this method.
+   * @param entryName The name of the new entry.
+   */
+  public void writeBlockEntry(@NotNull ZipOutputStream zos, @NotNull String entryName)
+      throws IOException {
+    flushBuffer();
+
+    final ZipEntry entry = new ZipEntry(entryName);
+    entry.setMethod(ZipEntry.STORED);
+    entry.setSize(position);
+    entry.setCompressedSize(position);
+    entry.setCrc(crc.getValue());
+    zos.putNextEntry(entry);
+
+    final WritableByteChannel out = Channels.newChannel(zos);
+    long transferred = 0;
+    while (transferred < position) {
+      transferred += channel.transferTo(transferred, position - transferred, out);
+    }
+    zos.closeEntry();
+  }
+
+  /**
+   * Finishes the binary block and hands the temporary block file over as an entry, so it can be
+   * appended to the zip by another thread. {@link #discardBlock()} does not delete the file
+   * afterwards.
+   *
+   * @param entryName The name of the entry.
+   * @return The entry, stored without compression.
+   */
+  public TempZipEntry finishTempEntry(@NotNull String entryName) throws IOException {
+    flushBuffer();
+    channel.close();
+    handedOver = true;
+    return new TempZipEntry(entryName, blockFile, position, crc.getValue(), false);
+  }
+
+  /**
+   * Closes the temporary block file and deletes it, unless it was handed over by {@link
+   * #finishTempEntry(String)}. The underlying xml writer is closed by {@link #close()}.
+   */
+  public void discardBlock() {
+    try {
+      channel.close();
+    } catch (IOException e) {
+      // nothing to do
+    }
+    if (!handedOver) {
+      blockFile.delete();
+    }
+  }
+}
@@ -25,7 +25,6 @@
 
 package io.github.mzmine.modules.io.projectsave;
 
-import com.sun.xml.txw2.output.IndentingXMLStreamWriter;
 import io.github.mzmine.datamodel.FeatureStatus;
 import io.github.mzmine.datamodel.RawDataFile;
 import io.github.mzmine.datamodel.Scan;
@@ -41,20 +40,20 @@ import io.github.mzmine.modules.io.projectload.version_3_0.CONST;
 import io.github.mzmine.taskcontrol.AbstractTask;
 import io.github.mzmine.taskcontrol.TaskStatus;
 import io.github.mzmine.util.ParsingUtils;
-import io.github.mzmine.util.StreamCopy;
+import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map.Entry;
+import java.util.concurrent.CompletableFuture;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
@@ -76,22 +75,29 @@ public class FeatureListSaveTask extends AbstractTask {
 
   public static final String METADATA_FILE_SUFFIX = "_metadata.xml";
   public static final String DATA_FILE_SUFFIX = "_data.xml";
+  public static final String BINARY_FILE_SUFFIX = "_values.bin";
   public static final String FLIST_FOLDER = "featurelists/";
   private static final Logger logger = Logger.getLogger(FeatureListSaveTask.class.getName());
   private static final IDType idType = new IDType();
 
   private final ModularFeatureList flist;
-  private final ZipOutputStream zos;
+  private final CompletableFuture<List<TempZipEntry>> result = new CompletableFuture<>();
+  private final List<TempZipEntry> entries = new ArrayList<>(3);
+  private final List<File> tempFiles = new ArrayList<>(2);
   private final int rows;
-  private final StreamCopy copy;
   private int processedRows = 0;
 
-  public FeatureListSaveTask(ModularFeatureList flist, ZipOutputStream zos) {
+  /**
+   * The feature list is written to temporary entries, so multiple feature lists can be saved in
+   * parallel. The entries are available via {@link #getResult()} after the whole feature list was
+   * saved.
+   *
+   * @param flist The feature list.
+   */
+  public FeatureListSaveTask(ModularFeatureList flist) {
     super(null, Instant.now());
     this.flist = flist;
-    this.zos = zos;
     rows = flist.getNumberOfRows();
-    copy = new StreamCopy();
   }
 
   public static String getDataFileName(String flistname) {
@@ -102,6 +108,10 @@ public class FeatureListSaveTask extends AbstractTask {
     return FLIST_FOLDER + CONST.XML_FEATURE_LIST_ELEMENT + "_" + flistname + METADATA_FILE_SUFFIX;
   }
 
+  public static String getBinaryFileName(String flistname) {
+    return FLIST_FOLDER + CONST.XML_FEATURE_LIST_ELEMENT + "_" + flistname + BINARY_FILE_SUFFIX;
+  }
+
   @Override
   public String getTaskDescription() {
     return "Saving feature list " + flist.getName();
@@ -109,33 +119,54 @@ public class FeatureListSaveTask extends AbstractTask {
 
   @Override
   public double getFinishedPercentage() {
-    return (((double) processedRows / rows) + copy.getProgress()) / 2;
+    return rows == 0 ? 0 : (double) processedRows / rows;
+  }
+
+  /**
+   * @return Completes with the temporary zip entries once the feature list was saved. Completes
+   * exceptionally if saving failed and is cancelled if this task is cancelled.
+   */
+  public CompletableFuture<List<TempZipEntry>> getResult() {
+    return result;
+  }
+
+  @Override
+  public void cancel() {
+    result.cancel(false);
+    super.cancel();
   }
 
   @Override
   public void run() {
     setStatus(TaskStatus.PROCESSING);
 
-    if (!saveFeatureData()) {
+    if (!saveFeatureData() || !saveAppliedMethods() || isCanceled()) {
+      entries.forEach(TempZipEntry::delete);
+      tempFiles.forEach(File::delete);
+      // no-op if the task was cancelled
+      result.completeExceptionally(
+          new IOException("Could not save feature list " + flist.getName()));
       return;
     }
 
-    saveAppliedMethods();
-
+    if (!result.complete(List.copyOf(entries))) {
+      // cancelled in the meantime
+      entries.forEach(TempZipEntry::delete);
+      return;
+    }
     setStatus(TaskStatus.FINISHED);
   }
 
-  private boolean saveAppliedMethods() {
-    logger.finest(() -> "Creating temporary file for feature list " + flist.getName() + ".");
-    File tempFile;
-    try {
-      tempFile = File.createTempFile("mzmine_featurelist_applied_methods", ".tmp");
-    } catch (IOException e) {
-      logger.log(Level.SEVERE, "Cannot create temporary file.", e);
-      setStatus(TaskStatus.ERROR);
-      return false;
-    }
+  /**
+   * Creates a temporary file that is deleted if saving fails.
+   */
+  private File createTempFile(String prefix) throws IOException {
+    final File file = File.createTempFile(prefix, ".tmp");
+    tempFiles.add(file);
+    return file;
+  }
 
+  private boolean saveAppliedMethods() {
     try {
       final DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
       final DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
@@ -152,21 +183,14 @@ public class FeatureListSaveTask extends AbstractTask {
       transformer.setOutputProperty(OutputKeys.ENCODING, "UTF-8");
       transformer.setOutputProperty("{http://xml.apache.org/xslt}indent-amount", "4");
 
-      try (var stream = new FileOutputStream(tempFile)) {
-        StreamResult result = new StreamResult(stream);
-        DOMSource source = new DOMSource(document);
-        transformer.transform(source, result);
-      } catch (IOException e) {
-        e.printStackTrace();
-      }
-
-      zos.putNextEntry(new ZipEntry(getMetadataFileName(flist.getName())));
-
-      try (InputStream is = new FileInputStream(tempFile)) {
-        copy.copy(is, zos);
+      final File tempFile = createTempFile("mzmine_featurelist_applied_methods");
+      final CRC32 crc = new CRC32();
+      try (OutputStream os = new CheckedOutputStream(
+          new BufferedOutputStream(new FileOutputStream(tempFile)), crc)) {
+        transformer.transform(new DOMSource(document), new StreamResult(os));
       }
-
-      tempFile.delete();
+      entries.add(new TempZipEntry(getMetadataFileName(flist.getName()), tempFile,
+          tempFile.length(), crc.getValue(), true));
     } catch (ParserConfigurationException | TransformerException | IOException e) {
       logger.log(Level.SEVERE, e.getMessage(), e);
       setStatus(TaskStatus.ERROR);
@@ -226,62 +250,56 @@ public class FeatureListSaveTask extends AbstractTask {
     root.appendChild(dataFilesListElement);
   }
 
+  /**
+   * Writes the feature list data xml to a temporary entry. Series values are collected in a binary
+   * block by the {@link BinaryBlockXMLStreamWriter}, which is handed over as a separate entry.
+   */
   private boolean saveFeatureData() {
-    logger.finest(() -> "Creating temporary file for feature list " + flist.getName() + ".");
-    File tempFile;
+    BinaryBlockXMLStreamWriter writer = null;
     try {
-      tempFile = File.createTempFile("mzmine_featurelist_data", ".tmp");
-    } catch (IOException e) {
-      logger.log(Level.SEVERE, "Cannot create temporary file.", e);
-      setStatus(TaskStatus.ERROR);
-      return false;
-    }
+      final File tempFile = createTempFile("mzmine_featurelist_data");
+      final CRC32 crc = new CRC32();
 
-    try (OutputStream os = new FileOutputStream(tempFile)) {
-      final XMLOutputFactory xof = XMLOutputFactory.newInstance();
-      final XMLStreamWriter writer = new IndentingXMLStreamWriter(xof.createXMLStreamWriter(os));
-      writer.writeStartDocument("UTF-8", "1.0");
+      try (OutputStream os = new CheckedOutputStream(
+          new BufferedOutputStream(new FileOutputStream(tempFile)), crc)) {
+        final XMLOutputFactory xof = XMLOutputFactory.newInstance();
+        writer = new BinaryBlockXMLStreamWriter(xof.createXMLStreamWriter(os, "UTF-8"));
+        writer.writeStartDocument("UTF-8", "1.0");
 
-      writer.writeStartElement("featurelist");
-      writer.writeAttribute(CONST.XML_FLIST_NAME_ATTR, flist.getName());
-      writer.writeAttribute(CONST.XML_NUM_ROWS_ATTR, String.valueOf(flist.getNumberOfRows()));
-      writer.writeAttribute(CONST.XML_DATE_CREATED_ATTR, flist.getDateCreated());
+        writer.writeStartElement("featurelist");
+        writer.writeAttribute(CONST.XML_FLIST_NAME_ATTR, flist.getName());
+        writer.writeAttribute(CONST.XML_NUM_ROWS_ATTR, String.valueOf(flist.getNumberOfRows()));
+        writer.writeAttribute(CONST.XML_DATE_CREATED_ATTR, flist.getDateCreated());
 
-      for (FeatureListRow r : flist.getRows()) {
-        if (isCanceled()) {
-          break;
-        }
+        for (FeatureListRow r : flist.getRows()) {
+          if (isCanceled()) {
+            return false;
+          }
 
-        ModularFeatureListRow row = (ModularFeatureListRow) r;
-        writeRow(writer, row);
+          ModularFeatureListRow row = (ModularFeatureListRow) r;
+          writeRow(writer, row);
 
-        processedRows++;
+          processedRows++;
+        }
+        writer.writeEndElement();
+        writer.writeEndDocument();
+        writer.flush();
+        writer.close();
       }
-      writer.writeEndElement();
-      writer.writeEndDocument();
-      writer.flush();
-      writer.close();
-    } catch (IOException | XMLStreamException e) {
-      logger.log(Level.SEVERE, e.getMessage(), e);
-      setStatus(TaskStatus.ERROR);
-      return false;
-    }
 
-    if (isCanceled()) {
-      tempFile.delete();
-      return false;
-    }
-
-    try (FileInputStream is = new FileInputStream(tempFile)) {
-      zos.putNextEntry(new ZipEntry(getDataFileName(flist.getName())));
-      copy.copy(is, zos);
-    } catch (IOException e) {
+      entries.add(new TempZipEntry(getDataFileName(flist.getName()), tempFile, tempFile.length(),
+          crc.getValue(), true));
+      entries.add(writer.finishTempEntry(getBinaryFileName(flist.getName())));
+    } catch (IOException | XMLStreamException e) {
       logger.log(Level.SEVERE, e.getMessage(), e);
       setStatus(TaskStatus.ERROR);
       return false;
+    } finally {
+      if (writer != null) {
+        writer.discardBlock();
+      }
     }
 
-//    tempFile.delete();
     return true;
   }
 
@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.io.projectsave;
+
+import java.util.zip.Deflater;
+
+/**
+ * Compression of the entries in a project file.
+ */
+public enum ProjectCompression {
+  STORED("Stored (fastest/large)",
+      "No compression. Fastest option for local saves, creates the largest files.",
+      Deflater.NO_COMPRESSION), //
+  FAST("Fast", "Fast compression.", Deflater.BEST_SPEED), //
+  DEFAULT("Default", "Default compression.", Deflater.DEFAULT_COMPRESSION), //
+  BEST("Best (slow/small)", "Best compression, creates the smallest files.",
+      Deflater.BEST_COMPRESSION);
+
+  public final String name;
+  public final String description;
+  public final int level;
+
+  ProjectCompression(String name, String description, int level) {
+    this.name = name;
+    this.description = description;
+    this.level = level;
+  }
+
+  @Override
+  public String toString() {
+    return name;
+  }
+
+  public String getDescription() {
+    return description;
+  }
+}
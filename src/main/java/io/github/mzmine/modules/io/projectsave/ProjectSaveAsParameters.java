@@ -30,6 +30,7 @@ import io.github.mzmine.main.MZmineCore;
 import io.github.mzmine.parameters.Parameter;
 import io.github.mzmine.parameters.dialogs.ParameterSetupDialog;
 import io.github.mzmine.parameters.impl.SimpleParameterSet;
+import io.github.mzmine.parameters.parametertypes.BooleanParameter;
 import io.github.mzmine.parameters.parametertypes.ComboParameter;
 import io.github.mzmine.parameters.parametertypes.filenames.FileNameParameter;
 import io.github.mzmine.parameters.parametertypes.filenames.FileSelectionType;
@@ -60,10 +61,20 @@ public class ProjectSaveAsParameters extends SimpleParameterSet {
       ProjectSaveOption.REFERENCING);
   public static final FileNameParameter projectFile = new FileNameParameter("Project file",
       "File name of project to be saved", extensions, FileSelectionType.SAVE);
+  public static final ComboParameter<ProjectCompression> compression = new ComboParameter<>(
+      "Compression",
+      "Compression of the project file. Stored is the fastest option for local saves but creates "
+      + "larger files.", ProjectCompression.values(), ProjectCompression.DEFAULT);
+  public static final BooleanParameter rawDataSnapshot = new BooleanParameter(
+      "Embed raw data snapshot",
+      "Stores the processed scans and mass lists of the raw data files in the project, so the project "
+      + "opens without importing and processing the raw data files again. Increases the project size. "
+      + "Not supported for imaging files.",
+      false);
   private static final Logger logger = Logger.getLogger(ProjectSaveAsParameters.class.getName());
 
   public ProjectSaveAsParameters() {
-    super(new Parameter[]{projectFile, option});
+    super(new Parameter[]{projectFile, option, compression, rawDataSnapshot});
   }
 
   @Override
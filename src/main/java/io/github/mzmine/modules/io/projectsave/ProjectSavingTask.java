@@ -27,12 +27,12 @@ package io.github.mzmine.modules.io.projectsave;
 
 import io.github.mzmine.datamodel.MZmineProject;
 import io.github.mzmine.datamodel.RawDataFile;
-import io.github.mzmine.datamodel.features.FeatureList;
 import io.github.mzmine.datamodel.features.ModularFeatureList;
 import io.github.mzmine.main.MZmineCore;
 import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.project.impl.MZmineProjectImpl;
 import io.github.mzmine.taskcontrol.AbstractTask;
+import io.github.mzmine.taskcontrol.Task;
 import io.github.mzmine.taskcontrol.TaskStatus;
 import io.github.mzmine.util.ExceptionUtils;
 import io.github.mzmine.util.StreamCopy;
@@ -45,6 +45,11 @@ import java.time.Instant;
 import java.util.Hashtable;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Logger;
 import java.util.zip.ZipEntry;
@@ -62,6 +67,10 @@ public class ProjectSavingTask extends AbstractTask {
   public static final String PARAMETERS_FILENAME = "User parameters.xml";
   private static final Logger logger = Logger.getLogger(ProjectSavingTask.class.getName());
   private final ProjectSaveOption projectType;
+  private final boolean saveRawDataSnapshots;
+  private final ProjectCompression compression;
+  // finished entries of the feature list tasks, appended to the zip by this task only
+  private volatile List<FeatureListSaveTask> featureListSaveTasks = List.of();
 
   private final File saveFile;
   private final MZmineProjectImpl savedProject;
@@ -84,6 +93,8 @@ public class ProjectSavingTask extends AbstractTask {
     this.savedProject = (MZmineProjectImpl) project;
     this.saveFile = parameters.getValue(ProjectSaveAsParameters.projectFile);
     this.projectType = parameters.getValue(ProjectSaveAsParameters.option);
+    this.saveRawDataSnapshots = parameters.getValue(ProjectSaveAsParameters.rawDataSnapshot);
+    this.compression = parameters.getValue(ProjectSaveAsParameters.compression);
     dataFilesIDMap = new Hashtable<>();
     this.totalSaveItems = project.getDataFiles().length + project.getCurrentFeatureLists().size();
   }
@@ -145,6 +156,8 @@ public class ProjectSavingTask extends AbstractTask {
       userParameterSaveHandler.cancel();
     }
 
+    discardFeatureLists();
+
   }
 
   @Override
@@ -175,6 +188,7 @@ public class ProjectSavingTask extends AbstractTask {
       // Create a ZIP stream writing to the temporary file
       FileOutputStream tempStream = new FileOutputStream(tempFile);
       ZipOutputStream zipStream = new ZipOutputStream(tempStream);
+      zipStream.setLevel(compression.level);
 
       // Stage 1 - save version and configuration
       currentStage++;
@@ -187,10 +201,14 @@ public class ProjectSavingTask extends AbstractTask {
         return;
       }
 
+      // feature lists are written to temporary entries in parallel to the raw data files
+      startFeatureListTasks();
+
       // Stage 2 - save RawDataFile objects
       currentStage++;
       saveRawDataFiles(zipStream);
       if (isCanceled()) {
+        discardFeatureLists();
         zipStream.close();
         tempFile.delete();
         return;
@@ -200,6 +218,7 @@ public class ProjectSavingTask extends AbstractTask {
       currentStage++;
       savePeakLists(zipStream);
       if (isCanceled()) {
+        discardFeatureLists();
         zipStream.close();
         tempFile.delete();
         return;
@@ -256,6 +275,7 @@ public class ProjectSavingTask extends AbstractTask {
       e.printStackTrace();
 
       setStatus(TaskStatus.ERROR);
+      discardFeatureLists();
 
       if (currentSavedObjectName == null) {
         setErrorMessage("Failed saving the project: " + ExceptionUtils.exceptionToString(e));
@@ -328,7 +348,8 @@ public class ProjectSavingTask extends AbstractTask {
 
     AtomicBoolean finished = new AtomicBoolean(false);
     rawDataFileSaveHandler = new RawDataFileSaveHandler(savedProject, zipStream,
-        Objects.requireNonNullElse(savedProject.isStandalone(), true), getModuleCallDate());
+        Objects.requireNonNullElse(savedProject.isStandalone(), true), saveRawDataSnapshots,
+        getModuleCallDate());
     rawDataFileSaveHandler.addTaskStatusListener((task, newStatus, oldStatus) -> {
       switch (newStatus) {
         case WAITING, PROCESSING -> {
@@ -359,41 +380,60 @@ public class ProjectSavingTask extends AbstractTask {
   }
 
   /**
-   * Save the feature lists
+   * Starts saving all feature lists to temporary entries in parallel. The entries are appended to
+   * the zip by {@link #savePeakLists(ZipOutputStream)}.
+   */
+  private void startFeatureListTasks() {
+    featureListSaveTasks = savedProject.getCurrentFeatureLists().stream()
+        .map(flist -> new FeatureListSaveTask((ModularFeatureList) flist)).toList();
+    MZmineCore.getTaskController().addTasks(featureListSaveTasks.toArray(Task[]::new));
+  }
+
+  /**
+   * Cancels the feature list tasks and deletes the entries of finished tasks.
+   */
+  private void discardFeatureLists() {
+    for (FeatureListSaveTask task : featureListSaveTasks) {
+      task.cancel();
+      final CompletableFuture<List<TempZipEntry>> result = task.getResult();
+      if (result.isDone() && !result.isCompletedExceptionally()) {
+        result.join().forEach(TempZipEntry::delete);
+      }
+    }
+  }
+
+  /**
+   * Appends the entries of the feature list tasks to the zip in the order the tasks finish. This
+   * is the only thread writing to the zip while the feature lists are saved.
    *
-   * @throws SAXException
-   * @throws TransformerConfigurationException
+   * @throws IOException if a feature list could not be saved.
    */
-  private void savePeakLists(ZipOutputStream zipStream)
-      throws IOException, TransformerConfigurationException, SAXException {
+  private void savePeakLists(ZipOutputStream zipStream) throws IOException, InterruptedException {
+    final BlockingQueue<FeatureListSaveTask> completed = new LinkedBlockingQueue<>();
+    for (FeatureListSaveTask task : featureListSaveTasks) {
+      task.getResult().whenComplete((entries, ex) -> completed.add(task));
+    }
 
-    final List<FeatureList> currentFeatureLists = savedProject.getCurrentFeatureLists();
-    for (FeatureList featureList : currentFeatureLists) {
-      FeatureListSaveTask saveTask = new FeatureListSaveTask((ModularFeatureList) featureList,
-          zipStream);
-
-      AtomicBoolean finished = new AtomicBoolean(false);
-      saveTask.addTaskStatusListener((task, newStatus, oldStatus) -> {
-        switch (newStatus) {
-          case WAITING, PROCESSING -> {
-          }
-          case FINISHED, ERROR, CANCELED -> {
-            finished.set(true);
-          }
-        }
-      });
-      MZmineCore.getTaskController().addTask(saveTask);
-
-      while (!finished.get()) {
-        try {
-          Thread.sleep(50);
-        } catch (InterruptedException e) {
-          e.printStackTrace();
+    for (int i = 0; i < featureListSaveTasks.size() && !isCanceled(); i++) {
+      // cancelling this task cancels all feature list tasks, so this does not block forever
+      final FeatureListSaveTask task = completed.take();
+      // the exceptions below name the feature list
+      currentSavedObjectName = null;
+      final List<TempZipEntry> entries;
+      try {
+        entries = task.getResult().join();
+      } catch (CancellationException e) {
+        if (isCanceled()) {
+          return;
         }
+        throw new IOException(task.getTaskDescription() + " was cancelled.", e);
+      } catch (CompletionException e) {
+        throw new IOException(e.getCause().getMessage(), e.getCause());
       }
 
-      if (isCanceled()) {
-        break;
+      for (TempZipEntry entry : entries) {
+        currentSavedObjectName = entry.name();
+        entry.appendTo(zipStream, compression);
       }
     }
   }
@@ -27,6 +27,7 @@ package io.github.mzmine.modules.io.projectsave;
 
 import io.github.mzmine.datamodel.MZmineProject;
 import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.main.MZmineCore;
 import io.github.mzmine.modules.MZmineProcessingModule;
 import io.github.mzmine.modules.MZmineProcessingStep;
 import io.github.mzmine.modules.batchmode.BatchQueue;
@@ -62,6 +63,7 @@ import java.util.zip.ZipOutputStream;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLStreamException;
 import javax.xml.transform.OutputKeys;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerException;
@@ -91,6 +93,7 @@ public class RawDataFileSaveHandler extends AbstractTask {
   private double progress = 0;
   private final List<RawDataFile> files;
   private final boolean saveFilesInProject;
+  private final boolean saveSnapshots;
   private final String prefix = "Saving raw data files: ";
   private String description;
   private final int numSteps;
@@ -102,14 +105,15 @@ public class RawDataFileSaveHandler extends AbstractTask {
   }
 
   public RawDataFileSaveHandler(MZmineProject project, ZipOutputStream zipOutputStream,
-      boolean saveFilesInProject, @NotNull Instant moduleCallDate) {
+      boolean saveFilesInProject, boolean saveSnapshots, @NotNull Instant moduleCallDate) {
     super(null, moduleCallDate);
     this.project = project;
     this.zipStream = zipOutputStream;
     this.saveFilesInProject = saveFilesInProject;
     files = List.of(project.getDataFiles());
+    this.saveSnapshots = saveSnapshots;
     numSteps = 1 /*dissect + merge */ + (saveFilesInProject ? files.size() : 0) /*save files*/
-        + 1 /*save batch file*/;
+        + 1 /*save batch file*/ + (saveSnapshots ? files.size() : 0) /*save snapshots*/;
     stepProgress = 1 / (double) numSteps;
   }
 
@@ -168,6 +172,45 @@ public class RawDataFileSaveHandler extends AbstractTask {
     }
     progress += stepProgress;
 
+    if (saveSnapshots) {
+      return saveRawDataSnapshots();
+    }
+    return true;
+  }
+
+  /**
+   * Saves a snapshot of each raw data file, so the project can be opened without replaying the
+   * import batch. Snapshots are only saved if all files support them, otherwise the import batch
+   * would have to be replayed anyway.
+   */
+  private boolean saveRawDataSnapshots() {
+    final List<String> unsupported = files.stream()
+        .filter(file -> !RawDataFileSnapshotWriter.canSaveSnapshot(file)).map(RawDataFile::getName)
+        .toList();
+    if (!unsupported.isEmpty()) {
+      final String message = "Raw data snapshots are not supported for imaging files "
+          + unsupported + ". The project was saved without snapshots, raw data files "
+          + "will be imported from the batch when opening the project.";
+      logger.warning(message);
+      MZmineCore.getDesktop().displayMessage("Raw data snapshots not saved", message);
+      return true;
+    }
+
+    for (int i = 0; i < files.size(); i++) {
+      if (isCanceled()) {
+        return false;
+      }
+      final RawDataFile file = files.get(i);
+      description = prefix + "Saving snapshot of " + file.getName() + ".";
+      try {
+        RawDataFileSnapshotWriter.saveSnapshot(zipStream, file, i);
+      } catch (IOException | XMLStreamException | ParserConfigurationException
+          | TransformerException e) {
+        logger.log(Level.WARNING, "Could not save raw data snapshot.\n" + e.getMessage(), e);
+        return false;
+      }
+      progress += stepProgress;
+    }
     return true;
   }
 
@@ -0,0 +1,315 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.io.projectsave;
+
+import com.google.common.collect.Range;
+import io.github.mzmine.datamodel.Frame;
+import io.github.mzmine.datamodel.IMSRawDataFile;
+import io.github.mzmine.datamodel.MassList;
+import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.datamodel.Scan;
+import io.github.mzmine.datamodel.features.FeatureList.FeatureListAppliedMethod;
+import io.github.mzmine.datamodel.impl.MobilityScanStorage;
+import io.github.mzmine.datamodel.impl.SimpleFrame;
+import io.github.mzmine.datamodel.impl.SimpleScan;
+import io.github.mzmine.datamodel.msms.MsMsInfo;
+import io.github.mzmine.datamodel.msms.PasefMsMsInfo;
+import io.github.mzmine.modules.dataprocessing.id_ccscalibration.CCSCalibration;
+import io.github.mzmine.modules.io.projectload.version_3_0.CONST;
+import io.github.mzmine.project.impl.IMSRawDataFileImpl;
+import io.github.mzmine.project.impl.RawDataFileImpl;
+import io.github.mzmine.util.ParsingUtils;
+import java.io.IOException;
+import java.nio.DoubleBuffer;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import org.jetbrains.annotations.NotNull;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ * Saves a snapshot of a {@link RawDataFileImpl} or {@link IMSRawDataFileImpl} to the project: the
+ * scans with their metadata, data points, mass lists and ms/ms information, the mobility scans and
+ * their mass lists of ion mobility frames, as well as the applied methods of the file. When a
+ * project with snapshots is opened, the values are memory mapped from the project instead of
+ * importing the raw data files and replaying the processing steps.
+ * <p></p>
+ * The raw data import batch is always saved as well, so the project can still be opened by
+ * versions that do not know the snapshots.
+ *
+ * @see io.github.mzmine.modules.io.projectload.version_3_0.RawDataFileSnapshotLoader
+ */
+public class RawDataFileSnapshotWriter {
+
+  public static final String SNAPSHOT_FOLDER = "msdatasnapshots/";
+  public static final String METADATA_FILE_SUFFIX = "_metadata.xml";
+  public static final String SCANS_FILE_SUFFIX = "_scans.xml";
+
+  private RawDataFileSnapshotWriter() {
+  }
+
+  /**
+   * Imaging files store additional data (coordinates) that is not part of the snapshot.
+   *
+   * @return true if a snapshot of the file can be saved.
+   */
+  public static boolean canSaveSnapshot(@NotNull RawDataFile file) {
+    if (file.getClass().equals(IMSRawDataFileImpl.class)) {
+      return file.getScans().stream().allMatch(scan -> scan.getClass().equals(SimpleFrame.class));
+    }
+    return file.getClass().equals(RawDataFileImpl.class) && file.getScans().stream()
+        .allMatch(scan -> scan.getClass().equals(SimpleScan.class));
+  }
+
+  /**
+   * @param index The index of the file in the project. Used to name the zip entries and to restore
+   *              the file order.
+   */
+  public static String getFilePrefix(int index) {
+    return SNAPSHOT_FOLDER + CONST.XML_RAW_FILE_ELEMENT + "_" + index;
+  }
+
+  /**
+   * Writes the metadata, the scans and the binary value block of the file to three zip entries.
+   *
+   * @param zos   The project zip stream.
+   * @param file  The file, see {@link #canSaveSnapshot(RawDataFile)}.
+   * @param index The index of the file in the project.
+   */
+  public static void saveSnapshot(@NotNull ZipOutputStream zos, @NotNull RawDataFile file,
+      int index)
+      throws IOException, XMLStreamException, ParserConfigurationException, TransformerException {
+    saveMetadata(zos, file, index);
+    saveScans(zos, file, index);
+  }
+
+  private static void saveMetadata(ZipOutputStream zos, RawDataFile file, int index)
+      throws IOException, ParserConfigurationException, TransformerException {
+    final Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder()
+        .newDocument();
+    final Element root = document.createElement(CONST.XML_ROOT_ELEMENT);
+    document.appendChild(root);
+
+    final Element fileElement = document.createElement(CONST.XML_RAW_FILE_ELEMENT);
+    root.appendChild(fileElement);
+
+    final Element nameElement = document.createElement(CONST.XML_RAW_FILE_NAME_ELEMENT);
+    nameElement.setTextContent(file.getName());
+    fileElement.appendChild(nameElement);
+
+    final Element pathElement = document.createElement(CONST.XML_RAW_FILE_PATH_ELEMENT);
+    pathElement.setTextContent(ParsingUtils.parseNullableString(file.getAbsolutePath()));
+    fileElement.appendChild(pathElement);
+
+    final Element colorElement = document.createElement(CONST.XML_RAW_FILE_COLOR_ELEMENT);
+    colorElement.setTextContent(file.getColor().toString());
+    fileElement.appendChild(colorElement);
+
+    if (file instanceof IMSRawDataFile imsFile) {
+      final Element mobilityTypeElement = document.createElement(
+          CONST.XML_MOBILITY_TYPE_ELEMENT);
+      mobilityTypeElement.setTextContent(imsFile.getMobilityType().name());
+      fileElement.appendChild(mobilityTypeElement);
+
+      final CCSCalibration calibration = imsFile.getCCSCalibration();
+      if (calibration != null) {
+        final Element calibrationElement = document.createElement(CCSCalibration.XML_ELEMENT);
+        calibration.saveToXML(calibrationElement);
+        fileElement.appendChild(calibrationElement);
+      }
+    }
+
+    final Element appliedMethodsList = document.createElement(
+        CONST.XML_FLIST_APPLIED_METHODS_LIST_ELEMENT);
+    for (FeatureListAppliedMethod appliedMethod : file.getAppliedMethods()) {
+      Element methodElement = document.createElement(CONST.XML_FLIST_APPLIED_METHOD_ELEMENT);
+      appliedMethod.saveValueToXML(methodElement);
+      appliedMethodsList.appendChild(methodElement);
+    }
+    fileElement.appendChild(appliedMethodsList);
+
+    final Transformer transformer = TransformerFactory.newInstance().newTransformer();
+    transformer.setOutputProperty(OutputKeys.METHOD, "xml");
+    transformer.setOutputProperty(OutputKeys.INDENT, "yes");
+    transformer.setOutputProperty(OutputKeys.ENCODING, "UTF-8");
+    transformer.setOutputProperty("{http://xml.apache.org/xslt}indent-amount", "4");
+
+    zos.putNextEntry(new ZipEntry(getFilePrefix(index) + METADATA_FILE_SUFFIX));
+    transformer.transform(new DOMSource(document), new StreamResult(zos));
+    zos.closeEntry();
+  }
+
+  private static void saveScans(ZipOutputStream zos, RawDataFile file, int index)
+      throws IOException, XMLStreamException {
+    zos.putNextEntry(new ZipEntry(getFilePrefix(index) + SCANS_FILE_SUFFIX));
+
+    final XMLOutputFactory xof = XMLOutputFactory.newInstance();
+    final BinaryBlockXMLStreamWriter writer = new BinaryBlockXMLStreamWriter(
+        xof.createXMLStreamWriter(zos, "UTF-8"));
+    try {
+      writer.writeStartDocument("UTF-8", "1.0");
+      writer.writeStartElement(CONST.XML_RAW_FILE_ELEMENT);
+      writer.writeAttribute(CONST.XML_NUM_SCANS_ATTR, String.valueOf(file.getNumOfScans()));
+
+      // reused for all scans
+      double[] mzs = new double[0];
+      double[] intensities = new double[0];
+      for (Scan scan : file.getScans()) {
+        writer.writeStartElement(CONST.XML_RAW_FILE_SCAN_ELEMENT);
+        writer.writeAttribute(CONST.XML_SCAN_NUMBER_ATTR, String.valueOf(scan.getScanNumber()));
+        writer.writeAttribute(CONST.XML_MSLEVEL_ATTR, String.valueOf(scan.getMSLevel()));
+        writer.writeAttribute(CONST.XML_RT_ATTR, String.valueOf(scan.getRetentionTime()));
+        writer.writeAttribute(CONST.XML_POLARITY_ATTR, scan.getPolarity().name());
+        writer.writeAttribute(CONST.XML_SPECTRUM_TYPE_ATTR, scan.getSpectrumType().name());
+        writer.writeAttribute(CONST.XML_SCAN_DEF_ATTR,
+            ParsingUtils.parseNullableString(scan.getScanDefinition()));
+        if (scan.getScanningMZRange() != null) {
+          writer.writeAttribute(CONST.XML_SCAN_MZ_RANGE_ATTR,
+              ParsingUtils.rangeToString((Range) scan.getScanningMZRange()));
+        }
+        if (scan.getInjectionTime() != null) {
+          writer.writeAttribute(CONST.XML_INJECTION_TIME_ATTR,
+              String.valueOf(scan.getInjectionTime()));
+        }
+
+        mzs = scan.getMzValues(mzs);
+        intensities = scan.getIntensityValues(intensities);
+        writeValues(writer, CONST.XML_MZ_VALUES_ELEMENT, mzs, scan.getNumberOfDataPoints());
+        writeValues(writer, CONST.XML_INTENSITY_VALUES_ELEMENT, intensities,
+            scan.getNumberOfDataPoints());
+
+        final MassList massList = scan.getMassList();
+        if (massList != null) {
+          writer.writeStartElement(CONST.XML_MASS_LIST_ELEMENT);
+          mzs = massList.getMzValues(mzs);
+          intensities = massList.getIntensityValues(intensities);
+          writeValues(writer, CONST.XML_MZ_VALUES_ELEMENT, mzs, massList.getNumberOfDataPoints());
+          writeValues(writer, CONST.XML_INTENSITY_VALUES_ELEMENT, intensities,
+              massList.getNumberOfDataPoints());
+          writer.writeEndElement();
+        }
+
+        if (scan instanceof SimpleFrame frame) {
+          saveMobilityScans(writer, frame);
+        }
+
+        final MsMsInfo msMsInfo = scan.getMsMsInfo();
+        if (msMsInfo != null) {
+          msMsInfo.writeToXML(writer);
+        }
+
+        if (scan instanceof Frame frame && !frame.getImsMsMsInfos().isEmpty()) {
+          writer.writeStartElement(CONST.XML_IMS_MSMS_INFOS_ELEMENT);
+          for (PasefMsMsInfo info : frame.getImsMsMsInfos()) {
+            info.writeToXML(writer);
+          }
+          writer.writeEndElement();
+        }
+        writer.writeEndElement();
+      }
+
+      writer.writeEndElement();
+      writer.writeEndDocument();
+      writer.flush(); // closing the xml writer does not close the zip stream
+      writer.close();
+      zos.closeEntry();
+
+      writer.writeBlockEntry(zos, getFilePrefix(index) + FeatureListSaveTask.BINARY_FILE_SUFFIX);
+    } finally {
+      writer.discardBlock();
+    }
+  }
+
+  /**
+   * Writes the values of all mobility scans of the frame and their mass lists as consecutive
+   * blocks, as they are stored in the {@link MobilityScanStorage}.
+   */
+  private static void saveMobilityScans(XMLStreamWriter writer, SimpleFrame frame)
+      throws XMLStreamException {
+    final MobilityScanStorage storage = frame.getMobilityScanStorage();
+    final int numScans = storage.getNumberOfMobilityScans();
+    writer.writeStartElement(CONST.XML_MOBILITY_SCANS_ELEMENT);
+
+    if (frame.getMobilities() != null) {
+      final double[] mobilities = frame.getMobilities().toDoubleArray();
+      writeValues(writer, CONST.XML_MOBILITY_VALUES_ELEMENT, mobilities, mobilities.length);
+    }
+
+    final int[] offsets = new int[numScans];
+    for (int i = 0; i < numScans; i++) {
+      offsets[i] = storage.getRawStorageOffset(i);
+    }
+    writeValues(writer, CONST.XML_STORAGE_OFFSETS_ELEMENT, offsets);
+    final double[] values = new double[storage.getRawTotalNumPoints()];
+    storage.getAllRawMobilityScanMzValues(values);
+    writeValues(writer, CONST.XML_MZ_VALUES_ELEMENT, values, values.length);
+    storage.getAllRawMobilityScanIntensityValues(values);
+    writeValues(writer, CONST.XML_INTENSITY_VALUES_ELEMENT, values, values.length);
+
+    if (storage.hasMassLists()) {
+      writer.writeStartElement(CONST.XML_MASS_LIST_ELEMENT);
+      for (int i = 0; i < numScans; i++) {
+        offsets[i] = storage.getMassListStorageOffset(i);
+      }
+      writeValues(writer, CONST.XML_STORAGE_OFFSETS_ELEMENT, offsets);
+      final double[] massListValues = new double[storage.getMassListTotalNumPoints()];
+      storage.getAllMassListMzValues(massListValues);
+      writeValues(writer, CONST.XML_MZ_VALUES_ELEMENT, massListValues, massListValues.length);
+      storage.getAllMassListIntensityValues(massListValues);
+      writeValues(writer, CONST.XML_INTENSITY_VALUES_ELEMENT, massListValues,
+          massListValues.length);
+      writer.writeEndElement();
+    }
+    writer.writeEndElement();
+  }
+
+  private static void writeValues(XMLStreamWriter writer, String element, int[] values)
+      throws XMLStreamException {
+    writer.writeStartElement(element);
+    writer.writeAttribute(CONST.XML_NUM_VALUES_ATTR, String.valueOf(values.length));
+    BinaryBlockXMLStreamWriter.writeValues(writer, values);
+    writer.writeEndElement();
+  }
+
+  private static void writeValues(XMLStreamWriter writer, String element, double[] values,
+      int numValues) throws XMLStreamException {
+    writer.writeStartElement(element);
+    writer.writeAttribute(CONST.XML_NUM_VALUES_ATTR, String.valueOf(numValues));
+    BinaryBlockXMLStreamWriter.writeValues(writer, DoubleBuffer.wrap(values, 0, numValues).slice());
+    writer.writeEndElement();
+  }
+}
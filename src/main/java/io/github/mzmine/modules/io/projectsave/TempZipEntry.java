@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.io.projectsave;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A zip entry that was written to a temporary file. Entries are created in parallel and appended to
+ * the project file by a single writer.
+ *
+ * @param name         The name of the entry.
+ * @param file         The temporary file containing the uncompressed entry.
+ * @param size         The uncompressed size in bytes.
+ * @param crc          The CRC-32 checksum of the uncompressed entry.
+ * @param compressible false for entries that hardly compress (binary values). Such entries are
+ *                     always stored.
+ */
+public record TempZipEntry(@NotNull String name, @NotNull File file, long size, long crc,
+                           boolean compressible) {
+
+  /**
+   * Appends the entry to the zip and deletes the temporary file. The crc is known in advance, so
+   * entries can be stored without compression. Compressed entries use the level of the stream.
+   */
+  public void appendTo(@NotNull ZipOutputStream zos, @NotNull ProjectCompression compression)
+      throws IOException {
+    final ZipEntry entry = new ZipEntry(name);
+    if (!compressible || compression == ProjectCompression.STORED) {
+      entry.setMethod(ZipEntry.STORED);
+      entry.setSize(size);
+      entry.setCompressedSize(size);
+      entry.setCrc(crc);
+    }
+    zos.putNextEntry(entry);
+
+    try (FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      final WritableByteChannel out = Channels.newChannel(zos);
+      long transferred = 0;
+      while (transferred < size) {
+        final long n = in.transferTo(transferred, size - transferred, out);
+        if (n == 0 && transferred >= in.size()) {
+          throw new IOException("Temporary file of entry " + name + " is incomplete.");
+        }
+        transferred += n;
+      }
+    }
+    zos.closeEntry();
+    delete();
+  }
+
+  /**
+   * Deletes the temporary file, e.g., if saving was canceled.
+   */
+  public void delete() {
+    file.delete();
+  }
+}
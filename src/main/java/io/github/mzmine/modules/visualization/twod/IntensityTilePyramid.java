@@ -0,0 +1,324 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.visualization.twod;
+
+import com.google.common.collect.Range;
+import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.datamodel.Scan;
+import io.github.mzmine.util.MemoryMapStorage;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import java.io.IOException;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntConsumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Multi-resolution RT x m/z grid of maximum intensities of a set of scans. Level 0 groups
+ * consecutive scans into at most {@link #MAX_COLUMNS} columns and splits the m/z range into {@link
+ * #MZ_BINS} bins. Every following level halves the number of columns and bins. The columns are
+ * kept in a {@link MemoryMapStorage} (if raw data is not stored in RAM), so the heap only holds the
+ * buffer references.
+ * <p>
+ * The columns of level 0 can be read while the pyramid is built, so the plot can be rendered
+ * progressively. The coarser levels are only used once the pyramid is complete.
+ * <p>
+ * Complete pyramids are cached per raw data file and reused as long as the same scans and m/z range
+ * are requested.
+ */
+final class IntensityTilePyramid {
+
+  private static final Logger logger = Logger.getLogger(IntensityTilePyramid.class.getName());
+
+  static final int MAX_COLUMNS = 2048;
+  static final int MZ_BINS = 2048;
+
+  private static final Map<RawDataFile, IntensityTilePyramid> cache = Collections.synchronizedMap(
+      new WeakHashMap<>());
+
+  // used to check if a cached pyramid matches the requested scans. Must not reference the file.
+  private final int[] scanNumbers;
+  private final double mzMin;
+  private final double mzMax;
+  private final int scansPerColumn;
+  private final double binWidth;
+  /**
+   * levels[level][column] contains the maximum intensity of each m/z bin. Columns are null until
+   * they are built.
+   */
+  private final FloatBuffer[][] levels;
+  private final int[] numBins;
+
+  // level 0 columns below this index can be read
+  private volatile int loadedColumns = 0;
+  private volatile boolean complete = false;
+
+  private IntensityTilePyramid(int[] scanNumbers, double mzMin, double mzMax) {
+    this.scanNumbers = scanNumbers;
+    this.mzMin = mzMin;
+    this.mzMax = mzMax;
+    binWidth = mzMax > mzMin ? (mzMax - mzMin) / MZ_BINS : 1d;
+    scansPerColumn = Math.max(1, (scanNumbers.length + MAX_COLUMNS - 1) / MAX_COLUMNS);
+
+    // every following level combines 2 x 2 cells of the previous level
+    final List<FloatBuffer[]> levels = new ArrayList<>();
+    final IntArrayList numBins = new IntArrayList();
+    int columns = (scanNumbers.length + scansPerColumn - 1) / scansPerColumn;
+    int bins = MZ_BINS;
+    levels.add(new FloatBuffer[columns]);
+    numBins.add(bins);
+    while (columns > 1 || bins > 1) {
+      columns = (columns + 1) / 2;
+      bins = (bins + 1) / 2;
+      levels.add(new FloatBuffer[columns]);
+      numBins.add(bins);
+    }
+    this.levels = levels.toArray(FloatBuffer[][]::new);
+    this.numBins = numBins.toIntArray();
+  }
+
+  /**
+   * @param file    the raw data file of the scans
+   * @param scans   the scans sorted by retention time
+   * @param mzRange the m/z range of the pyramid
+   * @return the cached pyramid or a new pyramid that still needs to be built with {@link
+   * #build(RawDataFile, Scan[], BooleanSupplier, IntConsumer)}.
+   */
+  @NotNull
+  static IntensityTilePyramid getOrCreate(@NotNull RawDataFile file, @NotNull Scan[] scans,
+      @NotNull Range<Double> mzRange) {
+    final int[] scanNumbers = Arrays.stream(scans).mapToInt(Scan::getScanNumber).toArray();
+    final IntensityTilePyramid cached = cache.get(file);
+    if (cached != null && cached.matches(scanNumbers, mzRange)) {
+      return cached;
+    }
+    return new IntensityTilePyramid(scanNumbers, mzRange.lowerEndpoint(),
+        mzRange.upperEndpoint());
+  }
+
+  /**
+   * Streams the scans into level 0, one column at a time, and merges the coarser levels. The
+   * pyramid is cached for the file once it is complete.
+   *
+   * @param file     the raw data file of the scans
+   * @param scans    the scans this pyramid was created for
+   * @param canceled checked after every column
+   * @param progress called with the number of processed scans
+   * @return true if the pyramid is complete, false if the build was canceled.
+   */
+  boolean build(@NotNull RawDataFile file, @NotNull Scan[] scans,
+      @NotNull BooleanSupplier canceled, @NotNull IntConsumer progress) {
+    if (complete) {
+      progress.accept(scans.length);
+      return true;
+    }
+    final MemoryMapStorage storage = MemoryMapStorage.forRawDataFile();
+
+    final FloatBuffer[] base = levels[0];
+    final float[] column = new float[MZ_BINS];
+    double[] mzs = new double[0];
+    double[] intensities = new double[0];
+    for (int c = 0; c < base.length; c++) {
+      if (canceled.getAsBoolean()) {
+        return false;
+      }
+      Arrays.fill(column, 0f);
+      final int end = Math.min(scans.length, (c + 1) * scansPerColumn);
+      for (int s = c * scansPerColumn; s < end; s++) {
+        final Scan scan = scans[s];
+        final int numValues = scan.getNumberOfDataPoints();
+        mzs = scan.getMzValues(mzs);
+        intensities = scan.getIntensityValues(intensities);
+        for (int i = 0; i < numValues; i++) {
+          final double mz = mzs[i];
+          if (mz < mzMin) {
+            continue;
+          } else if (mz > mzMax) {
+            break;
+          }
+          final int bin = Math.min(MZ_BINS - 1, (int) ((mz - mzMin) / binWidth));
+          column[bin] = (float) Math.max(column[bin], intensities[i]);
+        }
+      }
+      base[c] = store(storage, column);
+      // publishes the column to the rendering thread
+      loadedColumns = c + 1;
+      progress.accept(end);
+    }
+
+    for (int level = 1; level < levels.length; level++) {
+      final FloatBuffer[] previous = levels[level - 1];
+      final int previousBins = numBins[level - 1];
+      final FloatBuffer[] next = levels[level];
+      final float[] merged = new float[numBins[level]];
+      for (int c = 0; c < next.length; c++) {
+        Arrays.fill(merged, 0f);
+        for (int p = 2 * c; p < Math.min(previous.length, 2 * c + 2); p++) {
+          for (int b = 0; b < previousBins; b++) {
+            merged[b / 2] = Math.max(merged[b / 2], previous[p].get(b));
+          }
+        }
+        next[c] = store(storage, merged);
+      }
+    }
+
+    complete = true;
+    cache.put(file, this);
+    return true;
+  }
+
+  private static FloatBuffer store(@Nullable MemoryMapStorage storage, float[] values) {
+    if (storage != null) {
+      try {
+        return storage.storeData(values);
+      } catch (IOException e) {
+        logger.log(Level.WARNING, "Cannot store tiles in memory mapped storage", e);
+      }
+    }
+    return FloatBuffer.wrap(Arrays.copyOf(values, values.length));
+  }
+
+  private boolean matches(int[] scanNumbers, Range<Double> mzRange) {
+    return mzMin == mzRange.lowerEndpoint() && mzMax == mzRange.upperEndpoint() && Arrays.equals(
+        this.scanNumbers, scanNumbers);
+  }
+
+  boolean isComplete() {
+    return complete;
+  }
+
+  int getNumberOfLevels() {
+    return levels.length;
+  }
+
+  /**
+   * @param scansPerPixel the number of scans within a pixel
+   * @param mzPerPixel    the m/z width of a pixel
+   * @return the coarsest level with cells not larger than a pixel or -1 if even level 0 is too
+   * coarse. Level 0 while the pyramid is built.
+   */
+  int selectLevel(double scansPerPixel, double mzPerPixel) {
+    final int maxLevel = complete ? levels.length - 1 : 0;
+    int level = -1;
+    while (level < maxLevel
+        && ((long) scansPerColumn << (level + 1)) <= Math.max(scansPerPixel, 1d)
+        && binWidth * (1L << (level + 1)) <= mzPerPixel) {
+      level++;
+    }
+    return level;
+  }
+
+  /**
+   * @param level    the level, see {@link #selectLevel(double, double)}
+   * @param fromScan first scan index (inclusive)
+   * @param toScan   last scan index (inclusive)
+   * @param fromMz   lower m/z
+   * @param toMz     upper m/z
+   * @return the maximum intensity of all cells overlapping the given scan and m/z range. Columns
+   * that are not built yet are skipped.
+   */
+  float getMaxIntensity(int level, int fromScan, int toScan, double fromMz, double toMz) {
+    if (toMz < mzMin || fromMz > mzMax || fromScan > toScan) {
+      return 0f;
+    }
+    final FloatBuffer[] columns = levels[level];
+    final long scansPerCell = (long) scansPerColumn << level;
+    final double mzPerCell = binWidth * (1L << level);
+
+    final int fromColumn = (int) (fromScan / scansPerCell);
+    final int toColumn = Math.min(getLastColumn(level), (int) (toScan / scansPerCell));
+    final int fromBin = Math.max(0, (int) ((fromMz - mzMin) / mzPerCell));
+    final int toBin = Math.min(numBins[level] - 1, (int) ((toMz - mzMin) / mzPerCell));
+
+    float max = 0f;
+    for (int c = fromColumn; c <= toColumn; c++) {
+      final FloatBuffer column = columns[c];
+      for (int b = fromBin; b <= toBin; b++) {
+        max = Math.max(max, column.get(b));
+      }
+    }
+    return max;
+  }
+
+  /**
+   * Same as {@link #getMaxIntensity(int, int, int, double, double)}, but uses the closest
+   * non-empty cell of each column if the m/z range is empty and the plot mode is not centroid,
+   * like the lookup of the closest data point in the scans. The tiles do not keep the exact m/z
+   * values, so the closest cell is only searched within the height of the m/z range above and
+   * below.
+   */
+  float getIntensity(int level, int fromScan, int toScan, double fromMz, double toMz,
+      PlotMode plotMode) {
+    final float max = getMaxIntensity(level, fromScan, toScan, fromMz, toMz);
+    if (max > 0f || plotMode == PlotMode.CENTROID || fromScan > toScan) {
+      return max;
+    }
+
+    final FloatBuffer[] columns = levels[level];
+    final int bins = numBins[level];
+    final long scansPerCell = (long) scansPerColumn << level;
+    final double mzPerCell = binWidth * (1L << level);
+
+    final int fromColumn = (int) (fromScan / scansPerCell);
+    final int toColumn = Math.min(getLastColumn(level), (int) (toScan / scansPerCell));
+    final int fromBin = (int) Math.floor((fromMz - mzMin) / mzPerCell);
+    final int toBin = (int) Math.floor((toMz - mzMin) / mzPerCell);
+    final int maxDistance = Math.max(1, toBin - fromBin + 1);
+
+    float nearest = 0f;
+    for (int c = fromColumn; c <= toColumn; c++) {
+      final FloatBuffer column = columns[c];
+      for (int d = 1; d <= maxDistance; d++) {
+        // the upper data point wins if both are equally close, same as in the scans
+        final int next = toBin + d;
+        final int previous = fromBin - d;
+        final float nextValue = next >= 0 && next < bins ? column.get(next) : 0f;
+        final float previousValue = previous >= 0 && previous < bins ? column.get(previous) : 0f;
+        if (nextValue > 0f || previousValue > 0f) {
+          nearest = Math.max(nearest, nextValue > 0f ? nextValue : previousValue);
+          break;
+        }
+      }
+    }
+    return nearest;
+  }
+
+  /**
+   * @return the index of the last column of the level that can be read.
+   */
+  private int getLastColumn(int level) {
+    return level == 0 && !complete ? loadedColumns - 1 : levels[level].length - 1;
+  }
+}
@@ -41,17 +41,28 @@ class TwoDDataSet extends AbstractXYDataset implements Task {
 
   private static final long serialVersionUID = 1L;
 
+  // the plot is redrawn with the loaded columns at this interval while the pyramid is built
+  private static final long REFRESH_INTERVAL_MS = 500;
+
   private RawDataFile rawDataFile;
 
-  private float retentionTimes[];
-  private double basePeaks[], mzValues[][], intensityValues[][];
+  private final float retentionTimes[];
 
   private final Range<Double> totalMZRange;
   private final Range<Float> totalRTRange;
-  private int totalScans, processedScans;
+  private int totalScans;
+  private volatile int processedScans;
   private final Scan scans[];
 
-  private TaskStatus status = TaskStatus.WAITING;
+  /**
+   * Max intensities at multiple resolutions. Scans are only read directly if the plot is zoomed in
+   * further than the finest level of the pyramid. Set before the pyramid is built, so the plot is
+   * rendered progressively.
+   */
+  private volatile IntensityTilePyramid pyramid;
+  private long lastRefresh;
+
+  private volatile TaskStatus status = TaskStatus.WAITING;
 
   public double curMaxIntensity;
   private ArrayList<Float> rtValuesInUserRange;
@@ -68,10 +79,10 @@ class TwoDDataSet extends AbstractXYDataset implements Task {
 
     totalScans = scans.length;
 
-    mzValues = new double[totalScans][];
-    intensityValues = new double[totalScans][];
     retentionTimes = new float[totalScans];
-    basePeaks = new double[totalScans];
+    for (int i = 0; i < totalScans; i++) {
+      retentionTimes[i] = scans[i].getRetentionTime();
+    }
 
     MZmineCore.getTaskController().addTask(this, TaskPriority.HIGH);
 
@@ -82,27 +93,30 @@ class TwoDDataSet extends AbstractXYDataset implements Task {
 
     status = TaskStatus.PROCESSING;
 
-    for (int index = 0; index < totalScans; index++) {
-
-      // Cancel?
-      if (status == TaskStatus.CANCELED)
-        return;
-
-      Scan scan = scans[index];
-      Double scanBasePeakInt = scan.getBasePeakIntensity();
-      retentionTimes[index] = scan.getRetentionTime();
-      basePeaks[index] = (scanBasePeakInt == null ? 0 : scanBasePeakInt);
-      mzValues[index] = new double[scan.getNumberOfDataPoints()];
-      scan.getMzValues(mzValues[index]);
-      intensityValues[index] = new double[scan.getNumberOfDataPoints()];
-      scan.getIntensityValues(intensityValues[index]);
-      processedScans++;
+    final IntensityTilePyramid pyramid = IntensityTilePyramid.getOrCreate(rawDataFile, scans,
+        totalMZRange);
+    this.pyramid = pyramid;
+    lastRefresh = System.currentTimeMillis();
+
+    final boolean complete = pyramid.build(rawDataFile, scans, () -> status == TaskStatus.CANCELED,
+        processed -> {
+          processedScans = processed;
+          final long now = System.currentTimeMillis();
+          if (now - lastRefresh >= REFRESH_INTERVAL_MS) {
+            lastRefresh = now;
+            Platform.runLater(() -> fireDatasetChanged());
+          }
+        });
+
+    // Cancel?
+    if (!complete) {
+      return;
     }
 
-    Platform.runLater(() -> fireDatasetChanged());
-
     status = TaskStatus.FINISHED;
 
+    Platform.runLater(() -> fireDatasetChanged());
+
   }
 
   /**
@@ -151,100 +165,183 @@ class TwoDDataSet extends AbstractXYDataset implements Task {
       return totalMZRange.upperEndpoint();
   }
 
-  double upperEndpointIntensity(Range<Float> rtRange, Range<Double> mzRange, PlotMode plotMode) {
-
-    double maxIntensity = 0;
+  /**
+   * Calculates the maximum intensity of every pixel of the given area. If no scan is within the RT
+   * range of a pixel, the closest scan is used. In profile mode, the closest data point is used if
+   * no data point is within the m/z range of a pixel.
+   *
+   * @return values[x][y] of the given width and height. All zero if the data is not loaded yet.
+   */
+  double[][] getIntensityGrid(double rtMin, double rtMax, double mzMin, double mzMax, int width,
+      int height, PlotMode plotMode) {
 
-    float searchRetentionTimes[] = retentionTimes;
-    if (processedScans < totalScans) {
-      searchRetentionTimes = new float[processedScans];
-      System.arraycopy(retentionTimes, 0, searchRetentionTimes, 0, searchRetentionTimes.length);
+    final double values[][] = new double[width][height];
+    final IntensityTilePyramid pyramid = this.pyramid;
+    if (pyramid == null || totalScans == 0 || width <= 0 || height <= 0) {
+      return values;
     }
 
-    int startScanIndex = Arrays.binarySearch(searchRetentionTimes, rtRange.lowerEndpoint());
+    final double rtStep = (rtMax - rtMin) / width;
+    final double mzStep = (mzMax - mzMin) / height;
+
+    // scan index range of every pixel column, -1 if there is no scan
+    final int fromScan[] = new int[width];
+    final int toScan[] = new int[width];
+    int firstScan = Integer.MAX_VALUE;
+    int lastScan = -1;
+    for (int i = 0; i < width; i++) {
+      final double pointRTMin = rtMin + (i * rtStep);
+      findScans(pointRTMin, pointRTMin + rtStep, fromScan, toScan, i);
+      if (fromScan[i] != -1) {
+        firstScan = Math.min(firstScan, fromScan[i]);
+        lastScan = Math.max(lastScan, toScan[i]);
+      }
+    }
+    if (lastScan == -1) {
+      return values;
+    }
 
-    if (startScanIndex < 0)
-      startScanIndex = (startScanIndex * -1) - 1;
+    final double scansPerPixel = (lastScan - firstScan + 1) / (double) width;
+    final int level = pyramid.selectLevel(scansPerPixel, mzStep);
+    if (level >= 0) {
+      for (int i = 0; i < width; i++) {
+        if (fromScan[i] == -1) {
+          continue;
+        }
+        for (int j = 0; j < height; j++) {
+          final double pointMZMin = mzMin + (j * mzStep);
+          values[i][j] = pyramid.getIntensity(level, fromScan[i], toScan[i], pointMZMin,
+              pointMZMin + mzStep, plotMode);
+        }
+      }
+      return values;
+    }
 
-    if (startScanIndex >= searchRetentionTimes.length) {
-      return 0;
+    // zoomed in further than the pyramid resolution, read the visible scans
+    double mzValues[] = new double[0];
+    double intensityValues[] = new double[0];
+    int loadedScan = -1;
+    int numValues = 0;
+    for (int i = 0; i < width; i++) {
+      if (fromScan[i] == -1) {
+        continue;
+      }
+      for (int scanIndex = fromScan[i]; scanIndex <= toScan[i]; scanIndex++) {
+        if (scanIndex != loadedScan) {
+          final Scan scan = scans[scanIndex];
+          numValues = scan.getNumberOfDataPoints();
+          mzValues = scan.getMzValues(mzValues);
+          intensityValues = scan.getIntensityValues(intensityValues);
+          loadedScan = scanIndex;
+        }
+        for (int j = 0; j < height; j++) {
+          final double pointMZMin = mzMin + (j * mzStep);
+          final double intensity = upperEndpointIntensity(mzValues, intensityValues, numValues,
+              pointMZMin, pointMZMin + mzStep, plotMode);
+          if (intensity > values[i][j]) {
+            values[i][j] = intensity;
+          }
+        }
+      }
     }
+    return values;
+  }
 
-    if (searchRetentionTimes[startScanIndex] > rtRange.upperEndpoint()) {
-      if (startScanIndex == 0)
-        return 0;
+  /**
+   * Sets the first and last scan index within the RT range or the closest scan, if no scan is
+   * within the range. Both are set to -1 if there is no scan.
+   */
+  private void findScans(double rtLower, double rtUpper, int fromScan[], int toScan[], int i) {
+    fromScan[i] = -1;
+    toScan[i] = -1;
 
-      if (startScanIndex == searchRetentionTimes.length - 1)
-        return upperEndpointIntensity(startScanIndex - 1, mzRange, plotMode);
+    int startScanIndex = Arrays.binarySearch(retentionTimes, (float) rtLower);
 
-      // find which scan point is closer
-      double diffNext = searchRetentionTimes[startScanIndex] - rtRange.upperEndpoint();
-      double diffPrev = rtRange.lowerEndpoint() - searchRetentionTimes[startScanIndex - 1];
+    if (startScanIndex < 0)
+      startScanIndex = (startScanIndex * -1) - 1;
 
-      if (diffPrev < diffNext)
-        return upperEndpointIntensity(startScanIndex - 1, mzRange, plotMode);
-      else
-        return upperEndpointIntensity(startScanIndex, mzRange, plotMode);
+    if (startScanIndex >= retentionTimes.length) {
+      return;
     }
 
-    for (int scanIndex = startScanIndex; ((scanIndex < searchRetentionTimes.length)
-        && (searchRetentionTimes[scanIndex] <= rtRange.upperEndpoint())); scanIndex++) {
-
-      // ignore scans where all peaks are smaller than current max
-      if (basePeaks[scanIndex] < maxIntensity)
-        continue;
-
-      double scanMax = upperEndpointIntensity(scanIndex, mzRange, plotMode);
-
-      if (scanMax > maxIntensity)
-        maxIntensity = scanMax;
+    if (retentionTimes[startScanIndex] > (float) rtUpper) {
+      if (startScanIndex == 0)
+        return;
 
+      int closest = startScanIndex;
+      if (startScanIndex == retentionTimes.length - 1) {
+        closest = startScanIndex - 1;
+      } else {
+        // find which scan point is closer
+        double diffNext = retentionTimes[startScanIndex] - rtUpper;
+        double diffPrev = rtLower - retentionTimes[startScanIndex - 1];
+        if (diffPrev < diffNext)
+          closest = startScanIndex - 1;
+      }
+      fromScan[i] = closest;
+      toScan[i] = closest;
+      return;
     }
 
-    return maxIntensity;
+    int endScanIndex = startScanIndex;
+    while (endScanIndex + 1 < retentionTimes.length
+        && retentionTimes[endScanIndex + 1] <= (float) rtUpper) {
+      endScanIndex++;
+    }
+    fromScan[i] = startScanIndex;
+    toScan[i] = endScanIndex;
+  }
 
+  /**
+   * @return true if all scans are loaded. Until then, the plot only shows the scans that were
+   * loaded so far.
+   */
+  boolean isLoaded() {
+    final IntensityTilePyramid pyramid = this.pyramid;
+    return pyramid != null && pyramid.isComplete();
   }
 
   public ArrayList getrtValuesInUserRange() {
     return rtValuesInUserRange;
   }
 
-  private double upperEndpointIntensity(int index, Range<Double> mzRange, PlotMode plotMode) {
+  private static double upperEndpointIntensity(double mzValues[], double intensityValues[],
+      int numValues, double mzLower, double mzUpper, PlotMode plotMode) {
 
     double maxIntensity = 0;
 
-    int startMZIndex = Arrays.binarySearch(mzValues[index], mzRange.lowerEndpoint());
+    int startMZIndex = Arrays.binarySearch(mzValues, 0, numValues, mzLower);
     if (startMZIndex < 0)
       startMZIndex = (startMZIndex * -1) - 1;
 
-    if (startMZIndex >= mzValues[index].length)
+    if (startMZIndex >= numValues)
       return 0;
 
-    if (mzValues[index][startMZIndex] > mzRange.upperEndpoint()) {
+    if (mzValues[startMZIndex] > mzUpper) {
       if (plotMode != PlotMode.CENTROID) {
         if (startMZIndex == 0)
           return 0;
-        if (startMZIndex == mzValues[index].length - 1)
-          return intensityValues[index][startMZIndex - 1];
+        if (startMZIndex == numValues - 1)
+          return intensityValues[startMZIndex - 1];
 
         // find which data point is closer
-        double diffNext = mzValues[index][startMZIndex] - mzRange.upperEndpoint();
-        double diffPrev = mzRange.lowerEndpoint() - mzValues[index][startMZIndex - 1];
+        double diffNext = mzValues[startMZIndex] - mzUpper;
+        double diffPrev = mzLower - mzValues[startMZIndex - 1];
 
         if (diffPrev < diffNext)
-          return intensityValues[index][startMZIndex - 1];
+          return intensityValues[startMZIndex - 1];
         else
-          return intensityValues[index][startMZIndex];
+          return intensityValues[startMZIndex];
       } else {
         return 0;
       }
 
     }
 
-    for (int mzIndex = startMZIndex; ((mzIndex < mzValues[index].length)
-        && (mzValues[index][mzIndex] <= mzRange.upperEndpoint())); mzIndex++) {
-      if (intensityValues[index][mzIndex] > maxIntensity)
-        maxIntensity = intensityValues[index][mzIndex];
+    for (int mzIndex = startMZIndex; ((mzIndex < numValues)
+        && (mzValues[mzIndex] <= mzUpper)); mzIndex++) {
+      if (intensityValues[mzIndex] > maxIntensity)
+        maxIntensity = intensityValues[mzIndex];
     }
 
     return maxIntensity;
@@ -25,7 +25,6 @@
 
 package io.github.mzmine.modules.visualization.twod;
 
-import io.github.mzmine.util.RangeUtils;
 import java.awt.Color;
 import java.awt.Graphics2D;
 import java.awt.geom.Rectangle2D;
@@ -71,10 +70,8 @@ class TwoDXYPlot extends BaseXYPlot {
 
     final double imageRTMin = (double) getDomainAxis().getRange().getLowerBound();
     final double imageRTMax = (double) getDomainAxis().getRange().getUpperBound();
-    final double imageRTStep = (imageRTMax - imageRTMin) / width;
     final double imageMZMin = (double) getRangeAxis().getRange().getLowerBound();
     final double imageMZMax = (double) getRangeAxis().getRange().getUpperBound();
-    final double imageMZStep = (imageMZMax - imageMZMin) / height;
 
     if ((zoomOutBitmap != null) && (imageRTMin == totalRTRange.lowerEndpoint())
         && (imageRTMax == totalRTRange.upperEndpoint())
@@ -89,29 +86,21 @@ class TwoDXYPlot extends BaseXYPlot {
     // Save current time
     Date renderStartTime = new Date();
 
-    // prepare a double array of summed intensities
-    double values[][] = new double[width][height];
+    // prepare a double array of max intensities
+    double values[][] = dataset.getIntensityGrid(imageRTMin, imageRTMax, imageMZMin, imageMZMax,
+        width, height, plotMode);
     maxValue = 0; // now this is an instance variable
 
     for (int i = 0; i < width; i++)
       for (int j = 0; j < height; j++) {
 
-        double pointRTMin = imageRTMin + (i * imageRTStep);
-        double pointRTMax = pointRTMin + imageRTStep;
-        double pointMZMin = imageMZMin + (j * imageMZStep);
-        double pointMZMax = pointMZMin + imageMZStep;
-
-        double lv = dataset.upperEndpointIntensity(RangeUtils.toFloatRange(Range.closed(pointRTMin, pointRTMax)),
-            Range.closed(pointMZMin, pointMZMax), plotMode);
+        double lv = values[i][j];
 
         if (logScale) {
           lv = Math.log10(lv);
           if (lv < 0 || Double.isInfinite(lv))
             lv = 0;
           values[i][j] = lv;
-          // values[r.nextInt(width)][r.nextInt(height)] = lv;
-        } else {
-          values[i][j] = lv;
         }
 
         if (lv > maxValue)
@@ -139,8 +128,9 @@ class TwoDXYPlot extends BaseXYPlot {
         image.setRGB(i, height - j - 1, pointColor.getRGB());
       }
 
-    // if we are zoomed out, save the values
-    if ((imageRTMin == totalRTRange.lowerEndpoint()) && (imageRTMax == totalRTRange.upperEndpoint())
+    // if we are zoomed out, save the values. Not while the data set is loaded progressively
+    if (dataset.isLoaded() && (imageRTMin == totalRTRange.lowerEndpoint())
+        && (imageRTMax == totalRTRange.upperEndpoint())
         && (imageMZMin == totalMZRange.lowerEndpoint())
         && (imageMZMax == totalMZRange.upperEndpoint())) {
       zoomOutBitmap = image;
@@ -153,6 +153,21 @@ public class MinimumFeatureFilter {
     return false;
   }
 
+  /**
+   * {@link #filterMinFeaturesOverlap} only returns {@link OverlapResult#TRUE} if the two rows
+   * contain at least one pair of features within the retention time tolerance, unless no minimum
+   * number of samples is required.
+   *
+   * @param totalSamples the number of raw data files
+   * @return true if at least one pair of features within the retention time tolerance is required
+   */
+  public boolean requiresOverlappingFeatures(int totalSamples) {
+    if (filterGroups && sgroupSize != null && minFInGroups.isGreaterZero()) {
+      return true;
+    }
+    return minFInSamples.isGreaterZero() && !minFInSamples.checkGreaterEqualMax(totalSamples, 0);
+  }
+
   private boolean checkFeatureQuality(Feature f) {
     return f != null && f.getHeight() >= minFeatureHeight && filterEstimated(f);
   }
@@ -27,6 +27,7 @@ package io.github.mzmine.taskcontrol;
 
 import io.github.mzmine.taskcontrol.impl.TaskQueue;
 import io.github.mzmine.taskcontrol.impl.WrappedTask;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * 
@@ -49,4 +50,14 @@ public interface TaskController {
 
   public boolean isTaskInstanceRunningOrQueued(Class<? extends AbstractTask> clazz);
 
+  /**
+   * The executor of normal priority tasks, limited to the number of threads set in the preferences.
+   * Tasks may submit their parallel work to it. Wait for the work with
+   * {@link java.util.concurrent.ForkJoinTask#join()}, which executes pending work on a thread of
+   * this executor instead of blocking it.
+   *
+   * @return the executor of normal priority tasks
+   */
+  public ForkJoinPool getExecutor();
+
 }
@@ -0,0 +1,364 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.taskcontrol.impl;
+
+import io.github.mzmine.gui.Desktop;
+import io.github.mzmine.gui.HeadLessDesktop;
+import io.github.mzmine.gui.preferences.MZminePreferences;
+import io.github.mzmine.gui.preferences.NumOfThreadsParameter;
+import io.github.mzmine.main.GoogleAnalyticsTracker;
+import io.github.mzmine.main.MZmineCore;
+import io.github.mzmine.taskcontrol.AbstractTask;
+import io.github.mzmine.taskcontrol.Task;
+import io.github.mzmine.taskcontrol.TaskControlListener;
+import io.github.mzmine.taskcontrol.TaskController;
+import io.github.mzmine.taskcontrol.TaskPriority;
+import io.github.mzmine.taskcontrol.TaskStatus;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * Task controller implementation based on executors. Tasks are started as soon as they are added,
+ * there is no polling of the task queue.
+ * <p>
+ * Tasks of {@link TaskPriority#NORMAL} priority are executed by a work-stealing {@link
+ * ForkJoinPool} with the number of threads specified in the preferences. The pool is replaced
+ * when the preference changes. Parallel streams used within tasks run on the same pool and
+ * therefore also respect this limit. Tasks of {@link TaskPriority#HIGH} priority are always
+ * executed immediately on a cached thread pool.
+ * <p>
+ * The {@link TaskControlListener}s are notified from the task controller thread whenever a task
+ * was added or changed its status.
+ */
+public class WorkStealingTaskControllerImpl implements TaskController {
+
+  private static final Logger logger = Logger.getLogger(
+      WorkStealingTaskControllerImpl.class.getName());
+  /**
+   * Update the progress in the task window every 300 ms while tasks are running
+   */
+  private static final long PROGRESS_REFRESH_MS = 300;
+
+  private final List<TaskControlListener> listeners = new CopyOnWriteArrayList<>();
+  private final Set<WrappedTask> runningTasks = ConcurrentHashMap.newKeySet();
+  /**
+   * Number of submitted jobs that were not processed yet
+   */
+  private final AtomicInteger activeJobs = new AtomicInteger(0);
+  private final AtomicBoolean statusUpdateScheduled = new AtomicBoolean(false);
+
+  private TaskQueue taskQueue;
+  private ExecutorService highPriorityExecutor;
+  private ScheduledExecutorService statusExecutor;
+  private ScheduledFuture<?> progressRefresh;
+
+  private ForkJoinPool normalPriorityPool;
+  private int normalPriorityThreads = -1;
+
+  private int previousWaitingTasks = -1;
+  private int previousPercentDone = -1;
+
+  /**
+   * Initialize the task controller
+   */
+  public void initModule() {
+    logger.finest("Starting task controller executors");
+    taskQueue = new TaskQueue();
+
+    highPriorityExecutor = Executors.newCachedThreadPool(r -> {
+      final Thread thread = new Thread(r, "High priority task thread");
+      thread.setDaemon(true);
+      return thread;
+    });
+
+    // not a daemon thread, keeps MZmine alive in headless mode if requested
+    statusExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+      final Thread thread = new Thread(r, "Task controller thread");
+      thread.setPriority(Thread.MIN_PRIORITY);
+      return thread;
+    });
+  }
+
+  @Override
+  public TaskQueue getTaskQueue() {
+    return taskQueue;
+  }
+
+  @Override
+  public void addTask(Task task) {
+    addTask(task, task.getTaskPriority());
+  }
+
+  /**
+   * Override the standard task priority of all tasks with a specific
+   */
+  @Override
+  public void addTask(Task task, TaskPriority priority) {
+    addTasks(new Task[]{task}, new TaskPriority[]{priority});
+  }
+
+  @Override
+  public WrappedTask[] addTasks(Task[] tasks) {
+    if (tasks == null || tasks.length == 0) {
+      return new WrappedTask[0];
+    }
+
+    TaskPriority[] prio = Arrays.stream(tasks).map(Task::getTaskPriority)
+        .toArray(TaskPriority[]::new);
+    return addTasks(tasks, prio);
+  }
+
+  @Override
+  public WrappedTask[] addTasks(Task[] tasks, TaskPriority[] priorities) {
+    // It can sometimes happen during a batch that no tasks are actually
+    // executed --> tasks[] array may be empty
+    if ((tasks == null) || (tasks.length == 0)) {
+      return new WrappedTask[0];
+    }
+
+    WrappedTask[] wrappedTasks = new WrappedTask[tasks.length];
+    for (int i = 0; i < tasks.length; i++) {
+      Task task = tasks[i];
+      TaskPriority priority = priorities[i];
+      WrappedTask newQueueEntry = new WrappedTask(task, priority);
+      taskQueue.addWrappedTask(newQueueEntry);
+      wrappedTasks[i] = newQueueEntry;
+
+      if (task instanceof AbstractTask abstractTask) {
+        abstractTask.addTaskStatusListener((t, newStatus, oldStatus) -> scheduleStatusUpdate());
+      }
+    }
+
+    // start the tasks after they were added to the queue
+    for (int i = 0; i < tasks.length; i++) {
+      submit(wrappedTasks[i], priorities[i]);
+    }
+
+    scheduleStatusUpdate();
+    return wrappedTasks;
+  }
+
+  private void submit(WrappedTask wrappedTask, TaskPriority priority) {
+    activeJobs.incrementAndGet();
+    final Runnable job = () -> process(wrappedTask);
+    if (priority == TaskPriority.HIGH) {
+      highPriorityExecutor.execute(job);
+    } else {
+      getNormalPriorityPool().execute(job);
+    }
+  }
+
+  /**
+   * Processes the task on the current thread, unless it was canceled or is already processed by
+   * another thread (after a priority change).
+   */
+  private void process(WrappedTask wrappedTask) {
+    final Thread thread = Thread.currentThread();
+    try {
+      if (wrappedTask.getActualTask().getStatus() == TaskStatus.CANCELED
+          || !wrappedTask.tryAssignTo(thread)) {
+        return;
+      }
+
+      // track task use
+      GoogleAnalyticsTracker.trackTaskRun(wrappedTask.getActualTask());
+
+      runningTasks.add(wrappedTask);
+      try {
+        WrappedTaskRunner.run(wrappedTask);
+      } finally {
+        wrappedTask.releaseThread();
+        runningTasks.remove(wrappedTask);
+        // priority might have been changed for this task, reset for the next one
+        thread.setPriority(Thread.NORM_PRIORITY);
+      }
+    } finally {
+      activeJobs.decrementAndGet();
+      scheduleStatusUpdate();
+    }
+  }
+
+  /**
+   * @return the pool for normal priority tasks. A new pool is created if the number of threads was
+   * changed in the preferences, the old pool finishes its tasks.
+   */
+  private synchronized ForkJoinPool getNormalPriorityPool() {
+    // Obtain the settings of max concurrent threads
+    NumOfThreadsParameter parameter = MZmineCore.getConfiguration().getPreferences()
+        .getParameter(MZminePreferences.numOfThreads);
+    int maxRunningThreads;
+    if (parameter.isAutomatic() || (parameter.getValue() == null)) {
+      maxRunningThreads = Runtime.getRuntime().availableProcessors();
+    } else {
+      maxRunningThreads = parameter.getValue();
+    }
+    maxRunningThreads = Math.max(1, maxRunningThreads);
+
+    if (normalPriorityPool == null || maxRunningThreads != normalPriorityThreads) {
+      if (normalPriorityPool != null) {
+        logger.finest(() -> "Number of threads changed. Previously submitted tasks will be "
+            + "processed by the old pool.");
+        normalPriorityPool.shutdown();
+      }
+      normalPriorityThreads = maxRunningThreads;
+      // async mode processes tasks in the order they were submitted
+      normalPriorityPool = new ForkJoinPool(maxRunningThreads, pool -> {
+        final ForkJoinWorkerThread worker = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(
+            pool);
+        worker.setName("Task worker thread " + worker.getPoolIndex());
+        return worker;
+      }, null, true);
+    }
+    return normalPriorityPool;
+  }
+
+  /**
+   * Coalesces status updates of many tasks into a single callback on the task controller thread.
+   */
+  private void scheduleStatusUpdate() {
+    if (statusUpdateScheduled.compareAndSet(false, true)) {
+      statusExecutor.execute(this::updateStatus);
+    }
+  }
+
+  /**
+   * Called on the task controller thread.
+   */
+  private void updateStatus() {
+    statusUpdateScheduled.set(false);
+
+    final boolean active = activeJobs.get() > 0;
+    // Check if all tasks in the queue are finished
+    if (!active && !taskQueue.isEmpty() && taskQueue.allTasksFinished()) {
+      taskQueue.clear();
+    }
+
+    notifyListeners();
+
+    // progress is not reported by the tasks, refresh it while tasks are running
+    final Desktop desktop = MZmineCore.getDesktop();
+    final boolean gui = desktop != null && !(desktop instanceof HeadLessDesktop);
+    if (gui && active && progressRefresh == null) {
+      progressRefresh = statusExecutor.scheduleAtFixedRate(this::notifyListeners,
+          PROGRESS_REFRESH_MS, PROGRESS_REFRESH_MS, TimeUnit.MILLISECONDS);
+    } else if (!active && progressRefresh != null) {
+      progressRefresh.cancel(false);
+      progressRefresh = null;
+    }
+  }
+
+  /**
+   * Called on the task controller thread.
+   */
+  private void notifyListeners() {
+    final int waitingTasks = taskQueue.getNumOfWaitingTasks();
+    final int percentDone = taskQueue.getTotalPercentComplete();
+    if ((waitingTasks != previousWaitingTasks) || (percentDone != previousPercentDone)) {
+      previousWaitingTasks = waitingTasks;
+      previousPercentDone = percentDone;
+      for (TaskControlListener listener : listeners) {
+        listener.numberOfWaitingTasksChanged(waitingTasks, percentDone);
+      }
+    }
+
+    refreshTasksView();
+  }
+
+  private void refreshTasksView() {
+    Desktop desktop = MZmineCore.getDesktop();
+    if ((desktop != null) && (!(desktop instanceof HeadLessDesktop))) {
+      MZmineCore.runLater(() -> desktop.getTasksView().refresh());
+    }
+  }
+
+  @Override
+  public void setTaskPriority(Task task, TaskPriority priority) {
+
+    // Get a snapshot of current task queue
+    WrappedTask[] currentQueue = taskQueue.getQueueSnapshot();
+
+    // Find the requested task
+    for (WrappedTask wrappedTask : currentQueue) {
+
+      if (wrappedTask.getActualTask() == task) {
+        logger.finest(
+            "Setting priority of task \"" + task.getTaskDescription() + "\" to " + priority);
+        wrappedTask.setPriority(priority);
+
+        // waiting tasks are started immediately. The first thread to process the task wins
+        if (priority == TaskPriority.HIGH && !wrappedTask.isAssigned()
+            && task.getStatus() == TaskStatus.WAITING) {
+          submit(wrappedTask, TaskPriority.HIGH);
+        }
+      }
+    }
+
+    // Refresh the tasks window
+    refreshTasksView();
+  }
+
+  @Override
+  public ForkJoinPool getExecutor() {
+    return getNormalPriorityPool();
+  }
+
+  @Override
+  public void addTaskControlListener(TaskControlListener listener) {
+    listeners.add(listener);
+  }
+
+  @Override
+  public boolean isTaskInstanceRunningOrQueued(Class<? extends AbstractTask> clazz) {
+    final WrappedTask[] snapshot = taskQueue.getQueueSnapshot();
+    for (WrappedTask wrappedTask : snapshot) {
+      if (clazz.isInstance(wrappedTask.getActualTask())) {
+        return true;
+      }
+    }
+
+    for (WrappedTask runningTask : runningTasks) {
+      if (clazz.isInstance(runningTask.getActualTask())) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+}
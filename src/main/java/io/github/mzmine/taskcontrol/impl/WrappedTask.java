@@ -54,7 +54,9 @@ public class WrappedTask {
 
   private Task task;
   private Property<TaskPriority> priority;
-  private WorkerThread assignedTo;
+  private Thread assignedTo;
+  // pooled threads continue with other tasks after this task was processed
+  private boolean threadReleased = false;
 
   public WrappedTask(Task task, TaskPriority priority) {
     this.task = task;
@@ -73,10 +75,12 @@ public class WrappedTask {
    */
   void setPriority(TaskPriority priority) {
     MZmineCore.runLater(() -> this.priority.setValue(priority));
-    if (assignedTo != null) {
-      switch (priority) {
-        case HIGH -> assignedTo.setPriority(Thread.MAX_PRIORITY);
-        case NORMAL -> assignedTo.setPriority(Thread.NORM_PRIORITY);
+    synchronized (this) {
+      if (assignedTo != null && !threadReleased) {
+        switch (priority) {
+          case HIGH -> assignedTo.setPriority(Thread.MAX_PRIORITY);
+          case NORMAL -> assignedTo.setPriority(Thread.NORM_PRIORITY);
+        }
       }
     }
   }
@@ -88,12 +92,29 @@ public class WrappedTask {
   /**
    * @return Returns the assigned.
    */
-  boolean isAssigned() {
+  synchronized boolean isAssigned() {
     return assignedTo != null;
   }
 
-  void assignTo(WorkerThread thread) {
+  /**
+   * Assigns this task to the thread, unless it was already assigned.
+   *
+   * @return true if the task was assigned to the thread and shall be processed
+   */
+  synchronized boolean tryAssignTo(Thread thread) {
+    if (assignedTo != null) {
+      return false;
+    }
     assignedTo = thread;
+    return true;
+  }
+
+  /**
+   * The assigned thread finished processing this task. Priority changes are not forwarded to the
+   * thread anymore.
+   */
+  synchronized void releaseThread() {
+    threadReleased = true;
   }
 
   /**
@@ -33,25 +33,17 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
- * Task controller worker thread, this thread will process one task and then finish
+ * Processes a single {@link WrappedTask} on the calling thread. Used by the threads of the {@link
+ * WorkStealingTaskControllerImpl}.
  */
-class WorkerThread extends Thread {
+class WrappedTaskRunner {
 
-  private Logger logger = Logger.getLogger(this.getClass().getName());
+  private static final Logger logger = Logger.getLogger(WrappedTaskRunner.class.getName());
 
-  private WrappedTask wrappedTask;
-  private boolean finished = false;
-
-  WorkerThread(WrappedTask wrappedTask) {
-    super("Thread executing task " + wrappedTask);
-    this.wrappedTask = wrappedTask;
-    wrappedTask.assignTo(this);
+  private WrappedTaskRunner() {
   }
 
-  /**
-   * @see java.lang.Runnable#run()
-   */
-  public void run() {
+  static void run(WrappedTask wrappedTask) {
 
     Task actualTask = wrappedTask.getActualTask();
 
@@ -103,19 +95,5 @@ class WorkerThread extends Thread {
           + actualTask.getTaskDescription() + ": " + ExceptionUtils.exceptionToString(e));
 
     }
-
-    /*
-     * Mark this thread as finished
-     */
-    finished = true;
-
-  }
-
-  boolean isFinished() {
-    return finished;
-  }
-
-  public WrappedTask getWrappedTask() {
-    return wrappedTask;
   }
 }
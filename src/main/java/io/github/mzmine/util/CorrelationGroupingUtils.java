@@ -38,7 +38,6 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
-import java.util.Map.Entry;
 import java.util.Objects;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -87,8 +86,7 @@ public class CorrelationGroupingUtils {
       int c = 0;
       ObservableList<RawDataFile> raw = flist.getRawDataFiles();
       // add all connections
-      for (Entry<Integer, RowsRelationship> e : corrMap.entrySet()) {
-        RowsRelationship r2r = e.getValue();
+      for (RowsRelationship r2r : corrMap.values()) {
         FeatureListRow rowA = r2r.getRowA();
         FeatureListRow rowB = r2r.getRowB();
         if (r2r instanceof R2RCorrelationData data) {
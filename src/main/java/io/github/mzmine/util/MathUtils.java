@@ -39,7 +39,8 @@ public class MathUtils {
 
   /**
    * Cantor pairing function for integers >= 0 to produce unique ids for a pair. The result of a and
-   * b is undirected so the arguments of a and b can be switched
+   * b is undirected so the arguments of a and b can be switched. The result overflows if a + b is
+   * greater than 46340, use {@link #undirectedPairingLong(int, int)} for larger values.
    *
    * @param a >=0
    * @param b >=0
@@ -65,6 +66,21 @@ public class MathUtils {
     return ((a + b) * (a + b + 1) / 2) + a;
   }
 
+  /**
+   * Packs the smaller value into the upper and the larger value into the lower 32 bits to produce
+   * unique ids for a pair without overflow. The result of a and b is undirected so the arguments of
+   * a and b can be switched.
+   *
+   * @param a >=0
+   * @param b >=0
+   * @return unique undirected pairing ID
+   */
+  public static long undirectedPairingLong(int a, int b) {
+    final int min = Math.min(a, b);
+    final int max = Math.max(a, b);
+    return ((long) min << 32) | (max & 0xffffffffL);
+  }
+
   /**
    * median or non-weighted average
    *
@@ -0,0 +1,240 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.ref.Cleaner;
+import java.lang.ref.Cleaner.Cleanable;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Shared pool of memory-mapped temporary files (segments) used by all {@link MemoryMapStorage}s.
+ * <p>
+ * A segment is released as soon as its {@link MappedByteBuffer} (and therefore every buffer slice
+ * that was handed out by a storage) became unreachable, e.g., because the {@link
+ * io.github.mzmine.datamodel.RawDataFile} or {@link io.github.mzmine.datamodel.features.ModularFeatureList}
+ * using it was removed from the project. The underlying temporary file is then truncated, which
+ * frees the disk space, and put on a free list to be re-mapped by the next segment request instead
+ * of creating yet another temporary file. The free list holds at most {@link #MAX_FREE_FILES}
+ * files, all other released files are deleted. The files of discarded segments are always
+ * deleted.
+ */
+final class MemoryMapSegmentPool {
+
+  private static final Logger logger = Logger.getLogger(MemoryMapSegmentPool.class.getName());
+
+  private static final Cleaner cleaner = Cleaner.create();
+
+  /**
+   * Maximum number of truncated temporary files that are kept for reuse.
+   */
+  private static final int MAX_FREE_FILES = 16;
+
+  /**
+   * Truncated temporary files that can be re-mapped.
+   */
+  private static final BlockingQueue<File> freeFiles = new LinkedBlockingQueue<>(MAX_FREE_FILES);
+
+  private static final AtomicLong bytesMapped = new AtomicLong(0L);
+  private static final AtomicLong bytesUsed = new AtomicLong(0L);
+  private static final AtomicLong bytesReclaimed = new AtomicLong(0L);
+
+  private MemoryMapSegmentPool() {
+  }
+
+  /**
+   * Maps a new segment with the given capacity. Reuses a reclaimed temporary file if available.
+   *
+   * @param capacity the capacity in bytes. Must not exceed {@link Integer#MAX_VALUE}.
+   * @return the new segment.
+   */
+  @NotNull
+  static Segment mapSegment(final long capacity) throws IOException {
+    if (capacity > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException(
+          "Cannot map a segment of " + capacity + " bytes. Maximum is " + Integer.MAX_VALUE);
+    }
+
+    File file = freeFiles.poll();
+    if (file == null || !file.exists()) {
+      file = File.createTempFile("mzmine", ".tmp");
+      // Unfortunately, deleteOnExit() doesn't work on Windows, see JDK
+      // bug #4171239. We will try to remove the temporary files in a
+      // shutdown hook registered in the main.ShutDownHook class.
+      file.deleteOnExit();
+      logger.finest("Created a temporary file " + file);
+    } else {
+      logger.finest("Reusing temporary file " + file);
+    }
+
+    final MappedByteBuffer buffer;
+    // Close the temporary file, the memory mapping will remain
+    try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+      buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+    }
+    bytesMapped.addAndGet(capacity);
+
+    final AtomicLong used = new AtomicLong(0L);
+    final AtomicBoolean discarded = new AtomicBoolean(false);
+    // the action must not reference the buffer, otherwise it would never become unreachable
+    final Cleanable cleanable = cleaner.register(buffer,
+        new Reclaimer(file, capacity, used, discarded));
+    return new Segment(buffer, capacity, used, discarded, cleanable);
+  }
+
+  /**
+   * @return The number of bytes currently mapped by all storages.
+   */
+  static long getBytesMapped() {
+    return bytesMapped.get();
+  }
+
+  /**
+   * @return The number of bytes currently occupied by stored data in all storages.
+   */
+  static long getBytesUsed() {
+    return bytesUsed.get();
+  }
+
+  /**
+   * @return The total number of mapped bytes that were released since start up.
+   */
+  static long getBytesReclaimed() {
+    return bytesReclaimed.get();
+  }
+
+  /**
+   * A single memory mapped temporary file. Space is claimed lock free by moving the position.
+   */
+  static final class Segment {
+
+    final MappedByteBuffer buffer;
+    final long capacity;
+    private final AtomicLong position = new AtomicLong(0L);
+    private final AtomicLong used;
+    private final AtomicBoolean discarded;
+    private final Cleanable cleanable;
+
+    private Segment(MappedByteBuffer buffer, long capacity, AtomicLong used,
+        AtomicBoolean discarded, Cleanable cleanable) {
+      this.buffer = buffer;
+      this.capacity = capacity;
+      this.used = used;
+      this.discarded = discarded;
+      this.cleanable = cleanable;
+    }
+
+    /**
+     * Claims a region of this segment.
+     *
+     * @param bytes the number of bytes to claim.
+     * @return the offset of the claimed region or -1 if the segment has not enough space left.
+     */
+    long claim(final long bytes) {
+      long pos;
+      do {
+        pos = position.get();
+        if (pos + bytes > capacity) {
+          return -1;
+        }
+      } while (!position.compareAndSet(pos, pos + bytes));
+      return pos;
+    }
+
+    /**
+     * @return the number of bytes that were not claimed yet.
+     */
+    long remaining() {
+      return capacity - position.get();
+    }
+
+    void addUsed(final long bytes) {
+      used.addAndGet(bytes);
+      bytesUsed.addAndGet(bytes);
+    }
+
+    long getUsed() {
+      return used.get();
+    }
+
+    /**
+     * Releases this segment immediately. The buffer and all its slices must not be accessed
+     * afterwards.
+     */
+    void release() {
+      cleanable.clean();
+    }
+
+    /**
+     * Marks the file of this segment for deletion instead of reuse. The file is deleted once the
+     * segment is released.
+     */
+    void discard() {
+      discarded.set(true);
+    }
+  }
+
+  /**
+   * Truncates the file of a released segment and puts it back onto the free list. Deletes the file
+   * if the segment was discarded or the free list is full.
+   */
+  private record Reclaimer(File file, long capacity, AtomicLong used,
+                           AtomicBoolean discarded) implements Runnable {
+
+    @Override
+    public void run() {
+      bytesMapped.addAndGet(-capacity);
+      bytesUsed.addAndGet(-used.get());
+      bytesReclaimed.addAndGet(capacity);
+
+      if (!discarded.get()) {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+          raf.setLength(0L);
+          if (freeFiles.offer(file)) {
+            return;
+          }
+        } catch (IOException e) {
+          // may happen on windows if the mapping is not released yet
+          logger.log(Level.FINEST, "Cannot truncate temporary file " + file.getAbsolutePath(), e);
+        }
+      }
+
+      if (!file.delete()) {
+        logger.fine(() -> "Cannot delete temporary file " + file.getAbsolutePath());
+      }
+    }
+  }
+}
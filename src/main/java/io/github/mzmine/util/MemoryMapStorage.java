@@ -26,20 +26,13 @@
 package io.github.mzmine.util;
 
 import io.github.mzmine.main.MZmineCore;
-import java.io.File;
+import io.github.mzmine.util.MemoryMapSegmentPool.Segment;
 import java.io.IOException;
-import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.DoubleBuffer;
 import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
-import java.nio.MappedByteBuffer;
-import java.nio.channels.FileChannel;
-import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
-import java.util.logging.Logger;
+import java.util.Arrays;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import sun.misc.Unsafe;
@@ -50,19 +43,23 @@ import sun.misc.Unsafe;
  * buffer is directly bound to the memory-mapped portion of the file so the data can be directly
  * accessed without loading it into another intermediate primitive type array.
  * <p>
- * The size of each temporary file is STORAGE_FILE_CAPACITY bytes. When the file is full, a new file
- * is automatically created using the createNewMappedFile() function. The size of each temporary
- * file in the filesystem may show as 1GB, but actually only a portion of that space is occupied on
- * the disk, depending on the amount of stored data (this can be examined using the 'du -hs' Linux
- * command.
+ * The storage consists of segments (memory mapped temporary files) that grow from
+ * INITIAL_SEGMENT_CAPACITY up to STORAGE_FILE_CAPACITY bytes. This way, the many small storages
+ * (e.g., one per feature list) do not create 1 GB files each. Arrays larger than
+ * STORAGE_FILE_CAPACITY get a dedicated segment (up to 2 GB).
  * <p>
- * There is no support for removing data from the file - we assume such operation is rare and
- * therefore the data can be left on the disk until the whole temporary file is discarded.
+ * Storing is lock free: Every thread claims an append region of REGION_CAPACITY bytes by an atomic
+ * update of the segment's (64-bit) position and fills it without synchronization. Only creating a
+ * new segment requires a lock. Large arrays are claimed directly from the segment.
+ * <p>
+ * There is no support for removing single arrays. Instead, a segment is reclaimed by the {@link
+ * MemoryMapSegmentPool} as soon as no buffer of this segment is referenced anymore, which is the case
+ * when the raw data file or feature list using this storage was removed from the project. The
+ * temporary file is then truncated and reused for the next segment. Only a limited number of files
+ * is kept for reuse, the others are deleted.
  * <p>
  * There is a limit on the number of open file descriptors (e.g. 1024 by default on Linux). With 1
  * GB per temporary file, this would give us about 1 TB of storage space, so perhaps it is okay.
- * There is no way to remove the memory-mapped file, it is removed automatically when the
- * MappedByteBuffer is garbage-collected.
  * <p>
  * The total amount of storage space is also limited by the amount of addressable virtual memory
  * (e.g., 128TB on Linux). For this reason, this approach requires a 64-bit system - the limit would
@@ -75,14 +72,38 @@ public class MemoryMapStorage {
    * single MappedByteBuffer. 1 GB per file seems like a good start.
    */
   private static final long STORAGE_FILE_CAPACITY = 1_000_000_000L;
-  private final Logger logger = Logger.getLogger(this.getClass().getName());
-  private final Set<File> temporaryFiles = new HashSet<>();
-  private final List<MappedByteBuffer> mappedByteBufferList = new ArrayList<>();
+  /**
+   * The first segment of a storage is small, every new segment doubles the capacity.
+   */
+  private static final long INITIAL_SEGMENT_CAPACITY = 32_000_000L;
+  /**
+   * Capacity of the region that is claimed by a single thread. Arrays larger than
+   * DIRECT_CLAIM_THRESHOLD bytes are claimed directly from the segment.
+   */
+  private static final long REGION_CAPACITY = 1 << 20;
+  private static final long DIRECT_CLAIM_THRESHOLD = REGION_CAPACITY / 4;
+  /**
+   * Stored arrays are aligned to 8 bytes.
+   */
+  private static final long ALIGNMENT = Long.BYTES;
 
   private static boolean storeFeaturesInRam = false;
   private static boolean storeRawFilesInRam = false;
   private static boolean storeMassListsInRam = false;
 
+  /**
+   * The segments of this storage. The last segment is the one we are currently writing into.
+   * Replaced (copy on write) when a new segment is created.
+   */
+  private volatile Segment[] segments = new Segment[0];
+  private final Object segmentLock = new Object();
+
+  /**
+   * The region every thread is currently writing into. The region only references the segment by
+   * its index so it does not prevent the segment from being reclaimed.
+   */
+  private volatile ThreadLocal<AppendRegion> regions = new ThreadLocal<>();
+
   /**
    * @return The {@link MemoryMapStorage} or null, if the data shall be stored in ram.
    */
@@ -118,42 +139,96 @@ public class MemoryMapStorage {
   }
 
   /**
-   * The file that we are currently writing into.
-   */
-  private MappedByteBuffer currentMappedFile = null;
-
-  /**
-   * Creates a new temporary file, maps it into memory, and returns the corresponding
-   * MappedByteBuffer. The capacity of the buffer is STORAGE_FILE_CAPACITY bytes.
+   * Claims a slice of the given size in one of the segments. Lock free, unless a new segment has to
+   * be created.
    *
-   * @return a MappedByteBuffer corresponding to the memory-mapped temporary file
-   * @throws IOException
+   * @param bytes the number of bytes
+   * @return a slice of a segment with exactly the requested capacity
    */
-  private MappedByteBuffer createNewMappedFile() throws IOException {
+  private ByteBuffer claim(final long bytes) throws IOException {
+    final long aligned = align(bytes);
+
+    if (aligned > DIRECT_CLAIM_THRESHOLD) {
+      while (true) {
+        final Segment[] current = segments;
+        if (current.length > 0) {
+          final Segment segment = current[current.length - 1];
+          final long offset = segment.claim(aligned);
+          if (offset >= 0) {
+            return slice(segment, offset, bytes);
+          }
+        }
+        addSegment(current, aligned);
+      }
+    }
+
+    final ThreadLocal<AppendRegion> threadRegions = regions;
+    AppendRegion region = threadRegions.get();
+    if (region == null) {
+      region = new AppendRegion();
+      threadRegions.set(region);
+    }
 
-    // Create the temporary storage file
-    File storageFileName = File.createTempFile("mzmine", ".tmp");
-    temporaryFiles.add(storageFileName);
-    logger.finest("Created a temporary file " + storageFileName);
+    while (true) {
+      final Segment[] current = segments;
+      if (region.segmentIndex < current.length && region.position + aligned <= region.end) {
+        final Segment segment = current[region.segmentIndex];
+        final long offset = region.position;
+        region.position += aligned;
+        return slice(segment, offset, bytes);
+      }
 
-    // Open the file for writing
-    RandomAccessFile storageFile = new RandomAccessFile(storageFileName, "rw");
+      // claim a new region in the latest segment
+      if (current.length > 0) {
+        final Segment segment = current[current.length - 1];
+        final long regionSize = Math.max(Math.min(REGION_CAPACITY, segment.remaining()), aligned);
+        final long offset = segment.claim(regionSize);
+        if (offset >= 0) {
+          region.segmentIndex = current.length - 1;
+          region.position = offset;
+          region.end = offset + regionSize;
+          continue;
+        }
+      }
+      addSegment(current, aligned);
+    }
+  }
 
-    // Map the file into memory
-    MappedByteBuffer mappedFileBuffer =
-        storageFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, STORAGE_FILE_CAPACITY);
-    mappedByteBufferList.add(mappedFileBuffer);
+  private static ByteBuffer slice(Segment segment, long offset, long bytes) {
+    segment.addUsed(bytes);
+    // absolute slice, does not modify the position of the segment buffer
+    return segment.buffer.slice((int) offset, (int) bytes);
+  }
 
-    // Close the temporary file, the memory mapping will remain
-    storageFile.close();
+  /**
+   * Appends a new segment unless another thread did so in the meantime.
+   *
+   * @param expected      the segments the caller tried to claim space from
+   * @param requiredBytes the minimum capacity of the new segment
+   */
+  private void addSegment(final Segment[] expected, final long requiredBytes) throws IOException {
+    synchronized (segmentLock) {
+      if (segments != expected) {
+        // another thread already appended a segment
+        return;
+      }
 
-    // Unfortunately, deleteOnExit() doesn't work on Windows, see JDK
-    // bug #4171239. We will try to remove the temporary files in a
-    // shutdown hook registered in the main.ShutDownHook class.
-    storageFileName.deleteOnExit();
+      final long capacity;
+      if (expected.length == 0) {
+        capacity = INITIAL_SEGMENT_CAPACITY;
+      } else {
+        capacity = Math.min(STORAGE_FILE_CAPACITY, expected[expected.length - 1].capacity * 2);
+      }
 
-    return mappedFileBuffer;
+      final Segment[] newSegments = Arrays.copyOf(expected, expected.length + 1);
+      newSegments[expected.length] = MemoryMapSegmentPool.mapSegment(
+          Math.max(capacity, requiredBytes));
+      segments = newSegments;
+    }
+  }
 
+  private static long align(final long bytes) {
+    return (bytes + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
   }
 
   /**
@@ -165,8 +240,7 @@ public class MemoryMapStorage {
    * @throws IOException
    */
   @NotNull
-  public synchronized DoubleBuffer storeData(@NotNull final double data[])
-      throws IOException {
+  public DoubleBuffer storeData(@NotNull final double data[]) throws IOException {
     return storeData(data, 0, data.length);
   }
 
@@ -181,21 +255,9 @@ public class MemoryMapStorage {
    * @throws IOException
    */
   @NotNull
-  public synchronized DoubleBuffer storeData(@NotNull final double data[], int offset,
-      int length) throws IOException {
-
-    // If we have no storage file or if the current file is full, create a new one
-    if ((currentMappedFile == null)
-        || (currentMappedFile.position() + (length * Double.BYTES) > STORAGE_FILE_CAPACITY)) {
-      currentMappedFile = createNewMappedFile();
-    }
-
-    // Save the current position in the storage file
-    final int savedPosition = currentMappedFile.position();
-
-    // Set the limit to the end of the new array and create a buffer slice
-    currentMappedFile.limit(savedPosition + length * Double.BYTES);
-    final ByteBuffer slice = currentMappedFile.slice();
+  public DoubleBuffer storeData(@NotNull final double data[], int offset, int length)
+      throws IOException {
+    final ByteBuffer slice = claim((long) length * Double.BYTES);
 
     // Create a double view of the memory-mapped byte buffer
     DoubleBuffer sliceDoubleView = slice.asDoubleBuffer();
@@ -203,14 +265,8 @@ public class MemoryMapStorage {
     // Copy the data to the memory mapped storage
     sliceDoubleView.put(data, offset, length);
 
-    // Update the position and the main buffer so we are ready to store the next array
-    currentMappedFile.position(savedPosition + length * Double.BYTES);
-
     // Create a read-only version of the new buffer slice
-    final DoubleBuffer readOnlySlice = sliceDoubleView.asReadOnlyBuffer();
-
-    return readOnlySlice;
-
+    return sliceDoubleView.asReadOnlyBuffer();
   }
 
   /**
@@ -222,8 +278,7 @@ public class MemoryMapStorage {
    * @throws IOException
    */
   @NotNull
-  public synchronized FloatBuffer storeData(@NotNull final float data[])
-      throws IOException {
+  public FloatBuffer storeData(@NotNull final float data[]) throws IOException {
     return storeData(data, 0, data.length);
   }
 
@@ -238,21 +293,9 @@ public class MemoryMapStorage {
    * @throws IOException
    */
   @NotNull
-  public synchronized FloatBuffer storeData(@NotNull final float data[], int offset,
-      int length) throws IOException {
-
-    // If we have no storage file or if the current file is full, create a new one
-    if ((currentMappedFile == null)
-        || (currentMappedFile.position() + (length * Float.BYTES) > STORAGE_FILE_CAPACITY)) {
-      currentMappedFile = createNewMappedFile();
-    }
-
-    // Save the current position in the storage file
-    final int savedPosition = currentMappedFile.position();
-
-    // Set the limit to the end of the new array and create a buffer slice
-    currentMappedFile.limit(savedPosition + length * Float.BYTES);
-    final ByteBuffer slice = currentMappedFile.slice();
+  public FloatBuffer storeData(@NotNull final float data[], int offset, int length)
+      throws IOException {
+    final ByteBuffer slice = claim((long) length * Float.BYTES);
 
     // Create a float view of the memory-mapped byte buffer
     FloatBuffer sliceFloatView = slice.asFloatBuffer();
@@ -260,14 +303,8 @@ public class MemoryMapStorage {
     // Copy the data to the memory mapped storage
     sliceFloatView.put(data, offset, length);
 
-    // Update the position and the main buffer so we are ready to store the next array
-    currentMappedFile.position(savedPosition + length * Float.BYTES);
-
     // Create a read-only version of the new buffer slice
-    final FloatBuffer readOnlySlice = sliceFloatView.asReadOnlyBuffer();
-
-    return readOnlySlice;
-
+    return sliceFloatView.asReadOnlyBuffer();
   }
 
   /**
@@ -279,7 +316,7 @@ public class MemoryMapStorage {
    * @throws IOException
    */
   @NotNull
-  public synchronized IntBuffer storeData(@NotNull final int data[]) throws IOException {
+  public IntBuffer storeData(@NotNull final int data[]) throws IOException {
     return storeData(data, 0, data.length);
   }
 
@@ -294,21 +331,9 @@ public class MemoryMapStorage {
    * @throws IOException
    */
   @NotNull
-  public synchronized IntBuffer storeData(@NotNull final int data[], int offset,
-      int length) throws IOException {
-
-    // If we have no storage file or if the current file is full, create a new one
-    if ((currentMappedFile == null)
-        || (currentMappedFile.position() + (length * Integer.BYTES) > STORAGE_FILE_CAPACITY)) {
-      currentMappedFile = createNewMappedFile();
-    }
-
-    // Save the current position in the storage file
-    final int savedPosition = currentMappedFile.position();
-
-    // Set the limit to the end of the new array and create a buffer slice
-    currentMappedFile.limit(savedPosition + length * Integer.BYTES);
-    final ByteBuffer slice = currentMappedFile.slice();
+  public IntBuffer storeData(@NotNull final int data[], int offset, int length)
+      throws IOException {
+    final ByteBuffer slice = claim((long) length * Integer.BYTES);
 
     // Create an int view of the memory-mapped byte buffer
     IntBuffer sliceIntView = slice.asIntBuffer();
@@ -316,37 +341,88 @@ public class MemoryMapStorage {
     // Copy the data to the memory mapped storage
     sliceIntView.put(data, offset, length);
 
-    // Update the position and the main buffer so we are ready to store the next array
-    currentMappedFile.position(savedPosition + length * Integer.BYTES);
-
     // Create a read-only version of the new buffer slice
-    final IntBuffer readOnlySlice = sliceIntView.asReadOnlyBuffer();
-
-    return readOnlySlice;
-
+    return sliceIntView.asReadOnlyBuffer();
   }
 
   /**
-   * Discard this memory-mapped storage and remove all the associated temporary files.
+   * Discard this memory-mapped storage and delete all the associated temporary files. The buffers
+   * returned by this storage must not be accessed afterwards. If theUnsafe is null, the mappings
+   * cannot be released immediately. The files are then deleted as soon as the stored buffers are
+   * not referenced anymore.
    */
-  public synchronized void discard(Unsafe theUnsafe) throws IOException {
+  public void discard(@Nullable Unsafe theUnsafe) throws IOException {
+    final Segment[] discarded;
+    synchronized (segmentLock) {
+      discarded = segments;
+      segments = new Segment[0];
+      regions = new ThreadLocal<>();
+    }
 
-    if (theUnsafe != null) {
-      for (MappedByteBuffer mappedByteBuffer : mappedByteBufferList) {
-        theUnsafe.invokeCleaner(mappedByteBuffer);
+    for (Segment segment : discarded) {
+      segment.discard();
+      if (theUnsafe != null) {
+        theUnsafe.invokeCleaner(segment.buffer);
+        // delete the file, safe because the mapping was released
+        segment.release();
       }
     }
+  }
 
-    for (File tmpFile : temporaryFiles) {
-      if (!tmpFile.delete()) {
-        logger.warning("Could not delete temporary file " + tmpFile.getAbsolutePath());
-      }
+  /**
+   * @return The number of bytes mapped by this storage.
+   */
+  public long getBytesMapped() {
+    long bytes = 0L;
+    for (Segment segment : segments) {
+      bytes += segment.capacity;
     }
+    return bytes;
+  }
 
-    temporaryFiles.clear();
-    currentMappedFile = null;
+  /**
+   * @return The number of bytes occupied by data in this storage.
+   */
+  public long getBytesUsed() {
+    long bytes = 0L;
+    for (Segment segment : segments) {
+      bytes += segment.getUsed();
+    }
+    return bytes;
   }
 
+  /**
+   * @return The number of bytes currently mapped by all storages.
+   */
+  public static long getTotalBytesMapped() {
+    return MemoryMapSegmentPool.getBytesMapped();
+  }
+
+  /**
+   * @return The number of bytes currently occupied by data in all storages.
+   */
+  public static long getTotalBytesUsed() {
+    return MemoryMapSegmentPool.getBytesUsed();
+  }
+
+  /**
+   * @return The number of mapped bytes that were reclaimed from discarded or unreferenced segments
+   * since start up.
+   */
+  public static long getTotalBytesReclaimed() {
+    return MemoryMapSegmentPool.getBytesReclaimed();
+  }
+
+  /**
+   * The part of a segment a single thread is currently appending to. Only accessed by the owning
+   * thread.
+   */
+  private static final class AppendRegion {
+
+    private int segmentIndex = Integer.MAX_VALUE;
+    private long position;
+    private long end;
+  }
 
   public static boolean isStoreFeaturesInRam() {
     return storeFeaturesInRam;
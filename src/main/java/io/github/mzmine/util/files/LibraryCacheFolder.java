@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.util.files;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import org.apache.commons.io.FileUtils;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Folder of the binary caches of spectral libraries and compound databases. All caches share the
+ * folder and its size limit, the least recently used cache files are deleted first. Cache files
+ * are written to a partial file and moved in place when complete, so other instances never read an
+ * unfinished cache.
+ */
+public class LibraryCacheFolder {
+
+  private static final Logger logger = Logger.getLogger(LibraryCacheFolder.class.getName());
+
+  /**
+   * Maximum size of all cache files in the user cache folder
+   */
+  public static final long MAX_CACHE_BYTES = 5_000_000_000L;
+  private static final String PARTIAL_FILE_SUFFIX = ".part";
+  // partial files of other instances are only deleted after this time
+  private static final long PARTIAL_FILE_MAX_AGE = TimeUnit.DAYS.toMillis(1);
+
+  private static final LibraryCacheFolder userCache = new LibraryCacheFolder(
+      new File(FileUtils.getUserDirectory(), ".mzmine3_library_cache"), MAX_CACHE_BYTES);
+
+  private final File directory;
+  private final long maxBytes;
+
+  /**
+   * @param directory the cache folder, created on the first write
+   * @param maxBytes  the maximum size of all cache files
+   */
+  public LibraryCacheFolder(@NotNull File directory, long maxBytes) {
+    this.directory = directory;
+    this.maxBytes = maxBytes;
+  }
+
+  /**
+   * @return the .mzmine3_library_cache folder in the user directory
+   */
+  @NotNull
+  public static LibraryCacheFolder getUserCache() {
+    return userCache;
+  }
+
+  @NotNull
+  public File getDirectory() {
+    return directory;
+  }
+
+  /**
+   * @param name the file name, including the suffix
+   * @return the cache file. Might not exist.
+   */
+  @NotNull
+  public File getFile(@NotNull String name) {
+    return new File(directory, name);
+  }
+
+  /**
+   * Creates a new partial file in the cache folder. Write the cache to this file and move it in
+   * place with {@link #commit(File, File)}.
+   *
+   * @param prefix the prefix of the file name, e.g., the name of the final cache file
+   */
+  @NotNull
+  public File createPartialFile(@NotNull String prefix) throws IOException {
+    Files.createDirectories(directory.toPath());
+    return Files.createTempFile(directory.toPath(), prefix, PARTIAL_FILE_SUFFIX).toFile();
+  }
+
+  /**
+   * Moves a completely written partial file to its cache file and deletes the least recently used
+   * cache files if the folder is too large.
+   *
+   * @param partial the partial file from {@link #createPartialFile(String)}
+   * @param target  the cache file
+   */
+  public void commit(@NotNull File partial, @NotNull File target) throws IOException {
+    Files.move(partial.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+    prune(target, System.currentTimeMillis());
+  }
+
+  /**
+   * Marks a cache file as recently used, so it is deleted last.
+   */
+  public void markUsed(@NotNull File file) {
+    if (!file.setLastModified(System.currentTimeMillis())) {
+      logger.finest(() -> "Cannot update the date of " + file.getAbsolutePath());
+    }
+  }
+
+  /**
+   * Deletes the least recently used cache files until all files fit into the maximum size. Partial
+   * files are deleted once they are older than one day, they were left by instances that did not
+   * finish writing.
+   *
+   * @param keep the cache file that was just written. Never deleted.
+   * @param now  the current time in ms
+   */
+  public void prune(@Nullable File keep, long now) {
+    final File[] partialFiles = directory.listFiles(
+        (dir, name) -> name.endsWith(PARTIAL_FILE_SUFFIX));
+    if (partialFiles != null) {
+      for (File file : partialFiles) {
+        if (now - file.lastModified() > PARTIAL_FILE_MAX_AGE && !file.delete()) {
+          logger.fine(() -> "Cannot delete partial cache file " + file.getAbsolutePath());
+        }
+      }
+    }
+
+    final File[] files = directory.listFiles(
+        file -> file.isFile() && !file.getName().endsWith(PARTIAL_FILE_SUFFIX));
+    if (files == null) {
+      return;
+    }
+    // most recently used first
+    Arrays.sort(files, Comparator.comparingLong(File::lastModified).reversed());
+    long bytes = keep != null ? keep.length() : 0;
+    for (File file : files) {
+      if (file.equals(keep)) {
+        continue;
+      }
+      bytes += file.length();
+      if (bytes > maxBytes) {
+        logger.fine(() -> "Deleting cache file " + file.getAbsolutePath());
+        if (!file.delete()) {
+          logger.fine(() -> "Cannot delete cache file " + file.getAbsolutePath());
+        }
+      }
+    }
+  }
+}
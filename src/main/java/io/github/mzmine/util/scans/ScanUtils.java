@@ -214,11 +214,10 @@ public class ScanUtils {
     double baseMz = 0d;
     double baseIntensity = 0d;
 
-    for (int i = 0; i < scan.getNumberOfDataPoints(); i++) {
+    final int numDataPoints = scan.getNumberOfDataPoints();
+    for (int i = findFirstMzIndex(scan, lower); i < numDataPoints; i++) {
       double mz = scan.getMzValue(i);
-      if (mz < lower) {
-        continue;
-      } else if (mz > upper) {
+      if (mz > upper) {
         break;
       }
 
@@ -232,6 +231,28 @@ public class ScanUtils {
     return found ? new SimpleDataPoint(baseMz, baseIntensity) : null;
   }
 
+  /**
+   * Binary search for the first data point at or above the given m/z.
+   *
+   * @param spectrum spectrum sorted by m/z
+   * @param mz       the lower m/z bound
+   * @return the index of the first data point with m/z >= mz or the number of data points, if all
+   * data points are below mz
+   */
+  public static int findFirstMzIndex(@NotNull MassSpectrum spectrum, double mz) {
+    int low = 0;
+    int high = spectrum.getNumberOfDataPoints();
+    while (low < high) {
+      final int mid = (low + high) >>> 1;
+      if (spectrum.getMzValue(mid) < mz) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
   /**
    * @param numValues The number of values to be scanned.
    * @return The base peak or null
@@ -269,10 +290,20 @@ public class ScanUtils {
    * @return the total ion count of the scan within the mass range.
    */
   public static double calculateTIC(Scan scan, Range<Double> mzRange) {
+    final Range<Double> scanMzRange = scan.getDataPointMZRange();
+    final Double scanTIC = scan.getTIC();
+    if (scanMzRange != null && scanTIC != null && mzRange.encloses(scanMzRange)) {
+      return scanTIC;
+    }
 
+    final double upper = mzRange.upperEndpoint();
+    final int numDataPoints = scan.getNumberOfDataPoints();
     double tic = 0.0;
-    for (final DataPoint dataPoint : selectDataPointsByMass(extractDataPoints(scan), mzRange)) {
-      tic += dataPoint.getIntensity();
+    for (int i = findFirstMzIndex(scan, mzRange.lowerEndpoint()); i < numDataPoints; i++) {
+      if (scan.getMzValue(i) > upper) {
+        break;
+      }
+      tic += scan.getIntensityValue(i);
     }
     return tic;
   }
@@ -0,0 +1,374 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.util.scans.similarity;
+
+import io.github.mzmine.datamodel.DataPoint;
+import io.github.mzmine.parameters.parametertypes.tolerances.MZTolerance;
+import io.github.mzmine.util.scans.ScanAlignment;
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import it.unimi.dsi.fastutil.ints.IntComparator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Primitive replacement of {@link ScanAlignment#align(MZTolerance, DataPoint[], DataPoint[])}
+ * followed by {@link ScanAlignment#toIntensityMatrixWeighted(List, double, double)} and the cosine
+ * calculation. Signals are kept in m/z sorted arrays and each signal is matched by a binary search
+ * instead of a scan over all remaining signals. The alignment is the same: signals of spectrum a
+ * are matched in the order of descending intensity to the most intense unmatched signal of
+ * spectrum b within the m/z tolerance (ties are resolved like in {@link
+ * io.github.mzmine.util.DataPointSorter} and then by the input order).
+ * <p>
+ * Instances hold the scratch buffers of the last alignment and are not thread safe. Use {@link
+ * #get()} to get the instance of the current thread.
+ */
+public final class SpectralAlignmentKernel {
+
+  private static final ThreadLocal<SpectralAlignmentKernel> threadKernel = ThreadLocal.withInitial(
+      SpectralAlignmentKernel::new);
+
+  private final Spectrum a = new Spectrum();
+  private final Spectrum b = new Spectrum();
+  // index of the matched signal in b for each signal in a (both m/z sorted) or -1
+  private int[] matchOfA = new int[0];
+  private boolean[] matchedB = new boolean[0];
+  private int overlap = 0;
+
+  // matched pairs sorted by m/z for the neighbour factor
+  private int[] pairs = new int[0];
+  private double[] pairMzs = new double[0];
+  private final IntComparator pairMzComparator = (p1, p2) -> Double.compare(pairMzs[p1],
+      pairMzs[p2]);
+
+  private SpectralAlignmentKernel() {
+  }
+
+  /**
+   * @return the kernel of the current thread
+   */
+  @NotNull
+  public static SpectralAlignmentKernel get() {
+    return threadKernel.get();
+  }
+
+  /**
+   * Aligns two spectra.
+   *
+   * @param mzTol the tolerance to match signals
+   * @param a     spectrum a, e.g., the library spectrum. Not modified.
+   * @param b     spectrum b, e.g., the query spectrum. Not modified.
+   * @return the number of matched signals
+   */
+  public int align(@NotNull MZTolerance mzTol, @NotNull DataPoint[] a, @NotNull DataPoint[] b) {
+    this.a.load(a);
+    this.b.load(b);
+    return align(mzTol);
+  }
+
+  /**
+   * Aligns two spectra.
+   *
+   * @param mzTol        the tolerance to match signals
+   * @param mzsA         m/z values of spectrum a sorted ascending
+   * @param intensitiesA the intensities of spectrum a
+   * @param numA         the number of signals in spectrum a
+   * @param mzsB         m/z values of spectrum b sorted ascending
+   * @param intensitiesB the intensities of spectrum b
+   * @param numB         the number of signals in spectrum b
+   * @return the number of matched signals
+   */
+  public int align(@NotNull MZTolerance mzTol, double[] mzsA, double[] intensitiesA, int numA,
+      double[] mzsB, double[] intensitiesB, int numB) {
+    a.load(mzsA, intensitiesA, numA);
+    b.load(mzsB, intensitiesB, numB);
+    return align(mzTol);
+  }
+
+  private int align(MZTolerance mzTol) {
+    final int numA = a.size;
+    final int numB = b.size;
+    if (matchOfA.length < numA) {
+      matchOfA = new int[Math.max(numA, matchOfA.length * 2)];
+    }
+    if (matchedB.length < numB) {
+      matchedB = new boolean[Math.max(numB, matchedB.length * 2)];
+    } else {
+      Arrays.fill(matchedB, 0, numB, false);
+    }
+
+    overlap = 0;
+    final double[] mzsB = b.mzs;
+    final int[] rankB = b.ranks;
+    for (int r = 0; r < numA; r++) {
+      final int i = a.order[r];
+      final double mz = a.mzs[i];
+      // same bounds as MZTolerance#checkWithinTolerance
+      final double tolerance = mzTol.getMzToleranceForMass(mz);
+      final double lower = mz - tolerance;
+      final double upper = mz + tolerance;
+
+      int best = -1;
+      for (int j = lowerBound(mzsB, numB, lower); j < numB && mzsB[j] <= upper; j++) {
+        if (!matchedB[j] && (best == -1 || rankB[j] < rankB[best])) {
+          best = j;
+        }
+      }
+      matchOfA[i] = best;
+      if (best != -1) {
+        matchedB[best] = true;
+        overlap++;
+      }
+    }
+    return overlap;
+  }
+
+  /**
+   * @return the number of matched signals of the last alignment
+   */
+  public int getOverlap() {
+    return overlap;
+  }
+
+  /**
+   * Weighted cosine similarity of the last alignment. Same as {@link
+   * io.github.mzmine.util.maths.similarity.Similarity#COSINE} on the weighted intensity matrix.
+   *
+   * @param weights         the m/z and intensity weights
+   * @param handleUnmatched defines which unmatched signals are kept (spectrum a is the library,
+   *                        spectrum b the query)
+   * @return the cosine similarity
+   */
+  public double weightedCosine(@NotNull Weights weights,
+      @NotNull HandleUnmatchedSignalOptions handleUnmatched) {
+    final boolean keepA = handleUnmatched == HandleUnmatchedSignalOptions.KEEP_ALL_AND_MATCH_TO_ZERO
+        || handleUnmatched == HandleUnmatchedSignalOptions.KEEP_LIBRARY_SIGNALS;
+    final boolean keepB = handleUnmatched == HandleUnmatchedSignalOptions.KEEP_ALL_AND_MATCH_TO_ZERO
+        || handleUnmatched == HandleUnmatchedSignalOptions.KEEP_EXPERIMENTAL_SIGNALS;
+    final double weightIntensity = weights.getIntensity();
+    final double weightMZ = weights.getMz();
+
+    double dot = 0;
+    double normA = 0;
+    double normB = 0;
+    for (int i = 0; i < a.size; i++) {
+      final int j = matchOfA[i];
+      if (j != -1) {
+        final double va = weight(a.mzs[i], a.intensities[i], weightIntensity, weightMZ);
+        final double vb = weight(b.mzs[j], b.intensities[j], weightIntensity, weightMZ);
+        dot += va * vb;
+        normA += va * va;
+        normB += vb * vb;
+      } else if (keepA) {
+        final double va = weight(a.mzs[i], a.intensities[i], weightIntensity, weightMZ);
+        normA += va * va;
+      }
+    }
+    if (keepB) {
+      for (int j = 0; j < b.size; j++) {
+        if (!matchedB[j]) {
+          final double vb = weight(b.mzs[j], b.intensities[j], weightIntensity, weightMZ);
+          normB += vb * vb;
+        }
+      }
+    }
+    return dot / (Math.sqrt(normA) * Math.sqrt(normB));
+  }
+
+  /**
+   * Sum of the relative intensity ratios of neighbouring matched signals in both spectra divided
+   * by the overlap (0-1). Matched pairs are sorted by their minimum m/z.
+   *
+   * @return the relative neighbour factor of the last alignment
+   */
+  public double relativeNeighbourFactor() {
+    if (pairs.length < overlap) {
+      pairs = new int[Math.max(overlap, pairs.length * 2)];
+    }
+    if (pairMzs.length < a.size) {
+      pairMzs = new double[Math.max(a.size, pairMzs.length * 2)];
+    }
+    // pairs in the order of the alignment, stable sort by m/z
+    int n = 0;
+    for (int r = 0; r < a.size; r++) {
+      final int i = a.order[r];
+      final int j = matchOfA[i];
+      if (j != -1) {
+        pairs[n++] = i;
+        pairMzs[i] = Math.min(a.mzs[i], b.mzs[j]);
+      }
+    }
+    IntArrays.mergeSort(pairs, 0, n, pairMzComparator);
+
+    double factor = 0;
+    for (int p = 1; p < n; p++) {
+      final int i1 = pairs[p - 1];
+      final int i2 = pairs[p];
+      final double ratioA = a.intensities[i2] / a.intensities[i1];
+      final double ratioB = b.intensities[matchOfA[i2]] / b.intensities[matchOfA[i1]];
+      factor += Math.min(ratioA, ratioB) / Math.max(ratioA, ratioB);
+    }
+    return factor / overlap;
+  }
+
+  /**
+   * Only available if the last alignment was called with data points.
+   *
+   * @return the matched pairs of the last alignment as DataPoint[a, b]
+   */
+  @NotNull
+  public List<DataPoint[]> getAlignedDataPoints() {
+    if (a.dataPoints == null || b.dataPoints == null) {
+      throw new IllegalStateException("The last alignment was not called with data points");
+    }
+    final List<DataPoint[]> aligned = new ArrayList<>(overlap);
+    for (int r = 0; r < a.size; r++) {
+      final int i = a.order[r];
+      final int j = matchOfA[i];
+      if (j != -1) {
+        aligned.add(new DataPoint[]{a.dataPoints[a.sources[i]], b.dataPoints[b.sources[j]]});
+      }
+    }
+    return aligned;
+  }
+
+  private static double weight(double mz, double intensity, double weightIntensity,
+      double weightMZ) {
+    // same as ScanAlignment#toIntensityMatrixWeighted
+    return Math.pow(intensity, weightIntensity) * Math.pow(mz, weightMZ);
+  }
+
+  /**
+   * @return the first index with a value >= value
+   */
+  private static int lowerBound(double[] sorted, int n, double value) {
+    int lo = 0;
+    int hi = n;
+    while (lo < hi) {
+      final int mid = (lo + hi) >>> 1;
+      if (sorted[mid] < value) {
+        lo = mid + 1;
+      } else {
+        hi = mid;
+      }
+    }
+    return lo;
+  }
+
+  /**
+   * Reusable m/z sorted signals of one spectrum
+   */
+  private static final class Spectrum {
+
+    private int size = 0;
+    private double[] mzs = new double[0];
+    private double[] intensities = new double[0];
+    // index of each signal in the input, used to resolve ties and to map back to data points
+    private int[] sources = new int[0];
+    // indices sorted by descending intensity (the alignment order) and the rank of each signal
+    private int[] order = new int[0];
+    private int[] ranks = new int[0];
+    private DataPoint[] dataPoints;
+
+    private final IntComparator mzComparator = (i1, i2) -> Double.compare(mzs[i1], mzs[i2]);
+    private final IntComparator intensityComparator = (i1, i2) -> {
+      // same as the descending DataPointSorter by intensity, then m/z
+      int c = Double.compare(intensities[i2], intensities[i1]);
+      if (c == 0) {
+        c = Double.compare(mzs[i2], mzs[i1]);
+      }
+      return c != 0 ? c : Integer.compare(sources[i1], sources[i2]);
+    };
+
+    private void load(DataPoint[] dps) {
+      final int n = dps.length;
+      ensureCapacity(n);
+      dataPoints = dps;
+      size = n;
+
+      boolean sorted = true;
+      for (int i = 0; i < n; i++) {
+        mzs[i] = dps[i].getMZ();
+        sorted &= i == 0 || mzs[i - 1] <= mzs[i];
+      }
+      if (sorted) {
+        for (int i = 0; i < n; i++) {
+          intensities[i] = dps[i].getIntensity();
+          sources[i] = i;
+        }
+      } else {
+        // sort by m/z, the order array is reused as a buffer
+        for (int i = 0; i < n; i++) {
+          order[i] = i;
+        }
+        IntArrays.quickSort(order, 0, n, mzComparator);
+        for (int i = 0; i < n; i++) {
+          final int source = order[i];
+          sources[i] = source;
+          intensities[i] = dps[source].getIntensity();
+        }
+        for (int i = 0; i < n; i++) {
+          mzs[i] = dps[sources[i]].getMZ();
+        }
+      }
+      rank();
+    }
+
+    private void load(double[] mzs, double[] intensities, int n) {
+      ensureCapacity(n);
+      dataPoints = null;
+      size = n;
+      System.arraycopy(mzs, 0, this.mzs, 0, n);
+      System.arraycopy(intensities, 0, this.intensities, 0, n);
+      for (int i = 0; i < n; i++) {
+        sources[i] = i;
+      }
+      rank();
+    }
+
+    private void rank() {
+      for (int i = 0; i < size; i++) {
+        order[i] = i;
+      }
+      IntArrays.quickSort(order, 0, size, intensityComparator);
+      for (int r = 0; r < size; r++) {
+        ranks[order[r]] = r;
+      }
+    }
+
+    private void ensureCapacity(int n) {
+      if (mzs.length < n) {
+        final int capacity = Math.max(n, mzs.length * 2);
+        mzs = new double[capacity];
+        intensities = new double[capacity];
+        sources = new int[capacity];
+        order = new int[capacity];
+        ranks = new int[capacity];
+      }
+    }
+  }
+}
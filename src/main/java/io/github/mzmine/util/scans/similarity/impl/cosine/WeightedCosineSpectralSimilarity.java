@@ -26,15 +26,13 @@
 package io.github.mzmine.util.scans.similarity.impl.cosine;
 
 import io.github.mzmine.util.scans.similarity.HandleUnmatchedSignalOptions;
-import java.util.List;
+import io.github.mzmine.util.scans.similarity.SpectralAlignmentKernel;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import io.github.mzmine.datamodel.DataPoint;
 import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.parameters.parametertypes.tolerances.MZTolerance;
-import io.github.mzmine.util.maths.similarity.Similarity;
-import io.github.mzmine.util.scans.ScanAlignment;
 import io.github.mzmine.util.scans.similarity.SpectralSimilarity;
 import io.github.mzmine.util.scans.similarity.SpectralSimilarityFunction;
 import io.github.mzmine.util.scans.similarity.Weights;
@@ -61,20 +59,16 @@ public class WeightedCosineSpectralSimilarity extends SpectralSimilarityFunction
         .getParameter(WeightedCosineSpectralSimilarityParameters.handleUnmatched).getValue();
 
     // align
-    List<DataPoint[]> aligned = alignDataPoints(mzTol, library, query);
-    // removes all signals which were not found in both masslists
-    aligned = handleUnmatched.handleUnmatched(aligned);
-
+    final SpectralAlignmentKernel kernel = SpectralAlignmentKernel.get();
     // overlapping within mass tolerance
-    int overlap = calcOverlap(aligned);
+    int overlap = kernel.align(mzTol, library, query);
 
     if (overlap >= minMatch) {
-      // weighted cosine
-      double[][] diffArray =
-          ScanAlignment.toIntensityMatrixWeighted(aligned, weights.getIntensity(), weights.getMz());
-      double diffCosine = Similarity.COSINE.calc(diffArray);
+      // weighted cosine, unmatched signals are handled by the kernel
+      double diffCosine = kernel.weightedCosine(weights, handleUnmatched);
       if (diffCosine >= minCos)
-        return new SpectralSimilarity(getName(), diffCosine, overlap, library, query, aligned);
+        return new SpectralSimilarity(getName(), diffCosine, overlap, library, query,
+            kernel.getAlignedDataPoints());
       else
         return null;
     }
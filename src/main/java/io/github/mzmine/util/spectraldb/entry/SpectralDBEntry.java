@@ -45,7 +45,7 @@ import io.github.mzmine.datamodel.msms.DDAMsMsInfo;
 import io.github.mzmine.datamodel.msms.MsMsInfo;
 import io.github.mzmine.modules.io.projectload.version_3_0.CONST;
 import io.github.mzmine.util.ParsingUtils;
-import java.util.Arrays;
+import java.nio.DoubleBuffer;
 import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.List;
@@ -69,11 +69,20 @@ public class SpectralDBEntry {
   private static final String XML_FIELD_NAME_ATTR = "name";
 
   private final Map<DBEntryField, Object> fields;
+  // either data points or a region in shared m/z and intensity buffers (binary library cache)
   private final DataPoint[] dps;
+  private final DoubleBuffer mzBuffer;
+  private final DoubleBuffer intensityBuffer;
+  private final int bufferOffset;
+  private final int numDataPoints;
 
   public SpectralDBEntry(double precursorMZ, DataPoint[] dps) {
     this.fields = new HashMap<>();
     this.dps = dps;
+    mzBuffer = null;
+    intensityBuffer = null;
+    bufferOffset = 0;
+    numDataPoints = dps.length;
     fields.put(DBEntryField.PRECURSOR_MZ, precursorMZ);
     fields.put(DBEntryField.NUM_PEAKS, dps.length);
   }
@@ -86,6 +95,29 @@ public class SpectralDBEntry {
   public SpectralDBEntry(Map<DBEntryField, Object> fields, DataPoint[] dps) {
     this.fields = fields;
     this.dps = dps;
+    mzBuffer = null;
+    intensityBuffer = null;
+    bufferOffset = 0;
+    numDataPoints = dps.length;
+  }
+
+  /**
+   * Entry with data points in buffers shared by many entries, e.g., memory mapped columns of a
+   * binary library. Data points are only created on access.
+   *
+   * @param mzs           m/z values of many entries
+   * @param intensities   intensity values of many entries
+   * @param offset        index of the first data point of this entry in the buffers
+   * @param numDataPoints number of data points of this entry
+   */
+  public SpectralDBEntry(Map<DBEntryField, Object> fields, DoubleBuffer mzs,
+      DoubleBuffer intensities, int offset, int numDataPoints) {
+    this.fields = fields;
+    this.dps = null;
+    this.mzBuffer = mzs;
+    this.intensityBuffer = intensities;
+    this.bufferOffset = offset;
+    this.numDataPoints = numDataPoints;
   }
 
   public SpectralDBEntry(final Scan scan, final CompoundDBAnnotation match,
@@ -242,15 +274,81 @@ public class SpectralDBEntry {
     return value == null ? defaultValue : (T) value;
   }
 
+  /**
+   * Entries of binary libraries create new data points on every call. Use
+   * {@link #getMzValue(int)}, {@link #getIntensityValue(int)} or
+   * {@link #getMzValues(double[])} and {@link #getIntensityValues(double[])} in loops over many
+   * entries.
+   *
+   * @return the data points of this entry
+   */
   public DataPoint[] getDataPoints() {
-    return dps;
+    if (dps != null) {
+      return dps;
+    }
+    final DataPoint[] dataPoints = new DataPoint[numDataPoints];
+    for (int i = 0; i < numDataPoints; i++) {
+      dataPoints[i] = new SimpleDataPoint(mzBuffer.get(bufferOffset + i),
+          intensityBuffer.get(bufferOffset + i));
+    }
+    return dataPoints;
+  }
+
+  public int getNumberOfDataPoints() {
+    return numDataPoints;
+  }
+
+  public double getMzValue(int index) {
+    return dps != null ? dps[index].getMZ() : mzBuffer.get(bufferOffset + index);
+  }
+
+  public double getIntensityValue(int index) {
+    return dps != null ? dps[index].getIntensity() : intensityBuffer.get(bufferOffset + index);
+  }
+
+  /**
+   * @param dst A buffer the m/z values will be written into. If the buffer is too small, a new one
+   *            will be allocated.
+   * @return The m/z values of this entry
+   */
+  public double[] getMzValues(double[] dst) {
+    if (dst.length < numDataPoints) {
+      dst = new double[numDataPoints];
+    }
+    if (dps != null) {
+      for (int i = 0; i < numDataPoints; i++) {
+        dst[i] = dps[i].getMZ();
+      }
+    } else {
+      mzBuffer.get(bufferOffset, dst, 0, numDataPoints);
+    }
+    return dst;
+  }
+
+  /**
+   * @param dst A buffer the intensity values will be written into. If the buffer is too small, a
+   *            new one will be allocated.
+   * @return The intensity values of this entry
+   */
+  public double[] getIntensityValues(double[] dst) {
+    if (dst.length < numDataPoints) {
+      dst = new double[numDataPoints];
+    }
+    if (dps != null) {
+      for (int i = 0; i < numDataPoints; i++) {
+        dst[i] = dps[i].getIntensity();
+      }
+    } else {
+      intensityBuffer.get(bufferOffset, dst, 0, numDataPoints);
+    }
+    return dst;
   }
 
   public void saveToXML(XMLStreamWriter writer) throws XMLStreamException {
     writer.writeStartElement(XML_ELEMENT);
 
-    double[] mzs = Arrays.stream(dps).mapToDouble(DataPoint::getMZ).toArray();
-    double[] intensities = Arrays.stream(dps).mapToDouble(DataPoint::getIntensity).toArray();
+    double[] mzs = getMzValues(new double[numDataPoints]);
+    double[] intensities = getIntensityValues(new double[numDataPoints]);
 
     writer.writeStartElement(CONST.XML_MZ_VALUES_ELEMENT);
     writer.writeCharacters(ParsingUtils.doubleArrayToString(mzs, mzs.length));
@@ -282,15 +380,26 @@ public class SpectralDBEntry {
       return false;
     }
     SpectralDBEntry that = (SpectralDBEntry) o;
-    boolean b1 = Arrays.equals(dps, that.dps);
-    boolean b2 = Objects.equals(fields, that.fields);
-    return b1 && b2;
+    if (numDataPoints != that.numDataPoints || !Objects.equals(fields, that.fields)) {
+      return false;
+    }
+    // compare the stored values without creating data points
+    for (int i = 0; i < numDataPoints; i++) {
+      if (Double.compare(getMzValue(i), that.getMzValue(i)) != 0
+          || Double.compare(getIntensityValue(i), that.getIntensityValue(i)) != 0) {
+        return false;
+      }
+    }
+    return true;
   }
 
   @Override
   public int hashCode() {
     int result = Objects.hash(fields);
-    result = 31 * result + Arrays.hashCode(dps);
+    for (int i = 0; i < numDataPoints; i++) {
+      result = 31 * result + Double.hashCode(getMzValue(i));
+      result = 31 * result + Double.hashCode(getIntensityValue(i));
+    }
     return result;
   }
 
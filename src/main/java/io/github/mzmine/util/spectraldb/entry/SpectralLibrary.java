@@ -37,6 +37,8 @@ public class SpectralLibrary {
   private final @NotNull String name;
   private final @NotNull File path;
   private final @NotNull List<SpectralDBEntry> entries;
+  // created on first use
+  private volatile SpectralLibraryIndex index;
 
   public SpectralLibrary(@NotNull File path, @NotNull List<SpectralDBEntry> entries) {
     this(path.getName(), path, entries);
@@ -54,6 +56,26 @@ public class SpectralLibrary {
     return entries;
   }
 
+  /**
+   * The index is created once on first access and reused by all searches against this library.
+   *
+   * @return index of all entries sorted by precursor m/z
+   */
+  @NotNull
+  public SpectralLibraryIndex getIndex() {
+    SpectralLibraryIndex idx = index;
+    if (idx == null) {
+      synchronized (this) {
+        idx = index;
+        if (idx == null) {
+          idx = new SpectralLibraryIndex(entries);
+          index = idx;
+        }
+      }
+    }
+    return idx;
+  }
+
   @NotNull
   public File getPath() {
     return path;
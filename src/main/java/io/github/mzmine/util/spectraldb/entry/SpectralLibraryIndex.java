@@ -0,0 +1,375 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.util.spectraldb.entry;
+
+import com.google.common.collect.Range;
+import io.github.mzmine.datamodel.features.FeatureListRow;
+import io.github.mzmine.datamodel.features.compoundannotations.CompoundDBAnnotation;
+import io.github.mzmine.parameters.parametertypes.tolerances.MZTolerance;
+import io.github.mzmine.parameters.parametertypes.tolerances.PercentTolerance;
+import io.github.mzmine.parameters.parametertypes.tolerances.RTTolerance;
+import io.github.mzmine.parameters.parametertypes.tolerances.mobilitytolerance.MobilityTolerance;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Index of library entries sorted by precursor m/z. The precursor m/z, retention time, mobility and
+ * CCS values are stored in primitive arrays so that a query only visits the entries within the
+ * precursor m/z tolerance window and does not need to access the field maps of the entries.
+ * <p>
+ * Spectral libraries index their entries with {@link #SpectralLibraryIndex(List)}, entries without
+ * precursor m/z are not indexed, they never match in MS2 searches. Compound databases add their
+ * annotations with a {@link Builder}, there entries without precursor m/z match every m/z, the
+ * same as in {@link CompoundDBAnnotation#matches(FeatureListRow, MZTolerance, RTTolerance,
+ * MobilityTolerance, Double)}. The index can be written to and read from a cache file.
+ * <p>
+ * The index is immutable and can be queried by multiple threads.
+ */
+public class SpectralLibraryIndex {
+
+  private static final int FORMAT_VERSION = 1;
+
+  // sorted by precursor m/z, entries without m/z are appended to the end. Missing values are NaN
+  private final double[] precursorMzs;
+  private final float[] rts;
+  private final float[] mobilities;
+  private final float[] ccs;
+  // position of the entry in the library
+  private final int[] libraryPositions;
+  // number of entries with a precursor m/z
+  private final int numWithMz;
+
+  public SpectralLibraryIndex(@NotNull List<SpectralDBEntry> entries) {
+    this(createBuilder(entries));
+  }
+
+  private SpectralLibraryIndex(@NotNull Builder builder) {
+    final int n = builder.positions.size();
+    final double[] builderMzs = builder.mzs;
+    final int[] order = new int[n];
+    for (int i = 0; i < n; i++) {
+      order[i] = i;
+    }
+    // stable sort by m/z to keep the library order for equal precursor m/z, NaN (no m/z) last
+    IntArrays.mergeSort(order, (a, b) -> Double.compare(builderMzs[a], builderMzs[b]));
+
+    precursorMzs = new double[n];
+    rts = new float[n];
+    mobilities = new float[n];
+    ccs = new float[n];
+    libraryPositions = new int[n];
+    int withMz = 0;
+    for (int i = 0; i < n; i++) {
+      final int o = order[i];
+      libraryPositions[i] = builder.positions.getInt(o);
+      precursorMzs[i] = builder.mzs[o];
+      rts[i] = builder.rts[o];
+      mobilities[i] = builder.mobilities[o];
+      ccs[i] = builder.ccs[o];
+      if (!Double.isNaN(builder.mzs[o])) {
+        withMz++;
+      }
+    }
+    numWithMz = withMz;
+  }
+
+  private SpectralLibraryIndex(double[] precursorMzs, float[] rts, float[] mobilities,
+      float[] ccs, int[] libraryPositions, int numWithMz) {
+    this.precursorMzs = precursorMzs;
+    this.rts = rts;
+    this.mobilities = mobilities;
+    this.ccs = ccs;
+    this.libraryPositions = libraryPositions;
+    this.numWithMz = numWithMz;
+  }
+
+  private static Builder createBuilder(@NotNull List<SpectralDBEntry> entries) {
+    final Builder builder = new Builder();
+    for (int i = 0; i < entries.size(); i++) {
+      final SpectralDBEntry entry = entries.get(i);
+      final Double mz = entry.getPrecursorMZ();
+      if (mz != null && !Double.isNaN(mz)) {
+        builder.add(i, mz, toFloat(entry.getField(DBEntryField.RT).orElse(null)), null,
+            toFloat(entry.getField(DBEntryField.CCS).orElse(null)));
+      }
+    }
+    return builder;
+  }
+
+  @Nullable
+  private static Float toFloat(@Nullable Object value) {
+    return value instanceof Number n ? n.floatValue() : null;
+  }
+
+  /**
+   * Finds all entries with a precursor m/z within the tolerance. Retention time and CCS are checked
+   * as in the spectral library search: Entries without retention time always match, entries
+   * without CCS never match if a CCS tolerance is given.
+   *
+   * @param precursorMz       the precursor m/z of the query
+   * @param precursorTolerance tolerance around the precursor m/z of the library entry
+   * @param rt                the retention time of the query or null to skip the rt check
+   * @param rtTolerance       tolerance around the library retention time or null to skip the
+   *                          check
+   * @param queryCCS          the CCS of the query
+   * @param ccsTolerance      tolerance relative to the query CCS or null to skip the check
+   * @return the positions of the matching entries in the library, in ascending order
+   */
+  public int[] findCandidates(double precursorMz, @NotNull MZTolerance precursorTolerance,
+      @Nullable Float rt, @Nullable RTTolerance rtTolerance, @Nullable Float queryCCS,
+      @Nullable PercentTolerance ccsTolerance) {
+    // the tolerance is calculated for the library m/z. A matching library m/z cannot be further
+    // away than two times the tolerance at the query m/z
+    final double maxTolerance = precursorTolerance.getMzToleranceForMass(
+        precursorMz + 2 * precursorTolerance.getMzToleranceForMass(precursorMz)) + 4 * Math.ulp(
+        precursorMz);
+    final int from = firstIndexGE(precursorMz - maxTolerance);
+    final boolean checkRT = rt != null && rtTolerance != null;
+    final boolean checkCCS = ccsTolerance != null;
+
+    int[] candidates = new int[16];
+    int n = 0;
+    for (int i = from; i < numWithMz && precursorMzs[i] <= precursorMz + maxTolerance; i++) {
+      if (!precursorTolerance.checkWithinTolerance(precursorMzs[i], precursorMz)) {
+        continue;
+      }
+      if (checkRT && !Float.isNaN(rts[i]) && !rtTolerance.checkWithinTolerance(rts[i], rt)) {
+        continue;
+      }
+      if (checkCCS && (queryCCS == null || Float.isNaN(ccs[i]) || !ccsTolerance.matches(
+          queryCCS.doubleValue(), ccs[i]))) {
+        continue;
+      }
+      if (n == candidates.length) {
+        candidates = Arrays.copyOf(candidates, n * 2);
+      }
+      candidates[n++] = libraryPositions[i];
+    }
+    candidates = Arrays.copyOf(candidates, n);
+    // keep the library order
+    Arrays.sort(candidates);
+    return candidates;
+  }
+
+  /**
+   * Finds all entries matching the row. The filters follow the semantics of
+   * {@link CompoundDBAnnotation#matches(FeatureListRow, MZTolerance, RTTolerance,
+   * MobilityTolerance, Double)}: the tolerances are applied around the row values. A filter is
+   * skipped if its tolerance is null or the entry does not define the value. If the entry defines
+   * the value but the row does not, the entry does not match.
+   *
+   * @return the positions of all matching entries in ascending order
+   */
+  public int[] find(@NotNull FeatureListRow row, @Nullable MZTolerance mzTolerance,
+      @Nullable RTTolerance rtTolerance, @Nullable MobilityTolerance mobilityTolerance,
+      @Nullable Double percentCCSTolerance) {
+    final Double rowMz = row.getAverageMZ();
+    final Float rowRt = row.getAverageRT();
+    final Float rowMobility = row.getAverageMobility();
+    final Float rowCCS = row.getAverageCCS();
+
+    final int from;
+    final int to;
+    if (mzTolerance == null) {
+      from = 0;
+      to = numWithMz;
+    } else if (rowMz == null) {
+      from = 0;
+      to = 0;
+    } else {
+      final Range<Double> mzRange = mzTolerance.getToleranceRange(rowMz);
+      from = firstIndexGE(mzRange.lowerEndpoint());
+      to = firstIndexGT(mzRange.upperEndpoint());
+    }
+
+    final Range<Float> rtRange =
+        rtTolerance != null && rowRt != null ? rtTolerance.getToleranceRange(rowRt) : null;
+
+    final IntArrayList hits = new IntArrayList();
+    for (int i = from; i < to; i++) {
+      if (matchesRow(i, rtTolerance, rtRange, mobilityTolerance, rowMobility,
+          percentCCSTolerance, rowCCS)) {
+        hits.add(libraryPositions[i]);
+      }
+    }
+    // entries without m/z match every m/z
+    for (int i = numWithMz; i < libraryPositions.length; i++) {
+      if (matchesRow(i, rtTolerance, rtRange, mobilityTolerance, rowMobility,
+          percentCCSTolerance, rowCCS)) {
+        hits.add(libraryPositions[i]);
+      }
+    }
+
+    final int[] result = hits.toIntArray();
+    Arrays.sort(result);
+    return result;
+  }
+
+  private boolean matchesRow(int i, @Nullable RTTolerance rtTolerance,
+      @Nullable Range<Float> rtRange, @Nullable MobilityTolerance mobilityTolerance,
+      @Nullable Float rowMobility, @Nullable Double percentCCSTolerance, @Nullable Float rowCCS) {
+    final float rt = rts[i];
+    if (rtTolerance != null && !Float.isNaN(rt) && (rtRange == null || !rtRange.contains(rt))) {
+      return false;
+    }
+
+    final float mobility = mobilities[i];
+    if (mobilityTolerance != null && !Float.isNaN(mobility) && (rowMobility == null
+        || !mobilityTolerance.checkWithinTolerance(mobility, rowMobility))) {
+      return false;
+    }
+
+    final float entryCCS = ccs[i];
+    return percentCCSTolerance == null || Float.isNaN(entryCCS) || (rowCCS != null && !(
+        Math.abs(1 - (rowCCS / entryCCS)) > percentCCSTolerance));
+  }
+
+  /**
+   * @return the number of indexed entries
+   */
+  public int size() {
+    return libraryPositions.length;
+  }
+
+  private int firstIndexGE(final double value) {
+    int lo = 0;
+    int hi = numWithMz;
+    while (lo < hi) {
+      final int mid = (lo + hi) >>> 1;
+      if (precursorMzs[mid] < value) {
+        lo = mid + 1;
+      } else {
+        hi = mid;
+      }
+    }
+    return lo;
+  }
+
+  private int firstIndexGT(final double value) {
+    int lo = 0;
+    int hi = numWithMz;
+    while (lo < hi) {
+      final int mid = (lo + hi) >>> 1;
+      if (precursorMzs[mid] <= value) {
+        lo = mid + 1;
+      } else {
+        hi = mid;
+      }
+    }
+    return lo;
+  }
+
+  public void write(@NotNull DataOutput out) throws IOException {
+    out.writeInt(FORMAT_VERSION);
+    out.writeInt(libraryPositions.length);
+    out.writeInt(numWithMz);
+    for (int i = 0; i < libraryPositions.length; i++) {
+      out.writeInt(libraryPositions[i]);
+      out.writeDouble(precursorMzs[i]);
+      out.writeFloat(rts[i]);
+      out.writeFloat(mobilities[i]);
+      out.writeFloat(ccs[i]);
+    }
+  }
+
+  /**
+   * Reads an index written by {@link #write(DataOutput)}.
+   *
+   * @throws IOException if the data is corrupt or was written in a different format
+   */
+  public static SpectralLibraryIndex read(@NotNull DataInput in) throws IOException {
+    final int version = in.readInt();
+    if (version != FORMAT_VERSION) {
+      throw new IOException("Unsupported index format version " + version);
+    }
+    final int size = in.readInt();
+    final int numWithMz = in.readInt();
+    if (size < 0 || numWithMz < 0 || numWithMz > size) {
+      throw new IOException("Corrupt index header");
+    }
+    final int[] positions = new int[size];
+    final double[] mzs = new double[size];
+    final float[] rts = new float[size];
+    final float[] mobilities = new float[size];
+    final float[] ccs = new float[size];
+    for (int i = 0; i < size; i++) {
+      positions[i] = in.readInt();
+      mzs[i] = in.readDouble();
+      rts[i] = in.readFloat();
+      mobilities[i] = in.readFloat();
+      ccs[i] = in.readFloat();
+    }
+    return new SpectralLibraryIndex(mzs, rts, mobilities, ccs, positions, numWithMz);
+  }
+
+  /**
+   * Collects the entries of an index, e.g., the annotations of a compound database.
+   */
+  public static class Builder {
+
+    private final IntArrayList positions = new IntArrayList();
+    private double[] mzs = new double[1024];
+    private float[] rts = new float[1024];
+    private float[] mobilities = new float[1024];
+    private float[] ccs = new float[1024];
+
+    /**
+     * @param position the position of this entry in the library, returned by the queries
+     * @param mz       the precursor m/z or null to match all m/z
+     * @param rt       the retention time or null
+     * @param mobility the mobility or null
+     * @param ccs      the CCS or null
+     */
+    public Builder add(int position, @Nullable Double mz, @Nullable Float rt,
+        @Nullable Float mobility, @Nullable Float ccs) {
+      final int n = positions.size();
+      if (n == mzs.length) {
+        final int newLength = n * 2;
+        mzs = Arrays.copyOf(mzs, newLength);
+        rts = Arrays.copyOf(rts, newLength);
+        mobilities = Arrays.copyOf(mobilities, newLength);
+        this.ccs = Arrays.copyOf(this.ccs, newLength);
+      }
+      positions.add(position);
+      mzs[n] = mz != null ? mz : Double.NaN;
+      rts[n] = rt != null ? rt : Float.NaN;
+      mobilities[n] = mobility != null ? mobility : Float.NaN;
+      this.ccs[n] = ccs != null ? ccs : Float.NaN;
+      return this;
+    }
+
+    public SpectralLibraryIndex build() {
+      return new SpectralLibraryIndex(this);
+    }
+  }
+}
@@ -0,0 +1,447 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.util.spectraldb.parser;
+
+import io.github.mzmine.util.files.LibraryCacheFolder;
+import io.github.mzmine.util.spectraldb.entry.DBEntryField;
+import io.github.mzmine.util.spectraldb.entry.SpectralDBEntry;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Compact binary copy of a spectral library that is written after the first import of a text
+ * library and memory mapped on later imports. The data points of all entries are stored in two
+ * columns (m/z and intensity) and are only converted to data points on access. The fields of all
+ * entries are stored as references into a table of unique strings and numbers.
+ * <p>
+ * Layout (big endian): a fixed header (magic, version, size and last modified date of the source
+ * library, number of entries and data points, length of the metadata block), the metadata block
+ * (field names, string table, fields and data point offset of each entry) and the m/z and
+ * intensity columns as doubles, aligned to 8 bytes.
+ * <p>
+ * Libraries with field values of other types than strings, numbers, booleans and lists of those are
+ * not cached. The cache files are kept in a {@link LibraryCacheFolder}, by default in the user
+ * cache folder shared with the compound database indices.
+ */
+public class SpectralLibraryBinaryCache {
+
+  private static final Logger logger = Logger.getLogger(
+      SpectralLibraryBinaryCache.class.getName());
+
+  private static final int MAGIC = 0x4D5A4C42; // MZLB
+  private static final int VERSION = 2;
+  private static final int HEADER_BYTES = 48;
+  // maximum size of a single mapped column region
+  private static final long MAX_MAPPED_BYTES = 1L << 30;
+  private static final String CACHE_SUFFIX = ".mzlib";
+
+  // value types in the metadata block
+  private static final byte TYPE_STRING = 0;
+  private static final byte TYPE_DOUBLE = 1;
+  private static final byte TYPE_FLOAT = 2;
+  private static final byte TYPE_INTEGER = 3;
+  private static final byte TYPE_LONG = 4;
+  private static final byte TYPE_BOOLEAN = 5;
+  private static final byte TYPE_LIST = 6;
+
+  private SpectralLibraryBinaryCache() {
+  }
+
+  /**
+   * @param library the source library file
+   * @return the cache file of this library. Might not exist.
+   */
+  @NotNull
+  public static File getCacheFile(@NotNull File library) {
+    return getCacheFile(library, LibraryCacheFolder.getUserCache());
+  }
+
+  /**
+   * @param library the source library file
+   * @param cache   the cache folder
+   * @return the cache file of this library. Might not exist.
+   */
+  @NotNull
+  public static File getCacheFile(@NotNull File library, @NotNull LibraryCacheFolder cache) {
+    final String path = library.getAbsolutePath();
+    return cache.getFile(
+        library.getName() + "_" + Integer.toHexString(path.hashCode()) + CACHE_SUFFIX);
+  }
+
+  /**
+   * Reads the entries from the cache file if it was created for the current version of the
+   * library file.
+   *
+   * @param library the source library file
+   * @return the entries or null if there is no valid cache
+   */
+  @Nullable
+  public static List<SpectralDBEntry> read(@NotNull File library) {
+    return read(library, LibraryCacheFolder.getUserCache());
+  }
+
+  /**
+   * Reads the entries from the cache file if it was created for the current version of the
+   * library file.
+   *
+   * @param library the source library file
+   * @param cache   the cache folder
+   * @return the entries or null if there is no valid cache
+   */
+  @Nullable
+  public static List<SpectralDBEntry> read(@NotNull File library,
+      @NotNull LibraryCacheFolder cache) {
+    final File cacheFile = getCacheFile(library, cache);
+    if (!cacheFile.exists()) {
+      return null;
+    }
+    try (FileChannel channel = FileChannel.open(cacheFile.toPath(), StandardOpenOption.READ)) {
+      final ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+      while (header.hasRemaining() && channel.read(header) >= 0) {
+        // read full header
+      }
+      header.flip();
+      if (header.remaining() < HEADER_BYTES || header.getInt() != MAGIC
+          || header.getInt() != VERSION || header.getLong() != library.length()
+          || header.getLong() != library.lastModified()) {
+        logger.fine(() -> "Spectral library cache is outdated " + cacheFile.getAbsolutePath());
+        return null;
+      }
+      final int numEntries = header.getInt();
+      final long numDataPoints = header.getLong();
+      final long metadataBytes = header.getLong();
+      if (metadataBytes > Integer.MAX_VALUE) {
+        return null;
+      }
+
+      final ByteBuffer metadata = ByteBuffer.allocate((int) metadataBytes);
+      channel.position(HEADER_BYTES);
+      while (metadata.hasRemaining() && channel.read(metadata) >= 0) {
+        // read full metadata
+      }
+      final DataInputStream in = new DataInputStream(
+          new ByteArrayInputStream(metadata.array()));
+
+      final DBEntryField[] fieldsById = new DBEntryField[in.readInt()];
+      for (int i = 0; i < fieldsById.length; i++) {
+        fieldsById[i] = DBEntryField.valueOf(in.readUTF());
+      }
+      final Object[] values = new Object[in.readInt()];
+      for (int i = 0; i < values.length; i++) {
+        values[i] = readValue(in);
+      }
+      final List<Map<DBEntryField, Object>> fields = new ArrayList<>(numEntries);
+      for (int i = 0; i < numEntries; i++) {
+        final int numFields = in.readShort();
+        final Map<DBEntryField, Object> entryFields = new EnumMap<>(DBEntryField.class);
+        for (int f = 0; f < numFields; f++) {
+          entryFields.put(fieldsById[in.readShort()], values[in.readInt()]);
+        }
+        fields.add(entryFields);
+      }
+      final long[] offsets = new long[numEntries + 1];
+      for (int i = 0; i <= numEntries; i++) {
+        offsets[i] = in.readLong();
+      }
+
+      // map the columns in regions that end at entry boundaries
+      final long mzStart = align8(HEADER_BYTES + metadataBytes);
+      final long intensityStart = mzStart + numDataPoints * Double.BYTES;
+      final List<SpectralDBEntry> entries = new ArrayList<>(numEntries);
+      int first = 0;
+      while (first < numEntries) {
+        int end = first + 1;
+        while (end < numEntries
+            && (offsets[end + 1] - offsets[first]) * Double.BYTES <= MAX_MAPPED_BYTES) {
+          end++;
+        }
+        final long regionStart = offsets[first];
+        final long regionBytes = (offsets[end] - regionStart) * Double.BYTES;
+        if (regionBytes > Integer.MAX_VALUE) {
+          logger.warning("Spectral library entry too large for the library cache");
+          return null;
+        }
+        final DoubleBuffer mzs = channel.map(MapMode.READ_ONLY,
+            mzStart + regionStart * Double.BYTES, regionBytes).asDoubleBuffer();
+        final DoubleBuffer intensities = channel.map(MapMode.READ_ONLY,
+            intensityStart + regionStart * Double.BYTES, regionBytes).asDoubleBuffer();
+        for (int i = first; i < end; i++) {
+          entries.add(new SpectralDBEntry(fields.get(i), mzs, intensities,
+              (int) (offsets[i] - regionStart), (int) (offsets[i + 1] - offsets[i])));
+        }
+        first = end;
+      }
+      cache.markUsed(cacheFile);
+      return entries;
+    } catch (IOException | RuntimeException e) {
+      logger.log(Level.WARNING,
+          "Cannot read spectral library cache " + cacheFile.getAbsolutePath(), e);
+      return null;
+    }
+  }
+
+  /**
+   * Writes all entries to the cache file of this library. Errors are only logged, the cache is
+   * optional.
+   *
+   * @param library the source library file
+   * @param entries all entries of the library
+   */
+  public static void write(@NotNull File library, @NotNull List<SpectralDBEntry> entries) {
+    write(library, entries, LibraryCacheFolder.getUserCache());
+  }
+
+  /**
+   * Writes all entries to the cache file of this library. Errors are only logged, the cache is
+   * optional.
+   *
+   * @param library the source library file
+   * @param entries all entries of the library
+   * @param cache   the cache folder
+   */
+  public static void write(@NotNull File library, @NotNull List<SpectralDBEntry> entries,
+      @NotNull LibraryCacheFolder cache) {
+    final File cacheFile = getCacheFile(library, cache);
+    for (SpectralDBEntry entry : entries) {
+      for (Object value : entry.getFields().values()) {
+        if (value != null && !isSupported(value)) {
+          logger.fine(() -> "Spectral library " + library.getAbsolutePath()
+              + " is not cached, unsupported field value type " + value.getClass().getName());
+          return;
+        }
+      }
+    }
+
+    File tmp = null;
+    try {
+      tmp = cache.createPartialFile(cacheFile.getName());
+
+      // metadata block: field names, unique values and the fields of each entry
+      final Map<DBEntryField, Integer> fieldIds = new EnumMap<>(DBEntryField.class);
+      final Map<Object, Integer> valueIds = new HashMap<>();
+      final List<Object> values = new ArrayList<>();
+      final ByteArrayOutputStream entryBytes = new ByteArrayOutputStream();
+      final DataOutputStream entryOut = new DataOutputStream(entryBytes);
+      final long[] offsets = new long[entries.size() + 1];
+      for (int i = 0; i < entries.size(); i++) {
+        final SpectralDBEntry entry = entries.get(i);
+        final Map<DBEntryField, Object> fields = entry.getFields();
+        final int numFields = (int) fields.values().stream().filter(Objects::nonNull).count();
+        entryOut.writeShort(numFields);
+        for (Entry<DBEntryField, Object> field : fields.entrySet()) {
+          if (field.getValue() == null) {
+            continue;
+          }
+          entryOut.writeShort(fieldIds.computeIfAbsent(field.getKey(), f -> fieldIds.size()));
+          entryOut.writeInt(valueIds.computeIfAbsent(field.getValue(), v -> {
+            values.add(v);
+            return values.size() - 1;
+          }));
+        }
+        offsets[i + 1] = offsets[i] + entry.getNumberOfDataPoints();
+      }
+
+      final ByteArrayOutputStream metaBytes = new ByteArrayOutputStream();
+      final DataOutputStream out = new DataOutputStream(metaBytes);
+      final DBEntryField[] fieldsById = new DBEntryField[fieldIds.size()];
+      fieldIds.forEach((field, id) -> fieldsById[id] = field);
+      out.writeInt(fieldsById.length);
+      for (DBEntryField field : fieldsById) {
+        out.writeUTF(field.name());
+      }
+      out.writeInt(values.size());
+      for (Object value : values) {
+        writeValue(out, value);
+      }
+      entryOut.flush();
+      entryBytes.writeTo(out);
+      for (long offset : offsets) {
+        out.writeLong(offset);
+      }
+      out.flush();
+
+      final long numDataPoints = offsets[entries.size()];
+      final ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+      header.putInt(MAGIC).putInt(VERSION).putLong(library.length())
+          .putLong(library.lastModified()).putInt(entries.size()).putLong(numDataPoints)
+          .putLong(metaBytes.size());
+      // write the full header including the reserved bytes
+      header.position(0);
+
+      try (FileChannel channel = FileChannel.open(tmp.toPath(), StandardOpenOption.WRITE,
+          StandardOpenOption.TRUNCATE_EXISTING)) {
+        writeFully(channel, header);
+        writeFully(channel, ByteBuffer.wrap(metaBytes.toByteArray()));
+        channel.position(align8(HEADER_BYTES + metaBytes.size()));
+        writeColumn(channel, entries, true);
+        writeColumn(channel, entries, false);
+      }
+      cache.commit(tmp, cacheFile);
+      logger.info(() -> "Created spectral library cache " + cacheFile.getAbsolutePath());
+    } catch (IOException | RuntimeException e) {
+      logger.log(Level.WARNING,
+          "Cannot write spectral library cache " + cacheFile.getAbsolutePath(), e);
+      if (tmp != null && !tmp.delete()) {
+        tmp.deleteOnExit();
+      }
+    }
+  }
+
+  private static void writeColumn(FileChannel channel, List<SpectralDBEntry> entries,
+      boolean mz) throws IOException {
+    final ByteBuffer buffer = ByteBuffer.allocate(1 << 20);
+    for (SpectralDBEntry entry : entries) {
+      final int n = entry.getNumberOfDataPoints();
+      for (int i = 0; i < n; i++) {
+        if (!buffer.hasRemaining()) {
+          buffer.flip();
+          writeFully(channel, buffer);
+          buffer.clear();
+        }
+        buffer.putDouble(mz ? entry.getMzValue(i) : entry.getIntensityValue(i));
+      }
+    }
+    buffer.flip();
+    writeFully(channel, buffer);
+  }
+
+  private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+  }
+
+  private static void writeValue(DataOutputStream out, Object value) throws IOException {
+    switch (value) {
+      case String s -> {
+        out.writeByte(TYPE_STRING);
+        writeString(out, s);
+      }
+      case Double d -> {
+        out.writeByte(TYPE_DOUBLE);
+        out.writeDouble(d);
+      }
+      case Float f -> {
+        out.writeByte(TYPE_FLOAT);
+        out.writeFloat(f);
+      }
+      case Integer i -> {
+        out.writeByte(TYPE_INTEGER);
+        out.writeInt(i);
+      }
+      case Long l -> {
+        out.writeByte(TYPE_LONG);
+        out.writeLong(l);
+      }
+      case Boolean b -> {
+        out.writeByte(TYPE_BOOLEAN);
+        out.writeBoolean(b);
+      }
+      case List<?> list -> {
+        out.writeByte(TYPE_LIST);
+        out.writeInt(list.size());
+        for (Object element : list) {
+          writeValue(out, element);
+        }
+      }
+      default -> throw new IOException("Unsupported value type " + value.getClass().getName());
+    }
+  }
+
+  private static Object readValue(DataInputStream in) throws IOException {
+    final byte type = in.readByte();
+    return switch (type) {
+      case TYPE_STRING -> readString(in);
+      case TYPE_DOUBLE -> in.readDouble();
+      case TYPE_FLOAT -> in.readFloat();
+      case TYPE_INTEGER -> in.readInt();
+      case TYPE_LONG -> in.readLong();
+      case TYPE_BOOLEAN -> in.readBoolean();
+      case TYPE_LIST -> {
+        final int size = in.readInt();
+        final List<Object> list = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+          list.add(readValue(in));
+        }
+        yield list;
+      }
+      default -> throw new IOException("Unknown value type " + type);
+    };
+  }
+
+  /**
+   * @return true if the value can be written to the cache and is read back with the same type
+   */
+  private static boolean isSupported(@NotNull Object value) {
+    if (value instanceof List<?> list) {
+      for (Object element : list) {
+        if (element == null || !isSupported(element)) {
+          return false;
+        }
+      }
+      return true;
+    }
+    return value instanceof String || value instanceof Double || value instanceof Float
+        || value instanceof Integer || value instanceof Long || value instanceof Boolean;
+  }
+
+  private static void writeString(DataOutputStream out, String s) throws IOException {
+    final byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static String readString(DataInputStream in) throws IOException {
+    final byte[] bytes = new byte[in.readInt()];
+    in.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private static long align8(long position) {
+    return (position + 7) & ~7L;
+  }
+}
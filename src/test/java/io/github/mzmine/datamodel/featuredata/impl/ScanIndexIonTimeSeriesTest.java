@@ -0,0 +1,178 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.datamodel.featuredata.impl;
+
+import com.google.common.collect.Range;
+import io.github.mzmine.datamodel.MassSpectrumType;
+import io.github.mzmine.datamodel.PolarityType;
+import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.datamodel.Scan;
+import io.github.mzmine.datamodel.impl.SimpleScan;
+import io.github.mzmine.project.impl.RawDataFileImpl;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+import javafx.scene.paint.Color;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that {@link ScanIndexIonTimeSeries} resolves the same scans as a list based series and
+ * falls back to a {@link SimpleIonTimeSeries} if the scans are not in their raw data file.
+ */
+public class ScanIndexIonTimeSeriesTest {
+
+  private static final int NUM_SCANS = 30;
+
+  @Test
+  void testScanIndexLookup() throws IOException {
+    final RawDataFile file = new RawDataFileImpl("file", null, null, Color.BLACK);
+    final List<Scan> fileScans = addScans(file);
+
+    // starts at the second of two scans with the same retention time
+    final List<Scan> scans = List.of(fileScans.get(5), fileScans.get(6), fileScans.get(9),
+        fileScans.get(10), fileScans.get(20), fileScans.get(29));
+    final double[] mzs = createValues(scans.size(), 200d);
+    final double[] intensities = createValues(scans.size(), 1E4);
+
+    final SimpleIonTimeSeries series = ScanIndexIonTimeSeries.of(null, mzs, intensities, scans);
+    Assertions.assertInstanceOf(ScanIndexIonTimeSeries.class, series);
+    assertSeries(scans, mzs, intensities, series);
+  }
+
+  @Test
+  void testSubSeries() throws IOException {
+    final RawDataFile file = new RawDataFileImpl("file", null, null, Color.BLACK);
+    final List<Scan> fileScans = addScans(file);
+
+    final List<Scan> scans = new ArrayList<>(fileScans.subList(3, 25));
+    final double[] mzs = createValues(scans.size(), 200d);
+    final double[] intensities = createValues(scans.size(), 1E4);
+    final SimpleIonTimeSeries series = ScanIndexIonTimeSeries.of(null, mzs, intensities, scans);
+
+    final List<Scan> subset = List.of(scans.get(0), scans.get(4), scans.get(5), scans.get(21));
+    final SimpleIonTimeSeries sub = series.subSeries(null, subset);
+    Assertions.assertInstanceOf(ScanIndexIonTimeSeries.class, sub);
+    assertSeries(subset, new double[]{mzs[0], mzs[4], mzs[5], mzs[21]},
+        new double[]{intensities[0], intensities[4], intensities[5], intensities[21]}, sub);
+
+    // the list based series reports scans that are not part of the series
+    Assertions.assertThrows(IllegalArgumentException.class,
+        () -> series.subSeries(null, List.of(fileScans.get(0))));
+  }
+
+  @Test
+  void testFallbackIfScansAreNotInFile() throws IOException {
+    final RawDataFile file = new RawDataFileImpl("file", null, null, Color.BLACK);
+    final List<Scan> fileScans = addScans(file);
+    // scans that were never added to their file
+    final List<Scan> detachedScans = List.of(createScan(file, 100, 1f), createScan(file, 101, 2f));
+    // scans of another file
+    final RawDataFile otherFile = new RawDataFileImpl("other", null, null, Color.BLACK);
+    final List<Scan> mixedScans = List.of(fileScans.get(0), addScans(otherFile).get(1));
+
+    final Logger logger = Logger.getLogger(ScanIndexIonTimeSeries.class.getName());
+    final List<LogRecord> records = new ArrayList<>();
+    final Handler handler = new Handler() {
+      @Override
+      public void publish(LogRecord record) {
+        records.add(record);
+      }
+
+      @Override
+      public void flush() {
+      }
+
+      @Override
+      public void close() {
+      }
+    };
+    handler.setLevel(Level.ALL);
+    final Level previousLevel = logger.getLevel();
+    logger.setLevel(Level.FINE);
+    logger.addHandler(handler);
+    try {
+      for (List<Scan> scans : List.of(detachedScans, mixedScans)) {
+        records.clear();
+        final double[] mzs = createValues(scans.size(), 200d);
+        final double[] intensities = createValues(scans.size(), 1E4);
+
+        final SimpleIonTimeSeries series = ScanIndexIonTimeSeries.of(null, mzs, intensities,
+            scans);
+        Assertions.assertFalse(series instanceof ScanIndexIonTimeSeries);
+        assertSeries(scans, mzs, intensities, series);
+        Assertions.assertEquals(1, records.size());
+      }
+    } finally {
+      logger.removeHandler(handler);
+      logger.setLevel(previousLevel);
+    }
+  }
+
+  private static void assertSeries(List<Scan> scans, double[] mzs, double[] intensities,
+      SimpleIonTimeSeries series) {
+    Assertions.assertEquals(scans.size(), series.getNumberOfValues());
+    Assertions.assertEquals(scans.size(), series.getSpectra().size());
+    for (int i = 0; i < scans.size(); i++) {
+      Assertions.assertSame(scans.get(i), series.getSpectrum(i));
+      Assertions.assertSame(scans.get(i), series.getSpectra().get(i));
+      Assertions.assertEquals(mzs[i], series.getMZ(i));
+      Assertions.assertEquals(intensities[i], series.getIntensity(i));
+    }
+  }
+
+  /**
+   * Scans sorted by retention time. Scans 4 and 5 share the same retention time.
+   */
+  private static List<Scan> addScans(RawDataFile file) throws IOException {
+    final List<Scan> scans = new ArrayList<>();
+    for (int i = 0; i < NUM_SCANS; i++) {
+      final float rt = i == 5 ? 0.1f * 4 : 0.1f * i;
+      final Scan scan = createScan(file, i, rt);
+      file.addScan(scan);
+      scans.add(scan);
+    }
+    return scans;
+  }
+
+  private static Scan createScan(RawDataFile file, int scanNumber, float rt) {
+    return new SimpleScan(file, scanNumber, 1, rt, null, new double[]{200d},
+        new double[]{1E4}, MassSpectrumType.CENTROIDED, PolarityType.POSITIVE, "",
+        Range.closed(100d, 300d));
+  }
+
+  private static double[] createValues(int size, double start) {
+    final double[] values = new double[size];
+    for (int i = 0; i < size; i++) {
+      values[i] = start + i * 0.5;
+    }
+    return values;
+  }
+}
@@ -0,0 +1,269 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.datamodel.features;
+
+import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.datamodel.features.types.DataType;
+import io.github.mzmine.datamodel.features.types.annotations.CommentType;
+import io.github.mzmine.datamodel.features.types.numbers.ChargeType;
+import io.github.mzmine.datamodel.features.types.numbers.HeightType;
+import io.github.mzmine.datamodel.features.types.numbers.MZType;
+import io.github.mzmine.project.impl.RawDataFileImpl;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import javafx.scene.paint.Color;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class ColumnarDataStoreTest {
+
+  private static final DataType mzType = new MZType();
+  private static final DataType heightType = new HeightType();
+  private static final DataType chargeType = new ChargeType();
+  private static final DataType commentType = new CommentType();
+
+  @Test
+  void testSetGetAndNull() {
+    final ColumnarDataStore store = new ColumnarDataStore();
+    final int a = store.newSlot().index();
+    final int b = store.newSlot().index();
+
+    Assertions.assertNull(store.set(mzType, a, 0d));
+    Assertions.assertNull(store.set(heightType, a, 5f));
+    Assertions.assertNull(store.set(chargeType, a, 2));
+    Assertions.assertNull(store.set(commentType, a, "comment"));
+
+    // zero is not null
+    Assertions.assertEquals(0d, store.get(mzType, a));
+    Assertions.assertEquals(5f, store.get(heightType, a));
+    Assertions.assertEquals(2, store.get(chargeType, a));
+    Assertions.assertEquals("comment", store.get(commentType, a));
+    // other slot has no values
+    Assertions.assertNull(store.get(mzType, b));
+    Assertions.assertNull(store.get(commentType, b));
+
+    Assertions.assertEquals(0d, store.set(mzType, a, 100d));
+    Assertions.assertEquals(100d, store.set(mzType, a, null));
+    Assertions.assertNull(store.get(mzType, a));
+  }
+
+  @Test
+  void testPrimitiveColumnFallback() {
+    final ColumnarDataStore store = new ColumnarDataStore();
+    final int a = store.newSlot().index();
+    final int b = store.newSlot().index();
+    store.set(mzType, a, 5d);
+    // raw type usage with a value of another class
+    store.set(mzType, b, "not a double");
+    Assertions.assertEquals(5d, store.get(mzType, a));
+    Assertions.assertEquals("not a double", store.get(mzType, b));
+  }
+
+  @Test
+  void testGrowth() {
+    final ColumnarDataStore store = new ColumnarDataStore(1);
+    final int n = 10_000;
+    for (int i = 0; i < n; i++) {
+      final int slot = store.newSlot().index();
+      Assertions.assertEquals(i, slot);
+      store.set(mzType, slot, (double) i);
+      if (i % 3 == 0) {
+        store.set(commentType, slot, String.valueOf(i));
+      }
+    }
+    for (int i = 0; i < n; i++) {
+      Assertions.assertEquals((double) i, store.get(mzType, i));
+      Assertions.assertEquals(i % 3 == 0 ? String.valueOf(i) : null, store.get(commentType, i));
+    }
+    Assertions.assertEquals(n, store.getNumberOfUsedSlots());
+  }
+
+  @Test
+  void testReleaseAndReuseSlot() {
+    final ColumnarDataStore store = new ColumnarDataStore();
+    final ColumnarDataStore.Slot a = store.newSlot();
+    final ColumnarDataStore.Slot b = store.newSlot();
+    store.set(mzType, a.index(), 100d);
+    store.set(commentType, a.index(), "a");
+    store.set(mzType, b.index(), 200d);
+
+    a.release();
+    Assertions.assertEquals(1, store.getNumberOfUsedSlots());
+    Assertions.assertNull(store.get(mzType, a.index()));
+    Assertions.assertNull(store.get(commentType, a.index()));
+    Assertions.assertEquals(200d, store.get(mzType, b.index()));
+
+    // the freed slot is reused and empty
+    final ColumnarDataStore.Slot c = store.newSlot();
+    Assertions.assertEquals(a.index(), c.index());
+    Assertions.assertTrue(c.mapView().isEmpty());
+    Assertions.assertEquals(2, store.getNumberOfUsedSlots());
+  }
+
+  @Test
+  void testMoveTo() {
+    final ColumnarDataStore source = new ColumnarDataStore();
+    final ColumnarDataStore target = new ColumnarDataStore();
+    target.newSlot();
+    final ColumnarDataStore.Slot a = source.newSlot();
+    source.set(mzType, a.index(), 100d);
+    source.set(commentType, a.index(), "a");
+
+    final ColumnarDataStore.Slot moved = source.moveTo(a.index(), target);
+    Assertions.assertSame(target, moved.store());
+    Assertions.assertEquals(1, moved.index());
+    Assertions.assertEquals(100d, moved.get(mzType));
+    Assertions.assertEquals("a", moved.get(commentType));
+    Assertions.assertNull(source.get(mzType, a.index()));
+    Assertions.assertNull(source.get(commentType, a.index()));
+    Assertions.assertEquals(0, source.getNumberOfUsedSlots());
+  }
+
+  @Test
+  void testConcurrentSetGet() throws Exception {
+    final ColumnarDataStore store = new ColumnarDataStore(1);
+    final int threads = 8;
+    final int slotsPerThread = 5_000;
+    final ExecutorService executor = Executors.newFixedThreadPool(threads);
+    final CountDownLatch start = new CountDownLatch(1);
+    try {
+      final List<Future<?>> futures = new ArrayList<>();
+      for (int t = 0; t < threads; t++) {
+        futures.add(executor.submit(() -> {
+          start.await();
+          // every thread writes its own slots while others grow the columns
+          final List<ColumnarDataStore.Slot> slots = new ArrayList<>();
+          for (int i = 0; i < slotsPerThread; i++) {
+            final ColumnarDataStore.Slot slot = store.newSlot();
+            slots.add(slot);
+            store.set(mzType, slot.index(), (double) slot.index());
+            store.set(heightType, slot.index(), (float) slot.index());
+            store.set(commentType, slot.index(), "v" + slot.index());
+            Assertions.assertEquals((double) slot.index(), slot.get(mzType));
+          }
+          // release every second slot and reuse it
+          for (int i = 0; i < slots.size(); i += 2) {
+            slots.get(i).release();
+          }
+          for (int i = 0; i < slots.size(); i += 2) {
+            final ColumnarDataStore.Slot slot = store.newSlot();
+            Assertions.assertNull(slot.get(mzType));
+            Assertions.assertNull(slot.get(commentType));
+            store.set(mzType, slot.index(), (double) slot.index());
+            slots.set(i, slot);
+          }
+          for (ColumnarDataStore.Slot slot : slots) {
+            Assertions.assertEquals((double) slot.index(), slot.get(mzType));
+          }
+          return null;
+        }));
+      }
+      start.countDown();
+      for (Future<?> future : futures) {
+        future.get(1, TimeUnit.MINUTES);
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    Assertions.assertEquals(threads * slotsPerThread, store.getNumberOfUsedSlots());
+  }
+
+  @Test
+  void testRemovedRowsAndFeaturesFreeTheirSlots() {
+    final RawDataFile file = new RawDataFileImpl("testfile", null, null, Color.BLACK);
+    final ModularFeatureList flist = new ModularFeatureList("flist", null, file);
+    final ColumnarDataStore rowStore = flist.getRowDataStore();
+    final ColumnarDataStore featureStore = flist.getFeatureDataStore();
+
+    final ModularFeatureListRow row = new ModularFeatureListRow(flist, 1);
+    final ModularFeature feature = new ModularFeature(flist, file, null, null);
+    feature.set(MZType.class, 200d);
+    row.addFeature(file, feature);
+    row.set(CommentType.class, "removed row");
+    flist.addRow(row);
+
+    final ModularFeatureListRow other = new ModularFeatureListRow(flist, 2);
+    other.set(CommentType.class, "kept row");
+    flist.addRow(other);
+
+    final int usedRowSlots = rowStore.getNumberOfUsedSlots();
+    final int usedFeatureSlots = featureStore.getNumberOfUsedSlots();
+    flist.removeRow(row);
+
+    // the values are gone from the feature list
+    Assertions.assertEquals(usedRowSlots - 1, rowStore.getNumberOfUsedSlots());
+    Assertions.assertEquals(usedFeatureSlots - 1, featureStore.getNumberOfUsedSlots());
+    for (int i = 0; i < usedRowSlots; i++) {
+      Assertions.assertNotEquals("removed row", rowStore.get(new CommentType(), i));
+    }
+    // but the removed row still has its values
+    Assertions.assertEquals("removed row", row.get(CommentType.class));
+    Assertions.assertEquals(200d, row.getFeature(file).get(MZType.class));
+
+    // new rows reuse the slot and do not see the old values
+    final ModularFeatureListRow newRow = new ModularFeatureListRow(flist, 3);
+    Assertions.assertNull(newRow.get(CommentType.class));
+    Assertions.assertEquals(usedRowSlots, rowStore.getNumberOfUsedSlots());
+    Assertions.assertEquals("kept row", other.get(CommentType.class));
+
+    // adding the row again moves the values back
+    flist.addRow(row);
+    Assertions.assertEquals(usedRowSlots + 1, rowStore.getNumberOfUsedSlots());
+    Assertions.assertEquals("removed row", row.get(CommentType.class));
+    Assertions.assertEquals(200d, row.getFeature(file).get(MZType.class));
+  }
+
+  @Test
+  void testRemovedAndReplacedFeaturesFreeTheirSlots() {
+    final RawDataFile file = new RawDataFileImpl("testfile", null, null, Color.BLACK);
+    final ModularFeatureList flist = new ModularFeatureList("flist", null, file);
+    final ColumnarDataStore featureStore = flist.getFeatureDataStore();
+
+    final ModularFeatureListRow row = new ModularFeatureListRow(flist, 1);
+    flist.addRow(row);
+    final ModularFeature first = new ModularFeature(flist, file, null, null);
+    first.set(MZType.class, 100d);
+    row.addFeature(file, first);
+    final int used = featureStore.getNumberOfUsedSlots();
+
+    // replace the feature
+    final ModularFeature second = new ModularFeature(flist, file, null, null);
+    second.set(MZType.class, 200d);
+    row.addFeature(file, second);
+    Assertions.assertEquals(used, featureStore.getNumberOfUsedSlots());
+    Assertions.assertEquals(100d, first.get(MZType.class));
+    Assertions.assertEquals(200d, row.getFeature(file).get(MZType.class));
+
+    row.removeFeature(file);
+    Assertions.assertEquals(used - 1, featureStore.getNumberOfUsedSlots());
+    Assertions.assertEquals(200d, second.get(MZType.class));
+  }
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.datamodel.features.correlation;
+
+import io.github.mzmine.datamodel.features.FeatureListRow;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+public class R2RMapTest {
+
+  private static FeatureListRow row(int id) {
+    final FeatureListRow row = Mockito.mock(FeatureListRow.class);
+    Mockito.when(row.getID()).thenReturn(id);
+    return row;
+  }
+
+  private static R2RMS2CosineSimilarityGNPS relationship(FeatureListRow a, FeatureListRow b,
+      double score) {
+    return new R2RMS2CosineSimilarityGNPS(a, b, score, "", "");
+  }
+
+  @Test
+  void testPutAndGetUndirected() {
+    final FeatureListRow a = row(1);
+    final FeatureListRow b = row(2);
+    final FeatureListRow c = row(3);
+    final R2RMap<R2RMS2CosineSimilarityGNPS> map = new R2RMap<>();
+    Assertions.assertTrue(map.isEmpty());
+
+    final var ab = relationship(a, b, 0.9);
+    Assertions.assertNull(map.put(a, b, ab));
+    Assertions.assertSame(ab, map.get(a, b));
+    Assertions.assertSame(ab, map.get(b, a));
+    Assertions.assertNull(map.get(a, c));
+    Assertions.assertEquals(1, map.size());
+    Assertions.assertFalse(map.isEmpty());
+  }
+
+  /**
+   * Ids above 46340 overflow the int cantor pairing, which produced colliding keys.
+   */
+  @Test
+  void testLargeIds() {
+    final int[] ids = {0, 46_339, 46_340, 46_341, 50_000, 100_000, 1_000_000};
+    final FeatureListRow[] rows = new FeatureListRow[ids.length];
+    for (int i = 0; i < ids.length; i++) {
+      rows[i] = row(ids[i]);
+    }
+
+    final R2RMap<R2RMS2CosineSimilarityGNPS> map = new R2RMap<>();
+    for (int i = 0; i < rows.length; i++) {
+      for (int j = i + 1; j < rows.length; j++) {
+        map.add(rows[i], rows[j], relationship(rows[i], rows[j], i * 100 + j));
+      }
+    }
+
+    final int n = rows.length;
+    Assertions.assertEquals(n * (n - 1) / 2, map.size());
+    for (int i = 0; i < rows.length; i++) {
+      for (int j = i + 1; j < rows.length; j++) {
+        final var value = map.get(rows[j], rows[i]);
+        Assertions.assertNotNull(value);
+        Assertions.assertEquals(i * 100 + j, value.getScore());
+      }
+      Assertions.assertEquals(n - 1, map.getRelationships(rows[i]).size());
+    }
+  }
+
+  @Test
+  void testPutReplaces() {
+    final FeatureListRow a = row(5);
+    final FeatureListRow b = row(60_000);
+    final FeatureListRow c = row(7);
+    final R2RMap<R2RMS2CosineSimilarityGNPS> map = new R2RMap<>();
+
+    final var first = relationship(a, b, 0.5);
+    final var ac = relationship(a, c, 0.7);
+    map.put(a, b, first);
+    map.put(a, c, ac);
+
+    // replacing with swapped arguments returns the old value and keeps the size
+    final var second = relationship(b, a, 0.8);
+    Assertions.assertSame(first, map.put(b, a, second));
+    Assertions.assertSame(second, map.get(a, b));
+    Assertions.assertEquals(2, map.size());
+    Assertions.assertEquals(2, map.values().size());
+    Assertions.assertTrue(map.values().contains(second));
+    Assertions.assertFalse(map.values().contains(first));
+
+    // the old value is replaced in the relationships of both rows
+    Assertions.assertEquals(List.of(second, ac), map.getRelationships(a));
+    Assertions.assertEquals(List.of(second), map.getRelationships(b));
+    Assertions.assertEquals(List.of(ac), map.getRelationships(c));
+  }
+
+  @Test
+  void testRelationshipsAndNeighbors() {
+    final FeatureListRow a = row(1);
+    final FeatureListRow b = row(2);
+    final FeatureListRow c = row(70_000);
+    final FeatureListRow d = row(4);
+    final R2RMap<R2RMS2CosineSimilarityGNPS> map = new R2RMap<>();
+
+    final var ab = relationship(a, b, 0.9);
+    final var ca = relationship(c, a, 0.8);
+    final var bc = relationship(b, c, 0.7);
+    map.add(a, b, ab);
+    map.add(c, a, ca);
+    map.add(b, c, bc);
+
+    Assertions.assertEquals(List.of(ab, ca), map.getRelationships(a));
+    Assertions.assertEquals(List.of(ab, bc), map.getRelationships(b));
+    Assertions.assertEquals(List.of(ca, bc), map.getRelationships(c));
+    Assertions.assertTrue(map.getRelationships(d).isEmpty());
+
+    Assertions.assertEquals(List.of(b, c), map.getNeighbors(a));
+    Assertions.assertEquals(List.of(a, c), map.getNeighbors(b));
+    Assertions.assertEquals(List.of(a, b), map.getNeighbors(c));
+    Assertions.assertTrue(map.getNeighbors(d).isEmpty());
+
+    // the returned lists are copies
+    Assertions.assertThrows(UnsupportedOperationException.class,
+        () -> map.getRelationships(a).clear());
+    Assertions.assertEquals(2, map.getRelationships(a).size());
+  }
+
+  @Test
+  void testPutAll() {
+    final FeatureListRow a = row(1);
+    final FeatureListRow b = row(2);
+    final FeatureListRow c = row(80_000);
+    final R2RMap<R2RMS2CosineSimilarityGNPS> target = new R2RMap<>();
+    final R2RMap<R2RMS2CosineSimilarityGNPS> source = new R2RMap<>();
+
+    final var oldAb = relationship(a, b, 0.1);
+    target.add(a, b, oldAb);
+
+    final var ab = relationship(a, b, 0.9);
+    final var bc = relationship(b, c, 0.8);
+    source.add(b, a, ab);
+    source.add(c, b, bc);
+
+    target.putAll(source);
+    Assertions.assertEquals(2, target.size());
+    Assertions.assertSame(ab, target.get(a, b));
+    Assertions.assertSame(bc, target.get(b, c));
+    Assertions.assertEquals(List.of(ab), target.getRelationships(a));
+    Assertions.assertEquals(List.of(ab, bc), target.getRelationships(b));
+    Assertions.assertEquals(List.of(bc), target.getRelationships(c));
+    Assertions.assertEquals(List.of(b), target.getNeighbors(c));
+
+    // the source is unchanged
+    Assertions.assertEquals(2, source.size());
+  }
+
+  @Test
+  void testConcurrentPut() throws Exception {
+    final int numRows = 200;
+    final FeatureListRow[] rows = new FeatureListRow[numRows];
+    for (int i = 0; i < numRows; i++) {
+      rows[i] = row(45_000 + i * 7);
+    }
+
+    final R2RMap<R2RMS2CosineSimilarityGNPS> map = new R2RMap<>();
+    final ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      final List<Future<?>> futures = new ArrayList<>();
+      for (int t = 0; t < 4; t++) {
+        final int offset = t;
+        futures.add(executor.submit(() -> {
+          for (int i = offset; i < numRows; i += 4) {
+            for (int j = 0; j < i; j++) {
+              map.add(rows[i], rows[j], relationship(rows[i], rows[j], 1d));
+            }
+          }
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+
+    Assertions.assertEquals(numRows * (numRows - 1) / 2, map.size());
+    for (FeatureListRow row : rows) {
+      final Set<FeatureListRow> neighbors = new HashSet<>(map.getNeighbors(row));
+      Assertions.assertEquals(numRows - 1, neighbors.size());
+      Assertions.assertFalse(neighbors.contains(row));
+    }
+  }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.batchmode;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.google.common.collect.Range;
+import io.github.mzmine.datamodel.MassSpectrumType;
+import io.github.mzmine.datamodel.PolarityType;
+import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.datamodel.Scan;
+import io.github.mzmine.datamodel.impl.SimpleScan;
+import io.github.mzmine.main.MZmineCore;
+import io.github.mzmine.modules.dataprocessing.featdet_massdetection.MassDetectionModule;
+import io.github.mzmine.modules.dataprocessing.featdet_massdetection.MassDetectionParameters;
+import io.github.mzmine.modules.dataprocessing.featdet_massdetection.centroid.CentroidMassDetector;
+import io.github.mzmine.modules.dataprocessing.featdet_massdetection.centroid.CentroidMassDetectorParameters;
+import io.github.mzmine.modules.impl.MZmineProcessingStepImpl;
+import io.github.mzmine.modules.io.import_rawdata_all.AllSpectralDataImportModule;
+import io.github.mzmine.modules.io.import_rawdata_all.AllSpectralDataImportParameters;
+import io.github.mzmine.modules.io.import_spectral_library.SpectralLibraryImportParameters;
+import io.github.mzmine.parameters.ParameterSet;
+import io.github.mzmine.parameters.parametertypes.selectors.RawDataFilesSelection;
+import io.github.mzmine.parameters.parametertypes.selectors.RawDataFilesSelectionType;
+import io.github.mzmine.project.impl.MZmineProjectImpl;
+import io.github.mzmine.project.impl.ProjectChangeEvent;
+import io.github.mzmine.project.impl.ProjectChangeListener;
+import io.github.mzmine.project.impl.RawDataFileImpl;
+import io.github.mzmine.taskcontrol.TaskStatus;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javafx.scene.paint.Color;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class BatchTaskTest {
+
+  @BeforeAll
+  public static void init() {
+    MZmineCore.main(new String[]{"-r", "-m", "all"});
+  }
+
+  @AfterAll
+  public static void tearDown() {
+    MZmineCore.getProjectManager().setCurrentProject(new MZmineProjectImpl());
+  }
+
+  /**
+   * Imports two files followed by mass detection as one pipeline per file. A file that is added to
+   * the project while the batch runs is not processed by the batch.
+   */
+  @Test
+  void testImportPipeline(@TempDir Path tempDir) throws IOException {
+    final File source = new File(
+        BatchTaskTest.class.getClassLoader().getResource("rawdatafiles/DOM_b.mzXML").getFile());
+    final File[] files = new File[]{tempDir.resolve("a.mzXML").toFile(),
+        tempDir.resolve("b.mzXML").toFile()};
+    for (File file : files) {
+      Files.copy(source.toPath(), file.toPath());
+    }
+
+    final MZmineProjectImpl project = new MZmineProjectImpl();
+    MZmineCore.getProjectManager().setCurrentProject(project);
+
+    // the user adds a file as soon as the first file is imported
+    final RawDataFile userFile = createUserFile();
+    final AtomicBoolean userFileAdded = new AtomicBoolean(false);
+    project.addProjectListener(new ProjectChangeListener() {
+      @Override
+      public void dataFilesChanged(ProjectChangeEvent<RawDataFile> event) {
+        if (event.change() == ProjectChangeEvent.Type.ADDED && !userFileAdded.getAndSet(true)) {
+          project.addFile(userFile);
+        }
+      }
+    });
+
+    final BatchQueue queue = new BatchQueue();
+    queue.add(new MZmineProcessingStepImpl<>(
+        MZmineCore.getModuleInstance(AllSpectralDataImportModule.class),
+        createImportParameters(files)));
+    queue.add(new MZmineProcessingStepImpl<>(MZmineCore.getModuleInstance(MassDetectionModule.class),
+        createMassDetectionParameters()));
+
+    final ParameterSet batchParameters = new BatchModeParameters().cloneParameterSet();
+    batchParameters.setParameter(BatchModeParameters.batchQueue, queue);
+    batchParameters.setParameter(BatchModeParameters.pipelinePerFileSteps, true);
+    batchParameters.setParameter(BatchModeParameters.advanced, false);
+
+    final BatchTask batch = new BatchTask(project, batchParameters, Instant.now(), null);
+    batch.run();
+
+    assertEquals(TaskStatus.FINISHED, batch.getStatus(), batch.getErrorMessage());
+    assertTrue(userFileAdded.get());
+    assertEquals(3, project.getNumberOfDataFiles());
+
+    final List<RawDataFile> imported = project.getCurrentRawDataFiles().stream()
+        .filter(file -> file != userFile).toList();
+    assertEquals(2, imported.size());
+    for (RawDataFile file : imported) {
+      assertEquals(2, file.getAppliedMethods().size(), file.getName());
+      for (Scan scan : file.getScanNumbers(1)) {
+        assertNotNull(scan.getMassList(), file.getName());
+      }
+    }
+
+    assertTrue(userFile.getAppliedMethods().isEmpty());
+    assertNull(userFile.getScan(0).getMassList());
+  }
+
+  private static RawDataFile createUserFile() throws IOException {
+    final RawDataFile file = new RawDataFileImpl("user.mzML", null, null, Color.BLACK);
+    file.addScan(new SimpleScan(file, 1, 1, 1f, null, new double[]{100d, 200d},
+        new double[]{1E5, 2E5}, MassSpectrumType.CENTROIDED, PolarityType.POSITIVE, "",
+        Range.closed(100d, 200d)));
+    return file;
+  }
+
+  private static ParameterSet createImportParameters(File[] files) {
+    final ParameterSet parameters = new AllSpectralDataImportParameters().cloneParameterSet();
+    parameters.setParameter(AllSpectralDataImportParameters.fileNames, files);
+    parameters.setParameter(SpectralLibraryImportParameters.dataBaseFiles, new File[0]);
+    parameters.setParameter(AllSpectralDataImportParameters.advancedImport, false);
+    return parameters;
+  }
+
+  private static ParameterSet createMassDetectionParameters() {
+    final ParameterSet detectorParameters = new CentroidMassDetectorParameters().cloneParameterSet();
+    detectorParameters.setParameter(CentroidMassDetectorParameters.noiseLevel, 0d);
+    detectorParameters.setParameter(CentroidMassDetectorParameters.detectIsotopes, false);
+
+    final ParameterSet parameters = new MassDetectionParameters().cloneParameterSet();
+    parameters.setParameter(MassDetectionParameters.dataFiles,
+        new RawDataFilesSelection(RawDataFilesSelectionType.BATCH_LAST_FILES));
+    parameters.getParameter(MassDetectionParameters.massDetector).setValue(
+        new MZmineProcessingStepImpl<>(MZmineCore.getModuleInstance(CentroidMassDetector.class),
+            detectorParameters));
+    parameters.setParameter(MassDetectionParameters.outFilenameOption, false);
+    return parameters;
+  }
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.dataprocessing.featdet_adapchromatogrambuilder;
+
+import com.google.common.collect.Range;
+import com.google.common.collect.RangeMap;
+import com.google.common.collect.TreeRangeMap;
+import io.github.mzmine.parameters.parametertypes.tolerances.MZTolerance;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Random;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Compares the {@link MzRangeIndex} with the {@link TreeRangeMap} used by the chromatogram builder
+ * before.
+ */
+public class MzRangeIndexTest {
+
+  private static final long[] SEEDS = {1, 42, 4711};
+
+  @Test
+  void testPutTrimsAndRemovesOverlaps() {
+    final MzRangeIndex index = new MzRangeIndex();
+    final RangeMap<Double, Integer> map = TreeRangeMap.create();
+
+    put(index, map, 100, 101, 0);
+    put(index, map, 102, 103, 1);
+    put(index, map, 103.5, 104, 2);
+    put(index, map, 105, 106, 3);
+    assertEqualRanges(map, index);
+
+    // trims the upper bound of 0, removes 1 and 2 and trims the lower bound of 3
+    put(index, map, 100.5, 105.5, 4);
+    assertEqualRanges(map, index);
+    Assertions.assertEquals(3, index.size());
+
+    // adjacent ranges are not trimmed
+    put(index, map, 106, 107, 5);
+    put(index, map, 99, 100, 6);
+    assertEqualRanges(map, index);
+
+    Assertions.assertEquals(-1, index.find(98.9));
+    Assertions.assertEquals(6, index.find(99));
+    Assertions.assertEquals(0, index.find(100));
+    Assertions.assertEquals(4, index.find(100.5));
+    Assertions.assertEquals(3, index.find(105.5));
+    Assertions.assertEquals(5, index.find(106));
+    Assertions.assertEquals(-1, index.find(107));
+  }
+
+  @Test
+  void testSplitIsRejected() {
+    final MzRangeIndex index = new MzRangeIndex();
+    index.put(100, 110, 0);
+    Assertions.assertThrows(IllegalStateException.class, () -> index.put(102, 104, 1));
+    Assertions.assertThrows(IllegalArgumentException.class, () -> index.put(120, 120, 2));
+  }
+
+  /**
+   * Runs the grouping of the chromatogram builder with the old range map and the new index. Enough
+   * ranges are created to split the blocks of the index.
+   */
+  @Test
+  void testChromatogramBuilderGrouping() {
+    final MZTolerance mzTolerance = new MZTolerance(0.002, 10);
+    for (long seed : SEEDS) {
+      final double[] mzs = createMzs(new Random(seed), 3000, 20000);
+
+      final RangeMap<Double, Integer> map = TreeRangeMap.create();
+      final int[] expected = groupWithRangeMap(map, mzs, mzTolerance);
+
+      final MzRangeIndex index = new MzRangeIndex();
+      final int[] actual = groupWithIndex(index, mzs, mzTolerance);
+
+      Assertions.assertArrayEquals(expected, actual, "seed " + seed);
+      Assertions.assertTrue(index.size() > 2000, "too few ranges to split blocks");
+      assertEqualRanges(map, index);
+    }
+  }
+
+  /**
+   * Values around random centers, so data points fall into existing and neighbouring ranges.
+   */
+  private static double[] createMzs(Random random, int numCenters, int n) {
+    final double[] centers = new double[numCenters];
+    for (int i = 0; i < numCenters; i++) {
+      centers[i] = 100 + random.nextDouble() * 200;
+    }
+    final double[] mzs = new double[n];
+    for (int i = 0; i < n; i++) {
+      mzs[i] = centers[random.nextInt(numCenters)] + random.nextGaussian() * 0.003;
+    }
+    return mzs;
+  }
+
+  /**
+   * The previous grouping of ModularADAPChromatogramBuilderTask.
+   *
+   * @return the id of the chromatogram of each value
+   */
+  private static int[] groupWithRangeMap(RangeMap<Double, Integer> map, double[] mzs,
+      MZTolerance mzTolerance) {
+    final int[] groups = new int[mzs.length];
+    int numChromatograms = 0;
+    for (int i = 0; i < mzs.length; i++) {
+      final double mz = mzs[i];
+      final Entry<Range<Double>, Integer> existing = map.getEntry(mz);
+      if (existing != null) {
+        groups[i] = existing.getValue();
+        continue;
+      }
+
+      final Range<Double> toleranceRange = mzTolerance.getToleranceRange(mz);
+      final Entry<Range<Double>, Integer> minusRange = map.getEntry(
+          toleranceRange.lowerEndpoint());
+      final Entry<Range<Double>, Integer> plusRange = map.getEntry(
+          toleranceRange.upperEndpoint());
+      final Double toBeLowerBound =
+          minusRange == null ? toleranceRange.lowerEndpoint() : minusRange.getKey().upperEndpoint();
+      final Double toBeUpperBound =
+          plusRange == null ? toleranceRange.upperEndpoint() : plusRange.getKey().lowerEndpoint();
+
+      if (toBeLowerBound < toBeUpperBound) {
+        map.put(Range.closedOpen(toBeLowerBound, toBeUpperBound), numChromatograms);
+        groups[i] = numChromatograms++;
+      } else if (toBeLowerBound.equals(toBeUpperBound) && plusRange != null) {
+        groups[i] = plusRange.getValue();
+      } else {
+        Assertions.fail("Incorrect range for m/z " + mz);
+      }
+    }
+    return groups;
+  }
+
+  /**
+   * The grouping of ModularADAPChromatogramBuilderTask with the index.
+   *
+   * @return the id of the chromatogram of each value
+   */
+  private static int[] groupWithIndex(MzRangeIndex index, double[] mzs, MZTolerance mzTolerance) {
+    final int[] groups = new int[mzs.length];
+    int numChromatograms = 0;
+    for (int i = 0; i < mzs.length; i++) {
+      final double mz = mzs[i];
+      final int existing = index.find(mz);
+      if (existing != -1) {
+        groups[i] = existing;
+        continue;
+      }
+
+      final Range<Double> toleranceRange = mzTolerance.getToleranceRange(mz);
+      final double toleranceLower = toleranceRange.lowerEndpoint();
+      final double toleranceUpper = toleranceRange.upperEndpoint();
+      final int minusRange = index.find(toleranceLower);
+      final int plusRange = index.find(toleranceUpper);
+      final double toBeLowerBound =
+          minusRange == -1 ? toleranceLower : index.getUpper(minusRange);
+      final double toBeUpperBound = plusRange == -1 ? toleranceUpper : index.getLower(plusRange);
+
+      if (toBeLowerBound < toBeUpperBound) {
+        index.put(toBeLowerBound, toBeUpperBound, numChromatograms);
+        groups[i] = numChromatograms++;
+      } else if (toBeLowerBound == toBeUpperBound && plusRange != -1) {
+        groups[i] = plusRange;
+      } else {
+        Assertions.fail("Incorrect range for m/z " + mz);
+      }
+    }
+    return groups;
+  }
+
+  private static void put(MzRangeIndex index, RangeMap<Double, Integer> map, double lower,
+      double upper, int id) {
+    index.put(lower, upper, id);
+    map.put(Range.closedOpen(lower, upper), id);
+  }
+
+  private static void assertEqualRanges(RangeMap<Double, Integer> map, MzRangeIndex index) {
+    final List<Entry<Range<Double>, Integer>> expected = new ArrayList<>(
+        map.asMapOfRanges().entrySet());
+    final int[] ids = index.getSortedIds();
+    Assertions.assertEquals(expected.size(), index.size());
+    Assertions.assertEquals(expected.size(), ids.length);
+    for (int i = 0; i < ids.length; i++) {
+      final Map.Entry<Range<Double>, Integer> entry = expected.get(i);
+      Assertions.assertEquals(entry.getValue(), ids[i]);
+      Assertions.assertEquals(entry.getKey().lowerEndpoint(), index.getLower(ids[i]));
+      Assertions.assertEquals(entry.getKey().upperEndpoint(), index.getUpper(ids[i]));
+      Assertions.assertEquals(ids[i], index.find(entry.getKey().lowerEndpoint()));
+    }
+  }
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.dataprocessing.featdet_chromatogramdeconvolution;
+
+import com.google.common.collect.Range;
+import io.github.mzmine.datamodel.FeatureStatus;
+import io.github.mzmine.datamodel.MassSpectrumType;
+import io.github.mzmine.datamodel.PolarityType;
+import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.datamodel.Scan;
+import io.github.mzmine.datamodel.data_access.EfficientDataAccess;
+import io.github.mzmine.datamodel.data_access.EfficientDataAccess.FeatureDataType;
+import io.github.mzmine.datamodel.data_access.FeatureDataAccess;
+import io.github.mzmine.datamodel.featuredata.IonTimeSeries;
+import io.github.mzmine.datamodel.featuredata.impl.SimpleIonTimeSeries;
+import io.github.mzmine.datamodel.features.FeatureList;
+import io.github.mzmine.datamodel.features.FeatureListRow;
+import io.github.mzmine.datamodel.features.ModularFeature;
+import io.github.mzmine.datamodel.features.ModularFeatureList;
+import io.github.mzmine.datamodel.features.ModularFeatureListRow;
+import io.github.mzmine.datamodel.impl.SimpleScan;
+import io.github.mzmine.main.MZmineCore;
+import io.github.mzmine.modules.dataprocessing.featdet_chromatogramdeconvolution.minimumsearch.MinimumSearchFeatureResolverParameters;
+import io.github.mzmine.parameters.ParameterSet;
+import io.github.mzmine.parameters.parametertypes.OriginalFeatureListHandlingParameter.OriginalFeatureListOption;
+import io.github.mzmine.project.impl.MZmineProjectImpl;
+import io.github.mzmine.project.impl.RawDataFileImpl;
+import io.github.mzmine.taskcontrol.TaskStatus;
+import io.github.mzmine.util.FeatureListUtils;
+import io.github.mzmine.datamodel.featuredata.FeatureDataUtils;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import javafx.scene.paint.Color;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Compares the chunked, parallel resolving of the {@link FeatureResolverTask} with resolving all
+ * chromatograms sequentially with a single resolver.
+ */
+public class FeatureResolverTaskTest {
+
+  private static final long[] SEEDS = {1, 42, 4711};
+  private static final int NUM_SCANS = 150;
+  // multiple chunks of 256 rows
+  private static final int NUM_ROWS = 1000;
+
+  @BeforeAll
+  public static void init() {
+    MZmineCore.main(new String[]{"-r", "-m", "all"});
+  }
+
+  @Test
+  void testChunkedResolvingMatchesSequentialResolving() {
+    for (long seed : SEEDS) {
+      final Random rnd = new Random(seed);
+      final RawDataFile file = new RawDataFileImpl("file " + seed, null, null, Color.BLACK);
+      final MZmineProjectImpl project = new MZmineProjectImpl();
+      project.addFile(file);
+      final ModularFeatureList flist = createChromatograms(rnd, file);
+      project.addFeatureList(flist);
+
+      final ParameterSet parameters = createParameters();
+      final FeatureList expected = resolveSequentially(flist, parameters);
+
+      final FeatureResolverTask task = new FeatureResolverTask(project, null, flist, parameters,
+          FeatureDataUtils.DEFAULT_CENTER_FUNCTION, Instant.now());
+      task.run();
+      Assertions.assertEquals(TaskStatus.FINISHED, task.getStatus(), task.getErrorMessage());
+
+      final List<FeatureList> lists = project.getCurrentFeatureLists();
+      final FeatureList actual = lists.get(lists.size() - 1);
+      Assertions.assertNotSame(flist, actual);
+
+      // make sure that the test data is resolved into multiple features per chromatogram
+      Assertions.assertTrue(expected.getNumberOfRows() > NUM_ROWS);
+      Assertions.assertEquals(expected.getNumberOfRows(), actual.getNumberOfRows());
+      for (int i = 0; i < expected.getNumberOfRows(); i++) {
+        final FeatureListRow expectedRow = expected.getRow(i);
+        final FeatureListRow actualRow = actual.getRow(i);
+        Assertions.assertEquals(expectedRow.getID(), actualRow.getID());
+
+        final IonTimeSeries<? extends Scan> expectedSeries = expectedRow.getFeature(file)
+            .getFeatureData();
+        final IonTimeSeries<? extends Scan> actualSeries = actualRow.getFeature(file)
+            .getFeatureData();
+        Assertions.assertEquals(expectedSeries.getSpectra(), actualSeries.getSpectra());
+        for (int j = 0; j < expectedSeries.getNumberOfValues(); j++) {
+          Assertions.assertEquals(expectedSeries.getMZ(j), actualSeries.getMZ(j));
+          Assertions.assertEquals(expectedSeries.getIntensity(j), actualSeries.getIntensity(j));
+        }
+      }
+    }
+  }
+
+  private static ParameterSet createParameters() {
+    final ParameterSet parameters = new MinimumSearchFeatureResolverParameters()
+        .cloneParameterSet();
+    parameters.setParameter(GeneralResolverParameters.handleOriginal,
+        OriginalFeatureListOption.KEEP);
+    parameters.setParameter(GeneralResolverParameters.groupMS2Parameters, false);
+    parameters.setParameter(GeneralResolverParameters.dimension,
+        ResolvingDimension.RETENTION_TIME);
+    parameters.setParameter(MinimumSearchFeatureResolverParameters.CHROMATOGRAPHIC_THRESHOLD_LEVEL,
+        0.5d);
+    parameters.setParameter(MinimumSearchFeatureResolverParameters.SEARCH_RT_RANGE, 0.2d);
+    parameters.setParameter(MinimumSearchFeatureResolverParameters.MIN_RELATIVE_HEIGHT, 0d);
+    parameters.setParameter(MinimumSearchFeatureResolverParameters.MIN_ABSOLUTE_HEIGHT, 1E3);
+    parameters.setParameter(MinimumSearchFeatureResolverParameters.MIN_RATIO, 1.7d);
+    parameters.setParameter(MinimumSearchFeatureResolverParameters.PEAK_DURATION,
+        Range.closed(0d, 10d));
+    parameters.setParameter(GeneralResolverParameters.MIN_NUMBER_OF_DATAPOINTS, 3);
+    return parameters;
+  }
+
+  /**
+   * Resolves the chromatograms in the order of the rows with a single resolver and data access,
+   * and sorts the new rows the same way as the task.
+   */
+  private static FeatureList resolveSequentially(ModularFeatureList flist,
+      ParameterSet parameters) {
+    final RawDataFile file = flist.getRawDataFile(0);
+    final Resolver resolver = ((GeneralResolverParameters) parameters).getResolver(parameters,
+        flist);
+    final FeatureDataAccess access = EfficientDataAccess.of(flist, FeatureDataType.INCLUDE_ZEROS,
+        file);
+
+    final ModularFeatureList resolvedList = new ModularFeatureList("sequential", null, file);
+    int id = 1;
+    while (access.hasNextFeature()) {
+      final ModularFeature originalFeature = (ModularFeature) access.nextFeature();
+      final List<IonTimeSeries<? extends Scan>> resolved = resolver.resolve(access, null);
+      for (IonTimeSeries<? extends Scan> series : resolved) {
+        final ModularFeatureListRow row = new ModularFeatureListRow(resolvedList, id++);
+        row.addFeature(file, new ModularFeature(resolvedList, file, series,
+            originalFeature.getFeatureStatus()));
+        resolvedList.addRow(row);
+      }
+    }
+    FeatureListUtils.sortByDefaultRT(resolvedList, true);
+    return resolvedList;
+  }
+
+  /**
+   * Chromatograms over all scans with two to three gaussian peaks and noise.
+   */
+  private static ModularFeatureList createChromatograms(Random rnd, RawDataFile file) {
+    final List<Scan> scans = new ArrayList<>();
+    for (int i = 0; i < NUM_SCANS; i++) {
+      final SimpleScan scan = new SimpleScan(file, i, 1, 0.05f * i, null, new double[0],
+          new double[0], MassSpectrumType.CENTROIDED, PolarityType.POSITIVE, "",
+          Range.closed(50d, 1050d));
+      file.addScan(scan);
+      scans.add(scan);
+    }
+
+    final ModularFeatureList flist = new ModularFeatureList("chromatograms", null, file);
+    flist.setSelectedScans(file, scans);
+    for (int k = 0; k < NUM_ROWS; k++) {
+      final double mz = 100d + 0.5d * k;
+      final int numPeaks = 2 + rnd.nextInt(2);
+      final float[] peakRts = new float[numPeaks];
+      final double[] peakHeights = new double[numPeaks];
+      for (int p = 0; p < numPeaks; p++) {
+        peakRts[p] = 0.5f + rnd.nextFloat() * (NUM_SCANS * 0.05f - 1f);
+        peakHeights[p] = 1E4 + rnd.nextDouble() * 1E5;
+      }
+
+      final double[] mzs = new double[NUM_SCANS];
+      final double[] intensities = new double[NUM_SCANS];
+      for (int i = 0; i < NUM_SCANS; i++) {
+        mzs[i] = mz + (rnd.nextDouble() - 0.5) * 0.002;
+        intensities[i] = rnd.nextDouble() * 100;
+        for (int p = 0; p < numPeaks; p++) {
+          final double delta = (scans.get(i).getRetentionTime() - peakRts[p]) / 0.1;
+          intensities[i] += peakHeights[p] * Math.exp(-0.5 * delta * delta);
+        }
+      }
+
+      final ModularFeatureListRow row = new ModularFeatureListRow(flist, k + 1);
+      row.addFeature(file, new ModularFeature(flist, file,
+          new SimpleIonTimeSeries(null, mzs, intensities, scans), FeatureStatus.DETECTED));
+      flist.addRow(row);
+    }
+    return flist;
+  }
+}
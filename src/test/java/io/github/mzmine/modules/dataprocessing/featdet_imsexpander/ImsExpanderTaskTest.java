@@ -0,0 +1,222 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.dataprocessing.featdet_imsexpander;
+
+import com.google.common.collect.Range;
+import io.github.mzmine.datamodel.FeatureStatus;
+import io.github.mzmine.datamodel.Frame;
+import io.github.mzmine.datamodel.IMSRawDataFile;
+import io.github.mzmine.datamodel.MassSpectrumType;
+import io.github.mzmine.datamodel.MobilityType;
+import io.github.mzmine.datamodel.PolarityType;
+import io.github.mzmine.datamodel.Scan;
+import io.github.mzmine.datamodel.featuredata.IonMobilitySeries;
+import io.github.mzmine.datamodel.featuredata.IonMobilogramTimeSeries;
+import io.github.mzmine.datamodel.featuredata.impl.SimpleIonTimeSeries;
+import io.github.mzmine.datamodel.features.FeatureList;
+import io.github.mzmine.datamodel.features.FeatureListRow;
+import io.github.mzmine.datamodel.features.ModularFeature;
+import io.github.mzmine.datamodel.features.ModularFeatureList;
+import io.github.mzmine.datamodel.features.ModularFeatureListRow;
+import io.github.mzmine.datamodel.impl.BuildingMobilityScan;
+import io.github.mzmine.datamodel.impl.SimpleFrame;
+import io.github.mzmine.gui.preferences.MZminePreferences;
+import io.github.mzmine.main.MZmineCore;
+import io.github.mzmine.parameters.ParameterSet;
+import io.github.mzmine.parameters.parametertypes.OriginalFeatureListHandlingParameter.OriginalFeatureListOption;
+import io.github.mzmine.parameters.parametertypes.tolerances.MZTolerance;
+import io.github.mzmine.project.impl.IMSRawDataFileImpl;
+import io.github.mzmine.project.impl.MZmineProjectImpl;
+import io.github.mzmine.taskcontrol.TaskStatus;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import javafx.scene.paint.Color;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Compares the single pass streaming of the IMS expander with the previous rt partitioned sub
+ * tasks on a generated IMS file.
+ */
+public class ImsExpanderTaskTest {
+
+  private static final int NUM_FRAMES = 60;
+  private static final int NUM_MOBILITY_SCANS = 30;
+
+  @BeforeAll
+  public static void init() {
+    MZmineCore.main(new String[]{"-r", "-m", "all"});
+  }
+
+  @Test
+  void testStreamingMatchesRtPartitionedExpanding() throws IOException {
+    final Random rnd = new Random(42);
+    final Integer threads = MZmineCore.getConfiguration().getPreferences()
+        .getParameter(MZminePreferences.numOfThreads).getValue();
+    // the rt partitioned sub tasks need at least one trace per thread
+    final int numRows = Math.max(60, 2 * (threads == null ? 1 : threads));
+
+    final IMSRawDataFile file = new IMSRawDataFileImpl("ims file", null, null, Color.BLACK);
+    final MZmineProjectImpl project = new MZmineProjectImpl();
+    project.addFile(file);
+
+    final double[] rowMzs = new double[numRows];
+    final int[] rowStarts = new int[numRows];
+    final int[] rowEnds = new int[numRows];
+    for (int k = 0; k < numRows; k++) {
+      rowMzs[k] = 100d + 5d * k;
+      rowStarts[k] = rnd.nextInt(NUM_FRAMES - 10);
+      rowEnds[k] = rowStarts[k] + 2 + rnd.nextInt(8);
+    }
+
+    final List<Frame> frames = createFrames(rnd, file, rowMzs, rowStarts, rowEnds);
+    final ModularFeatureList flist = new ModularFeatureList("flist", null, file);
+    flist.setSelectedScans(file, frames);
+    for (int k = 0; k < numRows; k++) {
+      final List<Scan> featureFrames = new ArrayList<>(frames.subList(rowStarts[k],
+          rowEnds[k] + 1));
+      final double[] mzs = new double[featureFrames.size()];
+      final double[] intensities = new double[featureFrames.size()];
+      for (int i = 0; i < featureFrames.size(); i++) {
+        mzs[i] = rowMzs[k];
+        intensities[i] = 1E4;
+      }
+      final ModularFeatureListRow row = new ModularFeatureListRow(flist, k + 1);
+      row.addFeature(file, new ModularFeature(flist, file,
+          new SimpleIonTimeSeries(null, mzs, intensities, featureFrames), FeatureStatus.DETECTED));
+      flist.addRow(row);
+    }
+    project.addFeatureList(flist);
+
+    final Map<Integer, IonMobilogramTimeSeries> partitioned = expand(project, flist, false);
+    final Map<Integer, IonMobilogramTimeSeries> streamed = expand(project, flist, true);
+
+    Assertions.assertFalse(partitioned.isEmpty());
+    Assertions.assertEquals(partitioned.keySet(), streamed.keySet());
+    for (var entry : partitioned.entrySet()) {
+      final IonMobilogramTimeSeries expected = entry.getValue();
+      final IonMobilogramTimeSeries actual = streamed.get(entry.getKey());
+      Assertions.assertEquals(expected.getSpectra(), actual.getSpectra());
+      Assertions.assertEquals(expected.getMobilograms().size(), actual.getMobilograms().size());
+
+      for (int i = 0; i < expected.getMobilograms().size(); i++) {
+        final IonMobilitySeries expectedMobilogram = expected.getMobilogram(i);
+        final IonMobilitySeries actualMobilogram = actual.getMobilogram(i);
+        Assertions.assertEquals(expectedMobilogram.getSpectra(), actualMobilogram.getSpectra());
+        for (int j = 0; j < expectedMobilogram.getNumberOfValues(); j++) {
+          Assertions.assertEquals(expectedMobilogram.getMZ(j), actualMobilogram.getMZ(j));
+          Assertions.assertEquals(expectedMobilogram.getIntensity(j),
+              actualMobilogram.getIntensity(j));
+        }
+      }
+    }
+  }
+
+  /**
+   * Every mobility scan contains the m/z of the rows that are present in the frame, a noise data
+   * point between the rows, and rarely the m/z of a row outside of its rt range.
+   */
+  private static List<Frame> createFrames(Random rnd, IMSRawDataFile file, double[] rowMzs,
+      int[] rowStarts, int[] rowEnds) throws IOException {
+    final double[] mobilities = new double[NUM_MOBILITY_SCANS];
+    for (int j = 0; j < NUM_MOBILITY_SCANS; j++) {
+      mobilities[j] = 1.5d - j * 0.02d;
+    }
+
+    final List<Frame> frames = new ArrayList<>();
+    for (int i = 0; i < NUM_FRAMES; i++) {
+      final List<BuildingMobilityScan> scans = new ArrayList<>();
+      for (int j = 0; j < NUM_MOBILITY_SCANS; j++) {
+        final List<Double> mzs = new ArrayList<>();
+        final List<Double> intensities = new ArrayList<>();
+        for (int k = 0; k < rowMzs.length; k++) {
+          final boolean inRt = i >= rowStarts[k] && i <= rowEnds[k];
+          if ((inRt && rnd.nextDouble() < 0.7) || (!inRt && rnd.nextDouble() < 0.05)) {
+            mzs.add(rowMzs[k] + (rnd.nextDouble() - 0.5) * 0.004);
+            intensities.add(100d + rnd.nextDouble() * 1E4);
+          }
+          if (rnd.nextDouble() < 0.3) {
+            mzs.add(rowMzs[k] + 2.5d);
+            intensities.add(100d + rnd.nextDouble() * 1E3);
+          }
+        }
+        scans.add(new BuildingMobilityScan(j, mzs.stream().mapToDouble(d -> d).toArray(),
+            intensities.stream().mapToDouble(d -> d).toArray()));
+      }
+
+      final SimpleFrame frame = new SimpleFrame(file, i, 1, 0.1f * i, new double[0],
+          new double[0], MassSpectrumType.CENTROIDED, PolarityType.POSITIVE, "",
+          Range.closed(0d, 2000d), MobilityType.TIMS, null, null);
+      frame.setMobilities(mobilities);
+      frame.setMobilityScans(scans, true);
+      file.addScan(frame);
+      frames.add(frame);
+    }
+    return frames;
+  }
+
+  /**
+   * @return the expanded series by row id.
+   */
+  private static Map<Integer, IonMobilogramTimeSeries> expand(MZmineProjectImpl project,
+      ModularFeatureList flist, boolean streaming) {
+    final ParameterSet parameters = new ImsExpanderParameters().cloneParameterSet();
+    parameters.getParameter(ImsExpanderParameters.mzTolerance).setValue(true);
+    parameters.getParameter(ImsExpanderParameters.mzTolerance).getEmbeddedParameter()
+        .setValue(new MZTolerance(0.005, 0));
+    parameters.getParameter(ImsExpanderParameters.useRawData).setValue(true);
+    parameters.getParameter(ImsExpanderParameters.useRawData).getEmbeddedParameter()
+        .setValue(0d);
+    parameters.getParameter(ImsExpanderParameters.mobilogramBinWidth).setValue(true);
+    parameters.getParameter(ImsExpanderParameters.mobilogramBinWidth).getEmbeddedParameter()
+        .setValue(1);
+    parameters.getParameter(ImsExpanderParameters.maxNumTraces).setValue(false);
+    parameters.setParameter(ImsExpanderParameters.singlePassStreaming, streaming);
+    parameters.setParameter(ImsExpanderParameters.handleOriginal, OriginalFeatureListOption.KEEP);
+
+    final ImsExpanderTask task = new ImsExpanderTask(null, parameters, flist, project, 1,
+        Instant.now());
+    task.run();
+    Assertions.assertEquals(TaskStatus.FINISHED, task.getStatus(), task.getErrorMessage());
+
+    final List<FeatureList> lists = project.getCurrentFeatureLists();
+    final FeatureList expanded = lists.get(lists.size() - 1);
+    Assertions.assertNotSame(flist, expanded);
+
+    final Map<Integer, IonMobilogramTimeSeries> series = new HashMap<>();
+    for (FeatureListRow row : expanded.getRows()) {
+      series.put(row.getID(),
+          (IonMobilogramTimeSeries) row.getFeature(flist.getRawDataFile(0)).getFeatureData());
+    }
+    return series;
+  }
+}
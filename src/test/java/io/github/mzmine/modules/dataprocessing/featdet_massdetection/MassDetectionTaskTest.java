@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.dataprocessing.featdet_massdetection;
+
+import com.google.common.collect.Range;
+import io.github.mzmine.datamodel.MassList;
+import io.github.mzmine.datamodel.MassSpectrumType;
+import io.github.mzmine.datamodel.PolarityType;
+import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.datamodel.Scan;
+import io.github.mzmine.datamodel.impl.SimpleScan;
+import io.github.mzmine.main.MZmineCore;
+import io.github.mzmine.modules.dataprocessing.featdet_massdetection.centroid.CentroidMassDetector;
+import io.github.mzmine.modules.dataprocessing.featdet_massdetection.centroid.CentroidMassDetectorParameters;
+import io.github.mzmine.modules.dataprocessing.featdet_massdetection.factor_of_lowest.FactorOfLowestMassDetector;
+import io.github.mzmine.modules.dataprocessing.featdet_massdetection.factor_of_lowest.FactorOfLowestMassDetectorParameters;
+import io.github.mzmine.modules.impl.MZmineProcessingStepImpl;
+import io.github.mzmine.parameters.ParameterSet;
+import io.github.mzmine.parameters.parametertypes.selectors.ScanSelection;
+import io.github.mzmine.project.impl.RawDataFileImpl;
+import io.github.mzmine.taskcontrol.TaskStatus;
+import io.github.mzmine.util.MemoryMapStorage;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import javafx.scene.paint.Color;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Compares the mass lists of the batched, parallel {@link MassDetectionTask} with detecting the
+ * masses of every scan sequentially. The batches store the mass lists as slices of a single buffer.
+ */
+public class MassDetectionTaskTest {
+
+  private static final long[] SEEDS = {1L, 42L, 2022L};
+  // multiple batches of 256 scans and a partial last batch
+  private static final int NUM_SCANS = 700;
+
+  @BeforeAll
+  public static void init() {
+    MZmineCore.main(new String[]{"-r", "-m", "all"});
+  }
+
+  @Test
+  void testBufferedDetectorMatchesSequentialDetection() throws IOException {
+    final MassDetector detector = MZmineCore.getModuleInstance(CentroidMassDetector.class);
+    final ParameterSet detectorParameters = new CentroidMassDetectorParameters()
+        .cloneParameterSet();
+    detectorParameters.setParameter(CentroidMassDetectorParameters.noiseLevel, 1E3);
+    detectorParameters.setParameter(CentroidMassDetectorParameters.detectIsotopes, false);
+    assertBatchesMatchSequentialDetection(detector, detectorParameters);
+  }
+
+  @Test
+  void testUnbufferedDetectorMatchesSequentialDetection() throws IOException {
+    final MassDetector detector = MZmineCore.getModuleInstance(FactorOfLowestMassDetector.class);
+    final ParameterSet detectorParameters = new FactorOfLowestMassDetectorParameters()
+        .cloneParameterSet();
+    detectorParameters.setParameter(FactorOfLowestMassDetectorParameters.noiseFactor, 2.5);
+    assertBatchesMatchSequentialDetection(detector, detectorParameters);
+  }
+
+  private static void assertBatchesMatchSequentialDetection(MassDetector detector,
+      ParameterSet detectorParameters) throws IOException {
+    for (long seed : SEEDS) {
+      final Random rnd = new Random(seed);
+      final RawDataFile file = new RawDataFileImpl("file " + seed, null, null, Color.BLACK);
+      final List<Scan> scans = addScans(rnd, file);
+
+      final ParameterSet parameters = new MassDetectionParameters().cloneParameterSet();
+      parameters.setParameter(MassDetectionParameters.scanSelection, new ScanSelection(1));
+      parameters.setParameter(MassDetectionParameters.scanTypes, SelectedScanTypes.SCANS);
+      parameters.getParameter(MassDetectionParameters.massDetector)
+          .setValue(new MZmineProcessingStepImpl<>(detector, detectorParameters));
+      parameters.getParameter(MassDetectionParameters.outFilenameOption).setValue(false);
+
+      final MassDetectionTask task = new MassDetectionTask(file, parameters,
+          MemoryMapStorage.create(), Instant.now());
+      task.run();
+      Assertions.assertEquals(TaskStatus.FINISHED, task.getStatus(), task.getErrorMessage());
+
+      for (Scan scan : scans) {
+        final double[][] expected = detector.getMassValues(scan, detectorParameters);
+        final MassList massList = scan.getMassList();
+        Assertions.assertNotNull(massList);
+        Assertions.assertEquals(expected[0].length, massList.getNumberOfDataPoints());
+
+        // the slices must not overlap with the mass lists of the other scans in the batch
+        final double[] mzs = massList.getMzValues(new double[0]);
+        final double[] intensities = massList.getIntensityValues(new double[0]);
+        for (int i = 0; i < expected[0].length; i++) {
+          Assertions.assertEquals(expected[0][i], massList.getMzValue(i));
+          Assertions.assertEquals(expected[1][i], massList.getIntensityValue(i));
+          Assertions.assertEquals(expected[0][i], mzs[i]);
+          Assertions.assertEquals(expected[1][i], intensities[i]);
+        }
+      }
+    }
+  }
+
+  /**
+   * Centroided scans with a random number of data points, including empty scans.
+   */
+  private static List<Scan> addScans(Random rnd, RawDataFile file) throws IOException {
+    final Scan[] scans = new Scan[NUM_SCANS];
+    for (int s = 0; s < NUM_SCANS; s++) {
+      final int numDataPoints = rnd.nextInt(10) == 0 ? 0 : rnd.nextInt(80);
+      final double[] mzs = new double[numDataPoints];
+      final double[] intensities = new double[numDataPoints];
+      for (int i = 0; i < numDataPoints; i++) {
+        mzs[i] = 100 + rnd.nextDouble() * 900;
+        intensities[i] = rnd.nextDouble() * 1E5;
+      }
+      Arrays.sort(mzs);
+      scans[s] = new SimpleScan(file, s, 1, 0.01f * s, null, mzs, intensities,
+          MassSpectrumType.CENTROIDED, PolarityType.POSITIVE, "", Range.closed(100d, 1000d));
+      file.addScan(scans[s]);
+    }
+    return List.of(scans);
+  }
+}
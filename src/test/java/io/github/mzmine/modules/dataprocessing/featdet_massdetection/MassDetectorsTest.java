@@ -0,0 +1,706 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.dataprocessing.featdet_massdetection;
+
+import com.google.common.collect.Range;
+import io.github.mzmine.datamodel.DataPoint;
+import io.github.mzmine.datamodel.MassSpectrum;
+import io.github.mzmine.datamodel.MassSpectrumType;
+import io.github.mzmine.datamodel.PolarityType;
+import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.datamodel.Scan;
+import io.github.mzmine.datamodel.impl.SimpleDataPoint;
+import io.github.mzmine.datamodel.impl.SimpleScan;
+import io.github.mzmine.main.MZmineCore;
+import io.github.mzmine.modules.dataprocessing.featdet_massdetection.auto.AutoMassDetector;
+import io.github.mzmine.modules.dataprocessing.featdet_massdetection.auto.AutoMassDetectorParameters;
+import io.github.mzmine.modules.dataprocessing.featdet_massdetection.centroid.CentroidMassDetector;
+import io.github.mzmine.modules.dataprocessing.featdet_massdetection.centroid.CentroidMassDetectorParameters;
+import io.github.mzmine.modules.dataprocessing.featdet_massdetection.exactmass.ExactMassDetector;
+import io.github.mzmine.modules.dataprocessing.featdet_massdetection.exactmass.ExactMassDetectorParameters;
+import io.github.mzmine.modules.dataprocessing.featdet_massdetection.localmaxima.LocalMaxMassDetector;
+import io.github.mzmine.modules.dataprocessing.featdet_massdetection.localmaxima.LocalMaxMassDetectorParameters;
+import io.github.mzmine.modules.dataprocessing.featdet_massdetection.recursive.RecursiveMassDetector;
+import io.github.mzmine.modules.dataprocessing.featdet_massdetection.recursive.RecursiveMassDetectorParameters;
+import io.github.mzmine.modules.dataprocessing.featdet_massdetection.wavelet.WaveletMassDetector;
+import io.github.mzmine.modules.dataprocessing.featdet_massdetection.wavelet.WaveletMassDetectorParameters;
+import io.github.mzmine.modules.io.import_rawdata_mzxml.MzXMLImportModule;
+import io.github.mzmine.modules.io.import_rawdata_mzxml.MzXMLImportParameters;
+import io.github.mzmine.modules.io.import_rawdata_mzxml.MzXMLImportTask;
+import io.github.mzmine.parameters.ParameterSet;
+import io.github.mzmine.parameters.parametertypes.submodules.OptionalModuleParameter;
+import io.github.mzmine.parameters.parametertypes.tolerances.MZTolerance;
+import io.github.mzmine.project.impl.MZmineProjectImpl;
+import io.github.mzmine.project.impl.RawDataFileImpl;
+import io.github.mzmine.taskcontrol.TaskStatus;
+import io.github.mzmine.util.DataPointSorter;
+import io.github.mzmine.util.IsotopesUtils;
+import io.github.mzmine.util.SortingDirection;
+import io.github.mzmine.util.SortingProperty;
+import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
+import java.io.File;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+import javafx.scene.paint.Color;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.openscience.cdk.Element;
+
+/**
+ * Compares the mass detectors with the implementations they replaced, which are kept in this test
+ * as reference. The spectra are the scans of a real centroided file, generated profile spectra and
+ * edge cases like empty spectra, single data points and duplicate m/z values.
+ */
+public class MassDetectorsTest {
+
+  private static final long[] SEEDS = {1L, 42L, 1337L, 2022L};
+
+  private static final List<Element> ISOTOPE_ELEMENTS = List.of(new Element("C"),
+      new Element("H"), new Element("N"), new Element("O"), new Element("S"));
+  private static final MZTolerance ISOTOPE_TOLERANCE = new MZTolerance(0.0005, 10);
+  private static final int ISOTOPE_MAX_CHARGE = 2;
+
+  private static List<Scan> centroidScans;
+  private static List<Scan> profileScans;
+
+  @BeforeAll
+  public static void init() {
+    MZmineCore.main(new String[]{"-r", "-m", "all"});
+
+    final RawDataFile generated = new RawDataFileImpl("generated", null, null, Color.BLACK);
+    centroidScans = new ArrayList<>(importRealScans());
+    profileScans = new ArrayList<>();
+    for (long seed : SEEDS) {
+      final Random random = new Random(seed);
+      final double[][] profile = generateProfile(random);
+      profileScans.add(scan(generated, MassSpectrumType.PROFILE, profile[0], profile[1]));
+
+      // every m/z value twice, with different intensities
+      final double[] duplicateMzs = new double[profile[0].length];
+      for (int i = 0; i < duplicateMzs.length; i++) {
+        duplicateMzs[i] = profile[0][i - i % 2];
+      }
+      profileScans.add(scan(generated, MassSpectrumType.PROFILE, duplicateMzs, profile[1]));
+
+      centroidScans.add(scan(generated, MassSpectrumType.CENTROIDED, duplicateMzs, profile[1]));
+    }
+
+    // edge cases
+    for (MassSpectrumType type : List.of(MassSpectrumType.CENTROIDED, MassSpectrumType.PROFILE)) {
+      final List<Scan> scans =
+          type == MassSpectrumType.PROFILE ? profileScans : centroidScans;
+      scans.add(scan(generated, type, new double[0], new double[0]));
+      scans.add(scan(generated, type, new double[]{200d}, new double[]{1E5}));
+      scans.add(scan(generated, type, new double[]{200d, 200.01d}, new double[]{1E5, 2E5}));
+      scans.add(scan(generated, type, new double[]{100d, 100d, 100d, 100.5d, 100.5d, 100.5d, 101d},
+          new double[]{1E4, 2E4, 2E4, 5E3, 5E3, 3E4, 10d}));
+      scans.add(scan(generated, type, new double[]{100d, 100d, 100d, 100d},
+          new double[]{1E4, 3E4, 3E4, 1E4}));
+    }
+  }
+
+  @Test
+  void testCentroidMassDetector() {
+    final CentroidMassDetector detector = new CentroidMassDetector();
+    for (double noise : new double[]{0d, 1E3, 1E5}) {
+      for (boolean isotopes : new boolean[]{false, true}) {
+        final ParameterSet param = new CentroidMassDetectorParameters().cloneParameterSet();
+        param.getParameter(CentroidMassDetectorParameters.noiseLevel).setValue(noise);
+        setIsotopes(param.getParameter(CentroidMassDetectorParameters.detectIsotopes), isotopes);
+
+        assertSameMasses(detector, param, centroidScans,
+            scan -> baselineCentroid(scan, noise, isotopes));
+        assertSameMasses(detector, param, profileScans,
+            scan -> baselineCentroid(scan, noise, isotopes));
+      }
+    }
+  }
+
+  @Test
+  void testExactMassDetector() {
+    final ExactMassDetector detector = new ExactMassDetector();
+    for (double noise : new double[]{0d, 1E3, 1E5}) {
+      for (boolean isotopes : new boolean[]{false, true}) {
+        final ParameterSet param = new ExactMassDetectorParameters().cloneParameterSet();
+        param.getParameter(ExactMassDetectorParameters.noiseLevel).setValue(noise);
+        setIsotopes(param.getParameter(ExactMassDetectorParameters.detectIsotopes), isotopes);
+
+        assertSameMasses(detector, param, profileScans,
+            scan -> baselineExactMass(scan, noise, isotopes));
+        assertSameMasses(detector, param, centroidScans,
+            scan -> baselineExactMass(scan, noise, isotopes));
+      }
+    }
+  }
+
+  @Test
+  void testLocalMaxMassDetector() {
+    final LocalMaxMassDetector detector = new LocalMaxMassDetector();
+    for (double noise : new double[]{0d, 1E3, 1E5}) {
+      final ParameterSet param = new LocalMaxMassDetectorParameters().cloneParameterSet();
+      param.getParameter(LocalMaxMassDetectorParameters.noiseLevel).setValue(noise);
+
+      assertSameMasses(detector, param, profileScans, scan -> baselineLocalMax(scan, noise));
+      assertSameMasses(detector, param, centroidScans, scan -> baselineLocalMax(scan, noise));
+    }
+  }
+
+  @Test
+  void testRecursiveMassDetector() {
+    final RecursiveMassDetector detector = new RecursiveMassDetector();
+    for (double noise : new double[]{0d, 1E3, 1E5}) {
+      for (double[] widths : new double[][]{{0.001, 0.02}, {0.0001, 0.5}}) {
+        final ParameterSet param = new RecursiveMassDetectorParameters().cloneParameterSet();
+        param.getParameter(RecursiveMassDetectorParameters.noiseLevel).setValue(noise);
+        param.getParameter(RecursiveMassDetectorParameters.minimumMZPeakWidth).setValue(widths[0]);
+        param.getParameter(RecursiveMassDetectorParameters.maximumMZPeakWidth).setValue(widths[1]);
+
+        assertSameMasses(detector, param, profileScans,
+            scan -> baselineRecursive(scan, noise, widths[0], widths[1]));
+        assertSameMasses(detector, param, centroidScans,
+            scan -> baselineRecursive(scan, noise, widths[0], widths[1]));
+      }
+    }
+  }
+
+  @Test
+  void testWaveletMassDetector() {
+    final WaveletMassDetector detector = new WaveletMassDetector();
+    // the window changes between the calls, so the wavelet values are calculated again
+    for (double window : new double[]{0.3, 1d, 0.3}) {
+      for (int scale : new int[]{1, 3}) {
+        final ParameterSet param = waveletParameters(1E3, scale, window);
+        assertSameMasses(detector, param, profileScans,
+            scan -> baselineWavelet(scan, 1E3, scale, window));
+        assertSameMasses(detector, param, centroidScans,
+            scan -> baselineWavelet(scan, 1E3, scale, window));
+      }
+    }
+  }
+
+  /**
+   * One detector instance is used by all threads of the mass detection.
+   */
+  @Test
+  void testWaveletMassDetectorConcurrent() {
+    final WaveletMassDetector detector = new WaveletMassDetector();
+    final List<Scan> scans = new ArrayList<>(profileScans);
+    scans.addAll(centroidScans);
+
+    // each spectrum with a different window than the spectrum before
+    final List<double[][]> expected = new ArrayList<>();
+    for (int i = 0; i < scans.size(); i++) {
+      expected.add(baselineWavelet(scans.get(i), 1E3, 3, window(i)));
+    }
+
+    for (int repeat = 0; repeat < 5; repeat++) {
+      final List<double[][]> detected = IntStream.range(0, scans.size())
+          .parallel().mapToObj(
+              i -> detector.getMassValues(scans.get(i), waveletParameters(1E3, 3, window(i))))
+          .toList();
+      for (int i = 0; i < scans.size(); i++) {
+        final int index = i;
+        assertSameMasses(expected.get(i), detected.get(i), () -> "spectrum " + index);
+      }
+    }
+  }
+
+  @Test
+  void testAutoMassDetector() {
+    final AutoMassDetector detector = new AutoMassDetector();
+    for (double noise : new double[]{0d, 1E3, 1E5}) {
+      for (boolean isotopes : new boolean[]{false, true}) {
+        final ParameterSet param = new AutoMassDetectorParameters().cloneParameterSet();
+        param.getParameter(AutoMassDetectorParameters.noiseLevel).setValue(noise);
+        setIsotopes(param.getParameter(AutoMassDetectorParameters.detectIsotopes), isotopes);
+
+        final Function<Scan, double[][]> baseline = scan ->
+            scan.getSpectrumType() == MassSpectrumType.PROFILE ? baselineExactMass(scan, noise,
+                isotopes) : baselineCentroid(scan, noise, isotopes);
+        assertSameMasses(detector, param, profileScans, baseline);
+        assertSameMasses(detector, param, centroidScans, baseline);
+      }
+    }
+  }
+
+  /**
+   * Masses with the same m/z are kept like in the sorted set by m/z and intensity the detectors
+   * used before.
+   */
+  @Test
+  void testAddMassMatchesSortedSet() {
+    for (long seed : SEEDS) {
+      final Random random = new Random(seed);
+      final TreeSet<DataPoint> expected = new TreeSet<>(
+          new DataPointSorter(SortingProperty.MZ, SortingDirection.Ascending));
+      final double[] mzs = new double[1000];
+      final double[] intensities = new double[1000];
+      int detected = 0;
+      double mz = 100d;
+      for (int i = 0; i < 1000; i++) {
+        if (random.nextInt(3) == 0) {
+          mz += random.nextDouble();
+        }
+        final double intensity = random.nextInt(4) * 1E3;
+        expected.add(new SimpleDataPoint(mz, intensity));
+        detected = BufferedMassDetector.addMass(mzs, intensities, detected, mz, intensity);
+      }
+
+      Assertions.assertEquals(expected.size(), detected);
+      int i = 0;
+      for (DataPoint dp : expected) {
+        Assertions.assertEquals(dp.getMZ(), mzs[i]);
+        Assertions.assertEquals(dp.getIntensity(), intensities[i]);
+        i++;
+      }
+    }
+  }
+
+  /**
+   * Detects the masses of all spectra with both methods of the detector and compares them with the
+   * baseline. The output arrays of the buffered method are reused for all spectra.
+   */
+  private static void assertSameMasses(BufferedMassDetector detector, ParameterSet param,
+      List<Scan> scans, Function<Scan, double[][]> baseline) {
+    final int maxDataPoints = scans.stream().mapToInt(Scan::getNumberOfDataPoints).max()
+        .orElse(0);
+    final double[] mzs = new double[maxDataPoints];
+    final double[] intensities = new double[maxDataPoints];
+    Arrays.fill(mzs, Double.NaN);
+    Arrays.fill(intensities, Double.NaN);
+
+    for (Scan scan : scans) {
+      final Supplier<String> message = () -> detector.getName() + ", scan " + scan.getScanNumber()
+          + " of " + scan.getDataFile().getName();
+      final double[][] expected = baseline.apply(scan);
+
+      assertSameMasses(expected, detector.getMassValues(scan, param), message);
+
+      final int detected = detector.getMassValues(scan, param, mzs, intensities);
+      assertSameMasses(expected,
+          new double[][]{Arrays.copyOf(mzs, detected), Arrays.copyOf(intensities, detected)},
+          message);
+    }
+  }
+
+  private static void assertSameMasses(double[][] expected, double[][] actual,
+      Supplier<String> message) {
+    Assertions.assertArrayEquals(expected[0], actual[0], message);
+    Assertions.assertArrayEquals(expected[1], actual[1], message);
+  }
+
+  private static void setIsotopes(OptionalModuleParameter<DetectIsotopesParameter> parameter,
+      boolean detectIsotopes) {
+    parameter.setValue(detectIsotopes);
+    final DetectIsotopesParameter isotopeParam = parameter.getEmbeddedParameters();
+    isotopeParam.getParameter(DetectIsotopesParameter.elements).setValue(ISOTOPE_ELEMENTS);
+    isotopeParam.getParameter(DetectIsotopesParameter.isotopeMzTolerance)
+        .setValue(ISOTOPE_TOLERANCE);
+    isotopeParam.getParameter(DetectIsotopesParameter.maxCharge).setValue(ISOTOPE_MAX_CHARGE);
+  }
+
+  private static ParameterSet waveletParameters(double noise, int scale, double window) {
+    final ParameterSet param = new WaveletMassDetectorParameters().cloneParameterSet();
+    param.getParameter(WaveletMassDetectorParameters.noiseLevel).setValue(noise);
+    param.getParameter(WaveletMassDetectorParameters.scaleLevel).setValue(scale);
+    param.getParameter(WaveletMassDetectorParameters.waveletWindow).setValue(window);
+    return param;
+  }
+
+  private static double window(int spectrum) {
+    return spectrum % 2 == 0 ? 0.3 : 1d;
+  }
+
+  private static List<Scan> importRealScans() {
+    final File file = new File(MassDetectorsTest.class.getClassLoader()
+        .getResource("rawdatafiles/DOM_b.mzXML").getFile());
+    final RawDataFile raw = new RawDataFileImpl(file.getName(), null, null, Color.BLACK);
+    final MzXMLImportTask task = new MzXMLImportTask(new MZmineProjectImpl(), file, raw,
+        MzXMLImportModule.class, new MzXMLImportParameters(), Instant.now());
+    task.run();
+    Assertions.assertEquals(TaskStatus.FINISHED, task.getStatus(), task.getErrorMessage());
+    return raw.getScans();
+  }
+
+  /**
+   * @return m/z values and intensities of a profile spectrum with overlapping gaussian peaks,
+   * plateaus of equal intensities and regions of zero intensity.
+   */
+  private static double[][] generateProfile(Random random) {
+    final int numPoints = 3000;
+    final double[] mzs = new double[numPoints];
+    final double[] intensities = new double[numPoints];
+    for (int i = 0; i < numPoints; i++) {
+      mzs[i] = 100d + i * 0.002d;
+    }
+    for (int peak = 0; peak < 60; peak++) {
+      final double center = mzs[random.nextInt(numPoints)];
+      final double height = Math.pow(10, 2 + random.nextDouble() * 4);
+      final double sigma = 0.002 + random.nextDouble() * 0.01;
+      for (int i = 0; i < numPoints; i++) {
+        final double x = (mzs[i] - center) / sigma;
+        intensities[i] += height * Math.exp(-x * x / 2);
+      }
+    }
+    for (int i = 0; i < numPoints; i++) {
+      // rounding creates plateaus, small intensities are set to zero
+      intensities[i] = Math.round((intensities[i] + random.nextDouble() * 50d) / 100d) * 100d;
+    }
+    return new double[][]{mzs, intensities};
+  }
+
+  private static Scan scan(RawDataFile file, MassSpectrumType type, double[] mzs,
+      double[] intensities) {
+    final Range<Double> mzRange =
+        mzs.length == 0 ? Range.singleton(0d) : Range.closed(mzs[0], mzs[mzs.length - 1]);
+    final SimpleScan scan = new SimpleScan(file, file.getNumOfScans(), 1, 0f, null, mzs,
+        intensities, type, PolarityType.POSITIVE, "", mzRange);
+    file.addScan(scan);
+    return scan;
+  }
+
+  // the implementations before the detectors wrote into buffers
+
+  private static double[][] baselineCentroid(MassSpectrum spectrum, double noiseLevel,
+      boolean detectIsotopes) {
+    final List<Double> isotopesMzDiffs = detectIsotopes ? IsotopesUtils.getIsotopesMzDiffs(
+        ISOTOPE_ELEMENTS, ISOTOPE_MAX_CHARGE) : null;
+    final double maxIsotopeMzDiff = detectIsotopes ? Collections.max(isotopesMzDiffs) : 0d;
+
+    final int points = spectrum.getNumberOfDataPoints();
+    DoubleArrayList mzs = new DoubleArrayList(points);
+    DoubleArrayList intensities = new DoubleArrayList(points);
+
+    for (int i = 0; i < points; i++) {
+      double intensity = spectrum.getIntensityValue(i);
+      double mz = spectrum.getMzValue(i);
+      if (intensity >= noiseLevel || (detectIsotopes && (mzs.isEmpty()
+          || Double.compare(mz - mzs.getDouble(mzs.size() - 1), maxIsotopeMzDiff) <= 0)
+          && IsotopesUtils.isPossibleIsotopeMz(mz, mzs, isotopesMzDiffs, ISOTOPE_TOLERANCE))) {
+        mzs.add(mz);
+        intensities.add(intensity);
+      }
+    }
+    return new double[][]{mzs.toDoubleArray(), intensities.toDoubleArray()};
+  }
+
+  private static double[][] baselineExactMass(MassSpectrum spectrum, double noiseLevel,
+      boolean detectIsotopes) {
+    if (spectrum.getNumberOfDataPoints() == 0) {
+      return MassDetector.EMPTY_DATA;
+    }
+    final List<Double> isotopesMzDiffs = detectIsotopes ? IsotopesUtils.getIsotopesMzDiffs(
+        ISOTOPE_ELEMENTS, ISOTOPE_MAX_CHARGE) : null;
+    final double maxIsotopeMzDiff = detectIsotopes ? Collections.max(isotopesMzDiffs) : 0d;
+
+    DoubleArrayList mzs = new DoubleArrayList(128);
+    DoubleArrayList intensities = new DoubleArrayList(128);
+
+    int localMaximumIndex = 0;
+    ArrayList<Integer> rangeDataPoints = new ArrayList<>();
+    boolean ascending = true;
+
+    for (int i = 0; i < spectrum.getNumberOfDataPoints() - 1; i++) {
+      double intensity = spectrum.getIntensityValue(i);
+      double nextIntensity = spectrum.getIntensityValue(i + 1);
+
+      boolean nextIsBigger = nextIntensity > intensity;
+      boolean nextIsZero = Double.compare(nextIntensity, 0d) == 0;
+      boolean currentIsZero = Double.compare(intensity, 0d) == 0;
+
+      if (currentIsZero) {
+        continue;
+      }
+      rangeDataPoints.add(i);
+
+      if (ascending && (!nextIsBigger)) {
+        localMaximumIndex = i;
+        ascending = false;
+        continue;
+      }
+
+      if ((!ascending) && (nextIsBigger || nextIsZero)) {
+        double exactMz = baselineExactMz(spectrum, localMaximumIndex, rangeDataPoints);
+
+        if (spectrum.getIntensityValue(localMaximumIndex) > noiseLevel || (detectIsotopes && (
+            mzs.isEmpty()
+                || Double.compare(exactMz - mzs.getDouble(mzs.size() - 1), maxIsotopeMzDiff) <= 0)
+            && IsotopesUtils.isPossibleIsotopeMz(exactMz, mzs, isotopesMzDiffs,
+            ISOTOPE_TOLERANCE))) {
+          mzs.add(exactMz);
+          intensities.add(spectrum.getIntensityValue(localMaximumIndex));
+        }
+
+        ascending = true;
+        rangeDataPoints.clear();
+      }
+    }
+    return new double[][]{mzs.toDoubleArray(), intensities.toDoubleArray()};
+  }
+
+  private static double baselineExactMz(MassSpectrum spectrum, int topIndex,
+      List<Integer> rangeDataPoints) {
+    double xRight = -1, xLeft = -1;
+    double halfIntensity = spectrum.getIntensityValue(topIndex) / 2;
+
+    for (int i = 0; i < rangeDataPoints.size() - 1; i++) {
+      final int current = rangeDataPoints.get(i);
+      final int next = rangeDataPoints.get(i + 1);
+
+      // left side of the curve
+      if ((spectrum.getIntensityValue(current) <= halfIntensity) && (spectrum.getMzValue(current)
+          < spectrum.getMzValue(topIndex)) && (spectrum.getIntensityValue(next)
+          >= halfIntensity)) {
+        double leftY1 = spectrum.getIntensityValue(current);
+        double leftX1 = spectrum.getMzValue(current);
+        double leftY2 = spectrum.getIntensityValue(next);
+        double leftX2 = spectrum.getMzValue(next);
+        double mLeft = (leftY1 - leftY2) / (leftX1 - leftX2);
+        if (mLeft == 0.0) {
+          xLeft = (leftX1 + leftX2) / 2;
+        } else {
+          xLeft = leftX1 + (((halfIntensity) - leftY1) / mLeft);
+        }
+        continue;
+      }
+
+      // right side of the curve
+      if ((spectrum.getIntensityValue(current) >= halfIntensity) && (spectrum.getMzValue(current)
+          > spectrum.getMzValue(topIndex)) && (spectrum.getIntensityValue(next)
+          <= halfIntensity)) {
+        double rightY1 = spectrum.getIntensityValue(current);
+        double rightX1 = spectrum.getMzValue(current);
+        double rightY2 = spectrum.getIntensityValue(next);
+        double rightX2 = spectrum.getMzValue(next);
+        double mRight = (rightY1 - rightY2) / (rightX1 - rightX2);
+        if (mRight == 0.0) {
+          xRight = (rightX1 + rightX2) / 2;
+        } else {
+          xRight = rightX1 + (((halfIntensity) - rightY1) / mRight);
+        }
+        break;
+      }
+    }
+
+    if ((xRight == -1) || (xLeft == -1)) {
+      return spectrum.getMzValue(topIndex);
+    }
+    return (xLeft + xRight) / 2;
+  }
+
+  private static double[][] baselineLocalMax(MassSpectrum scan, double noiseLevel) {
+    DoubleArrayList mzs = new DoubleArrayList(100);
+    DoubleArrayList intensities = new DoubleArrayList(100);
+    int currentMzPeakTop = 0;
+    boolean ascending = true;
+
+    for (int i = 0; i < scan.getNumberOfDataPoints() - 1; i++) {
+      double intensity = scan.getIntensityValue(i);
+      double nextIntensity = scan.getIntensityValue(i + 1);
+
+      boolean nextIsBigger = nextIntensity > intensity;
+      boolean nextIsZero = Double.compare(nextIntensity, 0d) == 0;
+      boolean currentIsZero = Double.compare(intensity, 0d) == 0;
+
+      if (currentIsZero) {
+        continue;
+      }
+      if (ascending && (!nextIsBigger)) {
+        currentMzPeakTop = i;
+        ascending = false;
+        continue;
+      }
+      if ((!ascending) && (nextIsBigger || nextIsZero)) {
+        if (scan.getIntensityValue(currentMzPeakTop) > noiseLevel) {
+          mzs.add(scan.getMzValue(currentMzPeakTop));
+          intensities.add(scan.getIntensityValue(currentMzPeakTop));
+        }
+        ascending = true;
+      }
+    }
+    return new double[][]{mzs.toDoubleArray(), intensities.toDoubleArray()};
+  }
+
+  private static double[][] baselineRecursive(MassSpectrum scan, double noiseLevel,
+      double minimumMZPeakWidth, double maximumMZPeakWidth) {
+    TreeSet<DataPoint> mzPeaks = new TreeSet<>(
+        new DataPointSorter(SortingProperty.MZ, SortingDirection.Ascending));
+    baselineRecursiveThreshold(mzPeaks, scan, 1, scan.getNumberOfDataPoints() - 1, noiseLevel,
+        minimumMZPeakWidth, maximumMZPeakWidth, 0);
+    return toArrays(mzPeaks);
+  }
+
+  private static int baselineRecursiveThreshold(TreeSet<DataPoint> mzPeaks, MassSpectrum scan,
+      int startInd, int stopInd, double curentNoiseLevel, double minimumMZPeakWidth,
+      double maximumMZPeakWidth, int recuLevel) {
+    int peakStartInd, peakStopInd, peakMaxInd;
+    double peakWidthMZ;
+
+    for (int ind = startInd; ind < stopInd; ind++) {
+      double localMinimum = Double.MAX_VALUE;
+      if (!(scan.getIntensityValue(ind) > curentNoiseLevel)) {
+        continue;
+      }
+
+      peakStartInd = ind;
+      peakMaxInd = peakStartInd;
+
+      while ((ind < stopInd) && (scan.getIntensityValue(ind) > curentNoiseLevel)) {
+        boolean isLocalMinimum = (scan.getIntensityValue(ind - 1) > scan.getIntensityValue(ind))
+            && (scan.getIntensityValue(ind) < scan.getIntensityValue(ind + 1));
+        if (isLocalMinimum && (scan.getIntensityValue(ind) < localMinimum)) {
+          localMinimum = scan.getIntensityValue(ind);
+        }
+        if (scan.getIntensityValue(ind) > scan.getIntensityValue(peakMaxInd)) {
+          peakMaxInd = ind;
+        }
+        ind++;
+      }
+
+      peakStopInd = ind;
+      peakWidthMZ = scan.getMzValue(peakStopInd) - scan.getMzValue(peakStartInd);
+
+      if ((peakWidthMZ >= minimumMZPeakWidth) && (peakWidthMZ <= maximumMZPeakWidth)) {
+        mzPeaks.add(new SimpleDataPoint(scan.getMzValue(peakMaxInd),
+            scan.getIntensityValue(peakMaxInd)));
+        if (recuLevel > 0) {
+          return ind;
+        }
+      }
+
+      if (peakWidthMZ > maximumMZPeakWidth && localMinimum < Double.MAX_VALUE) {
+        ind = baselineRecursiveThreshold(mzPeaks, scan, peakStartInd, peakStopInd, localMinimum,
+            minimumMZPeakWidth, maximumMZPeakWidth, recuLevel + 1);
+      }
+    }
+    return stopInd;
+  }
+
+  private static double[][] baselineWavelet(MassSpectrum scan, double noiseLevel, int scaleLevel,
+      double waveletWindow) {
+    final double npoints = 60000;
+    final int esl = -5;
+    final int esr = 5;
+
+    // CWT
+    int length = scan.getNumberOfDataPoints();
+    double[] cwt = new double[length];
+    double wstep = ((esr - esl) / npoints);
+    double[] W = new double[(int) npoints];
+    double waveletIndex = esl;
+    for (int j = 0; j < npoints; j++) {
+      double a = waveletWindow == 0.0 ? 1E-200 : waveletWindow;
+      double x = waveletIndex / a;
+      W[j] = 0.8673250705840776 * (1.0 - x * x) * Math.exp(-x * x / 2);
+      waveletIndex += wstep;
+    }
+
+    int d = (int) npoints / (esr - esl);
+    int a_esl = scaleLevel * esl;
+    int a_esr = scaleLevel * esr;
+    double sqrtScaleLevel = Math.sqrt(scaleLevel);
+    for (int dx = 0; dx < length; dx++) {
+      int t1 = Math.max(a_esl + dx, 0);
+      int t2 = Math.min(a_esr + dx, length - 1);
+      double intensity = 0.0;
+      for (int i = t1; i <= t2; i++) {
+        int ind = (int) (npoints / 2) - ((d * (i - dx) / scaleLevel) * (-1));
+        if (ind < 0) {
+          ind = 0;
+        }
+        if (ind >= npoints) {
+          ind = (int) npoints - 1;
+        }
+        intensity += scan.getIntensityValue(i) * W[ind];
+      }
+      intensity /= sqrtScaleLevel;
+      if (intensity < 0) {
+        intensity = 0;
+      }
+      cwt[dx] = intensity;
+    }
+
+    // peaks of the CWT
+    TreeSet<DataPoint> mzPeaks = new TreeSet<>(
+        new DataPointSorter(SortingProperty.MZ, SortingDirection.Ascending));
+    List<DataPoint> rawDataPoints = new ArrayList<>();
+    int peakMaxInd;
+    int stopInd = length - 1;
+
+    for (int ind = 0; ind <= stopInd; ind++) {
+      while ((ind <= stopInd) && (cwt[ind] == 0)) {
+        ind++;
+      }
+      peakMaxInd = ind;
+      if (ind >= stopInd) {
+        break;
+      }
+
+      while ((ind <= stopInd) && (cwt[ind] > 0)) {
+        if (cwt[ind] > cwt[peakMaxInd]) {
+          peakMaxInd = ind;
+        }
+        rawDataPoints.add(new SimpleDataPoint(scan.getMzValue(ind), scan.getIntensityValue(ind)));
+        ind++;
+      }
+      if (ind >= stopInd) {
+        break;
+      }
+      rawDataPoints.add(new SimpleDataPoint(scan.getMzValue(ind), scan.getIntensityValue(ind)));
+
+      if (scan.getIntensityValue(peakMaxInd) > noiseLevel) {
+        double aproxIntensity = 0;
+        for (DataPoint dp : rawDataPoints) {
+          aproxIntensity = Math.max(aproxIntensity, dp.getIntensity());
+        }
+        mzPeaks.add(new SimpleDataPoint(scan.getMzValue(peakMaxInd), aproxIntensity));
+      }
+      rawDataPoints.clear();
+    }
+    return toArrays(mzPeaks);
+  }
+
+  private static double[][] toArrays(TreeSet<DataPoint> dataPoints) {
+    final double[] mzs = new double[dataPoints.size()];
+    final double[] intensities = new double[dataPoints.size()];
+    int i = 0;
+    for (DataPoint dp : dataPoints) {
+      mzs[i] = dp.getMZ();
+      intensities[i] = dp.getIntensity();
+      i++;
+    }
+    return new double[][]{mzs, intensities};
+  }
+}
@@ -0,0 +1,272 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.dataprocessing.gapfill_peakfinder.multithreaded;
+
+import com.google.common.collect.Range;
+import io.github.mzmine.datamodel.DataPoint;
+import io.github.mzmine.datamodel.MassSpectrumType;
+import io.github.mzmine.datamodel.PolarityType;
+import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.datamodel.Scan;
+import io.github.mzmine.datamodel.features.Feature;
+import io.github.mzmine.datamodel.impl.SimpleDataPoint;
+import io.github.mzmine.datamodel.impl.SimpleScan;
+import io.github.mzmine.modules.dataprocessing.gapfill_peakfinder.Gap;
+import io.github.mzmine.modules.dataprocessing.gapfill_peakfinder.GapDataPoint;
+import io.github.mzmine.project.impl.RawDataFileImpl;
+import io.github.mzmine.util.scans.ScanUtils;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import javafx.scene.paint.Color;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Compares the gap sweeps of the multithreaded gap filling with the previous implementation, which
+ * offered all scans to all gaps.
+ */
+public class GapSweepTest {
+
+  private static final long[] SEEDS = {1, 42, 4711};
+  private static final int NUM_SCANS = 400;
+  private static final int NUM_COMPOUNDS = 40;
+
+  @Test
+  void testRtSweepEquivalentToAllScans() {
+    for (long seed : SEEDS) {
+      Random rnd = new Random(seed);
+      RawDataFile file = new RawDataFileImpl("file", null, null, Color.BLACK);
+      double[] compoundMzs = new double[NUM_COMPOUNDS];
+      float[] compoundRts = new float[NUM_COMPOUNDS];
+      for (int c = 0; c < NUM_COMPOUNDS; c++) {
+        compoundMzs[c] = 100 + rnd.nextDouble() * 900;
+        compoundRts[c] = rnd.nextFloat() * 20;
+      }
+      List<Scan> scans = createScans(rnd, file, compoundMzs, compoundRts);
+
+      List<RecordingGap> sweepGaps = createGaps(new Random(seed), compoundMzs, compoundRts);
+      List<RecordingGap> allScansGaps = createGaps(new Random(seed), compoundMzs, compoundRts);
+
+      // same loop as the chunk
+      GapSweep<RecordingGap> sweep = new GapSweep<>(sweepGaps, Gap::getRtSearchStart);
+      for (Scan scan : scans) {
+        if (sweep.isDone()) {
+          break;
+        }
+        final float rt = scan.getRetentionTime();
+        for (RecordingGap gap : sweep.advance(rt, gap -> gap.ignoresScansFrom(rt))) {
+          gap.offerNextScan(scan);
+        }
+      }
+
+      // previous implementation
+      for (Scan scan : scans) {
+        for (RecordingGap gap : allScansGaps) {
+          gap.offerNextScan(scan);
+        }
+      }
+
+      int filled = 0;
+      for (int i = 0; i < sweepGaps.size(); i++) {
+        List<GapDataPoint> expected = allScansGaps.get(i).finishAndGetPeak();
+        List<GapDataPoint> actual = sweepGaps.get(i).finishAndGetPeak();
+        if (expected == null) {
+          Assertions.assertNull(actual);
+          continue;
+        }
+        filled++;
+        Assertions.assertNotNull(actual);
+        Assertions.assertEquals(expected.size(), actual.size());
+        for (int j = 0; j < expected.size(); j++) {
+          Assertions.assertSame(expected.get(j).getScan(), actual.get(j).getScan());
+          Assertions.assertEquals(expected.get(j).getMZ(), actual.get(j).getMZ());
+          Assertions.assertEquals(expected.get(j).getIntensity(), actual.get(j).getIntensity());
+        }
+      }
+      // make sure that the test data creates peaks
+      Assertions.assertTrue(filled > 0);
+    }
+  }
+
+  @Test
+  void testMobilitySweepEquivalentToRangeCheck() {
+    for (long seed : SEEDS) {
+      for (boolean tims : new boolean[]{false, true}) {
+        Random rnd = new Random(seed);
+        List<ImsGap> gaps = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+          float lower = 0.5f + rnd.nextInt(100) * 0.01f;
+          float upper = lower + rnd.nextInt(20) * 0.01f;
+          gaps.add(new ImsGap(null, null, Range.closed(100d, 101d), Range.closed(1f, 2f),
+              Range.closed(lower, upper), 0.5, null));
+        }
+
+        // mobility scans are sorted descending for TIMS
+        List<Double> mobilities = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+          mobilities.add((double) (0.45f + i * 0.005f));
+        }
+        if (tims) {
+          mobilities.sort(Comparator.reverseOrder());
+        }
+
+        GapSweep<ImsGap> sweep = GapFillingChunk.createMobilitySweep(gaps, tims);
+        for (double mobility : mobilities) {
+          // previous implementation skipped scans outside of the range of each gap
+          List<ImsGap> expected = gaps.stream().filter(
+              gap -> mobility >= gap.getMobilityRange().lowerEndpoint()
+                  && mobility <= gap.getMobilityRange().upperEndpoint()).toList();
+          List<ImsGap> actual = sweep.isDone() ? List.of()
+              : GapFillingChunk.advanceMobility(sweep, mobility, tims);
+          Assertions.assertEquals(new HashSet<>(expected), new HashSet<>(actual),
+              "mobility " + mobility);
+        }
+      }
+    }
+  }
+
+  @Test
+  void testBasePeakEquivalentToLinearSearch() {
+    Random rnd = new Random(42);
+    RawDataFile file = new RawDataFileImpl("file", null, null, Color.BLACK);
+    List<Scan> scans = createScans(rnd, file, new double[]{500}, new float[]{1});
+    for (Scan scan : scans) {
+      for (int i = 0; i < 50; i++) {
+        double lower = 50 + rnd.nextDouble() * 1000;
+        Range<Double> mzRange = Range.closed(lower, lower + rnd.nextDouble() * 5);
+        DataPoint expected = linearBasePeak(scan, mzRange);
+        DataPoint actual = ScanUtils.findBasePeak(scan, mzRange);
+        if (expected == null) {
+          Assertions.assertNull(actual);
+        } else {
+          Assertions.assertNotNull(actual);
+          Assertions.assertEquals(expected.getMZ(), actual.getMZ());
+          Assertions.assertEquals(expected.getIntensity(), actual.getIntensity());
+        }
+      }
+    }
+  }
+
+  /**
+   * The previous search of {@link ScanUtils#findBasePeak(Scan, Range)}, starting at index 0
+   */
+  private static DataPoint linearBasePeak(Scan scan, Range<Double> mzRange) {
+    DataPoint best = null;
+    for (int i = 0; i < scan.getNumberOfDataPoints(); i++) {
+      double mz = scan.getMzValue(i);
+      if (mz < mzRange.lowerEndpoint()) {
+        continue;
+      } else if (mz > mzRange.upperEndpoint()) {
+        break;
+      }
+      if (best == null || scan.getIntensityValue(i) > best.getIntensity()) {
+        best = new SimpleDataPoint(mz, scan.getIntensityValue(i));
+      }
+    }
+    return best;
+  }
+
+  /**
+   * Scans sorted by retention time with gaussian peaks of the compounds and random noise. Some
+   * scans share the same retention time.
+   */
+  private static List<Scan> createScans(Random rnd, RawDataFile file, double[] compoundMzs,
+      float[] compoundRts) {
+    List<Scan> scans = new ArrayList<>();
+    float rt = 0;
+    for (int i = 0; i < NUM_SCANS; i++) {
+      if (rnd.nextInt(20) != 0) {
+        rt += 0.05f;
+      }
+      List<double[]> dataPoints = new ArrayList<>();
+      for (int c = 0; c < compoundMzs.length; c++) {
+        double delta = (rt - compoundRts[c]) / 0.2;
+        double intensity = 1E5 * Math.exp(-0.5 * delta * delta) * (0.9 + rnd.nextDouble() * 0.2);
+        if (intensity > 10) {
+          double mz = compoundMzs[c] + (rnd.nextDouble() - 0.5) * 0.002;
+          dataPoints.add(new double[]{mz, intensity});
+        }
+      }
+      for (int n = 0; n < 100; n++) {
+        dataPoints.add(new double[]{50 + rnd.nextDouble() * 1000, rnd.nextDouble() * 1000});
+      }
+      dataPoints.sort(Comparator.comparingDouble(dp -> dp[0]));
+
+      double[] mzs = dataPoints.stream().mapToDouble(dp -> dp[0]).toArray();
+      double[] intensities = dataPoints.stream().mapToDouble(dp -> dp[1]).toArray();
+      scans.add(new SimpleScan(file, i, 1, rt, null, mzs, intensities,
+          MassSpectrumType.CENTROIDED, PolarityType.POSITIVE, "", Range.closed(50d, 1050d)));
+    }
+    return scans;
+  }
+
+  /**
+   * Gaps at the compounds with varying RT windows and gaps at random positions
+   */
+  private static List<RecordingGap> createGaps(Random rnd, double[] compoundMzs,
+      float[] compoundRts) {
+    List<RecordingGap> gaps = new ArrayList<>();
+    for (int c = 0; c < compoundMzs.length; c++) {
+      float rtWindow = 0.05f + rnd.nextFloat() * 0.5f;
+      float rtShift = (rnd.nextFloat() - 0.5f) * rtWindow;
+      gaps.add(new RecordingGap(Range.closed(compoundMzs[c] - 0.005, compoundMzs[c] + 0.005),
+          Range.closed(compoundRts[c] + rtShift - rtWindow, compoundRts[c] + rtShift + rtWindow)));
+    }
+    for (int i = 0; i < 20; i++) {
+      double mz = 50 + rnd.nextDouble() * 1000;
+      float rt = rnd.nextFloat() * 20;
+      gaps.add(new RecordingGap(Range.closed(mz - 0.005, mz + 0.005),
+          Range.closed(rt - 0.2f, rt + 0.2f)));
+    }
+    return gaps;
+  }
+
+  /**
+   * Keeps the data points of the best peak instead of creating a feature
+   */
+  private static class RecordingGap extends Gap {
+
+    private List<GapDataPoint> peak;
+
+    RecordingGap(Range<Double> mzRange, Range<Float> rtRange) {
+      super(null, null, mzRange, rtRange, 0.5);
+    }
+
+    List<GapDataPoint> finishAndGetPeak() {
+      finish(1);
+      return peak;
+    }
+
+    @Override
+    protected Feature createFeature() {
+      peak = new ArrayList<>(bestPeakDataPoints);
+      return null;
+    }
+  }
+}
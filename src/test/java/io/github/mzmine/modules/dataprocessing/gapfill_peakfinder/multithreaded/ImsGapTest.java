@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.dataprocessing.gapfill_peakfinder.multithreaded;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.google.common.collect.Range;
+import io.github.mzmine.datamodel.Frame;
+import io.github.mzmine.datamodel.MobilityType;
+import io.github.mzmine.datamodel.data_access.MobilityScanDataAccess;
+import io.github.mzmine.datamodel.features.FeatureListRow;
+import io.github.mzmine.project.impl.IMSRawDataFileImpl;
+import io.github.mzmine.util.exceptions.MissingMassListException;
+import javafx.scene.paint.Color;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * A missing mass list has to fail the gap filling instead of leaving the gap empty.
+ */
+public class ImsGapTest {
+
+  @Test
+  void testMissingMassListIsRethrown() {
+    final FeatureListRow row = mock(FeatureListRow.class);
+    when(row.getID()).thenReturn(1);
+    when(row.getAverageMZ()).thenReturn(500d);
+
+    final Frame frame = mock(Frame.class);
+    when(frame.getMobilityType()).thenReturn(MobilityType.TIMS);
+
+    final MobilityScanDataAccess access = mock(MobilityScanDataAccess.class);
+    when(access.getRetentionTime()).thenReturn(1f);
+    when(access.getFrame()).thenReturn(frame);
+    when(access.hasNextMobilityScan()).thenReturn(true);
+    when(access.nextMobilityScan()).thenThrow(new MissingMassListException("test"));
+
+    final ImsGap gap = new ImsGap(row,
+        new IMSRawDataFileImpl("file", null, null, Color.BLACK), Range.closed(499.9, 500.1),
+        Range.closed(0f, 2f), Range.closed(0.5f, 1.5f), 0.5, null);
+
+    Assertions.assertThrows(MissingMassListException.class, () -> gap.offerNextScan(access));
+  }
+}
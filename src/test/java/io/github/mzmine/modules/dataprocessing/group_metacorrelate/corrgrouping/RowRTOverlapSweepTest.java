@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.dataprocessing.group_metacorrelate.corrgrouping;
+
+import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.datamodel.features.FeatureListRow;
+import io.github.mzmine.datamodel.features.ModularFeature;
+import io.github.mzmine.datamodel.features.ModularFeatureList;
+import io.github.mzmine.datamodel.features.ModularFeatureListRow;
+import io.github.mzmine.datamodel.features.types.numbers.HeightType;
+import io.github.mzmine.datamodel.features.types.numbers.RTType;
+import io.github.mzmine.parameters.parametertypes.MinimumFeatureFilter;
+import io.github.mzmine.parameters.parametertypes.MinimumFeatureFilter.OverlapResult;
+import io.github.mzmine.parameters.parametertypes.absoluterelative.AbsoluteNRelativeInt;
+import io.github.mzmine.parameters.parametertypes.tolerances.RTTolerance;
+import io.github.mzmine.parameters.parametertypes.tolerances.RTTolerance.Unit;
+import io.github.mzmine.project.impl.RawDataFileImpl;
+import io.github.mzmine.util.FeatureListRowSorter;
+import io.github.mzmine.util.SortingDirection;
+import io.github.mzmine.util.SortingProperty;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import javafx.scene.paint.Color;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Compares the candidate pairs of the retention time sweep in {@link CorrelateGroupingTask} with
+ * the previous comparison of all pairs of rows. Every pair that passes the minimum feature overlap
+ * filter must be a candidate.
+ */
+public class RowRTOverlapSweepTest {
+
+  private static final int NUM_FILES = 4;
+  private static final int NUM_ROWS = 80;
+
+  private static final List<RawDataFile> raws = new ArrayList<>();
+  private static final List<FeatureListRow> allRows = new ArrayList<>();
+
+  @BeforeAll
+  static void createFeatureList() {
+    for (int i = 0; i < NUM_FILES; i++) {
+      raws.add(new RawDataFileImpl("file" + i, null, null, Color.BLACK));
+    }
+    final ModularFeatureList flist = new ModularFeatureList("flist", null, raws);
+
+    final Random rand = new Random(42);
+    for (int id = 1; id <= NUM_ROWS; id++) {
+      final ModularFeatureListRow row = new ModularFeatureListRow(flist, id);
+      // clusters of rows with similar retention times
+      final float rt = (float) (Math.floor(rand.nextDouble() * 10) + rand.nextDouble() * 0.4);
+      for (RawDataFile raw : raws) {
+        if (rand.nextInt(3) == 0) {
+          continue;
+        }
+        final ModularFeature feature = new ModularFeature(flist, raw, null, null);
+        feature.set(RTType.class, rt + (float) (rand.nextDouble() * 0.2 - 0.1));
+        feature.set(HeightType.class, (float) (1E3 + rand.nextDouble() * 1E5));
+        row.addFeature(raw, feature);
+      }
+      flist.addRow(row);
+      allRows.add(row);
+    }
+  }
+
+  @Test
+  void testAbsoluteRTTolerance() {
+    final RTTolerance rtTol = new RTTolerance(0.1f, Unit.MINUTES);
+    assertSweepContainsAllPairs(createFilter(1, 0f, 0d), rtTol, false);
+    assertSweepContainsAllPairs(createFilter(2, 0f, 0d), rtTol, false);
+    assertSweepContainsAllPairs(createFilter(0, 0.5f, 0d), rtTol, false);
+    assertSweepContainsAllPairs(createFilter(1, 0f, 5E4), rtTol, false);
+  }
+
+  @Test
+  void testSecondsRTTolerance() {
+    final RTTolerance rtTol = new RTTolerance(5f, Unit.SECONDS);
+    assertSweepContainsAllPairs(createFilter(1, 0f, 0d), rtTol, false);
+    assertSweepContainsAllPairs(createFilter(0, 0.75f, 1E4), rtTol, false);
+  }
+
+  @Test
+  void testRelativeRTTolerance() {
+    final RTTolerance rtTol = new RTTolerance(2f, Unit.PERCENT);
+    assertSweepContainsAllPairs(createFilter(1, 0f, 0d), rtTol, false);
+    assertSweepContainsAllPairs(createFilter(2, 0.5f, 0d), rtTol, false);
+    assertSweepContainsAllPairs(createFilter(1, 0f, 5E4), rtTol, false);
+  }
+
+  @Test
+  void testNoOverlapRequired() {
+    // no minimum number of samples: all rows are compared
+    final MinimumFeatureFilter filter = createFilter(0, 0f, 0d);
+    Assertions.assertFalse(filter.requiresOverlappingFeatures(NUM_FILES));
+    assertSweepContainsAllPairs(filter, new RTTolerance(0.1f, Unit.MINUTES), true);
+    assertSweepContainsAllPairs(filter, new RTTolerance(2f, Unit.PERCENT), true);
+  }
+
+  @Test
+  void testNoRTTolerance() {
+    assertSweepContainsAllPairs(createFilter(1, 0f, 0d), null, true);
+  }
+
+  private static MinimumFeatureFilter createFilter(int minSamples, float minRelSamples,
+      double minHeight) {
+    return new MinimumFeatureFilter(new AbsoluteNRelativeInt(minSamples, minRelSamples),
+        new AbsoluteNRelativeInt(0, 0f), minHeight, 0d, false);
+  }
+
+  /**
+   * @param allPairs true if the sweep has to return all pairs of rows
+   */
+  private static void assertSweepContainsAllPairs(MinimumFeatureFilter filter,
+      RTTolerance rtTol, boolean allPairs) {
+    // same filter and order as the task
+    final FeatureListRow[] rows = allRows.stream()
+        .filter(row -> filter.filterMinFeatures(raws, row))
+        .sorted(new FeatureListRowSorter(SortingProperty.RT, SortingDirection.Ascending))
+        .toArray(FeatureListRow[]::new);
+    final int n = rows.length;
+    Assertions.assertTrue(n > 1, "Not enough rows");
+
+    final RowRTOverlapSweep sweep = new RowRTOverlapSweep(raws, rows, rtTol, filter);
+    Assertions.assertEquals(n, sweep.size());
+    final Set<Long> candidates = new HashSet<>();
+    for (int j = 0; j < n; j++) {
+      for (int k = j + 1; k <= sweep.getLastCandidate(j); k++) {
+        final int a = Math.min(sweep.getRow(j), sweep.getRow(k));
+        final int b = Math.max(sweep.getRow(j), sweep.getRow(k));
+        Assertions.assertTrue(a != b && candidates.add((long) a * n + b),
+            "Pair compared twice " + a + ", " + b);
+      }
+    }
+    Assertions.assertEquals(sweep.getTotalPairs(), candidates.size());
+
+    // previous triangular loop over all pairs
+    int overlapping = 0;
+    for (int a = 0; a < n - 1; a++) {
+      for (int b = a + 1; b < n; b++) {
+        final OverlapResult overlap = filter.filterMinFeaturesOverlap(null, raws, rows[a],
+            rows[b], rtTol);
+        if (overlap.equals(OverlapResult.TRUE)) {
+          overlapping++;
+          Assertions.assertTrue(candidates.contains((long) a * n + b),
+              "Missing pair of rows " + rows[a].getID() + ", " + rows[b].getID() + " with RT "
+                  + rows[a].getAverageRT() + ", " + rows[b].getAverageRT());
+        }
+      }
+    }
+    Assertions.assertTrue(overlapping > 0, "No overlapping rows");
+    if (allPairs) {
+      Assertions.assertEquals((long) n * (n - 1) / 2, candidates.size());
+    } else {
+      Assertions.assertTrue(candidates.size() < (long) n * (n - 1) / 2,
+          "The retention time sweep did not skip any pair");
+    }
+  }
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.dataprocessing.group_metacorrelate.msms.similarity;
+
+import io.github.mzmine.datamodel.DataPoint;
+import io.github.mzmine.datamodel.impl.SimpleDataPoint;
+import io.github.mzmine.parameters.parametertypes.tolerances.MZTolerance;
+import io.github.mzmine.util.scans.ScanAlignment;
+import io.github.mzmine.util.scans.ScanMZDiffConverter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Compares the candidates of the {@link MS2SimilarityCandidateIndex} with the overlap of all pairs
+ * aligned by {@link ScanAlignment}. Every pair that reaches the minimum overlap must be a
+ * candidate.
+ */
+public class MS2SimilarityCandidateIndexTest {
+
+  private static final MZTolerance mzTol = new MZTolerance(0.005, 10);
+  private static final int NUM_SPECTRA = 60;
+  private static final long[] SEEDS = {1L, 42L, 4711L};
+
+  @Test
+  void testSignalOverlap() {
+    for (long seed : SEEDS) {
+      final Random random = new Random(seed);
+      final List<DataPoint[]> spectra = createSpectra(random, null);
+      final MS2SimilarityCandidateIndex index = new MS2SimilarityCandidateIndex(mzTol, spectra,
+          null, MS2SimilarityCandidateIndex.getMaxAbsMz(spectra));
+
+      for (int minMatch : new int[]{1, 3, 6}) {
+        final int matches = assertAllPairsFound(index, spectra, null, minMatch, false);
+        Assertions.assertTrue(matches > 0, "No pair reached the minimum overlap");
+      }
+    }
+  }
+
+  @Test
+  void testModificationAwareOverlap() {
+    for (long seed : SEEDS) {
+      final Random random = new Random(seed);
+      final double[] precursorMzs = new double[NUM_SPECTRA];
+      final List<DataPoint[]> spectra = createSpectra(random, precursorMzs);
+      final MS2SimilarityCandidateIndex index = new MS2SimilarityCandidateIndex(mzTol, spectra,
+          precursorMzs, MS2SimilarityCandidateIndex.getMaxAbsMz(spectra));
+
+      for (int minMatch : new int[]{1, 3, 6}) {
+        final int matches = assertAllPairsFound(index, spectra, precursorMzs, minMatch, false);
+        Assertions.assertTrue(matches > 0, "No pair reached the minimum overlap");
+      }
+    }
+  }
+
+  @Test
+  void testIntensityWeightedOverlap() {
+    for (long seed : SEEDS) {
+      final Random random = new Random(seed);
+      final List<DataPoint[]> spectra = createSpectra(random, null);
+      final MS2SimilarityCandidateIndex index = new MS2SimilarityCandidateIndex(mzTol, spectra,
+          null, MS2SimilarityCandidateIndex.getMaxAbsMz(spectra));
+
+      for (int minMatch : new int[]{1, 50, 500}) {
+        final int matches = assertAllPairsFound(index, spectra, null, minMatch, true);
+        Assertions.assertTrue(matches > 0, "No pair reached the minimum overlap");
+      }
+    }
+  }
+
+  /**
+   * @return the number of pairs that reached the minimum overlap
+   */
+  private static int assertAllPairsFound(MS2SimilarityCandidateIndex index,
+      List<DataPoint[]> spectra, double[] precursorMzs, int minMatch, boolean weightByIntensity) {
+    int matches = 0;
+    for (int a = 0; a < spectra.size(); a++) {
+      final double precursorA = precursorMzs == null ? -1d : precursorMzs[a];
+      final int[] candidates = index.findCandidates(spectra.get(a), precursorA, a + 1, minMatch,
+          weightByIntensity);
+
+      for (int i = 0; i < candidates.length; i++) {
+        Assertions.assertTrue(candidates[i] > a, "Candidate before the first target");
+        Assertions.assertTrue(i == 0 || candidates[i] > candidates[i - 1],
+            "Candidates are not ascending");
+      }
+
+      for (int b = a + 1; b < spectra.size(); b++) {
+        final double precursorB = precursorMzs == null ? -1d : precursorMzs[b];
+        final int overlap = bruteForceOverlap(spectra.get(a), spectra.get(b), precursorA,
+            precursorB, weightByIntensity);
+        if (overlap >= minMatch) {
+          matches++;
+          Assertions.assertTrue(Arrays.binarySearch(candidates, b) >= 0,
+              "Spectrum " + b + " missing in the candidates of " + a + " with an overlap of "
+                  + overlap);
+        }
+      }
+    }
+    return matches;
+  }
+
+  /**
+   * The overlap as calculated by {@link MS2SimilarityTask} for the aligned spectra
+   */
+  private static int bruteForceOverlap(DataPoint[] a, DataPoint[] b, double precursorA,
+      double precursorB, boolean weightByIntensity) {
+    final DataPoint[] sortedA = a.clone();
+    final DataPoint[] sortedB = b.clone();
+    Arrays.sort(sortedA, MS2SimilarityTask.dpSorter);
+    Arrays.sort(sortedB, MS2SimilarityTask.dpSorter);
+
+    final List<DataPoint[]> aligned;
+    if (precursorA > 0 && precursorB > 0) {
+      aligned = ScanAlignment.alignOfSortedModAware(mzTol, sortedB, sortedA, precursorB,
+          precursorA);
+    } else {
+      aligned = ScanAlignment.alignOfSorted(mzTol, sortedB, sortedA);
+    }
+    return weightByIntensity ? ScanMZDiffConverter.getOverlapOfAlignedDiff(aligned, 0, 1)
+        : MS2SimilarityTask.calcOverlap(aligned);
+  }
+
+  /**
+   * Random spectra that share signals of a common pool. Some spectra are modified copies of
+   * previous spectra with a part of the signals shifted by the precursor difference.
+   *
+   * @param precursorMzs filled with the precursor m/z of each spectrum or null
+   */
+  private static List<DataPoint[]> createSpectra(Random random, double[] precursorMzs) {
+    final double[] pool = new double[80];
+    for (int i = 0; i < pool.length; i++) {
+      pool[i] = 50d + random.nextDouble() * 450d;
+    }
+
+    final List<DataPoint[]> spectra = new ArrayList<>();
+    for (int s = 0; s < NUM_SPECTRA; s++) {
+      final double precursorMz = 300d + random.nextDouble() * 500d;
+      if (precursorMzs != null) {
+        precursorMzs[s] = precursorMz;
+      }
+
+      final List<DataPoint> dps = new ArrayList<>();
+      if (precursorMzs != null && s > 0 && random.nextBoolean()) {
+        // modified copy of a previous spectrum
+        final int source = random.nextInt(s);
+        final double shift = precursorMz - precursorMzs[source];
+        for (DataPoint dp : spectra.get(source)) {
+          final double mz = random.nextBoolean() ? dp.getMZ() + shift : dp.getMZ();
+          dps.add(new SimpleDataPoint(mz + jitter(random), nextIntensity(random)));
+        }
+      } else {
+        final int numSignals = 5 + random.nextInt(25);
+        for (int i = 0; i < numSignals; i++) {
+          // mostly shared signals, some random noise
+          final double mz = random.nextInt(4) == 0 ? 50d + random.nextDouble() * 450d
+              : pool[random.nextInt(pool.length)] + jitter(random);
+          dps.add(new SimpleDataPoint(mz, nextIntensity(random)));
+        }
+      }
+      spectra.add(dps.toArray(DataPoint[]::new));
+    }
+    return spectra;
+  }
+
+  private static double jitter(Random random) {
+    return (random.nextDouble() - 0.5d) * 0.004d;
+  }
+
+  private static double nextIntensity(Random random) {
+    return 1 + random.nextInt(1000);
+  }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.dataprocessing.id_localcsvsearch;
+
+import io.github.mzmine.util.files.LibraryCacheFolder;
+import io.github.mzmine.util.spectraldb.entry.SpectralLibraryIndex;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class LocalCSVDatabaseIndexTest {
+
+  private static final String[][] DATABASE = {{"mz", "name"}, {"200.1", "a"}, {"300.2", "b"}};
+  private static final String KEY = "test";
+
+  private static LocalCSVDatabaseIndex createIndex(int[] lines, int[] adducts) {
+    final SpectralLibraryIndex.Builder builder = new SpectralLibraryIndex.Builder();
+    for (int i = 0; i < lines.length; i++) {
+      builder.add(i, 100d + i, null, null, null);
+    }
+    return new LocalCSVDatabaseIndex(DATABASE, builder.build(), lines, adducts);
+  }
+
+  private static LibraryCacheFolder createCache(File dir) {
+    return new LibraryCacheFolder(dir, LibraryCacheFolder.MAX_CACHE_BYTES);
+  }
+
+  @Test
+  void testCacheValidatesAdducts(@TempDir File dir) {
+    final LibraryCacheFolder cache = createCache(dir);
+    createIndex(new int[]{1, 1, 2, 2}, new int[]{0, 1, 0, 1}).saveToCache(cache, KEY);
+    Assertions.assertTrue(LocalCSVDatabaseIndex.getCacheFile(cache, KEY).exists());
+
+    final LocalCSVDatabaseIndex loaded = LocalCSVDatabaseIndex.loadFromCache(cache, KEY, DATABASE,
+        2);
+    Assertions.assertNotNull(loaded);
+    Assertions.assertEquals(4, loaded.size());
+    for (int i = 0; i < 4; i++) {
+      Assertions.assertEquals(1 + i / 2, loaded.getLine(i));
+      Assertions.assertEquals(i % 2, loaded.getAdduct(i));
+    }
+
+    // the adduct indices do not fit the adducts
+    Assertions.assertNull(LocalCSVDatabaseIndex.loadFromCache(cache, KEY, DATABASE, 1));
+    Assertions.assertNull(LocalCSVDatabaseIndex.loadFromCache(cache, KEY, DATABASE, 0));
+    // the line indices do not fit the database
+    Assertions.assertNull(LocalCSVDatabaseIndex.loadFromCache(cache, KEY,
+        new String[][]{DATABASE[0], DATABASE[1]}, 2));
+  }
+
+  @Test
+  void testCacheWithoutAdducts(@TempDir File dir) {
+    final LibraryCacheFolder cache = createCache(dir);
+    createIndex(new int[]{1, 2}, new int[]{-1, -1}).saveToCache(cache, KEY);
+    final LocalCSVDatabaseIndex loaded = LocalCSVDatabaseIndex.loadFromCache(cache, KEY, DATABASE,
+        0);
+    Assertions.assertNotNull(loaded);
+    Assertions.assertEquals(-1, loaded.getAdduct(0));
+    Assertions.assertEquals(-1, loaded.getAdduct(1));
+  }
+
+  @Test
+  void testCorruptCacheIsIgnored(@TempDir File dir) throws IOException {
+    final LibraryCacheFolder cache = createCache(dir);
+    final File file = LocalCSVDatabaseIndex.getCacheFile(cache, KEY);
+    Files.write(file.toPath(), new byte[]{0, 0, 0, 1, 0, 0});
+    Assertions.assertNull(LocalCSVDatabaseIndex.loadFromCache(cache, KEY, DATABASE, 0));
+    Assertions.assertNull(LocalCSVDatabaseIndex.loadFromCache(cache, "missing", DATABASE, 0));
+  }
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.io.import_rawdata_mzml;
+
+import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.datamodel.Scan;
+import io.github.mzmine.main.MZmineCore;
+import io.github.mzmine.project.impl.MZmineProjectImpl;
+import io.github.mzmine.taskcontrol.TaskStatus;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.Deflater;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Compares the streaming mzML import with the complete import on a generated file with more scans
+ * than the streaming converter keeps pending.
+ */
+public class MSDKmzMLImportTaskTest {
+
+  private static final int NUM_SCANS = 600;
+
+  @BeforeAll
+  public static void init() {
+    MZmineCore.main(new String[]{"-r", "-m", "all"});
+  }
+
+  @Test
+  void testStreamingMatchesCompleteImport(@TempDir File dir) throws IOException {
+    final Random random = new Random(42);
+    final double[][] mzs = new double[NUM_SCANS][];
+    final double[][] intensities = new double[NUM_SCANS][];
+    for (int i = 0; i < NUM_SCANS; i++) {
+      // every 50th scan is empty
+      final int numPoints = i % 50 == 0 ? 0 : 1 + random.nextInt(50);
+      mzs[i] = new double[numPoints];
+      intensities[i] = new double[numPoints];
+      double mz = 100d;
+      for (int j = 0; j < numPoints; j++) {
+        mz += random.nextDouble() * 10d;
+        mzs[i][j] = mz;
+        // intensities are written as 32 bit floats
+        intensities[i][j] = (float) (random.nextDouble() * 1E5);
+      }
+    }
+
+    final File file = new File(dir, "generated.mzML");
+    writeMzML(file, mzs, intensities);
+
+    final RawDataFile streamed = importFile(file, true);
+    final RawDataFile complete = importFile(file, false);
+
+    final List<Scan> streamedScans = streamed.getScans();
+    final List<Scan> completeScans = complete.getScans();
+    Assertions.assertEquals(NUM_SCANS, completeScans.size());
+    Assertions.assertEquals(completeScans.size(), streamedScans.size());
+
+    for (int i = 0; i < NUM_SCANS; i++) {
+      final Scan expected = completeScans.get(i);
+      final Scan actual = streamedScans.get(i);
+      Assertions.assertEquals(i + 1, actual.getScanNumber());
+      Assertions.assertEquals(expected.getScanNumber(), actual.getScanNumber());
+      Assertions.assertEquals(expected.getMSLevel(), actual.getMSLevel());
+      Assertions.assertEquals(expected.getRetentionTime(), actual.getRetentionTime());
+      Assertions.assertEquals(mzs[i].length, actual.getNumberOfDataPoints());
+      Assertions.assertEquals(expected.getNumberOfDataPoints(), actual.getNumberOfDataPoints());
+
+      for (int j = 0; j < actual.getNumberOfDataPoints(); j++) {
+        Assertions.assertEquals(expected.getMzValue(j), actual.getMzValue(j));
+        Assertions.assertEquals(expected.getIntensityValue(j), actual.getIntensityValue(j));
+        Assertions.assertEquals(mzs[i][j], actual.getMzValue(j));
+        Assertions.assertEquals(intensities[i][j], actual.getIntensityValue(j));
+      }
+    }
+  }
+
+  private static RawDataFile importFile(File file, boolean streaming) {
+    final MZmineProjectImpl project = new MZmineProjectImpl();
+    final MSDKmzMLImportTask task = new MSDKmzMLImportTask(project, file,
+        MSDKmzMLImportModule.class, new MSDKmzMLImportParameters(), Instant.now(), null);
+    task.setStreamingEnabled(streaming);
+    task.run();
+    Assertions.assertEquals(TaskStatus.FINISHED, task.getStatus(), task.getErrorMessage());
+    Assertions.assertEquals(1, project.getDataFiles().length);
+    return project.getDataFiles()[0];
+  }
+
+  /**
+   * Writes a minimal mzML file with alternating MS1 and MS2 scans. The m/z values are zlib
+   * compressed 64 bit floats, the intensities uncompressed 32 bit floats.
+   */
+  private static void writeMzML(File file, double[][] mzs, double[][] intensities)
+      throws IOException {
+    final StringBuilder b = new StringBuilder();
+    b.append("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n");
+    b.append("<mzML xmlns=\"http://psi.hupo.org/ms/mzml\" version=\"1.1.0\">\n");
+    b.append("<run id=\"generated\" defaultInstrumentConfigurationRef=\"IC1\">\n");
+    b.append("<spectrumList count=\"").append(mzs.length)
+        .append("\" defaultDataProcessingRef=\"DP1\">\n");
+
+    for (int i = 0; i < mzs.length; i++) {
+      final int msLevel = i % 2 == 0 ? 1 : 2;
+      final double rtMinutes = i * 0.01d;
+      b.append("<spectrum index=\"").append(i).append("\" id=\"scan=").append(i + 1)
+          .append("\" defaultArrayLength=\"").append(mzs[i].length).append("\">\n");
+      cvParam(b, "MS:1000511", "ms level", String.valueOf(msLevel));
+      cvParam(b, "MS:1000130", "positive scan", "");
+      cvParam(b, "MS:1000127", "centroid spectrum", "");
+      b.append("<scanList count=\"1\">\n<scan>\n");
+      b.append("<cvParam cvRef=\"MS\" accession=\"MS:1000016\" name=\"scan start time\" value=\"")
+          .append(rtMinutes).append("\" unitCvRef=\"UO\" unitAccession=\"UO:0000031\""
+              + " unitName=\"minute\"/>\n");
+      b.append("</scan>\n</scanList>\n");
+      if (msLevel == 2) {
+        b.append("<precursorList count=\"1\">\n<precursor>\n<selectedIonList count=\"1\">\n"
+            + "<selectedIon>\n");
+        cvParam(b, "MS:1000744", "selected ion m/z", String.valueOf(200d + i));
+        b.append("</selectedIon>\n</selectedIonList>\n</precursor>\n</precursorList>\n");
+      }
+
+      b.append("<binaryDataArrayList count=\"2\">\n");
+      final String mzData = encodeDoubles(mzs[i]);
+      b.append("<binaryDataArray encodedLength=\"").append(mzData.length()).append("\">\n");
+      cvParam(b, "MS:1000523", "64-bit float", "");
+      cvParam(b, "MS:1000574", "zlib compression", "");
+      cvParam(b, "MS:1000514", "m/z array", "");
+      b.append("<binary>").append(mzData).append("</binary>\n</binaryDataArray>\n");
+
+      final String intensityData = encodeFloats(intensities[i]);
+      b.append("<binaryDataArray encodedLength=\"").append(intensityData.length())
+          .append("\">\n");
+      cvParam(b, "MS:1000521", "32-bit float", "");
+      cvParam(b, "MS:1000576", "no compression", "");
+      cvParam(b, "MS:1000515", "intensity array", "");
+      b.append("<binary>").append(intensityData).append("</binary>\n</binaryDataArray>\n");
+      b.append("</binaryDataArrayList>\n</spectrum>\n");
+    }
+
+    b.append("</spectrumList>\n</run>\n</mzML>\n");
+    // the parser locates the binary data by character position, so the file must be ASCII
+    Files.writeString(file.toPath(), b.toString(), StandardCharsets.US_ASCII);
+  }
+
+  private static void cvParam(StringBuilder b, String accession, String name, String value) {
+    b.append("<cvParam cvRef=\"MS\" accession=\"").append(accession).append("\" name=\"")
+        .append(name).append("\" value=\"").append(value).append("\"/>\n");
+  }
+
+  private static String encodeDoubles(double[] values) {
+    final ByteBuffer buffer = ByteBuffer.allocate(values.length * Double.BYTES)
+        .order(ByteOrder.LITTLE_ENDIAN);
+    for (double value : values) {
+      buffer.putDouble(value);
+    }
+
+    final Deflater deflater = new Deflater();
+    deflater.setInput(buffer.array());
+    deflater.finish();
+    final byte[] out = new byte[buffer.capacity() + 64];
+    final int length = deflater.deflate(out);
+    deflater.end();
+
+    final byte[] compressed = new byte[length];
+    System.arraycopy(out, 0, compressed, 0, length);
+    return Base64.getEncoder().encodeToString(compressed);
+  }
+
+  private static String encodeFloats(double[] values) {
+    final ByteBuffer buffer = ByteBuffer.allocate(values.length * Float.BYTES)
+        .order(ByteOrder.LITTLE_ENDIAN);
+    for (double value : values) {
+      buffer.putFloat((float) value);
+    }
+    return Base64.getEncoder().encodeToString(buffer.array());
+  }
+}
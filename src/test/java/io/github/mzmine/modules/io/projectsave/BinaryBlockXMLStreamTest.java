@@ -0,0 +1,387 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.io.projectsave;
+
+import com.google.common.collect.Range;
+import com.sun.xml.txw2.output.IndentingXMLStreamWriter;
+import io.github.mzmine.datamodel.IMSRawDataFile;
+import io.github.mzmine.datamodel.MZmineProject;
+import io.github.mzmine.datamodel.MassSpectrumType;
+import io.github.mzmine.datamodel.MobilityType;
+import io.github.mzmine.datamodel.PolarityType;
+import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.datamodel.Scan;
+import io.github.mzmine.datamodel.data_access.BinningMobilogramDataAccess;
+import io.github.mzmine.datamodel.featuredata.IonMobilitySeries;
+import io.github.mzmine.datamodel.featuredata.IonMobilogramTimeSeries;
+import io.github.mzmine.datamodel.featuredata.IonTimeSeries;
+import io.github.mzmine.datamodel.featuredata.impl.IonMobilogramTimeSeriesFactory;
+import io.github.mzmine.datamodel.featuredata.impl.SimpleIonMobilitySeries;
+import io.github.mzmine.datamodel.featuredata.impl.SimpleIonTimeSeries;
+import io.github.mzmine.datamodel.features.ModularFeature;
+import io.github.mzmine.datamodel.features.ModularFeatureList;
+import io.github.mzmine.datamodel.features.ModularFeatureListRow;
+import io.github.mzmine.datamodel.features.types.FeatureDataType;
+import io.github.mzmine.datamodel.impl.BuildingMobilityScan;
+import io.github.mzmine.datamodel.impl.SimpleFrame;
+import io.github.mzmine.datamodel.impl.SimpleScan;
+import io.github.mzmine.modules.io.projectload.BinaryBlockXMLStreamReader;
+import io.github.mzmine.modules.io.projectload.version_3_0.CONST;
+import io.github.mzmine.project.impl.IMSRawDataFileImpl;
+import io.github.mzmine.project.impl.MZmineProjectImpl;
+import io.github.mzmine.project.impl.RawDataFileImpl;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.DoubleBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javafx.scene.paint.Color;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Saves and loads series with the {@link BinaryBlockXMLStreamWriter} and {@link
+ * BinaryBlockXMLStreamReader}.
+ */
+public class BinaryBlockXMLStreamTest {
+
+  private static final Pattern OFFSET_PATTERN = Pattern.compile(
+      CONST.XML_BINARY_OFFSET_ATTR + "=\"(\\d+)\"");
+
+  @Test
+  void testIonTimeSeriesRoundTrip() throws Exception {
+    final RawDataFile file = new RawDataFileImpl("testfile", null, null, Color.BLACK);
+    final List<Scan> scans = new ArrayList<>();
+    for (int i = 0; i < 20; i++) {
+      final Scan scan = new SimpleScan(file, i, 1, 0.1f * i, null, new double[0], new double[0],
+          MassSpectrumType.CENTROIDED, PolarityType.POSITIVE, "", Range.closed(0d, 1d));
+      scans.add(scan);
+      file.addScan(scan);
+    }
+    final Fixture fixture = new Fixture(file);
+    fixture.flist.setSelectedScans(file, scans.subList(3, 18));
+
+    final IonTimeSeries<Scan> series = new SimpleIonTimeSeries(null,
+        new double[]{150d, 150.001d, 150.002d, 150.001d, 150d}, new double[]{1d, 5d, 20d, 5d, 1d},
+        scans.subList(5, 10));
+
+    final SavedXml saved = save(fixture, series, BinaryBlockXMLStreamWriter.SEGMENT_SIZE, true);
+    try {
+      Assertions.assertEquals(3, offsets(saved.xml).size(), "Values were not moved to the block.");
+      Assertions.assertEquals(series,
+          load(fixture, saved, BinaryBlockXMLStreamWriter.SEGMENT_SIZE, true));
+    } finally {
+      saved.delete();
+    }
+  }
+
+  /**
+   * The ion mobilogram time series also contains the {@link SimpleIonMobilitySeries} mobilograms
+   * and the summed mobilogram, so all series types are saved.
+   */
+  @Test
+  void testIonMobilogramTimeSeriesRoundTrip() throws Exception {
+    final IMSRawDataFile file = createImsFile();
+    final Fixture fixture = new Fixture(file);
+    fixture.flist.setSelectedScans(file, file.getFrames().subList(3, 18));
+    final IonMobilogramTimeSeries series = generateTrace(file, 2);
+
+    final SavedXml saved = save(fixture, series, BinaryBlockXMLStreamWriter.SEGMENT_SIZE, true);
+    try {
+      Assertions.assertFalse(offsets(saved.xml).isEmpty(), "Values were not moved to the block.");
+      final Object loaded = load(fixture, saved, BinaryBlockXMLStreamWriter.SEGMENT_SIZE, true);
+      Assertions.assertEquals(series, loaded);
+      Assertions.assertEquals(series.getSummedMobilogram(),
+          ((IonMobilogramTimeSeries) loaded).getSummedMobilogram());
+    } finally {
+      saved.delete();
+    }
+  }
+
+  /**
+   * Projects saved before the binary block was introduced store all values as text and have no
+   * {@link CONST#XML_BINARY_OFFSET_ATTR} attribute.
+   */
+  @Test
+  void testTextOnlyProjectLoads() throws Exception {
+    final IMSRawDataFile file = createImsFile();
+    final Fixture fixture = new Fixture(file);
+    fixture.flist.setSelectedScans(file, file.getFrames().subList(3, 18));
+    final IonMobilogramTimeSeries series = generateTrace(file, 3);
+
+    final SavedXml saved = save(fixture, series, BinaryBlockXMLStreamWriter.SEGMENT_SIZE, false);
+    Assertions.assertTrue(offsets(saved.xml).isEmpty());
+    Assertions.assertEquals(series,
+        load(fixture, saved, BinaryBlockXMLStreamWriter.SEGMENT_SIZE, false));
+
+    // a text only xml read with the binary reader and an empty block
+    final File emptyBlock = File.createTempFile("mzmine_test_block", ".tmp");
+    emptyBlock.deleteOnExit();
+    try {
+      final SavedXml textWithBlock = new SavedXml(saved.xml, emptyBlock);
+      Assertions.assertEquals(series,
+          load(fixture, textWithBlock, BinaryBlockXMLStreamWriter.SEGMENT_SIZE, true));
+    } finally {
+      emptyBlock.delete();
+    }
+  }
+
+  @Test
+  void testValuesArePaddedToSegments() throws Exception {
+    final long segmentSize = 64;
+    final int[] indices = {0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11}; // 48 bytes
+    final double[] first = {1d, 2d, 3d, 4d, 5d}; // 40 bytes, would cross the first segment
+    final double[] full = {1d, 2d, 3d, 4d, 5d, 6d, 7d, 8d}; // exactly one segment
+    final double[] tooLong = {1d, 2d, 3d, 4d, 5d, 6d, 7d, 8d, 9d}; // larger than a segment
+    final double[] empty = {};
+
+    final ByteArrayOutputStream os = new ByteArrayOutputStream();
+    final BinaryBlockXMLStreamWriter writer = new BinaryBlockXMLStreamWriter(
+        XMLOutputFactory.newInstance().createXMLStreamWriter(os, "UTF-8"), segmentSize);
+    final TempZipEntry block;
+    try {
+      writer.writeStartDocument();
+      writer.writeStartElement("values");
+      writeElement(writer, "indices", indices);
+      writeElement(writer, "first", first);
+      writeElement(writer, "full", full);
+      writeElement(writer, "tooLong", tooLong);
+      writeElement(writer, "empty", empty);
+      writeElement(writer, "last", first);
+      writer.writeEndElement();
+      writer.writeEndDocument();
+      writer.flush();
+      block = writer.finishTempEntry("values.bin");
+    } finally {
+      writer.discardBlock();
+    }
+
+    try {
+      final String xml = os.toString();
+      // indices at 0, padded to 64, padded to 128, text, empty at the current position, 192
+      Assertions.assertEquals(List.of(0L, 64L, 128L, 192L, 192L), offsets(xml));
+      Assertions.assertEquals(192L + first.length * Double.BYTES, block.size());
+
+      final XMLStreamReader xmlReader = XMLInputFactory.newInstance()
+          .createXMLStreamReader(new ByteArrayInputStream(os.toByteArray()));
+      final XMLStreamReader reader = new BinaryBlockXMLStreamReader(xmlReader, block.file(),
+          segmentSize);
+      moveTo(reader, "indices");
+      Assertions.assertArrayEquals(indices, BinaryBlockXMLStreamReader.readInts(reader));
+      moveTo(reader, "first");
+      Assertions.assertArrayEquals(first, BinaryBlockXMLStreamReader.readDoubles(reader));
+      moveTo(reader, "full");
+      Assertions.assertArrayEquals(full, BinaryBlockXMLStreamReader.readDoubles(reader));
+      moveTo(reader, "tooLong");
+      Assertions.assertArrayEquals(tooLong, BinaryBlockXMLStreamReader.readDoubles(reader));
+      moveTo(reader, "empty");
+      Assertions.assertArrayEquals(empty, BinaryBlockXMLStreamReader.readDoubles(reader));
+      moveTo(reader, "last");
+      final DoubleBuffer last = BinaryBlockXMLStreamReader.readDoubleBuffer(reader, null);
+      Assertions.assertEquals(DoubleBuffer.wrap(first), last);
+      reader.close();
+    } finally {
+      block.delete();
+    }
+  }
+
+  /**
+   * Series with a segment size smaller than the saved values. Values that do not fit into the
+   * remaining segment are padded to the next one, longer values are saved as text.
+   */
+  @Test
+  void testSeriesRoundTripWithSmallSegments() throws Exception {
+    final IMSRawDataFile file = createImsFile();
+    final Fixture fixture = new Fixture(file);
+    fixture.flist.setSelectedScans(file, file.getFrames().subList(3, 18));
+    final IonMobilogramTimeSeries series = generateTrace(file, 1.5);
+
+    for (final long segmentSize : new long[]{24, 48, 64, 100}) {
+      final SavedXml saved = save(fixture, series, segmentSize, true);
+      try {
+        Assertions.assertFalse(offsets(saved.xml).isEmpty());
+        Assertions.assertEquals(series, load(fixture, saved, segmentSize, true),
+            "segment size " + segmentSize);
+      } finally {
+        saved.delete();
+      }
+    }
+  }
+
+  private static void writeElement(XMLStreamWriter writer, String name, int[] values)
+      throws XMLStreamException {
+    writer.writeStartElement(name);
+    writer.writeAttribute(CONST.XML_NUM_VALUES_ATTR, String.valueOf(values.length));
+    BinaryBlockXMLStreamWriter.writeValues(writer, values);
+    writer.writeEndElement();
+  }
+
+  private static void writeElement(XMLStreamWriter writer, String name, double[] values)
+      throws XMLStreamException {
+    writer.writeStartElement(name);
+    writer.writeAttribute(CONST.XML_NUM_VALUES_ATTR, String.valueOf(values.length));
+    BinaryBlockXMLStreamWriter.writeValues(writer, DoubleBuffer.wrap(values));
+    writer.writeEndElement();
+  }
+
+  private static void moveTo(XMLStreamReader reader, String element) throws XMLStreamException {
+    while (reader.hasNext()) {
+      if (reader.next() == XMLStreamReader.START_ELEMENT && reader.getLocalName()
+          .equals(element)) {
+        return;
+      }
+    }
+    Assertions.fail("Did not find element " + element);
+  }
+
+  private static List<Long> offsets(String xml) {
+    final List<Long> offsets = new ArrayList<>();
+    final Matcher matcher = OFFSET_PATTERN.matcher(xml);
+    while (matcher.find()) {
+      offsets.add(Long.parseLong(matcher.group(1)));
+    }
+    return offsets;
+  }
+
+  private static SavedXml save(Fixture fixture, Object value, long segmentSize, boolean binary)
+      throws XMLStreamException, IOException {
+    final ByteArrayOutputStream os = new ByteArrayOutputStream();
+    final XMLStreamWriter xmlWriter = XMLOutputFactory.newInstance()
+        .createXMLStreamWriter(os, "UTF-8");
+    final XMLStreamWriter writer = binary ? new BinaryBlockXMLStreamWriter(xmlWriter, segmentSize)
+        : new IndentingXMLStreamWriter(xmlWriter);
+
+    final FeatureDataType type = new FeatureDataType();
+    File blockFile = null;
+    try {
+      writer.writeStartDocument();
+      writer.writeStartElement("atestelelement");
+      writer.writeStartElement(CONST.XML_DATA_TYPE_ELEMENT);
+      writer.writeAttribute(CONST.XML_DATA_TYPE_ID_ATTR, type.getUniqueID());
+      type.saveToXML(writer, value, fixture.flist, fixture.row, fixture.feature, fixture.file);
+      writer.writeEndElement();
+      writer.writeEndElement();
+      writer.writeEndDocument();
+      writer.flush();
+      if (writer instanceof BinaryBlockXMLStreamWriter binaryWriter) {
+        blockFile = binaryWriter.finishTempEntry("values.bin").file();
+      }
+    } finally {
+      if (writer instanceof BinaryBlockXMLStreamWriter binaryWriter) {
+        binaryWriter.discardBlock();
+      }
+    }
+    return new SavedXml(os.toString(), blockFile);
+  }
+
+  private static Object load(Fixture fixture, SavedXml saved, long segmentSize, boolean binary)
+      throws XMLStreamException, IOException {
+    final XMLStreamReader xmlReader = XMLInputFactory.newInstance()
+        .createXMLStreamReader(new ByteArrayInputStream(saved.xml.getBytes()));
+    final XMLStreamReader reader =
+        binary ? new BinaryBlockXMLStreamReader(xmlReader, saved.blockFile, segmentSize)
+            : xmlReader;
+
+    final FeatureDataType type = new FeatureDataType();
+    moveTo(reader, CONST.XML_DATA_TYPE_ELEMENT);
+    final Object loaded = type.loadFromXML(reader, fixture.project, fixture.flist, fixture.row,
+        fixture.feature, fixture.file);
+    reader.close();
+    return loaded;
+  }
+
+  private static IMSRawDataFile createImsFile() throws IOException {
+    final IMSRawDataFile file = new IMSRawDataFileImpl("testfile", null, null, Color.BLACK);
+    for (int i = 0; i < 20; i++) {
+      final List<BuildingMobilityScan> scans = new ArrayList<>();
+      for (int j = 0; j < 5; j++) {
+        scans.add(new BuildingMobilityScan(j, new double[0], new double[0]));
+      }
+      final SimpleFrame frame = new SimpleFrame(file, i, 1, 0.1f * i, new double[0],
+          new double[0], MassSpectrumType.CENTROIDED, PolarityType.POSITIVE, "",
+          Range.closed(0d, 1d), MobilityType.TIMS, null, null);
+      frame.setMobilities(new double[]{5d, 4d, 3d, 2d, 1d});
+      frame.setMobilityScans(scans, true);
+      file.addScan(frame);
+    }
+    return file;
+  }
+
+  @NotNull
+  private static IonMobilogramTimeSeries generateTrace(IMSRawDataFile file, double seed) {
+    final List<IonMobilitySeries> mobilograms = new ArrayList<>();
+    for (int i = 7; i < 12; i++) {
+      mobilograms.add(new SimpleIonMobilitySeries(null,
+          new double[]{seed * 1, seed * 2, seed * 3, seed * 4, seed * 5},
+          new double[]{seed * 5, seed * 4, seed * 3, seed * 2, seed * 1},
+          file.getFrame(i).getMobilityScans()));
+    }
+
+    return IonMobilogramTimeSeriesFactory.of(null, new double[]{150d, 150d, 150d, 150d, 150d},
+        new double[]{1d, 5d, 20d, 5d, 1d}, mobilograms, new BinningMobilogramDataAccess(file, 1));
+  }
+
+  private static class Fixture {
+
+    private final RawDataFile file;
+    private final ModularFeatureList flist;
+    private final ModularFeatureListRow row;
+    private final ModularFeature feature;
+    private final MZmineProject project;
+
+    private Fixture(RawDataFile file) {
+      this.file = file;
+      flist = new ModularFeatureList("flist", null, file);
+      row = new ModularFeatureListRow(flist, 1);
+      feature = new ModularFeature(flist, file, null, null);
+      row.addFeature(file, feature);
+      flist.addRow(row);
+      project = new MZmineProjectImpl();
+      project.addFile(file);
+      project.addFeatureList(flist);
+    }
+  }
+
+  private record SavedXml(String xml, @Nullable File blockFile) {
+
+    private void delete() {
+      if (blockFile != null) {
+        blockFile.delete();
+      }
+    }
+  }
+}
@@ -0,0 +1,442 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.io.projectsave;
+
+import com.google.common.collect.Range;
+import io.github.mzmine.datamodel.Frame;
+import io.github.mzmine.datamodel.IMSRawDataFile;
+import io.github.mzmine.datamodel.MZmineProject;
+import io.github.mzmine.datamodel.MassList;
+import io.github.mzmine.datamodel.MassSpectrumType;
+import io.github.mzmine.datamodel.MobilityScan;
+import io.github.mzmine.datamodel.MobilityType;
+import io.github.mzmine.datamodel.PolarityType;
+import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.datamodel.Scan;
+import io.github.mzmine.datamodel.impl.BuildingMobilityScan;
+import io.github.mzmine.datamodel.impl.DDAMsMsInfoImpl;
+import io.github.mzmine.datamodel.impl.MSnInfoImpl;
+import io.github.mzmine.datamodel.impl.PasefMsMsInfoImpl;
+import io.github.mzmine.datamodel.impl.SimpleFrame;
+import io.github.mzmine.datamodel.impl.SimpleScan;
+import io.github.mzmine.datamodel.impl.masslist.SimpleMassList;
+import io.github.mzmine.datamodel.msms.ActivationMethod;
+import io.github.mzmine.datamodel.msms.DDAMsMsInfo;
+import io.github.mzmine.datamodel.msms.MsMsInfo;
+import io.github.mzmine.datamodel.msms.PasefMsMsInfo;
+import io.github.mzmine.modules.dataprocessing.featdet_massdetection.centroid.CentroidMassDetector;
+import io.github.mzmine.modules.dataprocessing.featdet_massdetection.centroid.CentroidMassDetectorParameters;
+import io.github.mzmine.modules.dataprocessing.id_ccscalibration.DriftTubeCCSCalibration;
+import io.github.mzmine.modules.io.projectload.version_3_0.RawDataFileOpenHandler_3_0;
+import io.github.mzmine.modules.io.projectload.version_3_0.RawDataFileSnapshotLoader;
+import io.github.mzmine.parameters.ParameterSet;
+import io.github.mzmine.project.impl.IMSRawDataFileImpl;
+import io.github.mzmine.project.impl.MZmineProjectImpl;
+import io.github.mzmine.project.impl.RawDataFileImpl;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+import javafx.scene.paint.Color;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Saves raw data files with the {@link RawDataFileSnapshotWriter} and loads them with the {@link
+ * RawDataFileSnapshotLoader}.
+ */
+public class RawDataFileSnapshotTest {
+
+  /**
+   * A batch without any import steps. Replaying it does not add files to the project, so it shows
+   * if the project was opened from the snapshots or from the batch.
+   */
+  private static final String EMPTY_BATCH = "<root><batch-queue-list/></root>";
+
+  private Path tempDir;
+
+  @BeforeEach
+  void createTempDir() throws IOException {
+    tempDir = Files.createTempDirectory("mzmine_snapshot_test");
+  }
+
+  @AfterEach
+  void deleteTempDir() throws IOException {
+    try (var paths = Files.walk(tempDir)) {
+      paths.sorted((a, b) -> b.compareTo(a)).map(Path::toFile).forEach(File::delete);
+    }
+  }
+
+  @Test
+  void testSnapshotRoundTrip() throws Exception {
+    final RawDataFile first = createFile("first", Color.BLUE);
+    final RawDataFile second = createFile("second", Color.RED);
+    final File project = saveProject(false, first, second);
+
+    try (ZipFile zipFile = new ZipFile(project)) {
+      Assertions.assertTrue(RawDataFileSnapshotLoader.hasSnapshots(zipFile));
+      final List<RawDataFile> loaded = RawDataFileSnapshotLoader.loadSnapshots(zipFile,
+          tempDir.resolve("unzipped"), List.of(), () -> false);
+
+      Assertions.assertNotNull(loaded);
+      Assertions.assertEquals(2, loaded.size());
+      assertFileEquals(first, loaded.get(0));
+      assertFileEquals(second, loaded.get(1));
+    }
+  }
+
+  @Test
+  void testImsSnapshotRoundTrip() throws Exception {
+    final IMSRawDataFile file = createImsFile("ims", Color.GREEN);
+    Assertions.assertTrue(RawDataFileSnapshotWriter.canSaveSnapshot(file));
+    final File project = saveProject(false, file);
+
+    try (ZipFile zipFile = new ZipFile(project)) {
+      final List<RawDataFile> loaded = RawDataFileSnapshotLoader.loadSnapshots(zipFile,
+          tempDir.resolve("unzipped"), List.of(), () -> false);
+
+      Assertions.assertNotNull(loaded);
+      Assertions.assertEquals(1, loaded.size());
+      assertFileEquals(file, loaded.get(0));
+      assertImsFileEquals(file, loaded.get(0));
+    }
+  }
+
+  @Test
+  void testCorruptSnapshotThrows() throws Exception {
+    final File project = saveProject(true, createFile("corrupt", Color.BLUE));
+
+    try (ZipFile zipFile = new ZipFile(project)) {
+      Assertions.assertTrue(RawDataFileSnapshotLoader.hasSnapshots(zipFile));
+      Assertions.assertThrows(Exception.class,
+          () -> RawDataFileSnapshotLoader.loadSnapshots(zipFile, tempDir.resolve("unzipped"),
+              List.of(), () -> false));
+    }
+  }
+
+  @Test
+  void testOpenHandlerLoadsSnapshots() throws Exception {
+    final RawDataFile file = createFile("intact", Color.BLUE);
+    final File projectFile = saveProject(false, file);
+
+    try (ZipFile zipFile = new ZipFile(projectFile)) {
+      final MZmineProject project = new MZmineProjectImpl();
+      Assertions.assertTrue(openRawDataFiles(project, zipFile));
+      Assertions.assertEquals(1, project.getDataFiles().length);
+      assertFileEquals(file, project.getDataFiles()[0]);
+    }
+  }
+
+  @Test
+  void testOpenHandlerFallsBackToBatch() throws Exception {
+    final File projectFile = saveProject(true, createFile("corrupt", Color.BLUE));
+
+    try (ZipFile zipFile = new ZipFile(projectFile)) {
+      final MZmineProject project = new MZmineProjectImpl();
+      // the batch is replayed, so no file of the corrupt snapshot was added
+      Assertions.assertTrue(openRawDataFiles(project, zipFile));
+      Assertions.assertEquals(0, project.getDataFiles().length);
+    }
+  }
+
+  private static boolean openRawDataFiles(MZmineProject project, ZipFile zipFile)
+      throws InterruptedException {
+    final RawDataFileOpenHandler_3_0 handler = new RawDataFileOpenHandler_3_0(Instant.now());
+    handler.setProject(project);
+    handler.setZipFile(zipFile);
+    handler.setBatchFileStream(new ByteArrayInputStream(EMPTY_BATCH.getBytes()));
+    return handler.loadRawDataFiles();
+  }
+
+  /**
+   * Creates a file with ms1 scans, ms2 scans referencing their parent scan and an ms3 scan with
+   * nested precursor information. Some scans have mass lists, one scan is empty.
+   */
+  private static RawDataFile createFile(String name, Color color) throws IOException {
+    final RawDataFile file = new RawDataFileImpl(name, null, null, color);
+
+    final SimpleScan ms1 = addScan(file, 1, 1, 1.0f, null, 12.5f);
+    ms1.addMassList(new SimpleMassList(null, new double[]{200d, 300.5d}, new double[]{20d, 35d}));
+
+    final DDAMsMsInfo ms2Info = new DDAMsMsInfoImpl(300.5d, 2, 25f, null, ms1, 2,
+        ActivationMethod.CID, Range.closed(300d, 301d));
+    final SimpleScan ms2 = addScan(file, 2, 2, 1.01f, ms2Info, null);
+    ms2.addMassList(new SimpleMassList(null, new double[]{150.1d}, new double[]{1000d}));
+    addScan(file, 3, 2, 1.02f,
+        new DDAMsMsInfoImpl(200d, null, null, null, ms1, 2, ActivationMethod.HCD, null), null);
+
+    final MsMsInfo ms3Info = new MSnInfoImpl(List.of(
+        new DDAMsMsInfoImpl(300.5d, 2, 25f, null, ms1, 2, ActivationMethod.CID,
+            Range.closed(300d, 301d)),
+        new DDAMsMsInfoImpl(150.1d, 1, 30f, null, ms2, 3, ActivationMethod.CID,
+            Range.closed(149.6d, 150.6d))));
+    addScan(file, 4, 3, 1.03f, ms3Info, null);
+
+    final SimpleScan empty = new SimpleScan(file, 5, 1, 1.04f, null, new double[0],
+        new double[0], MassSpectrumType.CENTROIDED, PolarityType.NEGATIVE, null, null);
+    file.addScan(empty);
+    return file;
+  }
+
+  /**
+   * Creates an ion mobility file with a ccs calibration, two ms1 frames and a fragment frame with
+   * precursor information. The mobility scans of the first frame have mass lists from the mass
+   * detection, the second frame uses its mobility scans as mass lists and the fragment frame has no
+   * mobility scan mass lists.
+   */
+  private static IMSRawDataFile createImsFile(String name, Color color) throws IOException {
+    final IMSRawDataFileImpl file = new IMSRawDataFileImpl(name, null, null, color);
+    file.setCCSCalibration(new DriftTubeCCSCalibration(1.5d, 0.2d, 0.99d, 5));
+
+    final ParameterSet massDetection = new CentroidMassDetectorParameters().cloneParameterSet();
+    massDetection.setParameter(CentroidMassDetectorParameters.noiseLevel, 1500d);
+    massDetection.getParameter(CentroidMassDetectorParameters.detectIsotopes).setValue(false);
+
+    final SimpleFrame ms1 = addFrame(file, 1, 1, 1.0f, 5);
+    ms1.addMassList(new SimpleMassList(null, new double[]{200d, 300.5d}, new double[]{20d, 35d}));
+    ms1.getMobilityScanStorage()
+        .generateAndAddMobilityScanMassLists(null, new CentroidMassDetector(), massDetection);
+
+    addFrame(file, 2, 1, 1.1f, 5);
+
+    final SimpleFrame ms2 = addFrame(file, 3, 2, 1.2f, 4);
+    ms2.setPrecursorInfos(Set.of(
+        new PasefMsMsInfoImpl(300.5d, Range.closed(0, 1), 25f, 2, ms1, ms2,
+            Range.closed(300d, 301d)),
+        new PasefMsMsInfoImpl(200d, Range.closed(2, 3), null, null, null, ms2, null)));
+    return file;
+  }
+
+  /**
+   * Adds a frame with mobility scans. Mobility scan 1 is empty.
+   */
+  private static SimpleFrame addFrame(IMSRawDataFile file, int scanNumber, int msLevel, float rt,
+      int numMobilityScans) throws IOException {
+    final double[] mzs = new double[5 * scanNumber];
+    final double[] intensities = new double[mzs.length];
+    for (int i = 0; i < mzs.length; i++) {
+      mzs[i] = 100d + i * 1.5d;
+      intensities[i] = 1000d * scanNumber + i;
+    }
+    final SimpleFrame frame = new SimpleFrame(file, scanNumber, msLevel, rt, mzs, intensities,
+        MassSpectrumType.CENTROIDED, PolarityType.POSITIVE, "TIMS", Range.closed(50d, 500d),
+        MobilityType.TIMS, null, 100f);
+
+    final double[] mobilities = new double[numMobilityScans];
+    final List<BuildingMobilityScan> mobilityScans = new ArrayList<>();
+    for (int m = 0; m < numMobilityScans; m++) {
+      mobilities[m] = 1.2d - m * 0.1d;
+      final int numDataPoints = m == 1 ? 0 : 3 + m;
+      final double[] scanMzs = new double[numDataPoints];
+      final double[] scanIntensities = new double[numDataPoints];
+      for (int i = 0; i < numDataPoints; i++) {
+        scanMzs[i] = 100d + i * 10d + m * 0.01d;
+        scanIntensities[i] = 1000d * (i + 1) + scanNumber;
+      }
+      mobilityScans.add(new BuildingMobilityScan(m, scanMzs, scanIntensities));
+    }
+    frame.setMobilities(mobilities);
+    frame.setMobilityScans(mobilityScans, scanNumber == 2);
+    file.addScan(frame);
+    return frame;
+  }
+
+  private static SimpleScan addScan(RawDataFile file, int scanNumber, int msLevel, float rt,
+      MsMsInfo info, Float injectionTime) throws IOException {
+    final double[] mzs = new double[10 * scanNumber];
+    final double[] intensities = new double[mzs.length];
+    for (int i = 0; i < mzs.length; i++) {
+      mzs[i] = 100d + i * 1.5d + scanNumber * 0.001d;
+      intensities[i] = 1000d * scanNumber + i;
+    }
+    final SimpleScan scan = new SimpleScan(file, scanNumber, msLevel, rt, info, mzs, intensities,
+        MassSpectrumType.CENTROIDED, PolarityType.POSITIVE, "FTMS + p ESI", Range.closed(50d, 500d),
+        injectionTime);
+    file.addScan(scan);
+    return scan;
+  }
+
+  /**
+   * Saves the snapshots of the files to a zip.
+   *
+   * @param corrupt Truncates the binary value blocks.
+   */
+  private File saveProject(boolean corrupt, RawDataFile... files) throws Exception {
+    final File snapshots = tempDir.resolve("snapshots.zip").toFile();
+    try (ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(snapshots))) {
+      for (int i = 0; i < files.length; i++) {
+        RawDataFileSnapshotWriter.saveSnapshot(zos, files[i], i);
+      }
+    }
+    if (!corrupt) {
+      return snapshots;
+    }
+
+    final File corrupted = tempDir.resolve("corrupted.zip").toFile();
+    try (ZipFile zipFile = new ZipFile(snapshots);
+        ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(corrupted))) {
+      for (ZipEntry entry : zipFile.stream().toList()) {
+        byte[] bytes;
+        try (InputStream is = zipFile.getInputStream(entry)) {
+          bytes = is.readAllBytes();
+        }
+        if (entry.getName().endsWith(FeatureListSaveTask.BINARY_FILE_SUFFIX)) {
+          bytes = Arrays.copyOf(bytes, bytes.length / 2);
+        }
+        zos.putNextEntry(new ZipEntry(entry.getName()));
+        zos.write(bytes);
+        zos.closeEntry();
+      }
+    }
+    return corrupted;
+  }
+
+  private static void assertFileEquals(RawDataFile expected, RawDataFile actual) {
+    Assertions.assertEquals(expected.getName(), actual.getName());
+    Assertions.assertEquals(expected.getColor(), actual.getColor());
+    Assertions.assertEquals(expected.getNumOfScans(), actual.getNumOfScans());
+
+    for (int i = 0; i < expected.getNumOfScans(); i++) {
+      final Scan e = expected.getScan(i);
+      final Scan a = actual.getScan(i);
+      final String scan = "scan " + e.getScanNumber();
+      Assertions.assertSame(actual, a.getDataFile(), scan);
+      Assertions.assertEquals(e.getScanNumber(), a.getScanNumber(), scan);
+      Assertions.assertEquals(e.getMSLevel(), a.getMSLevel(), scan);
+      Assertions.assertEquals(e.getRetentionTime(), a.getRetentionTime(), scan);
+      Assertions.assertEquals(e.getPolarity(), a.getPolarity(), scan);
+      Assertions.assertEquals(e.getSpectrumType(), a.getSpectrumType(), scan);
+      Assertions.assertEquals(e.getScanDefinition(), a.getScanDefinition(), scan);
+      Assertions.assertEquals(e.getScanningMZRange(), a.getScanningMZRange(), scan);
+      Assertions.assertEquals(e.getInjectionTime(), a.getInjectionTime(), scan);
+      Assertions.assertArrayEquals(e.getMzValues(new double[0]), a.getMzValues(new double[0]),
+          scan);
+      Assertions.assertArrayEquals(e.getIntensityValues(new double[0]),
+          a.getIntensityValues(new double[0]), scan);
+
+      final MassList expectedMasses = e.getMassList();
+      final MassList actualMasses = a.getMassList();
+      if (expectedMasses == null) {
+        Assertions.assertNull(actualMasses, scan);
+      } else {
+        Assertions.assertNotNull(actualMasses, scan);
+        Assertions.assertArrayEquals(expectedMasses.getMzValues(new double[0]),
+            actualMasses.getMzValues(new double[0]), scan);
+        Assertions.assertArrayEquals(expectedMasses.getIntensityValues(new double[0]),
+            actualMasses.getIntensityValues(new double[0]), scan);
+      }
+
+      Assertions.assertEquals(e.getMsMsInfo(), a.getMsMsInfo(), scan);
+      if (a.getMsMsInfo() != null) {
+        Assertions.assertSame(a, a.getMsMsInfo().getMsMsScan(), scan);
+      }
+      if (a.getMsMsInfo() instanceof DDAMsMsInfo info && info.getParentScan() != null) {
+        // parent scans are resolved to the loaded file
+        Assertions.assertSame(actual, info.getParentScan().getDataFile(), scan);
+      }
+    }
+  }
+
+  private static void assertImsFileEquals(IMSRawDataFile expected, RawDataFile loaded) {
+    final IMSRawDataFile actual = Assertions.assertInstanceOf(IMSRawDataFile.class, loaded);
+    Assertions.assertEquals(expected.getMobilityType(), actual.getMobilityType());
+    Assertions.assertEquals(expected.getCCSCalibration(), actual.getCCSCalibration());
+    Assertions.assertEquals(expected.getNumberOfFrames(), actual.getNumberOfFrames());
+
+    for (int i = 0; i < expected.getNumberOfFrames(); i++) {
+      final Frame e = expected.getFrame(i);
+      final Frame a = actual.getFrame(i);
+      final String frame = "frame " + e.getScanNumber();
+      Assertions.assertEquals(e.getMobilityType(), a.getMobilityType(), frame);
+      Assertions.assertEquals(e.getMobilities(), a.getMobilities(), frame);
+      Assertions.assertEquals(e.getMobilityRange(), a.getMobilityRange(), frame);
+      Assertions.assertEquals(e.getNumberOfMobilityScans(), a.getNumberOfMobilityScans(), frame);
+
+      for (int m = 0; m < e.getNumberOfMobilityScans(); m++) {
+        final MobilityScan em = e.getMobilityScan(m);
+        final MobilityScan am = a.getMobilityScan(m);
+        final String scan = frame + " mobility scan " + m;
+        Assertions.assertEquals(em.getMobility(), am.getMobility(), scan);
+        Assertions.assertArrayEquals(em.getMzValues(new double[0]), am.getMzValues(new double[0]),
+            scan);
+        Assertions.assertArrayEquals(em.getIntensityValues(new double[0]),
+            am.getIntensityValues(new double[0]), scan);
+        Assertions.assertEquals(em.getBasePeakIndex(), am.getBasePeakIndex(), scan);
+
+        final MassList expectedMasses = em.getMassList();
+        final MassList actualMasses = am.getMassList();
+        if (expectedMasses == null) {
+          Assertions.assertNull(actualMasses, scan);
+        } else {
+          Assertions.assertNotNull(actualMasses, scan);
+          Assertions.assertArrayEquals(expectedMasses.getMzValues(new double[0]),
+              actualMasses.getMzValues(new double[0]), scan);
+          Assertions.assertArrayEquals(expectedMasses.getIntensityValues(new double[0]),
+              actualMasses.getIntensityValues(new double[0]), scan);
+          Assertions.assertEquals(expectedMasses.getBasePeakIndex(),
+              actualMasses.getBasePeakIndex(), scan);
+        }
+
+        final PasefMsMsInfo expectedInfo = (PasefMsMsInfo) em.getMsMsInfo();
+        final PasefMsMsInfo actualInfo = (PasefMsMsInfo) am.getMsMsInfo();
+        Assertions.assertEquals(expectedInfo == null, actualInfo == null, scan);
+      }
+
+      Assertions.assertEquals(e.getImsMsMsInfos().size(), a.getImsMsMsInfos().size(), frame);
+      for (PasefMsMsInfo info : e.getImsMsMsInfos()) {
+        final PasefMsMsInfo loadedInfo = a.getImsMsMsInfos().stream()
+            .filter(l -> Double.compare(l.getIsolationMz(), info.getIsolationMz()) == 0)
+            .findFirst().orElseThrow();
+        Assertions.assertEquals(info.getSpectrumNumberRange(), loadedInfo.getSpectrumNumberRange(),
+            frame);
+        Assertions.assertEquals(info.getActivationEnergy(), loadedInfo.getActivationEnergy(),
+            frame);
+        Assertions.assertEquals(info.getPrecursorCharge(), loadedInfo.getPrecursorCharge(), frame);
+        Assertions.assertEquals(info.getIsolationWindow(), loadedInfo.getIsolationWindow(), frame);
+        Assertions.assertSame(a, loadedInfo.getMsMsFrame(), frame);
+        if (info.getParentFrame() == null) {
+          Assertions.assertNull(loadedInfo.getParentFrame(), frame);
+        } else {
+          final int parentIndex = expected.getFrames().indexOf(info.getParentFrame());
+          Assertions.assertSame(actual.getFrame(parentIndex), loadedInfo.getParentFrame(), frame);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.visualization.twod;
+
+import com.google.common.collect.Range;
+import io.github.mzmine.datamodel.MassSpectrumType;
+import io.github.mzmine.datamodel.PolarityType;
+import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.datamodel.Scan;
+import io.github.mzmine.datamodel.impl.SimpleScan;
+import io.github.mzmine.project.impl.RawDataFileImpl;
+import java.util.Arrays;
+import java.util.Random;
+import javafx.scene.paint.Color;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Compares the tiles of the {@link IntensityTilePyramid} with the maximum intensity of the data
+ * points within the tiles.
+ */
+public class IntensityTilePyramidTest {
+
+  private static final long[] SEEDS = {1, 42, 4711};
+  // more scans than columns, so level 0 combines multiple scans
+  private static final int NUM_SCANS = 5000;
+  private static final int DATA_POINTS_PER_SCAN = 40;
+  private static final double MZ_MIN = 100d;
+  private static final double MZ_MAX = 1100d;
+  private static final double BIN_WIDTH = (MZ_MAX - MZ_MIN) / IntensityTilePyramid.MZ_BINS;
+
+  @Test
+  void testMaxIntensityMatchesDataPoints() {
+    for (long seed : SEEDS) {
+      final Random rnd = new Random(seed);
+      final RawDataFile file = new RawDataFileImpl("file " + seed, null, null, Color.BLACK);
+      final Scan[] scans = new Scan[NUM_SCANS];
+      for (int s = 0; s < NUM_SCANS; s++) {
+        scans[s] = createScan(rnd, file, s);
+      }
+
+      final IntensityTilePyramid pyramid = IntensityTilePyramid.getOrCreate(file, scans,
+          Range.closed(MZ_MIN, MZ_MAX));
+      Assertions.assertTrue(pyramid.build(file, scans, () -> false, processed -> {
+      }));
+      Assertions.assertTrue(pyramid.isComplete());
+
+      final int scansPerColumn = (NUM_SCANS + IntensityTilePyramid.MAX_COLUMNS - 1)
+          / IntensityTilePyramid.MAX_COLUMNS;
+      for (int q = 0; q < 500; q++) {
+        final int level = rnd.nextInt(pyramid.getNumberOfLevels());
+        final int scansPerCell = scansPerColumn << level;
+        final int numColumns = (NUM_SCANS + scansPerCell - 1) / scansPerCell;
+        final int numBins = IntensityTilePyramid.MZ_BINS >> level;
+        final double mzPerCell = BIN_WIDTH * (1 << level);
+
+        // a range of tiles. The queried scans and m/z values lie anywhere within the first and last
+        // tile
+        final int fromColumn = rnd.nextInt(numColumns);
+        final int toColumn = Math.min(numColumns - 1, fromColumn + rnd.nextInt(4));
+        final int fromBin = rnd.nextInt(numBins);
+        final int toBin = Math.min(numBins - 1, fromBin + rnd.nextInt(4));
+        final int fromScan = fromColumn * scansPerCell + rnd.nextInt(scansPerCell);
+        final int toScan = Math.min(NUM_SCANS - 1,
+            toColumn * scansPerCell + rnd.nextInt(scansPerCell));
+        final double fromMz = MZ_MIN + (fromBin + 0.05 + rnd.nextDouble() * 0.4) * mzPerCell;
+        final double toMz = MZ_MIN + (toBin + 0.55 + rnd.nextDouble() * 0.4) * mzPerCell;
+        if (fromScan > toScan) {
+          continue;
+        }
+
+        // brute force over all data points within the tiles
+        float expected = 0f;
+        final int endScan = Math.min(NUM_SCANS, (toColumn + 1) * scansPerCell);
+        for (int s = fromColumn * scansPerCell; s < endScan; s++) {
+          final Scan scan = scans[s];
+          for (int i = 0; i < scan.getNumberOfDataPoints(); i++) {
+            final int bin = (int) ((scan.getMzValue(i) - MZ_MIN) / BIN_WIDTH) >> level;
+            if (bin >= fromBin && bin <= toBin) {
+              expected = Math.max(expected, (float) scan.getIntensityValue(i));
+            }
+          }
+        }
+
+        Assertions.assertEquals(expected,
+            pyramid.getMaxIntensity(level, fromScan, toScan, fromMz, toMz), 0f,
+            "level " + level);
+      }
+    }
+  }
+
+  @Test
+  void testNearestIntensityInProfileMode() {
+    final RawDataFile file = new RawDataFileImpl("file", null, null, Color.BLACK);
+    final double mz = MZ_MIN + 100.5 * BIN_WIDTH;
+    final Scan[] scans = {new SimpleScan(file, 0, 1, 0f, null, new double[]{mz},
+        new double[]{1000d}, MassSpectrumType.PROFILE, PolarityType.POSITIVE, "",
+        Range.closed(MZ_MIN, MZ_MAX))};
+    final IntensityTilePyramid pyramid = IntensityTilePyramid.getOrCreate(file, scans,
+        Range.closed(MZ_MIN, MZ_MAX));
+    Assertions.assertTrue(pyramid.build(file, scans, () -> false, processed -> {
+    }));
+
+    // the bin above the data point is empty
+    final double fromMz = MZ_MIN + 101.2 * BIN_WIDTH;
+    final double toMz = MZ_MIN + 101.8 * BIN_WIDTH;
+    Assertions.assertEquals(0f, pyramid.getMaxIntensity(0, 0, 0, fromMz, toMz));
+    Assertions.assertEquals(1000f,
+        pyramid.getIntensity(0, 0, 0, fromMz, toMz, PlotMode.CONTINUOUS));
+    Assertions.assertEquals(0f, pyramid.getIntensity(0, 0, 0, fromMz, toMz, PlotMode.CENTROID));
+
+    // too far away from the data point
+    Assertions.assertEquals(0f,
+        pyramid.getIntensity(0, 0, 0, MZ_MIN + 500.2 * BIN_WIDTH, MZ_MIN + 500.8 * BIN_WIDTH,
+            PlotMode.CONTINUOUS));
+  }
+
+  /**
+   * Data points close to the centers of random level 0 bins, so the bin of each data point is
+   * unambiguous.
+   */
+  private static Scan createScan(Random rnd, RawDataFile file, int scanNumber) {
+    final double[] mzs = new double[DATA_POINTS_PER_SCAN];
+    for (int i = 0; i < DATA_POINTS_PER_SCAN; i++) {
+      final int bin = rnd.nextInt(IntensityTilePyramid.MZ_BINS);
+      mzs[i] = MZ_MIN + (bin + 0.2 + rnd.nextDouble() * 0.6) * BIN_WIDTH;
+    }
+    Arrays.sort(mzs);
+    final double[] intensities = new double[DATA_POINTS_PER_SCAN];
+    for (int i = 0; i < DATA_POINTS_PER_SCAN; i++) {
+      intensities[i] = 1 + rnd.nextDouble() * 1E6;
+    }
+    return new SimpleScan(file, scanNumber, 1, 0.01f * scanNumber, null, mzs, intensities,
+        MassSpectrumType.CENTROIDED, PolarityType.POSITIVE, "", Range.closed(MZ_MIN, MZ_MAX));
+  }
+}
@@ -0,0 +1,240 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.taskcontrol.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.github.mzmine.gui.preferences.MZminePreferences;
+import io.github.mzmine.gui.preferences.NumOfThreadsParameter;
+import io.github.mzmine.main.MZmineCore;
+import io.github.mzmine.taskcontrol.AbstractTask;
+import io.github.mzmine.taskcontrol.Task;
+import io.github.mzmine.taskcontrol.TaskPriority;
+import io.github.mzmine.taskcontrol.TaskStatus;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Element;
+
+class WorkStealingTaskControllerImplTest {
+
+  private static final long TIMEOUT_SECONDS = 10;
+
+  private static Element previousThreads;
+  private WorkStealingTaskControllerImpl controller;
+
+  @BeforeAll
+  public static void init() throws ParserConfigurationException {
+    MZmineCore.main(new String[]{"-r", "-m", "all"});
+    previousThreads = createElement();
+    getThreadsParameter().saveValueToXML(previousThreads);
+  }
+
+  @AfterAll
+  public static void tearDown() {
+    getThreadsParameter().loadValueFromXML(previousThreads);
+  }
+
+  @BeforeEach
+  void createController() {
+    controller = new WorkStealingTaskControllerImpl();
+    controller.initModule();
+  }
+
+  @Test
+  void testThreadLimit() throws Exception {
+    setThreads(2);
+    assertEquals(2, controller.getExecutor().getParallelism());
+
+    final CountDownLatch release = new CountDownLatch(1);
+    final AtomicInteger running = new AtomicInteger(0);
+    final AtomicInteger maxRunning = new AtomicInteger(0);
+    final BlockingTask[] tasks = new BlockingTask[6];
+    for (int i = 0; i < tasks.length; i++) {
+      tasks[i] = new BlockingTask(TaskPriority.NORMAL, release, running, maxRunning);
+    }
+    controller.addTasks(tasks);
+
+    // tasks are started in the order they were added
+    assertTrue(tasks[0].started.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    assertTrue(tasks[1].started.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    Thread.sleep(200);
+    assertEquals(2, running.get());
+    assertEquals(4, Arrays.stream(tasks).filter(t -> t.getStatus() == TaskStatus.WAITING).count());
+
+    release.countDown();
+    for (BlockingTask task : tasks) {
+      assertTrue(task.finished.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+      assertEquals(1, task.runs.get());
+    }
+    assertEquals(2, maxRunning.get());
+
+    // a changed preference is used for the next tasks
+    setThreads(3);
+    assertEquals(3, controller.getExecutor().getParallelism());
+  }
+
+  @Test
+  void testHighPriority() throws Exception {
+    setThreads(1);
+
+    final CountDownLatch release = new CountDownLatch(1);
+    final CountDownLatch released = new CountDownLatch(0);
+    final AtomicInteger running = new AtomicInteger(0);
+    final AtomicInteger maxRunning = new AtomicInteger(0);
+    final BlockingTask blocking = new BlockingTask(TaskPriority.NORMAL, release, running,
+        maxRunning);
+    controller.addTask(blocking);
+    assertTrue(blocking.started.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+    // the only thread is blocked, high priority tasks are started anyway
+    final BlockingTask waiting = new BlockingTask(TaskPriority.NORMAL, released, running,
+        maxRunning);
+    final BlockingTask high = new BlockingTask(TaskPriority.HIGH, released, running, maxRunning);
+    controller.addTasks(new Task[]{waiting, high});
+    assertTrue(high.finished.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    assertEquals(TaskStatus.WAITING, waiting.getStatus());
+
+    // raising the priority starts a waiting task
+    controller.setTaskPriority(waiting, TaskPriority.HIGH);
+    assertTrue(waiting.finished.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    assertEquals(TaskStatus.PROCESSING, blocking.getStatus());
+
+    // the task is not processed again when the normal priority thread is free
+    release.countDown();
+    assertTrue(blocking.finished.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    assertTrue(controller.getExecutor().awaitQuiescence(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    assertEquals(1, waiting.runs.get());
+    assertEquals(1, high.runs.get());
+    assertEquals(1, blocking.runs.get());
+  }
+
+  @Test
+  void testCanceledTaskIsNotStarted() throws Exception {
+    setThreads(1);
+
+    final CountDownLatch release = new CountDownLatch(1);
+    final AtomicInteger running = new AtomicInteger(0);
+    final AtomicInteger maxRunning = new AtomicInteger(0);
+    final BlockingTask blocking = new BlockingTask(TaskPriority.NORMAL, release, running,
+        maxRunning);
+    final BlockingTask canceled = new BlockingTask(TaskPriority.NORMAL, release, running,
+        maxRunning);
+    controller.addTasks(new Task[]{blocking, canceled});
+    assertTrue(blocking.started.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+    canceled.cancel();
+    release.countDown();
+    assertTrue(blocking.finished.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    assertTrue(controller.getExecutor().awaitQuiescence(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    assertEquals(0, canceled.runs.get());
+    assertEquals(TaskStatus.CANCELED, canceled.getStatus());
+  }
+
+  private static NumOfThreadsParameter getThreadsParameter() {
+    return MZmineCore.getConfiguration().getPreferences()
+        .getParameter(MZminePreferences.numOfThreads);
+  }
+
+  private static void setThreads(int threads) throws ParserConfigurationException {
+    final Element element = createElement();
+    element.setAttribute("isautomatic", "false");
+    element.setTextContent(String.valueOf(threads));
+    getThreadsParameter().loadValueFromXML(element);
+  }
+
+  private static Element createElement() throws ParserConfigurationException {
+    return DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument()
+        .createElement("parameter");
+  }
+
+  /**
+   * Counts the concurrently running tasks and waits until it is released.
+   */
+  private static class BlockingTask extends AbstractTask {
+
+    private final TaskPriority priority;
+    private final CountDownLatch release;
+    private final AtomicInteger running;
+    private final AtomicInteger maxRunning;
+    private final CountDownLatch started = new CountDownLatch(1);
+    private final CountDownLatch finished = new CountDownLatch(1);
+    private final AtomicInteger runs = new AtomicInteger(0);
+
+    private BlockingTask(TaskPriority priority, CountDownLatch release, AtomicInteger running,
+        AtomicInteger maxRunning) {
+      super(null, Instant.now());
+      this.priority = priority;
+      this.release = release;
+      this.running = running;
+      this.maxRunning = maxRunning;
+    }
+
+    @Override
+    public void run() {
+      setStatus(TaskStatus.PROCESSING);
+      runs.incrementAndGet();
+      maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+      started.countDown();
+      try {
+        // sleep instead of blocking on the latch, so the pool does not add threads
+        while (release.getCount() > 0) {
+          Thread.sleep(10);
+        }
+      } catch (InterruptedException e) {
+        // finish
+      } finally {
+        running.decrementAndGet();
+      }
+      setStatus(TaskStatus.FINISHED);
+      finished.countDown();
+    }
+
+    @Override
+    public TaskPriority getTaskPriority() {
+      return priority;
+    }
+
+    @Override
+    public String getTaskDescription() {
+      return "Blocking test task";
+    }
+
+    @Override
+    public double getFinishedPercentage() {
+      return 0;
+    }
+  }
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Field;
+import java.nio.Buffer;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import sun.misc.Unsafe;
+
+class MemoryMapStorageTest {
+
+  private static final int THREADS = 8;
+  private static final int ARRAYS_PER_THREAD = 600;
+
+  /**
+   * Stores arrays from multiple threads at once, so the append regions and segments are claimed
+   * concurrently. Overlapping buffers would overwrite the data of other arrays.
+   */
+  @Test
+  void testConcurrentStore() throws Exception {
+    final MemoryMapStorage storage = MemoryMapStorage.create();
+    final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+    final CyclicBarrier start = new CyclicBarrier(THREADS);
+    try {
+      final List<Future<List<Buffer>>> futures = new ArrayList<>();
+      for (int t = 0; t < THREADS; t++) {
+        final int thread = t;
+        futures.add(executor.submit(() -> {
+          start.await();
+          final List<Buffer> buffers = new ArrayList<>();
+          for (int i = 0; i < ARRAYS_PER_THREAD; i++) {
+            buffers.add(store(storage, thread, i));
+          }
+          return buffers;
+        }));
+      }
+
+      long expectedBytes = 0;
+      for (int t = 0; t < THREADS; t++) {
+        final List<Buffer> buffers = futures.get(t).get(60, TimeUnit.SECONDS);
+        for (int i = 0; i < ARRAYS_PER_THREAD; i++) {
+          expectedBytes += check(buffers.get(i), t, i);
+        }
+      }
+
+      assertEquals(expectedBytes, storage.getBytesUsed());
+      // more than the first segment
+      assertTrue(storage.getBytesMapped() > 32_000_000L);
+      assertTrue(storage.getBytesMapped() >= storage.getBytesUsed());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  void testDiscard() throws Exception {
+    final Unsafe theUnsafe = getUnsafe();
+    assertNotNull(theUnsafe);
+
+    final MemoryMapStorage storage = MemoryMapStorage.create();
+    for (int i = 0; i < 100; i++) {
+      store(storage, 0, i);
+    }
+    final long mapped = storage.getBytesMapped();
+    final long used = storage.getBytesUsed();
+    assertTrue(mapped > 0);
+    assertTrue(used > 0);
+
+    final long totalMapped = MemoryMapStorage.getTotalBytesMapped();
+    final long totalUsed = MemoryMapStorage.getTotalBytesUsed();
+    final long totalReclaimed = MemoryMapStorage.getTotalBytesReclaimed();
+
+    storage.discard(theUnsafe);
+
+    assertEquals(0, storage.getBytesMapped());
+    assertEquals(0, storage.getBytesUsed());
+    // other storages might be reclaimed in the meantime
+    assertTrue(MemoryMapStorage.getTotalBytesMapped() <= totalMapped - mapped);
+    assertTrue(MemoryMapStorage.getTotalBytesUsed() <= totalUsed - used);
+    assertTrue(MemoryMapStorage.getTotalBytesReclaimed() >= totalReclaimed + mapped);
+
+    // the storage can be used after it was discarded
+    final Buffer buffer = store(storage, 1, 0);
+    assertEquals(check(buffer, 1, 0), storage.getBytesUsed());
+  }
+
+  /**
+   * The segments of a storage are reclaimed once the storage and its buffers are unreachable.
+   */
+  @Test
+  void testUnreachableStorageIsReclaimed() throws Exception {
+    final long totalReclaimed = MemoryMapStorage.getTotalBytesReclaimed();
+    final long mapped = storeAndForget();
+
+    for (int i = 0; i < 50; i++) {
+      System.gc();
+      if (MemoryMapStorage.getTotalBytesReclaimed() >= totalReclaimed + mapped) {
+        break;
+      }
+      Thread.sleep(100);
+    }
+    assertTrue(MemoryMapStorage.getTotalBytesReclaimed() >= totalReclaimed + mapped);
+  }
+
+  /**
+   * @return the number of bytes mapped by the unreachable storage
+   */
+  private static long storeAndForget() throws Exception {
+    final MemoryMapStorage storage = MemoryMapStorage.create();
+    for (int i = 0; i < 100; i++) {
+      store(storage, 0, i);
+    }
+    return storage.getBytesMapped();
+  }
+
+  /**
+   * Stores a double[], float[] or int[] with random length and content. Every 50th array is large
+   * enough to be claimed directly from the segment.
+   */
+  private static Buffer store(MemoryMapStorage storage, int thread, int index) throws Exception {
+    final Random random = new Random(seed(thread, index));
+    final int length = length(random, index);
+    return switch (index % 3) {
+      case 0 -> storage.storeData(random.doubles(length).toArray());
+      case 1 -> {
+        final float[] data = new float[length];
+        for (int i = 0; i < length; i++) {
+          data[i] = random.nextFloat();
+        }
+        yield storage.storeData(data);
+      }
+      default -> storage.storeData(random.ints(length).toArray());
+    };
+  }
+
+  /**
+   * Checks the content of a buffer created by {@link #store(MemoryMapStorage, int, int)}.
+   *
+   * @return the number of stored bytes
+   */
+  private static long check(Buffer buffer, int thread, int index) {
+    final Random random = new Random(seed(thread, index));
+    final int length = length(random, index);
+    assertEquals(length, buffer.capacity());
+    switch (index % 3) {
+      case 0 -> {
+        final double[] data = random.doubles(length).toArray();
+        final DoubleBuffer doubles = (DoubleBuffer) buffer;
+        for (int i = 0; i < length; i++) {
+          assertEquals(data[i], doubles.get(i));
+        }
+        return (long) length * Double.BYTES;
+      }
+      case 1 -> {
+        final FloatBuffer floats = (FloatBuffer) buffer;
+        for (int i = 0; i < length; i++) {
+          assertEquals(random.nextFloat(), floats.get(i));
+        }
+        return (long) length * Float.BYTES;
+      }
+      default -> {
+        final int[] data = random.ints(length).toArray();
+        final IntBuffer ints = (IntBuffer) buffer;
+        for (int i = 0; i < length; i++) {
+          assertEquals(data[i], ints.get(i));
+        }
+        return (long) length * Integer.BYTES;
+      }
+    }
+  }
+
+  private static int length(Random random, int index) {
+    return index % 50 == 0 ? 80_000 + random.nextInt(1000) : random.nextInt(3000);
+  }
+
+  private static long seed(int thread, int index) {
+    return (long) thread * ARRAYS_PER_THREAD + index;
+  }
+
+  private static Unsafe getUnsafe() throws Exception {
+    final Field theUnsafeField = Unsafe.class.getDeclaredField("theUnsafe");
+    theUnsafeField.setAccessible(true);
+    return (Unsafe) theUnsafeField.get(null);
+  }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.util.files;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class LibraryCacheFolderTest {
+
+  /**
+   * Spectral library caches and compound database indices are evicted together, least recently
+   * used first.
+   */
+  @Test
+  void testPrune(@TempDir File dir) throws IOException {
+    final LibraryCacheFolder cache = new LibraryCacheFolder(dir, 250);
+    final long now = System.currentTimeMillis();
+    final File keep = createFile(dir, "keep.idx", now);
+    final File recent = createFile(dir, "recent.mzlib", now - 1000);
+    final File old = createFile(dir, "old.idx", now - 2000);
+    final File oldest = createFile(dir, "oldest.mzlib", now - 3000);
+    final File abandonedPart = createFile(dir, "abandoned.part", now - TimeUnit.DAYS.toMillis(2));
+    final File writingPart = createFile(dir, "writing.part", now);
+
+    cache.prune(keep, now);
+
+    Assertions.assertTrue(keep.exists());
+    Assertions.assertTrue(recent.exists());
+    Assertions.assertFalse(old.exists());
+    Assertions.assertFalse(oldest.exists());
+    Assertions.assertFalse(abandonedPart.exists());
+    Assertions.assertTrue(writingPart.exists());
+  }
+
+  @Test
+  void testCommit(@TempDir File dir) throws IOException {
+    final LibraryCacheFolder cache = new LibraryCacheFolder(new File(dir, "cache"), 150);
+    final File old = createFile(cache.getDirectory(), "old.idx", 0);
+
+    final File partial = cache.createPartialFile("new.idx");
+    Files.write(partial.toPath(), new byte[100]);
+    final File target = cache.getFile("new.idx");
+    cache.commit(partial, target);
+
+    Assertions.assertFalse(partial.exists());
+    Assertions.assertTrue(target.exists());
+    // does not fit next to the new file
+    Assertions.assertFalse(old.exists());
+  }
+
+  private static File createFile(File dir, String name, long lastModified) throws IOException {
+    Files.createDirectories(dir.toPath());
+    final File file = new File(dir, name);
+    Files.write(file.toPath(), new byte[100]);
+    Assertions.assertTrue(file.setLastModified(lastModified));
+    return file;
+  }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.util.scans.similarity;
+
+import io.github.mzmine.datamodel.DataPoint;
+import io.github.mzmine.datamodel.impl.SimpleDataPoint;
+import io.github.mzmine.parameters.parametertypes.tolerances.MZTolerance;
+import io.github.mzmine.util.maths.similarity.Similarity;
+import io.github.mzmine.util.scans.ScanAlignment;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Compares {@link SpectralAlignmentKernel} with the list based {@link ScanAlignment} path it
+ * replaced in the weighted and composite cosine similarities.
+ */
+public class SpectralAlignmentKernelTest {
+
+  private static final long[] SEEDS = {1, 42, 4711};
+  private static final int[] SIZES = {1, 5, 20, 100, 500};
+  private static final MZTolerance MZ_TOL = new MZTolerance(0.002, 5);
+  private static final double DELTA = 1E-9;
+
+  @Test
+  void testEquivalentToScanAlignment() {
+    for (long seed : SEEDS) {
+      Random rnd = new Random(seed);
+      for (int size : SIZES) {
+        DataPoint[] library = createSpectrum(rnd, size);
+        DataPoint[] query = createQuery(rnd, library);
+        assertEquivalent(library, query);
+        // swapped roles
+        assertEquivalent(query, library);
+        // input that is not sorted by m/z
+        List<DataPoint> shuffled = new ArrayList<>(Arrays.asList(query));
+        Collections.shuffle(shuffled, rnd);
+        assertEquivalent(library, shuffled.toArray(DataPoint[]::new));
+      }
+    }
+  }
+
+  @Test
+  void testInputNotModified() {
+    Random rnd = new Random(7);
+    DataPoint[] library = createSpectrum(rnd, 50);
+    DataPoint[] query = createQuery(rnd, library);
+    DataPoint[] libraryCopy = library.clone();
+    DataPoint[] queryCopy = query.clone();
+
+    SpectralAlignmentKernel.get().align(MZ_TOL, library, query);
+    Assertions.assertArrayEquals(libraryCopy, library);
+    Assertions.assertArrayEquals(queryCopy, query);
+  }
+
+  @Test
+  void testNoMatches() {
+    DataPoint[] library = {new SimpleDataPoint(100, 10), new SimpleDataPoint(200, 20)};
+    DataPoint[] query = {new SimpleDataPoint(150, 10)};
+    SpectralAlignmentKernel kernel = SpectralAlignmentKernel.get();
+    Assertions.assertEquals(0, kernel.align(MZ_TOL, library, query));
+    Assertions.assertTrue(kernel.getAlignedDataPoints().isEmpty());
+    Assertions.assertEquals(0d, kernel.weightedCosine(Weights.NONE,
+        HandleUnmatchedSignalOptions.KEEP_ALL_AND_MATCH_TO_ZERO), DELTA);
+  }
+
+  private void assertEquivalent(DataPoint[] library, DataPoint[] query) {
+    SpectralAlignmentKernel kernel = SpectralAlignmentKernel.get();
+    int overlap = kernel.align(MZ_TOL, library, query);
+
+    // the old alignment sorts the library in place
+    List<DataPoint[]> oldAligned = ScanAlignment.align(MZ_TOL, library.clone(), query.clone());
+    List<DataPoint[]> oldMatched = ScanAlignment.removeUnaligned(new ArrayList<>(oldAligned));
+    Assertions.assertEquals(oldMatched.size(), overlap);
+    Assertions.assertEquals(overlap, kernel.getOverlap());
+
+    // same pairs of data points in the same order
+    List<DataPoint[]> aligned = kernel.getAlignedDataPoints();
+    Assertions.assertEquals(oldMatched.size(), aligned.size());
+    for (int i = 0; i < aligned.size(); i++) {
+      Assertions.assertSame(oldMatched.get(i)[0], aligned.get(i)[0]);
+      Assertions.assertSame(oldMatched.get(i)[1], aligned.get(i)[1]);
+    }
+
+    for (HandleUnmatchedSignalOptions handleUnmatched : HandleUnmatchedSignalOptions.values()) {
+      List<DataPoint[]> handled = handleUnmatched.handleUnmatched(new ArrayList<>(oldAligned));
+      for (Weights weights : Weights.VALUES) {
+        double[][] diffArray = ScanAlignment.toIntensityMatrixWeighted(handled,
+            weights.getIntensity(), weights.getMz());
+        double expected = Similarity.COSINE.calc(diffArray);
+        double actual = kernel.weightedCosine(weights, handleUnmatched);
+        Assertions.assertEquals(expected, actual, DELTA * Math.max(1, Math.abs(expected)),
+            handleUnmatched + " " + weights);
+      }
+    }
+
+    if (overlap > 0) {
+      Assertions.assertEquals(oldRelativeNeighbourFactor(oldMatched, overlap),
+          kernel.relativeNeighbourFactor(), DELTA);
+    }
+  }
+
+  /**
+   * The neighbour factor as previously calculated in the composite cosine similarity
+   */
+  private static double oldRelativeNeighbourFactor(List<DataPoint[]> matched, int overlap) {
+    List<DataPoint[]> filtered = new ArrayList<>(matched);
+    filtered.sort(Comparator.comparingDouble(
+        dps -> Arrays.stream(dps).filter(Objects::nonNull).mapToDouble(DataPoint::getMZ).min()
+            .orElse(0)));
+
+    double factor = 0;
+    for (int i = 1; i < filtered.size(); i++) {
+      DataPoint[] match1 = filtered.get(i - 1);
+      DataPoint[] match2 = filtered.get(i);
+      double ratioLibrary = match2[0].getIntensity() / match1[0].getIntensity();
+      double ratioQuery = match2[1].getIntensity() / match1[1].getIntensity();
+      factor += Math.min(ratioLibrary, ratioQuery) / Math.max(ratioLibrary, ratioQuery);
+    }
+    return factor / overlap;
+  }
+
+  /**
+   * Random spectrum sorted by m/z. Coarse intensities and close neighbours provoke ties in the
+   * matching order and competing matches.
+   */
+  private static DataPoint[] createSpectrum(Random rnd, int size) {
+    List<DataPoint> dps = new ArrayList<>();
+    while (dps.size() < size) {
+      double mz = 50 + rnd.nextDouble() * 950;
+      dps.add(new SimpleDataPoint(mz, 100 * (1 + rnd.nextInt(20))));
+      if (dps.size() < size && rnd.nextInt(5) == 0) {
+        // neighbour within the tolerance
+        dps.add(new SimpleDataPoint(mz + 0.001, 100 * (1 + rnd.nextInt(20))));
+      }
+    }
+    dps.sort(Comparator.comparingDouble(DataPoint::getMZ));
+    return dps.toArray(DataPoint[]::new);
+  }
+
+  /**
+   * Query with about half of the library signals, slightly shifted, and additional random signals
+   */
+  private static DataPoint[] createQuery(Random rnd, DataPoint[] library) {
+    List<DataPoint> dps = new ArrayList<>();
+    for (DataPoint dp : library) {
+      if (rnd.nextBoolean()) {
+        double shift = (rnd.nextDouble() - 0.5) * 0.005;
+        dps.add(new SimpleDataPoint(dp.getMZ() + shift, 100 * (1 + rnd.nextInt(20))));
+      }
+    }
+    dps.addAll(Arrays.asList(createSpectrum(rnd, library.length / 2 + 1)));
+    dps.sort(Comparator.comparingDouble(DataPoint::getMZ));
+    return dps.toArray(DataPoint[]::new);
+  }
+}
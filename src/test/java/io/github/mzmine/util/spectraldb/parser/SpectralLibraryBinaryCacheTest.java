@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.util.spectraldb.parser;
+
+import io.github.mzmine.datamodel.DataPoint;
+import io.github.mzmine.datamodel.impl.SimpleDataPoint;
+import io.github.mzmine.util.files.LibraryCacheFolder;
+import io.github.mzmine.util.spectraldb.entry.DBEntryField;
+import io.github.mzmine.util.spectraldb.entry.SpectralDBEntry;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class SpectralLibraryBinaryCacheTest {
+
+  @Test
+  void testRoundTrip(@TempDir File dir) throws IOException {
+    final File library = createLibraryFile(dir);
+    final LibraryCacheFolder cache = new LibraryCacheFolder(new File(dir, "cache"),
+        LibraryCacheFolder.MAX_CACHE_BYTES);
+    final List<SpectralDBEntry> entries = createEntries();
+
+    SpectralLibraryBinaryCache.write(library, entries, cache);
+    Assertions.assertTrue(SpectralLibraryBinaryCache.getCacheFile(library, cache).exists());
+
+    final List<SpectralDBEntry> loaded = SpectralLibraryBinaryCache.read(library, cache);
+    Assertions.assertNotNull(loaded);
+    Assertions.assertEquals(entries.size(), loaded.size());
+    for (int i = 0; i < entries.size(); i++) {
+      final SpectralDBEntry expected = entries.get(i);
+      final SpectralDBEntry actual = loaded.get(i);
+      Assertions.assertEquals(expected, actual);
+      Assertions.assertEquals(actual, expected);
+      Assertions.assertEquals(expected.hashCode(), actual.hashCode());
+      Assertions.assertArrayEquals(expected.getDataPoints(), actual.getDataPoints());
+      Assertions.assertArrayEquals(expected.getMzValues(new double[0]),
+          actual.getMzValues(new double[0]));
+      Assertions.assertArrayEquals(expected.getIntensityValues(new double[0]),
+          actual.getIntensityValues(new double[0]));
+    }
+  }
+
+  @Test
+  void testOutdatedCache(@TempDir File dir) throws IOException {
+    final File library = createLibraryFile(dir);
+    final LibraryCacheFolder cache = new LibraryCacheFolder(new File(dir, "cache"),
+        LibraryCacheFolder.MAX_CACHE_BYTES);
+    SpectralLibraryBinaryCache.write(library, createEntries(), cache);
+
+    Assertions.assertTrue(library.setLastModified(library.lastModified() - 10_000));
+    Assertions.assertNull(SpectralLibraryBinaryCache.read(library, cache));
+  }
+
+  @Test
+  void testEquals() {
+    final DataPoint[] dps = {new SimpleDataPoint(100, 10), new SimpleDataPoint(200, 20)};
+    final SpectralDBEntry a = new SpectralDBEntry(300d, 1, dps);
+    final SpectralDBEntry b = new SpectralDBEntry(300d, 1, dps.clone());
+    Assertions.assertEquals(a, b);
+    Assertions.assertEquals(a.hashCode(), b.hashCode());
+
+    final SpectralDBEntry otherIntensity = new SpectralDBEntry(300d, 1,
+        new DataPoint[]{new SimpleDataPoint(100, 10), new SimpleDataPoint(200, 21)});
+    Assertions.assertNotEquals(a, otherIntensity);
+    final SpectralDBEntry fewerPoints = new SpectralDBEntry(300d, 1,
+        new DataPoint[]{new SimpleDataPoint(100, 10)});
+    Assertions.assertNotEquals(a, fewerPoints);
+    final SpectralDBEntry otherCharge = new SpectralDBEntry(300d, 2, dps);
+    Assertions.assertNotEquals(a, otherCharge);
+  }
+
+  private static File createLibraryFile(File dir) throws IOException {
+    final File library = new File(dir, "library.msp");
+    Files.writeString(library.toPath(), "NAME: test");
+    return library;
+  }
+
+  private static List<SpectralDBEntry> createEntries() {
+    final Random random = new Random(42);
+    final List<SpectralDBEntry> entries = new ArrayList<>();
+    for (int i = 0; i < 50; i++) {
+      // also entries without data points
+      final int numDataPoints = i % 10 == 0 ? 0 : random.nextInt(200);
+      final DataPoint[] dps = new DataPoint[numDataPoints];
+      double mz = 50;
+      for (int d = 0; d < numDataPoints; d++) {
+        mz += random.nextDouble() * 5;
+        dps[d] = new SimpleDataPoint(mz, random.nextDouble() * 1E5 + 1);
+      }
+
+      final Map<DBEntryField, Object> fields = new HashMap<>();
+      fields.put(DBEntryField.NAME, "compound " + i);
+      fields.put(DBEntryField.PRECURSOR_MZ, 100d + i);
+      fields.put(DBEntryField.RT, (float) i / 10);
+      fields.put(DBEntryField.CHARGE, 1 + i % 2);
+      fields.put(DBEntryField.NUM_PEAKS, numDataPoints);
+      // shared values are stored once
+      fields.put(DBEntryField.ION_TYPE, "[M+H]+");
+      fields.put(DBEntryField.MSN_COLLISION_ENERGIES, List.of(20d, 40d));
+      entries.add(new SpectralDBEntry(fields, dps));
+    }
+    return entries;
+  }
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package util;
+
+import io.github.mzmine.datamodel.features.FeatureListRow;
+import io.github.mzmine.datamodel.features.ModularFeatureList;
+import io.github.mzmine.datamodel.features.ModularFeatureListRow;
+import io.github.mzmine.datamodel.features.compoundannotations.CompoundDBAnnotation;
+import io.github.mzmine.datamodel.features.compoundannotations.SimpleCompoundDBAnnotation;
+import io.github.mzmine.datamodel.features.types.numbers.CCSType;
+import io.github.mzmine.datamodel.features.types.numbers.MZType;
+import io.github.mzmine.datamodel.features.types.numbers.MobilityType;
+import io.github.mzmine.datamodel.features.types.numbers.PrecursorMZType;
+import io.github.mzmine.datamodel.features.types.numbers.RTType;
+import io.github.mzmine.parameters.parametertypes.tolerances.MZTolerance;
+import io.github.mzmine.parameters.parametertypes.tolerances.RTTolerance;
+import io.github.mzmine.parameters.parametertypes.tolerances.RTTolerance.Unit;
+import io.github.mzmine.parameters.parametertypes.tolerances.mobilitytolerance.MobilityTolerance;
+import io.github.mzmine.util.spectraldb.entry.SpectralLibraryIndex;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Compares the compound database queries of the {@link SpectralLibraryIndex} with the previous
+ * search, which checked every annotation with
+ * {@link CompoundDBAnnotation#matches(FeatureListRow, MZTolerance, RTTolerance, MobilityTolerance,
+ * Double)}.
+ */
+public class SpectralLibraryIndexCompoundDBTest {
+
+  private static final long[] SEEDS = {1, 42, 4711};
+
+  private static final MZTolerance[] MZ_TOLERANCES = {null, new MZTolerance(0.005, 10)};
+  private static final RTTolerance[] RT_TOLERANCES = {null, new RTTolerance(0.2f, Unit.MINUTES),
+      new RTTolerance(10f, Unit.SECONDS), new RTTolerance(5f, Unit.PERCENT)};
+  private static final MobilityTolerance[] MOBILITY_TOLERANCES = {null,
+      new MobilityTolerance(0.05f)};
+  private static final Double[] CCS_TOLERANCES = {null, 0.02};
+
+  @Test
+  void testIndexEqualsMatches() {
+    for (long seed : SEEDS) {
+      final Random random = new Random(seed);
+      final List<CompoundDBAnnotation> annotations = createAnnotations(random, 500);
+      final List<FeatureListRow> rows = createRows(random, annotations, 100);
+
+      final SpectralLibraryIndex.Builder builder = new SpectralLibraryIndex.Builder();
+      for (int i = 0; i < annotations.size(); i++) {
+        final CompoundDBAnnotation a = annotations.get(i);
+        builder.add(i, a.getPrecursorMZ(), a.getRT(), a.getMobility(), a.getCCS());
+      }
+      final SpectralLibraryIndex index = builder.build();
+      Assertions.assertEquals(annotations.size(), index.size());
+
+      assertEqualsMatches(annotations, rows, index, seed);
+    }
+  }
+
+  @Test
+  void testWriteRead() throws IOException {
+    final Random random = new Random(7);
+    final List<CompoundDBAnnotation> annotations = createAnnotations(random, 300);
+    final List<FeatureListRow> rows = createRows(random, annotations, 50);
+
+    final SpectralLibraryIndex.Builder builder = new SpectralLibraryIndex.Builder();
+    for (int i = 0; i < annotations.size(); i++) {
+      final CompoundDBAnnotation a = annotations.get(i);
+      builder.add(i, a.getPrecursorMZ(), a.getRT(), a.getMobility(), a.getCCS());
+    }
+
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    builder.build().write(new DataOutputStream(bytes));
+    final SpectralLibraryIndex read = SpectralLibraryIndex.read(
+        new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+    assertEqualsMatches(annotations, rows, read, 7);
+  }
+
+  @Test
+  void testReadRejectsOtherVersion() {
+    final byte[] bytes = {0, 0, 0, 99, 0, 0, 0, 0, 0, 0, 0, 0};
+    Assertions.assertThrows(IOException.class,
+        () -> SpectralLibraryIndex.read(new DataInputStream(new ByteArrayInputStream(bytes))));
+  }
+
+  private static void assertEqualsMatches(List<CompoundDBAnnotation> annotations,
+      List<FeatureListRow> rows, SpectralLibraryIndex index, long seed) {
+    for (MZTolerance mzTol : MZ_TOLERANCES) {
+      for (RTTolerance rtTol : RT_TOLERANCES) {
+        for (MobilityTolerance mobTol : MOBILITY_TOLERANCES) {
+          for (Double ccsTol : CCS_TOLERANCES) {
+            for (FeatureListRow row : rows) {
+              final IntArrayList expected = new IntArrayList();
+              for (int i = 0; i < annotations.size(); i++) {
+                if (annotations.get(i).matches(row, mzTol, rtTol, mobTol, ccsTol)) {
+                  expected.add(i);
+                }
+              }
+              final int[] actual = index.find(row, mzTol, rtTol, mobTol, ccsTol);
+              Assertions.assertArrayEquals(expected.toIntArray(), actual,
+                  "seed " + seed + " row " + row.getID() + " mz " + mzTol + " rt " + rtTol
+                      + " mobility " + mobTol + " ccs " + ccsTol);
+            }
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Annotations with and without m/z, rt, mobility and CCS. Some share the same m/z.
+   */
+  private static List<CompoundDBAnnotation> createAnnotations(Random random, int n) {
+    final List<CompoundDBAnnotation> annotations = new ArrayList<>(n);
+    for (int i = 0; i < n; i++) {
+      final SimpleCompoundDBAnnotation annotation = new SimpleCompoundDBAnnotation();
+      if (random.nextDouble() > 0.15) {
+        final double mz = i > 0 && random.nextDouble() < 0.05
+            && annotations.get(i - 1).getPrecursorMZ() != null ? annotations.get(i - 1)
+            .getPrecursorMZ() : 100 + random.nextDouble() * 50;
+        annotation.put(PrecursorMZType.class, mz);
+      }
+      if (random.nextDouble() > 0.3) {
+        annotation.put(RTType.class, random.nextFloat() * 10f);
+      }
+      if (random.nextDouble() > 0.5) {
+        annotation.put(MobilityType.class, 0.5f + random.nextFloat());
+      }
+      if (random.nextDouble() > 0.5) {
+        annotation.put(CCSType.class, 150f + random.nextFloat() * 150f);
+      }
+      annotations.add(annotation);
+    }
+    return annotations;
+  }
+
+  /**
+   * Rows close to random annotations, so the tolerances decide if they match. Some rows miss
+   * values.
+   */
+  private static List<FeatureListRow> createRows(Random random,
+      List<CompoundDBAnnotation> annotations, int n) {
+    final ModularFeatureList flist = new ModularFeatureList("flist", null, List.of());
+    final List<FeatureListRow> rows = new ArrayList<>(n);
+    for (int i = 0; i < n; i++) {
+      final CompoundDBAnnotation near = annotations.get(random.nextInt(annotations.size()));
+      final ModularFeatureListRow row = new ModularFeatureListRow(flist, i);
+      if (random.nextDouble() > 0.05) {
+        final Double mz = near.getPrecursorMZ();
+        row.set(MZType.class,
+            (mz != null ? mz : 100 + random.nextDouble() * 50) + (random.nextDouble() - 0.5)
+                * 0.01);
+      }
+      if (random.nextDouble() > 0.05) {
+        final Float rt = near.getRT();
+        row.set(RTType.class,
+            (rt != null ? rt : random.nextFloat() * 10f) + (random.nextFloat() - 0.5f) * 0.5f);
+      }
+      if (random.nextDouble() > 0.1) {
+        final Float mobility = near.getMobility();
+        row.set(MobilityType.class,
+            (mobility != null ? mobility : 0.5f + random.nextFloat()) + (random.nextFloat()
+                - 0.5f) * 0.1f);
+      }
+      if (random.nextDouble() > 0.1) {
+        final Float ccs = near.getCCS();
+        row.set(CCSType.class,
+            (ccs != null ? ccs : 150f + random.nextFloat() * 150f) * (1 + (random.nextFloat()
+                - 0.5f) * 0.05f));
+      }
+      rows.add(row);
+    }
+    return rows;
+  }
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package util;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.github.mzmine.datamodel.DataPoint;
+import io.github.mzmine.datamodel.Scan;
+import io.github.mzmine.datamodel.features.FeatureListRow;
+import io.github.mzmine.datamodel.impl.SimpleDataPoint;
+import io.github.mzmine.modules.dataprocessing.id_spectral_library_match.RowsSpectralMatchTask;
+import io.github.mzmine.modules.dataprocessing.id_spectral_library_match.SpectralLibrarySearchParameters;
+import io.github.mzmine.parameters.ParameterSet;
+import io.github.mzmine.parameters.parametertypes.selectors.SpectralLibrarySelection;
+import io.github.mzmine.parameters.parametertypes.selectors.SpectralLibrarySelectionType;
+import io.github.mzmine.parameters.parametertypes.tolerances.MZTolerance;
+import io.github.mzmine.parameters.parametertypes.tolerances.RTTolerance;
+import io.github.mzmine.parameters.parametertypes.tolerances.RTTolerance.Unit;
+import io.github.mzmine.util.spectraldb.entry.DBEntryField;
+import io.github.mzmine.util.spectraldb.entry.SpectralDBAnnotation;
+import io.github.mzmine.util.spectraldb.entry.SpectralDBEntry;
+import io.github.mzmine.util.spectraldb.entry.SpectralLibrary;
+import java.io.File;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Compares the spectral library search with the precursor index of the libraries to the full scan
+ * over all library entries of {@link RowsSpectralMatchTask}.
+ */
+public class SpectralLibraryIndexTest {
+
+  private static final int NUM_ROWS = 30;
+  private static final int ENTRIES_PER_LIBRARY = 150;
+
+  private static final List<FeatureListRow> rows = new ArrayList<>();
+  private static final Map<Scan, DataPoint[]> scanData = new IdentityHashMap<>();
+  private static final Map<FeatureListRow, Scan> rowScans = new IdentityHashMap<>();
+  private static final List<SpectralLibrary> libraries = new ArrayList<>();
+
+  @BeforeAll
+  static void createFixture() {
+    final Random rand = new Random(42);
+    final List<DataPoint[]> rowSpectra = new ArrayList<>();
+    for (int i = 0; i < NUM_ROWS; i++) {
+      final FeatureListRow row = mock(FeatureListRow.class);
+      final double mz = Math.round((200 + rand.nextDouble() * 600) * 1E4) / 1E4;
+      when(row.getID()).thenReturn(i + 1);
+      when(row.getAverageMZ()).thenReturn(mz);
+      when(row.getAverageRT()).thenReturn(i % 5 == 0 ? null : (float) (rand.nextDouble() * 20));
+      when(row.getAverageCCS()).thenReturn(
+          i % 4 == 0 ? null : (float) (150 + rand.nextDouble() * 200));
+
+      final DataPoint[] spectrum = new DataPoint[15];
+      for (int s = 0; s < spectrum.length; s++) {
+        spectrum[s] = new SimpleDataPoint(50 + rand.nextDouble() * (mz - 50),
+            100 + rand.nextDouble() * 1E4);
+      }
+      Arrays.sort(spectrum, (a, b) -> Double.compare(a.getMZ(), b.getMZ()));
+      final Scan scan = mock(Scan.class);
+      scanData.put(scan, spectrum);
+      rowScans.put(row, scan);
+      rows.add(row);
+      rowSpectra.add(spectrum);
+    }
+
+    // entries close to the rows in precursor m/z, retention time, CCS and spectrum. Some entries
+    // without precursor, retention time or CCS and some outside the tolerances
+    for (int l = 0; l < 2; l++) {
+      final List<SpectralDBEntry> entries = new ArrayList<>();
+      for (int i = 0; i < ENTRIES_PER_LIBRARY; i++) {
+        final int r = rand.nextInt(NUM_ROWS);
+        final FeatureListRow row = rows.get(r);
+        final Map<DBEntryField, Object> fields = new HashMap<>();
+        if (i % 20 != 0) {
+          final double offset = i % 3 == 0 ? rand.nextDouble() * 0.05 : rand.nextDouble() * 0.003;
+          fields.put(DBEntryField.PRECURSOR_MZ, row.getAverageMZ() + offset);
+        }
+        if (i % 3 != 0) {
+          final float rt = row.getAverageRT() == null ? 10f : row.getAverageRT();
+          fields.put(DBEntryField.RT, rt + (float) (rand.nextDouble() * 1.2 - 0.6));
+        }
+        if (i % 4 != 0) {
+          final float ccs = row.getAverageCCS() == null ? 250f : row.getAverageCCS();
+          fields.put(DBEntryField.CCS, ccs * (float) (0.92 + rand.nextDouble() * 0.16));
+        }
+
+        final DataPoint[] spectrum = rowSpectra.get(r);
+        final List<DataPoint> dps = new ArrayList<>();
+        for (DataPoint dp : spectrum) {
+          // drop some signals and change the intensities
+          if (rand.nextInt(4) != 0) {
+            dps.add(new SimpleDataPoint(dp.getMZ() + (rand.nextDouble() - 0.5) * 0.001,
+                dp.getIntensity() * (0.5 + rand.nextDouble())));
+          }
+        }
+        entries.add(new SpectralDBEntry(fields, dps.toArray(DataPoint[]::new)));
+      }
+      libraries.add(new SpectralLibrary(new File("library" + l + ".json"), entries));
+    }
+  }
+
+  private static ParameterSet createParameters(boolean useRT, boolean useCCS) {
+    final ParameterSet param = new SpectralLibrarySearchParameters().cloneParameterSet();
+    // the libraries are passed to the search methods directly
+    param.setParameter(SpectralLibrarySearchParameters.libraries,
+        new SpectralLibrarySelection(SpectralLibrarySelectionType.SPECIFIC, List.of()));
+    param.setParameter(SpectralLibrarySearchParameters.msLevel, 2);
+    param.setParameter(SpectralLibrarySearchParameters.mzTolerancePrecursor,
+        new MZTolerance(0.005, 10));
+    param.setParameter(SpectralLibrarySearchParameters.deisotoping, false);
+    param.setParameter(SpectralLibrarySearchParameters.minMatch, 4);
+    param.setParameter(SpectralLibrarySearchParameters.rtTolerance, useRT);
+    param.getParameter(SpectralLibrarySearchParameters.rtTolerance).getEmbeddedParameter()
+        .setValue(new RTTolerance(0.3f, Unit.MINUTES));
+    param.setParameter(SpectralLibrarySearchParameters.ccsTolerance, useCCS);
+    param.getParameter(SpectralLibrarySearchParameters.ccsTolerance).getEmbeddedParameter()
+        .setValue(0.05);
+    return param;
+  }
+
+  /**
+   * Search task that uses the fixture spectra instead of mass lists and collects the matches
+   */
+  private static class FixtureMatchTask extends RowsSpectralMatchTask {
+
+    private final Map<FeatureListRow, List<SpectralDBAnnotation>> results = new IdentityHashMap<>();
+
+    private FixtureMatchTask(ParameterSet parameters) {
+      super(parameters, rows, Instant.now());
+    }
+
+    @Override
+    public List<Scan> getScans(FeatureListRow row) {
+      return new ArrayList<>(List.of(rowScans.get(row)));
+    }
+
+    @Override
+    protected DataPoint[] getDataPoints(Scan scan, boolean noiseFilter) {
+      return scanData.get(scan);
+    }
+
+    @Override
+    protected void addIdentities(FeatureListRow row, List<SpectralDBAnnotation> matches) {
+      results.put(row, matches);
+    }
+  }
+
+  @Test
+  void testIndexSearchEqualsFullScan() {
+    final List<SpectralDBEntry> allEntries = new ArrayList<>();
+    for (SpectralLibrary library : libraries) {
+      allEntries.addAll(library.getEntries());
+    }
+
+    int totalMatches = 0;
+    for (boolean useRT : new boolean[]{false, true}) {
+      for (boolean useCCS : new boolean[]{false, true}) {
+        final ParameterSet param = createParameters(useRT, useCCS);
+        final FixtureMatchTask fullScan = new FixtureMatchTask(param);
+        final FixtureMatchTask indexed = new FixtureMatchTask(param);
+
+        for (FeatureListRow row : rows) {
+          fullScan.matchRowToLibraries(allEntries, row);
+          indexed.matchRowToLibraryIndex(libraries, row);
+
+          final List<SpectralDBAnnotation> expected = fullScan.results.getOrDefault(row,
+              List.of());
+          final List<SpectralDBAnnotation> actual = indexed.results.getOrDefault(row, List.of());
+          final String message = "Row " + row.getID() + " rt=" + useRT + " ccs=" + useCCS;
+          Assertions.assertEquals(expected.size(), actual.size(), message);
+          for (int i = 0; i < expected.size(); i++) {
+            Assertions.assertSame(expected.get(i).getEntry(), actual.get(i).getEntry(), message);
+            Assertions.assertEquals(expected.get(i).getScore(), actual.get(i).getScore(), message);
+          }
+          totalMatches += expected.size();
+        }
+        Assertions.assertEquals(fullScan.getCount(), indexed.getCount());
+      }
+    }
+    Assertions.assertTrue(totalMatches > 0, "The fixture produced no matches");
+  }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package util.lipidannotationtest;
+
+import com.google.common.collect.Range;
+import io.github.mzmine.datamodel.IonizationType;
+import io.github.mzmine.modules.dataprocessing.id_lipididentification.lipididentificationtools.LipidFragmentationRule;
+import io.github.mzmine.modules.dataprocessing.id_lipididentification.lipids.ILipidAnnotation;
+import io.github.mzmine.modules.dataprocessing.id_lipididentification.lipids.LipidClasses;
+import io.github.mzmine.modules.dataprocessing.id_lipididentification.lipidutils.LipidFactory;
+import io.github.mzmine.modules.dataprocessing.id_lipididentification.lipidutils.LipidIonTable;
+import io.github.mzmine.parameters.parametertypes.tolerances.MZTolerance;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.openscience.cdk.tools.manipulator.AtomContainerManipulator;
+import org.openscience.cdk.tools.manipulator.MolecularFormulaManipulator;
+
+/**
+ * Compares the {@link LipidIonTable} search with the previous loop over all lipids and ionization
+ * types of the lipid search task.
+ */
+class LipidIonTableTest {
+
+  private static final LipidFactory LIPID_FACTORY = new LipidFactory();
+  private static final MZTolerance[] TOLERANCES = {new MZTolerance(0.005, 5),
+      new MZTolerance(0.5, 0)};
+
+  private static List<ILipidAnnotation> lipids;
+  private static LipidIonTable ionTable;
+
+  @BeforeAll
+  static void buildDatabase() {
+    // same combinations as the lipid search task
+    Set<ILipidAnnotation> lipidDatabase = new LinkedHashSet<>();
+    for (LipidClasses lipidClass : LipidClasses.values()) {
+      for (int chainLength = 20; chainLength <= 40; chainLength++) {
+        for (int chainDoubleBonds = 0; chainDoubleBonds <= 4; chainDoubleBonds++) {
+          ILipidAnnotation lipid = LIPID_FACTORY.buildSpeciesLevelLipid(lipidClass, chainLength,
+              chainDoubleBonds);
+          if (lipid != null) {
+            lipidDatabase.add(lipid);
+          }
+        }
+      }
+    }
+    lipids = new ArrayList<>(lipidDatabase);
+    ionTable = new LipidIonTable(lipidDatabase);
+  }
+
+  @Test
+  void testSize() {
+    int ions = 0;
+    for (ILipidAnnotation lipid : lipids) {
+      ions += getIonizationTypes(lipid).size();
+    }
+    Assertions.assertEquals(ions, ionTable.size());
+  }
+
+  @Test
+  void testEquivalentToLipidLoop() {
+    Random rnd = new Random(42);
+    List<Double> mzs = new ArrayList<>();
+    // exact lipid ions and random values
+    for (int e = 0; e < ionTable.size(); e += 7) {
+      mzs.add(ionTable.getMz(e));
+    }
+    for (int i = 0; i < 2000; i++) {
+      mzs.add(200 + rnd.nextDouble() * 1200);
+    }
+
+    for (MZTolerance mzTolerance : TOLERANCES) {
+      for (double mz : mzs) {
+        Range<Double> mzRange = mzTolerance.getToleranceRange(mz);
+        Assertions.assertEquals(findWithLipidLoop(mzRange), findWithTable(mzRange),
+            "m/z " + mz);
+      }
+    }
+  }
+
+  @Test
+  void testEntriesSortedByLipid() {
+    for (int e = 0; e < ionTable.size(); e += 11) {
+      int[] entries = ionTable.findEntries(Range.closed(ionTable.getMz(e) - 1,
+          ionTable.getMz(e) + 1));
+      Assertions.assertTrue(entries.length > 0);
+      for (int i = 1; i < entries.length; i++) {
+        Assertions.assertTrue(
+            ionTable.getLipidIndex(entries[i - 1]) <= ionTable.getLipidIndex(entries[i]));
+      }
+      for (int entry : entries) {
+        Assertions.assertSame(lipids.get(ionTable.getLipidIndex(entry)), ionTable.getLipid(entry));
+      }
+    }
+  }
+
+  /**
+   * Previous per lipid MS1 check of the lipid search task
+   *
+   * @return the matching lipid indices and ionization types
+   */
+  private static Set<String> findWithLipidLoop(Range<Double> mzRange) {
+    Set<String> result = new HashSet<>();
+    for (int i = 0; i < lipids.size(); i++) {
+      ILipidAnnotation lipid = lipids.get(i);
+      for (IonizationType ionization : getIonizationTypes(lipid)) {
+        double lipidIonMass = MolecularFormulaManipulator.getMass(lipid.getMolecularFormula(),
+            AtomContainerManipulator.MonoIsotopic) + ionization.getAddedMass();
+        if (mzRange.contains(lipidIonMass)) {
+          result.add(i + " " + ionization);
+        }
+      }
+    }
+    return result;
+  }
+
+  private static Set<String> findWithTable(Range<Double> mzRange) {
+    Set<String> result = new HashSet<>();
+    for (int entry : ionTable.findEntries(mzRange)) {
+      Assertions.assertTrue(
+          result.add(ionTable.getLipidIndex(entry) + " " + ionTable.getIonization(entry)));
+    }
+    return result;
+  }
+
+  private static Set<IonizationType> getIonizationTypes(ILipidAnnotation lipid) {
+    Set<IonizationType> ionizationTypeList = new HashSet<>();
+    LipidFragmentationRule[] fragmentationRules = lipid.getLipidClass().getFragmentationRules();
+    if (fragmentationRules != null) {
+      for (LipidFragmentationRule fragmentationRule : fragmentationRules) {
+        ionizationTypeList.add(fragmentationRule.getIonizationType());
+      }
+    }
+    return ionizationTypeList;
+  }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package util.maths;
+
+import io.github.mzmine.util.MathUtils;
+import java.util.HashSet;
+import java.util.Set;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class UndirectedPairingLongTest {
+
+  @Test
+  void testUndirected() {
+    Assertions.assertEquals(MathUtils.undirectedPairingLong(3, 7),
+        MathUtils.undirectedPairingLong(7, 3));
+    Assertions.assertEquals(MathUtils.undirectedPairingLong(0, 0),
+        MathUtils.undirectedPairingLong(0, 0));
+    Assertions.assertEquals(MathUtils.undirectedPairingLong(50_000, 123_456),
+        MathUtils.undirectedPairingLong(123_456, 50_000));
+  }
+
+  /**
+   * The int cantor pairing overflows if a + b is greater than 46340.
+   */
+  @Test
+  void testLargeIdsAreUnique() {
+    final int[] ids = {0, 1, 2, 46_339, 46_340, 46_341, 50_000, 65_535, 65_536, 100_000,
+        1_000_000, Integer.MAX_VALUE - 1, Integer.MAX_VALUE};
+    final Set<Long> keys = new HashSet<>();
+    for (int i = 0; i < ids.length; i++) {
+      for (int j = i; j < ids.length; j++) {
+        final long key = MathUtils.undirectedPairingLong(ids[i], ids[j]);
+        Assertions.assertTrue(keys.add(key),
+            "Duplicate key " + key + " for ids " + ids[i] + " and " + ids[j]);
+        Assertions.assertEquals(Math.min(ids[i], ids[j]), (int) (key >>> 32));
+        Assertions.assertEquals(Math.max(ids[i], ids[j]), (int) key);
+      }
+    }
+  }
+
+  @Test
+  void testUniqueInDenseRange() {
+    // the int pairing overflows in this range
+    final int start = 46_000;
+    final int end = 46_700;
+    final Set<Long> keys = new HashSet<>();
+    for (int a = start; a < end; a++) {
+      for (int b = a; b < end; b++) {
+        keys.add(MathUtils.undirectedPairingLong(a, b));
+      }
+    }
+    final int n = end - start;
+    Assertions.assertEquals((long) n * (n + 1) / 2, keys.size());
+  }
+}